@@ -27,6 +27,10 @@ Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
 
 package com.bigdata.rdf.sail.webapp.client;
 
+import java.util.UUID;
+
+import org.openrdf.model.Value;
+
 /**
  * A prepared query against the {@link RemoteRepository}.
  * 
@@ -36,4 +40,34 @@ public interface IPreparedQuery extends IPreparedOperation {
 
 	public void addRequestParam(String name, String... val);
 
+    /**
+     * Bind a variable for the next evaluation of the query.
+     * 
+     * @param name
+     *            The name of the variable (without the leading
+     *            <code>?</code>).
+     * @param value
+     *            The value.
+     */
+    public void setBinding(String name, Value value);
+
+    /**
+     * Clear any bindings set with {@link #setBinding(String, Value)}.
+     */
+    public void clearBindings();
+
+    /**
+     * Ask the server to parse the query once and retain it. Subsequent
+     * evaluations send the handle of the prepared query together with the
+     * current bindings rather than the query string. If the server no longer
+     * knows the handle (for example, because it was restarted or the prepared
+     * query was evicted), the query is transparently prepared again.
+     * 
+     * @return The handle of the prepared query.
+     * 
+     * @throws UnsupportedOperationException
+     *             for a SPARQL UPDATE.
+     */
+    public UUID prepare() throws Exception;
+
 }
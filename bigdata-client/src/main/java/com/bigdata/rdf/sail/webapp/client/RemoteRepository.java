@@ -31,6 +31,7 @@ import java.io.InputStream;
 import java.io.Reader;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.UUID;
@@ -1052,6 +1053,14 @@ public class RemoteRepository extends RemoteRepositoryBase {
 
         private final boolean update;
 
+        /**
+         * The handle of the prepared query on the server and <code>null</code>
+         * until the query is prepared.
+         * 
+         * @see #prepare()
+         */
+        private volatile UUID preparedQuery = null;
+
         public QueryOrUpdate(final ConnectOptions opts, final UUID id,
                 final String query) {
 
@@ -1105,6 +1114,99 @@ public class RemoteRepository extends RemoteRepositoryBase {
     		opts.addRequestParam(name, val);
     	}
 
+        @Override
+        public void setBinding(final String name, final Value value) {
+
+            if (name == null)
+                throw new IllegalArgumentException();
+
+            if (value == null)
+                throw new IllegalArgumentException();
+
+            opts.addRequestParam(BINDING_PREFIX + name,
+                    EncodeDecodeValue.encodeValue(value));
+
+        }
+
+        @Override
+        public void clearBindings() {
+
+            if (opts.requestParams == null)
+                return;
+
+            final Iterator<String> itr = opts.requestParams.keySet()
+                    .iterator();
+
+            while (itr.hasNext()) {
+
+                if (itr.next().startsWith(BINDING_PREFIX))
+                    itr.remove();
+
+            }
+
+        }
+
+        @Override
+        public UUID prepare() throws Exception {
+
+            if (update)
+                throw new UnsupportedOperationException();
+
+            final ConnectOptions opts = mgr.newQueryConnectOptions(
+                    sparqlEndpointURL, UUID.randomUUID(), tx);
+
+            // Note: The server retains state, so this is not idempotent.
+            opts.method = "POST";
+
+            opts.addRequestParam(PREPARE);
+
+            opts.addRequestParam("query", query);
+
+            final String baseURI = this.opts.getRequestParam(BASE_URI);
+
+            if (baseURI != null)
+                opts.addRequestParam(BASE_URI, baseURI);
+
+            JettyResponseListener resp = null;
+            try {
+
+                opts.setAcceptHeader(ConnectOptions.MIME_TEXT_PLAIN);
+
+                checkResponseCode(resp = doConnect(opts));
+
+                return preparedQuery = UUID.fromString(resp.getResponseBody()
+                        .trim());
+
+            } finally {
+
+                if (resp != null)
+                    resp.abort();
+
+            }
+
+        }
+
+        /**
+         * Return <code>true</code> iff the request failed because the server
+         * does not know the handle of the prepared query, in which case the
+         * query has been prepared again and the request may be retried.
+         */
+        protected boolean reprepare(final HttpException ex) throws Exception {
+
+            if (preparedQuery == null || ex.getStatusCode() != 404)
+                return false;
+
+            if (log.isInfoEnabled())
+                log.info("Preparing query again: " + preparedQuery);
+
+            prepare();
+
+            setupConnectOptions();
+
+            return true;
+
+        }
+
         /**
          * Setup the connection options.
          */
@@ -1116,6 +1218,13 @@ public class RemoteRepository extends RemoteRepositoryBase {
             
                 opts.addRequestParam("update", query);
                 
+            } else if (preparedQuery != null) {
+
+                if (opts.requestParams != null)
+                    opts.requestParams.remove("query");
+
+                opts.addRequestParam(PREPARED_QUERY, preparedQuery.toString());
+
             } else {
                 
                 opts.addRequestParam("query", query);
@@ -1214,7 +1323,13 @@ public class RemoteRepository extends RemoteRepositoryBase {
             
             setupConnectOptions();
 
-            return mgr.tupleResults(opts, getQueryId(), listener);
+            try {
+                return mgr.tupleResults(opts, getQueryId(), listener);
+            } catch (HttpException ex) {
+                if (!reprepare(ex))
+                    throw ex;
+                return mgr.tupleResults(opts, getQueryId(), listener);
+            }
                 
         }
         
@@ -1252,7 +1367,13 @@ public class RemoteRepository extends RemoteRepositoryBase {
 
             setupConnectOptions();
             
-            return mgr.graphResults(opts, getQueryId(), listener);
+            try {
+                return mgr.graphResults(opts, getQueryId(), listener);
+            } catch (HttpException ex) {
+                if (!reprepare(ex))
+                    throw ex;
+                return mgr.graphResults(opts, getQueryId(), listener);
+            }
 
         }
 
@@ -1292,7 +1413,13 @@ public class RemoteRepository extends RemoteRepositoryBase {
            
             setupConnectOptions();
             
-            return mgr.booleanResults(opts, getQueryId(), listener);
+            try {
+                return mgr.booleanResults(opts, getQueryId(), listener);
+            } catch (HttpException ex) {
+                if (!reprepare(ex))
+                    throw ex;
+                return mgr.booleanResults(opts, getQueryId(), listener);
+            }
 
         }
         
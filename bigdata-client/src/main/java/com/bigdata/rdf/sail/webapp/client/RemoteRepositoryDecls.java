@@ -180,4 +180,17 @@ public class RemoteRepositoryDecls {
     * @see com.bigdata.rdf.sail.webapp.QueryServlet.BINDING_PREFIX
     */
    public static final String BINDING_PREFIX = "$";
+
+   /**
+    * URL query parameter used to request that the SPARQL query be prepared.
+    * The response entity is the handle of the prepared query.
+    * @see com.bigdata.rdf.sail.webapp.QueryServlet.ATTR_PREPARE
+    */
+   static protected final String PREPARE = "prepare";
+
+   /**
+    * URL query parameter used to specify the handle of a prepared query.
+    * @see com.bigdata.rdf.sail.webapp.QueryServlet.ATTR_PREPARED_QUERY
+    */
+   static protected final String PREPARED_QUERY = "preparedQuery";
 }
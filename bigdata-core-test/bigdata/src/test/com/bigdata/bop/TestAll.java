@@ -105,6 +105,9 @@ public class TestAll extends TestCase {
         // aggregation operators.
         suite.addTest(com.bigdata.bop.solutions.TestAll.suite());
 
+        // property path operators.
+        suite.addTest(com.bigdata.bop.paths.TestAll.suite());
+
         // Unit tests for named solution set references.
         suite.addTestSuite(TestNamedSolutionSetRef.class);
         
@@ -374,6 +374,101 @@ abstract public class AbstractHashJoinOpTestCase extends TestCase2 {
 
     }
 
+    /**
+     * Unit test for a join with a {@link HashJoinOp.Annotations#BLOOM_FILTER}.
+     * There is one source solution, which binds the join variable [x] to
+     * <code>fred</code>. The access path <code>(?y knows ?x)</code> would
+     * visit all seven statements, but the Bloom filter built from the source
+     * solution drops most of them inside the index scan. The join still
+     * produces the one solution which can join.
+     */
+    public void test_join_bloomFilter() throws InterruptedException,
+            ExecutionException {
+
+        final int joinId = 2;
+        final int predId = 3;
+        @SuppressWarnings("unchecked")
+        final IVariable<IV> x = Var.var("x");
+        @SuppressWarnings("unchecked")
+        final IVariable<IV> y = Var.var("y");
+        @SuppressWarnings("unchecked")
+        final IVariable<IV>[] joinVars = new IVariable[] { x };
+        final UUID queryId = UUID.randomUUID();
+
+        final Predicate<IV> predOp = new Predicate<IV>(
+                new IVariableOrConstant[] { y, new Constant<IV>(setup.knows),
+                        x }, NV.asMap(new NV[] {//
+                        new NV(Predicate.Annotations.RELATION_NAME,
+                                new String[] { setup.spoNamespace }),//
+                        new NV(Predicate.Annotations.BOP_ID, predId),//
+                        new NV(Annotations.TIMESTAMP, ITx.READ_COMMITTED),//
+                }));
+
+        final PipelineOp query = newJoin(new BOp[] {}, joinId, joinVars,
+                predOp, queryId, new NV(HashJoinOp.Annotations.BLOOM_FILTER,
+                        true));
+
+        // the expected solutions.
+        final IBindingSet[] expected = new IBindingSet[] {//
+                new ListBindingSet(//
+                        new IVariable[] { x, y },//
+                        new IConstant[] { new Constant<IV>(setup.fred),
+                                          new Constant<IV>(setup.brad),
+                                }//
+                ),//
+        };
+
+        final IBindingSet[] initialBindingSets;
+        {
+            final IBindingSet tmp = new ListBindingSet();
+            tmp.set(x, new Constant<IV>(setup.fred));
+            initialBindingSets = new IBindingSet[] { tmp };
+        }
+
+        final MockQueryContext queryContext = new MockQueryContext(queryId);
+        try {
+
+            final BaseJoinStats stats = (BaseJoinStats) query.newStats();
+
+            final IAsynchronousIterator<IBindingSet[]> source = new ThickAsynchronousIterator<IBindingSet[]>(
+                    new IBindingSet[][] { initialBindingSets });
+
+            final IBlockingBuffer<IBindingSet[]> sink = new BlockingBufferWithStats<IBindingSet[]>(
+                    query, stats);
+
+            final BOpContext<IBindingSet> context = new BOpContext<IBindingSet>(
+                    new MockRunningQuery(null/* fed */,
+                            setup.jnl/* indexManager */, queryContext),
+                    -1/* partitionId */, stats, query/* op */,
+                    true/* lastInvocation */, source, sink, null/* sink2 */);
+
+            // get task.
+            final FutureTask<Void> ft = query.eval(context);
+
+            // execute task.
+            setup.jnl.getExecutorService().execute(ft);
+
+            AbstractQueryEngineTestCase.assertSameSolutionsAnyOrder(expected,
+                    sink.iterator(), ft);
+
+            // join task
+            assertEquals(1L, stats.chunksIn.get());
+            assertEquals(1L, stats.unitsIn.get());
+            assertEquals(1L, stats.unitsOut.get());
+            // access path
+            assertEquals(1L, stats.accessPathCount.get());
+            // the filter was applied during the index scan.
+            assertTrue(stats.accessPathUnitsIn.get() >= 1L);
+            assertTrue(stats.accessPathUnitsIn.get() < 7L);
+
+        } finally {
+
+            queryContext.close();
+
+        }
+
+    }
+
     /**
      * Unit test for a simple join. There are two source solutions. Each binds
      * the join variable (there is only one join variable, which is [x]). The
@@ -0,0 +1,217 @@
+/**
+
+Copyright (C) SYSTAP, LLC DBA Blazegraph 2006-2016.  All rights reserved.
+
+Contact:
+     SYSTAP, LLC DBA Blazegraph
+     2501 Calvert ST NW #106
+     Washington, DC 20008
+     licenses@blazegraph.com
+
+This program is free software; you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation; version 2 of the License.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program; if not, write to the Free Software
+Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+/*
+ * Created on Oct 17, 2026
+ */
+
+package com.bigdata.bop.join;
+
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import com.bigdata.bop.BOp;
+import com.bigdata.bop.Constant;
+import com.bigdata.bop.IBindingSet;
+import com.bigdata.bop.IConstraint;
+import com.bigdata.bop.IVariable;
+import com.bigdata.bop.NV;
+import com.bigdata.bop.PipelineOp;
+import com.bigdata.bop.Var;
+import com.bigdata.bop.bindingSet.ListBindingSet;
+import com.bigdata.bop.engine.BOpStats;
+import com.bigdata.rdf.internal.IV;
+import com.bigdata.rdf.internal.VTE;
+import com.bigdata.rdf.internal.impl.TermId;
+import com.bigdata.striterator.Chunkerator;
+import com.bigdata.util.DaemonThreadFactory;
+
+/**
+ * Runs the test suite for the {@link JVMHashJoinUtility} against a hash index
+ * having several partitions which are built concurrently.
+ * 
+ * @see JVMHashJoinAnnotations#BUILD_PARTITIONS
+ */
+public class TestJVMHashJoinUtilityPartitioned extends
+        AbstractHashJoinUtilityTestCase {
+
+    /**
+     * 
+     */
+    public TestJVMHashJoinUtilityPartitioned() {
+    }
+
+    /**
+     * @param name
+     */
+    public TestJVMHashJoinUtilityPartitioned(String name) {
+        super(name);
+    }
+
+    private ExecutorService executorService;
+
+    @Override
+    protected void setUp() throws Exception {
+
+        super.setUp();
+
+        executorService = Executors.newCachedThreadPool(DaemonThreadFactory
+                .defaultThreadFactory());
+
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+
+        if (executorService != null) {
+            executorService.shutdownNow();
+            executorService = null;
+        }
+
+        super.tearDown();
+
+    }
+
+    @Override
+    protected JVMHashJoinUtility newHashJoinUtility(PipelineOp op,
+            final JoinTypeEnum joinType) {
+
+        // Always build the partitions concurrently.
+        op = (PipelineOp) op.setProperty(
+                JVMHashJoinAnnotations.BUILD_PARTITIONS, 3);
+
+        op = (PipelineOp) op.setProperty(
+                JVMHashJoinAnnotations.PARALLEL_BUILD_THRESHOLD, 0);
+
+        final JVMHashJoinUtility state = new JVMHashJoinUtility(op, joinType,
+                executorService);
+
+        assertEquals(3, state.getRightSolutions().getPartitionCount());
+
+        return state;
+
+    }
+
+    /**
+     * The partitioned build does not preserve the order of the solutions, but
+     * it must produce the same multiset of solutions as an unpartitioned
+     * build (including duplicate solutions).
+     */
+    @SuppressWarnings("rawtypes")
+    public void test_partitionedBuild_sameSolutions() {
+
+        final IVariable<?> x = Var.var("x");
+        final IVariable<?> y = Var.var("y");
+        final IVariable<?> z = Var.var("z");
+
+        final List<IBindingSet> right = new LinkedList<IBindingSet>();
+
+        for (int i = 0; i < 500; i++) {
+
+            final ListBindingSet tmp = new ListBindingSet();
+            tmp.set(x, new Constant<IV>(new TermId(VTE.URI, i % 50)));
+            tmp.set(y, new Constant<IV>(new TermId(VTE.LITERAL, i % 7)));
+            right.add(tmp);
+
+        }
+
+        final List<IBindingSet> left = new LinkedList<IBindingSet>();
+
+        for (int i = 0; i < 80; i++) {
+
+            final ListBindingSet tmp = new ListBindingSet();
+            tmp.set(x, new Constant<IV>(new TermId(VTE.URI, i % 60)));
+            tmp.set(z, new Constant<IV>(new TermId(VTE.LITERAL, 100 + i)));
+            left.add(tmp);
+
+        }
+
+        for (JoinTypeEnum joinType : new JoinTypeEnum[] { JoinTypeEnum.Normal,
+                JoinTypeEnum.Optional }) {
+
+            final PipelineOp op = new MockPipelineOp(BOp.NOARGS,//
+                    new NV(HashJoinAnnotations.JOIN_VARS,
+                            new IVariable[] { x }),//
+                    new NV(JoinAnnotations.SELECT, null),//
+                    new NV(JoinAnnotations.CONSTRAINTS, (IConstraint[]) null)//
+            );
+
+            final List<IBindingSet> expected = doJoin(new JVMHashJoinUtility(
+                    op, joinType), left, right);
+
+            final List<IBindingSet> actual = doJoin(newHashJoinUtility(op,
+                    joinType), left, right);
+
+            assertEquals(expected.size(), actual.size());
+
+            assertSameSolutionsAnyOrder(
+                    expected.toArray(new IBindingSet[expected.size()]),
+                    actual.iterator());
+
+        }
+
+    }
+
+    /**
+     * Build the hash index from the right solutions, join the left solutions
+     * against it and return the solutions produced.
+     */
+    private List<IBindingSet> doJoin(final JVMHashJoinUtility state,
+            final List<IBindingSet> left, final List<IBindingSet> right) {
+
+        try {
+
+            state.acceptSolutions(new Chunkerator<IBindingSet>(right
+                    .iterator()), new BOpStats());
+
+            final TestBuffer<IBindingSet> outputBuffer = new TestBuffer<IBindingSet>();
+
+            state.hashJoin(new Chunkerator<IBindingSet>(left.iterator(),
+                    10/* chunkSize */, IBindingSet.class), null/* stats */,
+                    outputBuffer);
+
+            if (state.getJoinType() == JoinTypeEnum.Optional)
+                state.outputOptionals(outputBuffer);
+
+            final List<IBindingSet> out = new LinkedList<IBindingSet>();
+
+            final Iterator<IBindingSet> itr = outputBuffer.iterator();
+
+            while (itr.hasNext()) {
+                out.add(itr.next());
+            }
+
+            return out;
+
+        } finally {
+
+            state.release();
+
+        }
+
+    }
+
+}
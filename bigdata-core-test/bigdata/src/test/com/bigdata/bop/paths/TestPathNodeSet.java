@@ -0,0 +1,224 @@
+/**
+
+Copyright (C) SYSTAP, LLC DBA Blazegraph 2006-2016.  All rights reserved.
+
+Contact:
+     SYSTAP, LLC DBA Blazegraph
+     2501 Calvert ST NW #106
+     Washington, DC 20008
+     licenses@blazegraph.com
+
+This program is free software; you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation; version 2 of the License.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program; if not, write to the Free Software
+Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+package com.bigdata.bop.paths;
+
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import junit.framework.TestCase2;
+
+import com.bigdata.bop.Constant;
+import com.bigdata.bop.IConstant;
+import com.bigdata.io.DirectBufferPool;
+import com.bigdata.rdf.internal.IV;
+import com.bigdata.rdf.internal.VTE;
+import com.bigdata.rdf.internal.impl.TermId;
+import com.bigdata.rwstore.sector.MemoryManager;
+
+/**
+ * Test suite for {@link PathNodeSet}.
+ */
+public class TestPathNodeSet extends TestCase2 {
+
+    public TestPathNodeSet() {
+    }
+
+    public TestPathNodeSet(final String name) {
+        super(name);
+    }
+
+    private MemoryManager mmgr;
+
+    @Override
+    protected void setUp() throws Exception {
+
+        super.setUp();
+
+        mmgr = new MemoryManager(DirectBufferPool.INSTANCE);
+
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+
+        if (mmgr != null) {
+            mmgr.clear();
+            mmgr = null;
+        }
+
+        super.tearDown();
+
+    }
+
+    @SuppressWarnings({ "rawtypes", "unchecked" })
+    private static IConstant<?> node(final long termId) {
+
+        return new Constant<IV>(new TermId(VTE.URI, termId));
+
+    }
+
+    public void test_ctor_correctRejection() {
+
+        try {
+            new PathNodeSet(mmgr, 0/* threshold */);
+            fail("Expecting: " + IllegalArgumentException.class);
+        } catch (IllegalArgumentException ex) {
+            if (log.isInfoEnabled())
+                log.info("Ignoring expected exception: " + ex);
+        }
+
+    }
+
+    /**
+     * Below the threshold the set stays on the JVM heap and visits its members
+     * in insertion order.
+     */
+    public void test_jvm() {
+
+        final PathNodeSet set = new PathNodeSet(mmgr, 10/* threshold */);
+
+        try {
+
+            assertTrue(set.isEmpty());
+            assertTrue(set.add(node(3)));
+            assertTrue(set.add(node(1)));
+            assertFalse(set.add(node(3)));
+
+            assertFalse(set.isNative());
+            assertEquals(2L, set.size());
+            assertTrue(set.contains(node(1)));
+            assertFalse(set.contains(node(2)));
+
+            final Iterator<IConstant<?>> itr = set.iterator();
+            assertEquals(node(3), itr.next());
+            assertEquals(node(1), itr.next());
+            assertFalse(itr.hasNext());
+
+        } finally {
+
+            set.close();
+
+        }
+
+    }
+
+    /**
+     * Once the threshold is reached the members are moved onto the native
+     * heap and the set continues to behave as a set.
+     */
+    public void test_native() {
+
+        final PathNodeSet set = new PathNodeSet(mmgr, 4/* threshold */);
+
+        try {
+
+            for (long i = 1; i <= 3; i++) {
+                assertTrue(set.add(node(i)));
+            }
+            assertFalse(set.isNative());
+
+            assertTrue(set.add(node(4)));
+            assertTrue(set.isNative());
+            assertEquals(4L, set.size());
+
+            assertFalse(set.add(node(2)));
+            assertTrue(set.add(node(10)));
+            assertEquals(5L, set.size());
+
+            assertTrue(set.contains(node(4)));
+            assertTrue(set.contains(node(10)));
+            assertFalse(set.contains(node(5)));
+            assertFalse(set.contains(new Constant<String>("4")));
+
+            final Set<IConstant<?>> actual = new LinkedHashSet<IConstant<?>>();
+            for (IConstant<?> node : set) {
+                actual.add(node);
+            }
+
+            final Set<IConstant<?>> expected = new LinkedHashSet<IConstant<?>>();
+            for (long i : new long[] { 1, 2, 3, 4, 10 }) {
+                expected.add(node(i));
+            }
+
+            assertEquals(expected, actual);
+
+        } finally {
+
+            set.close();
+
+        }
+
+    }
+
+    /**
+     * A set containing a node which is not an {@link IV} may not be moved onto
+     * the native heap.
+     */
+    public void test_notEncodable() {
+
+        final PathNodeSet set = new PathNodeSet(mmgr, 2/* threshold */);
+
+        try {
+
+            assertTrue(set.add(new Constant<String>("a")));
+            assertTrue(set.add(node(1)));
+            assertTrue(set.add(node(2)));
+
+            assertFalse(set.isNative());
+            assertEquals(3L, set.size());
+            assertTrue(set.contains(new Constant<String>("a")));
+
+        } finally {
+
+            set.close();
+
+        }
+
+    }
+
+    /**
+     * Without a memory manager the set stays on the JVM heap.
+     */
+    public void test_noMemoryManager() {
+
+        final PathNodeSet set = new PathNodeSet(null/* mmgr */, 1/* threshold */);
+
+        try {
+
+            assertTrue(set.add(node(1)));
+            assertTrue(set.add(node(2)));
+
+            assertFalse(set.isNative());
+            assertEquals(2L, set.size());
+
+        } finally {
+
+            set.close();
+
+        }
+
+    }
+
+}
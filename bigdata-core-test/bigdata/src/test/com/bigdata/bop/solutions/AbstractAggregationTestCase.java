@@ -48,6 +48,7 @@ import com.bigdata.bop.IVariable;
 import com.bigdata.bop.IVariableFactory;
 import com.bigdata.bop.TestMockUtility;
 import com.bigdata.bop.Var;
+import com.bigdata.bop.aggregate.IMergeableAggregate;
 import com.bigdata.bop.bindingSet.ListBindingSet;
 import com.bigdata.bop.engine.AbstractQueryEngineTestCase;
 import com.bigdata.bop.engine.BOpStats;
@@ -122,6 +123,60 @@ abstract public class AbstractAggregationTestCase extends TestCase2 {
         
     }
     
+    /**
+     * Verify the merge of the partial states of an {@link IMergeableAggregate}.
+     * The first two instances are evaluated against disjoint subsets of the
+     * solutions <code>{9, 5, 7, 7}</code> for the given variable and the
+     * third instance sees no solutions. The partial states are merged into
+     * the first instance, which must report the expected value. The result is
+     * then merged into the empty third instance, which must report the same
+     * value.
+     * 
+     * @param var
+     *            The variable which is aggregated by the instances.
+     * @param expected
+     *            The expected value of the aggregate.
+     * @param op1
+     *            An instance of the aggregate.
+     * @param op2
+     *            Another instance of the same aggregate.
+     * @param op3
+     *            Another instance of the same aggregate.
+     */
+    @SuppressWarnings("rawtypes")
+    public static void assertMerge(final IVariable<IV> var, final IV expected,
+            final IMergeableAggregate<IV> op1,
+            final IMergeableAggregate<IV> op2,
+            final IMergeableAggregate<IV> op3) {
+
+        final IBindingSet data[] = new IBindingSet[] {
+                new ListBindingSet(new IVariable<?>[] { var },
+                        new IConstant[] { new Constant<IV>(new XSDNumericIV(9)) }),
+                new ListBindingSet(new IVariable<?>[] { var },
+                        new IConstant[] { new Constant<IV>(new XSDNumericIV(5)) }),
+                new ListBindingSet(new IVariable<?>[] { var },
+                        new IConstant[] { new Constant<IV>(new XSDNumericIV(7)) }),
+                new ListBindingSet(new IVariable<?>[] { var },
+                        new IConstant[] { new Constant<IV>(new XSDNumericIV(7)) }) };
+
+        op1.reset();
+        op2.reset();
+        op3.reset();
+        op1.get(data[0]);
+        op2.get(data[1]);
+        op1.get(data[2]);
+        op2.get(data[3]);
+
+        op1.merge(op2);
+        op1.merge(op3);
+        assertEquals(expected, op1.done());
+
+        // merging into an empty partial state gives the same result.
+        op3.merge(op1);
+        assertEquals(expected, op3.done());
+
+    }
+
     /**
      * Provides sequential, predictable, and easily read variable names.
      */
@@ -88,6 +88,12 @@ public class TestAll extends TestCase {
         // in-memory sort operator.
         suite.addTestSuite(TestMemorySortOp.class);
 
+        // external memory sort operator (sorted runs on the native heap).
+        suite.addTestSuite(TestExternalMemorySortOp.class);
+
+        // top-K sort operator (ORDER BY + LIMIT).
+        suite.addTestSuite(TestTopKSortOp.class);
+
         /*
          * Aggregation
          */
@@ -101,12 +107,18 @@ public class TestAll extends TestCase {
         // In-memory generalized aggregation operator
         suite.addTestSuite(TestMemoryGroupByOp.class);
 
+        // Native memory generalized aggregation operator (spills partitions).
+        suite.addTestSuite(TestExternalMemoryGroupByOp.class);
+
         // FIXME Enable test for Native memory generalized aggregation operator
 //        suite.addTestSuite(TestHTreeGroupByOp.class);
 
         // Pipelined aggregation operator.
         suite.addTestSuite(TestPipelinedAggregationOp.class);
 
+        // Parallel partial aggregation with a combine phase.
+        suite.addTestSuite(TestPartialAggregationOp.class);
+
         return suite;
         
     }
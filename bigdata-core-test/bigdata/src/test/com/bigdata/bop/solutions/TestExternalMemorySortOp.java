@@ -0,0 +1,382 @@
+/**
+
+Copyright (C) SYSTAP, LLC DBA Blazegraph 2006-2016.  All rights reserved.
+
+Contact:
+     SYSTAP, LLC DBA Blazegraph
+     2501 Calvert ST NW #106
+     Washington, DC 20008
+     licenses@blazegraph.com
+
+This program is free software; you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation; version 2 of the License.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program; if not, write to the Free Software
+Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+/*
+ * Created on Oct 17, 2026
+ */
+
+package com.bigdata.bop.solutions;
+
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.FutureTask;
+
+import junit.framework.TestCase2;
+
+import com.bigdata.bop.BOp;
+import com.bigdata.bop.BOpContext;
+import com.bigdata.bop.BOpEvaluationContext;
+import com.bigdata.bop.Constant;
+import com.bigdata.bop.IBindingSet;
+import com.bigdata.bop.IConstant;
+import com.bigdata.bop.IQueryContext;
+import com.bigdata.bop.IVariable;
+import com.bigdata.bop.NV;
+import com.bigdata.bop.PipelineOp;
+import com.bigdata.bop.Var;
+import com.bigdata.bop.bindingSet.ListBindingSet;
+import com.bigdata.bop.engine.AbstractQueryEngineTestCase;
+import com.bigdata.bop.engine.BOpStats;
+import com.bigdata.bop.engine.BlockingBufferWithStats;
+import com.bigdata.bop.engine.IRunningQuery;
+import com.bigdata.bop.engine.MockRunningQuery;
+import com.bigdata.rdf.internal.IV;
+import com.bigdata.rdf.internal.VTE;
+import com.bigdata.rdf.internal.impl.TermId;
+import com.bigdata.rdf.internal.impl.literal.XSDNumericIV;
+import com.bigdata.rdf.model.BigdataLiteral;
+import com.bigdata.rdf.model.BigdataValueFactory;
+import com.bigdata.rdf.model.BigdataValueFactoryImpl;
+import com.bigdata.relation.accesspath.IAsynchronousIterator;
+import com.bigdata.relation.accesspath.IBlockingBuffer;
+import com.bigdata.relation.accesspath.ThickAsynchronousIterator;
+
+/**
+ * Unit tests for the {@link ExternalMemorySortOp}. The run size is set to a
+ * small value in order to force the solutions to be written onto several
+ * sorted runs which are then merged.
+ * 
+ * @see TestMemorySortOp
+ */
+public class TestExternalMemorySortOp extends TestCase2 {
+
+    /**
+     * 
+     */
+    public TestExternalMemorySortOp() {
+    }
+
+    /**
+     * @param name
+     */
+    public TestExternalMemorySortOp(String name) {
+        super(name);
+    }
+
+    private long termId = 1;
+    
+    private IV<BigdataLiteral, ?> makeIV(final BigdataLiteral lit) {
+
+        final IV<BigdataLiteral, ?> iv = new TermId<BigdataLiteral>(
+                VTE.LITERAL, termId++);
+
+        iv.setValue(lit);
+
+        return iv;
+
+    }
+
+    /**
+     * Test with materialized IVs. The cached RDF Values must survive the round
+     * trip through the sorted runs.
+     */
+    @SuppressWarnings({ "rawtypes", "unchecked" })
+    public void testMaterializedIVs() 
+    {
+
+        final BigdataValueFactory f = BigdataValueFactoryImpl.getInstance(getName());
+        
+    	final IVariable<IV> x = Var.var ( "x" ) ;
+    	final IVariable<IV> y = Var.var ( "y" ) ;
+        final IConstant<IV> a = new Constant<IV>(makeIV(f.createLiteral("a")));
+        final IConstant<IV> b = new Constant<IV>(makeIV(f.createLiteral("b")));
+        final IConstant<IV> c = new Constant<IV>(makeIV(f.createLiteral("c")));
+        final IConstant<IV> d = new Constant<IV>(makeIV(f.createLiteral("d")));
+        final IConstant<IV> e = new Constant<IV>(makeIV(f.createLiteral("e")));
+
+        final ISortOrder<?> sors[] = new ISortOrder[] { //
+                new SortOrder(x, true/*asc*/),//
+                new SortOrder(y, false/*asc*/)//
+                };
+
+    	final int sortOpId = 1;
+    	
+		final SortOp query = new ExternalMemorySortOp(new BOp[] {}, NV.asMap(new NV[] {//
+				new NV(ExternalMemorySortOp.Annotations.BOP_ID, sortOpId),//
+                new NV(ExternalMemorySortOp.Annotations.SORT_ORDER,sors),//
+                new NV(ExternalMemorySortOp.Annotations.VALUE_COMPARATOR, new IVComparator()),//
+				new NV(SliceOp.Annotations.EVALUATION_CONTEXT,
+						BOpEvaluationContext.CONTROLLER),//
+                new NV(ExternalMemorySortOp.Annotations.MAX_PARALLEL, 1),//
+                new NV(PipelineOp.Annotations.REORDER_SOLUTIONS,false),//
+//                new NV(ExternalMemorySortOp.Annotations.SHARED_STATE, true),//
+                new NV(ExternalMemorySortOp.Annotations.LAST_PASS, true),//
+                new NV(ExternalMemorySortOp.Annotations.RUN_SIZE, 3),//
+                new NV(ExternalMemorySortOp.Annotations.RELATION_NAME, new String[] { getName() }),//
+		}));
+
+        //
+        // the test data
+        //
+    	final IBindingSet data [] = new IBindingSet []
+        {
+              new ListBindingSet ( new IVariable<?> [] { x, y }, new IConstant [] { a, a } )
+            , new ListBindingSet ( new IVariable<?> [] { x, y }, new IConstant [] { a, e } )
+            , new ListBindingSet ( new IVariable<?> [] { x },    new IConstant [] { c }    )
+            , new ListBindingSet ( new IVariable<?> [] { x, y }, new IConstant [] { d, a } )
+            , new ListBindingSet ( new IVariable<?> [] { x, y }, new IConstant [] { d, b } )
+            , new ListBindingSet ( new IVariable<?> [] {},       new IConstant [] {}       )
+            , new ListBindingSet ( new IVariable<?> [] { x, y }, new IConstant [] { a, c } )
+            , new ListBindingSet ( new IVariable<?> [] { x, y }, new IConstant [] { b, d } )
+            , new ListBindingSet ( new IVariable<?> [] { y },    new IConstant [] { a }    )
+            , new ListBindingSet ( new IVariable<?> [] { x, y }, new IConstant [] { b, b } )
+        } ;
+
+        //
+        // the expected solutions
+        //
+    	final IBindingSet expected [] = new IBindingSet []
+        {
+              new ListBindingSet ( new IVariable<?> [] { y },    new IConstant [] { a }    )
+            , new ListBindingSet ( new IVariable<?> [] {},       new IConstant [] {}       )
+            , new ListBindingSet ( new IVariable<?> [] { x, y }, new IConstant [] { a, e } )
+            , new ListBindingSet ( new IVariable<?> [] { x, y }, new IConstant [] { a, c } )
+            , new ListBindingSet ( new IVariable<?> [] { x, y }, new IConstant [] { a, a } )
+            , new ListBindingSet ( new IVariable<?> [] { x, y }, new IConstant [] { b, d } )
+            , new ListBindingSet ( new IVariable<?> [] { x, y }, new IConstant [] { b, b } )
+            , new ListBindingSet ( new IVariable<?> [] { x },    new IConstant [] { c }    )
+            , new ListBindingSet ( new IVariable<?> [] { x, y }, new IConstant [] { d, b } )
+            , new ListBindingSet ( new IVariable<?> [] { x, y }, new IConstant [] { d, a } )
+        } ;
+
+        final BOpStats stats = query.newStats();
+
+        final IAsynchronousIterator<IBindingSet[]> source = new ThickAsynchronousIterator<IBindingSet[]>(
+                new IBindingSet[][] { data });
+
+        final IBlockingBuffer<IBindingSet[]> sink = new BlockingBufferWithStats<IBindingSet[]>(
+                query, stats);
+
+        final UUID queryId = UUID.randomUUID();
+        final IQueryContext queryContext = new MockQueryContext(queryId);
+		final IRunningQuery runningQuery = new MockRunningQuery(null/* fed */
+		, null/* indexManager */,queryContext
+		);
+
+        final BOpContext<IBindingSet> context = new BOpContext<IBindingSet>(
+                runningQuery, -1/* partitionId */
+                , stats, query/* op */, true/* lastInvocation */, source, sink,
+                null/* sink2 */
+        );
+		
+//        context.setLastInvocation();
+
+		final FutureTask<Void> ft = query.eval(context);
+		// Run the query.
+		{
+			final Thread t = new Thread() {
+				public void run() {
+					ft.run();
+				}
+			};
+			t.setDaemon(true);
+			t.start();
+		}
+
+		// Drain the solutions.
+		final List<IBindingSet> actual = new LinkedList<IBindingSet>();
+		{
+			final IAsynchronousIterator<IBindingSet[]> itr = sink.iterator();
+			try {
+				while (itr.hasNext()) {
+					actual.addAll(Arrays.asList(itr.next()));
+				}
+			} finally {
+				itr.close();
+			}
+		}
+
+		// Check the solutions.
+		AbstractQueryEngineTestCase.assertSameSolutions(expected,
+				new ThickAsynchronousIterator<IBindingSet[]>(
+						new IBindingSet[][] { actual
+								.toArray(new IBindingSet[actual.size()]) }),
+				ft);
+
+		// Check that the cached RDF Values survived the round trip.
+		int n = 0;
+		for (IBindingSet bs : actual) {
+			for (IVariable<IV> var : new IVariable[] { x, y }) {
+				final IConstant<IV> expectedVal = expected[n].get(var);
+				if (expectedVal == null) {
+					assertNull(bs.get(var));
+					continue;
+				}
+				final IV actualIV = (IV) bs.get(var).get();
+				assertTrue("Cached value lost: n=" + n + ", var=" + var,
+						actualIV.hasValue());
+				assertEquals(expectedVal.get().getValue(), actualIV.getValue());
+			}
+			n++;
+		}
+
+        assertEquals ( 1, stats.chunksIn.get () ) ;
+        assertEquals ( 10, stats.unitsIn.get () ) ;
+        assertEquals ( 10, stats.unitsOut.get () ) ;
+        assertEquals ( 1, stats.chunksOut.get () ) ;
+    }
+
+    /**
+     * Unit test with inline {@link IV}s.
+     */
+    public void testInlineIVs() {
+
+        doInlineIVsTest(3/* runSize */);
+
+    }
+
+    /**
+     * Unit test with inline {@link IV}s where the run size is larger than the
+     * #of solutions, so the solutions are sorted on the JVM heap.
+     */
+    public void testInlineIVs_inMemory() {
+
+        doInlineIVsTest(100/* runSize */);
+
+    }
+
+    @SuppressWarnings({ "rawtypes", "unchecked" })
+    private void doInlineIVsTest(final int runSize) 
+    {
+
+        final BigdataValueFactory f = BigdataValueFactoryImpl.getInstance(getName());
+        
+        final IVariable<IV> x = Var.var ( "x" ) ;
+        final IVariable<IV> y = Var.var ( "y" ) ;
+        final IConstant<IV> a = new Constant<IV>(new XSDNumericIV(1));
+        final IConstant<IV> b = new Constant<IV>(new XSDNumericIV(2));
+        final IConstant<IV> c = new Constant<IV>(new XSDNumericIV(3));
+        final IConstant<IV> d = new Constant<IV>(new XSDNumericIV(4));
+        final IConstant<IV> e = new Constant<IV>(new XSDNumericIV(5));
+
+        final ISortOrder<?> sors[] = new ISortOrder[] { //
+                new SortOrder(x, true/*asc*/),//
+                new SortOrder(y, false/*asc*/)//
+                };
+
+        final int sortOpId = 1;
+        
+        final SortOp query = new ExternalMemorySortOp(new BOp[] {}, NV.asMap(new NV[] {
+                new NV(ExternalMemorySortOp.Annotations.BOP_ID, sortOpId),
+                new NV(ExternalMemorySortOp.Annotations.SORT_ORDER,sors),//
+                new NV(ExternalMemorySortOp.Annotations.VALUE_COMPARATOR, new IVComparator()),//
+                new NV(SliceOp.Annotations.EVALUATION_CONTEXT,
+                        BOpEvaluationContext.CONTROLLER),//
+                new NV(ExternalMemorySortOp.Annotations.MAX_PARALLEL, 1),//
+                new NV(PipelineOp.Annotations.REORDER_SOLUTIONS,false),//
+//                new NV(ExternalMemorySortOp.Annotations.SHARED_STATE, true),//
+                new NV(ExternalMemorySortOp.Annotations.LAST_PASS, true),//
+                new NV(ExternalMemorySortOp.Annotations.RUN_SIZE, runSize),//
+                new NV(ExternalMemorySortOp.Annotations.RELATION_NAME, new String[] { getName() }),//
+        }));
+
+        //
+        // the test data
+        //
+        final IBindingSet data [] = new IBindingSet []
+        {
+              new ListBindingSet ( new IVariable<?> [] { x, y }, new IConstant [] { a, a } )
+            , new ListBindingSet ( new IVariable<?> [] { x, y }, new IConstant [] { a, e } )
+            , new ListBindingSet ( new IVariable<?> [] { x },    new IConstant [] { c }    )
+            , new ListBindingSet ( new IVariable<?> [] { x, y }, new IConstant [] { d, a } )
+            , new ListBindingSet ( new IVariable<?> [] { x, y }, new IConstant [] { d, b } )
+            , new ListBindingSet ( new IVariable<?> [] {},       new IConstant [] {}       )
+            , new ListBindingSet ( new IVariable<?> [] { x, y }, new IConstant [] { a, c } )
+            , new ListBindingSet ( new IVariable<?> [] { x, y }, new IConstant [] { b, d } )
+            , new ListBindingSet ( new IVariable<?> [] { y },    new IConstant [] { a }    )
+            , new ListBindingSet ( new IVariable<?> [] { x, y }, new IConstant [] { b, b } )
+        } ;
+
+        //
+        // the expected solutions
+        //
+        final IBindingSet expected [] = new IBindingSet []
+        {
+              new ListBindingSet ( new IVariable<?> [] { y },    new IConstant [] { a }    )
+            , new ListBindingSet ( new IVariable<?> [] {},       new IConstant [] {}       )
+            , new ListBindingSet ( new IVariable<?> [] { x, y }, new IConstant [] { a, e } )
+            , new ListBindingSet ( new IVariable<?> [] { x, y }, new IConstant [] { a, c } )
+            , new ListBindingSet ( new IVariable<?> [] { x, y }, new IConstant [] { a, a } )
+            , new ListBindingSet ( new IVariable<?> [] { x, y }, new IConstant [] { b, d } )
+            , new ListBindingSet ( new IVariable<?> [] { x, y }, new IConstant [] { b, b } )
+            , new ListBindingSet ( new IVariable<?> [] { x },    new IConstant [] { c }    )
+            , new ListBindingSet ( new IVariable<?> [] { x, y }, new IConstant [] { d, b } )
+            , new ListBindingSet ( new IVariable<?> [] { x, y }, new IConstant [] { d, a } )
+        } ;
+
+        final BOpStats stats = query.newStats () ;
+
+        final IAsynchronousIterator<IBindingSet[]> source = new ThickAsynchronousIterator<IBindingSet[]>(
+                new IBindingSet[][] { data });
+
+        final IBlockingBuffer<IBindingSet[]> sink = new BlockingBufferWithStats<IBindingSet[]>(
+                query, stats);
+
+        final UUID queryId = UUID.randomUUID();
+        final IQueryContext queryContext = new MockQueryContext(queryId);
+        final IRunningQuery runningQuery = new MockRunningQuery(null/* fed */
+        , null/* indexManager */,queryContext
+        );
+
+        final BOpContext<IBindingSet> context = new BOpContext<IBindingSet>(
+                runningQuery, -1/* partitionId */
+                , stats, query/* op */, true/* lastInvocation */, source, sink,
+                null/* sink2 */
+      );
+
+//        context.setLastInvocation();
+
+        final FutureTask<Void> ft = query.eval(context);
+        // Run the query.
+        {
+            final Thread t = new Thread() {
+                public void run() {
+                    ft.run();
+                }
+            };
+            t.setDaemon(true);
+            t.start();
+        }
+
+        // Check the solutions.
+        AbstractQueryEngineTestCase.assertSameSolutions(expected, sink.iterator(), ft);
+
+        assertEquals ( 1, stats.chunksIn.get () ) ;
+        assertEquals ( 10, stats.unitsIn.get () ) ;
+        assertEquals ( 10, stats.unitsOut.get () ) ;
+        assertEquals ( 1, stats.chunksOut.get () ) ;
+    }
+
+}
@@ -0,0 +1,364 @@
+/**
+
+Copyright (C) SYSTAP, LLC DBA Blazegraph 2006-2016.  All rights reserved.
+
+Contact:
+     SYSTAP, LLC DBA Blazegraph
+     2501 Calvert ST NW #106
+     Washington, DC 20008
+     licenses@blazegraph.com
+
+This program is free software; you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation; version 2 of the License.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program; if not, write to the Free Software
+Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+package com.bigdata.bop.solutions;
+
+import java.math.BigInteger;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+import junit.framework.TestCase2;
+
+import com.bigdata.bop.BOp;
+import com.bigdata.bop.BOpContext;
+import com.bigdata.bop.BOpEvaluationContext;
+import com.bigdata.bop.Bind;
+import com.bigdata.bop.Constant;
+import com.bigdata.bop.IBindingSet;
+import com.bigdata.bop.IConstant;
+import com.bigdata.bop.IQueryContext;
+import com.bigdata.bop.IValueExpression;
+import com.bigdata.bop.IVariable;
+import com.bigdata.bop.IVariableFactory;
+import com.bigdata.bop.NV;
+import com.bigdata.bop.PipelineOp;
+import com.bigdata.bop.Var;
+import com.bigdata.bop.aggregate.IAggregate;
+import com.bigdata.bop.aggregate.IMergeableAggregate;
+import com.bigdata.bop.bindingSet.ListBindingSet;
+import com.bigdata.bop.engine.AbstractQueryEngineTestCase;
+import com.bigdata.bop.engine.BOpStats;
+import com.bigdata.bop.engine.BlockingBufferWithStats;
+import com.bigdata.bop.engine.IRunningQuery;
+import com.bigdata.bop.engine.MockRunningQuery;
+import com.bigdata.bop.rdf.aggregate.COUNT;
+import com.bigdata.bop.rdf.aggregate.SAMPLE;
+import com.bigdata.bop.rdf.aggregate.SUM;
+import com.bigdata.rdf.internal.IV;
+import com.bigdata.rdf.internal.impl.literal.XSDIntegerIV;
+import com.bigdata.rdf.internal.impl.literal.XSDNumericIV;
+import com.bigdata.rdf.model.BigdataLiteral;
+import com.bigdata.relation.accesspath.IBlockingBuffer;
+import com.bigdata.relation.accesspath.ThickAsynchronousIterator;
+
+/**
+ * Unit tests for parallel aggregation using {@link PartialAggregationOp} and
+ * {@link CombineAggregationOp}.
+ */
+public class TestPartialAggregationOp extends TestCase2 {
+
+    public TestPartialAggregationOp() {
+    }
+
+    public TestPartialAggregationOp(String name) {
+        super(name);
+    }
+
+    private IQueryContext queryContext = null;
+
+    private IRunningQuery runningQuery = null;
+
+    @Override
+    protected void setUp() throws Exception {
+
+        super.setUp();
+
+        queryContext = new MockQueryContext(null/* queryId */);
+
+        runningQuery = new MockRunningQuery(null/* fed */,
+                null/* indexManager */, queryContext);
+
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+
+        if (queryContext != null) {
+            queryContext.getMemoryManager().clear();
+            queryContext = null;
+        }
+
+        runningQuery = null;
+
+        super.tearDown();
+
+    }
+
+    private final int partialId = 1;
+
+    private final int combineId = 2;
+
+    /**
+     * Return the {@link IGroupByRewriteState} for the aggregation.
+     */
+    private static IGroupByRewriteState newRewrite(
+            final IGroupByState groupByState) {
+
+        final IVariableFactory variableFactory = new AbstractAggregationTestCase.MockVariableFactory();
+
+        return new GroupByRewriter(groupByState) {
+
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            public IVariable<?> var() {
+                return variableFactory.var();
+            }
+
+        };
+
+    }
+
+    /**
+     * Aggregate the chunks using concurrent invocations of a
+     * {@link PartialAggregationOp} and then combine the partial states using
+     * the last invocation of a {@link CombineAggregationOp}, checking the
+     * output solutions.
+     */
+    private void doParallelAggregation(final IValueExpression<?>[] select,
+            final IValueExpression<?>[] groupBy, final IBindingSet[][] chunks,
+            final IBindingSet[] expected) throws Exception {
+
+        final IGroupByState groupByState = new GroupByState(select, groupBy,
+                null/* having */);
+
+        final IGroupByRewriteState groupByRewrite = newRewrite(groupByState);
+
+        assertTrue(PartialAggregationOp.isPartialAggregation(groupByState,
+                groupByRewrite));
+
+        final PartialAggregationOp partial = new PartialAggregationOp(
+                new BOp[] {}, //
+                new NV(BOp.Annotations.BOP_ID, partialId),//
+                new NV(BOp.Annotations.EVALUATION_CONTEXT,
+                        BOpEvaluationContext.CONTROLLER),//
+                new NV(PipelineOp.Annotations.PIPELINED, true),//
+                new NV(PipelineOp.Annotations.MAX_PARALLEL, chunks.length),//
+                new NV(GroupByOp.Annotations.GROUP_BY_STATE, groupByState), //
+                new NV(GroupByOp.Annotations.GROUP_BY_REWRITE, groupByRewrite) //
+        );
+
+        final CombineAggregationOp combine = new CombineAggregationOp(
+                new BOp[] { partial }, //
+                new NV(BOp.Annotations.BOP_ID, combineId),//
+                new NV(BOp.Annotations.EVALUATION_CONTEXT,
+                        BOpEvaluationContext.CONTROLLER),//
+                new NV(PipelineOp.Annotations.PIPELINED, true),//
+                new NV(PipelineOp.Annotations.MAX_PARALLEL, 1),//
+                new NV(PipelineOp.Annotations.LAST_PASS, true),//
+                new NV(CombineAggregationOp.Annotations.PARTIAL_AGGREGATION_ID,
+                        partialId),//
+                new NV(GroupByOp.Annotations.GROUP_BY_STATE, groupByState), //
+                new NV(GroupByOp.Annotations.GROUP_BY_REWRITE, groupByRewrite) //
+        );
+
+        // Run one partial aggregation task per chunk, concurrently.
+        final ExecutorService service = Executors
+                .newFixedThreadPool(Math.max(1, chunks.length));
+
+        try {
+
+            final List<Future<?>> futures = new LinkedList<Future<?>>();
+
+            for (IBindingSet[] chunk : chunks) {
+
+                final BOpStats stats = partial.newStats();
+
+                final IBlockingBuffer<IBindingSet[]> sink = new BlockingBufferWithStats<IBindingSet[]>(
+                        partial, stats);
+
+                final BOpContext<IBindingSet> context = new BOpContext<IBindingSet>(
+                        runningQuery, -1/* partitionId */, stats, partial,
+                        false/* lastInvocation */,
+                        new ThickAsynchronousIterator<IBindingSet[]>(
+                                new IBindingSet[][] { chunk }), sink, null/* sink2 */);
+
+                futures.add(service.submit(partial.eval(context)));
+
+            }
+
+            for (Future<?> f : futures) {
+
+                f.get();
+
+            }
+
+        } finally {
+
+            service.shutdownNow();
+
+        }
+
+        // The last invocation of the combine operator.
+        final BOpStats stats = combine.newStats();
+
+        final IBlockingBuffer<IBindingSet[]> sink = new BlockingBufferWithStats<IBindingSet[]>(
+                combine, stats);
+
+        final BOpContext<IBindingSet> context = new BOpContext<IBindingSet>(
+                runningQuery, -1/* partitionId */, stats, combine,
+                true/* lastInvocation */,
+                new ThickAsynchronousIterator<IBindingSet[]>(
+                        new IBindingSet[][] {}), sink, null/* sink2 */);
+
+        final FutureTask<Void> ft = combine.eval(context);
+
+        ft.run();
+
+        AbstractQueryEngineTestCase.assertSameSolutionsAnyOrder(expected,
+                sink.iterator(), ft);
+
+        // The partial states were discarded.
+        assertNull(runningQuery.getAttributes().get(partialId));
+
+    }
+
+    /**
+     * <pre>
+     * SELECT ?org (COUNT(*) AS ?n) (SUM(?lprice) AS ?totalPrice)
+     * GROUP BY ?org
+     * </pre>
+     * 
+     * with the solutions split across three partial aggregation tasks such
+     * that the groups for <code>org1</code> and <code>org2</code> are each
+     * observed by more than one task.
+     */
+    @SuppressWarnings({ "rawtypes", "unchecked" })
+    public void test_parallelAggregation_groupBy_count_sum() throws Exception {
+
+        final IVariable<IV> org = Var.var("org");
+        final IVariable<IV> lprice = Var.var("lprice");
+        final IVariable<IV> star = Var.var("*");
+        final IVariable<IV> n = Var.var("n");
+        final IVariable<IV> totalPrice = Var.var("totalPrice");
+
+        final IConstant<String> org1 = new Constant<String>("org1");
+        final IConstant<String> org2 = new Constant<String>("org2");
+        final IConstant<XSDNumericIV<BigdataLiteral>> price5 = new Constant<XSDNumericIV<BigdataLiteral>>(
+                new XSDNumericIV<BigdataLiteral>(5));
+        final IConstant<XSDNumericIV<BigdataLiteral>> price7 = new Constant<XSDNumericIV<BigdataLiteral>>(
+                new XSDNumericIV<BigdataLiteral>(7));
+        final IConstant<XSDNumericIV<BigdataLiteral>> price9 = new Constant<XSDNumericIV<BigdataLiteral>>(
+                new XSDNumericIV<BigdataLiteral>(9));
+
+        final IValueExpression<?> nExpr = new Bind(n, new COUNT(
+                false/* distinct */, star));
+
+        final IValueExpression<?> totalPriceExpr = new Bind(totalPrice,
+                new SUM(false/* distinct */, (IValueExpression<IV>) lprice));
+
+        final IBindingSet[][] chunks = new IBindingSet[][] {
+                new IBindingSet[] {
+                        new ListBindingSet(new IVariable<?>[] { org, lprice }, new IConstant[] { org1, price9 }),
+                        new ListBindingSet(new IVariable<?>[] { org, lprice }, new IConstant[] { org2, price7 }) },
+                new IBindingSet[] {
+                        new ListBindingSet(new IVariable<?>[] { org, lprice }, new IConstant[] { org1, price5 }) },
+                new IBindingSet[] {
+                        new ListBindingSet(new IVariable<?>[] { org, lprice }, new IConstant[] { org1, price7 }),
+                        new ListBindingSet(new IVariable<?>[] { org, lprice }, new IConstant[] { org2, price7 }) }, };
+
+        final IConstant<XSDIntegerIV<BigdataLiteral>> _2 = new Constant<XSDIntegerIV<BigdataLiteral>>(
+                new XSDIntegerIV<BigdataLiteral>(BigInteger.valueOf(2)));
+        final IConstant<XSDIntegerIV<BigdataLiteral>> _3 = new Constant<XSDIntegerIV<BigdataLiteral>>(
+                new XSDIntegerIV<BigdataLiteral>(BigInteger.valueOf(3)));
+        final IConstant<XSDIntegerIV<BigdataLiteral>> _14 = new Constant<XSDIntegerIV<BigdataLiteral>>(
+                new XSDIntegerIV<BigdataLiteral>(BigInteger.valueOf(14)));
+        final IConstant<XSDIntegerIV<BigdataLiteral>> _21 = new Constant<XSDIntegerIV<BigdataLiteral>>(
+                new XSDIntegerIV<BigdataLiteral>(BigInteger.valueOf(21)));
+
+        final IBindingSet[] expected = new IBindingSet[] {
+                new ListBindingSet(new IVariable<?>[] { org, n, totalPrice }, new IConstant[] { org1, _3, _21 }),
+                new ListBindingSet(new IVariable<?>[] { org, n, totalPrice }, new IConstant[] { org2, _2, _14 }), };
+
+        doParallelAggregation(//
+                new IValueExpression[] { org, nExpr, totalPriceExpr }, // select
+                new IValueExpression[] { org }, // groupBy
+                chunks, expected);
+
+    }
+
+    /**
+     * <pre>
+     * SELECT (COUNT(*) AS ?n)
+     * </pre>
+     * 
+     * with no solutions. The implicit group is still reported.
+     */
+    public void test_parallelAggregation_count_star_no_solutions()
+            throws Exception {
+
+        final IVariable<IV> star = Var.var("*");
+        final IVariable<IV> n = Var.var("n");
+
+        final IValueExpression<?> nExpr = new Bind(n, new COUNT(
+                false/* distinct */, star));
+
+        final IConstant<XSDIntegerIV<BigdataLiteral>> _0 = new Constant<XSDIntegerIV<BigdataLiteral>>(
+                new XSDIntegerIV<BigdataLiteral>(BigInteger.valueOf(0)));
+
+        final IBindingSet[] expected = new IBindingSet[] { new ListBindingSet(
+                new IVariable<?>[] { n }, new IConstant[] { _0 }), };
+
+        doParallelAggregation(//
+                new IValueExpression[] { nExpr }, // select
+                null, // groupBy
+                new IBindingSet[][] {}, expected);
+
+    }
+
+    /**
+     * Aggregations using DISTINCT or an {@link IAggregate} which is not an
+     * {@link IMergeableAggregate} can not be partially evaluated.
+     */
+    public void test_isPartialAggregation() {
+
+        final IVariable<IV> lprice = Var.var("lprice");
+        final IVariable<IV> x = Var.var("x");
+
+        {
+            final IGroupByState groupByState = new GroupByState(
+                    new IValueExpression[] { new Bind(x, new SUM(
+                            true/* distinct */, lprice)) }, null/* groupBy */,
+                    null/* having */);
+
+            assertFalse(PartialAggregationOp.isPartialAggregation(
+                    groupByState, newRewrite(groupByState)));
+        }
+
+        {
+            final IGroupByState groupByState = new GroupByState(
+                    new IValueExpression[] { new Bind(x, new SAMPLE(
+                            false/* distinct */, lprice)) }, null/* groupBy */,
+                    null/* having */);
+
+            assertFalse(PartialAggregationOp.isPartialAggregation(
+                    groupByState, newRewrite(groupByState)));
+        }
+
+    }
+
+}
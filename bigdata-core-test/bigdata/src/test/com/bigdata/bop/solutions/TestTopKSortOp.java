@@ -0,0 +1,411 @@
+/**
+
+Copyright (C) SYSTAP, LLC DBA Blazegraph 2006-2016.  All rights reserved.
+
+Contact:
+     SYSTAP, LLC DBA Blazegraph
+     2501 Calvert ST NW #106
+     Washington, DC 20008
+     licenses@blazegraph.com
+
+This program is free software; you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation; version 2 of the License.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program; if not, write to the Free Software
+Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+/*
+ * Created on Oct 17, 2026
+ */
+
+package com.bigdata.bop.solutions;
+
+import java.util.UUID;
+import java.util.concurrent.FutureTask;
+
+import junit.framework.TestCase2;
+
+import com.bigdata.bop.BOp;
+import com.bigdata.bop.BOpContext;
+import com.bigdata.bop.BOpEvaluationContext;
+import com.bigdata.bop.Constant;
+import com.bigdata.bop.IBindingSet;
+import com.bigdata.bop.IConstant;
+import com.bigdata.bop.IQueryContext;
+import com.bigdata.bop.IVariable;
+import com.bigdata.bop.NV;
+import com.bigdata.bop.PipelineOp;
+import com.bigdata.bop.Var;
+import com.bigdata.bop.bindingSet.ListBindingSet;
+import com.bigdata.bop.engine.AbstractQueryEngineTestCase;
+import com.bigdata.bop.engine.BOpStats;
+import com.bigdata.bop.engine.BlockingBufferWithStats;
+import com.bigdata.bop.engine.IRunningQuery;
+import com.bigdata.bop.engine.MockRunningQuery;
+import com.bigdata.rdf.internal.IV;
+import com.bigdata.rdf.internal.VTE;
+import com.bigdata.rdf.internal.impl.TermId;
+import com.bigdata.rdf.internal.impl.literal.XSDNumericIV;
+import com.bigdata.rdf.model.BigdataLiteral;
+import com.bigdata.rdf.model.BigdataValueFactory;
+import com.bigdata.rdf.model.BigdataValueFactoryImpl;
+import com.bigdata.relation.accesspath.IAsynchronousIterator;
+import com.bigdata.relation.accesspath.IBlockingBuffer;
+import com.bigdata.relation.accesspath.ThickAsynchronousIterator;
+
+/**
+ * Unit tests for the {@link TopKSortOp}. These tests use the same data as the
+ * {@link TestMemorySortOp}, but only the first {@link TopKSortOp.Annotations#LIMIT}
+ * solutions in the total ordering are expected.
+ * 
+ * @see TestMemorySortOp
+ */
+public class TestTopKSortOp extends TestCase2 {
+
+    /**
+     * 
+     */
+    public TestTopKSortOp() {
+    }
+
+    /**
+     * @param name
+     */
+    public TestTopKSortOp(String name) {
+        super(name);
+    }
+
+    private long termId = 1;
+    
+    private IV<BigdataLiteral, ?> makeIV(final BigdataLiteral lit) {
+
+        final IV<BigdataLiteral, ?> iv = new TermId<BigdataLiteral>(
+                VTE.LITERAL, termId++);
+
+        iv.setValue(lit);
+
+        return iv;
+
+    }
+
+    /**
+     * Test with materialized IVs.
+     */
+    @SuppressWarnings({ "rawtypes", "unchecked" })
+    public void testMaterializedIVs() 
+    {
+
+        final BigdataValueFactory f = BigdataValueFactoryImpl.getInstance(getName());
+        
+    	final IVariable<IV> x = Var.var ( "x" ) ;
+    	final IVariable<IV> y = Var.var ( "y" ) ;
+        final IConstant<IV> a = new Constant<IV>(makeIV(f.createLiteral("a")));
+        final IConstant<IV> b = new Constant<IV>(makeIV(f.createLiteral("b")));
+        final IConstant<IV> c = new Constant<IV>(makeIV(f.createLiteral("c")));
+        final IConstant<IV> d = new Constant<IV>(makeIV(f.createLiteral("d")));
+        final IConstant<IV> e = new Constant<IV>(makeIV(f.createLiteral("e")));
+
+        final ISortOrder<?> sors[] = new ISortOrder[] { //
+                new SortOrder(x, true/*asc*/),//
+                new SortOrder(y, false/*asc*/)//
+                };
+
+    	final int sortOpId = 1;
+    	
+		final SortOp query = new TopKSortOp(new BOp[] {}, NV.asMap(new NV[] {//
+				new NV(TopKSortOp.Annotations.BOP_ID, sortOpId),//
+                new NV(TopKSortOp.Annotations.SORT_ORDER,sors),//
+                new NV(TopKSortOp.Annotations.VALUE_COMPARATOR, new IVComparator()),//
+				new NV(SliceOp.Annotations.EVALUATION_CONTEXT,
+						BOpEvaluationContext.CONTROLLER),//
+                new NV(TopKSortOp.Annotations.MAX_PARALLEL, 1),//
+                new NV(PipelineOp.Annotations.REORDER_SOLUTIONS,false),//
+//                new NV(TopKSortOp.Annotations.SHARED_STATE, true),//
+                new NV(TopKSortOp.Annotations.LAST_PASS, true),//
+                new NV(TopKSortOp.Annotations.LIMIT, 4),//
+		}));
+
+        //
+        // the test data
+        //
+    	final IBindingSet data [] = new IBindingSet []
+        {
+              new ListBindingSet ( new IVariable<?> [] { x, y }, new IConstant [] { a, a } )
+            , new ListBindingSet ( new IVariable<?> [] { x, y }, new IConstant [] { a, e } )
+            , new ListBindingSet ( new IVariable<?> [] { x },    new IConstant [] { c }    )
+            , new ListBindingSet ( new IVariable<?> [] { x, y }, new IConstant [] { d, a } )
+            , new ListBindingSet ( new IVariable<?> [] { x, y }, new IConstant [] { d, b } )
+            , new ListBindingSet ( new IVariable<?> [] {},       new IConstant [] {}       )
+            , new ListBindingSet ( new IVariable<?> [] { x, y }, new IConstant [] { a, c } )
+            , new ListBindingSet ( new IVariable<?> [] { x, y }, new IConstant [] { b, d } )
+            , new ListBindingSet ( new IVariable<?> [] { y },    new IConstant [] { a }    )
+            , new ListBindingSet ( new IVariable<?> [] { x, y }, new IConstant [] { b, b } )
+        } ;
+
+        //
+        // the expected solutions
+        //
+    	final IBindingSet expected [] = new IBindingSet []
+        {
+              new ListBindingSet ( new IVariable<?> [] { y },    new IConstant [] { a }    )
+            , new ListBindingSet ( new IVariable<?> [] {},       new IConstant [] {}       )
+            , new ListBindingSet ( new IVariable<?> [] { x, y }, new IConstant [] { a, e } )
+            , new ListBindingSet ( new IVariable<?> [] { x, y }, new IConstant [] { a, c } )
+        } ;
+
+        final BOpStats stats = query.newStats();
+
+        final IAsynchronousIterator<IBindingSet[]> source = new ThickAsynchronousIterator<IBindingSet[]>(
+                new IBindingSet[][] { data });
+
+        final IBlockingBuffer<IBindingSet[]> sink = new BlockingBufferWithStats<IBindingSet[]>(
+                query, stats);
+
+        final UUID queryId = UUID.randomUUID();
+        final IQueryContext queryContext = new MockQueryContext(queryId);
+		final IRunningQuery runningQuery = new MockRunningQuery(null/* fed */
+		, null/* indexManager */,queryContext
+		);
+
+        final BOpContext<IBindingSet> context = new BOpContext<IBindingSet>(
+                runningQuery, -1/* partitionId */
+                , stats, query/* op */, true/* lastInvocation */, source, sink,
+                null/* sink2 */
+        );
+		
+//        context.setLastInvocation();
+
+		final FutureTask<Void> ft = query.eval(context);
+		// Run the query.
+		{
+			final Thread t = new Thread() {
+				public void run() {
+					ft.run();
+				}
+			};
+			t.setDaemon(true);
+			t.start();
+		}
+
+		// Check the solutions.
+		AbstractQueryEngineTestCase.assertSameSolutions(expected, sink.iterator(), ft);
+
+        assertEquals ( 1, stats.chunksIn.get () ) ;
+        assertEquals ( 10, stats.unitsIn.get () ) ;
+        assertEquals ( 4, stats.unitsOut.get () ) ;
+        assertEquals ( 1, stats.chunksOut.get () ) ;
+    }
+
+    /**
+     * Unit test with inline {@link IV}s.
+     */
+    @SuppressWarnings({ "rawtypes", "unchecked" })
+    public void testInlineIVs() 
+    {
+
+        final BigdataValueFactory f = BigdataValueFactoryImpl.getInstance(getName());
+        
+        final IVariable<IV> x = Var.var ( "x" ) ;
+        final IVariable<IV> y = Var.var ( "y" ) ;
+        final IConstant<IV> a = new Constant<IV>(new XSDNumericIV(1));
+        final IConstant<IV> b = new Constant<IV>(new XSDNumericIV(2));
+        final IConstant<IV> c = new Constant<IV>(new XSDNumericIV(3));
+        final IConstant<IV> d = new Constant<IV>(new XSDNumericIV(4));
+        final IConstant<IV> e = new Constant<IV>(new XSDNumericIV(5));
+
+        final ISortOrder<?> sors[] = new ISortOrder[] { //
+                new SortOrder(x, true/*asc*/),//
+                new SortOrder(y, false/*asc*/)//
+                };
+
+        final int sortOpId = 1;
+        
+        final SortOp query = new TopKSortOp(new BOp[] {}, NV.asMap(new NV[] {
+                new NV(TopKSortOp.Annotations.BOP_ID, sortOpId),
+                new NV(TopKSortOp.Annotations.SORT_ORDER,sors),//
+                new NV(TopKSortOp.Annotations.VALUE_COMPARATOR, new IVComparator()),//
+                new NV(SliceOp.Annotations.EVALUATION_CONTEXT,
+                        BOpEvaluationContext.CONTROLLER),//
+                new NV(TopKSortOp.Annotations.MAX_PARALLEL, 1),//
+                new NV(PipelineOp.Annotations.REORDER_SOLUTIONS,false),//
+//                new NV(TopKSortOp.Annotations.SHARED_STATE, true),//
+                new NV(TopKSortOp.Annotations.LAST_PASS, true),//
+                new NV(TopKSortOp.Annotations.LIMIT, 4),//
+        }));
+
+        //
+        // the test data
+        //
+        final IBindingSet data [] = new IBindingSet []
+        {
+              new ListBindingSet ( new IVariable<?> [] { x, y }, new IConstant [] { a, a } )
+            , new ListBindingSet ( new IVariable<?> [] { x, y }, new IConstant [] { a, e } )
+            , new ListBindingSet ( new IVariable<?> [] { x },    new IConstant [] { c }    )
+            , new ListBindingSet ( new IVariable<?> [] { x, y }, new IConstant [] { d, a } )
+            , new ListBindingSet ( new IVariable<?> [] { x, y }, new IConstant [] { d, b } )
+            , new ListBindingSet ( new IVariable<?> [] {},       new IConstant [] {}       )
+            , new ListBindingSet ( new IVariable<?> [] { x, y }, new IConstant [] { a, c } )
+            , new ListBindingSet ( new IVariable<?> [] { x, y }, new IConstant [] { b, d } )
+            , new ListBindingSet ( new IVariable<?> [] { y },    new IConstant [] { a }    )
+            , new ListBindingSet ( new IVariable<?> [] { x, y }, new IConstant [] { b, b } )
+        } ;
+
+        //
+        // the expected solutions
+        //
+        final IBindingSet expected [] = new IBindingSet []
+        {
+              new ListBindingSet ( new IVariable<?> [] { y },    new IConstant [] { a }    )
+            , new ListBindingSet ( new IVariable<?> [] {},       new IConstant [] {}       )
+            , new ListBindingSet ( new IVariable<?> [] { x, y }, new IConstant [] { a, e } )
+            , new ListBindingSet ( new IVariable<?> [] { x, y }, new IConstant [] { a, c } )
+        } ;
+
+        final BOpStats stats = query.newStats () ;
+
+        final IAsynchronousIterator<IBindingSet[]> source = new ThickAsynchronousIterator<IBindingSet[]>(
+                new IBindingSet[][] { data });
+
+        final IBlockingBuffer<IBindingSet[]> sink = new BlockingBufferWithStats<IBindingSet[]>(
+                query, stats);
+
+        final UUID queryId = UUID.randomUUID();
+        final IQueryContext queryContext = new MockQueryContext(queryId);
+        final IRunningQuery runningQuery = new MockRunningQuery(null/* fed */
+        , null/* indexManager */,queryContext
+        );
+
+        final BOpContext<IBindingSet> context = new BOpContext<IBindingSet>(
+                runningQuery, -1/* partitionId */
+                , stats, query/* op */, true/* lastInvocation */, source, sink,
+                null/* sink2 */
+      );
+
+//        context.setLastInvocation();
+
+        final FutureTask<Void> ft = query.eval(context);
+        // Run the query.
+        {
+            final Thread t = new Thread() {
+                public void run() {
+                    ft.run();
+                }
+            };
+            t.setDaemon(true);
+            t.start();
+        }
+
+        // Check the solutions.
+        AbstractQueryEngineTestCase.assertSameSolutions(expected, sink.iterator(), ft);
+
+        assertEquals ( 1, stats.chunksIn.get () ) ;
+        assertEquals ( 10, stats.unitsIn.get () ) ;
+        assertEquals ( 4, stats.unitsOut.get () ) ;
+        assertEquals ( 1, stats.chunksOut.get () ) ;
+    }
+
+    /**
+     * Unit test verifies that solutions which are equal under the sort order
+     * are retained in the order in which they were observed.
+     */
+    @SuppressWarnings({ "rawtypes", "unchecked" })
+    public void testTies() 
+    {
+
+        final IVariable<IV> x = Var.var ( "x" ) ;
+        final IVariable<IV> y = Var.var ( "y" ) ;
+        final IConstant<IV> a = new Constant<IV>(new XSDNumericIV(1));
+        final IConstant<IV> b = new Constant<IV>(new XSDNumericIV(2));
+        final IConstant<IV> c = new Constant<IV>(new XSDNumericIV(3));
+        final IConstant<IV> _1 = new Constant<IV>(new XSDNumericIV(10));
+        final IConstant<IV> _2 = new Constant<IV>(new XSDNumericIV(20));
+        final IConstant<IV> _3 = new Constant<IV>(new XSDNumericIV(30));
+
+        final ISortOrder<?> sors[] = new ISortOrder[] { //
+                new SortOrder(x, true/*asc*/),//
+                };
+
+        final int sortOpId = 1;
+        
+        final SortOp query = new TopKSortOp(new BOp[] {}, NV.asMap(new NV[] {
+                new NV(TopKSortOp.Annotations.BOP_ID, sortOpId),
+                new NV(TopKSortOp.Annotations.SORT_ORDER,sors),//
+                new NV(TopKSortOp.Annotations.VALUE_COMPARATOR, new IVComparator()),//
+                new NV(SliceOp.Annotations.EVALUATION_CONTEXT,
+                        BOpEvaluationContext.CONTROLLER),//
+                new NV(TopKSortOp.Annotations.MAX_PARALLEL, 1),//
+                new NV(PipelineOp.Annotations.REORDER_SOLUTIONS,false),//
+                new NV(TopKSortOp.Annotations.LAST_PASS, true),//
+                new NV(TopKSortOp.Annotations.LIMIT, 2),//
+        }));
+
+        //
+        // the test data
+        //
+        final IBindingSet data [] = new IBindingSet []
+        {
+              new ListBindingSet ( new IVariable<?> [] { x, y }, new IConstant [] { b, _1 } )
+            , new ListBindingSet ( new IVariable<?> [] { x, y }, new IConstant [] { a, _1 } )
+            , new ListBindingSet ( new IVariable<?> [] { x, y }, new IConstant [] { c, _1 } )
+            , new ListBindingSet ( new IVariable<?> [] { x, y }, new IConstant [] { a, _2 } )
+            , new ListBindingSet ( new IVariable<?> [] { x, y }, new IConstant [] { a, _3 } )
+        } ;
+
+        //
+        // the expected solutions
+        //
+        final IBindingSet expected [] = new IBindingSet []
+        {
+              new ListBindingSet ( new IVariable<?> [] { x, y }, new IConstant [] { a, _1 } )
+            , new ListBindingSet ( new IVariable<?> [] { x, y }, new IConstant [] { a, _2 } )
+        } ;
+
+        final BOpStats stats = query.newStats () ;
+
+        final IAsynchronousIterator<IBindingSet[]> source = new ThickAsynchronousIterator<IBindingSet[]>(
+                new IBindingSet[][] { data });
+
+        final IBlockingBuffer<IBindingSet[]> sink = new BlockingBufferWithStats<IBindingSet[]>(
+                query, stats);
+
+        final UUID queryId = UUID.randomUUID();
+        final IQueryContext queryContext = new MockQueryContext(queryId);
+        final IRunningQuery runningQuery = new MockRunningQuery(null/* fed */
+        , null/* indexManager */,queryContext
+        );
+
+        final BOpContext<IBindingSet> context = new BOpContext<IBindingSet>(
+                runningQuery, -1/* partitionId */
+                , stats, query/* op */, true/* lastInvocation */, source, sink,
+                null/* sink2 */
+      );
+
+        final FutureTask<Void> ft = query.eval(context);
+        // Run the query.
+        {
+            final Thread t = new Thread() {
+                public void run() {
+                    ft.run();
+                }
+            };
+            t.setDaemon(true);
+            t.start();
+        }
+
+        // Check the solutions.
+        AbstractQueryEngineTestCase.assertSameSolutions(expected, sink.iterator(), ft);
+
+        assertEquals ( 1, stats.chunksIn.get () ) ;
+        assertEquals ( 5, stats.unitsIn.get () ) ;
+        assertEquals ( 2, stats.unitsOut.get () ) ;
+        assertEquals ( 1, stats.chunksOut.get () ) ;
+    }
+
+}
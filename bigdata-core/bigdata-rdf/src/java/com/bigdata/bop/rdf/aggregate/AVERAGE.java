@@ -33,6 +33,7 @@ import com.bigdata.bop.BOp;
 import com.bigdata.bop.IBindingSet;
 import com.bigdata.bop.IValueExpression;
 import com.bigdata.bop.aggregate.AggregateBase;
+import com.bigdata.bop.aggregate.IMergeableAggregate;
 import com.bigdata.rdf.error.SparqlTypeErrorException;
 import com.bigdata.rdf.internal.IV;
 import com.bigdata.rdf.internal.IVUtility;
@@ -53,7 +54,8 @@ import com.bigdata.rdf.model.BigdataValue;
  * 
  * @author thompsonbry
  */
-public class AVERAGE extends AggregateBase<IV> implements  INeedsMaterialization {
+public class AVERAGE extends AggregateBase<IV> implements
+        INeedsMaterialization, IMergeableAggregate<IV> {
 
 //    private static final transient Logger log = Logger.getLogger(AVERAGE.class);
 
@@ -106,6 +108,36 @@ public class AVERAGE extends AggregateBase<IV> implements  INeedsMaterialization
         
     }
 
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Note: The partial sums and the partial counts are combined. The average
+     * is not computed until {@link #done()}.
+     */
+    @Override
+    synchronized public void merge(final IMergeableAggregate<IV> o) {
+
+        final AVERAGE t = (AVERAGE) o;
+
+        synchronized (t) {
+
+            if (firstCause == null && t.firstCause != null) {
+
+                firstCause = t.firstCause;
+
+            } else if (firstCause == null) {
+
+                aggregated = MathUtility.literalMath(aggregated, t.aggregated,
+                        MathOp.PLUS);
+
+                n += t.n;
+
+            }
+
+        }
+
+    }
+
     synchronized public IV done() {
 
         if (firstCause != null) {
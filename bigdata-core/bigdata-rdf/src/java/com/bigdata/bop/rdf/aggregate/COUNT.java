@@ -31,6 +31,7 @@ import com.bigdata.bop.IBindingSet;
 import com.bigdata.bop.IValueExpression;
 import com.bigdata.bop.IVariable;
 import com.bigdata.bop.aggregate.AggregateBase;
+import com.bigdata.bop.aggregate.IMergeableAggregate;
 import com.bigdata.rdf.internal.IV;
 import com.bigdata.rdf.internal.constraints.INeedsMaterialization;
 import com.bigdata.rdf.internal.constraints.INeedsMaterialization.Requirement;
@@ -48,7 +49,7 @@ import com.bigdata.rdf.model.BigdataLiteral;
  *
  * @author thompsonbry
  */
-public class COUNT extends AggregateBase<IV> {
+public class COUNT extends AggregateBase<IV> implements IMergeableAggregate<IV> {
 
 	/**
 	 *
@@ -138,6 +139,27 @@ public class COUNT extends AggregateBase<IV> {
 
     }
 
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Note: The partial counts are summed.
+     */
+    @Override
+    synchronized public void merge(final IMergeableAggregate<IV> o) {
+
+        final COUNT t = (COUNT) o;
+
+        synchronized (t) {
+
+            aggregated += t.aggregated;
+
+            if (firstCause == null)
+                firstCause = t.firstCause;
+
+        }
+
+    }
+
     synchronized public IV done() {
 
         if (firstCause != null) {
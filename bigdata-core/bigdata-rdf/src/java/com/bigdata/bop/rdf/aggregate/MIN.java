@@ -29,6 +29,7 @@ import com.bigdata.bop.BOp;
 import com.bigdata.bop.IBindingSet;
 import com.bigdata.bop.IValueExpression;
 import com.bigdata.bop.aggregate.AggregateBase;
+import com.bigdata.bop.aggregate.IMergeableAggregate;
 import com.bigdata.bop.solutions.IVComparator;
 import com.bigdata.rdf.internal.IV;
 import com.bigdata.rdf.internal.constraints.CompareBOp;
@@ -47,7 +48,8 @@ import com.bigdata.rdf.internal.constraints.INeedsMaterialization;
  * 
  *         TODO What is reported if there are no non-null observations?
  */
-public class MIN extends AggregateBase<IV> implements INeedsMaterialization{
+public class MIN extends AggregateBase<IV> implements
+        INeedsMaterialization, IMergeableAggregate<IV> {
 
 //    private static final transient Logger log = Logger.getLogger(MIN.class);
 
@@ -155,6 +157,33 @@ public class MIN extends AggregateBase<IV> implements INeedsMaterialization{
 
     }
 
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Note: The partial minima are compared using the same SPARQL ORDER BY
+     * semantics which are used when the MIN is computed incrementally.
+     */
+    @Override
+    synchronized public void merge(final IMergeableAggregate<IV> o) {
+
+        final MIN t = (MIN) o;
+
+        synchronized (t) {
+
+            if (firstCause == null)
+                firstCause = t.firstCause;
+
+            if (t.min != null
+                    && (min == null || comparator.compare(t.min, min) < 0)) {
+
+                min = t.min;
+
+            }
+
+        }
+
+    }
+
     synchronized public IV done() {
 
         if (firstCause != null) {
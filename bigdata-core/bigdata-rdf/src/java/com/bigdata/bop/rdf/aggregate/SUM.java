@@ -33,6 +33,7 @@ import com.bigdata.bop.BOp;
 import com.bigdata.bop.IBindingSet;
 import com.bigdata.bop.IValueExpression;
 import com.bigdata.bop.aggregate.AggregateBase;
+import com.bigdata.bop.aggregate.IMergeableAggregate;
 import com.bigdata.rdf.error.SparqlTypeErrorException;
 import com.bigdata.rdf.internal.IV;
 import com.bigdata.rdf.internal.IVUtility;
@@ -50,7 +51,8 @@ import com.bigdata.rdf.model.BigdataValue;
  * 
  * @author thompsonbry
  */
-public class SUM extends AggregateBase<IV> implements INeedsMaterialization {
+public class SUM extends AggregateBase<IV> implements
+        INeedsMaterialization, IMergeableAggregate<IV> {
 
 //    private static final transient Logger log = Logger.getLogger(SUM.class);
 
@@ -96,6 +98,35 @@ public class SUM extends AggregateBase<IV> implements INeedsMaterialization {
         
     }
 
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Note: The partial sums are added using the same type promotion rules
+     * which are used when the sum is computed incrementally.
+     */
+    @Override
+    @SuppressWarnings("rawtypes")
+    synchronized public void merge(final IMergeableAggregate<IV> o) {
+
+        final SUM t = (SUM) o;
+
+        synchronized (t) {
+
+            if (firstCause == null && t.firstCause != null) {
+
+                firstCause = t.firstCause;
+
+            } else if (firstCause == null) {
+
+                aggregated = MathUtility.literalMath(aggregated, t.aggregated,
+                        MathOp.PLUS);
+
+            }
+
+        }
+
+    }
+
     @SuppressWarnings("rawtypes")
     synchronized public IV done() {
 
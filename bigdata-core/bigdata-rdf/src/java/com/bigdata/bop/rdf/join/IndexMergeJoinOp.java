@@ -0,0 +1,787 @@
+/**
+
+Copyright (C) SYSTAP, LLC DBA Blazegraph 2006-2016.  All rights reserved.
+
+Contact:
+     SYSTAP, LLC DBA Blazegraph
+     2501 Calvert ST NW #106
+     Washington, DC 20008
+     licenses@blazegraph.com
+
+This program is free software; you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation; version 2 of the License.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program; if not, write to the Free Software
+Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+/*
+ * Created on Oct 17, 2026
+ */
+
+package com.bigdata.bop.rdf.join;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.FutureTask;
+
+import com.bigdata.bop.BOp;
+import com.bigdata.bop.BOpContext;
+import com.bigdata.bop.Constant;
+import com.bigdata.bop.IBindingSet;
+import com.bigdata.bop.IConstant;
+import com.bigdata.bop.IPredicate;
+import com.bigdata.bop.IVariable;
+import com.bigdata.bop.IVariableOrConstant;
+import com.bigdata.bop.NV;
+import com.bigdata.bop.PipelineOp;
+import com.bigdata.bop.engine.BOpStats;
+import com.bigdata.btree.IIndex;
+import com.bigdata.btree.IRangeQuery;
+import com.bigdata.btree.ITuple;
+import com.bigdata.btree.ITupleCursor;
+import com.bigdata.btree.ITupleIterator;
+import com.bigdata.btree.keys.IKeyBuilder;
+import com.bigdata.btree.keys.KeyBuilder;
+import com.bigdata.btree.keys.NoSuccessorException;
+import com.bigdata.btree.keys.SuccessorUtil;
+import com.bigdata.rdf.internal.IV;
+import com.bigdata.rdf.internal.IVUtility;
+import com.bigdata.rdf.spo.ISPO;
+import com.bigdata.rdf.spo.SPOKeyOrder;
+import com.bigdata.rdf.spo.SPORelation;
+import com.bigdata.relation.accesspath.IBlockingBuffer;
+import com.bigdata.relation.accesspath.UnsynchronizedArrayBuffer;
+import com.bigdata.util.BytesUtil;
+
+import cutthecrap.utils.striterators.ICloseableIterator;
+
+/**
+ * A merge join of two or more statement patterns which share a join
+ * variable, such as the subject-star
+ * 
+ * <pre>
+ * ?s :p1 ?a . ?s :p2 ?b .
+ * </pre>
+ * 
+ * Each statement pattern is read from the statement index whose key begins
+ * with the position of the join variable in that statement pattern (SPO for
+ * the subject, POS for the predicate and OSP for the object). Those indices
+ * all visit the join variable in the same (unsigned byte[]) order, so the
+ * statement patterns may be zipped together in a single forward pass using an
+ * {@link ITupleCursor} on each index. The cursor for one statement pattern
+ * seeks directly to the next candidate value of the join variable reported
+ * by the others (a leapfrog intersection), so runs of keys which can not join
+ * are skipped rather than read.
+ * <p>
+ * This replaces the nested index join, which issues one random probe of the
+ * second index for each solution of the first statement pattern, with a
+ * sequential scan of both indices. It is attractive when all of the
+ * statement patterns are large. When one of them is selective the nested
+ * index join is cheaper.
+ * <p>
+ * For each statement pattern, the constants which follow the join variable
+ * in the key are appended to the join variable to form the key prefix which
+ * must exist for a value of the join variable to be a candidate. Any other
+ * constants (including variables bound by a source solution) are tested
+ * against the tuples. The source solutions are joined one at a time.
+ * <p>
+ * Note: The statement patterns MUST NOT have any index local or access path
+ * filters and a variable MUST NOT appear more than once in a statement
+ * pattern. Only the triples (and SIDs) modes are supported.
+ * 
+ * @see com.bigdata.rdf.sparql.ast.optimizers.ASTIndexMergeJoinOptimizer
+ */
+public class IndexMergeJoinOp extends PipelineOp {
+
+    /**
+     * 
+     */
+    private static final long serialVersionUID = 1L;
+
+    public interface Annotations extends PipelineOp.Annotations {
+
+        /**
+         * The statement patterns to be joined (an {@link IPredicate}[]).
+         */
+        String PREDICATES = IndexMergeJoinOp.class.getName()
+                + ".predicates";
+
+        /**
+         * The variable shared by all of the {@link #PREDICATES} (an
+         * {@link IVariable}).
+         */
+        String JOIN_VAR = IndexMergeJoinOp.class.getName() + ".joinVar";
+
+    }
+
+    /**
+     * Deep copy constructor.
+     * 
+     * @param op
+     */
+    public IndexMergeJoinOp(final IndexMergeJoinOp op) {
+
+        super(op);
+
+    }
+
+    /**
+     * Shallow copy constructor.
+     * 
+     * @param args
+     * @param annotations
+     */
+    public IndexMergeJoinOp(final BOp[] args,
+            final Map<String, Object> annotations) {
+
+        super(args, annotations);
+
+        final IPredicate<ISPO>[] preds = getPredicates();
+
+        if (preds.length < 2)
+            throw new IllegalArgumentException(Annotations.PREDICATES);
+
+        final IVariable<?> joinVar = getJoinVar();
+
+        for (IPredicate<ISPO> pred : preds) {
+
+            if (getKeyOrder(pred, joinVar) == null)
+                throw new IllegalArgumentException(Annotations.JOIN_VAR
+                        + " not found: " + pred);
+
+            final List<IVariable<?>> seen = new ArrayList<IVariable<?>>();
+
+            for (int j = 0; j < 3; j++) {
+
+                final IVariableOrConstant<?> t = pred.get(j);
+
+                if (t == null || !t.isVar())
+                    continue;
+
+                if (seen.contains(t))
+                    throw new UnsupportedOperationException(
+                            "Variable used more than once: " + pred);
+
+                seen.add((IVariable<?>) t);
+
+            }
+
+            if (pred.getIndexLocalFilter() != null
+                    || pred.getAccessPathFilter() != null)
+                throw new UnsupportedOperationException("Filtered: " + pred);
+
+        }
+
+    }
+
+    public IndexMergeJoinOp(final BOp[] args, final NV... annotations) {
+
+        this(args, NV.asMap(annotations));
+
+    }
+
+    /**
+     * @see Annotations#PREDICATES
+     */
+    @SuppressWarnings("unchecked")
+    public IPredicate<ISPO>[] getPredicates() {
+
+        return (IPredicate<ISPO>[]) getRequiredProperty(Annotations.PREDICATES);
+
+    }
+
+    /**
+     * @see Annotations#JOIN_VAR
+     */
+    public IVariable<?> getJoinVar() {
+
+        return (IVariable<?>) getRequiredProperty(Annotations.JOIN_VAR);
+
+    }
+
+    /**
+     * Return the triples mode key order whose first key component is the
+     * given position in the statement.
+     * 
+     * @param pos
+     *            The position of the join variable (0:s, 1:p, 2:o).
+     */
+    public static SPOKeyOrder getKeyOrder(final int pos) {
+
+        switch (pos) {
+        case 0:
+            return SPOKeyOrder.SPO;
+        case 1:
+            return SPOKeyOrder.POS;
+        case 2:
+            return SPOKeyOrder.OSP;
+        default:
+            throw new IllegalArgumentException();
+        }
+
+    }
+
+    /**
+     * Return the key order which will be used to read the statement pattern
+     * -or- <code>null</code> if the join variable is not used in the
+     * subject, predicate or object position.
+     */
+    private static SPOKeyOrder getKeyOrder(final IPredicate<ISPO> pred,
+            final IVariable<?> joinVar) {
+
+        for (int j = 0; j < 3; j++) {
+
+            if (pred.get(j) == joinVar)
+                return getKeyOrder(j);
+
+        }
+
+        return null;
+
+    }
+
+    @Override
+    public FutureTask<Void> eval(final BOpContext<IBindingSet> context) {
+
+        return new FutureTask<Void>(new IndexMergeJoinTask(this, context));
+
+    }
+
+    /**
+     * Return <code>true</code> iff the key begins with the prefix.
+     */
+    private static boolean startsWith(final byte[] key, final byte[] prefix) {
+
+        if (key.length < prefix.length)
+            return false;
+
+        return BytesUtil.compareBytesWithLenAndOffset(0, prefix.length, key,
+                0, prefix.length, prefix) == 0;
+
+    }
+
+    /**
+     * Return the concatenation of two byte[]s.
+     */
+    private static byte[] concat(final byte[] a, final byte[] b) {
+
+        final byte[] c = new byte[a.length + b.length];
+
+        System.arraycopy(a, 0, c, 0, a.length);
+
+        System.arraycopy(b, 0, c, a.length, b.length);
+
+        return c;
+
+    }
+
+    /**
+     * Return the smallest key which is GT every key having the given prefix
+     * -or- <code>null</code> if there is no such key.
+     */
+    private static byte[] successor(final byte[] prefix) {
+
+        try {
+
+            return SuccessorUtil.successor(prefix.clone());
+
+        } catch (NoSuccessorException ex) {
+
+            return null;
+
+        }
+
+    }
+
+    /**
+     * Positions on the first key GTE a probe key. An {@link ITupleCursor} is
+     * used when the index provides one. Otherwise each seek issues a new
+     * range iterator against the index.
+     */
+    private static class Cursor {
+
+        private final IIndex ndx;
+
+        private final ITupleCursor<?> cursor;
+
+        Cursor(final IIndex ndx) {
+
+            this.ndx = ndx;
+
+            final ITupleIterator<?> itr = ndx.rangeIterator(null/* fromKey */,
+                    null/* toKey */, 0/* capacity */, IRangeQuery.KEYS
+                            | IRangeQuery.CURSOR, null/* filter */);
+
+            this.cursor = itr instanceof ITupleCursor ? (ITupleCursor<?>) itr
+                    : null;
+
+        }
+
+        /**
+         * Return the first key GTE the given key -or- <code>null</code> if
+         * there is no such key.
+         */
+        byte[] seek(final byte[] key) {
+
+            if (cursor != null) {
+
+                final ITuple<?> t = cursor.seek(key);
+
+                if (t != null)
+                    return t.getKey();
+
+                return cursor.hasNext() ? cursor.next().getKey() : null;
+
+            }
+
+            final ITupleIterator<?> itr = ndx.rangeIterator(
+                    key.length == 0 ? null : key, null/* toKey */,
+                    1/* capacity */, IRangeQuery.KEYS, null/* filter */);
+
+            return itr.hasNext() ? itr.next().getKey() : null;
+
+        }
+
+    }
+
+    /**
+     * One statement pattern as bound by a source solution.
+     */
+    private static class Atom {
+
+        final IIndex ndx;
+
+        final SPOKeyOrder keyOrder;
+
+        final Cursor cursor;
+
+        /**
+         * The encoded constants which immediately follow the join variable in
+         * the key.
+         */
+        final byte[] suffix;
+
+        /**
+         * The constant (if any) for each position in the statement (0:s, 1:p,
+         * 2:o) which must be tested against the tuples.
+         */
+        @SuppressWarnings("rawtypes")
+        final IV[] filter;
+
+        /**
+         * The variable (if any) for each position in the statement, other
+         * than the join variable.
+         */
+        final IVariable<?>[] vars;
+
+        @SuppressWarnings("rawtypes")
+        Atom(final IIndex ndx, final SPOKeyOrder keyOrder, final byte[] suffix,
+                final IV[] filter, final IVariable<?>[] vars) {
+
+            this.ndx = ndx;
+            this.keyOrder = keyOrder;
+            this.cursor = new Cursor(ndx);
+            this.suffix = suffix;
+            this.filter = filter;
+            this.vars = vars;
+
+        }
+
+        /**
+         * Return the encoded value of the join variable for the first
+         * candidate GTE the given value -or- <code>null</code> if there is no
+         * such candidate. A candidate is a value of the join variable for
+         * which some key begins with that value followed by the
+         * {@link #suffix}.
+         */
+        byte[] advance(byte[] target) {
+
+            while (target != null) {
+
+                final byte[] key = cursor.seek(target);
+
+                if (key == null)
+                    return null;
+
+                @SuppressWarnings("rawtypes")
+                final IV iv = IVUtility.decodeFromOffset(key, 0);
+
+                final byte[] lead = new byte[iv.byteLength()];
+
+                System.arraycopy(key, 0, lead, 0, lead.length);
+
+                final byte[] prefix = concat(lead, suffix);
+
+                if (startsWith(key, prefix))
+                    return lead;
+
+                if (BytesUtil.compareBytes(key, prefix) < 0) {
+
+                    // Same value for the join variable : skip ahead.
+                    final byte[] tmp = cursor.seek(prefix);
+
+                    if (tmp != null && startsWith(tmp, prefix))
+                        return lead;
+
+                }
+
+                // Next value of the join variable.
+                target = successor(lead);
+
+            }
+
+            return null;
+
+        }
+
+        /**
+         * Return the statements (as {@link IV}s in SPO order) for the given
+         * value of the join variable which satisfy the {@link #filter}.
+         */
+        @SuppressWarnings("rawtypes")
+        List<IV[]> read(final byte[] lead) {
+
+            final byte[] prefix = concat(lead, suffix);
+
+            final ITupleIterator<?> itr = ndx.rangeIterator(prefix,
+                    successor(prefix), 0/* capacity */, IRangeQuery.KEYS,
+                    null/* filter */);
+
+            final List<IV[]> rows = new ArrayList<IV[]>();
+
+            while (itr.hasNext()) {
+
+                final IV[] ivs = IVUtility.decode(itr.next().getKey(), 3);
+
+                final IV[] spo = new IV[3];
+
+                boolean ok = true;
+
+                for (int i = 0; i < 3 && ok; i++) {
+
+                    final int j = keyOrder.getKeyOrder(i);
+
+                    spo[j] = ivs[i];
+
+                    if (filter[j] != null && !filter[j].equals(ivs[i]))
+                        ok = false;
+
+                }
+
+                if (ok)
+                    rows.add(spo);
+
+            }
+
+            return rows;
+
+        }
+
+    }
+
+    /**
+     * Task executing on the node.
+     */
+    static private class IndexMergeJoinTask implements Callable<Void> {
+
+        private final IndexMergeJoinOp op;
+
+        private final BOpContext<IBindingSet> context;
+
+        private final BOpStats stats;
+
+        private final IPredicate<ISPO>[] preds;
+
+        private final IVariable<?> joinVar;
+
+        private final SPORelation relation;
+
+        private final IKeyBuilder keyBuilder = KeyBuilder.newInstance();
+
+        IndexMergeJoinTask(final IndexMergeJoinOp op,
+                final BOpContext<IBindingSet> context) {
+
+            this.op = op;
+
+            this.context = context;
+
+            this.stats = context.getStats();
+
+            this.preds = op.getPredicates();
+
+            this.joinVar = op.getJoinVar();
+
+            this.relation = (SPORelation) context.getRelation(preds[0]);
+
+            if (relation.getKeyArity() != 3)
+                throw new UnsupportedOperationException("Quads");
+
+        }
+
+        @Override
+        public Void call() throws Exception {
+
+            final ICloseableIterator<IBindingSet[]> source = context
+                    .getSource();
+
+            final IBlockingBuffer<IBindingSet[]> sink = context.getSink();
+
+            try {
+
+                final UnsynchronizedArrayBuffer<IBindingSet> tmp = new UnsynchronizedArrayBuffer<IBindingSet>(
+                        sink, IBindingSet.class, op.getChunkCapacity());
+
+                while (source.hasNext()) {
+
+                    final IBindingSet[] chunk = source.next();
+
+                    stats.chunksIn.increment();
+
+                    stats.unitsIn.add(chunk.length);
+
+                    for (IBindingSet bset : chunk) {
+
+                        join(bset, tmp);
+
+                    }
+
+                }
+
+                tmp.flush();
+
+                sink.flush();
+
+                return null;
+
+            } finally {
+
+                sink.close();
+
+                source.close();
+
+            }
+
+        }
+
+        /**
+         * Return the atom for an as-bound statement pattern.
+         */
+        @SuppressWarnings("rawtypes")
+        private Atom newAtom(final IPredicate<ISPO> pred,
+                final IPredicate<ISPO> asBound) {
+
+            final SPOKeyOrder keyOrder = getKeyOrder(pred, joinVar);
+
+            final IV[] filter = new IV[3];
+
+            final IVariable<?>[] vars = new IVariable<?>[3];
+
+            keyBuilder.reset();
+
+            // The constants which follow the join variable in the key.
+            boolean prefix = true;
+
+            for (int i = 1; i < 3; i++) {
+
+                final int j = keyOrder.getKeyOrder(i);
+
+                final IVariableOrConstant<?> t = asBound.get(j);
+
+                if (t.isVar()) {
+
+                    vars[j] = (IVariable<?>) t;
+
+                    prefix = false;
+
+                } else if (prefix) {
+
+                    IVUtility.encode(keyBuilder, (IV) t.get());
+
+                } else {
+
+                    filter[j] = (IV) t.get();
+
+                }
+
+            }
+
+            return new Atom(relation.getIndex(keyOrder), keyOrder,
+                    keyBuilder.getKey(), filter, vars);
+
+        }
+
+        /**
+         * The merge join for one source solution.
+         */
+        @SuppressWarnings("rawtypes")
+        private void join(final IBindingSet src,
+                final UnsynchronizedArrayBuffer<IBindingSet> out) {
+
+            final int n = preds.length;
+
+            final Atom[] atoms = new Atom[n];
+
+            for (int i = 0; i < n; i++) {
+
+                atoms[i] = newAtom(preds[i], preds[i].asBound(src));
+
+            }
+
+            // The value of the join variable when bound by the source.
+            final IConstant<?> c = src.get(joinVar);
+
+            final byte[] fixed = c == null ? null : IVUtility.encode(
+                    keyBuilder.reset(), (IV) c.get()).getKey();
+
+            byte[] target = fixed == null ? new byte[0] : fixed;
+
+            while (true) {
+
+                if (Thread.interrupted())
+                    throw new RuntimeException(new InterruptedException());
+
+                // Leapfrog until all atoms agree on the join variable.
+                byte[] max = atoms[0].advance(target);
+
+                if (max == null)
+                    return;
+
+                int agree = 1;
+
+                for (int i = 1 % n; agree < n; i = (i + 1) % n) {
+
+                    final byte[] next = atoms[i].advance(max);
+
+                    if (next == null)
+                        return;
+
+                    if (BytesUtil.bytesEqual(next, max)) {
+
+                        agree++;
+
+                    } else {
+
+                        max = next;
+
+                        agree = 1;
+
+                    }
+
+                }
+
+                if (fixed != null) {
+
+                    if (BytesUtil.bytesEqual(max, fixed))
+                        emit(src, atoms, max, out);
+
+                    return;
+
+                }
+
+                emit(src, atoms, max, out);
+
+                if ((target = successor(max)) == null)
+                    return;
+
+            }
+
+        }
+
+        /**
+         * Output the cross product of the statements for each atom having
+         * the given value for the join variable.
+         */
+        @SuppressWarnings("rawtypes")
+        private void emit(final IBindingSet src, final Atom[] atoms,
+                final byte[] lead, final UnsynchronizedArrayBuffer<IBindingSet> out) {
+
+            final List<List<IV[]>> rows = new ArrayList<List<IV[]>>(
+                    atoms.length);
+
+            for (Atom atom : atoms) {
+
+                final List<IV[]> tmp = atom.read(lead);
+
+                if (tmp.isEmpty())
+                    return;
+
+                rows.add(tmp);
+
+            }
+
+            final IBindingSet bset = src.clone();
+
+            if (!bset.isBound(joinVar)) {
+
+                bset.set(joinVar, new Constant<IV>(IVUtility.decodeFromOffset(
+                        lead, 0)));
+
+            }
+
+            product(bset, atoms, rows, 0, out);
+
+        }
+
+        /**
+         * Recursively output the cross product.
+         */
+        @SuppressWarnings({ "rawtypes", "unchecked" })
+        private void product(final IBindingSet bset, final Atom[] atoms,
+                final List<List<IV[]>> rows, final int k,
+                final UnsynchronizedArrayBuffer<IBindingSet> out) {
+
+            if (k == atoms.length) {
+
+                out.add(bset);
+
+                return;
+
+            }
+
+            final IVariable<?>[] vars = atoms[k].vars;
+
+            for (IV[] spo : rows.get(k)) {
+
+                final IBindingSet tmp = bset.clone();
+
+                boolean ok = true;
+
+                for (int j = 0; j < 3 && ok; j++) {
+
+                    if (vars[j] == null)
+                        continue;
+
+                    final IConstant<?> old = tmp.get(vars[j]);
+
+                    if (old == null) {
+
+                        tmp.set(vars[j], new Constant<IV>(spo[j]));
+
+                    } else if (!old.get().equals(spo[j])) {
+
+                        // Inconsistent binding for a shared variable.
+                        ok = false;
+
+                    }
+
+                }
+
+                if (ok)
+                    product(tmp, atoms, rows, k + 1, out);
+
+            }
+
+        }
+
+    } // class IndexMergeJoinTask
+
+}
@@ -0,0 +1,1126 @@
+/**
+
+Copyright (C) SYSTAP, LLC DBA Blazegraph 2006-2016.  All rights reserved.
+
+Contact:
+     SYSTAP, LLC DBA Blazegraph
+     2501 Calvert ST NW #106
+     Washington, DC 20008
+     licenses@blazegraph.com
+
+This program is free software; you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation; version 2 of the License.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program; if not, write to the Free Software
+Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+/*
+ * Created on Oct 17, 2026
+ */
+
+package com.bigdata.bop.rdf.join;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.FutureTask;
+
+import com.bigdata.bop.BOp;
+import com.bigdata.bop.BOpContext;
+import com.bigdata.bop.Constant;
+import com.bigdata.bop.IBindingSet;
+import com.bigdata.bop.IPredicate;
+import com.bigdata.bop.IVariable;
+import com.bigdata.bop.IVariableOrConstant;
+import com.bigdata.bop.NV;
+import com.bigdata.bop.PipelineOp;
+import com.bigdata.bop.engine.BOpStats;
+import com.bigdata.btree.IIndex;
+import com.bigdata.btree.IRangeQuery;
+import com.bigdata.btree.ITupleIterator;
+import com.bigdata.btree.keys.IKeyBuilder;
+import com.bigdata.btree.keys.KeyBuilder;
+import com.bigdata.btree.keys.NoSuccessorException;
+import com.bigdata.btree.keys.SuccessorUtil;
+import com.bigdata.rdf.internal.IV;
+import com.bigdata.rdf.internal.IVUtility;
+import com.bigdata.rdf.spo.ISPO;
+import com.bigdata.rdf.spo.SPOKeyOrder;
+import com.bigdata.rdf.spo.SPORelation;
+import com.bigdata.relation.accesspath.IAccessPath;
+import com.bigdata.relation.accesspath.IBlockingBuffer;
+import com.bigdata.relation.accesspath.UnsynchronizedArrayBuffer;
+import com.bigdata.striterator.IChunkedOrderedIterator;
+import com.bigdata.striterator.IKeyOrder;
+import com.bigdata.util.BytesUtil;
+
+import cutthecrap.utils.striterators.ICloseableIterator;
+
+/**
+ * A multi-way worst-case optimal join of a set of statement patterns using
+ * the leapfrog triejoin algorithm (Veldhuizen, 2014). The variables are
+ * eliminated one at a time in {@link Annotations#VARIABLE_ORDER}. For each
+ * variable, the values which are consistent with every statement pattern
+ * using that variable are found by a leapfrog intersection of sorted
+ * iterators over the candidate values, one per statement pattern. The size of
+ * the intermediate results is bounded by the size of the output, which is
+ * what makes this join attractive for cyclic patterns (triangles, cliques)
+ * for which any plan of pairwise joins can produce intermediate results far
+ * larger than the output.
+ * <p>
+ * Each statement pattern is viewed as a trie whose levels are its constants
+ * followed by its variables in the variable order. When one of the statement
+ * indices has its key components in that order, the trie is read directly
+ * from the index: the values at a level are the distinct key components
+ * following a key prefix and a seek is a single probe of the B+Tree. When no
+ * index has a suitable order, the statement pattern is read once through its
+ * access path and a sorted in-memory trie is built for it. Values are ordered
+ * by their unsigned byte[] {@link IV} encoding, which is the order of the
+ * statement indices.
+ * <p>
+ * The source solutions are joined one at a time. Variables which are bound
+ * in a source solution are treated as constants for that solution.
+ * <p>
+ * Note: The statement patterns MUST NOT have any index local or access path
+ * filters and a variable MUST NOT appear more than once in a statement
+ * pattern. Only the triples (and SIDs) modes are supported.
+ * 
+ * @see com.bigdata.rdf.sparql.ast.optimizers.ASTWorstCaseOptimalJoinOptimizer
+ */
+public class LeapfrogTriejoinOp extends PipelineOp {
+
+    /**
+     * 
+     */
+    private static final long serialVersionUID = 1L;
+
+    public interface Annotations extends PipelineOp.Annotations {
+
+        /**
+         * The statement patterns to be joined (an {@link IPredicate}[]).
+         */
+        String PREDICATES = LeapfrogTriejoinOp.class.getName()
+                + ".predicates";
+
+        /**
+         * The order in which the variables will be eliminated (an
+         * {@link IVariable}[]). Every variable used by the
+         * {@link #PREDICATES} MUST appear in this order.
+         */
+        String VARIABLE_ORDER = LeapfrogTriejoinOp.class.getName()
+                + ".variableOrder";
+
+    }
+
+    /**
+     * Deep copy constructor.
+     * 
+     * @param op
+     */
+    public LeapfrogTriejoinOp(final LeapfrogTriejoinOp op) {
+
+        super(op);
+
+    }
+
+    /**
+     * Shallow copy constructor.
+     * 
+     * @param args
+     * @param annotations
+     */
+    public LeapfrogTriejoinOp(final BOp[] args,
+            final Map<String, Object> annotations) {
+
+        super(args, annotations);
+
+        final IPredicate<ISPO>[] preds = getPredicates();
+
+        if (preds.length == 0)
+            throw new IllegalArgumentException(Annotations.PREDICATES);
+
+        final List<IVariable<?>> order = Arrays.asList(getVariableOrder());
+
+        for (IPredicate<ISPO> pred : preds) {
+
+            final List<IVariable<?>> seen = new ArrayList<IVariable<?>>();
+
+            for (int i = 0; i < pred.arity(); i++) {
+
+                final IVariableOrConstant<?> t = pred.get(i);
+
+                if (t == null || !t.isVar())
+                    continue;
+
+                if (!order.contains(t))
+                    throw new IllegalArgumentException(
+                            Annotations.VARIABLE_ORDER + " does not include "
+                                    + t);
+
+                if (seen.contains(t))
+                    throw new UnsupportedOperationException(
+                            "Variable used more than once: " + pred);
+
+                seen.add((IVariable<?>) t);
+
+            }
+
+            if (pred.getIndexLocalFilter() != null
+                    || pred.getAccessPathFilter() != null)
+                throw new UnsupportedOperationException("Filtered: " + pred);
+
+        }
+
+    }
+
+    public LeapfrogTriejoinOp(final BOp[] args, final NV... annotations) {
+
+        this(args, NV.asMap(annotations));
+
+    }
+
+    /**
+     * @see Annotations#PREDICATES
+     */
+    @SuppressWarnings("unchecked")
+    public IPredicate<ISPO>[] getPredicates() {
+
+        return (IPredicate<ISPO>[]) getRequiredProperty(Annotations.PREDICATES);
+
+    }
+
+    /**
+     * @see Annotations#VARIABLE_ORDER
+     */
+    public IVariable<?>[] getVariableOrder() {
+
+        return (IVariable<?>[]) getRequiredProperty(Annotations.VARIABLE_ORDER);
+
+    }
+
+    @Override
+    public FutureTask<Void> eval(final BOpContext<IBindingSet> context) {
+
+        return new FutureTask<Void>(new LeapfrogTriejoinTask(this, context));
+
+    }
+
+    /**
+     * Compares the unsigned byte[] encodings of two {@link IV}s.
+     */
+    private static int compare(final byte[] a, final byte[] b) {
+
+        return BytesUtil.compareBytes(a, b);
+
+    }
+
+    /**
+     * Return the unsigned byte[] encoding of an {@link IV}.
+     */
+    @SuppressWarnings("rawtypes")
+    private static byte[] encode(final IKeyBuilder keyBuilder, final IV iv) {
+
+        return IVUtility.encode(keyBuilder.reset(), iv).getKey();
+
+    }
+
+    /**
+     * Return the concatenation of two byte[]s.
+     */
+    private static byte[] concat(final byte[] a, final byte[] b) {
+
+        final byte[] c = new byte[a.length + b.length];
+
+        System.arraycopy(a, 0, c, 0, a.length);
+
+        System.arraycopy(b, 0, c, a.length, b.length);
+
+        return c;
+
+    }
+
+    /**
+     * An iterator over the distinct values at one level of a trie. The values
+     * are visited in ascending order.
+     */
+    private static abstract class TrieIterator {
+
+        /**
+         * <code>true</code> iff there are no more values at this level.
+         */
+        abstract boolean atEnd();
+
+        /**
+         * The encoded value at the current position.
+         */
+        abstract byte[] key();
+
+        /**
+         * The value at the current position.
+         */
+        @SuppressWarnings("rawtypes")
+        abstract IV value();
+
+        /**
+         * Advance to the next distinct value.
+         */
+        abstract void next();
+
+        /**
+         * Advance to the first value GTE the given value. The iterator never
+         * moves backwards.
+         */
+        abstract void seek(byte[] key);
+
+        /**
+         * Return an iterator over the next level of the trie for the current
+         * value.
+         */
+        abstract TrieIterator open();
+
+    }
+
+    /**
+     * A trie level read directly from a statement index. The values at this
+     * level are the key components which follow the key prefix formed from
+     * the constants and the values chosen for the previous levels.
+     */
+    private static class IndexTrieIterator extends TrieIterator {
+
+        private final IIndex ndx;
+
+        private final byte[] prefix;
+
+        /**
+         * The exclusive upper bound for keys having that prefix (
+         * <code>null</code> if there is no upper bound).
+         */
+        private final byte[] toKey;
+
+        private byte[] key;
+
+        @SuppressWarnings("rawtypes")
+        private IV value;
+
+        IndexTrieIterator(final IIndex ndx, final byte[] prefix) {
+
+            this.ndx = ndx;
+
+            this.prefix = prefix;
+
+            byte[] toKey = null;
+
+            if (prefix.length > 0) {
+
+                try {
+
+                    toKey = SuccessorUtil.successor(prefix.clone());
+
+                } catch (NoSuccessorException ex) {
+
+                    // No upper bound.
+
+                }
+
+            }
+
+            this.toKey = toKey;
+
+            // Position on the first value.
+            seekKey(prefix);
+
+        }
+
+        /**
+         * Position on the first key GTE the given key and having the prefix.
+         */
+        private void seekKey(final byte[] fromKey) {
+
+            final ITupleIterator<?> itr = ndx.rangeIterator(
+                    fromKey.length == 0 ? null : fromKey, toKey,
+                    1/* capacity */, IRangeQuery.KEYS, null/* filter */);
+
+            if (!itr.hasNext()) {
+
+                key = null;
+
+                value = null;
+
+                return;
+
+            }
+
+            final byte[] tmp = itr.next().getKey();
+
+            value = IVUtility.decodeFromOffset(tmp, prefix.length);
+
+            key = Arrays.copyOfRange(tmp, prefix.length, prefix.length
+                    + value.byteLength());
+
+        }
+
+        @Override
+        boolean atEnd() {
+            return key == null;
+        }
+
+        @Override
+        byte[] key() {
+            return key;
+        }
+
+        @Override
+        @SuppressWarnings("rawtypes")
+        IV value() {
+            return value;
+        }
+
+        @Override
+        void next() {
+
+            final byte[] fromKey;
+
+            try {
+
+                fromKey = SuccessorUtil.successor(concat(prefix, key));
+
+            } catch (NoSuccessorException ex) {
+
+                key = null;
+
+                value = null;
+
+                return;
+
+            }
+
+            seekKey(fromKey);
+
+        }
+
+        @Override
+        void seek(final byte[] k) {
+
+            if (compare(key, k) >= 0) {
+
+                // Already GTE the key.
+                return;
+
+            }
+
+            seekKey(concat(prefix, k));
+
+        }
+
+        @Override
+        TrieIterator open() {
+
+            return new IndexTrieIterator(ndx, concat(prefix, key));
+
+        }
+
+    }
+
+    /**
+     * A trie level over a sorted array of tuples. Each tuple gives the
+     * encoded values of the variables of a statement pattern in the variable
+     * order.
+     */
+    private static class MemoryTrieIterator extends TrieIterator {
+
+        private final byte[][][] keys;
+
+        @SuppressWarnings("rawtypes")
+        private final IV[][] values;
+
+        /** The level (the index of the tuple component). */
+        private final int depth;
+
+        /** The exclusive upper bound of the tuples for this level. */
+        private final int hi;
+
+        /** The current tuple. */
+        private int pos;
+
+        @SuppressWarnings("rawtypes")
+        MemoryTrieIterator(final byte[][][] keys, final IV[][] values,
+                final int depth, final int lo, final int hi) {
+
+            this.keys = keys;
+
+            this.values = values;
+
+            this.depth = depth;
+
+            this.pos = lo;
+
+            this.hi = hi;
+
+        }
+
+        /**
+         * Return the index of the first tuple in [pos:hi) whose component for
+         * this level is GTE (or GT if <i>strict</i>) the given value.
+         */
+        private int search(final byte[] k, final boolean strict) {
+
+            int low = pos, high = hi;
+
+            while (low < high) {
+
+                final int mid = (low + high) >>> 1;
+
+                final int ret = compare(keys[mid][depth], k);
+
+                if (ret < 0 || (strict && ret == 0)) {
+
+                    low = mid + 1;
+
+                } else {
+
+                    high = mid;
+
+                }
+
+            }
+
+            return low;
+
+        }
+
+        @Override
+        boolean atEnd() {
+            return pos >= hi;
+        }
+
+        @Override
+        byte[] key() {
+            return keys[pos][depth];
+        }
+
+        @Override
+        @SuppressWarnings("rawtypes")
+        IV value() {
+            return values[pos][depth];
+        }
+
+        @Override
+        void next() {
+            pos = search(key(), true/* strict */);
+        }
+
+        @Override
+        void seek(final byte[] k) {
+            pos = search(k, false/* strict */);
+        }
+
+        @Override
+        TrieIterator open() {
+            return new MemoryTrieIterator(keys, values, depth + 1, pos,
+                    search(key(), true/* strict */));
+        }
+
+    }
+
+    /**
+     * The trie for one statement pattern as bound by a source solution.
+     */
+    private static class Atom {
+
+        /**
+         * The index into the variable order of each unbound variable used by
+         * the statement pattern, in ascending order.
+         */
+        final int[] levels;
+
+        /**
+         * The index (when the trie is read from a statement index).
+         */
+        final IIndex ndx;
+
+        /**
+         * The key prefix formed from the constants (when the trie is read from
+         * a statement index).
+         */
+        final byte[] prefix;
+
+        /**
+         * The tuples (when the trie was materialized).
+         */
+        final byte[][][] keys;
+
+        @SuppressWarnings("rawtypes")
+        final IV[][] values;
+
+        /**
+         * The iterator for each level of the trie which is currently open.
+         */
+        final TrieIterator[] open;
+
+        @SuppressWarnings("rawtypes")
+        Atom(final int[] levels, final IIndex ndx, final byte[] prefix,
+                final byte[][][] keys, final IV[][] values) {
+
+            this.levels = levels;
+            this.ndx = ndx;
+            this.prefix = prefix;
+            this.keys = keys;
+            this.values = values;
+            this.open = new TrieIterator[levels.length];
+
+        }
+
+        /**
+         * Open the iterator for the given depth.
+         */
+        TrieIterator open(final int depth) {
+
+            final TrieIterator itr;
+
+            if (depth == 0) {
+
+                itr = ndx != null ? new IndexTrieIterator(ndx, prefix)
+                        : new MemoryTrieIterator(keys, values, 0, 0,
+                                keys.length);
+
+            } else {
+
+                itr = open[depth - 1].open();
+
+            }
+
+            return open[depth] = itr;
+
+        }
+
+    }
+
+    /**
+     * Task executing on the node.
+     */
+    static private class LeapfrogTriejoinTask implements Callable<Void> {
+
+        private final LeapfrogTriejoinOp op;
+
+        private final BOpContext<IBindingSet> context;
+
+        private final BOpStats stats;
+
+        private final IPredicate<ISPO>[] preds;
+
+        private final IVariable<?>[] order;
+
+        private final SPORelation relation;
+
+        private final IKeyBuilder keyBuilder = KeyBuilder.newInstance();
+
+        LeapfrogTriejoinTask(final LeapfrogTriejoinOp op,
+                final BOpContext<IBindingSet> context) {
+
+            this.op = op;
+
+            this.context = context;
+
+            this.stats = context.getStats();
+
+            this.preds = op.getPredicates();
+
+            this.order = op.getVariableOrder();
+
+            this.relation = (SPORelation) context.getRelation(preds[0]);
+
+        }
+
+        @Override
+        public Void call() throws Exception {
+
+            final ICloseableIterator<IBindingSet[]> source = context
+                    .getSource();
+
+            final IBlockingBuffer<IBindingSet[]> sink = context.getSink();
+
+            try {
+
+                final UnsynchronizedArrayBuffer<IBindingSet> tmp = new UnsynchronizedArrayBuffer<IBindingSet>(
+                        sink, IBindingSet.class, op.getChunkCapacity());
+
+                while (source.hasNext()) {
+
+                    final IBindingSet[] chunk = source.next();
+
+                    stats.chunksIn.increment();
+
+                    stats.unitsIn.add(chunk.length);
+
+                    for (IBindingSet bset : chunk) {
+
+                        new Join(bset, tmp).run();
+
+                    }
+
+                }
+
+                tmp.flush();
+
+                sink.flush();
+
+                return null;
+
+            } finally {
+
+                sink.close();
+
+                source.close();
+
+            }
+
+        }
+
+        /**
+         * The leapfrog triejoin for one source solution.
+         */
+        private class Join {
+
+            private final IBindingSet src;
+
+            private final UnsynchronizedArrayBuffer<IBindingSet> out;
+
+            /**
+             * The variables which are not bound by the source solution, in
+             * the variable order.
+             */
+            private final IVariable<?>[] vars;
+
+            /**
+             * The value chosen for each variable.
+             */
+            @SuppressWarnings("rawtypes")
+            private final IV[] bound;
+
+            /**
+             * The atoms which use each variable and the depth of that variable
+             * in the trie for the atom.
+             */
+            private final Atom[][] atoms;
+
+            private final int[][] depths;
+
+            Join(final IBindingSet src,
+                    final UnsynchronizedArrayBuffer<IBindingSet> out) {
+
+                this.src = src;
+
+                this.out = out;
+
+                final List<IVariable<?>> tmp = new ArrayList<IVariable<?>>();
+
+                for (IVariable<?> var : order) {
+
+                    if (!src.isBound(var))
+                        tmp.add(var);
+
+                }
+
+                this.vars = tmp.toArray(new IVariable<?>[tmp.size()]);
+
+                this.bound = new IV[vars.length];
+
+                this.atoms = new Atom[vars.length][];
+
+                this.depths = new int[vars.length][];
+
+            }
+
+            void run() {
+
+                final List<Atom> list = new ArrayList<Atom>(preds.length);
+
+                for (IPredicate<ISPO> pred : preds) {
+
+                    final IPredicate<ISPO> asBound = pred.asBound(src);
+
+                    final int[] levels = getLevels(asBound);
+
+                    if (levels.length == 0) {
+
+                        // Fully bound : just test for existence.
+                        if (!exists(asBound))
+                            return;
+
+                        continue;
+
+                    }
+
+                    final Atom atom = newAtom(asBound, levels);
+
+                    if (atom == null) {
+
+                        // Empty.
+                        return;
+
+                    }
+
+                    list.add(atom);
+
+                }
+
+                for (int i = 0; i < vars.length; i++) {
+
+                    final List<Atom> a = new ArrayList<Atom>();
+
+                    final List<Integer> d = new ArrayList<Integer>();
+
+                    for (Atom atom : list) {
+
+                        for (int j = 0; j < atom.levels.length; j++) {
+
+                            if (atom.levels[j] == i) {
+
+                                a.add(atom);
+
+                                d.add(j);
+
+                            }
+
+                        }
+
+                    }
+
+                    atoms[i] = a.toArray(new Atom[a.size()]);
+
+                    depths[i] = new int[d.size()];
+
+                    for (int j = 0; j < depths[i].length; j++)
+                        depths[i][j] = d.get(j);
+
+                }
+
+                join(0);
+
+            }
+
+            /**
+             * Return the index in {@link #vars} of each variable used by the
+             * as-bound predicate, in ascending order.
+             */
+            private int[] getLevels(final IPredicate<ISPO> asBound) {
+
+                final List<Integer> tmp = new ArrayList<Integer>();
+
+                for (int i = 0; i < vars.length; i++) {
+
+                    for (int j = 0; j < 3; j++) {
+
+                        if (asBound.get(j) == vars[i])
+                            tmp.add(i);
+
+                    }
+
+                }
+
+                final int[] a = new int[tmp.size()];
+
+                for (int i = 0; i < a.length; i++)
+                    a[i] = tmp.get(i);
+
+                return a;
+
+            }
+
+            /**
+             * Return <code>true</code> iff the fully bound statement pattern
+             * is found.
+             */
+            private boolean exists(final IPredicate<ISPO> asBound) {
+
+                final IAccessPath<ISPO> ap = context.getAccessPath(relation,
+                        asBound);
+
+                return !ap.isEmpty();
+
+            }
+
+            /**
+             * Create the trie for an as-bound statement pattern, reading it
+             * from a statement index if one has a suitable key order and
+             * materializing it otherwise.
+             * 
+             * @return The trie -or- <code>null</code> if it is empty.
+             */
+            @SuppressWarnings("rawtypes")
+            private Atom newAtom(final IPredicate<ISPO> asBound,
+                    final int[] levels) {
+
+                // The positions in the statement of the constants.
+                final List<Integer> constants = new ArrayList<Integer>();
+
+                for (int j = 0; j < 3; j++) {
+
+                    final IVariableOrConstant<?> t = asBound.get(j);
+
+                    if (t != null && t.isConstant())
+                        constants.add(j);
+
+                }
+
+                // The positions in the statement of the variables.
+                final int[] varPos = new int[levels.length];
+
+                for (int k = 0; k < levels.length; k++) {
+
+                    for (int j = 0; j < 3; j++) {
+
+                        if (asBound.get(j) == vars[levels[k]])
+                            varPos[k] = j;
+
+                    }
+
+                }
+
+                final Iterator<IKeyOrder<ISPO>> itr = relation.getKeyOrders();
+
+                while (itr.hasNext()) {
+
+                    final SPOKeyOrder keyOrder = (SPOKeyOrder) itr.next();
+
+                    if (keyOrder.getKeyArity() != 3)
+                        continue;
+
+                    boolean match = true;
+
+                    for (int i = 0; i < 3 && match; i++) {
+
+                        final int j = keyOrder.getKeyOrder(i);
+
+                        if (i < constants.size()) {
+
+                            match = constants.contains(j);
+
+                        } else {
+
+                            match = varPos[i - constants.size()] == j;
+
+                        }
+
+                    }
+
+                    if (!match)
+                        continue;
+
+                    // Form the key prefix from the constants.
+                    keyBuilder.reset();
+
+                    for (int i = 0; i < constants.size(); i++) {
+
+                        IVUtility.encode(keyBuilder, (IV) asBound.get(
+                                keyOrder.getKeyOrder(i)).get());
+
+                    }
+
+                    final Atom atom = new Atom(levels,
+                            relation.getIndex(keyOrder), keyBuilder.getKey(),
+                            null/* keys */, null/* values */);
+
+                    return atom.open(0).atEnd() ? null : atom;
+
+                }
+
+                /*
+                 * No statement index has a suitable key order. Read the
+                 * statement pattern through its access path and sort the
+                 * projected tuples.
+                 */
+
+                final List<IV[]> rows = new ArrayList<IV[]>();
+
+                final IChunkedOrderedIterator<ISPO> src = context
+                        .getAccessPath(relation, asBound).iterator();
+
+                try {
+
+                    while (src.hasNext()) {
+
+                        final ISPO spo = src.next();
+
+                        final IV[] row = new IV[levels.length];
+
+                        for (int k = 0; k < levels.length; k++) {
+
+                            row[k] = spo.get(varPos[k]);
+
+                        }
+
+                        rows.add(row);
+
+                    }
+
+                } finally {
+
+                    src.close();
+
+                }
+
+                if (rows.isEmpty())
+                    return null;
+
+                final int n = rows.size();
+
+                final Integer[] sorted = new Integer[n];
+
+                final byte[][][] keys = new byte[n][][];
+
+                for (int r = 0; r < n; r++) {
+
+                    final IV[] row = rows.get(r);
+
+                    keys[r] = new byte[levels.length][];
+
+                    for (int k = 0; k < levels.length; k++) {
+
+                        keys[r][k] = encode(keyBuilder, row[k]);
+
+                    }
+
+                    sorted[r] = r;
+
+                }
+
+                Arrays.sort(sorted, new Comparator<Integer>() {
+                    @Override
+                    public int compare(final Integer o1, final Integer o2) {
+                        final byte[][] a = keys[o1], b = keys[o2];
+                        for (int k = 0; k < a.length; k++) {
+                            final int ret = LeapfrogTriejoinOp.compare(a[k],
+                                    b[k]);
+                            if (ret != 0)
+                                return ret;
+                        }
+                        return 0;
+                    }
+                });
+
+                final byte[][][] sortedKeys = new byte[n][][];
+
+                final IV[][] sortedValues = new IV[n][];
+
+                for (int r = 0; r < n; r++) {
+
+                    sortedKeys[r] = keys[sorted[r]];
+
+                    sortedValues[r] = rows.get(sorted[r]);
+
+                }
+
+                return new Atom(levels, null/* ndx */, null/* prefix */,
+                        sortedKeys, sortedValues);
+
+            }
+
+            /**
+             * Leapfrog join on the variable at the given index in the variable
+             * order and recursively on the remaining variables.
+             */
+            private void join(final int level) {
+
+                if (level == vars.length) {
+
+                    emit();
+
+                    return;
+
+                }
+
+                if (Thread.interrupted())
+                    throw new RuntimeException(new InterruptedException());
+
+                final Atom[] a = atoms[level];
+
+                final int k = a.length;
+
+                final TrieIterator[] its = new TrieIterator[k];
+
+                for (int i = 0; i < k; i++) {
+
+                    its[i] = a[i].open(depths[level][i]);
+
+                    if (its[i].atEnd())
+                        return;
+
+                }
+
+                Arrays.sort(its, new Comparator<TrieIterator>() {
+                    @Override
+                    public int compare(final TrieIterator o1,
+                            final TrieIterator o2) {
+                        return LeapfrogTriejoinOp.compare(o1.key(), o2.key());
+                    }
+                });
+
+                byte[] max = its[k - 1].key();
+
+                int p = 0;
+
+                while (true) {
+
+                    final TrieIterator it = its[p];
+
+                    if (compare(it.key(), max) == 0) {
+
+                        // All iterators agree on this value.
+                        bound[level] = it.value();
+
+                        join(level + 1);
+
+                        it.next();
+
+                    } else {
+
+                        it.seek(max);
+
+                    }
+
+                    if (it.atEnd())
+                        return;
+
+                    max = it.key();
+
+                    p = (p + 1) % k;
+
+                }
+
+            }
+
+            /**
+             * Output a solution.
+             */
+            @SuppressWarnings({ "rawtypes", "unchecked" })
+            private void emit() {
+
+                final IBindingSet bset = src.clone();
+
+                for (int i = 0; i < vars.length; i++) {
+
+                    bset.set(vars[i], new Constant<IV>(bound[i]));
+
+                }
+
+                out.add(bset);
+
+            }
+
+        } // class Join
+
+    } // class LeapfrogTriejoinTask
+
+}
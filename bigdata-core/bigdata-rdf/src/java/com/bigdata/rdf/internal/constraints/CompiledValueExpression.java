@@ -0,0 +1,82 @@
+/*
+
+Copyright (C) SYSTAP, LLC DBA Blazegraph 2006-2016.  All rights reserved.
+
+Contact:
+     SYSTAP, LLC DBA Blazegraph
+     2501 Calvert ST NW #106
+     Washington, DC 20008
+     licenses@blazegraph.com
+
+This program is free software; you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation; version 2 of the License.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program; if not, write to the Free Software
+Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+package com.bigdata.rdf.internal.constraints;
+
+import com.bigdata.bop.IBindingSet;
+import com.bigdata.bop.IValueExpression;
+import com.bigdata.rdf.error.SparqlTypeErrorException;
+import com.bigdata.rdf.internal.IV;
+import com.bigdata.rdf.internal.impl.literal.XSDBooleanIV;
+
+/**
+ * A value expression which has been compiled by the
+ * {@link ValueExpressionCompiler}. Unlike the {@link IValueExpression} from
+ * which it was compiled, it does not look up annotations or walk the operator
+ * tree when it is evaluated. Variables, constants and the comparison operator
+ * have all been resolved at compile time.
+ * <p>
+ * A compiled expression is not a bop. It is not serialized with the query
+ * plan and it is recompiled if the plan is deserialized.
+ */
+@SuppressWarnings("rawtypes")
+public abstract class CompiledValueExpression {
+
+    /**
+     * Evaluate the expression against the solution.
+     *
+     * @param bs
+     *            The solution.
+     *
+     * @return The value of the expression -or- <code>null</code> if the value
+     *         is not defined (e.g., an unbound variable).
+     *
+     * @throws SparqlTypeErrorException
+     *             if the expression can not be evaluated.
+     */
+    public abstract IV get(IBindingSet bs);
+
+    /**
+     * Evaluate the expression against the solution and return its effective
+     * boolean value. Boolean expressions override this to avoid boxing the
+     * result as an {@link XSDBooleanIV}.
+     *
+     * @param bs
+     *            The solution.
+     *
+     * @throws SparqlTypeErrorException
+     *             if the expression can not be evaluated or does not evaluate
+     *             to an xsd:boolean.
+     */
+    public boolean accept(final IBindingSet bs) {
+
+        final IV iv = get(bs);
+
+        if (!(iv instanceof XSDBooleanIV))
+            throw new SparqlTypeErrorException();
+
+        return ((XSDBooleanIV) iv).booleanValue();
+
+    }
+
+}
@@ -33,6 +33,13 @@ public class ConditionalBind<E extends IV> extends ImmutableBOp implements
 
     protected transient Boolean projection;
 
+    /**
+     * The compiled form of the value expression (lazily initialized).
+     *
+     * @see ValueExpressionCompiler
+     */
+    private transient volatile CompiledValueExpression compiled;
+
     /**
      * Constructor required for {@link com.bigdata.bop.BOpUtility#deepCopy(FilterNode)}.
      */
@@ -104,6 +111,29 @@ public class ConditionalBind<E extends IV> extends ImmutableBOp implements
 
     }
 
+    /**
+     * Evaluate the value expression, using its compiled form when value
+     * expression compilation is enabled.
+     */
+    @SuppressWarnings("unchecked")
+    private E evaluate(final IValueExpression<E> expr,
+            final IBindingSet bindingSet) {
+
+        if (!ValueExpressionCompiler.ENABLED)
+            return expr.get(bindingSet);
+
+        CompiledValueExpression tmp = compiled;
+
+        if (tmp == null) {
+
+            compiled = tmp = ValueExpressionCompiler.compile(expr);
+
+        }
+
+        return (E) tmp.get(bindingSet);
+
+    }
+
     public E get(final IBindingSet bindingSet) {
 
         final IVariable<E> var = getVar();
@@ -130,7 +160,7 @@ public class ConditionalBind<E extends IV> extends ImmutableBOp implements
 //        } else {
 //            val = expr.get(bindingSet);
 //        }
-        final E val = expr.get(bindingSet); // evaluate the value expression.
+        final E val = evaluate(expr, bindingSet); // evaluate the value expression.
 
         final E existing = var.get(bindingSet); // lookup current bound value.
         try{
@@ -63,6 +63,40 @@ public class RegexBOp extends XSDBooleanIVValueExpression
         
     }
 
+    /**
+     * The {@link Pattern} compiled for the most recently observed pattern and
+     * flags (lazily initialized). When the pattern is a constant which was not
+     * materialized when the operator was constructed, this ensures that it is
+     * compiled once per query rather than once per solution.
+     */
+    private transient volatile CachedPattern cachedPattern;
+
+    /**
+     * A compiled {@link Pattern} together with the pattern and flags from
+     * which it was compiled.
+     */
+    private static class CachedPattern {
+
+        private final Value parg;
+
+        private final Value farg;
+
+        private final Pattern pattern;
+
+        CachedPattern(final Value parg, final Value farg, final Pattern pattern) {
+            this.parg = parg;
+            this.farg = farg;
+            this.pattern = pattern;
+        }
+
+        boolean matches(final Value parg, final Value farg) {
+            return this.parg.equals(parg)
+                    && (this.farg == null ? farg == null : this.farg
+                            .equals(farg));
+        }
+
+    }
+
     private static Map<String,Object> anns(
             final IValueExpression<? extends IV> pattern,
             final IValueExpression<? extends IV> flags) {
@@ -178,9 +212,11 @@ public class RegexBOp extends XSDBooleanIVValueExpression
     
     /**
      * Lifted directly from Sesame's EvaluationStrategyImpl.
-     * 
-     * FIXME The Pattern should be cached if the pattern argument and flags are
-     * constants.
+     * <p>
+     * Note: The Pattern is cached as an annotation if the pattern argument and
+     * flags were materialized constants when the operator was created and
+     * otherwise on the operator instance for the last observed pattern and
+     * flags.
      * 
      * @see <a href="http://sourceforge.net/apps/trac/bigdata/ticket/516">
      *      REGEXBOp should cache the Pattern when it is a constant </a>
@@ -204,8 +240,8 @@ public class RegexBOp extends XSDBooleanIVValueExpression
 
                 if (pattern == null) {
 
-                    // resolve the pattern. NB: NOT cached.
-                    pattern = getPattern(parg, farg);
+                    // resolve the pattern (cached for the last pattern/flags).
+                    pattern = getCachedPattern(parg, farg);
                     
                 }
 
@@ -241,7 +277,37 @@ public class RegexBOp extends XSDBooleanIVValueExpression
 
     }
     
-    private static Pattern getPattern(final Value parg, final Value farg)
+    /**
+     * Return the {@link Pattern} for the pattern and flags, compiling it only
+     * if they differ from those last seen by this operator.
+     */
+    private Pattern getCachedPattern(final Value parg, final Value farg)
+            throws IllegalArgumentException {
+
+        final CachedPattern tmp = cachedPattern;
+
+        if (tmp != null && tmp.matches(parg, farg)) {
+
+            return tmp.pattern;
+
+        }
+
+        final Pattern pattern = getPattern(parg, farg);
+
+        cachedPattern = new CachedPattern(parg, farg, pattern);
+
+        return pattern;
+
+    }
+
+    /**
+     * Compile the {@link Pattern} for a SPARQL REGEX pattern and flags.
+     * 
+     * @throws IllegalArgumentException
+     *             if the pattern or the flags are not simple literals or the
+     *             flags are not valid.
+     */
+    static Pattern getPattern(final Value parg, final Value farg)
             throws IllegalArgumentException {
         
         if (log.isDebugEnabled()) {
@@ -53,6 +53,13 @@ public class SPARQLConstraint<X extends XSDBooleanIV> extends
     private static final transient Logger log = Logger
             .getLogger(SPARQLConstraint.class);
 
+    /**
+     * The compiled form of the value expression (lazily initialized).
+     *
+     * @see ValueExpressionCompiler
+     */
+    private transient volatile CompiledValueExpression compiled;
+
 	/**
 	 * The operand of this operator must evaluate to a boolean. If the operand
 	 * is not known to evaluate to a boolean, wrap it with an {@link EBVBOp}.
@@ -114,6 +121,13 @@ public class SPARQLConstraint<X extends XSDBooleanIV> extends
 
 		try {
 
+            if (ValueExpressionCompiler.ENABLED) {
+
+                // evaluate the compiled EBV operator
+                return getCompiledExpression().accept(bs);
+
+            }
+
 			// evaluate the EBV operator
             final XSDBooleanIV iv = get(0).get(bs);
 			
@@ -138,6 +152,24 @@ public class SPARQLConstraint<X extends XSDBooleanIV> extends
 
 	}
 
+    /**
+     * Return the compiled form of the value expression, compiling it on first
+     * use.
+     */
+    private CompiledValueExpression getCompiledExpression() {
+
+        CompiledValueExpression tmp = compiled;
+
+        if (tmp == null) {
+
+            compiled = tmp = ValueExpressionCompiler.compile(get(0));
+
+        }
+
+        return tmp;
+
+    }
+
     /**
      * Overridden to provide a little bit of information about the attached
      * constraint.
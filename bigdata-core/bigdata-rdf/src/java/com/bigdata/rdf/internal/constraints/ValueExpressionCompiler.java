@@ -0,0 +1,574 @@
+/*
+
+Copyright (C) SYSTAP, LLC DBA Blazegraph 2006-2016.  All rights reserved.
+
+Contact:
+     SYSTAP, LLC DBA Blazegraph
+     2501 Calvert ST NW #106
+     Washington, DC 20008
+     licenses@blazegraph.com
+
+This program is free software; you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation; version 2 of the License.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program; if not, write to the Free Software
+Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+package com.bigdata.rdf.internal.constraints;
+
+import org.openrdf.query.algebra.Compare.CompareOp;
+
+import com.bigdata.bop.IBindingSet;
+import com.bigdata.bop.IConstant;
+import com.bigdata.bop.IValueExpression;
+import com.bigdata.bop.IVariable;
+import com.bigdata.rdf.error.SparqlTypeErrorException;
+import com.bigdata.rdf.internal.DTE;
+import com.bigdata.rdf.internal.IV;
+import com.bigdata.rdf.internal.impl.literal.XSDBooleanIV;
+import com.bigdata.rdf.internal.impl.literal.XSDNumericIV;
+import com.bigdata.rdf.model.BigdataValue;
+
+/**
+ * Compiles a value expression into a {@link CompiledValueExpression}. The
+ * compiled form is a tree of closures in which the variables, constants and
+ * comparison operators have been resolved once, so evaluation does not look
+ * up annotations, check debug logging, or box intermediate boolean results.
+ * <p>
+ * The following operators are compiled: {@link IVariable}, {@link IConstant},
+ * {@link CompareBOp}, {@link AndBOp}, {@link OrBOp}, {@link NotBOp} and
+ * {@link EBVBOp}. Any other operator (and everything beneath it) is evaluated
+ * by delegating to the operator itself, so the compiled expression always
+ * has the same semantics as the source expression.
+ * <p>
+ * Comparisons between inline numeric values ({@link XSDNumericIV}) are done
+ * on the primitive values rather than by converting both sides to openrdf
+ * {@link org.openrdf.model.Literal}s. A conjunction of two comparisons of the
+ * same variable against inline numeric constants (a range filter such as
+ * <code>FILTER(?x &gt;= 10 &amp;&amp; ?x &lt; 20)</code>) is compiled into a
+ * single operation which looks up the variable once.
+ *
+ * @see SPARQLConstraint
+ * @see ConditionalBind
+ */
+@SuppressWarnings("rawtypes")
+public class ValueExpressionCompiler {
+
+    /**
+     * When <code>false</code>, value expressions are interpreted rather than
+     * compiled (default <code>true</code>).
+     */
+    public static final boolean ENABLED = Boolean.parseBoolean(System
+            .getProperty(ValueExpressionCompiler.class.getName() + ".enabled",
+                    "true"));
+
+    private ValueExpressionCompiler() {
+    }
+
+    /**
+     * Compile a value expression.
+     *
+     * @param expr
+     *            The value expression.
+     *
+     * @return The compiled value expression.
+     */
+    public static CompiledValueExpression compile(
+            final IValueExpression<? extends IV> expr) {
+
+        if (expr == null)
+            throw new IllegalArgumentException();
+
+        if (expr instanceof IVariable) {
+
+            return new VarExpr((IVariable) expr);
+
+        }
+
+        if (expr instanceof IConstant) {
+
+            return new ConstExpr((IV) ((IConstant) expr).get());
+
+        }
+
+        final Class<?> cls = expr.getClass();
+
+        if (cls == CompareBOp.class) {
+
+            final CompareBOp op = (CompareBOp) expr;
+
+            return new CompareExpr(compile(arg(op, 0)), compile(arg(op, 1)),
+                    op.op());
+
+        }
+
+        if (cls == AndBOp.class) {
+
+            final AndBOp op = (AndBOp) expr;
+
+            final CompiledValueExpression left = compile(op.get(0));
+
+            final CompiledValueExpression right = compile(op.get(1));
+
+            final CompiledValueExpression range = range(op, left, right);
+
+            return range != null ? range : new AndExpr(left, right);
+
+        }
+
+        if (cls == OrBOp.class) {
+
+            final OrBOp op = (OrBOp) expr;
+
+            return new OrExpr(compile(arg(op, 0)), compile(arg(op, 1)));
+
+        }
+
+        if (cls == NotBOp.class) {
+
+            return new NotExpr(compile(arg((NotBOp) expr, 0)));
+
+        }
+
+        if (cls == EBVBOp.class
+                && expr.get(0) instanceof XSDBooleanIVValueExpression) {
+
+            /*
+             * The EBV of an xsd:boolean is just its value.
+             */
+            return compile(arg((EBVBOp) expr, 0));
+
+        }
+
+        return new InterpretedExpr(expr);
+
+    }
+
+    @SuppressWarnings("unchecked")
+    private static IValueExpression<? extends IV> arg(
+            final IVValueExpression<?> op, final int i) {
+
+        return (IValueExpression<? extends IV>) op.get(i);
+
+    }
+
+    /**
+     * Recognize a conjunction of two comparisons of the same variable against
+     * inline numeric constants.
+     *
+     * @return The compiled range -or- <code>null</code> if the conjunction does
+     *         not have that form.
+     */
+    private static CompiledValueExpression range(final AndBOp op,
+            final CompiledValueExpression left,
+            final CompiledValueExpression right) {
+
+        if (!(left instanceof CompareExpr) || !(right instanceof CompareExpr))
+            return null;
+
+        final CompareExpr c1 = ((CompareExpr) left).normalize();
+
+        final CompareExpr c2 = ((CompareExpr) right).normalize();
+
+        if (c1 == null || c2 == null)
+            return null;
+
+        final IVariable var = ((VarExpr) c1.left).var;
+
+        if (var != ((VarExpr) c2.left).var)
+            return null;
+
+        return new InlineNumericRangeExpr(var, //
+                ((ConstExpr) c1.right).iv, c1.op,//
+                ((ConstExpr) c2.right).iv, c2.op,//
+                new AndExpr(left, right)// fallback
+        );
+
+    }
+
+    /**
+     * Value returned by {@link #compareInline(IV, IV)} when the arguments can
+     * not be compared on their primitive values.
+     */
+    static final int NO_FAST_PATH = Integer.MIN_VALUE;
+
+    /**
+     * Compare two inline numeric values using the numeric type promotion
+     * rules of XPath (integral, then float, then double). NaN and signed
+     * zeros are left to the general purpose comparison so the result always
+     * agrees with {@link CompareBOp#compare(IV, IV, CompareOp)}.
+     *
+     * @return <code>-1</code>, <code>0</code> or <code>1</code> -or-
+     *         {@link #NO_FAST_PATH}.
+     */
+    static int compareInline(final IV left, final IV right) {
+
+        if (!(left instanceof XSDNumericIV) || !(right instanceof XSDNumericIV))
+            return NO_FAST_PATH;
+
+        final XSDNumericIV l = (XSDNumericIV) left;
+
+        final XSDNumericIV r = (XSDNumericIV) right;
+
+        final DTE ldte = l.getDTE();
+
+        final DTE rdte = r.getDTE();
+
+        if (ldte == DTE.XSDDouble || rdte == DTE.XSDDouble) {
+
+            final double a = l.doubleValue();
+
+            final double b = r.doubleValue();
+
+            if (a < b)
+                return -1;
+
+            if (a > b)
+                return 1;
+
+            if (a == b && Double.compare(a, b) == 0)
+                return 0;
+
+            // NaN or signed zeros.
+            return NO_FAST_PATH;
+
+        }
+
+        if (ldte == DTE.XSDFloat || rdte == DTE.XSDFloat) {
+
+            final float a = l.floatValue();
+
+            final float b = r.floatValue();
+
+            if (a < b)
+                return -1;
+
+            if (a > b)
+                return 1;
+
+            if (a == b && Float.compare(a, b) == 0)
+                return 0;
+
+            // NaN or signed zeros.
+            return NO_FAST_PATH;
+
+        }
+
+        final long a = l.longValue();
+
+        final long b = r.longValue();
+
+        return a < b ? -1 : a > b ? 1 : 0;
+
+    }
+
+    /**
+     * Return the comparison operator which gives the same result when the
+     * operands are swapped.
+     */
+    static CompareOp flip(final CompareOp op) {
+
+        switch (op) {
+        case LT:
+            return CompareOp.GT;
+        case LE:
+            return CompareOp.GE;
+        case GT:
+            return CompareOp.LT;
+        case GE:
+            return CompareOp.LE;
+        default:
+            return op;
+        }
+
+    }
+
+    /**
+     * Base class for compiled boolean expressions.
+     */
+    private static abstract class BooleanExpr extends CompiledValueExpression {
+
+        @Override
+        public final IV get(final IBindingSet bs) {
+
+            return accept(bs) ? XSDBooleanIV.TRUE : XSDBooleanIV.FALSE;
+
+        }
+
+        @Override
+        public abstract boolean accept(IBindingSet bs);
+
+    }
+
+    /**
+     * A variable.
+     */
+    private static final class VarExpr extends CompiledValueExpression {
+
+        private final IVariable var;
+
+        VarExpr(final IVariable var) {
+            this.var = var;
+        }
+
+        @Override
+        public IV get(final IBindingSet bs) {
+
+            final IConstant c = bs.get(var);
+
+            return c == null ? null : (IV) c.get();
+
+        }
+
+    }
+
+    /**
+     * A constant.
+     */
+    private static final class ConstExpr extends CompiledValueExpression {
+
+        private final IV iv;
+
+        ConstExpr(final IV iv) {
+            this.iv = iv;
+        }
+
+        @Override
+        public IV get(final IBindingSet bs) {
+
+            return iv;
+
+        }
+
+    }
+
+    /**
+     * An expression which is evaluated by the operator itself.
+     */
+    private static final class InterpretedExpr extends CompiledValueExpression {
+
+        private final IValueExpression<? extends IV> expr;
+
+        InterpretedExpr(final IValueExpression<? extends IV> expr) {
+            this.expr = expr;
+        }
+
+        @Override
+        public IV get(final IBindingSet bs) {
+
+            return expr.get(bs);
+
+        }
+
+    }
+
+    /**
+     * {@link CompareBOp}.
+     */
+    private static final class CompareExpr extends BooleanExpr {
+
+        private final CompiledValueExpression left, right;
+
+        private final CompareOp op;
+
+        CompareExpr(final CompiledValueExpression left,
+                final CompiledValueExpression right, final CompareOp op) {
+            this.left = left;
+            this.right = right;
+            this.op = op;
+        }
+
+        /**
+         * Return an equivalent comparison of the form <code>?var op
+         * const</code> where the constant is an inline numeric -or-
+         * <code>null</code> if this comparison does not have that form.
+         */
+        CompareExpr normalize() {
+
+            if (left instanceof VarExpr && right instanceof ConstExpr
+                    && ((ConstExpr) right).iv instanceof XSDNumericIV)
+                return this;
+
+            if (right instanceof VarExpr && left instanceof ConstExpr
+                    && ((ConstExpr) left).iv instanceof XSDNumericIV)
+                return new CompareExpr(right, left, flip(op));
+
+            return null;
+
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public boolean accept(final IBindingSet bs) {
+
+            final IV l = left.get(bs);
+
+            final IV r = right.get(bs);
+
+            // not yet bound
+            if (l == null || r == null)
+                throw new SparqlTypeErrorException();
+
+            final int ret = compareInline(l, r);
+
+            if (ret != NO_FAST_PATH)
+                return CompareBOp._accept(ret, op);
+
+            return CompareBOp.compare((IV<BigdataValue, ?>) l,
+                    (IV<BigdataValue, ?>) r, op);
+
+        }
+
+    }
+
+    /**
+     * A conjunction of two comparisons of the same variable against inline
+     * numeric constants.
+     */
+    private static final class InlineNumericRangeExpr extends BooleanExpr {
+
+        private final IVariable var;
+
+        private final IV c1, c2;
+
+        private final CompareOp op1, op2;
+
+        /**
+         * Used when the variable is not bound to an inline numeric value.
+         */
+        private final CompiledValueExpression fallback;
+
+        InlineNumericRangeExpr(final IVariable var, final IV c1,
+                final CompareOp op1, final IV c2, final CompareOp op2,
+                final CompiledValueExpression fallback) {
+            this.var = var;
+            this.c1 = c1;
+            this.op1 = op1;
+            this.c2 = c2;
+            this.op2 = op2;
+            this.fallback = fallback;
+        }
+
+        @Override
+        public boolean accept(final IBindingSet bs) {
+
+            final IConstant c = bs.get(var);
+
+            if (c != null) {
+
+                final IV iv = (IV) c.get();
+
+                final int ret1 = compareInline(iv, c1);
+
+                if (ret1 != NO_FAST_PATH) {
+
+                    if (!CompareBOp._accept(ret1, op1))
+                        return false;
+
+                    final int ret2 = compareInline(iv, c2);
+
+                    if (ret2 != NO_FAST_PATH)
+                        return CompareBOp._accept(ret2, op2);
+
+                }
+
+            }
+
+            return fallback.accept(bs);
+
+        }
+
+    }
+
+    /**
+     * {@link AndBOp}. A <code>false</code> on either side is
+     * <code>false</code> even if the other side is an error.
+     */
+    private static final class AndExpr extends BooleanExpr {
+
+        private final CompiledValueExpression left, right;
+
+        AndExpr(final CompiledValueExpression left,
+                final CompiledValueExpression right) {
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        public boolean accept(final IBindingSet bs) {
+
+            final boolean l;
+            try {
+                l = left.accept(bs);
+            } catch (SparqlTypeErrorException ex) {
+                if (!right.accept(bs))
+                    return false;
+                throw ex;
+            }
+
+            return l && right.accept(bs);
+
+        }
+
+    }
+
+    /**
+     * {@link OrBOp}. A <code>true</code> on either side is <code>true</code>
+     * even if the other side is an error.
+     */
+    private static final class OrExpr extends BooleanExpr {
+
+        private final CompiledValueExpression left, right;
+
+        OrExpr(final CompiledValueExpression left,
+                final CompiledValueExpression right) {
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        public boolean accept(final IBindingSet bs) {
+
+            final boolean l;
+            try {
+                l = left.accept(bs);
+            } catch (SparqlTypeErrorException ex) {
+                if (right.accept(bs))
+                    return true;
+                throw ex;
+            }
+
+            return l || right.accept(bs);
+
+        }
+
+    }
+
+    /**
+     * {@link NotBOp}.
+     */
+    private static final class NotExpr extends BooleanExpr {
+
+        private final CompiledValueExpression arg;
+
+        NotExpr(final CompiledValueExpression arg) {
+            this.arg = arg;
+        }
+
+        @Override
+        public boolean accept(final IBindingSet bs) {
+
+            return !arg.accept(bs);
+
+        }
+
+    }
+
+}
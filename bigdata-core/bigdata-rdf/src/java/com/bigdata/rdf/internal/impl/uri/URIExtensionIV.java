@@ -5,9 +5,10 @@ import org.openrdf.model.impl.URIImpl;
 
 import com.bigdata.rdf.internal.ILexiconConfiguration;
 import com.bigdata.rdf.internal.IV;
+import com.bigdata.rdf.internal.NotMaterializedException;
 import com.bigdata.rdf.internal.VTE;
 import com.bigdata.rdf.internal.impl.AbstractInlineExtensionIV;
-import com.bigdata.rdf.internal.impl.AbstractInlineIV;
+import com.bigdata.rdf.internal.impl.TermId;
 import com.bigdata.rdf.internal.impl.literal.AbstractLiteralIV;
 import com.bigdata.rdf.lexicon.LexiconRelation;
 import com.bigdata.rdf.model.BigdataLiteral;
@@ -22,6 +23,14 @@ import com.bigdata.rdf.vocab.Vocabulary;
  * and <em>extension</em> bits set. {@link URIExtensionIV} are fully inline
  * since the <code>namespace</code> can be materialized from the
  * {@link Vocabulary} and the <code>localName</code> is directly inline.
+ * <p>
+ * When the lexicon uses the namespace dictionary, the <em>namespace</em> may
+ * instead be a {@link TermId} which was assigned to that namespace by the
+ * lexicon. Such {@link URIExtensionIV}s are still inline in the statement
+ * indices, but the namespace must be resolved against the lexicon (it is
+ * normally found in the term cache) when the {@link URI} is materialized.
+ * 
+ * @see com.bigdata.rdf.store.AbstractTripleStore.Options#URI_NAMESPACE_DICTIONARY
  * 
  * @author <a href="mailto:thompsonbry@users.sourceforge.net">Bryan Thompson</a>
  * @param <V>
@@ -38,7 +47,7 @@ public class URIExtensionIV<V extends BigdataURI>
     /**
      * The namespace.
      */
-    private final AbstractInlineIV<BigdataURI, ?> namespaceIV;
+    private final IV<BigdataURI, ?> namespaceIV;
 
     /**
      * The localName.
@@ -75,8 +84,10 @@ public class URIExtensionIV<V extends BigdataURI>
      * @param delegateIV
      *            The {@link IV} which represents the localName.
      * @param namespaceIV
-     *            The {@link IV} which represents the namespace. This MUST be a
-     *            fully inline {@link IV} declared by the {@link Vocabulary}.
+     *            The {@link IV} which represents the namespace. This MUST be
+     *            either a fully inline {@link IV} declared by the
+     *            {@link Vocabulary} or the {@link TermId} assigned to the
+     *            namespace by the lexicon.
      */
     @SuppressWarnings("unchecked")
     public URIExtensionIV(
@@ -88,12 +99,12 @@ public class URIExtensionIV<V extends BigdataURI>
         if (namespaceIV == null)
             throw new IllegalArgumentException();
 
-        if (!namespaceIV.isInline())
+        if (!namespaceIV.isInline() && !(namespaceIV instanceof TermId))
             throw new IllegalArgumentException();
 
         this.delegateIV = delegateIV;
 
-        this.namespaceIV = (AbstractInlineIV<BigdataURI, ?>) namespaceIV;
+        this.namespaceIV = (IV<BigdataURI, ?>) namespaceIV;
 
     }
     
@@ -200,10 +211,42 @@ public class URIExtensionIV<V extends BigdataURI>
 //
 //            v = setValue((V) config.asValueFromVocab(this));
 
-			final URI namespace = namespaceIV.asValue(lex);
+			final URI namespace;
+			
+			final String localName;
 			
-			final String localName = lex.getLexiconConfiguration()
-					.getInlineURILocalNameFromDelegate(namespace, delegateIV);
+			if (namespaceIV.isInline()) {
+
+				namespace = namespaceIV.asValue(lex);
+
+				localName = lex.getLexiconConfiguration()
+						.getInlineURILocalNameFromDelegate(namespace,
+								delegateIV);
+
+			} else {
+
+				/*
+				 * The namespace was assigned by the lexicon's namespace
+				 * dictionary. Resolve it (normally from the term cache) and
+				 * use the localName exactly as it was inlined.
+				 */
+				if (!namespaceIV.hasValue()) {
+
+					final BigdataURI tmp = (BigdataURI) lex.getTerm(namespaceIV);
+
+					if (tmp == null)
+						throw new NotMaterializedException(
+								"Namespace not found: " + namespaceIV);
+
+					namespaceIV.setValue(tmp);
+
+				}
+
+				namespace = namespaceIV.getValue();
+
+				localName = delegateIV.getInlineValue().toString();
+
+			}
 			
 			v = setValue((V) f.createURI(namespace.stringValue(), localName));
 			
@@ -0,0 +1,453 @@
+/**
+
+Copyright (C) SYSTAP, LLC DBA Blazegraph 2006-2016.  All rights reserved.
+
+Contact:
+     SYSTAP, LLC DBA Blazegraph
+     2501 Calvert ST NW #106
+     Washington, DC 20008
+     licenses@blazegraph.com
+
+This program is free software; you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation; version 2 of the License.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program; if not, write to the Free Software
+Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+/*
+ * Created on Oct 17, 2026
+ */
+
+package com.bigdata.rdf.lexicon;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.log4j.Logger;
+
+import com.bigdata.rdf.internal.IV;
+import com.bigdata.rdf.internal.impl.BlobIV;
+import com.bigdata.rdf.internal.impl.TermId;
+import com.bigdata.rdf.model.BigdataValue;
+
+/**
+ * Coalesces the resolution of {@link TermId}s and {@link BlobIV}s against the
+ * ID2TERM and BLOBS indices across concurrent callers of
+ * {@link LexiconRelation#getTerms(Collection, int, int)}.
+ * <p>
+ * Each caller registers the {@link IV}s which it needs. An {@link IV} which is
+ * already being resolved for another caller is not read again. Instead, the
+ * caller waits for the in-flight request and shares its result. The
+ * remaining {@link IV}s are placed onto a shared queue. Reads against the
+ * indices are serialized by a lock. The caller holding the lock drains the
+ * queue and resolves everything found there as a single sorted batch,
+ * including the {@link IV}s queued by the other callers while the previous
+ * batch was being read. This is the same pattern as a group commit: the
+ * longer the indices are busy, the larger the next batch becomes.
+ * <p>
+ * A caller always takes the lock after queuing its own {@link IV}s and before
+ * waiting on anything else, so the {@link IV}s for which it is responsible
+ * are resolved no later than its own turn with the lock. This guarantees
+ * progress without a dedicated service thread.
+ * <p>
+ * A failed read is only reported to the caller which ran the batch, since
+ * the cause may be specific to that caller (for example, an interrupt when
+ * its query is cancelled). The requests queued by other callers are put back
+ * onto the queue and are read by their owners during their own turn with the
+ * lock. A caller waiting on a request owned by another caller which failed
+ * resolves that {@link IV} itself.
+ * <p>
+ * An instance is shared by all views of the lexicon reading from the same
+ * commit point and otherwise is local to a {@link LexiconRelation}.
+ * 
+ * @see com.bigdata.rdf.store.AbstractTripleStore.Options#COALESCE_TERM_RESOLUTION
+ */
+class CoalescingTermResolver {
+
+    private static final transient Logger log = Logger
+            .getLogger(CoalescingTermResolver.class);
+
+    /**
+     * The {@link IV}s which are currently being resolved.
+     */
+    private final ConcurrentHashMap<IV<?, ?>, Pending> inflight = new ConcurrentHashMap<IV<?, ?>, Pending>();
+
+    /**
+     * The {@link IV}s which are waiting for the next batch.
+     */
+    private final ConcurrentLinkedQueue<Pending> queue = new ConcurrentLinkedQueue<Pending>();
+
+    /**
+     * Serializes the batch reads.
+     */
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /**
+     * The #of batches read against the indices.
+     */
+    private final AtomicLong batchCount = new AtomicLong();
+
+    /**
+     * The #of {@link IV}s read against the indices.
+     */
+    private final AtomicLong readCount = new AtomicLong();
+
+    /**
+     * The #of {@link IV}s which were satisfied by a request made for another
+     * caller.
+     */
+    private final AtomicLong sharedCount = new AtomicLong();
+
+    /**
+     * A request to resolve an {@link IV}.
+     */
+    private static class Pending {
+
+        final IV<?, ?> iv;
+
+        /**
+         * The thread which registered the request.
+         */
+        final Thread owner;
+
+        private final CountDownLatch latch = new CountDownLatch(1);
+
+        private volatile BigdataValue value;
+
+        private volatile Throwable cause;
+
+        Pending(final IV<?, ?> iv) {
+            this.iv = iv;
+            this.owner = Thread.currentThread();
+        }
+
+        void done(final BigdataValue value) {
+            this.value = value;
+            latch.countDown();
+        }
+
+        void error(final Throwable cause) {
+            this.cause = cause;
+            latch.countDown();
+        }
+
+        /**
+         * Await the outcome.
+         * 
+         * @return The cause of the failure and <code>null</code> if the
+         *         request was completed normally.
+         */
+        Throwable await() throws InterruptedException {
+            latch.await();
+            return cause;
+        }
+
+        /**
+         * The resolved value and <code>null</code> if the {@link IV} was not
+         * found.
+         */
+        BigdataValue getValue() {
+            return value;
+        }
+
+    }
+
+    /**
+     * The #of batches read against the indices.
+     */
+    public long getBatchCount() {
+        return batchCount.get();
+    }
+
+    /**
+     * The #of {@link IV}s read against the indices.
+     */
+    public long getReadCount() {
+        return readCount.get();
+    }
+
+    /**
+     * The #of {@link IV}s which were satisfied by a request made for another
+     * caller.
+     */
+    public long getSharedCount() {
+        return sharedCount.get();
+    }
+
+    /**
+     * Resolve the {@link IV}s, coalescing the reads with those of any
+     * concurrent callers.
+     * 
+     * @param lex
+     *            The lexicon used to read on the indices if this caller winds
+     *            up running a batch.
+     * @param termIVs
+     *            The {@link TermId}s to be resolved.
+     * @param blobIVs
+     *            The {@link BlobIV}s to be resolved.
+     * @param ret
+     *            The resolved values are inserted into this map.
+     * @param termsChunkSize
+     *            The chunk size for reads on the ID2TERM index.
+     * @param blobsChunkSize
+     *            The chunk size for reads on the BLOBS index.
+     */
+    void resolve(final LexiconRelation lex,
+            final Collection<TermId<?>> termIVs,
+            final Collection<BlobIV<?>> blobIVs,
+            final ConcurrentHashMap<IV<?, ?>, BigdataValue> ret,
+            final int termsChunkSize, final int blobsChunkSize) {
+
+        final Map<IV<?, ?>, Pending> waitFor = new LinkedHashMap<IV<?, ?>, Pending>();
+
+        int nowned = 0;
+
+        for (IV<?, ?> iv : termIVs) {
+            if (register(iv, waitFor))
+                nowned++;
+        }
+
+        for (IV<?, ?> iv : blobIVs) {
+            if (register(iv, waitFor))
+                nowned++;
+        }
+
+        if (nowned > 0) {
+
+            lock.lock();
+            try {
+
+                /*
+                 * Note: Our own requests are either still on the queue or were
+                 * drained and completed by an earlier lock holder.
+                 */
+                final List<Pending> batch = new LinkedList<Pending>();
+
+                Pending p;
+                while ((p = queue.poll()) != null)
+                    batch.add(p);
+
+                if (!batch.isEmpty())
+                    runBatch(lex, batch, termsChunkSize, blobsChunkSize);
+
+            } finally {
+
+                lock.unlock();
+
+            }
+
+        }
+
+        /*
+         * IVs owned by another caller whose batch failed. We resolve these
+         * ourselves rather than failing for a reason which may be specific to
+         * that caller.
+         */
+        final Collection<TermId<?>> retryTermIVs = new LinkedList<TermId<?>>();
+
+        final Collection<BlobIV<?>> retryBlobIVs = new LinkedList<BlobIV<?>>();
+
+        try {
+
+            for (Map.Entry<IV<?, ?>, Pending> e : waitFor.entrySet()) {
+
+                final Pending p = e.getValue();
+
+                final Throwable cause = p.await();
+
+                if (cause != null) {
+
+                    if (p.owner == Thread.currentThread())
+                        throw new RuntimeException(cause);
+
+                    if (p.iv instanceof TermId<?>) {
+
+                        retryTermIVs.add((TermId<?>) p.iv);
+
+                    } else {
+
+                        retryBlobIVs.add((BlobIV<?>) p.iv);
+
+                    }
+
+                    continue;
+
+                }
+
+                final BigdataValue value = p.getValue();
+
+                if (value != null)
+                    ret.put(e.getKey(), value);
+
+            }
+
+        } catch (InterruptedException ex) {
+
+            throw new RuntimeException(ex);
+
+        }
+
+        if (!retryTermIVs.isEmpty() || !retryBlobIVs.isEmpty()) {
+
+            if (log.isInfoEnabled())
+                log.info("retry: #TermIVs=" + retryTermIVs.size()
+                        + ", #BlobIVs=" + retryBlobIVs.size());
+
+            resolve(lex, retryTermIVs, retryBlobIVs, ret, termsChunkSize,
+                    blobsChunkSize);
+
+        }
+
+    }
+
+    /**
+     * Register interest in an {@link IV}.
+     * 
+     * @return <code>true</code> iff the caller is responsible for queuing the
+     *         {@link IV} (<code>false</code> if it is already in flight).
+     */
+    private boolean register(final IV<?, ?> iv,
+            final Map<IV<?, ?>, Pending> waitFor) {
+
+        if (waitFor.containsKey(iv))
+            return false;
+
+        final Pending p = new Pending(iv);
+
+        final Pending old = inflight.putIfAbsent(iv, p);
+
+        if (old != null) {
+
+            sharedCount.incrementAndGet();
+
+            waitFor.put(iv, old);
+
+            return false;
+
+        }
+
+        waitFor.put(iv, p);
+
+        queue.add(p);
+
+        return true;
+
+    }
+
+    /**
+     * Resolve a batch against the indices and complete its requests. The
+     * caller MUST hold the {@link #lock}.
+     * <p>
+     * If the read fails, only the requests registered by the calling thread
+     * are completed with the error. The other requests remain in flight and
+     * are put back onto the queue. Their owners have not yet had their turn
+     * with the lock (otherwise they would have drained those requests
+     * themselves), so they will read them.
+     */
+    private void runBatch(final LexiconRelation lex, final List<Pending> batch,
+            final int termsChunkSize, final int blobsChunkSize) {
+
+        final Collection<TermId<?>> termIVs = new LinkedList<TermId<?>>();
+
+        final Collection<BlobIV<?>> blobIVs = new LinkedList<BlobIV<?>>();
+
+        for (Pending p : batch) {
+
+            if (p.iv instanceof TermId<?>) {
+
+                termIVs.add((TermId<?>) p.iv);
+
+            } else {
+
+                blobIVs.add((BlobIV<?>) p.iv);
+
+            }
+
+        }
+
+        batchCount.incrementAndGet();
+
+        readCount.addAndGet(batch.size());
+
+        if (log.isDebugEnabled())
+            log.debug("batch: #TermIVs=" + termIVs.size() + ", #BlobIVs="
+                    + blobIVs.size());
+
+        try {
+
+            final ConcurrentHashMap<IV<?, ?>, BigdataValue> results = new ConcurrentHashMap<IV<?, ?>, BigdataValue>(
+                    batch.size());
+
+            readTerms(lex, termIVs, blobIVs, results, termsChunkSize,
+                    blobsChunkSize);
+
+            for (Pending p : batch) {
+
+                p.done(results.get(p.iv));
+
+                inflight.remove(p.iv, p);
+
+            }
+
+        } catch (Throwable t) {
+
+            for (Pending p : batch) {
+
+                if (p.owner == Thread.currentThread()) {
+
+                    p.error(t);
+
+                    inflight.remove(p.iv, p);
+
+                } else {
+
+                    queue.add(p);
+
+                }
+
+            }
+
+        }
+
+    }
+
+    /**
+     * Read the {@link IV}s against the indices.
+     * <p>
+     * Note: Exposed to the unit tests.
+     */
+    void readTerms(final LexiconRelation lex,
+            final Collection<TermId<?>> termIVs,
+            final Collection<BlobIV<?>> blobIVs,
+            final ConcurrentHashMap<IV<?, ?>, BigdataValue> results,
+            final int termsChunkSize, final int blobsChunkSize) {
+
+        lex.readTerms(termIVs, blobIVs, results, termsChunkSize,
+                blobsChunkSize);
+
+    }
+
+    @Override
+    public String toString() {
+
+        return getClass().getSimpleName() + "{batches=" + batchCount
+                + ",read=" + readCount + ",shared=" + sharedCount + "}";
+
+    }
+
+}
@@ -149,6 +149,39 @@ public class LexiconKeyBuilder implements ITermIndexCodes {
 
     }
 
+    /**
+     * Formats a prefix key which spans the datatype literals having the given
+     * datatype whose lexical form begins with the given text. Unlike
+     * {@link #datatypeLiteral2key(URI, String)}, the key is not terminated by a
+     * nul byte, so it is a prefix of the keys of all such literals when it is
+     * formed using a PRIMARY strength key builder.
+     * 
+     * @param datatype
+     *            The datatype URI.
+     * @param prefix
+     *            The prefix of the lexical form.
+     * 
+     * @see LexiconRelation#prefixScan(Literal[])
+     */
+    public byte[] datatypeLiteralPrefix2key(final URI datatype,
+            final String prefix) {
+
+        if (datatype == null)
+            throw new IllegalArgumentException();
+
+        if (prefix == null)
+            throw new IllegalArgumentException();
+
+        keyBuilder.reset().append(TERM_CODE_DTL);
+
+        keyBuilder.append(datatype.stringValue());
+
+        keyBuilder.append(prefix);
+
+        return keyBuilder.getKey();
+
+    }
+
     // /**
     // * The key corresponding to the start of the literals section of the
     // * terms index.
@@ -30,9 +30,11 @@ package com.bigdata.rdf.lexicon;
 
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
@@ -45,6 +47,7 @@ import java.util.Properties;
 import java.util.Set;
 import java.util.TimeZone;
 import java.util.UUID;
+import java.util.WeakHashMap;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
@@ -58,6 +61,7 @@ import org.openrdf.model.Literal;
 import org.openrdf.model.Statement;
 import org.openrdf.model.URI;
 import org.openrdf.model.Value;
+import org.openrdf.model.vocabulary.XMLSchema;
 
 import com.bigdata.bop.BOp;
 import com.bigdata.bop.IBindingSet;
@@ -74,6 +78,7 @@ import com.bigdata.btree.filter.PrefixFilter;
 import com.bigdata.btree.filter.TupleFilter;
 import com.bigdata.btree.keys.IKeyBuilder;
 import com.bigdata.btree.keys.KVO;
+import com.bigdata.btree.keys.SuccessorUtil;
 import com.bigdata.cache.ConcurrentWeakValueCacheWithBatchedUpdates;
 import com.bigdata.journal.IIndexManager;
 import com.bigdata.journal.IResourceLock;
@@ -96,6 +101,7 @@ import com.bigdata.rdf.internal.impl.BlobIV;
 import com.bigdata.rdf.internal.impl.TermId;
 import com.bigdata.rdf.internal.impl.bnode.SidIV;
 import com.bigdata.rdf.internal.impl.extensions.XSDStringExtension;
+import com.bigdata.rdf.internal.impl.uri.URIExtensionIV;
 import com.bigdata.rdf.model.BigdataBNode;
 import com.bigdata.rdf.model.BigdataLiteral;
 import com.bigdata.rdf.model.BigdataURI;
@@ -435,6 +441,41 @@ public class LexiconRelation extends AbstractRelation<BigdataValue>
 
         }
 
+        {
+
+            parallelWrites = Boolean.parseBoolean(getProperty(
+                    AbstractTripleStore.Options.PARALLEL_LEXICON_WRITES,
+                    AbstractTripleStore.Options.DEFAULT_PARALLEL_LEXICON_WRITES));
+
+        }
+
+        {
+
+            if (Boolean.parseBoolean(getProperty(
+                    AbstractTripleStore.Options.URI_NAMESPACE_DICTIONARY,
+                    AbstractTripleStore.Options.DEFAULT_URI_NAMESPACE_DICTIONARY))) {
+
+                final int maxLocalNameLength = Integer
+                        .parseInt(getProperty(
+                                AbstractTripleStore.Options.URI_NAMESPACE_DICTIONARY_MAX_LOCAL_NAME_LENGTH,
+                                AbstractTripleStore.Options.DEFAULT_URI_NAMESPACE_DICTIONARY_MAX_LOCAL_NAME_LENGTH));
+
+                final int capacity = Integer
+                        .parseInt(getProperty(
+                                AbstractTripleStore.Options.URI_NAMESPACE_DICTIONARY_CAPACITY,
+                                AbstractTripleStore.Options.DEFAULT_URI_NAMESPACE_DICTIONARY_CAPACITY));
+
+                namespaceDictionary = new URINamespaceDictionary(
+                        maxLocalNameLength, capacity);
+
+            } else {
+
+                namespaceDictionary = null;
+
+            }
+
+        }
+
         {
 
             final Set<String> set = new HashSet<String>();
@@ -516,6 +557,25 @@ public class LexiconRelation extends AbstractRelation<BigdataValue>
                     AbstractTripleStore.Options.TERM_CACHE_CAPACITY,
                     AbstractTripleStore.Options.DEFAULT_TERM_CACHE_CAPACITY));
 
+            final long termCacheOffHeapCapacity = Long.parseLong(getProperty(
+                    AbstractTripleStore.Options.TERM_CACHE_OFF_HEAP_CAPACITY,
+                    AbstractTripleStore.Options.DEFAULT_TERM_CACHE_OFF_HEAP_CAPACITY));
+
+            if (termCacheOffHeapCapacity < 0L)
+                throw new IllegalArgumentException(
+                        AbstractTripleStore.Options.TERM_CACHE_OFF_HEAP_CAPACITY
+                                + "=" + termCacheOffHeapCapacity);
+
+            /*
+             * The second level of the term cache is shared by all read-only
+             * views of the lexicon. Mutable views do not use it since the IVs
+             * assigned by an aborted write set may be reassigned.
+             */
+            final OffHeapTermCache.SecondLevel offHeapLevel = termCacheOffHeapCapacity == 0L
+                    || !TimestampUtility.isReadOnly(timestamp) ? null
+                    : getOffHeapLevel(indexManager, namespace,
+                            termCacheOffHeapCapacity, valueFactory);
+
             final Long commitTime = getCommitTime();
             
             if (commitTime != null && TimestampUtility.isReadOnly(timestamp)) {
@@ -532,19 +592,40 @@ public class LexiconRelation extends AbstractRelation<BigdataValue>
                  * store.
                  */
                 termCache = termCacheFactory.getInstance(new NT(namespace,
-                        commitTime.longValue()), termCacheCapacity * 2);
+                        commitTime.longValue()), new TermCacheConfig(
+                        termCacheCapacity * 2, offHeapLevel));
 
             } else {
 
                 /*
                  * Unshared for any other view of the triple store.
                  */
-                termCache = new TermCache<IV<?,?>, BigdataValue>(//
-                        new ConcurrentWeakValueCacheWithBatchedUpdates<IV<?,?>, BigdataValue>(//
-                        termCacheCapacity, // queueCapacity
-                        .75f, // loadFactor (.75 is the default)
-                        16 // concurrency level (16 is the default)
-                ));
+                termCache = newTermCache(new TermCacheConfig(
+                        termCacheCapacity, offHeapLevel));
+
+            }
+
+            final boolean coalesceTermResolution = Boolean.parseBoolean(getProperty(
+                    AbstractTripleStore.Options.COALESCE_TERM_RESOLUTION,
+                    AbstractTripleStore.Options.DEFAULT_COALESCE_TERM_RESOLUTION));
+
+            if (!coalesceTermResolution) {
+
+                termResolver = null;
+
+            } else if (commitTime != null
+                    && TimestampUtility.isReadOnly(timestamp)) {
+
+                /*
+                 * Shared for read-only views from the same commit time (the
+                 * same sharing rules as the term cache).
+                 */
+                termResolver = termResolverFactory.getInstance(new NT(
+                        namespace, commitTime.longValue()), null/* state */);
+
+            } else {
+
+                termResolver = new CoalescingTermResolver();
 
             }
             
@@ -819,6 +900,8 @@ public class LexiconRelation extends AbstractRelation<BigdataValue>
             valueFactory.remove(/*getNamespace()*/);
 
             termCache.clear();
+
+            clearOffHeapLevel(indexManager, getNamespace());
             
             super.destroy();
 
@@ -878,6 +961,20 @@ public class LexiconRelation extends AbstractRelation<BigdataValue>
      * @see AbstractTripleStore.Options#TERMID_BITS_TO_REVERSE
      */
     private final int termIdBitsToReverse;
+
+    /**
+     * @see AbstractTripleStore.Options#PARALLEL_LEXICON_WRITES
+     */
+    private final boolean parallelWrites;
+
+    /**
+     * The namespace dictionary used to split {@link URI}s into a namespace
+     * and an inline localName -or- <code>null</code> if that encoding is not
+     * enabled.
+     * 
+     * @see AbstractTripleStore.Options#URI_NAMESPACE_DICTIONARY
+     */
+    private final URINamespaceDictionary namespaceDictionary;
     
     /**
      * Are xsd datatype primitive and numeric literals being inlined into the statement indices.
@@ -1590,6 +1687,115 @@ public class LexiconRelation extends AbstractRelation<BigdataValue>
 
         }
 
+        return prefixScan(keys);
+
+    }
+
+    /**
+     * A scan of all plain literals and <code>xsd:string</code> literals whose
+     * lexical form begins with the given prefix. This is used to evaluate
+     * <code>STRSTARTS</code> and anchored <code>REGEX</code> filters against
+     * the TERM2ID index rather than by materializing every candidate.
+     * <p>
+     * Note: The prefix keys are formed with PRIMARY strength, so the scan
+     * visits a superset of the matching literals (e.g., it ignores case when
+     * the index uses a Unicode collator). The caller MUST still apply the
+     * original filter to the visited terms. Language tagged literals, inline
+     * literals and literals stored in the BLOBS index are NOT visited.
+     * 
+     * @see #hasLiteralsNotVisitedByPrefixScan()
+     * 
+     * @param prefix
+     *            The prefix.
+     * 
+     * @return An iterator visiting the term identifiers for the matching
+     *         {@link Literal}s.
+     * 
+     * @see #isCaseInsensitivePrefixScan()
+     */
+    @SuppressWarnings("rawtypes")
+    public Iterator<IV> stringPrefixScan(final String prefix) {
+
+        if (prefix == null)
+            throw new IllegalArgumentException();
+
+        final LexiconKeyBuilder keyBuilder = ((Term2IdTupleSerializer) getTerm2IdIndex()
+                .getIndexMetadata().getTupleSerializer())
+                .getLexiconPrimaryKeyBuilder();
+
+        // Note: The prefix keys MUST be in key order.
+        final byte[][] keys = new byte[][] {
+                keyBuilder.plainLiteral2key(prefix),
+                keyBuilder.datatypeLiteralPrefix2key(XMLSchema.STRING, prefix) };
+
+        return prefixScan(keys);
+
+    }
+
+    /**
+     * Return <code>true</code> iff the prefix scans ignore case. This is the
+     * case when the TERM2ID keys are formed using a Unicode collator, since
+     * the prefix keys are then formed at PRIMARY strength. When the keys are
+     * ASCII, the prefix scans are case sensitive.
+     */
+    public boolean isCaseInsensitivePrefixScan() {
+
+        return ((Term2IdTupleSerializer) getTerm2IdIndex().getIndexMetadata()
+                .getTupleSerializer()).getLexiconPrimaryKeyBuilder().keyBuilder
+                .isUnicodeSupported();
+
+    }
+
+    /**
+     * Return <code>true</code> iff the lexicon holds literals which are not
+     * visited by {@link #stringPrefixScan(String)} but which could still match
+     * a string prefix: language tagged literals in the TERM2ID index or any
+     * literal in the BLOBS index. The range counts are an upper bound, so this
+     * continues to report <code>true</code> after such literals were deleted.
+     */
+    public boolean hasLiteralsNotVisitedByPrefixScan() {
+
+        final IIndex ndx = getTerm2IdIndex();
+
+        final IKeyBuilder keyBuilder = ((Term2IdTupleSerializer) ndx
+                .getIndexMetadata().getTupleSerializer())
+                .getLexiconPrimaryKeyBuilder().keyBuilder;
+
+        // The language tagged literals.
+        final byte[] fromKey = keyBuilder.reset()
+                .append(ITermIndexCodes.TERM_CODE_LCL).getKey();
+
+        final byte[] toKey = keyBuilder.reset()
+                .append(ITermIndexCodes.TERM_CODE_DTL).getKey();
+
+        if (ndx.rangeCount(fromKey, toKey) > 0)
+            return true;
+
+        if (getLexiconConfiguration().getBlobsThreshold() == Integer.MAX_VALUE) {
+            // The BLOBS index is disabled.
+            return false;
+        }
+
+        // The literals in the BLOBS index (all have the same flags byte).
+        final byte[] fromBlob = h.newKeyBuilder()
+                .appendSigned(BlobIV.toFlags(VTE.LITERAL)).getKey();
+
+        final byte[] toBlob = SuccessorUtil.successor(fromBlob.clone());
+
+        return getBlobsIndex().rangeCount(fromBlob, toBlob) > 0;
+
+    }
+
+    /**
+     * A scan of the TERM2ID index visiting the term identifiers for the keys
+     * having any of the given prefixes.
+     * 
+     * @param keys
+     *            The prefix keys.
+     */
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private Iterator<IV> prefixScan(final byte[][] keys) {
+
         final IIndex ndx = getTerm2IdIndex();
 
         final Iterator<IV> termIdIterator = new Striterator(
@@ -1780,6 +1986,26 @@ public class LexiconRelation extends AbstractRelation<BigdataValue>
                 values[i] = tmp;
             }
         }
+
+        /*
+         * The namespaces of the URIs in this batch which will be split, or
+         * null if the namespace dictionary is not in use.
+         */
+        final Map<String, IV<?, ?>> namespaces;
+
+        if (namespaceDictionary != null) {
+
+            /*
+             * Make sure that the namespaces are in the lexicon before we
+             * assign IVs to the URIs which will be split.
+             */
+            namespaces = addNamespaces(values, numTerms, readOnly);
+
+        } else {
+
+            namespaces = null;
+
+        }
         
         /*
          * Filter out inline terms from the supplied terms array and create a
@@ -1813,7 +2039,7 @@ public class LexiconRelation extends AbstractRelation<BigdataValue>
              * side effect if not null).
              */
             
-            if (getInlineIV(v) == null) {
+            if (getInlineIV(v, namespaces) == null) {
 
                 /*
                  * Value can not be inlined. We need to figure out which index
@@ -1881,51 +2107,66 @@ public class LexiconRelation extends AbstractRelation<BigdataValue>
         /*
          * Batch insert/lookup of Values against the indices. No duplicates. No
          * inline values.
-         * 
-         * FIXME Co-thread the writes on the BLOBS and TERM2ID indices.
          */
 
         final WriteTaskStats stats = new WriteTaskStats();
 
-        if (nblobs > 0) {
+        if (parallelWrites) {
+
+            /*
+             * Co-thread the writes on the BLOBS and TERM2ID indices.
+             */
+
+            addTermsAndBlobs(
+                    terms.keySet().toArray(new BigdataValue[nterms]),
+                    blobs.keySet().toArray(new BigdataValue[nblobs]),
+                    this.textIndex ? textIndex
+                            : Collections.<BigdataValue> emptySet(), readOnly,
+                    stats);
+
+        } else {
+
+            if (nblobs > 0) {
             
-            final BigdataValue[] a = blobs.keySet().toArray(
-                    new BigdataValue[nblobs]);
+                final BigdataValue[] a = blobs.keySet().toArray(
+                        new BigdataValue[nblobs]);
 
-            addBlobs(a, a.length, readOnly, stats);
+                addBlobs(a, a.length, readOnly, stats);
             
-        }
+            }
         
-        if (nterms > 0) {
+            if (nterms > 0) {
 
-            final BigdataValue[] a = terms.keySet().toArray(
-                    new BigdataValue[nterms]);
+                final BigdataValue[] a = terms.keySet().toArray(
+                        new BigdataValue[nterms]);
 
-            addTerms(a, a.length, readOnly, stats);
+                addTerms(a, a.length, readOnly, stats);
         
-        }
+            }
         
-        if (this.textIndex && textIndex.size() > 0) {
-			/*
-			 * There were some inline literals that need to make it into the
-			 * text index. That is handled here.
-			 * 
-			 * See BLZG-1525
-			 */
-            try {
+            if (this.textIndex && textIndex.size() > 0) {
+				/*
+				 * There were some inline literals that need to make it into the
+				 * text index. That is handled here.
+				 * 
+				 * See BLZG-1525
+				 */
+                try {
                 
-                stats.fullTextIndexTime
-                    .addAndGet(new FullTextIndexWriterTask(
-                            getSearchEngine(), textIndex.size()/* capacity */, 
-                            textIndex.iterator())
-                            .call());
+                    stats.fullTextIndexTime
+                        .addAndGet(new FullTextIndexWriterTask(
+                                getSearchEngine(), textIndex.size()/* capacity */, 
+                                textIndex.iterator())
+                                .call());
 
-            } catch (Exception ex) {
+                } catch (Exception ex) {
                 
-                throw new RuntimeException(ex);
+                    throw new RuntimeException(ex);
                 
-            }
+                }
             
+            }
+
         }
 
         if(!dups.isEmpty()) {
@@ -1973,6 +2214,181 @@ public class LexiconRelation extends AbstractRelation<BigdataValue>
         
     }
     
+    /**
+     * Co-threaded writes on the lexicon indices (TERM2ID, ID2TERM, BLOBS and
+     * SEARCH). The writes proceed in two phases:
+     * <ol>
+     * <li>The TERM2ID and BLOBS indices are written concurrently. This assigns
+     * the {@link IV}s.</li>
+     * <li>The ID2TERM index (for the newly assigned {@link TermId}s) and the
+     * full text index (for the literals in TERM2ID, BLOBS and any inline
+     * literals which are text indexed) are written concurrently.</li>
+     * </ol>
+     * Each index is written by at most one task, so this is safe for the
+     * unisolated indices. There is a single write on the full text index for
+     * the batch rather than one for each of the TERM2ID and BLOBS paths.
+     * 
+     * @param terms
+     *            The distinct values which will be resolved against TERM2ID.
+     * @param blobs
+     *            The distinct values which will be resolved against BLOBS.
+     * @param inlineText
+     *            Inline literals which must be entered into the full text
+     *            index.
+     * @param readOnly
+     *            When <code>true</code>, the values are only resolved.
+     * @param stats
+     *            Used to report on the index writes.
+     * 
+     * @see AbstractTripleStore.Options#PARALLEL_LEXICON_WRITES
+     */
+    private void addTermsAndBlobs(final BigdataValue[] terms,
+            final BigdataValue[] blobs,
+            final Collection<BigdataValue> inlineText, final boolean readOnly,
+            final WriteTaskStats stats) {
+
+        final ExecutorService service = getExecutorService();
+
+        /*
+         * Phase 1 : TERM2ID and BLOBS.
+         */
+        final KVO<BigdataValue>[] a; // TERM2ID
+        final KVO<BigdataValue>[] b; // BLOBS
+        {
+
+            final List<Callable<KVO<BigdataValue>[]>> tasks = new LinkedList<Callable<KVO<BigdataValue>[]>>();
+
+            if (terms.length > 0) {
+
+                tasks.add(new Term2IdWriteTask(getTerm2IdIndex(), readOnly,
+                        storeBlankNodes, termIdBitsToReverse, terms.length,
+                        terms, stats));
+
+            }
+
+            if (blobs.length > 0) {
+
+                tasks.add(new BlobsWriteTask(getBlobsIndex(), valueFactory,
+                        readOnly, storeBlankNodes, blobs.length, blobs, stats));
+
+            }
+
+            final List<KVO<BigdataValue>[]> results = invokeAll(service, tasks);
+
+            final Iterator<KVO<BigdataValue>[]> itr = results.iterator();
+
+            a = terms.length > 0 ? itr.next() : null;
+
+            b = blobs.length > 0 ? itr.next() : null;
+
+        }
+
+        if (readOnly)
+            return;
+
+        /*
+         * Phase 2 : ID2TERM and SEARCH.
+         */
+        {
+
+            final long _begin = System.currentTimeMillis();
+
+            final List<Callable<Long>> tasks = new LinkedList<Callable<Long>>();
+
+            // Note: [a] is dense and its elements are distinct.
+            final int ndistinct = a == null ? 0 : a.length;
+
+            if (ndistinct > 0) {
+
+                /*
+                 * Sort terms based on their assigned termId (when interpreted
+                 * as unsigned long integers).
+                 */
+                final long _beginSort = System.currentTimeMillis();
+
+                Arrays.sort(a, 0, ndistinct, KVOTermIdComparator.INSTANCE);
+
+                stats.keySortTime.add(System.currentTimeMillis() - _beginSort);
+
+                tasks.add(new ReverseIndexWriterTask(getId2TermIndex(),
+                        valueFactory, a, ndistinct, storeBlankNodes));
+
+            }
+
+            if (textIndex) {
+
+                final List<BigdataValue> toIndex = new ArrayList<BigdataValue>(
+                        ndistinct + (b == null ? 0 : b.length)
+                                + inlineText.size());
+
+                for (int i = 0; i < ndistinct; i++)
+                    toIndex.add(a[i].obj);
+
+                if (b != null) {
+                    for (int i = 0; i < b.length; i++)
+                        toIndex.add(b[i].obj);
+                }
+
+                toIndex.addAll(inlineText);
+
+                if (!toIndex.isEmpty()) {
+
+                    tasks.add(new FullTextIndexWriterTask(getSearchEngine(),
+                            toIndex.size()/* capacity */, toIndex.iterator()));
+
+                }
+
+            }
+
+            final List<Long> results = invokeAll(service, tasks);
+
+            final Iterator<Long> itr = results.iterator();
+
+            if (ndistinct > 0)
+                stats.reverseIndexTime = itr.next();
+
+            if (itr.hasNext())
+                stats.fullTextIndexTime.addAndGet(itr.next());
+
+            stats.indexTime.addAndGet(System.currentTimeMillis() - _begin);
+
+        }
+
+    }
+
+    /**
+     * Run the tasks, co-threading them if there is more than one task.
+     * 
+     * @return The results of the tasks in the same order as the tasks.
+     */
+    static private <T> List<T> invokeAll(final ExecutorService service,
+            final List<Callable<T>> tasks) {
+
+        final List<T> results = new ArrayList<T>(tasks.size());
+
+        try {
+
+            if (tasks.size() == 1) {
+
+                results.add(tasks.get(0).call());
+
+            } else if (tasks.size() > 1) {
+
+                for (Future<T> f : service.invokeAll(tasks))
+                    results.add(f.get());
+
+            }
+
+        } catch (Exception ex) {
+
+            throw new RuntimeException(ex);
+
+        }
+
+        return results;
+
+    }
+
     // BLOBS+SEARCH
     private void addBlobs(final BigdataValue[] terms, final int numTerms,
             final boolean readOnly, final WriteTaskStats stats) {
@@ -2784,54 +3200,21 @@ public class LexiconRelation extends AbstractRelation<BigdataValue>
 
         	// go to the indices
         	
-	        /*
-	         * Setup and run task(s) to resolve IV(s).
-	         */
-	
-	        final ExecutorService service = getExecutorService();
-	        
-	        final List<Callable<Void>> tasks = new LinkedList<Callable<Void>>();
-	
-	        if (!termIVs.isEmpty()) {
-	
-	            tasks.add(new BatchResolveTermIVsTask(service, getId2TermIndex(),
-	                    termIVs, ret, termCache, valueFactory, termsChunksSize));
-	
-	        }
-	
-	        if (!blobIVs.isEmpty()) {
-	
-	            tasks.add(new BatchResolveBlobIVsTask(service, getBlobsIndex(),
-	                    blobIVs, ret, termCache, valueFactory, blobsChunkSize));
-	
-	        }
-	
 	        if (log.isInfoEnabled())
 	            log.info("nterms=" + n + ", numNotFound=" + numNotFound
 	                    + ", cacheSize=" + termCache.size());
 	
-	        try {
-	
-	            if (tasks.size() == 1) {
-	             
-	                tasks.get(0).call();
-	                
-	            } else {
-	
-	                // Co-thread tasks.
-	                final List<Future<Void>> futures = getExecutorService()
-	                        .invokeAll(tasks);
-	
-	                // Verify no errors.
-	                for (Future<Void> f : futures)
-	                    f.get();
-	            
-	            }
-	
-	        } catch (Exception ex) {
-	
-	            throw new RuntimeException(ex);
-	
+	        if (termResolver != null) {
+
+	            // Coalesce with the reads for any concurrent callers.
+	            termResolver.resolve(this, termIVs, blobIVs, ret,
+	                    termsChunksSize, blobsChunkSize);
+
+	        } else {
+
+	            readTerms(termIVs, blobIVs, ret, termsChunksSize,
+	                    blobsChunkSize);
+
 	        }
 
         }
@@ -2875,6 +3258,76 @@ public class LexiconRelation extends AbstractRelation<BigdataValue>
 
     }
     
+    /**
+     * Resolve {@link TermId}s and {@link BlobIV}s against the ID2TERM and
+     * BLOBS indices. The reads on the two indices are co-threaded.
+     * 
+     * @param termIVs
+     *            The {@link TermId}s to be resolved.
+     * @param blobIVs
+     *            The {@link BlobIV}s to be resolved.
+     * @param ret
+     *            The resolved values are inserted into this map.
+     * @param termsChunksSize
+     *            The chunk size for reads on the ID2TERM index.
+     * @param blobsChunkSize
+     *            The chunk size for reads on the BLOBS index.
+     */
+    void readTerms(final Collection<TermId<?>> termIVs,
+            final Collection<BlobIV<?>> blobIVs,
+            final ConcurrentHashMap<IV<?, ?>, BigdataValue> ret,
+            final int termsChunksSize, final int blobsChunkSize) {
+
+        /*
+         * Setup and run task(s) to resolve IV(s).
+         */
+
+        final ExecutorService service = getExecutorService();
+        
+        final List<Callable<Void>> tasks = new LinkedList<Callable<Void>>();
+
+        if (!termIVs.isEmpty()) {
+
+            tasks.add(new BatchResolveTermIVsTask(service, getId2TermIndex(),
+                    termIVs, ret, termCache, valueFactory, termsChunksSize));
+
+        }
+
+        if (!blobIVs.isEmpty()) {
+
+            tasks.add(new BatchResolveBlobIVsTask(service, getBlobsIndex(),
+                    blobIVs, ret, termCache, valueFactory, blobsChunkSize));
+
+        }
+
+        if (tasks.isEmpty())
+            return;
+
+        try {
+
+            if (tasks.size() == 1) {
+             
+                tasks.get(0).call();
+                
+            } else {
+
+                // Co-thread tasks.
+                final List<Future<Void>> futures = service.invokeAll(tasks);
+
+                // Verify no errors.
+                for (Future<Void> f : futures)
+                    f.get();
+            
+            }
+
+        } catch (Exception ex) {
+
+            throw new RuntimeException(ex);
+
+        }
+
+    }
+
     /**
      * Add the terms inside a SID to the collection of IVs to materialize if
      * they are not already there.
@@ -2991,19 +3444,176 @@ public class LexiconRelation extends AbstractRelation<BigdataValue>
     /**
      * Factory used for {@link #termCache} for read-only views of the lexicon.
      */
-    static private CanonicalFactory<NT/* key */, ITermCache<IV<?,?>, BigdataValue>, Integer/* state */> termCacheFactory = new CanonicalFactory<NT, ITermCache<IV<?,?>, BigdataValue>, Integer>(
+    static private CanonicalFactory<NT/* key */, ITermCache<IV<?,?>, BigdataValue>, TermCacheConfig/* state */> termCacheFactory = new CanonicalFactory<NT, ITermCache<IV<?,?>, BigdataValue>, TermCacheConfig>(
             1/* queueCapacity */) {
         @Override
         protected ITermCache<IV<?,?>, BigdataValue> newInstance(
-                NT key, Integer termCacheCapacity) {
-            return new TermCache<IV<?,?>,BigdataValue>(//
-                    new ConcurrentWeakValueCacheWithBatchedUpdates<IV<?,?>, BigdataValue>(//
-                    termCacheCapacity.intValue(),// backing hard reference LRU queue capacity.
-                    .75f, // loadFactor (.75 is the default)
-                    16 // concurrency level (16 is the default)
-            ));
+                NT key, TermCacheConfig config) {
+            return newTermCache(config);
+        }
+    };
+
+    /**
+     * Coalesces the resolution of {@link IV}s against the indices across
+     * concurrent requests and <code>null</code> unless
+     * {@link AbstractTripleStore.Options#COALESCE_TERM_RESOLUTION} was
+     * specified.
+     */
+    final private CoalescingTermResolver termResolver;
+
+    /**
+     * Factory used for {@link #termResolver} for read-only views of the
+     * lexicon.
+     */
+    static private CanonicalFactory<NT/* key */, CoalescingTermResolver, Void/* state */> termResolverFactory = new CanonicalFactory<NT, CoalescingTermResolver, Void>(
+            1/* queueCapacity */) {
+        @Override
+        protected CoalescingTermResolver newInstance(final NT key,
+                final Void state) {
+            return new CoalescingTermResolver();
         }
     };
+
+    /**
+     * The configuration for a new {@link #termCache}.
+     */
+    private static class TermCacheConfig {
+
+        /**
+         * The capacity of the backing hard reference LRU queue for the
+         * (on-heap) term cache.
+         */
+        final int capacity;
+
+        /**
+         * The (shared) second level for the {@link OffHeapTermCache} and
+         * <code>null</code> if there is no second level.
+         */
+        final OffHeapTermCache.SecondLevel offHeapLevel;
+
+        TermCacheConfig(final int capacity,
+                final OffHeapTermCache.SecondLevel offHeapLevel) {
+            this.capacity = capacity;
+            this.offHeapLevel = offHeapLevel;
+        }
+
+    }
+
+    /**
+     * Return a new term cache. The on-heap cache is wrapped by an
+     * {@link OffHeapTermCache} when there is a second level.
+     * 
+     * @see AbstractTripleStore.Options#TERM_CACHE_OFF_HEAP_CAPACITY
+     */
+    static private ITermCache<IV<?,?>, BigdataValue> newTermCache(
+            final TermCacheConfig config) {
+
+        final ITermCache<IV<?, ?>, BigdataValue> onHeap = new TermCache<IV<?,?>,BigdataValue>(//
+                new ConcurrentWeakValueCacheWithBatchedUpdates<IV<?,?>, BigdataValue>(//
+                config.capacity,// backing hard reference LRU queue capacity.
+                .75f, // loadFactor (.75 is the default)
+                16 // concurrency level (16 is the default)
+        ));
+
+        if (config.offHeapLevel == null)
+            return onHeap;
+
+        return new OffHeapTermCache(onHeap, config.offHeapLevel);
+
+    }
+
+    /**
+     * The second level of the term cache for the read-only views of each
+     * lexicon, by index manager and then by namespace. The native memory used
+     * by a lexicon is therefore bounded by
+     * {@link AbstractTripleStore.Options#TERM_CACHE_OFF_HEAP_CAPACITY}
+     * regardless of the #of views.
+     * <p>
+     * Note: The second level is released when the lexicon is destroyed, by
+     * {@link #clearTermCacheFactory(String)}, or when the index manager is
+     * finalized.
+     */
+    static private final WeakHashMap<IIndexManager, Map<String, OffHeapTermCache.SecondLevel>> offHeapLevels = new WeakHashMap<IIndexManager, Map<String, OffHeapTermCache.SecondLevel>>();
+
+    /**
+     * Return the shared second level of the term cache for the lexicon,
+     * creating it if necessary.
+     * 
+     * @param indexManager
+     *            The index manager for the lexicon.
+     * @param namespace
+     *            The namespace of the lexicon.
+     * @param capacity
+     *            The byte budget for the second level.
+     * @param valueFactory
+     *            The value factory for the lexicon.
+     */
+    static private OffHeapTermCache.SecondLevel getOffHeapLevel(
+            final IIndexManager indexManager, final String namespace,
+            final long capacity, final BigdataValueFactory valueFactory) {
+
+        synchronized (offHeapLevels) {
+
+            Map<String, OffHeapTermCache.SecondLevel> levels = offHeapLevels
+                    .get(indexManager);
+
+            if (levels == null) {
+
+                levels = new HashMap<String, OffHeapTermCache.SecondLevel>();
+
+                offHeapLevels.put(indexManager, levels);
+
+            }
+
+            OffHeapTermCache.SecondLevel level = levels.get(namespace);
+
+            if (level == null) {
+
+                level = new OffHeapTermCache.SecondLevel(valueFactory,
+                        capacity);
+
+                levels.put(namespace, level);
+
+            }
+
+            return level;
+
+        }
+
+    }
+
+    /**
+     * Discard the shared second level of the term cache for the lexicon(s)
+     * having that namespace and release its native memory.
+     * 
+     * @param indexManager
+     *            The index manager for the lexicon -or- <code>null</code> for
+     *            all index managers.
+     * @param namespace
+     *            The namespace of the lexicon.
+     */
+    static private void clearOffHeapLevel(final IIndexManager indexManager,
+            final String namespace) {
+
+        synchronized (offHeapLevels) {
+
+            for (Map.Entry<IIndexManager, Map<String, OffHeapTermCache.SecondLevel>> e : offHeapLevels
+                    .entrySet()) {
+
+                if (indexManager != null && indexManager != e.getKey())
+                    continue;
+
+                final OffHeapTermCache.SecondLevel level = e.getValue()
+                        .remove(namespace);
+
+                if (level != null)
+                    level.clear();
+
+            }
+
+        }
+
+    }
     
     /**
      * Clear all term caches for the supplied namespace.
@@ -3018,6 +3628,8 @@ public class LexiconRelation extends AbstractRelation<BigdataValue>
                 it.remove();
             }
         }
+
+        clearOffHeapLevel(null/* indexManager */, namespace);
         
     }
     
@@ -3303,8 +3915,208 @@ public class LexiconRelation extends AbstractRelation<BigdataValue>
      */
     @SuppressWarnings("rawtypes")
     final public IV getInlineIV(final Value value) {
+
+        return getInlineIV(value, null/* namespaces */);
+
+    }
+
+    /**
+     * Variant of {@link #getInlineIV(Value)} used by
+     * {@link #addTerms(BigdataValue[], int, boolean)}.
+     * 
+     * @param value
+     *            The value to convert
+     * @param namespaces
+     *            The namespaces resolved for the current batch by
+     *            {@link #addNamespaces(BigdataValue[], int, boolean)} (optional).
+     */
+    @SuppressWarnings("rawtypes")
+    private IV getInlineIV(final Value value,
+            final Map<String, IV<?, ?>> namespaces) {
         
-        return getLexiconConfiguration().createInlineIV(value);
+        final IV iv = getLexiconConfiguration().createInlineIV(value);
+
+        if (iv == null && namespaceDictionary != null && value instanceof URI) {
+
+            return getNamespaceSplitIV((URI) value, namespaces);
+
+        }
+
+        return iv;
+
+    }
+
+    /**
+     * Return the {@link URIExtensionIV} which splits the {@link URI} into the
+     * {@link TermId} for its namespace and an inline localName. The namespace
+     * is resolved against the TERM2ID index if it is neither in the
+     * {@link URINamespaceDictionary} nor among the namespaces resolved for the
+     * current batch.
+     * 
+     * @param uri
+     *            A {@link URI} which was not inlined by the
+     *            {@link ILexiconConfiguration}.
+     * @param namespaces
+     *            The namespaces resolved for the current batch by
+     *            {@link #addNamespaces(BigdataValue[], int, boolean)}
+     *            (optional). A namespace which is mapped to <code>null</code>
+     *            is not in the lexicon.
+     * 
+     * @return The {@link IV} -or- <code>null</code> if the {@link URI} can not
+     *         be split or if its namespace is not in the lexicon (in which case
+     *         that {@link URI} is not in the lexicon either).
+     * 
+     * @see AbstractTripleStore.Options#URI_NAMESPACE_DICTIONARY
+     */
+    @SuppressWarnings("rawtypes")
+    private IV getNamespaceSplitIV(final URI uri,
+            final Map<String, IV<?, ?>> namespaces) {
+
+        final String namespace = namespaceDictionary.getNamespace(uri);
+
+        if (namespace == null)
+            return null;
+
+        IV<?, ?> namespaceIV = namespaceDictionary.get(namespace);
+
+        if (namespaceIV == null && namespaces != null
+                && namespaces.containsKey(namespace)) {
+
+            // Resolved for this batch (the dictionary is full or readOnly).
+            namespaceIV = namespaces.get(namespace);
+
+            if (namespaceIV == null)
+                return null;
+
+        }
+
+        if (namespaceIV == null) {
+
+            final BigdataURI ns = getValueFactory().createURI(namespace);
+
+            if (getLexiconConfiguration().createInlineIV(ns) != null) {
+
+                /*
+                 * The namespace is inline (e.g., a Vocabulary item). Such
+                 * namespaces are left to the IInlineURIFactory.
+                 */
+                return null;
+
+            }
+
+            namespaceIV = getTermIV(ns);
+
+            if (namespaceIV == null)
+                return null;
+
+            namespaceDictionary.put(namespace, namespaceIV);
+
+        }
+
+        final IV iv = namespaceDictionary.createIV(uri, namespaceIV);
+
+        if (iv != null && uri instanceof BigdataValue) {
+
+            // Cache the IV on the BigdataValue.
+            ((BigdataValue) uri).setIV(iv);
+
+        }
+
+        return iv;
+
+    }
+
+    /**
+     * Write (or, if <i>readOnly</i>, resolve) the namespaces of the
+     * {@link URI}s in the batch which will be split by the
+     * {@link URINamespaceDictionary} and enter them into that dictionary. This
+     * ensures that the namespace of such a {@link URI} is always written before
+     * any {@link IV} is assigned to that {@link URI}.
+     * <p>
+     * The namespaces which are not cached are resolved with a single batched
+     * write (or read) against TERM2ID. Once the dictionary is full they are
+     * no longer entered into it, so the returned map is used to split the
+     * {@link URI}s in this batch rather than resolving each namespace again.
+     * 
+     * @param values
+     *            The values.
+     * @param numTerms
+     *            The #of values.
+     * @param readOnly
+     *            When <code>true</code> the namespaces are only resolved.
+     * 
+     * @return The namespaces which were not cached, each mapped onto its
+     *         {@link TermId} -or- <code>null</code> if it is not in the
+     *         lexicon.
+     */
+    private Map<String, IV<?, ?>> addNamespaces(final BigdataValue[] values,
+            final int numTerms, final boolean readOnly) {
+
+        final BigdataValueFactory vf = getValueFactory();
+        
+        final LinkedHashMap<String, BigdataValue> unknown = new LinkedHashMap<String, BigdataValue>();
+
+        for (int i = 0; i < numTerms; i++) {
+
+            final BigdataValue v = values[i];
+
+            if (!(v instanceof URI) || v.getIV() != null)
+                continue;
+
+            final String namespace = namespaceDictionary.getNamespace((URI) v);
+
+            if (namespace == null || unknown.containsKey(namespace)
+                    || namespaceDictionary.get(namespace) != null)
+                continue;
+
+            if (getLexiconConfiguration().createInlineIV(v) != null) {
+
+                // Inlined by the lexicon configuration.
+                continue;
+
+            }
+
+            unknown.put(namespace, vf.createURI(namespace));
+
+        }
+
+        final Map<String, IV<?, ?>> resolved = new HashMap<String, IV<?, ?>>(
+                unknown.size());
+
+        if (unknown.isEmpty())
+            return resolved;
+
+        final BigdataValue[] a = unknown.values().toArray(
+                new BigdataValue[unknown.size()]);
+
+        /*
+         * Note: The localName of each namespace is empty, so these are written
+         * onto the lexicon as ordinary URIs.
+         */
+        addTerms(a, a.length, readOnly);
+
+        final boolean full = namespaceDictionary.isFull();
+
+        for (BigdataValue ns : a) {
+
+            final IV<?, ?> iv = ns.getIV();
+
+            if (iv != null && !iv.isInline()) {
+
+                resolved.put(ns.stringValue(), iv);
+
+                if (!full)
+                    namespaceDictionary.put(ns.stringValue(), iv);
+
+            } else {
+
+                resolved.put(ns.stringValue(), null);
+
+            }
+
+        }
+
+        return resolved;
 
     }
 
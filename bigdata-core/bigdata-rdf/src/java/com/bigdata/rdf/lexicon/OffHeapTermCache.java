@@ -0,0 +1,621 @@
+/**
+
+Copyright (C) SYSTAP, LLC DBA Blazegraph 2006-2016.  All rights reserved.
+
+Contact:
+     SYSTAP, LLC DBA Blazegraph
+     2501 Calvert ST NW #106
+     Washington, DC 20008
+     licenses@blazegraph.com
+
+This program is free software; you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation; version 2 of the License.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program; if not, write to the Free Software
+Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+/*
+ * Created on Oct 17, 2026
+ */
+
+package com.bigdata.rdf.lexicon;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.apache.log4j.Logger;
+
+import com.bigdata.io.DirectBufferPool;
+import com.bigdata.rdf.internal.IV;
+import com.bigdata.rdf.model.BigdataValue;
+import com.bigdata.rdf.model.BigdataValueFactory;
+import com.bigdata.rdf.model.BigdataValueSerializer;
+import com.bigdata.rwstore.sector.IMemoryManager;
+import com.bigdata.rwstore.sector.MemoryManager;
+import com.bigdata.rwstore.sector.SectorAllocator;
+
+/**
+ * A two level term cache. The first level is the normal on-heap
+ * {@link ITermCache}, which holds materialized {@link BigdataValue}s for the
+ * hot terms. The second level holds the serialized form of the
+ * {@link BigdataValue}s on the native heap using a {@link MemoryManager}
+ * backed by the {@link DirectBufferPool}. The second level is bounded by a
+ * byte budget rather than by the #of entries, so a large cache does not add
+ * to the GC burden for materialization heavy queries.
+ * <p>
+ * A miss on the first level which hits on the second level deserializes the
+ * value and promotes it into the first level. Values are entered into the
+ * second level whenever they are entered into the first level. The second
+ * level uses a CLOCK (second chance) eviction policy: each entry has a
+ * reference bit which is set on access and the eviction hand clears the
+ * reference bit and passes over an entry once before evicting it.
+ * <p>
+ * The second level may be shared by several caches (see {@link SecondLevel}).
+ * The {@link LexiconRelation} uses a single second level for all read-only
+ * views of a given lexicon, so the native memory for the lexicon is bounded
+ * by the byte budget regardless of the #of views.
+ * <p>
+ * Note: Only the keys and the addresses of the records are held on the Java
+ * heap. Records larger than {@link SectorAllocator#BLOB_SIZE} are not entered
+ * into the second level. Such large literals are normally stored in the BLOBS
+ * index and are poor candidates for caching in any case.
+ * <p>
+ * Note: The native memory is released by {@link #clear()}. If the cache is
+ * simply dropped, then the memory is returned to the pool when the
+ * {@link MemoryManager} is finalized.
+ * 
+ * @see com.bigdata.rdf.store.AbstractTripleStore.Options#TERM_CACHE_OFF_HEAP_CAPACITY
+ */
+public class OffHeapTermCache implements ITermCache<IV<?, ?>, BigdataValue> {
+
+    private static final transient Logger log = Logger
+            .getLogger(OffHeapTermCache.class);
+
+    /**
+     * The first level (on-heap) cache.
+     */
+    private final ITermCache<IV<?, ?>, BigdataValue> delegate;
+
+    /**
+     * The second level (native memory) cache.
+     */
+    private final SecondLevel level;
+
+    /**
+     * The second level of an {@link OffHeapTermCache}. This holds the
+     * serialized values in native memory and may be shared by several
+     * {@link OffHeapTermCache}s whose keys have the same meaning (that is, for
+     * the same lexicon).
+     */
+    public static class SecondLevel {
+
+        /**
+         * Used to (de-)serialize the values.
+         */
+        private final BigdataValueSerializer<BigdataValue> valueSer;
+
+        /**
+         * The maximum #of bytes of serialized values.
+         */
+        private final long capacity;
+
+        /**
+         * The native memory.
+         */
+        private final IMemoryManager mmgr;
+
+        /**
+         * The index from the {@link IV} to the record for its serialized
+         * value.
+         */
+        private final ConcurrentHashMap<IV<?, ?>, Slot> index;
+
+        /**
+         * The CLOCK. New entries are appended at the tail. The eviction hand
+         * is the head of the queue. Guarded by the write lock.
+         */
+        private final ArrayDeque<Slot> clock;
+
+        /**
+         * Readers of the native memory hold the read lock. Allocation,
+         * eviction, and {@link #clear()} hold the write lock so a record can
+         * not be freed (and its storage recycled) while it is being read.
+         */
+        private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+        /**
+         * The #of bytes of serialized values. Guarded by the write lock.
+         */
+        private long bytesUsed = 0L;
+
+        /**
+         * The #of first level misses which were satisfied by this level.
+         */
+        private final AtomicLong hitCount = new AtomicLong();
+
+        /**
+         * The #of first level misses which were not satisfied by this level.
+         */
+        private final AtomicLong missCount = new AtomicLong();
+
+        /**
+         * The #of entries evicted from this level.
+         */
+        private final AtomicLong evictCount = new AtomicLong();
+
+        /**
+         * @param valueFactory
+         *            The value factory for the lexicon. Decoded values will
+         *            belong to this value factory.
+         * @param capacity
+         *            The maximum #of bytes of serialized values.
+         */
+        public SecondLevel(final BigdataValueFactory valueFactory,
+                final long capacity) {
+
+            this(valueFactory, capacity, DirectBufferPool.INSTANCE);
+
+        }
+
+        /**
+         * @param valueFactory
+         *            The value factory for the lexicon. Decoded values will
+         *            belong to this value factory.
+         * @param capacity
+         *            The maximum #of bytes of serialized values.
+         * @param pool
+         *            The pool from which the native memory is allocated.
+         */
+        public SecondLevel(final BigdataValueFactory valueFactory,
+                final long capacity, final DirectBufferPool pool) {
+
+            if (valueFactory == null)
+                throw new IllegalArgumentException();
+
+            if (capacity <= 0L)
+                throw new IllegalArgumentException();
+
+            if (pool == null)
+                throw new IllegalArgumentException();
+
+            this.valueSer = valueFactory.getValueSerializer();
+
+            this.capacity = capacity;
+
+            /*
+             * Bound the #of sectors by the byte budget (rounding up).
+             * Allocation does not block. If the sectors are full (slot
+             * rounding or fragmentation) we evict until the allocation
+             * succeeds.
+             */
+            final long bufferCapacity = pool.getBufferCapacity();
+
+            final long sectors = Math.max(1L, (capacity + bufferCapacity - 1)
+                    / bufferCapacity);
+
+            this.mmgr = new MemoryManager(pool, (int) Math.min(
+                    Integer.MAX_VALUE, sectors), false/* blocks */,
+                    null/* properties */);
+
+            this.index = new ConcurrentHashMap<IV<?, ?>, Slot>();
+
+            this.clock = new ArrayDeque<Slot>();
+
+        }
+
+        /**
+         * The #of entries.
+         */
+        public int size() {
+            return index.size();
+        }
+
+        /**
+         * The #of bytes of serialized values.
+         */
+        public long getBytes() {
+            lock.readLock().lock();
+            try {
+                return bytesUsed;
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        /**
+         * The maximum #of bytes of serialized values.
+         */
+        public long getCapacity() {
+            return capacity;
+        }
+
+        /**
+         * Return the decoded value for the key.
+         * 
+         * @return The value -or- <code>null</code> if the key is not found.
+         */
+        BigdataValue get(final IV<?, ?> k) {
+
+            final byte[] b;
+            final IV<?, ?> key;
+            lock.readLock().lock();
+            try {
+
+                final Slot slot = index.get(k);
+
+                if (slot == null) {
+                    missCount.incrementAndGet();
+                    return null;
+                }
+
+                slot.referenced = true;
+
+                b = mmgr.read(slot.addr);
+
+                key = slot.key;
+
+            } finally {
+
+                lock.readLock().unlock();
+
+            }
+
+            hitCount.incrementAndGet();
+
+            final BigdataValue tmp = valueSer.deserialize(b);
+
+            tmp.setIV(key);
+
+            return tmp;
+
+        }
+
+        /**
+         * Enter the serialized value, evicting entries as necessary to remain
+         * within the byte budget. The value is silently not cached if it is
+         * already present, too large, or if the native memory can not be
+         * obtained.
+         */
+        void put(final IV<?, ?> k, final BigdataValue v) {
+
+            if (index.containsKey(k))
+                return;
+
+            final byte[] b = valueSer.serialize(v);
+
+            if (b.length > SectorAllocator.BLOB_SIZE || b.length > capacity)
+                return;
+
+            lock.writeLock().lock();
+            try {
+
+                if (index.containsKey(k))
+                    return;
+
+                while (bytesUsed + b.length > capacity && !clock.isEmpty())
+                    evict();
+
+                long addr;
+                while (true) {
+                    try {
+                        addr = mmgr.allocate(ByteBuffer.wrap(b), false/* blocks */);
+                        break;
+                    } catch (RuntimeException ex) {
+                        /*
+                         * Either the sectors are full or a new sector could not
+                         * be obtained from the pool without blocking. Evict and
+                         * retry while there is something to evict.
+                         */
+                        if (clock.isEmpty()) {
+                            if (log.isInfoEnabled())
+                                log.info("Could not allocate: " + ex);
+                            return;
+                        }
+                        evict();
+                    }
+                }
+
+                // Note: Break the hard reference from the IV to its value.
+                final Slot slot = new Slot(k.clone(true/* clearCache */),
+                        addr, b.length);
+
+                index.put(slot.key, slot);
+
+                clock.addLast(slot);
+
+                bytesUsed += b.length;
+
+            } finally {
+
+                lock.writeLock().unlock();
+
+            }
+
+        }
+
+        /**
+         * Advance the CLOCK hand until an entry whose reference bit is clear
+         * is found and evict that entry. Entries whose reference bit is set
+         * are given a second chance. The caller MUST hold the write lock.
+         */
+        private void evict() {
+
+            while (true) {
+
+                final Slot slot = clock.pollFirst();
+
+                if (slot == null)
+                    return;
+
+                if (slot.referenced) {
+                    slot.referenced = false;
+                    clock.addLast(slot);
+                    continue;
+                }
+
+                index.remove(slot.key);
+
+                mmgr.free(slot.addr);
+
+                bytesUsed -= slot.nbytes;
+
+                evictCount.incrementAndGet();
+
+                return;
+
+            }
+
+        }
+
+        /**
+         * Discard all entries and release the native memory back to the pool.
+         */
+        public void clear() {
+
+            lock.writeLock().lock();
+            try {
+
+                index.clear();
+
+                clock.clear();
+
+                mmgr.clear();
+
+                bytesUsed = 0L;
+
+            } finally {
+
+                lock.writeLock().unlock();
+
+            }
+
+        }
+
+        @Override
+        public String toString() {
+
+            return getClass().getSimpleName() + "{size=" + size()
+                    + ",bytes=" + getBytes() + ",capacity=" + capacity
+                    + ",hits=" + hitCount + ",misses=" + missCount
+                    + ",evicted=" + evictCount + "}";
+
+        }
+
+    }
+
+    /**
+     * An entry in the second level.
+     */
+    private static class Slot {
+
+        /** The key (an {@link IV} whose cached value has been cleared). */
+        final IV<?, ?> key;
+
+        /** The address of the serialized value in the memory manager. */
+        final long addr;
+
+        /** The #of bytes in the serialized value. */
+        final int nbytes;
+
+        /** The CLOCK reference bit. */
+        volatile boolean referenced;
+
+        Slot(final IV<?, ?> key, final long addr, final int nbytes) {
+            this.key = key;
+            this.addr = addr;
+            this.nbytes = nbytes;
+        }
+
+    }
+
+    /**
+     * @param delegate
+     *            The first level (on-heap) cache.
+     * @param valueFactory
+     *            The value factory for the lexicon. Values decoded from the
+     *            second level will belong to this value factory.
+     * @param capacity
+     *            The maximum #of bytes of serialized values in the second
+     *            level.
+     */
+    public OffHeapTermCache(
+            final ITermCache<IV<?, ?>, BigdataValue> delegate,
+            final BigdataValueFactory valueFactory, final long capacity) {
+
+        this(delegate, valueFactory, capacity, DirectBufferPool.INSTANCE);
+
+    }
+
+    /**
+     * @param delegate
+     *            The first level (on-heap) cache.
+     * @param valueFactory
+     *            The value factory for the lexicon. Values decoded from the
+     *            second level will belong to this value factory.
+     * @param capacity
+     *            The maximum #of bytes of serialized values in the second
+     *            level.
+     * @param pool
+     *            The pool from which the native memory is allocated.
+     */
+    public OffHeapTermCache(
+            final ITermCache<IV<?, ?>, BigdataValue> delegate,
+            final BigdataValueFactory valueFactory, final long capacity,
+            final DirectBufferPool pool) {
+
+        this(delegate, new SecondLevel(valueFactory, capacity, pool));
+
+    }
+
+    /**
+     * @param delegate
+     *            The first level (on-heap) cache.
+     * @param level
+     *            The second level, which may be shared with other caches for
+     *            the same lexicon.
+     */
+    public OffHeapTermCache(
+            final ITermCache<IV<?, ?>, BigdataValue> delegate,
+            final SecondLevel level) {
+
+        if (delegate == null)
+            throw new IllegalArgumentException();
+
+        if (level == null)
+            throw new IllegalArgumentException();
+
+        this.delegate = delegate;
+
+        this.level = level;
+
+    }
+
+    /**
+     * The second level.
+     */
+    public SecondLevel getSecondLevel() {
+        return level;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Note: This reports the #of entries in the first level.
+     * 
+     * @see #getOffHeapSize()
+     */
+    @Override
+    public int size() {
+        return delegate.size();
+    }
+
+    /**
+     * The #of entries in the second level.
+     */
+    public int getOffHeapSize() {
+        return level.size();
+    }
+
+    /**
+     * The #of bytes of serialized values in the second level.
+     */
+    public long getOffHeapBytes() {
+        return level.getBytes();
+    }
+
+    /**
+     * The maximum #of bytes of serialized values in the second level.
+     */
+    public long getOffHeapCapacity() {
+        return level.getCapacity();
+    }
+
+    /**
+     * The #of first level misses which were satisfied by the second level.
+     */
+    public long getHitCount() {
+        return level.hitCount.get();
+    }
+
+    /**
+     * The #of first level misses which were not satisfied by the second level.
+     */
+    public long getMissCount() {
+        return level.missCount.get();
+    }
+
+    /**
+     * The #of entries evicted from the second level.
+     */
+    public long getEvictCount() {
+        return level.evictCount.get();
+    }
+
+    @Override
+    public BigdataValue get(final IV<?, ?> k) {
+
+        final BigdataValue v = delegate.get(k);
+
+        if (v != null)
+            return v;
+
+        final BigdataValue tmp = level.get(k);
+
+        if (tmp == null)
+            return null;
+
+        // Promote into the first level.
+        final BigdataValue old = delegate.putIfAbsent(tmp.getIV(), tmp);
+
+        return old == null ? tmp : old;
+
+    }
+
+    @Override
+    public BigdataValue putIfAbsent(final IV<?, ?> k, final BigdataValue v) {
+
+        final BigdataValue ret = delegate.putIfAbsent(k, v);
+
+        level.put(k, v);
+
+        return ret;
+
+    }
+
+    /**
+     * Clears both levels and releases the native memory back to the pool.
+     * <p>
+     * Note: When the second level is shared, this clears it for all of the
+     * caches using it.
+     */
+    @Override
+    public void clear() {
+
+        delegate.clear();
+
+        level.clear();
+
+    }
+
+    @Override
+    public String toString() {
+
+        return getClass().getSimpleName() + "{size=" + size()
+                + ",offHeapSize=" + getOffHeapSize() + ",offHeapBytes="
+                + getOffHeapBytes() + ",capacity=" + getOffHeapCapacity()
+                + ",hits=" + getHitCount() + ",misses=" + getMissCount()
+                + ",evicted=" + getEvictCount() + "}";
+
+    }
+
+}
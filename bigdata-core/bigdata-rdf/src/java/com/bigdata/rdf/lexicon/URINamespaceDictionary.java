@@ -0,0 +1,304 @@
+/**
+
+Copyright (C) SYSTAP, LLC DBA Blazegraph 2006-2016.  All rights reserved.
+
+Contact:
+     SYSTAP, LLC DBA Blazegraph
+     2501 Calvert ST NW #106
+     Washington, DC 20008
+     licenses@blazegraph.com
+
+This program is free software; you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation; version 2 of the License.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program; if not, write to the Free Software
+Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+/*
+ * Created on Oct 17, 2026
+ */
+
+package com.bigdata.rdf.lexicon;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.log4j.Logger;
+import org.openrdf.model.URI;
+
+import com.bigdata.rdf.internal.IV;
+import com.bigdata.rdf.internal.impl.TermId;
+import com.bigdata.rdf.internal.impl.literal.AbstractLiteralIV;
+import com.bigdata.rdf.internal.impl.literal.FullyInlineTypedLiteralIV;
+import com.bigdata.rdf.internal.impl.literal.XSDNumericIV;
+import com.bigdata.rdf.internal.impl.uri.URIExtensionIV;
+import com.bigdata.rdf.model.BigdataLiteral;
+import com.bigdata.rdf.model.BigdataURI;
+import com.bigdata.rdf.store.AbstractTripleStore;
+
+/**
+ * The namespace dictionary used by the {@link LexiconRelation} to split
+ * {@link URI}s into a namespace, which is written once onto the lexicon, and
+ * an inline localName. The namespaces are ordinary {@link URI}s in the TERM2ID
+ * and ID2TERM indices, so the dictionary is persistent, grows as the data are
+ * loaded, and is consistent with any historical view of the lexicon. This
+ * class decides which {@link URI}s may be split, forms the inline localName,
+ * and caches the {@link TermId}s of the namespaces which have been resolved.
+ * <p>
+ * Whether or not a {@link URI} is split depends only on the {@link URI}
+ * itself. The {@link LexiconRelation} always writes the namespace before it
+ * assigns an {@link IV} to a {@link URI} which can be split, so such a
+ * {@link URI} is never also written onto the lexicon as a {@link TermId}.
+ * 
+ * @see AbstractTripleStore.Options#URI_NAMESPACE_DICTIONARY
+ */
+class URINamespaceDictionary {
+
+    private static final transient Logger log = Logger
+            .getLogger(URINamespaceDictionary.class);
+
+    /**
+     * The #of digits in the largest localName which is inlined as an
+     * <code>xsd:long</code>.
+     */
+    private static final int MAX_NUMERIC_DIGITS = 18;
+
+    /**
+     * The maximum length of a non-numeric localName which will be inlined.
+     */
+    private final int maxLocalNameLength;
+
+    /**
+     * The maximum #of namespaces in {@link #namespaces}.
+     */
+    private final int capacity;
+
+    /**
+     * The {@link TermId}s of the namespaces which have been resolved against
+     * the lexicon.
+     */
+    private final ConcurrentHashMap<String, IV<?, ?>> namespaces;
+
+    /**
+     * Set once {@link #namespaces} has reached its {@link #capacity}.
+     */
+    private final AtomicBoolean full = new AtomicBoolean(false);
+
+    /**
+     * @param maxLocalNameLength
+     *            The maximum length of a non-numeric localName which will be
+     *            inlined.
+     * @param capacity
+     *            The maximum #of namespaces which will be cached.
+     */
+    URINamespaceDictionary(final int maxLocalNameLength, final int capacity) {
+
+        if (maxLocalNameLength < 0)
+            throw new IllegalArgumentException();
+
+        if (capacity <= 0)
+            throw new IllegalArgumentException();
+
+        this.maxLocalNameLength = maxLocalNameLength;
+
+        this.capacity = capacity;
+
+        this.namespaces = new ConcurrentHashMap<String, IV<?, ?>>();
+
+    }
+
+    /**
+     * Return the namespace under which the {@link URI} would be split.
+     * 
+     * @param uri
+     *            The {@link URI}.
+     * 
+     * @return The namespace -or- <code>null</code> if the {@link URI} can not
+     *         be split.
+     */
+    String getNamespace(final URI uri) {
+
+        final String localName;
+        try {
+            localName = uri.getLocalName();
+        } catch (IllegalArgumentException ex) {
+            // No namespace separator in the URI.
+            return null;
+        }
+
+        if (createLocalNameIV(localName) == null)
+            return null;
+
+        return uri.getNamespace();
+
+    }
+
+    /**
+     * Return the inline {@link IV} for the localName of a {@link URI}.
+     * 
+     * @param localName
+     *            The localName.
+     * 
+     * @return The inline {@link IV} -or- <code>null</code> if the localName is
+     *         empty or can not be inlined.
+     */
+    @SuppressWarnings({ "rawtypes", "unchecked" })
+    AbstractLiteralIV<BigdataLiteral, ?> createLocalNameIV(
+            final String localName) {
+
+        final int len = localName.length();
+
+        if (len == 0) {
+
+            // Nothing to split off (e.g., the namespace itself).
+            return null;
+
+        }
+
+        if (isCanonicalInteger(localName)) {
+
+            return new XSDNumericIV(Long.parseLong(localName));
+
+        }
+
+        if (len > maxLocalNameLength) {
+
+            return null;
+
+        }
+
+        return new FullyInlineTypedLiteralIV<BigdataLiteral>(localName);
+
+    }
+
+    /**
+     * Return <code>true</code> iff the localName is a non-negative integer
+     * which will round trip through an <code>xsd:long</code> (no sign, no
+     * leading zeros, no more than {@value #MAX_NUMERIC_DIGITS} digits).
+     */
+    static boolean isCanonicalInteger(final String s) {
+
+        final int len = s.length();
+
+        if (len == 0 || len > MAX_NUMERIC_DIGITS)
+            return false;
+
+        if (len > 1 && s.charAt(0) == '0')
+            return false;
+
+        for (int i = 0; i < len; i++) {
+
+            final char ch = s.charAt(i);
+
+            if (ch < '0' || ch > '9')
+                return false;
+
+        }
+
+        return true;
+
+    }
+
+    /**
+     * Return the {@link URIExtensionIV} for a {@link URI}.
+     * 
+     * @param uri
+     *            The {@link URI}.
+     * @param namespaceIV
+     *            The {@link TermId} of the namespace of that {@link URI}.
+     * 
+     * @return The {@link URIExtensionIV} -or- <code>null</code> if the
+     *         {@link URI} can not be split.
+     */
+    URIExtensionIV<BigdataURI> createIV(final URI uri,
+            final IV<?, ?> namespaceIV) {
+
+        final AbstractLiteralIV<BigdataLiteral, ?> localNameIV = createLocalNameIV(uri
+                .getLocalName());
+
+        if (localNameIV == null)
+            return null;
+
+        return new URIExtensionIV<BigdataURI>(localNameIV, namespaceIV);
+
+    }
+
+    /**
+     * Return the cached {@link TermId} for a namespace.
+     * 
+     * @param namespace
+     *            The namespace.
+     * 
+     * @return The {@link TermId} -or- <code>null</code> if the namespace is
+     *         not cached.
+     */
+    IV<?, ?> get(final String namespace) {
+
+        return namespaces.get(namespace);
+
+    }
+
+    /**
+     * Cache the {@link TermId} for a namespace. This is a NOP once the
+     * capacity of the cache has been reached (a warning is logged the first
+     * time this happens).
+     * 
+     * @param namespace
+     *            The namespace.
+     * @param namespaceIV
+     *            The {@link TermId} assigned to that namespace.
+     */
+    void put(final String namespace, final IV<?, ?> namespaceIV) {
+
+        if (!(namespaceIV instanceof TermId))
+            throw new IllegalArgumentException();
+
+        if (full.get())
+            return;
+
+        if (namespaces.size() >= capacity) {
+
+            if (full.compareAndSet(false, true)) {
+
+                log.warn("Namespace dictionary is full: capacity=" + capacity
+                        + ", see "
+                        + AbstractTripleStore.Options.URI_NAMESPACE_DICTIONARY_CAPACITY);
+
+            }
+
+            return;
+
+        }
+
+        namespaces.putIfAbsent(namespace, namespaceIV);
+
+    }
+
+    /**
+     * Return <code>true</code> once the capacity of the cache has been
+     * reached. Namespaces which are not cached must then be resolved against
+     * the lexicon each time they are needed.
+     */
+    boolean isFull() {
+
+        return full.get();
+
+    }
+
+    /**
+     * The #of cached namespaces.
+     */
+    int size() {
+
+        return namespaces.size();
+
+    }
+
+}
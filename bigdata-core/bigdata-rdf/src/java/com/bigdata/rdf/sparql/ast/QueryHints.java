@@ -37,6 +37,15 @@ import com.bigdata.bop.engine.IRunningQuery;
 import com.bigdata.bop.engine.QueryEngine;
 import com.bigdata.bop.fed.QueryEngineFactory;
 import com.bigdata.bop.join.HashJoinAnnotations;
+import com.bigdata.bop.join.HashJoinOp;
+import com.bigdata.bop.join.JVMHashJoinAnnotations;
+import com.bigdata.bop.joinGraph.rto.JoinGraph;
+import com.bigdata.bop.solutions.CombineAggregationOp;
+import com.bigdata.bop.solutions.ExternalMemoryGroupByOp;
+import com.bigdata.bop.solutions.ExternalMemorySortOp;
+import com.bigdata.bop.solutions.PartialAggregationOp;
+import com.bigdata.bop.solutions.PipelinedAggregationOp;
+import com.bigdata.bop.solutions.TopKSortOp;
 import com.bigdata.htree.HTree;
 import com.bigdata.io.DirectBufferPool;
 import com.bigdata.rdf.sparql.ast.cache.CacheConnectionFactory;
@@ -44,10 +53,13 @@ import com.bigdata.rdf.sparql.ast.hints.QueryHintRegistry;
 import com.bigdata.rdf.sparql.ast.hints.QueryHintScope;
 import com.bigdata.rdf.sparql.ast.optimizers.ASTDistinctTermScanOptimizer;
 import com.bigdata.rdf.sparql.ast.optimizers.ASTFastRangeCountOptimizer;
+import com.bigdata.rdf.sparql.ast.optimizers.ASTIndexMergeJoinOptimizer;
 import com.bigdata.rdf.sparql.ast.optimizers.ASTJoinGroupOrderOptimizer;
 import com.bigdata.rdf.sparql.ast.optimizers.ASTJoinOrderByTypeOptimizer;
+import com.bigdata.rdf.sparql.ast.optimizers.ASTLiteralPrefixScanOptimizer;
 import com.bigdata.rdf.sparql.ast.optimizers.ASTOptimizerList;
 import com.bigdata.rdf.sparql.ast.optimizers.ASTStaticJoinOptimizer;
+import com.bigdata.rdf.sparql.ast.optimizers.ASTWorstCaseOptimalJoinOptimizer;
 import com.bigdata.rdf.sparql.ast.optimizers.DefaultOptimizerList;
 import com.bigdata.util.Bytes;
 
@@ -150,6 +162,34 @@ public interface QueryHints {
 
     int DEFAULT_RTO_NEDGES = 1;
 
+    /**
+     * When <code>true</code>, the join path selected by the runtime query
+     * optimizer is monitored while it runs (default
+     * {@value #DEFAULT_RTO_ADAPTIVE}). If the observed cardinality of a join
+     * exceeds the RTO estimate by more than {@link #RTO_DEVIATION} before the
+     * join path has produced any solutions, then the join graph is re-sampled
+     * with a larger limit and the join path is restarted if a different join
+     * ordering is selected. Once the join path is done, the join graph is
+     * re-planned in the same manner for the later invocations of the join
+     * graph.
+     * 
+     * @see JoinGraph.Annotations#ADAPTIVE
+     */
+    String RTO_ADAPTIVE = "RTO-adaptive";
+
+    boolean DEFAULT_RTO_ADAPTIVE = JoinGraph.Annotations.DEFAULT_ADAPTIVE;
+
+    /**
+     * The ratio of the observed to the estimated cardinality of a join which
+     * triggers re-planning when {@link #RTO_ADAPTIVE} is enabled (default
+     * {@value #DEFAULT_RTO_DEVIATION}).
+     * 
+     * @see JoinGraph.Annotations#DEVIATION
+     */
+    String RTO_DEVIATION = "RTO-deviation";
+
+    double DEFAULT_RTO_DEVIATION = JoinGraph.Annotations.DEFAULT_DEVIATION;
+
     /**
      * Query hint sets the optimistic threshold for the static join order
      * optimizer.
@@ -206,6 +246,8 @@ public interface QueryHints {
      * @see #NATIVE_DISTINCT_SPO
      * @see #NATIVE_DISTINCT_SOLUTIONS
      * @see #NATIVE_HASH_JOINS
+     * @see #NATIVE_ORDER_BY
+     * @see #NATIVE_GROUP_BY
      * @see #MERGE_JOIN
      * 
      * @see <a href="http://jira.blazegraph.com/browse/BLZG-43" > Add System 
@@ -257,6 +299,93 @@ public interface QueryHints {
 
     boolean DEFAULT_NATIVE_DISTINCT_SOLUTIONS = DEFAULT_ANALYTIC;
 
+    /**
+     * When <code>true</code>, will use the version of ORDER BY which writes
+     * sorted runs of the solutions onto the native (C process) heap and then
+     * merges those runs. When <code>false</code>, use the version which sorts
+     * all solutions on the JVM heap. The JVM version is faster for small
+     * solution sets, but does not scale-up as well.
+     * 
+     * @see ExternalMemorySortOp
+     */
+    String NATIVE_ORDER_BY = "nativeOrderBy";
+
+    boolean DEFAULT_NATIVE_ORDER_BY = DEFAULT_ANALYTIC;
+
+    /**
+     * When <code>true</code>, will use the version of GROUP BY which hash
+     * partitions the solutions and spills those partitions onto the native (C
+     * process) heap, aggregating one partition at a time. When
+     * <code>false</code>, use the version which builds all groups on the JVM
+     * heap. The JVM version is faster when the number of groups is small, but
+     * high-cardinality aggregations can exhaust the JVM heap.
+     * <p>
+     * Note: This only applies to aggregations which can not be computed by the
+     * {@link PipelinedAggregationOp} (DISTINCT aggregates, nested aggregates,
+     * or aggregates which depend on one another).
+     * 
+     * @see ExternalMemoryGroupByOp
+     */
+    String NATIVE_GROUP_BY = "nativeGroupBy";
+
+    boolean DEFAULT_NATIVE_GROUP_BY = DEFAULT_ANALYTIC;
+
+    /**
+     * The #of concurrent partial aggregation tasks used to evaluate an
+     * aggregation (default {@value #DEFAULT_PARALLEL_AGGREGATION}). When GT
+     * ONE, an aggregation which could be evaluated by the
+     * {@link PipelinedAggregationOp} and whose aggregates all support merging
+     * of their partial states (COUNT, SUM, MIN, MAX and AVG) is instead
+     * evaluated by up to that many concurrent {@link PartialAggregationOp}
+     * tasks, each with its own group state, followed by a
+     * {@link CombineAggregationOp} which merges the partial states. This query
+     * hint MUST be applied in the {@link QueryHintScope#Query}. The default
+     * may be overridden using the environment variable named
+     * 
+     * <pre>
+     * com.bigdata.rdf.sparql.ast.QueryHints.parallelAggregation
+     * </pre>
+     * 
+     * @see PartialAggregationOp
+     * @see CombineAggregationOp
+     */
+    String PARALLEL_AGGREGATION = "parallelAggregation";
+
+    int DEFAULT_PARALLEL_AGGREGATION = Integer.valueOf(System.getProperty(
+            QueryHints.class.getName() + "." + PARALLEL_AGGREGATION, "0"));
+
+    /**
+     * The maximum value of <code>OFFSET+LIMIT</code> for which an ORDER BY
+     * followed by a SLICE will be evaluated using a bounded top-K sort rather
+     * than a sort of all solutions. Use ZERO (0) to disable the top-K sort.
+     * 
+     * @see TopKSortOp
+     */
+    String TOP_K_SORT_THRESHOLD = "topKSortThreshold";
+
+    long DEFAULT_TOP_K_SORT_THRESHOLD = Long.valueOf(System.getProperty(
+            QueryHints.class.getName() + "." + TOP_K_SORT_THRESHOLD, "10000"));
+
+    /**
+     * When <code>true</code>, the projected assignments of a query having an
+     * ORDER BY and a SLICE are evaluated after the ORDER BY unless the sort
+     * depends on them. Any RDF values needed by those assignments are then
+     * materialized only for the solutions which survive the (top-K) sort
+     * rather than for every solution. The assignments are still evaluated
+     * before the SLICE and the placement of other materialization steps is not
+     * changed. This query hint MUST be applied in the
+     * {@link QueryHintScope#Query}. The default may be overridden using the
+     * environment variable named
+     * 
+     * <pre>
+     * com.bigdata.rdf.sparql.ast.QueryHints.lateMaterialization
+     * </pre>
+     */
+    String LATE_MATERIALIZATION = "lateMaterialization";
+
+    boolean DEFAULT_LATE_MATERIALIZATION = Boolean.valueOf(System.getProperty(
+            QueryHints.class.getName() + "." + LATE_MATERIALIZATION, "true"));
+
     /**
      * When <code>true</code> and the range count of the default graph access
      * path exceeds the {@link #NATIVE_DISTINCT_SPO_THRESHOLD}, will use the
@@ -307,6 +436,42 @@ public interface QueryHints {
 
     boolean DEFAULT_MERGE_JOIN = true;
 
+    /**
+     * When <code>true</code>, a join group whose leading statement patterns
+     * form a cyclic pattern (a triangle, etc.) will be evaluated using a
+     * worst-case optimal join (leapfrog triejoin) rather than a sequence of
+     * pairwise joins. This query hint MUST be applied in the
+     * {@link QueryHintScope#Query}.
+     * <p>
+     * The default is <code>false</code>. The default may be overridden using
+     * the environment variable named
+     * 
+     * <pre>
+     * com.bigdata.rdf.sparql.ast.QueryHints.worstCaseOptimalJoin
+     * </pre>
+     * 
+     * @see ASTWorstCaseOptimalJoinOptimizer
+     */
+    String WORST_CASE_OPTIMAL_JOIN = "worstCaseOptimalJoin";
+
+    boolean DEFAULT_WORST_CASE_OPTIMAL_JOIN = Boolean.valueOf(System
+            .getProperty(QueryHints.class.getName() + "."
+                    + WORST_CASE_OPTIMAL_JOIN, "false"));
+
+    /**
+     * The minimum estimated cardinality of each of the leading statement
+     * patterns in a top-level join group before they will be evaluated using
+     * a merge join over ordered index scans rather than nested index joins
+     * (default {@value #DEFAULT_INDEX_MERGE_JOIN_THRESHOLD}). Use
+     * {@link Long#MAX_VALUE} to disable the index merge join. This query hint
+     * MUST be applied in the {@link QueryHintScope#Query}.
+     * 
+     * @see ASTIndexMergeJoinOptimizer
+     */
+    String INDEX_MERGE_JOIN_THRESHOLD = "indexMergeJoinThreshold";
+
+    long DEFAULT_INDEX_MERGE_JOIN_THRESHOLD = 1000000L;
+
     /**
      * Query hint for disabling the DISTINCT SPO behavior for a CONSTRUCT QUERY
      * (default {@value #DEFAULT_CONSTRUCT_DISTINCT_SPO}). When disabled, the
@@ -528,6 +693,18 @@ public interface QueryHints {
 
     boolean DEFAULT_HASH_JOIN = false;
 
+    /**
+     * Query hint to push a Bloom filter on the join variables of a
+     * {@link #HASH_JOIN} down onto the scan of the access path for a given
+     * predicate. The filter is built from the solutions buffered on the hash
+     * index. Elements which can not join are then dropped inside the index
+     * scan. This is useful when the buffered solutions are selective with
+     * respect to the access path.
+     * 
+     * @see HashJoinOp.Annotations#BLOOM_FILTER
+     */
+    String HASH_JOIN_BLOOM_FILTER = "hashJoinBloomFilter";
+
     /**
      * When <code>true</code> a DESCRIBE cache will be maintained. This can
      * accelerate DESCRIBE queries, linked data queries (which are mapped to a
@@ -607,6 +784,37 @@ public interface QueryHints {
      * used currently when there is a single datatype for attribute values.
      */
     String RANGE_SAFE = "rangeSafe";
+
+    /**
+     * When <code>true</code>, a <code>FILTER(STRSTARTS(?o, "prefix"))</code> or
+     * an anchored <code>FILTER(REGEX(?o, "^prefix"))</code> on a variable
+     * which is bound by a required statement pattern in the same group will be
+     * evaluated by first scanning the TERM2ID index for the literals having
+     * that prefix. The candidates are joined with the group as an inline
+     * <code>VALUES</code> clause and the FILTER is retained to verify each
+     * match.
+     * <p>
+     * Note: The scan only visits plain and <code>xsd:string</code> literals in
+     * the TERM2ID index. Language tagged literals, inline literals and
+     * literals in the BLOBS index will not be found, so the rewrite is not
+     * applied when string literals are inlined or when the lexicon holds any
+     * language tagged literal or any literal in the BLOBS index.
+     * 
+     * @see ASTLiteralPrefixScanOptimizer
+     */
+    String PREFIX_SCAN = "prefixScan";
+
+    boolean DEFAULT_PREFIX_SCAN = Boolean.valueOf(System.getProperty(
+            QueryHints.class.getName() + "." + PREFIX_SCAN, "false"));
+
+    /**
+     * The maximum #of candidate literals for a {@link #PREFIX_SCAN}. When the
+     * prefix matches more literals than this, the FILTER is evaluated
+     * normally.
+     */
+    String PREFIX_SCAN_LIMIT = "prefixScanLimit";
+
+    long DEFAULT_PREFIX_SCAN_LIMIT = 10000;
         
     /**
      * Used to mark a statement pattern with a cutoff limit for how many
@@ -616,6 +824,37 @@ public interface QueryHints {
      * @see Annotations#CUTOFF_LIMIT
      */
     String CUTOFF_LIMIT = "cutoffLimit";
+
+    /**
+     * The #of key-range splits which will be scanned concurrently for the
+     * access path of a statement pattern. When GT ONE, an unselective access
+     * path on the Journal is divided into that many sub-ranges which are read
+     * in parallel. The statement pattern will not visit its elements in index
+     * order when this is enabled.
+     * 
+     * @see Annotations#PARALLEL_SCAN_THREADS
+     */
+    String PARALLEL_SCAN_THREADS = "parallelScanThreads";
+
+    /**
+     * The minimum estimated range count before the access path of a statement
+     * pattern will be scanned in parallel.
+     * 
+     * @see #PARALLEL_SCAN_THREADS
+     * @see Annotations#PARALLEL_SCAN_THRESHOLD
+     */
+    String PARALLEL_SCAN_THRESHOLD = "parallelScanThreshold";
+
+    /**
+     * The #of partitions for a JVM hash index (default ONE). When GT ONE, the
+     * hash index is divided into that many sub-indices by the hash code of
+     * the join variables and large chunks of solutions are added to the
+     * sub-indices concurrently. The solutions are the same, but their order
+     * may differ. This does not apply to the native (HTree) hash joins.
+     * 
+     * @see JVMHashJoinAnnotations#BUILD_PARTITIONS
+     */
+    String HASH_JOIN_BUILD_PARTITIONS = "hashJoinBuildPartitions";
  
     /**
      * Used to specify the query plan for FILTER (NOT) EXISTS. There are two
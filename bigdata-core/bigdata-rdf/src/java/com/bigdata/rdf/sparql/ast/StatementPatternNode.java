@@ -216,6 +216,20 @@ public class StatementPatternNode extends
 		 *      PREDICATEs query is slow </a>
 		 */
         String DISTINCT_TERM_SCAN_VAR = "distinctTermScanVar";
+
+		/**
+		 * An optional annotation whose value is a variable which will become
+		 * bound to the number of distinct values of the
+		 * {@link #DISTINCT_TERM_SCAN_VAR} for the associated triple pattern.
+		 * This is used to evaluate <code>COUNT(DISTINCT ?x)</code> against the
+		 * index without binding <code>?x</code>.
+		 * <p>
+		 * Note: When both the {@link #DISTINCT_TERM_SCAN_VAR} and the
+		 * {@link #FAST_RANGE_COUNT_VAR} are given, the triple pattern binds each
+		 * distinct value together with the fast range count for that value
+		 * (an index-only <code>GROUP BY ?x</code> with <code>COUNT(*)</code>).
+		 */
+        String DISTINCT_TERM_COUNT_VAR = "distinctTermCountVar";
         
     }
     
@@ -460,6 +474,27 @@ public class StatementPatternNode extends
 		setProperty(Annotations.DISTINCT_TERM_SCAN_VAR, var);
 
 	}
+
+	/**
+	 * Return the variable that will be bound to the number of distinct values
+	 * of the {@link #getDistinctTermScanVar() distinct term scan variable}.
+	 * 
+	 * @return The variable -or- <code>null</code> if this triple pattern is not
+	 *         associated with that annotation.
+	 * 
+	 * @see Annotations#DISTINCT_TERM_COUNT_VAR
+	 */
+	final public VarNode getDistinctTermCountVar() {
+
+		return (VarNode) getProperty(Annotations.DISTINCT_TERM_COUNT_VAR);
+
+	}
+
+	final public void setDistinctTermCountVar(final VarNode var) {
+
+		setProperty(Annotations.DISTINCT_TERM_COUNT_VAR, var);
+
+	}
     
     /**
      * {@inheritDoc}
@@ -708,6 +743,11 @@ public class StatementPatternNode extends
 			sb.append(" [distinctTermScan=" + distinctTermScanVar + "]");
 		}
 
+		final VarNode distinctTermCountVar = getDistinctTermCountVar();
+		if (distinctTermCountVar != null) {
+			sb.append(" [distinctTermCount=" + distinctTermCountVar + "]");
+		}
+
         if(isOptional()) {
             sb.append(" [optional]");
         }
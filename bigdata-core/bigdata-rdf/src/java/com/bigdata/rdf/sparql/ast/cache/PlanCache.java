@@ -0,0 +1,1045 @@
+/**
+
+Copyright (C) SYSTAP, LLC DBA Blazegraph 2006-2016.  All rights reserved.
+
+Contact:
+     SYSTAP, LLC DBA Blazegraph
+     2501 Calvert ST NW #106
+     Washington, DC 20008
+     licenses@blazegraph.com
+
+This program is free software; you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation; version 2 of the License.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program; if not, write to the Free Software
+Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+/*
+ * Created on Oct 17, 2026
+ */
+
+package com.bigdata.rdf.sparql.ast.cache;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Logger;
+
+import com.bigdata.bop.BOp;
+import com.bigdata.bop.BOpUtility;
+import com.bigdata.bop.Constant;
+import com.bigdata.bop.IBindingSet;
+import com.bigdata.bop.IConstant;
+import com.bigdata.bop.IVariable;
+import com.bigdata.bop.engine.QueryEngine;
+import com.bigdata.btree.IIndex;
+import com.bigdata.rdf.internal.IV;
+import com.bigdata.rdf.sparql.ast.ASTContainer;
+import com.bigdata.rdf.sparql.ast.BindingsClause;
+import com.bigdata.rdf.sparql.ast.ConstantNode;
+import com.bigdata.rdf.sparql.ast.DatasetNode;
+import com.bigdata.rdf.sparql.ast.QueryHints;
+import com.bigdata.rdf.sparql.ast.QueryNodeWithBindingSet;
+import com.bigdata.rdf.sparql.ast.QueryRoot;
+import com.bigdata.rdf.sparql.ast.SolutionSetStatserator;
+import com.bigdata.rdf.sparql.ast.StatementPatternNode;
+import com.bigdata.rdf.sparql.ast.eval.AST2BOpContext;
+import com.bigdata.rdf.sparql.ast.eval.DataSetSummary;
+import com.bigdata.rdf.spo.CharacteristicSetStatistics;
+import com.bigdata.rdf.store.AbstractTripleStore;
+
+/**
+ * A cache of optimized ASTs. Running the AST optimizers is a large part of the
+ * cost of planning a query, and the result depends only on the query, the
+ * exogenous solutions and the statistics of the KB. This cache allows a query
+ * which is submitted repeatedly against the same KB to skip the optimizers.
+ * <p>
+ * The key is formed from the namespace of the KB, the query string (with the
+ * whitespace outside of IRIs and literals normalized), the query hints and the
+ * evaluation options which they control, the data set, the other annotations
+ * of the original AST, and the exogenous solutions. When there is a single
+ * exogenous solution, only the names of its variables are part of the key and
+ * its values are substituted into the cached AST, so a parameterized query
+ * hits the cache for any values of its parameters. As with a prepared
+ * statement, the join order and the cardinality estimates then reflect the
+ * values for which the AST was first optimized. The optimized AST is cached
+ * rather than the query plan because the query plan embeds the UUID of the
+ * query, which is used to locate named solution sets, and converting the
+ * optimized AST into a query plan is cheap.
+ * <p>
+ * An entry is discarded when the #of statements in the KB drifts by more than
+ * {@link Options#MAX_DRIFT} from the #of statements when the AST was optimized
+ * or when the {@link CharacteristicSetStatistics} have been refreshed since
+ * then. The following plans are never cached:
+ * <ul>
+ * <li>Plans for which an optimizer has copied data from the indices into the
+ * AST (for example, the prefix scan which inlines the matching literals). Such
+ * plans are only valid for the commit point against which they were
+ * generated.</li>
+ * <li>Plans for queries which mention an RDF Value that is not in the lexicon.
+ * The Value will have a different internal value once it is added to the
+ * lexicon.</li>
+ * <li>Queries without a query string, e.g., the WHERE clause of a SPARQL
+ * UPDATE.</li>
+ * <li>Plans in which the values of a single exogenous solution are used other
+ * than as the terms of a statement pattern (or as the bindings of their own
+ * variables), e.g., when they were folded into a FILTER. Those values could
+ * not be substituted when the AST is reused.</li>
+ * </ul>
+ * The evaluation options set by the query hints are captured when an AST is
+ * cached and restored when it is reused. The bop identifiers and variable
+ * names assigned by the optimizers are skipped over.
+ * The cache is disabled by default.
+ * 
+ * @see AST2BOpContext#setDataDependentPlan()
+ */
+public class PlanCache {
+
+    private static final transient Logger log = Logger
+            .getLogger(PlanCache.class);
+
+    /**
+     * Configuration options. These are specified using environment variables.
+     */
+    public interface Options {
+
+        /**
+         * The maximum #of optimized ASTs which are retained for each
+         * {@link QueryEngine}. The least recently used entries are evicted
+         * first. Use ZERO (0) to disable the cache.
+         */
+        String CAPACITY = PlanCache.class.getName() + ".capacity";
+
+        String DEFAULT_CAPACITY = "0";
+
+        /**
+         * The maximum relative change in the #of statements in the KB before a
+         * cached AST is discarded.
+         */
+        String MAX_DRIFT = PlanCache.class.getName() + ".maxDrift";
+
+        String DEFAULT_MAX_DRIFT = "0.1";
+
+    }
+
+    /**
+     * Weak key cache to enforce the singleton pattern.
+     */
+    private static final WeakHashMap<QueryEngine, PlanCache> instanceCache = new WeakHashMap<QueryEngine, PlanCache>();
+
+    /**
+     * Singleton factory.
+     * 
+     * @param queryEngine
+     *            The {@link QueryEngine}.
+     * 
+     * @return The {@link PlanCache} -or- <code>null</code> if the cache is
+     *         disabled.
+     */
+    static public PlanCache getPlanCache(final QueryEngine queryEngine) {
+
+        if (queryEngine == null)
+            throw new IllegalArgumentException();
+
+        final int capacity = Integer.valueOf(System.getProperty(
+                Options.CAPACITY, Options.DEFAULT_CAPACITY));
+
+        if (capacity <= 0) {
+
+            // Feature is disabled.
+            return null;
+
+        }
+
+        synchronized (instanceCache) {
+
+            PlanCache cache = instanceCache.get(queryEngine);
+
+            if (cache == null) {
+
+                final double maxDrift = Double.valueOf(System.getProperty(
+                        Options.MAX_DRIFT, Options.DEFAULT_MAX_DRIFT));
+
+                cache = new PlanCache(capacity, maxDrift);
+
+                instanceCache.put(queryEngine, cache);
+
+            }
+
+            return cache;
+
+        }
+
+    }
+
+    /**
+     * A cached optimized AST.
+     */
+    private static class Entry {
+
+        private final QueryRoot optimizedAST;
+        private final IBindingSet[] bindingSets;
+        private final Object[] queryHintState;
+        private final int lastId;
+        private final int varCount;
+        private final long statementCount;
+        private final long statisticsRevision;
+
+        Entry(final QueryRoot optimizedAST, final IBindingSet[] bindingSets,
+                final Object[] queryHintState, final int lastId,
+                final int varCount, final long statementCount,
+                final long statisticsRevision) {
+
+            this.optimizedAST = optimizedAST;
+            this.bindingSets = bindingSets;
+            this.queryHintState = queryHintState;
+            this.lastId = lastId;
+            this.varCount = varCount;
+            this.statementCount = statementCount;
+            this.statisticsRevision = statisticsRevision;
+
+        }
+
+    }
+
+    private final double maxDrift;
+
+    /**
+     * The entries in LRU order.
+     */
+    private final LinkedHashMap<String, Entry> map;
+
+    private final AtomicLong hitCount = new AtomicLong();
+
+    private final AtomicLong missCount = new AtomicLong();
+
+    /**
+     * @param capacity
+     *            The maximum #of entries.
+     * @param maxDrift
+     *            The maximum relative change in the #of statements in the KB
+     *            before an entry is discarded.
+     */
+    public PlanCache(final int capacity, final double maxDrift) {
+
+        if (capacity <= 0)
+            throw new IllegalArgumentException();
+
+        if (maxDrift < 0d)
+            throw new IllegalArgumentException();
+
+        this.maxDrift = maxDrift;
+
+        this.map = new LinkedHashMap<String, Entry>(16, .75f, true/* accessOrder */) {
+
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(
+                    final Map.Entry<String, Entry> eldest) {
+
+                return size() > capacity;
+
+            }
+
+        };
+
+    }
+
+    /**
+     * The #of entries.
+     */
+    public int size() {
+
+        synchronized (map) {
+
+            return map.size();
+
+        }
+
+    }
+
+    /**
+     * The #of times an optimized AST was found in the cache.
+     */
+    public long getHitCount() {
+
+        return hitCount.get();
+
+    }
+
+    /**
+     * The #of times an optimized AST was not found in the cache.
+     */
+    public long getMissCount() {
+
+        return missCount.get();
+
+    }
+
+    /**
+     * Discard all entries.
+     */
+    public void clear() {
+
+        synchronized (map) {
+
+            map.clear();
+
+        }
+
+    }
+
+    /**
+     * Return the key for the query -or- <code>null</code> if the optimized AST
+     * for the query may not be cached.
+     * 
+     * @param ctx
+     *            The evaluation context. The Values in the original AST must
+     *            have been resolved against the lexicon and the AST optimizers
+     *            must not have been run yet.
+     * @param bindingSets
+     *            The exogenous solutions.
+     */
+    public String getKey(final AST2BOpContext ctx,
+            final IBindingSet[] bindingSets) {
+
+        final ASTContainer astContainer = ctx.astContainer;
+
+        final String queryString = astContainer.getQueryString();
+
+        if (queryString == null)
+            return null;
+
+        final QueryRoot originalQuery = astContainer.getOriginalAST();
+
+        if (hasMockIVs(originalQuery, bindingSets))
+            return null;
+
+        final StringBuilder sb = new StringBuilder();
+
+        sb.append(ctx.getAbstractTripleStore().getNamespace());
+
+        sb.append('\n');
+
+        sb.append(normalize(queryString));
+
+        sb.append('\n');
+
+        // The query hints, except for the UUID of the query.
+        final Map<String, String> hints = new TreeMap<String, String>();
+
+        if (astContainer.getQueryHints() != null) {
+
+            for (String name : astContainer.getQueryHints()
+                    .stringPropertyNames()) {
+
+                if (!QueryHints.QUERYID.equals(name))
+                    hints.put(name, astContainer.getQueryHints()
+                            .getProperty(name));
+
+            }
+
+        }
+
+        sb.append(hints);
+
+        sb.append('\n');
+
+        // The evaluation options before the query hints are applied.
+        sb.append(Arrays.toString(ctx.getQueryHintState()));
+
+        sb.append('\n');
+
+        // The annotations which are not part of the AST proper.
+        final Map<String, Object> anns = new TreeMap<String, Object>();
+
+        for (Map.Entry<String, Object> e : originalQuery.annotations()
+                .entrySet()) {
+
+            if (!(e.getValue() instanceof BOp))
+                anns.put(e.getKey(), e.getValue());
+
+        }
+
+        sb.append(anns);
+
+        sb.append('\n');
+
+        sb.append(originalQuery.getDataset());
+
+        sb.append('\n');
+
+        if (isParameterized(bindingSets)) {
+
+            // Only the names of the variables. The values are substituted.
+            final Set<String> vars = new TreeSet<String>();
+
+            @SuppressWarnings("rawtypes")
+            final Iterator<Map.Entry<IVariable, IConstant>> itr = bindingSets[0]
+                    .iterator();
+
+            while (itr.hasNext()) {
+
+                vars.add(itr.next().getKey().getName());
+
+            }
+
+            sb.append("vars=").append(vars);
+
+        } else {
+
+            sb.append("solutions=").append(Arrays.toString(bindingSets));
+
+        }
+
+        return sb.toString();
+
+    }
+
+    /**
+     * Return the cached optimized AST for the key -or- <code>null</code> if
+     * there is no entry or if the entry is no longer valid. When the entry is
+     * found, the values of a single exogenous solution are substituted into a
+     * copy of the optimized AST, the evaluation options set by the query hints
+     * and the statistics for the exogenous solutions are restored, and the
+     * bop identifiers and variable names assigned by the optimizers are
+     * skipped over in the evaluation context.
+     * 
+     * @param key
+     *            The key.
+     * @param ctx
+     *            The evaluation context.
+     * @param bindingSets
+     *            The exogenous solutions.
+     * 
+     * @return A copy of the optimized AST and the optimized exogenous
+     *         solutions.
+     */
+    public QueryNodeWithBindingSet get(final String key,
+            final AST2BOpContext ctx, final IBindingSet[] bindingSets) {
+
+        final Entry e;
+
+        synchronized (map) {
+
+            e = map.get(key);
+
+        }
+
+        if (e == null) {
+
+            missCount.incrementAndGet();
+
+            return null;
+
+        }
+
+        final AbstractTripleStore db = ctx.getAbstractTripleStore();
+
+        final long statementCount = db.getStatementCount();
+
+        final double drift = Math.abs(statementCount - e.statementCount)
+                / (double) Math.max(1L, e.statementCount);
+
+        if (drift > maxDrift
+                || getStatisticsRevision(db) != e.statisticsRevision) {
+
+            if (log.isInfoEnabled())
+                log.info("Discarding: drift=" + drift + ", key=" + key);
+
+            synchronized (map) {
+
+                if (map.get(key) == e)
+                    map.remove(key);
+
+            }
+
+            missCount.incrementAndGet();
+
+            return null;
+
+        }
+
+        hitCount.incrementAndGet();
+
+        final QueryRoot optimizedAST = BOpUtility.deepCopy(e.optimizedAST);
+
+        final IBindingSet[] optimizedBindingSets = copy(e.bindingSets);
+
+        if (isParameterized(bindingSets))
+            rebind(optimizedAST, optimizedBindingSets, bindingSets[0]);
+
+        ctx.setQueryHintState(e.queryHintState);
+
+        ctx.setSolutionSetStats(SolutionSetStatserator
+                .get(optimizedBindingSets));
+
+        ctx.skipIds(e.lastId, e.varCount);
+
+        return new QueryNodeWithBindingSet(optimizedAST, optimizedBindingSets);
+
+    }
+
+    /**
+     * Cache the optimized AST for the key unless an optimizer has marked it as
+     * dependent on the data or the values of a single exogenous solution can
+     * not be substituted into it.
+     * 
+     * @param key
+     *            The key.
+     * @param ctx
+     *            The evaluation context.
+     * @param bindingSets
+     *            The exogenous solutions.
+     * @param optimizedAST
+     *            The optimized AST.
+     * @param optimizedBindingSets
+     *            The optimized exogenous solutions.
+     * @param lastId
+     *            The last bop identifier assigned by the optimizers.
+     */
+    public void put(final String key, final AST2BOpContext ctx,
+            final IBindingSet[] bindingSets, final QueryRoot optimizedAST,
+            final IBindingSet[] optimizedBindingSets, final int lastId) {
+
+        if (ctx.isDataDependentPlan())
+            return;
+
+        if (isParameterized(bindingSets)
+                && !isRebindable(optimizedAST, optimizedBindingSets,
+                        bindingSets[0])) {
+
+            if (log.isInfoEnabled())
+                log.info("Not rebindable: key=" + key);
+
+            return;
+
+        }
+
+        final AbstractTripleStore db = ctx.getAbstractTripleStore();
+
+        final Entry e = new Entry(BOpUtility.deepCopy(optimizedAST),
+                copy(optimizedBindingSets), ctx.getQueryHintState(), lastId,
+                ctx.getCreatedVarCount(), db.getStatementCount(),
+                getStatisticsRevision(db));
+
+        synchronized (map) {
+
+            map.put(key, e);
+
+        }
+
+    }
+
+    /**
+     * Return <code>true</code> iff there is a single exogenous solution, in
+     * which case its values are substituted into the cached AST.
+     */
+    private static boolean isParameterized(final IBindingSet[] bindingSets) {
+
+        return bindingSets != null && bindingSets.length == 1
+                && bindingSets[0] != null;
+
+    }
+
+    /**
+     * Return <code>true</code> iff the values of the exogenous solution only
+     * appear in the optimized AST as the terms of statement patterns which were
+     * inlined for the variables of that solution and in the optimized
+     * exogenous solutions as the bindings of those variables. Any other use of
+     * those values (including a value which was folded into an expression or
+     * copied onto another variable) would not be replaced by
+     * {@link #rebind(QueryRoot, IBindingSet[], IBindingSet)}. The exogenous
+     * solution itself must also survive the optimizers unchanged (it is
+     * dropped, e.g., when it conflicts with a FILTER which enforces another
+     * value for one of its variables).
+     */
+    @SuppressWarnings("rawtypes")
+    private static boolean isRebindable(final QueryRoot optimizedAST,
+            final IBindingSet[] optimizedBindingSets, final IBindingSet exogenous) {
+
+        if (exogenous.isEmpty())
+            return true;
+
+        if (optimizedBindingSets == null || optimizedBindingSets.length != 1
+                || optimizedBindingSets[0] == null)
+            return false;
+
+        final Set<Object> values = new HashSet<Object>();
+
+        final Iterator<Map.Entry<IVariable, IConstant>> eitr = exogenous
+                .iterator();
+
+        while (eitr.hasNext()) {
+
+            final Map.Entry<IVariable, IConstant> e = eitr.next();
+
+            if (!e.getValue().equals(optimizedBindingSets[0].get(e.getKey())))
+                return false;
+
+            values.add(e.getValue().get());
+
+        }
+
+        // The constants which are replaced by rebind().
+        final Set<BOp> terms = Collections
+                .newSetFromMap(new IdentityHashMap<BOp, Boolean>());
+
+        final Iterator<BOp> itr = BOpUtility
+                .preOrderIteratorWithAnnotations(optimizedAST);
+
+        while (itr.hasNext()) {
+
+            final BOp op = itr.next();
+
+            if (op instanceof StatementPatternNode) {
+
+                // Note: visited before its terms.
+                for (BOp t : op.args()) {
+
+                    if (getInlinedVar(t, exogenous) != null)
+                        terms.add((BOp) ((ConstantNode) t)
+                                .getValueExpression());
+
+                }
+
+            } else if (op instanceof Constant) {
+
+                final Constant<?> c = (Constant<?>) op;
+
+                if ((values.contains(c.get()) || (c.getVar() != null && exogenous
+                        .isBound(c.getVar()))) && !terms.contains(c)) {
+
+                    return false;
+
+                }
+
+            } else if (op instanceof BindingsClause) {
+
+                for (IBindingSet bset : ((BindingsClause) op)
+                        .getBindingSets()) {
+
+                    if (usesValues(bset, values, null/* exogenous */))
+                        return false;
+
+                }
+
+            }
+
+        }
+
+        return !usesValues(optimizedBindingSets[0], values, exogenous);
+
+    }
+
+    /**
+     * Return <code>true</code> iff the solution binds one of the values to a
+     * variable other than the variable to which it is bound in the exogenous
+     * solution (any use of the values when there is no exogenous solution).
+     */
+    @SuppressWarnings("rawtypes")
+    private static boolean usesValues(final IBindingSet bset,
+            final Set<Object> values, final IBindingSet exogenous) {
+
+        final Iterator<Map.Entry<IVariable, IConstant>> itr = bset.iterator();
+
+        while (itr.hasNext()) {
+
+            final Map.Entry<IVariable, IConstant> e = itr.next();
+
+            if (values.contains(e.getValue().get())
+                    && (exogenous == null || !e.getValue().equals(
+                            exogenous.get(e.getKey())))) {
+
+                return true;
+
+            }
+
+        }
+
+        return false;
+
+    }
+
+    /**
+     * Return the variable of the exogenous solution for which the term of a
+     * statement pattern was inlined -or- <code>null</code> if the term is not
+     * such a constant.
+     */
+    private static IVariable<?> getInlinedVar(final BOp t,
+            final IBindingSet exogenous) {
+
+        if (!(t instanceof ConstantNode))
+            return null;
+
+        final Object c = ((ConstantNode) t).getValueExpression();
+
+        if (!(c instanceof Constant))
+            return null;
+
+        final IVariable<?> var = ((Constant<?>) c).getVar();
+
+        return var != null && exogenous.isBound(var) ? var : null;
+
+    }
+
+    /**
+     * Substitute the values of the exogenous solution into a copy of a cached
+     * optimized AST and its optimized exogenous solutions.
+     */
+    @SuppressWarnings({ "rawtypes", "unchecked" })
+    private static void rebind(final QueryRoot optimizedAST,
+            final IBindingSet[] optimizedBindingSets, final IBindingSet exogenous) {
+
+        // Note: collected first since the AST is modified.
+        final List<StatementPatternNode> list = new LinkedList<StatementPatternNode>();
+
+        final Iterator<BOp> itr = BOpUtility
+                .preOrderIteratorWithAnnotations(optimizedAST);
+
+        while (itr.hasNext()) {
+
+            final BOp op = itr.next();
+
+            if (op instanceof StatementPatternNode)
+                list.add((StatementPatternNode) op);
+
+        }
+
+        for (StatementPatternNode sp : list) {
+
+            for (int i = 0; i < sp.arity(); i++) {
+
+                final IVariable var = getInlinedVar(sp.get(i), exogenous);
+
+                if (var != null) {
+
+                    sp.setArg(i, new ConstantNode(new Constant<IV>(var,
+                            (IV) exogenous.get(var).get())));
+
+                }
+
+            }
+
+        }
+
+        if (optimizedBindingSets == null)
+            return;
+
+        for (IBindingSet bset : optimizedBindingSets) {
+
+            if (bset == null)
+                continue;
+
+            final Iterator<Map.Entry<IVariable, IConstant>> eitr = exogenous
+                    .iterator();
+
+            while (eitr.hasNext()) {
+
+                final Map.Entry<IVariable, IConstant> e = eitr.next();
+
+                if (bset.isBound(e.getKey()))
+                    bset.set(e.getKey(), e.getValue());
+
+            }
+
+        }
+
+    }
+
+    private static IBindingSet[] copy(final IBindingSet[] a) {
+
+        if (a == null)
+            return null;
+
+        final IBindingSet[] b = new IBindingSet[a.length];
+
+        for (int i = 0; i < a.length; i++) {
+
+            b[i] = a[i] == null ? null : a[i].clone();
+
+        }
+
+        return b;
+
+    }
+
+    private static long getStatisticsRevision(final AbstractTripleStore db) {
+
+        final IIndex ndx = db.getSPORelation().getStatisticsIndex();
+
+        return ndx == null ? -1L : CharacteristicSetStatistics
+                .readRevision(ndx);
+
+    }
+
+    /**
+     * Return <code>true</code> if the query or the exogenous solutions use an
+     * RDF Value which was not found in the lexicon.
+     */
+    private static boolean hasMockIVs(final QueryRoot query,
+            final IBindingSet[] bindingSets) {
+
+        final Iterator<BOp> itr = BOpUtility
+                .preOrderIteratorWithAnnotations(query);
+
+        while (itr.hasNext()) {
+
+            final BOp op = itr.next();
+
+            if (op instanceof ConstantNode) {
+
+                if (isMock(((ConstantNode) op).getValueExpression().get()))
+                    return true;
+
+            } else if (op instanceof BindingsClause) {
+
+                for (IBindingSet bset : ((BindingsClause) op)
+                        .getBindingSets()) {
+
+                    if (hasMockIVs(bset))
+                        return true;
+
+                }
+
+            } else if (op instanceof DatasetNode) {
+
+                if (hasMockIVs(((DatasetNode) op).getDefaultGraphs())
+                        || hasMockIVs(((DatasetNode) op).getNamedGraphs()))
+                    return true;
+
+            }
+
+        }
+
+        if (bindingSets != null) {
+
+            for (IBindingSet bset : bindingSets) {
+
+                if (bset != null && hasMockIVs(bset))
+                    return true;
+
+            }
+
+        }
+
+        return false;
+
+    }
+
+    @SuppressWarnings("rawtypes")
+    private static boolean hasMockIVs(final IBindingSet bset) {
+
+        final Iterator<Map.Entry<IVariable, IConstant>> itr = bset.iterator();
+
+        while (itr.hasNext()) {
+
+            if (isMock(itr.next().getValue().get()))
+                return true;
+
+        }
+
+        return false;
+
+    }
+
+    @SuppressWarnings("rawtypes")
+    private static boolean hasMockIVs(final DataSetSummary summary) {
+
+        if (summary == null)
+            return false;
+
+        for (IV iv : summary.getGraphs()) {
+
+            if (isMock(iv))
+                return true;
+
+        }
+
+        return false;
+
+    }
+
+    @SuppressWarnings("rawtypes")
+    private static boolean isMock(final Object o) {
+
+        return o instanceof IV && ((IV) o).isNullIV();
+
+    }
+
+    /**
+     * Normalize a SPARQL query string. Each run of whitespace outside of an
+     * IRI or a quoted literal is replaced by a single space and leading and
+     * trailing whitespace is removed. Comments are treated as whitespace. IRIs
+     * and literals are copied verbatim, so two queries having the same
+     * normalized form are always the same query.
+     * 
+     * @param s
+     *            The query string.
+     * 
+     * @return The normalized query string.
+     */
+    public static String normalize(final String s) {
+
+        final StringBuilder sb = new StringBuilder(s.length());
+
+        final int len = s.length();
+
+        boolean space = false;
+
+        int i = 0;
+
+        while (i < len) {
+
+            final char c = s.charAt(i);
+
+            if (Character.isWhitespace(c)) {
+
+                space = true;
+
+                i++;
+
+                continue;
+
+            }
+
+            if (c == '#') {
+
+                // A comment runs to the end of the line.
+                while (i < len && s.charAt(i) != '\n' && s.charAt(i) != '\r')
+                    i++;
+
+                space = true;
+
+                continue;
+
+            }
+
+            if (space && sb.length() > 0)
+                sb.append(' ');
+
+            space = false;
+
+            final int end;
+
+            if (c == '<') {
+
+                end = endIRI(s, i);
+
+            } else if (c == '"' || c == '\'') {
+
+                end = endLiteral(s, i);
+
+            } else {
+
+                end = i + 1;
+
+            }
+
+            sb.append(s, i, end);
+
+            i = end;
+
+        }
+
+        return sb.toString();
+
+    }
+
+    /**
+     * Return the index after the <code>&gt;</code> if an IRI starts at
+     * <i>start</i> and otherwise the index after the <code>&lt;</code> (a
+     * comparison operator). This mirrors the SPARQL lexer, which will match an
+     * <code>IRIREF</code> when possible.
+     */
+    private static int endIRI(final String s, final int start) {
+
+        for (int i = start + 1; i < s.length(); i++) {
+
+            final char c = s.charAt(i);
+
+            if (c == '>')
+                return i + 1;
+
+            if (c <= 0x20 || "<\"{}|^`\\".indexOf(c) != -1)
+                break;
+
+        }
+
+        return start + 1;
+
+    }
+
+    /**
+     * Return the index after the end of the quoted literal which starts at
+     * <i>start</i>. Both the short and the long (triple quoted) forms are
+     * recognized.
+     */
+    private static int endLiteral(final String s, final int start) {
+
+        final char q = s.charAt(start);
+
+        final int len = s.length();
+
+        final boolean isLong = start + 2 < len && s.charAt(start + 1) == q
+                && s.charAt(start + 2) == q;
+
+        int i = start + (isLong ? 3 : 1);
+
+        while (i < len) {
+
+            final char c = s.charAt(i);
+
+            if (c == '\\') {
+
+                // Skip the escaped character.
+                i += 2;
+
+                continue;
+
+            }
+
+            if (c == q) {
+
+                if (!isLong)
+                    return i + 1;
+
+                if (i + 2 < len && s.charAt(i + 1) == q
+                        && s.charAt(i + 2) == q) {
+
+                    return i + 3;
+
+                }
+
+            }
+
+            i++;
+
+        }
+
+        // Unterminated (the parser will have rejected the query).
+        return len;
+
+    }
+
+}
@@ -0,0 +1,1312 @@
+/**
+
+Copyright (C) SYSTAP, LLC DBA Blazegraph 2006-2016.  All rights reserved.
+
+Contact:
+     SYSTAP, LLC DBA Blazegraph
+     2501 Calvert ST NW #106
+     Washington, DC 20008
+     licenses@blazegraph.com
+
+This program is free software; you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation; version 2 of the License.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program; if not, write to the Free Software
+Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+/*
+ * Created on Oct 17, 2026
+ */
+
+package com.bigdata.rdf.sparql.ast.cache;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Logger;
+import org.openrdf.model.URI;
+import org.openrdf.model.Value;
+import org.openrdf.query.Binding;
+import org.openrdf.query.BindingSet;
+import org.openrdf.query.Dataset;
+import org.openrdf.query.QueryEvaluationException;
+
+import com.bigdata.bop.BOp;
+import com.bigdata.bop.BOpUtility;
+import com.bigdata.bop.Constant;
+import com.bigdata.bop.IBindingSet;
+import com.bigdata.bop.Var;
+import com.bigdata.bop.bindingSet.ListBindingSet;
+import com.bigdata.bop.engine.QueryEngine;
+import com.bigdata.io.DataInputBuffer;
+import com.bigdata.io.DataOutputBuffer;
+import com.bigdata.journal.IAtomicStore;
+import com.bigdata.journal.ICommitRecord;
+import com.bigdata.journal.IIndexManager;
+import com.bigdata.journal.ITx;
+import com.bigdata.journal.TimestampUtility;
+import com.bigdata.rdf.changesets.ChangeAction;
+import com.bigdata.rdf.changesets.IChangeLog;
+import com.bigdata.rdf.changesets.IChangeRecord;
+import com.bigdata.rdf.internal.IV;
+import com.bigdata.rdf.internal.encoder.IVSolutionSetDecoder;
+import com.bigdata.rdf.internal.encoder.IVSolutionSetEncoder;
+import com.bigdata.rdf.model.BigdataValue;
+import com.bigdata.rdf.sparql.ast.ASTContainer;
+import com.bigdata.rdf.sparql.ast.ConstantNode;
+import com.bigdata.rdf.sparql.ast.FunctionNode;
+import com.bigdata.rdf.sparql.ast.FunctionRegistry;
+import com.bigdata.rdf.sparql.ast.NamedSubqueriesNode;
+import com.bigdata.rdf.sparql.ast.NamedSubqueryInclude;
+import com.bigdata.rdf.sparql.ast.NamedSubqueryRoot;
+import com.bigdata.rdf.sparql.ast.PropertyPathNode;
+import com.bigdata.rdf.sparql.ast.QueryHints;
+import com.bigdata.rdf.sparql.ast.QueryRoot;
+import com.bigdata.rdf.sparql.ast.StatementPatternNode;
+import com.bigdata.rdf.sparql.ast.TermNode;
+import com.bigdata.rdf.sparql.ast.ZeroLengthPathNode;
+import com.bigdata.rdf.sparql.ast.service.ServiceNode;
+import com.bigdata.rdf.store.AbstractTripleStore;
+
+import cutthecrap.utils.striterators.ICloseableIterator;
+import info.aduna.iteration.CloseableIteration;
+
+/**
+ * A cache of the solutions for SELECT queries against read-only views of a KB.
+ * Dashboards and similar clients tend to issue the same queries over and over
+ * between commits. This cache allows such a query to be answered without
+ * being optimized or evaluated.
+ * <p>
+ * The key is formed from the namespace of the KB, the commit time of the view,
+ * the query string (normalized as for the {@link PlanCache}), the query hints,
+ * the other annotations of the original AST (e.g., includeInferred), the data
+ * set and the exogenous bindings. The solutions are recorded as they are
+ * drained by the application and are stored using the
+ * {@link IVSolutionSetEncoder}, so each entry carries both the {@link IV}s and
+ * the materialized RDF {@link Value}s. The cache is an LRU bounded by the
+ * total size in bytes of the encoded solutions. An entry is only created once
+ * the application has drained all solutions and only if the encoded solutions
+ * do not exceed {@link Options#MAX_ENTRY_SIZE}.
+ * <p>
+ * Entries are invalidated in one of two ways:
+ * <dl>
+ * <dt>Commit time (default)</dt>
+ * <dd>Since the commit time is part of the key, an entry is only visible to
+ * views reading on the same commit point. Once a view of a newer commit point
+ * is observed for a namespace, all entries for older commit points of that
+ * namespace are discarded. This is always correct.</dd>
+ * <dt>Predicate tracking ({@link Options#TRACK_PREDICATES})</dt>
+ * <dd>The commit time is not part of the key. Instead, each entry records the
+ * predicates read by the query. An {@link IChangeLog} registered on each
+ * mutable {@link com.bigdata.rdf.sail.BigdataSail.BigdataSailConnection} by
+ * the {@link ResultCacheServiceFactory} reports the predicates of the
+ * statements which are added or removed and the entries reading those
+ * predicates are discarded when the change is committed. Entries thus survive
+ * commits which do not touch the data they depend on. Note: Updates which are
+ * not made through a BigdataSailConnection (for example, bulk loads made
+ * directly against the {@link AbstractTripleStore}) are NOT observed in this
+ * mode.</dd>
+ * </dl>
+ * The following queries are never cached: queries against an unisolated or
+ * read-committed view or a read/write transaction, queries which invoke a
+ * SERVICE, queries which INCLUDE a named solution set which they do not
+ * define, queries which use a non-deterministic function (NOW(), RAND(),
+ * UUID(), STRUUID() or BNODE()), and queries without a query string.
+ * <p>
+ * The cache is disabled by default.
+ * 
+ * @see PlanCache
+ * @see ResultCacheServiceFactory
+ */
+public class ResultCache {
+
+    private static final transient Logger log = Logger
+            .getLogger(ResultCache.class);
+
+    /**
+     * Configuration options. These are specified using environment variables.
+     */
+    public interface Options {
+
+        /**
+         * The maximum #of bytes of encoded solutions which are retained for
+         * each {@link QueryEngine}. The least recently used entries are
+         * evicted first. Use ZERO (0) to disable the cache.
+         * <p>
+         * Note: This option is read once, when the {@link ResultCache} class
+         * is loaded.
+         */
+        String CAPACITY = ResultCache.class.getName() + ".capacity";
+
+        String DEFAULT_CAPACITY = "0";
+
+        /**
+         * The maximum #of bytes of encoded solutions for a single query. The
+         * solutions for queries which exceed this limit are not cached.
+         */
+        String MAX_ENTRY_SIZE = ResultCache.class.getName() + ".maxEntrySize";
+
+        String DEFAULT_MAX_ENTRY_SIZE = "" + (1024 * 1024);
+
+        /**
+         * When <code>true</code>, entries are invalidated by the predicates of
+         * the statements changed by each commit rather than by any commit.
+         */
+        String TRACK_PREDICATES = ResultCache.class.getName()
+                + ".trackPredicates";
+
+        String DEFAULT_TRACK_PREDICATES = "false";
+
+    }
+
+    /**
+     * The value of {@link Options#CAPACITY}.
+     */
+    private static final long configuredCapacity = Long.valueOf(System
+            .getProperty(Options.CAPACITY, Options.DEFAULT_CAPACITY));
+
+    /**
+     * Return <code>true</code> iff the cache is enabled (the
+     * {@link Options#CAPACITY} is positive).
+     */
+    static public boolean isEnabled() {
+
+        return configuredCapacity > 0;
+
+    }
+
+    /**
+     * Weak key cache to enforce the singleton pattern.
+     */
+    private static final WeakHashMap<QueryEngine, ResultCache> instanceCache = new WeakHashMap<QueryEngine, ResultCache>();
+
+    /**
+     * Singleton factory.
+     * 
+     * @param queryEngine
+     *            The {@link QueryEngine}.
+     * 
+     * @return The {@link ResultCache} -or- <code>null</code> if the cache is
+     *         disabled.
+     */
+    static public ResultCache getResultCache(final QueryEngine queryEngine) {
+
+        if (queryEngine == null)
+            throw new IllegalArgumentException();
+
+        if (!isEnabled()) {
+
+            // Feature is disabled.
+            return null;
+
+        }
+
+        synchronized (instanceCache) {
+
+            ResultCache cache = instanceCache.get(queryEngine);
+
+            if (cache == null) {
+
+                final long maxEntrySize = Long.valueOf(System.getProperty(
+                        Options.MAX_ENTRY_SIZE,
+                        Options.DEFAULT_MAX_ENTRY_SIZE));
+
+                final boolean trackPredicates = Boolean.valueOf(System
+                        .getProperty(Options.TRACK_PREDICATES,
+                                Options.DEFAULT_TRACK_PREDICATES));
+
+                cache = new ResultCache(configuredCapacity, maxEntrySize,
+                        trackPredicates);
+
+                instanceCache.put(queryEngine, cache);
+
+            }
+
+            return cache;
+
+        }
+
+    }
+
+    /**
+     * The functions whose value is not determined by their arguments.
+     */
+    private static final Set<URI> nonDeterministicFunctions;
+    static {
+        final Set<URI> tmp = new LinkedHashSet<URI>();
+        tmp.add(FunctionRegistry.NOW);
+        tmp.add(FunctionRegistry.RAND);
+        tmp.add(FunctionRegistry.UUID);
+        tmp.add(FunctionRegistry.STRUUID);
+        tmp.add(FunctionRegistry.BNODE);
+        nonDeterministicFunctions = Collections.unmodifiableSet(tmp);
+    }
+
+    /**
+     * The solutions for a query.
+     */
+    private static class Entry {
+
+        private final String namespace;
+        private final long commitTime;
+        /**
+         * The predicates read by the query -or- <code>null</code> if the
+         * query may read any predicate (only when tracking predicates).
+         */
+        private final Set<IV<?, ?>> predicates;
+        private final List<String> projection;
+        private final byte[] data;
+        private final int solutionCount;
+        private final long size;
+
+        Entry(final String key, final String namespace, final long commitTime,
+                final Set<IV<?, ?>> predicates, final List<String> projection,
+                final byte[] data, final int solutionCount) {
+
+            this.namespace = namespace;
+            this.commitTime = commitTime;
+            this.predicates = predicates;
+            this.projection = projection;
+            this.data = data;
+            this.solutionCount = solutionCount;
+            // Note: Roughly accounts for the key and object overhead.
+            this.size = data.length + 2L * key.length() + 128;
+
+        }
+
+        /**
+         * Return <code>true</code> iff the query may read any of the given
+         * predicates.
+         * 
+         * @param changed
+         *            The changed predicates -or- <code>null</code> if any
+         *            predicate may have changed.
+         */
+        boolean dependsOn(final Set<IV<?, ?>> changed) {
+
+            if (predicates == null || changed == null)
+                return true;
+
+            for (IV<?, ?> p : changed) {
+
+                if (predicates.contains(p))
+                    return true;
+
+            }
+
+            return false;
+
+        }
+
+    }
+
+    /**
+     * The solutions read from an entry.
+     */
+    public static class Result {
+
+        /** The names of the projected variables. */
+        public final List<String> projection;
+
+        /** The solutions. The {@link IV}s have their cached values set. */
+        public final ICloseableIterator<IBindingSet> solutions;
+
+        Result(final List<String> projection,
+                final ICloseableIterator<IBindingSet> solutions) {
+
+            this.projection = projection;
+            this.solutions = solutions;
+
+        }
+
+    }
+
+    private final long capacity;
+
+    private final long maxEntrySize;
+
+    private final boolean trackPredicates;
+
+    /**
+     * The entries in LRU order. All other mutable state is guarded by the
+     * monitor of this map.
+     */
+    private final LinkedHashMap<String, Entry> map = new LinkedHashMap<String, Entry>(
+            16, .75f, true/* accessOrder */);
+
+    /**
+     * The #of bytes in the entries.
+     */
+    private long bytes = 0L;
+
+    /**
+     * For each namespace, the earliest commit time for which solutions may be
+     * cached. When tracking commit times, this is the most recent commit time
+     * observed for a view of the namespace. When tracking predicates, this is
+     * the most recent commit time for which an invalidation was processed.
+     */
+    private final Map<String, Long> minCommitTime = new HashMap<String, Long>();
+
+    /**
+     * For each namespace, the #of commits which are being processed (only
+     * when tracking predicates). Solutions are not cached while a commit is
+     * being processed.
+     */
+    private final Map<String, Integer> pendingCommits = new HashMap<String, Integer>();
+
+    private final AtomicLong hitCount = new AtomicLong();
+
+    private final AtomicLong missCount = new AtomicLong();
+
+    /**
+     * @param capacity
+     *            The maximum #of bytes in the entries.
+     * @param maxEntrySize
+     *            The maximum #of bytes for a single entry.
+     * @param trackPredicates
+     *            When <code>true</code>, entries are invalidated by the
+     *            predicates of the changed statements rather than by the
+     *            commit time.
+     */
+    public ResultCache(final long capacity, final long maxEntrySize,
+            final boolean trackPredicates) {
+
+        if (capacity <= 0)
+            throw new IllegalArgumentException();
+
+        if (maxEntrySize <= 0)
+            throw new IllegalArgumentException();
+
+        this.capacity = capacity;
+        this.maxEntrySize = Math.min(capacity, maxEntrySize);
+        this.trackPredicates = trackPredicates;
+
+    }
+
+    /**
+     * <code>true</code> iff entries are invalidated by the predicates of the
+     * changed statements.
+     */
+    public boolean isTrackPredicates() {
+
+        return trackPredicates;
+
+    }
+
+    /**
+     * The #of entries.
+     */
+    public int size() {
+
+        synchronized (map) {
+
+            return map.size();
+
+        }
+
+    }
+
+    /**
+     * The #of bytes in the entries.
+     */
+    public long getByteCount() {
+
+        synchronized (map) {
+
+            return bytes;
+
+        }
+
+    }
+
+    /**
+     * The #of times the solutions for a query were found in the cache.
+     */
+    public long getHitCount() {
+
+        return hitCount.get();
+
+    }
+
+    /**
+     * The #of times the solutions for a query were not found in the cache.
+     */
+    public long getMissCount() {
+
+        return missCount.get();
+
+    }
+
+    /**
+     * Discard all entries.
+     */
+    public void clear() {
+
+        synchronized (map) {
+
+            map.clear();
+
+            bytes = 0L;
+
+        }
+
+    }
+
+    /**
+     * Return the commit time of the commit point read by the view -or-
+     * <code>-1L</code> if the view does not read on a single commit point or
+     * if the commit point can not be determined.
+     */
+    static long getCommitTime(final AbstractTripleStore db) {
+
+        final long timestamp = db.getTimestamp();
+
+        if (!TimestampUtility.isReadOnly(timestamp)
+                || timestamp == ITx.READ_COMMITTED) {
+
+            // Unisolated, read-committed, or read/write tx.
+            return -1L;
+
+        }
+
+        final IIndexManager indexManager = db.getIndexManager();
+
+        if (!(indexManager instanceof IAtomicStore)) {
+
+            // Scale-out.
+            return -1L;
+
+        }
+
+        /*
+         * Note: This is a historical read or a read-only tx. Either way, the
+         * view reads on the most recent commit point whose commit time is LTE
+         * the timestamp.
+         */
+        final ICommitRecord commitRecord = ((IAtomicStore) indexManager)
+                .getCommitRecord(timestamp);
+
+        if (commitRecord == null)
+            return -1L;
+
+        return commitRecord.getTimestamp();
+
+    }
+
+    /**
+     * Return the key for the query -or- <code>null</code> if the solutions for
+     * the query may not be cached. This must be invoked before the query is
+     * optimized.
+     * 
+     * @param db
+     *            The view of the KB.
+     * @param astContainer
+     *            The query.
+     * @param bindings
+     *            The exogenous bindings (optional).
+     * @param dataset
+     *            The data set (optional).
+     */
+    public String getKey(final AbstractTripleStore db,
+            final ASTContainer astContainer, final BindingSet bindings,
+            final Dataset dataset) {
+
+        final String queryString = astContainer.getQueryString();
+
+        if (queryString == null)
+            return null;
+
+        final long commitTime = getCommitTime(db);
+
+        if (commitTime == -1L)
+            return null;
+
+        final QueryRoot originalQuery = astContainer.getOriginalAST();
+
+        final StringBuilder sb = new StringBuilder();
+
+        sb.append(db.getNamespace());
+
+        sb.append('\n');
+
+        if (!trackPredicates) {
+
+            sb.append(commitTime);
+
+            sb.append('\n');
+
+        }
+
+        sb.append(PlanCache.normalize(queryString));
+
+        sb.append('\n');
+
+        // The query hints, except for the UUID of the query.
+        final Map<String, String> hints = new TreeMap<String, String>();
+
+        if (astContainer.getQueryHints() != null) {
+
+            for (String name : astContainer.getQueryHints()
+                    .stringPropertyNames()) {
+
+                if (!QueryHints.QUERYID.equals(name))
+                    hints.put(name, astContainer.getQueryHints()
+                            .getProperty(name));
+
+            }
+
+        }
+
+        sb.append(hints);
+
+        sb.append('\n');
+
+        // The annotations which are not part of the AST proper.
+        final Map<String, Object> anns = new TreeMap<String, Object>();
+
+        for (Map.Entry<String, Object> e : originalQuery.annotations()
+                .entrySet()) {
+
+            if (!(e.getValue() instanceof BOp))
+                anns.put(e.getKey(), e.getValue());
+
+        }
+
+        sb.append(anns);
+
+        sb.append('\n');
+
+        sb.append(originalQuery.getDataset());
+
+        sb.append('\n');
+
+        sb.append(dataset);
+
+        sb.append('\n');
+
+        final Map<String, String> tmp = new TreeMap<String, String>();
+
+        if (bindings != null) {
+
+            for (Binding b : bindings) {
+
+                tmp.put(b.getName(), String.valueOf(b.getValue()));
+
+            }
+
+        }
+
+        sb.append(tmp);
+
+        return sb.toString();
+
+    }
+
+    /**
+     * Return the cached solutions for the key -or- <code>null</code> if there
+     * is no valid entry.
+     * 
+     * @param key
+     *            The key.
+     * @param db
+     *            The view of the KB.
+     */
+    public Result get(final String key, final AbstractTripleStore db) {
+
+        final long commitTime = getCommitTime(db);
+
+        final Entry e;
+
+        synchronized (map) {
+
+            final Entry tmp = map.get(key);
+
+            /*
+             * Note: When tracking predicates, the entry is valid from its
+             * commit time until it is invalidated, so it can not be used by a
+             * view of an older commit point.
+             */
+            e = tmp != null && commitTime >= tmp.commitTime ? tmp : null;
+
+        }
+
+        if (e == null) {
+
+            missCount.incrementAndGet();
+
+            return null;
+
+        }
+
+        hitCount.incrementAndGet();
+
+        if (log.isDebugEnabled())
+            log.debug("Hit: nsolutions=" + e.solutionCount + ", key=" + key);
+
+        return new Result(e.projection, new DecoderIterator(e));
+
+    }
+
+    /**
+     * Wrap the solutions for a query such that they will be entered into the
+     * cache once they have all been drained. The source is returned unchanged
+     * if the solutions for the query may not be cached.
+     * 
+     * @param key
+     *            The key from {@link #getKey(AbstractTripleStore, ASTContainer, BindingSet, Dataset)}.
+     * @param db
+     *            The view of the KB.
+     * @param optimizedQuery
+     *            The optimized AST.
+     * @param projection
+     *            The names of the projected variables.
+     * @param src
+     *            The solutions.
+     */
+    public CloseableIteration<BindingSet, QueryEvaluationException> record(
+            final String key, final AbstractTripleStore db,
+            final QueryRoot optimizedQuery, final List<String> projection,
+            final CloseableIteration<BindingSet, QueryEvaluationException> src) {
+
+        if (!isCacheable(optimizedQuery))
+            return src;
+
+        final Set<IV<?, ?>> predicates = trackPredicates ? getPredicates(optimizedQuery)
+                : null;
+
+        return new RecordingIteration(key, db.getNamespace(),
+                getCommitTime(db), predicates, new ArrayList<String>(
+                        projection), src);
+
+    }
+
+    /**
+     * Enter the solutions into the cache.
+     */
+    private void put(final String key, final Entry e) {
+
+        synchronized (map) {
+
+            final Long min = minCommitTime.get(e.namespace);
+
+            if (trackPredicates) {
+
+                if ((min != null && e.commitTime < min)
+                        || pendingCommits.containsKey(e.namespace)) {
+
+                    // A concurrent commit may have invalidated the solutions.
+                    return;
+
+                }
+
+            } else {
+
+                if (min != null && e.commitTime < min) {
+
+                    // Solutions for an older commit point.
+                    return;
+
+                }
+
+                if (min == null || e.commitTime > min) {
+
+                    // Discard the solutions for older commit points.
+                    minCommitTime.put(e.namespace, e.commitTime);
+
+                    removeAll(e.namespace, null/* predicates */);
+
+                }
+
+            }
+
+            final Entry old = map.put(key, e);
+
+            if (old != null)
+                bytes -= old.size;
+
+            bytes += e.size;
+
+            // Evict the LRU entries.
+            final Iterator<Entry> itr = map.values().iterator();
+
+            while (bytes > capacity && itr.hasNext()) {
+
+                final Entry tmp = itr.next();
+
+                itr.remove();
+
+                bytes -= tmp.size;
+
+            }
+
+        }
+
+    }
+
+    /**
+     * Discard the entries for the namespace which may read any of the given
+     * predicates. The caller must own the monitor for {@link #map}.
+     * 
+     * @param predicates
+     *            The predicates -or- <code>null</code> for any predicate.
+     */
+    private void removeAll(final String namespace,
+            final Set<IV<?, ?>> predicates) {
+
+        final Iterator<Entry> itr = map.values().iterator();
+
+        while (itr.hasNext()) {
+
+            final Entry e = itr.next();
+
+            if (e.namespace.equals(namespace) && e.dependsOn(predicates)) {
+
+                itr.remove();
+
+                bytes -= e.size;
+
+            }
+
+        }
+
+    }
+
+    /**
+     * Notice that a commit is being prepared which changes the given
+     * predicates. The affected entries are discarded and no solutions are
+     * cached for the namespace until {@link #commitDone(String, Set, long)}.
+     * 
+     * @param namespace
+     *            The namespace of the KB.
+     * @param predicates
+     *            The changed predicates.
+     */
+    void commitPrepared(final String namespace,
+            final Set<IV<?, ?>> predicates) {
+
+        synchronized (map) {
+
+            final Integer n = pendingCommits.get(namespace);
+
+            pendingCommits.put(namespace, n == null ? 1 : n + 1);
+
+            removeAll(namespace, predicates);
+
+        }
+
+    }
+
+    /**
+     * Notice that a commit for which {@link #commitPrepared(String, Set)} was
+     * invoked is done.
+     * 
+     * @param namespace
+     *            The namespace of the KB.
+     * @param predicates
+     *            The changed predicates.
+     * @param commitTime
+     *            The commit time -or- <code>-1L</code> if the commit was
+     *            aborted.
+     */
+    void commitDone(final String namespace, final Set<IV<?, ?>> predicates,
+            final long commitTime) {
+
+        synchronized (map) {
+
+            final Integer n = pendingCommits.get(namespace);
+
+            if (n == null || n == 1) {
+                pendingCommits.remove(namespace);
+            } else {
+                pendingCommits.put(namespace, n - 1);
+            }
+
+            if (commitTime != -1L) {
+
+                final Long min = minCommitTime.get(namespace);
+
+                if (min == null || commitTime > min)
+                    minCommitTime.put(namespace, commitTime);
+
+                removeAll(namespace, predicates);
+
+            }
+
+        }
+
+    }
+
+    /**
+     * Return <code>true</code> unless the solutions for the query depend on
+     * more than the commit point and the query.
+     */
+    static boolean isCacheable(final QueryRoot optimizedQuery) {
+
+        final Set<String> namedSubqueries = new LinkedHashSet<String>();
+
+        final NamedSubqueriesNode namedSubqueriesNode = optimizedQuery
+                .getNamedSubqueries();
+
+        if (namedSubqueriesNode != null) {
+
+            for (NamedSubqueryRoot x : namedSubqueriesNode) {
+
+                namedSubqueries.add(x.getName());
+
+            }
+
+        }
+
+        final Iterator<BOp> itr = BOpUtility
+                .preOrderIteratorWithAnnotations(optimizedQuery);
+
+        while (itr.hasNext()) {
+
+            final BOp op = itr.next();
+
+            if (op instanceof ServiceNode) {
+
+                return false;
+
+            } else if (op instanceof FunctionNode) {
+
+                if (nonDeterministicFunctions.contains(((FunctionNode) op)
+                        .getFunctionURI()))
+                    return false;
+
+            } else if (op instanceof NamedSubqueryInclude) {
+
+                if (!namedSubqueries.contains(((NamedSubqueryInclude) op)
+                        .getName())) {
+
+                    // A named solution set.
+                    return false;
+
+                }
+
+            }
+
+        }
+
+        return true;
+
+    }
+
+    /**
+     * Return the predicates which may be read by the query -or-
+     * <code>null</code> if the query may read any predicate.
+     */
+    static Set<IV<?, ?>> getPredicates(final QueryRoot optimizedQuery) {
+
+        final Set<IV<?, ?>> predicates = new LinkedHashSet<IV<?, ?>>();
+
+        final Iterator<BOp> itr = BOpUtility
+                .preOrderIteratorWithAnnotations(optimizedQuery);
+
+        while (itr.hasNext()) {
+
+            final BOp op = itr.next();
+
+            if (op instanceof StatementPatternNode) {
+
+                final TermNode p = ((StatementPatternNode) op).p();
+
+                if (!(p instanceof ConstantNode))
+                    return null;
+
+                final IV<?, ?> iv = ((ConstantNode) p).getValueExpression().get();
+
+                if (iv == null || iv.isNullIV()) {
+
+                    /*
+                     * Not in the lexicon. The IV assigned when the predicate
+                     * is added will not be known to this entry.
+                     */
+                    return null;
+
+                }
+
+                predicates.add(iv);
+
+            } else if (op instanceof PropertyPathNode
+                    || op instanceof ZeroLengthPathNode) {
+
+                return null;
+
+            }
+
+        }
+
+        return predicates;
+
+    }
+
+    /**
+     * Return an {@link IChangeLog} which invalidates the entries for the
+     * namespace as commits are processed.
+     * 
+     * @param namespace
+     *            The namespace of the KB.
+     */
+    public IChangeLog newChangeLog(final String namespace) {
+
+        return new ResultCacheChangeLog(namespace);
+
+    }
+
+    /**
+     * Collects the predicates of the changed statements and invalidates the
+     * entries which may read those predicates when the change is committed.
+     */
+    private class ResultCacheChangeLog implements IChangeLog {
+
+        private final String namespace;
+
+        /** The changed predicates (lazily instantiated). */
+        private Set<IV<?, ?>> predicates;
+
+        /** <code>true</code> iff {@link #transactionPrepare()} was noticed. */
+        private boolean prepared;
+
+        ResultCacheChangeLog(final String namespace) {
+
+            this.namespace = namespace;
+
+        }
+
+        @Override
+        public void changeEvent(final IChangeRecord record) {
+
+            if (record.getChangeAction() == ChangeAction.UPDATED) {
+
+                /*
+                 * The statement is neither added nor removed. Only its type
+                 * {Axiom, Inference, Explicit} was changed.
+                 */
+
+                return;
+
+            }
+
+            if (predicates == null) {
+
+                // Lazy instantiation.
+                predicates = new LinkedHashSet<IV<?, ?>>();
+
+            }
+
+            predicates.add(record.getStatement().p());
+
+        }
+
+        @Override
+        public void transactionBegin() {
+
+            reset();
+
+        }
+
+        @Override
+        public void transactionPrepare() {
+
+            if (predicates != null && !prepared) {
+
+                commitPrepared(namespace, predicates);
+
+                prepared = true;
+
+            }
+
+        }
+
+        @Override
+        public void transactionCommited(final long commitTime) {
+
+            if (predicates != null) {
+
+                if (!prepared) {
+
+                    commitPrepared(namespace, predicates);
+
+                }
+
+                commitDone(namespace, predicates, commitTime);
+
+            }
+
+            reset();
+
+        }
+
+        @Override
+        public void transactionAborted() {
+
+            if (prepared) {
+
+                commitDone(namespace, predicates, -1L/* aborted */);
+
+            }
+
+            reset();
+
+        }
+
+        @Override
+        public void close() {
+
+            transactionAborted();
+
+        }
+
+        private void reset() {
+
+            predicates = null;
+
+            prepared = false;
+
+        }
+
+    }
+
+    /**
+     * Records the solutions as they are drained and enters them into the cache
+     * once the source is exhausted.
+     */
+    private class RecordingIteration implements
+            CloseableIteration<BindingSet, QueryEvaluationException> {
+
+        private final String key;
+        private final String namespace;
+        private final long commitTime;
+        private final Set<IV<?, ?>> predicates;
+        private final List<String> projection;
+        private final CloseableIteration<BindingSet, QueryEvaluationException> src;
+
+        /**
+         * The encoded solutions and <code>null</code> once the solutions are
+         * known to be not cacheable.
+         */
+        private DataOutputBuffer out = new DataOutputBuffer();
+        private IVSolutionSetEncoder encoder = new IVSolutionSetEncoder();
+        private int solutionCount = 0;
+
+        RecordingIteration(final String key, final String namespace,
+                final long commitTime, final Set<IV<?, ?>> predicates,
+                final List<String> projection,
+                final CloseableIteration<BindingSet, QueryEvaluationException> src) {
+
+            this.key = key;
+            this.namespace = namespace;
+            this.commitTime = commitTime;
+            this.predicates = predicates;
+            this.projection = projection;
+            this.src = src;
+
+        }
+
+        @Override
+        public boolean hasNext() throws QueryEvaluationException {
+
+            final boolean hasNext = src.hasNext();
+
+            if (!hasNext && out != null) {
+
+                // Exhausted.
+                put(key, new Entry(key, namespace, commitTime, predicates,
+                        projection, out.toByteArray(), solutionCount));
+
+                discard();
+
+            }
+
+            return hasNext;
+
+        }
+
+        @Override
+        public BindingSet next() throws QueryEvaluationException {
+
+            final BindingSet bset = src.next();
+
+            if (out != null) {
+
+                final IBindingSet tmp = toBindingSet(bset);
+
+                if (tmp == null) {
+
+                    // Not every value is known to the lexicon.
+                    discard();
+
+                } else {
+
+                    encoder.encodeSolution(out, tmp);
+
+                    solutionCount++;
+
+                    if (out.pos() > maxEntrySize) {
+
+                        // Too large.
+                        discard();
+
+                    }
+
+                }
+
+            }
+
+            return bset;
+
+        }
+
+        @Override
+        public void remove() throws QueryEvaluationException {
+
+            throw new UnsupportedOperationException();
+
+        }
+
+        @Override
+        public void close() throws QueryEvaluationException {
+
+            // Note: The solutions are not cached unless they were all drained.
+            discard();
+
+            src.close();
+
+        }
+
+        private void discard() {
+
+            if (encoder != null) {
+
+                encoder.release();
+
+                encoder = null;
+
+            }
+
+            out = null;
+
+        }
+
+    }
+
+    /**
+     * Convert an openrdf solution into an {@link IBindingSet} whose {@link IV}s
+     * have their cached values set.
+     * 
+     * @return The solution -or- <code>null</code> if some value is not a
+     *         {@link BigdataValue} having an {@link IV}.
+     */
+    @SuppressWarnings({ "rawtypes", "unchecked" })
+    private static IBindingSet toBindingSet(final BindingSet src) {
+
+        final ListBindingSet bset = new ListBindingSet();
+
+        for (Binding b : src) {
+
+            final Value v = b.getValue();
+
+            if (!(v instanceof BigdataValue))
+                return null;
+
+            final IV iv = ((BigdataValue) v).getIV();
+
+            if (iv == null)
+                return null;
+
+            if (!iv.hasValue())
+                iv.setValue((BigdataValue) v);
+
+            bset.set(Var.var(b.getName()), new Constant<IV>(iv));
+
+        }
+
+        return bset;
+
+    }
+
+    /**
+     * Decodes the solutions in an entry.
+     */
+    private static class DecoderIterator implements
+            ICloseableIterator<IBindingSet> {
+
+        private final DataInputBuffer in;
+        private final int solutionCount;
+        private IVSolutionSetDecoder decoder = new IVSolutionSetDecoder();
+        private int n = 0;
+
+        DecoderIterator(final Entry e) {
+
+            this.in = new DataInputBuffer(e.data);
+
+            this.solutionCount = e.solutionCount;
+
+        }
+
+        @Override
+        public boolean hasNext() {
+
+            if (decoder != null && n < solutionCount)
+                return true;
+
+            close();
+
+            return false;
+
+        }
+
+        @Override
+        public IBindingSet next() {
+
+            if (!hasNext())
+                throw new NoSuchElementException();
+
+            n++;
+
+            return decoder.decodeSolution(in, true/* resolveCachedValues */);
+
+        }
+
+        @Override
+        public void remove() {
+
+            throw new UnsupportedOperationException();
+
+        }
+
+        @Override
+        public void close() {
+
+            if (decoder != null) {
+
+                decoder.release();
+
+                decoder = null;
+
+            }
+
+        }
+
+    }
+
+}
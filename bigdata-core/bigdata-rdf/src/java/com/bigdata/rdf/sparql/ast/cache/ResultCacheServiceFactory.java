@@ -0,0 +1,97 @@
+/**
+
+Copyright (C) SYSTAP, LLC DBA Blazegraph 2006-2016.  All rights reserved.
+
+Contact:
+     SYSTAP, LLC DBA Blazegraph
+     2501 Calvert ST NW #106
+     Washington, DC 20008
+     licenses@blazegraph.com
+
+This program is free software; you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation; version 2 of the License.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program; if not, write to the Free Software
+Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+/*
+ * Created on Oct 17, 2026
+ */
+
+package com.bigdata.rdf.sparql.ast.cache;
+
+import com.bigdata.rdf.changesets.IChangeLog;
+import com.bigdata.rdf.sail.BigdataSail.BigdataSailConnection;
+import com.bigdata.rdf.sparql.ast.eval.CustomServiceFactoryBase;
+import com.bigdata.rdf.sparql.ast.service.BigdataNativeServiceOptions;
+import com.bigdata.rdf.sparql.ast.service.IServiceOptions;
+import com.bigdata.rdf.sparql.ast.service.ServiceCall;
+import com.bigdata.rdf.sparql.ast.service.ServiceCallCreateParams;
+
+/**
+ * This service tracks KB updates via an {@link IChangeLog} and is responsible
+ * for the invalidation of the {@link ResultCache} when that cache tracks the
+ * predicates read by each query.
+ * 
+ * @see ResultCache.Options#TRACK_PREDICATES
+ */
+public class ResultCacheServiceFactory extends CustomServiceFactoryBase {
+
+    private final IServiceOptions serviceOptions;
+
+    public ResultCacheServiceFactory() {
+
+        this.serviceOptions = new BigdataNativeServiceOptions();
+
+    }
+
+    @Override
+    public IServiceOptions getServiceOptions() {
+
+        return serviceOptions;
+
+    }
+
+    /**
+     * This service can not be invoked from a query.
+     */
+    @Override
+    public ServiceCall<?> create(final ServiceCallCreateParams params) {
+
+        throw new UnsupportedOperationException();
+
+    }
+
+    /**
+     * Register an {@link IChangeLog} listener that will invalidate the
+     * {@link ResultCache}.
+     */
+    @Override
+    public void startConnection(final BigdataSailConnection conn) {
+
+        final ResultCache resultCache = ResultCache.getResultCache(conn
+                .getBigdataSail().getQueryEngine());
+
+        if (resultCache == null || !resultCache.isTrackPredicates()) {
+
+            /*
+             * Either the cache is not enabled or it is invalidated by the
+             * commit time.
+             */
+            return;
+
+        }
+
+        conn.addChangeLog(resultCache.newChangeLog(conn.getTripleStore()
+                .getNamespace()));
+
+    }
+
+}
@@ -68,6 +68,7 @@ import com.bigdata.rdf.sparql.ast.StaticAnalysis;
 import com.bigdata.rdf.sparql.ast.cache.CacheConnectionFactory;
 import com.bigdata.rdf.sparql.ast.cache.ICacheConnection;
 import com.bigdata.rdf.sparql.ast.cache.IDescribeCache;
+import com.bigdata.rdf.sparql.ast.cache.PlanCache;
 import com.bigdata.rdf.sparql.ast.hints.IQueryHint;
 import com.bigdata.rdf.sparql.ast.hints.QueryHintRegistry;
 import com.bigdata.rdf.sparql.ast.optimizers.ASTBottomUpOptimizer;
@@ -190,6 +191,60 @@ public class AST2BOpContext implements IdFactory, IEvaluationContext {
      */
     public boolean nativeDistinctSolutions = QueryHints.DEFAULT_NATIVE_DISTINCT_SOLUTIONS;
 
+    /**
+     * When <code>true</code>, will use the version of ORDER BY which buffers
+     * sorted runs of solutions on the native heap.
+     * 
+     * @see QueryHints#NATIVE_ORDER_BY
+     */
+    public boolean nativeOrderBy = QueryHints.DEFAULT_NATIVE_ORDER_BY;
+
+    /**
+     * When <code>true</code>, will use the version of GROUP BY which spills
+     * hash partitions of the solutions onto the native heap.
+     * 
+     * @see QueryHints#NATIVE_GROUP_BY
+     */
+    public boolean nativeGroupBy = QueryHints.DEFAULT_NATIVE_GROUP_BY;
+
+    /**
+     * The #of concurrent partial aggregation tasks (disabled unless GT ONE).
+     * 
+     * @see QueryHints#PARALLEL_AGGREGATION
+     */
+    public int parallelAggregation = QueryHints.DEFAULT_PARALLEL_AGGREGATION;
+
+    /**
+     * The maximum <code>OFFSET+LIMIT</code> for which an ORDER BY followed by a
+     * SLICE will use a bounded top-K sort.
+     * 
+     * @see QueryHints#TOP_K_SORT_THRESHOLD
+     */
+    public long topKSortThreshold = QueryHints.DEFAULT_TOP_K_SORT_THRESHOLD;
+
+    /**
+     * When <code>true</code>, projected assignments which are not needed by
+     * the ORDER BY of a query having a SLICE are evaluated after the ORDER BY.
+     * 
+     * @see QueryHints#LATE_MATERIALIZATION
+     */
+    public boolean lateMaterialization = QueryHints.DEFAULT_LATE_MATERIALIZATION;
+
+    /**
+     * When <code>true</code>, a literal prefix FILTER may be evaluated using a
+     * scan of the TERM2ID index.
+     * 
+     * @see QueryHints#PREFIX_SCAN
+     */
+    public boolean prefixScan = QueryHints.DEFAULT_PREFIX_SCAN;
+
+    /**
+     * The maximum #of candidate literals for a literal prefix scan.
+     * 
+     * @see QueryHints#PREFIX_SCAN_LIMIT
+     */
+    public long prefixScanLimit = QueryHints.DEFAULT_PREFIX_SCAN_LIMIT;
+
     /**
      * 
      * When <code>true</code>, use hash index operations based on the
@@ -218,6 +273,22 @@ public class AST2BOpContext implements IdFactory, IEvaluationContext {
      * @see QueryHints#MERGE_JOIN
      */
     public boolean mergeJoin = QueryHints.DEFAULT_MERGE_JOIN;
+
+    /**
+     * When <code>true</code>, cyclic join groups will be evaluated using a
+     * worst-case optimal join.
+     * 
+     * @see QueryHints#WORST_CASE_OPTIMAL_JOIN
+     */
+    public boolean worstCaseOptimalJoin = QueryHints.DEFAULT_WORST_CASE_OPTIMAL_JOIN;
+
+    /**
+     * The minimum estimated cardinality of the statement patterns which will
+     * be evaluated by an index merge join.
+     * 
+     * @see QueryHints#INDEX_MERGE_JOIN_THRESHOLD
+     */
+    public long indexMergeJoinThreshold = QueryHints.DEFAULT_INDEX_MERGE_JOIN_THRESHOLD;
     
     /**
      * The maximum parallelism for a solution set hash join when the join is
@@ -323,6 +394,14 @@ public class AST2BOpContext implements IdFactory, IEvaluationContext {
 
     private int varIdFactory = 0;
 
+    /**
+     * <code>true</code> iff an optimizer has copied data read from the indices
+     * (rather than just range counts) into the optimized AST.
+     * 
+     * @see #setDataDependentPlan()
+     */
+    private boolean dataDependentPlan = false;
+
     /**
      * Some summary statistics about the exogenous solution sets. These are
      * computed by {@link AST2BOpUtility#convert(AST2BOpContext, IBindingSet[])}
@@ -737,6 +816,122 @@ public class AST2BOpContext implements IdFactory, IEvaluationContext {
 
     }
 
+    /**
+     * Return the #of variables created by {@link #createVar(String)}.
+     */
+    public int getCreatedVarCount() {
+
+        return varIdFactory;
+
+    }
+
+    /**
+     * Skip over the bop identifiers and variable names which were assigned
+     * when a cached optimized AST was generated so the identifiers and names
+     * assigned while converting that AST into a query plan do not collide with
+     * them.
+     * 
+     * @param lastId
+     *            The last bop identifier assigned for the cached AST.
+     * @param varCount
+     *            The #of variables created for the cached AST.
+     * 
+     * @see PlanCache
+     */
+    public void skipIds(final int lastId, final int varCount) {
+
+        while (nextId() < lastId) {
+            // NOP
+        }
+
+        varIdFactory = Math.max(varIdFactory, varCount);
+
+    }
+
+    /**
+     * Note that an optimizer has copied data read from the indices (rather
+     * than just range counts) into the optimized AST. The optimized AST is
+     * then only valid for the commit point against which it was generated and
+     * will not be cached.
+     * 
+     * @see PlanCache
+     */
+    public void setDataDependentPlan() {
+
+        dataDependentPlan = true;
+
+    }
+
+    /**
+     * Return <code>true</code> iff an optimizer has copied data read from the
+     * indices into the optimized AST.
+     * 
+     * @see #setDataDependentPlan()
+     */
+    public boolean isDataDependentPlan() {
+
+        return dataDependentPlan;
+
+    }
+
+    /**
+     * Return the evaluation options which may be changed by the query hints
+     * while the AST optimizers are run.
+     * 
+     * @see #setQueryHintState(Object[])
+     * @see PlanCache
+     */
+    public Object[] getQueryHintState() {
+
+        return new Object[] { nativeDistinctSPO, nativeDistinctSPOThreshold,
+                nativeDistinctSolutions, nativeOrderBy, nativeGroupBy,
+                parallelAggregation, topKSortThreshold, lateMaterialization,
+                prefixScan, prefixScanLimit, nativeHashJoins,
+                pipelinedHashJoins, mergeJoin, worstCaseOptimalJoin,
+                indexMergeJoinThreshold, maxParallelForSolutionSetHashJoin,
+                constructDistinctSPO, remoteAPs, accessPathSampleLimit,
+                accessPathScanAndFilter, defaultGraphDistinctFilter };
+
+    }
+
+    /**
+     * Restore the evaluation options which may be changed by the query hints.
+     * This is used when a cached optimized AST is reused, since the query
+     * hints are not applied again in that case.
+     * 
+     * @param state
+     *            The state reported by {@link #getQueryHintState()} after the
+     *            AST optimizers were run.
+     * 
+     * @see PlanCache
+     */
+    public void setQueryHintState(final Object[] state) {
+
+        int i = 0;
+        nativeDistinctSPO = (Boolean) state[i++];
+        nativeDistinctSPOThreshold = (Long) state[i++];
+        nativeDistinctSolutions = (Boolean) state[i++];
+        nativeOrderBy = (Boolean) state[i++];
+        nativeGroupBy = (Boolean) state[i++];
+        parallelAggregation = (Integer) state[i++];
+        topKSortThreshold = (Long) state[i++];
+        lateMaterialization = (Boolean) state[i++];
+        prefixScan = (Boolean) state[i++];
+        prefixScanLimit = (Long) state[i++];
+        nativeHashJoins = (Boolean) state[i++];
+        pipelinedHashJoins = (Boolean) state[i++];
+        mergeJoin = (Boolean) state[i++];
+        worstCaseOptimalJoin = (Boolean) state[i++];
+        indexMergeJoinThreshold = (Long) state[i++];
+        maxParallelForSolutionSetHashJoin = (Integer) state[i++];
+        constructDistinctSPO = (Boolean) state[i++];
+        remoteAPs = (Boolean) state[i++];
+        accessPathSampleLimit = (Integer) state[i++];
+        accessPathScanAndFilter = (Boolean) state[i++];
+        defaultGraphDistinctFilter = (Boolean) state[i++];
+
+    }
+
     @Override
     public long getLexiconReadTimestamp() {
     
@@ -503,15 +503,6 @@ public class AST2BOpFilters extends AST2BOpBase {
             final AST2BOpContext ctx//
             ) {
 
-        final int nvars = vars.size();
-
-        if (nvars == 0)
-            return left;
-
-        final long timestamp = ctx.getLexiconReadTimestamp();
-
-        final String ns = ctx.getLexiconNamespace();
-
         /*
          * If we are doing cutoff join evaluation, then limit the parallelism of
          * this operator to prevent reordering of solutions.
@@ -521,12 +512,61 @@ public class AST2BOpFilters extends AST2BOpBase {
          * break the "no reordering" guarantee.
          */
 
-        // disable reordering of solutions for cutoff joins.
-        final boolean reorderSolutions = (cutoffLimit != null) ? false
+        return addChunkedMaterializationStep(left, vars, materializeInlineIvs,
+                cutoffLimit != null/* preserveOrder */, queryHints, ctx);
+
+    }
+
+    /**
+     * Use a pipeline operator which uses the chunked materialization pattern
+     * for solution sets.
+     * 
+     * @param left
+     *            The left (upstream) operator that immediately proceeds the
+     *            materialization steps.
+     * @param vars
+     *            The terms to materialize.
+     * @param materializeInlineIvs
+     *            When <code>true</code>, inline IVs are also materialized.
+     * @param preserveOrder
+     *            When <code>true</code>, the operator will not reorder the
+     *            solutions (e.g., for cutoff join evaluation or when it
+     *            appears after an ORDER BY).
+     * @param queryHints
+     *            The query hints from the dominating AST node.
+     * @param ctx
+     *            The evaluation context.
+     * 
+     * @return The final bop added to the pipeline by this method. If there are
+     *         no variables that require materialization, then this just returns
+     *         <i>left</i>.
+     * 
+     * @see ChunkedMaterializationOp
+     */
+    protected static PipelineOp addChunkedMaterializationStep(//
+            PipelineOp left,//
+            final Set<IVariable<IV>> vars,//
+            final boolean materializeInlineIvs,//
+            final boolean preserveOrder,//
+            final Properties queryHints,//
+            final AST2BOpContext ctx//
+            ) {
+
+        final int nvars = vars.size();
+
+        if (nvars == 0)
+            return left;
+
+        final long timestamp = ctx.getLexiconReadTimestamp();
+
+        final String ns = ctx.getLexiconNamespace();
+
+        // disable reordering of solutions.
+        final boolean reorderSolutions = preserveOrder ? false
                 : PipelineJoin.Annotations.DEFAULT_REORDER_SOLUTIONS;
 
-        // disable operator parallelism for cutoff joins.
-        final int maxParallel = cutoffLimit != null ? 1
+        // disable operator parallelism.
+        final int maxParallel = preserveOrder ? 1
                 : PipelineOp.Annotations.DEFAULT_MAX_PARALLEL;
 
         return (PipelineOp) applyQueryHints(new ChunkedMaterializationOp(leftOrEmpty(left),
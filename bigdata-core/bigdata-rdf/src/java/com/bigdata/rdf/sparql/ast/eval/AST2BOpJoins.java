@@ -53,6 +53,8 @@ import com.bigdata.bop.ap.filter.DistinctFilter;
 import com.bigdata.bop.cost.ScanCostReport;
 import com.bigdata.bop.cost.SubqueryCostReport;
 import com.bigdata.bop.join.AccessPathJoinAnnotations;
+import com.bigdata.bop.join.DistinctTermCountOp;
+import com.bigdata.bop.join.DistinctTermRangeCountOp;
 import com.bigdata.bop.join.DistinctTermScanOp;
 import com.bigdata.bop.join.FastRangeCountOp;
 import com.bigdata.bop.join.HTreeHashJoinAnnotations;
@@ -179,6 +181,10 @@ public class AST2BOpJoins extends AST2BOpFilters {
         // when non-null use fast-range-count. see #1037.
 		final VarNode fastRangeCountVar = (VarNode) pred
 				.getProperty(StatementPatternNode.Annotations.FAST_RANGE_COUNT_VAR);
+
+        // when non-null use distinct-term-count.
+		final VarNode distinctTermCountVar = (VarNode) pred
+				.getProperty(StatementPatternNode.Annotations.DISTINCT_TERM_COUNT_VAR);
         
         // pull off the Sesame dataset before we strip the annotations.
         final DatasetNode dataset = (DatasetNode) pred
@@ -188,7 +194,28 @@ public class AST2BOpJoins extends AST2BOpFilters {
 		pred = pred.clearAnnotations(new String[] { Annotations.SCOPE,
 				Annotations.QUADS, Annotations.DATASET,
 				StatementPatternNode.Annotations.DISTINCT_TERM_SCAN_VAR,
-				StatementPatternNode.Annotations.FAST_RANGE_COUNT_VAR });
+				StatementPatternNode.Annotations.FAST_RANGE_COUNT_VAR,
+				StatementPatternNode.Annotations.DISTINCT_TERM_COUNT_VAR });
+
+		if (distinctTermScanVar != null && distinctTermCountVar != null) {
+
+			// COUNT(DISTINCT ?x) using a distinct-term-scan.
+			left = distinctTermCountJoin(left, anns, pred, distinctTermScanVar,
+					distinctTermCountVar, queryHints, ctx);
+
+			return left;
+
+		}
+
+		if (distinctTermScanVar != null && fastRangeCountVar != null) {
+
+			// GROUP BY ?x COUNT(*) using distinct-term-scan + fast-range-count.
+			left = distinctTermRangeCountJoin(left, anns, pred,
+					distinctTermScanVar, fastRangeCountVar, queryHints, ctx);
+
+			return left;
+
+		}
 
 		if (fastRangeCountVar != null) {
 
@@ -306,6 +333,99 @@ public class AST2BOpJoins extends AST2BOpFilters {
 		anns.add(new NV(DistinctTermScanOp.Annotations.DISTINCT_VAR,
 				distinctVar));
 
+		// Override the key order.
+		pred = distinctTermScanKeyOrder(pred, distinctVar, ctx);
+
+        anns.add(new NV(PipelineJoin.Annotations.PREDICATE, pred));
+
+		return applyQueryHints(
+				new DistinctTermScanOp(leftOrEmpty(left), NV.asMap(anns
+						.toArray(new NV[anns.size()]))), queryHints, ctx);
+		
+	}
+
+	/**
+	 * Use the {@link DistinctTermRangeCountOp} to bind each distinct value of
+	 * the distinct-term-scan variable together with the fast range count for
+	 * that value (an index-only GROUP BY ... COUNT(*)).
+	 * 
+	 * @see com.bigdata.rdf.sparql.ast.optimizers.ASTSimpleGroupByAndCountOptimizer
+	 */
+	@SuppressWarnings("rawtypes")
+	private static PipelineOp distinctTermRangeCountJoin(//
+			final PipelineOp left,//
+			final List<NV> anns, //
+			Predicate pred,//
+			final VarNode distinctTermScanVar, //
+			final VarNode fastRangeCountVar, //
+			final Properties queryHints, //
+			final AST2BOpContext ctx//
+			) {
+
+		final IVariable distinctVar = distinctTermScanVar.getValueExpression();
+
+		anns.add(new NV(DistinctTermRangeCountOp.Annotations.DISTINCT_VAR,
+				distinctVar));
+
+		anns.add(new NV(DistinctTermRangeCountOp.Annotations.COUNT_VAR,
+				fastRangeCountVar.getValueExpression()));
+
+		// Override the key order.
+		pred = distinctTermScanKeyOrder(pred, distinctVar, ctx);
+
+        anns.add(new NV(PipelineJoin.Annotations.PREDICATE, pred));
+
+		return applyQueryHints(
+				new DistinctTermRangeCountOp(leftOrEmpty(left), NV.asMap(anns
+						.toArray(new NV[anns.size()]))), queryHints, ctx);
+
+	}
+
+	/**
+	 * Use the {@link DistinctTermCountOp} to count the distinct values of the
+	 * distinct-term-scan variable (an index-only COUNT(DISTINCT ?x)).
+	 * 
+	 * @see com.bigdata.rdf.sparql.ast.optimizers.ASTDistinctTermScanOptimizer
+	 */
+	@SuppressWarnings("rawtypes")
+	private static PipelineOp distinctTermCountJoin(//
+			final PipelineOp left,//
+			final List<NV> anns, //
+			Predicate pred,//
+			final VarNode distinctTermScanVar, //
+			final VarNode distinctTermCountVar, //
+			final Properties queryHints, //
+			final AST2BOpContext ctx//
+			) {
+
+		final IVariable distinctVar = distinctTermScanVar.getValueExpression();
+
+		anns.add(new NV(DistinctTermCountOp.Annotations.DISTINCT_VAR,
+				distinctVar));
+
+		anns.add(new NV(DistinctTermCountOp.Annotations.COUNT_VAR,
+				distinctTermCountVar.getValueExpression()));
+
+		// Override the key order.
+		pred = distinctTermScanKeyOrder(pred, distinctVar, ctx);
+
+        anns.add(new NV(PipelineJoin.Annotations.PREDICATE, pred));
+
+		return applyQueryHints(
+				new DistinctTermCountOp(leftOrEmpty(left), NV.asMap(anns
+						.toArray(new NV[anns.size()]))), queryHints, ctx);
+
+	}
+
+	/**
+	 * Return the predicate with its key order set such that the constants of
+	 * the predicate form the key prefix and the distinct variable is the next
+	 * key component, as required by the distinct term advancers.
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private static Predicate distinctTermScanKeyOrder(final Predicate pred,
+			final IVariable distinctVar, final AST2BOpContext ctx) {
+
 		// A mock constant used for predicate in which the distinctVar is not
 		// yet bound.
 		final Constant<IV> mockConst = new Constant<IV>(TermId.mockIV(VTE.URI));
@@ -316,16 +436,9 @@ public class AST2BOpJoins extends AST2BOpFilters {
 		final SPOKeyOrder keyOrder = SPOKeyOrder.getKeyOrder(mockPred,
 				ctx.isQuads() ? 4 : 3);
 
-		// Override the key order.
-		pred = (Predicate) pred.setProperty(IPredicate.Annotations.KEY_ORDER,
+		return (Predicate) pred.setProperty(IPredicate.Annotations.KEY_ORDER,
 				keyOrder);
 
-        anns.add(new NV(PipelineJoin.Annotations.PREDICATE, pred));
-
-		return applyQueryHints(
-				new DistinctTermScanOp(leftOrEmpty(left), NV.asMap(anns
-						.toArray(new NV[anns.size()]))), queryHints, ctx);
-		
 	}
 
     /**
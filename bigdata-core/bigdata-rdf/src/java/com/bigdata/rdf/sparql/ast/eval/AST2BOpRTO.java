@@ -407,6 +407,12 @@ public class AST2BOpRTO extends AST2BOpJoins {
         final int nedges = joinGroup.getProperty(QueryHints.RTO_NEDGES,
                 QueryHints.DEFAULT_RTO_NEDGES);
         
+        final boolean adaptive = joinGroup.getProperty(
+                QueryHints.RTO_ADAPTIVE, QueryHints.DEFAULT_RTO_ADAPTIVE);
+        
+        final double deviation = joinGroup.getProperty(
+                QueryHints.RTO_DEVIATION, QueryHints.DEFAULT_RTO_DEVIATION);
+        
         left = new JoinGraph(leftOrEmpty(left),//
                 new NV(BOp.Annotations.BOP_ID, ctx.nextId()),//
                 new NV(BOp.Annotations.EVALUATION_CONTEXT,
@@ -424,6 +430,8 @@ public class AST2BOpRTO extends AST2BOpJoins {
                 new NV(JoinGraph.Annotations.LIMIT, limit),//
                 new NV(JoinGraph.Annotations.NEDGES, nedges),//
                 new NV(JoinGraph.Annotations.SAMPLE_TYPE, sampleType.name()),//
+                new NV(JoinGraph.Annotations.ADAPTIVE, adaptive),//
+                new NV(JoinGraph.Annotations.DEVIATION, deviation),//
                 new NV(JoinGraph.Annotations.DONE_SET, doneSetIn),//
                 new NV(JoinGraph.Annotations.NT, new NT(ctx.getNamespace(),
                         ctx.getTimestamp()))//
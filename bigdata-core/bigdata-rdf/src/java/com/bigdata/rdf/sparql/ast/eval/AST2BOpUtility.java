@@ -2,6 +2,7 @@ package com.bigdata.rdf.sparql.ast.eval;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
@@ -74,9 +75,14 @@ import com.bigdata.bop.paths.ArbitraryLengthPathOp;
 import com.bigdata.bop.paths.ZeroLengthPathOp;
 import com.bigdata.bop.rdf.join.ChunkedMaterializationOp;
 import com.bigdata.bop.rdf.join.DataSetJoin;
+import com.bigdata.bop.rdf.join.IndexMergeJoinOp;
+import com.bigdata.bop.rdf.join.LeapfrogTriejoinOp;
 import com.bigdata.bop.rdf.join.MockTermResolverOp;
 import com.bigdata.bop.rdf.join.VariableUnificationOp;
+import com.bigdata.bop.solutions.CombineAggregationOp;
 import com.bigdata.bop.solutions.DropOp;
+import com.bigdata.bop.solutions.ExternalMemoryGroupByOp;
+import com.bigdata.bop.solutions.ExternalMemorySortOp;
 import com.bigdata.bop.solutions.GroupByOp;
 import com.bigdata.bop.solutions.GroupByRewriter;
 import com.bigdata.bop.solutions.GroupByState;
@@ -88,10 +94,13 @@ import com.bigdata.bop.solutions.IVComparator;
 import com.bigdata.bop.solutions.JVMDistinctBindingSetsOp;
 import com.bigdata.bop.solutions.MemoryGroupByOp;
 import com.bigdata.bop.solutions.MemorySortOp;
+import com.bigdata.bop.solutions.PartialAggregationOp;
 import com.bigdata.bop.solutions.PipelinedAggregationOp;
 import com.bigdata.bop.solutions.ProjectionOp;
 import com.bigdata.bop.solutions.SliceOp;
+import com.bigdata.bop.solutions.SortOp;
 import com.bigdata.bop.solutions.SortOrder;
+import com.bigdata.bop.solutions.TopKSortOp;
 import com.bigdata.btree.IRangeQuery;
 import com.bigdata.rdf.error.SparqlTypeErrorException;
 import com.bigdata.rdf.internal.ILexiconConfiguration;
@@ -159,10 +168,13 @@ import com.bigdata.rdf.sparql.ast.UnionNode;
 import com.bigdata.rdf.sparql.ast.ValueExpressionNode;
 import com.bigdata.rdf.sparql.ast.VarNode;
 import com.bigdata.rdf.sparql.ast.ZeroLengthPathNode;
+import com.bigdata.rdf.sparql.ast.cache.PlanCache;
 import com.bigdata.rdf.sparql.ast.optimizers.ASTExistsOptimizer;
+import com.bigdata.rdf.sparql.ast.optimizers.ASTIndexMergeJoinOptimizer;
 import com.bigdata.rdf.sparql.ast.optimizers.ASTJoinOrderByTypeOptimizer;
 import com.bigdata.rdf.sparql.ast.optimizers.ASTNamedSubqueryOptimizer;
 import com.bigdata.rdf.sparql.ast.optimizers.ASTSetValueExpressionsOptimizer;
+import com.bigdata.rdf.sparql.ast.optimizers.ASTWorstCaseOptimalJoinOptimizer;
 import com.bigdata.rdf.sparql.ast.service.MockIVReturningServiceCall;
 import com.bigdata.rdf.sparql.ast.service.ServiceCall;
 import com.bigdata.rdf.sparql.ast.service.ServiceCallUtility;
@@ -170,6 +182,7 @@ import com.bigdata.rdf.sparql.ast.service.ServiceNode;
 import com.bigdata.rdf.sparql.ast.service.ServiceRegistry;
 import com.bigdata.rdf.spo.DistinctTermAdvancer;
 import com.bigdata.rdf.spo.ExplicitSPOFilter;
+import com.bigdata.rdf.spo.ISPO;
 import com.bigdata.rdf.spo.SPOPredicate;
 import com.bigdata.rdf.store.AbstractTripleStore;
 import com.bigdata.relation.accesspath.ElementFilter;
@@ -263,11 +276,37 @@ public class AST2BOpUtility extends AST2BOpRTO {
          */
         ctx.setGloballyScopedVariables(ctx.getSolutionSetStats().getAlwaysBound());
         
-        // Run the AST query rewrites / query optimizers.
-        final QueryNodeWithBindingSet optRes = 
-           ctx.optimizers.optimize(ctx, 
-                 new QueryNodeWithBindingSet(originalQuery, globallyScopedBindings));
-        
+        /*
+         * Look for a cached optimized AST.
+         * 
+         * Note: On a cache hit, the values of the exogenous solution are
+         * substituted into the cached AST and the evaluation options set by
+         * the query hints are restored on the context (see PlanCache).
+         */
+        final PlanCache planCache = PlanCache.getPlanCache(ctx.queryEngine);
+
+        final String planKey = planCache == null ? null : planCache.getKey(
+                ctx, globallyScopedBindings);
+
+        QueryNodeWithBindingSet optRes = planKey == null ? null : planCache
+                .get(planKey, ctx, globallyScopedBindings);
+
+        if (optRes == null) {
+
+            // Run the AST query rewrites / query optimizers.
+            optRes = ctx.optimizers.optimize(ctx, new QueryNodeWithBindingSet(
+                    originalQuery, globallyScopedBindings));
+
+            if (planKey != null) {
+
+                planCache.put(planKey, ctx, globallyScopedBindings,
+                        (QueryRoot) optRes.getQueryNode(),
+                        optRes.getBindingSets(), ctx.nextId());
+
+            }
+
+        }
+
         // Set the optimized AST model on the container.
         final QueryRoot optimizedQuery = (QueryRoot)optRes.getQueryNode();
         astContainer.setOptimizedAST(optimizedQuery);
@@ -496,15 +535,28 @@ public class AST2BOpUtility extends AST2BOpRTO {
             final boolean isAggregate = StaticAnalysis.isAggregate(projection,
                     groupBy, having);
 
+            /*
+             * Projected assignments which are evaluated after the ORDER BY
+             * (late materialization).
+             */
+            final List<AssignmentNode> lateAssignments;
+
             if (isAggregate) {
 
+                lateAssignments = Collections.emptyList();
+
                 left = addAggregation(left, projection, groupBy, having, ctx);
 
             } else {
 
+                lateAssignments = getLateAssignments(queryBase, ctx);
+
                 for (AssignmentNode assignmentNode : projection
                         .getAssignmentProjections()) {
 
+                    if (lateAssignments.contains(assignmentNode))
+                        continue;
+
                     left = addAssignment(left, assignmentNode, doneSet,
                             projection.getQueryHints(), ctx, true/* projection */);
 
@@ -546,6 +598,14 @@ public class AST2BOpUtility extends AST2BOpRTO {
 
                 left = addOrderBy(left, queryBase, orderBy, ctx);
 
+                for (AssignmentNode assignmentNode : lateAssignments) {
+
+                    left = addAssignment(left, assignmentNode, doneSet,
+                            projection.getQueryHints(), ctx,
+                            true/* projection */, true/* preserveOrder */);
+
+                }
+
             } else {
                 
                 preserveOrder = false;
@@ -3063,6 +3123,31 @@ public class AST2BOpUtility extends AST2BOpRTO {
             
         }
 
+        if (joinGroup.getProperty(
+                ASTWorstCaseOptimalJoinOptimizer.Annotations.VARIABLE_ORDER) != null) {
+
+            /*
+             * The leading statement patterns in the group are cyclic.
+             * Evaluate them using a single worst-case optimal join.
+             */
+
+            left = doWorstCaseOptimalJoin(left, joinGroup, doneSet, start, ctx);
+
+        }
+
+        if (joinGroup.getProperty(
+                ASTIndexMergeJoinOptimizer.Annotations.JOIN_VAR) != null) {
+
+            /*
+             * The leading statement patterns in the group share a variable and
+             * are large. Evaluate them using a merge join of ordered index
+             * scans.
+             */
+
+            left = doIndexMergeJoin(left, joinGroup, doneSet, start, ctx);
+
+        }
+
         if (QueryOptimizerEnum.Runtime.equals(joinGroup.getQueryOptimizer())) {
 
             /*
@@ -3643,6 +3728,184 @@ public class AST2BOpUtility extends AST2BOpRTO {
         return left;
 
     }
+
+    /**
+     * Evaluate the leading run of statement patterns in the join group (from
+     * the current <i>start</i> index) using a {@link LeapfrogTriejoinOp}. The
+     * run is identified by the {@link ASTWorstCaseOptimalJoinOptimizer}, which
+     * also decides the order in which the variables are eliminated. If the
+     * run is no longer cyclic, or if any of the statement patterns would
+     * require a filter on its access path, then nothing is done and the group
+     * is evaluated using pairwise joins.
+     * 
+     * @param left
+     * @param joinGroup
+     * @param doneSet
+     * @param start
+     *            The index of the first child in the group which has not been
+     *            handled. This is advanced beyond the statement patterns which
+     *            are consumed by the worst-case optimal join.
+     * @param ctx
+     * 
+     * @return The new pipeline.
+     */
+    private static PipelineOp doWorstCaseOptimalJoin(PipelineOp left,
+            final JoinGroupNode joinGroup,
+            final Set<IVariable<?>> doneSet,
+            final AtomicInteger start,
+            final AST2BOpContext ctx) {
+
+        final IVariable<?>[] order = (IVariable<?>[]) joinGroup
+                .getProperty(ASTWorstCaseOptimalJoinOptimizer.Annotations.VARIABLE_ORDER);
+
+        final List<StatementPatternNode> run = ASTWorstCaseOptimalJoinOptimizer
+                .getLeadingRun(joinGroup, start.get(), ctx);
+
+        if (!ASTWorstCaseOptimalJoinOptimizer.isCyclic(run)) {
+
+            // The group was changed since it was analyzed.
+            return left;
+
+        }
+
+        final List<IVariable<?>> vars = Arrays.asList(order);
+
+        @SuppressWarnings("unchecked")
+        final IPredicate<ISPO>[] preds = new IPredicate[run.size()];
+
+        for (int i = 0; i < preds.length; i++) {
+
+            final Predicate<?> pred = toPredicate(run.get(i), ctx);
+
+            if (pred.getIndexLocalFilter() != null
+                    || pred.getAccessPathFilter() != null) {
+
+                // Can not be evaluated by the triejoin.
+                return left;
+
+            }
+
+            for (int k = 0; k < pred.arity(); k++) {
+
+                final IVariableOrConstant<?> t = pred.get(k);
+
+                if (t != null && t.isVar() && !vars.contains(t)) {
+
+                    // The group was changed since it was analyzed.
+                    return left;
+
+                }
+
+            }
+
+            @SuppressWarnings("unchecked")
+            final IPredicate<ISPO> tmp = (IPredicate<ISPO>) pred;
+
+            preds[i] = tmp;
+
+        }
+
+        left = applyQueryHints(new LeapfrogTriejoinOp(leftOrEmpty(left), //
+                new NV(BOp.Annotations.BOP_ID, ctx.nextId()),//
+                new NV(BOp.Annotations.EVALUATION_CONTEXT,
+                        BOpEvaluationContext.CONTROLLER),//
+                new NV(LeapfrogTriejoinOp.Annotations.PREDICATES, preds),//
+                new NV(LeapfrogTriejoinOp.Annotations.VARIABLE_ORDER, order)//
+        ), joinGroup, ctx);
+
+        /*
+         * Note: The variables bound by the triejoin are NOT added to the
+         * doneSet. The operator only binds IVs, so they still need to be
+         * materialized for FILTERs and the projection.
+         */
+
+        // Advance beyond the last consumed statement pattern.
+        start.addAndGet(run.size());
+
+        return left;
+
+    }
+
+    /**
+     * Evaluate the leading run of statement patterns in the join group (from
+     * the current <i>start</i> index) which share the join variable chosen by
+     * the {@link ASTIndexMergeJoinOptimizer} using an
+     * {@link IndexMergeJoinOp}. If fewer than two statement patterns qualify,
+     * or if any of them would require a filter on its access path, then
+     * nothing is done and the group is evaluated using pairwise joins.
+     * 
+     * @param left
+     * @param joinGroup
+     * @param doneSet
+     * @param start
+     *            The index of the first child in the group which has not been
+     *            handled. This is advanced beyond the statement patterns which
+     *            are consumed by the merge join.
+     * @param ctx
+     * 
+     * @return The new pipeline.
+     */
+    private static PipelineOp doIndexMergeJoin(PipelineOp left,
+            final JoinGroupNode joinGroup,
+            final Set<IVariable<?>> doneSet,
+            final AtomicInteger start,
+            final AST2BOpContext ctx) {
+
+        final IVariable<?> joinVar = (IVariable<?>) joinGroup
+                .getProperty(ASTIndexMergeJoinOptimizer.Annotations.JOIN_VAR);
+
+        final List<StatementPatternNode> run = ASTIndexMergeJoinOptimizer
+                .getMergeRun(joinGroup, start.get(), joinVar, ctx);
+
+        if (run.size() < 2) {
+
+            // The group was changed since it was analyzed.
+            return left;
+
+        }
+
+        @SuppressWarnings("unchecked")
+        final IPredicate<ISPO>[] preds = new IPredicate[run.size()];
+
+        for (int i = 0; i < preds.length; i++) {
+
+            final Predicate<?> pred = toPredicate(run.get(i), ctx);
+
+            if (pred.getIndexLocalFilter() != null
+                    || pred.getAccessPathFilter() != null) {
+
+                // Can not be evaluated by the merge join.
+                return left;
+
+            }
+
+            @SuppressWarnings("unchecked")
+            final IPredicate<ISPO> tmp = (IPredicate<ISPO>) pred;
+
+            preds[i] = tmp;
+
+        }
+
+        left = applyQueryHints(new IndexMergeJoinOp(leftOrEmpty(left), //
+                new NV(BOp.Annotations.BOP_ID, ctx.nextId()),//
+                new NV(BOp.Annotations.EVALUATION_CONTEXT,
+                        BOpEvaluationContext.CONTROLLER),//
+                new NV(IndexMergeJoinOp.Annotations.PREDICATES, preds),//
+                new NV(IndexMergeJoinOp.Annotations.JOIN_VAR, joinVar)//
+        ), joinGroup, ctx);
+
+        /*
+         * Note: The variables bound by the merge join are NOT added to the
+         * doneSet. The operator only binds IVs, so they still need to be
+         * materialized for FILTERs and the projection.
+         */
+
+        // Advance beyond the last consumed statement pattern.
+        start.addAndGet(run.size());
+
+        return left;
+
+    }
     
     /**
      * Conditionally add a {@link StartOp} iff the query will rin on a cluster.
@@ -3733,7 +3996,6 @@ public class AST2BOpUtility extends AST2BOpRTO {
      * @param projection
      * @return
      */
-    @SuppressWarnings({ "unchecked", "rawtypes" })
     private static final PipelineOp addAssignment(PipelineOp left,
 //            final ASTBase dominatingASTNode,//
             final AssignmentNode assignmentNode,//
@@ -3742,6 +4004,31 @@ public class AST2BOpUtility extends AST2BOpRTO {
             final AST2BOpContext ctx,//
             final boolean projection) {
 
+        return addAssignment(left, assignmentNode, doneSet, queryHints, ctx,
+                projection, false/* preserveOrder */);
+
+    }
+
+    /**
+     * Add an assignment to the query plan.
+     * 
+     * @param preserveOrder
+     *            When <code>true</code> the operators added to the pipeline
+     *            must not reorder the solutions. This is used for projected
+     *            assignments which are evaluated after an ORDER BY.
+     * 
+     * @see #addAssignment(PipelineOp, AssignmentNode, Set, Properties,
+     *      AST2BOpContext, boolean)
+     */
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private static final PipelineOp addAssignment(PipelineOp left,
+            final AssignmentNode assignmentNode,//
+            final Set<IVariable<?>> doneSet, //
+            final Properties queryHints,//
+            final AST2BOpContext ctx,//
+            final boolean projection,//
+            final boolean preserveOrder) {
+
         final IValueExpression ve = assignmentNode.getValueExpression();
 
         final Set<IVariable<IV>> vars = new LinkedHashSet<IVariable<IV>>();
@@ -3773,8 +4060,21 @@ public class AST2BOpUtility extends AST2BOpRTO {
          */
         if (vars.size() > 0) {
 
-            left = addMaterializationSteps1(left, bopId, ve, vars,
-                    queryHints, ctx);
+            if (preserveOrder) {
+
+                // Note: Chunked materialization does not use conditional routing.
+                left = addChunkedMaterializationStep(
+                        left,
+                        vars,
+                        ChunkedMaterializationOp.Annotations.DEFAULT_MATERIALIZE_INLINE_IVS,
+                        true/* preserveOrder */, queryHints, ctx);
+
+            } else {
+
+                left = addMaterializationSteps1(left, bopId, ve, vars,
+                        queryHints, ctx);
+
+            }
 
             if(req.getRequirement()==Requirement.ALWAYS) {
 
@@ -3791,16 +4091,158 @@ public class AST2BOpUtility extends AST2BOpRTO {
 
         }
 
+        final List<NV> anns = new LinkedList<NV>();
+        anns.add(new NV(BOp.Annotations.BOP_ID, bopId));
+        anns.add(new NV(ConditionalRoutingOp.Annotations.CONDITION, c));
+        if (preserveOrder) {
+            /**
+             * @see #1044 (PROJECTION after ORDER BY does not preserve order)
+             */
+            anns.add(new NV(PipelineOp.Annotations.MAX_PARALLEL, 1));
+            anns.add(new NV(PipelineOp.Annotations.REORDER_SOLUTIONS, false));
+        }
+
         left = applyQueryHints(//
                 new ConditionalRoutingOp(leftOrEmpty(left), //
-                new NV(BOp.Annotations.BOP_ID, bopId), //
-                new NV(ConditionalRoutingOp.Annotations.CONDITION, c)//
+                anns.toArray(new NV[anns.size()])//
             ), queryHints, ctx);
 
         return left;
 
     }
 
+    /**
+     * Return the projected assignments of a non-aggregation query which may
+     * be evaluated after its ORDER BY rather than before it (late
+     * materialization). An empty list is returned unless the query has both an
+     * ORDER BY and a SLICE and {@link AST2BOpContext#lateMaterialization} is
+     * enabled.
+     * <p>
+     * Projected assignments are normally evaluated before the ORDER BY, so any
+     * RDF values which they need are materialized for every solution. When
+     * the query has a LIMIT, most of those solutions are then discarded by the
+     * (top-K) sort and the SLICE. An assignment whose variable is not needed
+     * by the ORDER BY can instead be evaluated on the sorted solutions, so
+     * its materialization is only done for the solutions which survive the
+     * sort.
+     * <p>
+     * Note: This only moves the projected assignments. It is not a general
+     * placement of the materialization steps: those for FILTERs, sort keys,
+     * etc. are planned as before. The moved assignments are still evaluated
+     * before the SLICE since the {@link SliceOp} halts the query once its
+     * LIMIT is satisfied, which could cut off operators downstream of it.
+     * With a top-K sort only OFFSET+LIMIT solutions reach them. The projected
+     * variables themselves are materialized after the SLICE, outside of the
+     * query plan.
+     * <p>
+     * An assignment must stay before the ORDER BY if its variable is used by
+     * a sort key or by another assignment which must stay before the ORDER BY.
+     * All other assignments are returned, in their original order, but only
+     * if at least one of them needs to materialize some variable (otherwise
+     * there is nothing to gain).
+     * 
+     * @see QueryHints#LATE_MATERIALIZATION
+     */
+    @SuppressWarnings("rawtypes")
+    static List<AssignmentNode> getLateAssignments(final QueryBase queryBase,
+            final AST2BOpContext ctx) {
+
+        final OrderByNode orderBy = queryBase.getOrderBy();
+
+        final ProjectionNode projection = queryBase.getProjection();
+
+        if (!ctx.lateMaterialization || orderBy == null || orderBy.isEmpty()
+                || !queryBase.hasSlice() || projection == null)
+            return Collections.emptyList();
+
+        final List<AssignmentNode> assignments = projection
+                .getAssignmentProjections();
+
+        if (assignments.isEmpty())
+            return Collections.emptyList();
+
+        // The variables which must be bound before the ORDER BY.
+        final Set<IVariable<?>> needed = new LinkedHashSet<IVariable<?>>();
+
+        for (OrderByExpr orderByExpr : orderBy) {
+
+            needed.addAll(getSpannedVars(orderByExpr.getValueExpression()));
+
+        }
+
+        final boolean[] early = new boolean[assignments.size()];
+
+        for (int i = assignments.size() - 1; i >= 0; i--) {
+
+            final AssignmentNode a = assignments.get(i);
+
+            if (needed.contains(a.getVar())) {
+
+                early[i] = true;
+
+                needed.addAll(getSpannedVars(a.getValueExpression()));
+
+            }
+
+        }
+
+        final List<AssignmentNode> late = new LinkedList<AssignmentNode>();
+
+        boolean materializes = false;
+
+        for (int i = 0; i < early.length; i++) {
+
+            if (early[i])
+                continue;
+
+            final AssignmentNode a = assignments.get(i);
+
+            late.add(a);
+
+            final Set<IVariable<IV>> vars = a.getMaterializationRequirement()
+                    .getVarsToMaterialize();
+
+            if (vars != null && !vars.isEmpty())
+                materializes = true;
+
+        }
+
+        if (!materializes)
+            return Collections.emptyList();
+
+        return late;
+
+    }
+
+    /**
+     * Return the distinct variables spanned by a value expression.
+     */
+    private static Set<IVariable<?>> getSpannedVars(
+            final IValueExpression<?> expr) {
+
+        final Set<IVariable<?>> vars = new LinkedHashSet<IVariable<?>>();
+
+        if (expr == null)
+            return vars;
+
+        if (expr instanceof IVariable<?>) {
+
+            vars.add((IVariable<?>) expr);
+
+            return vars;
+
+        }
+
+        final Iterator<IVariable<?>> itr = BOpUtility
+                .getSpannedVariables((BOp) expr);
+
+        while (itr.hasNext())
+            vars.add(itr.next());
+
+        return vars;
+
+    }
+
     /**
      * Add an assignment to the query plan and resolve the IV of the bound
      * variable (which might be bound to a mocked IV) against the dictionary. 
@@ -4528,7 +4970,51 @@ public class AST2BOpUtility extends AST2BOpRTO {
 
         left = addMaterializationSteps2(left, bopId, vars, queryHints, ctx);
 
-        if (!groupByState.isAnyDistinct() && !groupByState.isSelectDependency()
+        if (ctx.parallelAggregation > 1
+                && PartialAggregationOp.isPartialAggregation(groupByState,
+                        groupByRewrite)) {
+
+            /*
+             * Parallel pipelined aggregation. Up to [parallelAggregation]
+             * concurrent tasks each aggregate their source chunks into their
+             * own partial group state. The partial states are merged and the
+             * aggregates are finalized by a single combine operator once all
+             * source solutions have been consumed.
+             */
+
+            final int partialId = ctx.nextId();
+
+            left = new PartialAggregationOp(leftOrEmpty(left),//
+                    NV.asMap(new NV[] {//
+                            new NV(BOp.Annotations.BOP_ID, partialId),//
+                            new NV(BOp.Annotations.EVALUATION_CONTEXT,
+                                    BOpEvaluationContext.CONTROLLER),//
+                            new NV(PipelineOp.Annotations.PIPELINED, true),//
+                            new NV(PipelineOp.Annotations.MAX_PARALLEL,
+                                    ctx.parallelAggregation),//
+                            new NV(GroupByOp.Annotations.GROUP_BY_STATE,
+                                    groupByState), //
+                            new NV(GroupByOp.Annotations.GROUP_BY_REWRITE,
+                                    groupByRewrite), //
+                    }));
+
+            op = new CombineAggregationOp(leftOrEmpty(left),//
+                    NV.asMap(new NV[] {//
+                            new NV(BOp.Annotations.BOP_ID, bopId),//
+                            new NV(BOp.Annotations.EVALUATION_CONTEXT,
+                                    BOpEvaluationContext.CONTROLLER),//
+                            new NV(PipelineOp.Annotations.PIPELINED, true),//
+                            new NV(PipelineOp.Annotations.MAX_PARALLEL, 1),//
+                            new NV(CombineAggregationOp.Annotations.PARTIAL_AGGREGATION_ID,
+                                    partialId),//
+                            new NV(GroupByOp.Annotations.GROUP_BY_STATE,
+                                    groupByState), //
+                            new NV(GroupByOp.Annotations.GROUP_BY_REWRITE,
+                                    groupByRewrite), //
+                            new NV(PipelineOp.Annotations.LAST_PASS, true),//
+                    }));
+
+        } else if (!groupByState.isAnyDistinct() && !groupByState.isSelectDependency()
                 && !groupByState.isNestedAggregates()) {
 
             /*
@@ -4561,18 +5047,33 @@ public class AST2BOpUtility extends AST2BOpRTO {
                             new NV(PipelineOp.Annotations.LAST_PASS, true),//
                     }));
 
+        } else if (ctx.nativeGroupBy) {
+
+            /*
+             * General aggregation operator which hash partitions the solutions
+             * onto the native heap and then aggregates one partition at a time.
+             * This bounds the JVM heap demand for high cardinality GROUP BY.
+             */
+
+            op = new ExternalMemoryGroupByOp(leftOrEmpty(left),//
+                    NV.asMap(new NV[] {//
+                            new NV(BOp.Annotations.BOP_ID, bopId),//
+                            new NV(BOp.Annotations.EVALUATION_CONTEXT,
+                                    BOpEvaluationContext.CONTROLLER),//
+                            new NV(PipelineOp.Annotations.PIPELINED, true),//
+                            new NV(PipelineOp.Annotations.MAX_PARALLEL, 1),//
+                            new NV(PipelineOp.Annotations.SHARED_STATE, true),//
+                            new NV(GroupByOp.Annotations.GROUP_BY_STATE,
+                                    groupByState), //
+                            new NV(GroupByOp.Annotations.GROUP_BY_REWRITE,
+                                    groupByRewrite), //
+                            new NV(PipelineOp.Annotations.LAST_PASS, true),//
+                    }));
+
         } else {
 
             /*
              * General aggregation operator on the JVM heap.
-             * 
-             * TODO There is a sketch of a generalized aggregation operator for
-             * the native heap but it needs to be reworked (the control
-             * structure is incorrect). This generalized aggregation operator
-             * for the native heap would be a better only when the #of solutions
-             * to be grouped is large and we can not pipeline the aggregation.
-             * (The code for this is either on the CI machine or the
-             * workstation). BBT 8/17/2011.
              */
 
             op = new MemoryGroupByOp(leftOrEmpty(left), NV.asMap(new NV[] {//
@@ -4647,31 +5148,89 @@ public class AST2BOpUtility extends AST2BOpRTO {
 
         left = addMaterializationSteps2(left, sortId, vars, queryHints, ctx);
 
-        left = applyQueryHints(
-                new MemorySortOp(
-                        leftOrEmpty(left),
-                        NV.asMap(new NV[] {//
-                                new NV(MemorySortOp.Annotations.BOP_ID, sortId),//
-                                new NV(MemorySortOp.Annotations.SORT_ORDER,
-                                        sortOrders),//
-                                new NV(
-                                        MemorySortOp.Annotations.VALUE_COMPARATOR,
-                                        new IVComparator()),//
-                                new NV(
-                                        MemorySortOp.Annotations.EVALUATION_CONTEXT,
-                                        BOpEvaluationContext.CONTROLLER),//
-                                new NV(MemorySortOp.Annotations.PIPELINED, true),//
-                                new NV(MemorySortOp.Annotations.MAX_PARALLEL, 1),//
-                                new NV(MemorySortOp.Annotations.REORDER_SOLUTIONS, false),//
-//                                new NV(MemorySortOp.Annotations.SHARED_STATE,
-//                                        true),//
-                                new NV(MemorySortOp.Annotations.LAST_PASS, true),//
-                        })), queryHints, ctx);
+        final NV[] anns = new NV[] {//
+                new NV(SortOp.Annotations.BOP_ID, sortId),//
+                new NV(SortOp.Annotations.SORT_ORDER, sortOrders),//
+                new NV(SortOp.Annotations.VALUE_COMPARATOR,
+                        new IVComparator()),//
+                new NV(SortOp.Annotations.EVALUATION_CONTEXT,
+                        BOpEvaluationContext.CONTROLLER),//
+                new NV(SortOp.Annotations.PIPELINED, true),//
+                new NV(SortOp.Annotations.MAX_PARALLEL, 1),//
+                new NV(SortOp.Annotations.REORDER_SOLUTIONS, false),//
+//                new NV(SortOp.Annotations.SHARED_STATE, true),//
+                new NV(SortOp.Annotations.LAST_PASS, true),//
+        };
+
+        final long topK = getTopKSortLimit(queryBase, ctx);
+
+        final SortOp op;
+        if (topK > 0) {
+            /*
+             * ORDER BY + SLICE using a bounded priority queue. The SLICE is
+             * still applied downstream.
+             */
+            final NV[] tmp = Arrays.copyOf(anns, anns.length + 1);
+            tmp[anns.length] = new NV(TopKSortOp.Annotations.LIMIT, (int) topK);
+            op = new TopKSortOp(leftOrEmpty(left), NV.asMap(tmp));
+        } else if (ctx.nativeOrderBy) {
+            /*
+             * ORDER BY using sorted runs on the native heap.
+             */
+            final NV[] tmp = Arrays.copyOf(anns, anns.length + 1);
+            tmp[anns.length] = new NV(ExternalMemorySortOp.Annotations.RELATION_NAME,
+                    new String[] { ctx.getLexiconNamespace() });
+            op = new ExternalMemorySortOp(leftOrEmpty(left), NV.asMap(tmp));
+        } else {
+            /*
+             * ORDER BY on the JVM heap.
+             */
+            op = new MemorySortOp(leftOrEmpty(left), NV.asMap(anns));
+        }
+
+        left = applyQueryHints(op, queryHints, ctx);
 
         return left;
 
     }
 
+    /**
+     * Return <code>OFFSET+LIMIT</code> if the ORDER BY for the query may be
+     * evaluated using a {@link TopKSortOp} and ZERO (0) otherwise. This is
+     * only possible when the ORDER BY is followed by a SLICE having a LIMIT
+     * and nothing between the two operators can change the #of solutions
+     * (that is, there is no DISTINCT or REDUCED).
+     */
+    private static final long getTopKSortLimit(final QueryBase queryBase,
+            final AST2BOpContext ctx) {
+
+        if (!queryBase.hasSlice())
+            return 0L;
+
+        final ProjectionNode projection = queryBase.getProjection();
+
+        if (projection != null
+                && (projection.isDistinct() || projection.isReduced()))
+            return 0L;
+
+        final SliceNode slice = queryBase.getSlice();
+
+        final long offset = slice.getOffset();
+
+        final long limit = slice.getLimit();
+
+        if (limit == Long.MAX_VALUE || offset > Long.MAX_VALUE - limit)
+            return 0L;
+
+        final long k = offset + limit;
+
+        if (k <= 0L || k > ctx.topKSortThreshold || k >= Integer.MAX_VALUE)
+            return 0L;
+
+        return k;
+
+    }
+
     /**
      * Impose an OFFSET and/or LIMIT on a query.
      */
@@ -4795,6 +5354,12 @@ public class AST2BOpUtility extends AST2BOpRTO {
             // Note: moved up from below and modified to use conditionalCopy().
             conditionalCopy(anns, queryHints,
                     IPredicate.Annotations.CUTOFF_LIMIT);
+
+            conditionalCopy(anns, queryHints,
+                    IPredicate.Annotations.PARALLEL_SCAN_THREADS);
+
+            conditionalCopy(anns, queryHints,
+                    IPredicate.Annotations.PARALLEL_SCAN_THRESHOLD);
             
         }
 
@@ -4824,6 +5389,13 @@ public class AST2BOpUtility extends AST2BOpRTO {
 					StatementPatternNode.Annotations.FAST_RANGE_COUNT_VAR,
 					sp.getProperty(StatementPatternNode.Annotations.FAST_RANGE_COUNT_VAR)));
 		}
+
+		if (sp.getProperty(StatementPatternNode.Annotations.DISTINCT_TERM_COUNT_VAR) != null) {
+			// propagate annotation for distinct-term-count.
+			anns.add(new NV(
+					StatementPatternNode.Annotations.DISTINCT_TERM_COUNT_VAR,
+					sp.getProperty(StatementPatternNode.Annotations.DISTINCT_TERM_COUNT_VAR)));
+		}
         
         /*
 		 * Statements about statements.
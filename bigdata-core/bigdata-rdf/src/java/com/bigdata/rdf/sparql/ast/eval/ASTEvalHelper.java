@@ -84,6 +84,7 @@ import com.bigdata.rdf.sparql.ast.UpdateRoot;
 import com.bigdata.rdf.sparql.ast.cache.DescribeBindingsCollector;
 import com.bigdata.rdf.sparql.ast.cache.DescribeCacheUpdater;
 import com.bigdata.rdf.sparql.ast.cache.IDescribeCache;
+import com.bigdata.rdf.sparql.ast.cache.ResultCache;
 import com.bigdata.rdf.sparql.ast.eval.ASTDeferredIVResolution.DeferredResolutionResult;
 import com.bigdata.rdf.store.AbstractTripleStore;
 import com.bigdata.rdf.store.BigdataBindingSetResolverator;
@@ -188,6 +189,9 @@ public class ASTEvalHelper {
 
     /**
      * Evaluate a SELECT query.
+     * <p>
+     * Note: The solutions may be answered from the {@link ResultCache} when
+     * that cache is enabled.
      * 
      * @param store
      *            The {@link AbstractTripleStore} having the data.
@@ -208,6 +212,27 @@ public class ASTEvalHelper {
 
         final AST2BOpContext context = new AST2BOpContext(astContainer, store);
 
+        final ResultCache resultCache = ResultCache
+                .getResultCache(context.queryEngine);
+
+        // Note: The key must be formed before the query is optimized.
+        final String resultCacheKey = resultCache == null ? null : resultCache
+                .getKey(store, astContainer, globallyScopedBS, dataset);
+
+        if (resultCacheKey != null) {
+
+            final ResultCache.Result cached = resultCache.get(resultCacheKey,
+                    store);
+
+            if (cached != null) {
+
+                return new TupleQueryResultImpl(cached.projection,
+                        new Bigdata2Sesame2BindingSetIterator(cached.solutions));
+
+            }
+
+        }
+
         final QueryRoot optimizedQuery = 
                 optimizeQuery(astContainer, context, globallyScopedBS, dataset);
         
@@ -223,10 +248,18 @@ public class ASTEvalHelper {
         final boolean materializeProjectionInQuery = context.materializeProjectionInQuery
                 && !optimizedQuery.hasSlice();
 
-        final CloseableIteration<BindingSet, QueryEvaluationException> itr = ASTEvalHelper
+        CloseableIteration<BindingSet, QueryEvaluationException> itr = ASTEvalHelper
                 .evaluateQuery(astContainer, context, 
                         materializeProjectionInQuery, projected);
 
+        if (resultCacheKey != null) {
+
+            // Enter the solutions into the cache once they are drained.
+            itr = resultCache.record(resultCacheKey, store, optimizedQuery,
+                    projectedSet, itr);
+
+        }
+
         TupleQueryResult r = null;
         try {
             r = new TupleQueryResultImpl(projectedSet, itr);
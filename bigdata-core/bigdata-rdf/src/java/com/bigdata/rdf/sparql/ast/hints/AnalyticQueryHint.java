@@ -64,6 +64,8 @@ final class AnalyticQueryHint extends AbstractBooleanQueryHint {
         case Query:
             context.nativeHashJoins = value;
             context.nativeDistinctSolutions = value;
+            context.nativeOrderBy = value;
+            context.nativeGroupBy = value;
             context.nativeDistinctSPO = value;
             return;
         }
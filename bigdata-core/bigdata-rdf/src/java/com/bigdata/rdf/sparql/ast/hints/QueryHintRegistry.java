@@ -101,19 +101,31 @@ public class QueryHintRegistry {
         add(new RTOSampleTypeQueryHint());
         add(new RTOLimitQueryHint());
         add(new RTONEdgesQueryHint());
+        add(new RTOAdaptiveQueryHint());
+        add(new RTODeviationQueryHint());
         add(new OptimisticQueryHint());
         add(new NormalizeFilterExpressionHint());
 
         // Analytic query mode.
         add(new AnalyticQueryHint());
         add(new NativeDistinctQueryHint());
+        add(new NativeOrderByQueryHint());
+        add(new NativeGroupByQueryHint());
+        add(new ParallelAggregationHint());
+        add(new TopKSortThresholdHint());
+        add(new LateMaterializationHint());
+        add(new PrefixScanHint());
+        add(new PrefixScanLimitHint());
         add(new NativeDistinctSPOHint());
         add(new NativeDistinctSPOThresholdHint());
         add(new NativeHashJoinsHint());
         
         // JOIN hints.
         add(new MergeJoinHint());
+        add(new WorstCaseOptimalJoinHint());
+        add(new IndexMergeJoinThresholdHint());
         add(new HashJoinHint());
+        add(new HashJoinBloomFilterHint());
         add(new KeyOrderHint());
         add(new RemoteAPHint());
         add(new AccessPathSampleLimitHint());
@@ -167,6 +179,9 @@ public class QueryHintRegistry {
          * from the join rather than input into it.
          */
         add(new CutoffLimitHint());
+        add(new ParallelScanThreadsHint());
+        add(new ParallelScanThresholdHint());
+        add(new HashJoinBuildPartitionsHint());
 
         /**
          * FILTER (NOT) EXISTS evaluation strategy hint.
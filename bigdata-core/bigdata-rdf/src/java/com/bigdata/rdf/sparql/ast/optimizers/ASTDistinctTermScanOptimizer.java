@@ -30,6 +30,7 @@ package com.bigdata.rdf.sparql.ast.optimizers;
 import java.util.HashSet;
 import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import org.apache.log4j.Logger;
@@ -42,8 +43,11 @@ import com.bigdata.bop.IPredicate;
 import com.bigdata.bop.IVariable;
 import com.bigdata.bop.IVariableOrConstant;
 import com.bigdata.bop.Var;
+import com.bigdata.bop.aggregate.AggregateBase;
 import com.bigdata.rdf.sparql.ast.AssignmentNode;
 import com.bigdata.rdf.sparql.ast.DatasetNode;
+import com.bigdata.rdf.sparql.ast.FunctionNode;
+import com.bigdata.rdf.sparql.ast.FunctionRegistry;
 import com.bigdata.rdf.sparql.ast.GraphPatternGroup;
 import com.bigdata.rdf.sparql.ast.IGroupMemberNode;
 import com.bigdata.rdf.sparql.ast.IQueryNode;
@@ -80,6 +84,13 @@ import com.bigdata.striterator.IKeyOrder;
  * violated with multiple as-bound evaluations of the distinct-term-scan without
  * a hash index to impose the DISTINCT constraint).
  * 
+ * <p>
+ * The optimizer also handles
+ * <code>SELECT (COUNT(DISTINCT ?y) AS ?n) WHERE { ?x :p ?y . }</code>. The
+ * distinct values of <code>?y</code> are counted by walking the index with the
+ * distinct term advancer, so neither <code>?y</code> is bound nor does a hash
+ * index need to be built for the DISTINCT aggregate.
+ * 
  * TODO We are doing something very similar for <code>GRAPH ?g {}</code>. It
  * would be worth while to look at that code in the light of this optimizer.
  * 
@@ -213,19 +224,12 @@ public class ASTDistinctTermScanOptimizer implements IASTOptimizer {
       /*
        * Looking for SELECT ?var { triple-or-quads-pattern }
        * 
+       * or SELECT (COUNT(DISTINCT ?var) AS ?n) { triple-or-quads-pattern }
+       * 
        * where ?var is one of the variables in that triple or quads pattern.
        */
       final ProjectionNode projection = queryBase.getProjection();
 
-      if (!projection.isDistinct() && !projection.isReduced()) {
-         /*
-          * The distinct term scan automatically eliminates duplicates.
-          * Therefore it is only allowable with SELECT DISTINCT or SELECT
-          * REDUCED.
-          */
-         return;
-      }
-
       if (projection.isEmpty())
          return;
 
@@ -234,14 +238,41 @@ public class ASTDistinctTermScanOptimizer implements IASTOptimizer {
 
       final AssignmentNode assignmentNode = projection.getExpr(0);
 
-      if (!(assignmentNode.getValueExpressionNode() instanceof VarNode)) {
-         /*
-          * The projection needs to be a single, simple variable.
-          */
-         return;
-      }
+      // The variable to which the distinct count is bound (if any).
+      final VarNode countVar;
+
+      final IVariable<?> projectedVar;
+
+      if (assignmentNode.getValueExpressionNode() instanceof VarNode) {
+
+         if (!projection.isDistinct() && !projection.isReduced()) {
+            /*
+             * The distinct term scan automatically eliminates duplicates.
+             * Therefore it is only allowable with SELECT DISTINCT or SELECT
+             * REDUCED.
+             */
+            return;
+         }
+
+         countVar = null;
+
+         projectedVar = assignmentNode.getVar();
+
+      } else {
 
-      final IVariable<?> projectedVar = assignmentNode.getVar();
+         projectedVar = getCountDistinctVar(queryBase, assignmentNode);
+
+         if (projectedVar == null) {
+            /*
+             * The projection needs to be a single, simple variable or a
+             * COUNT(DISTINCT ?var) over a single, simple variable.
+             */
+            return;
+         }
+
+         countVar = assignmentNode.getVarNode();
+
+      }
 
       /**
        * Looking for a single triple or quad pattern in the WHERE clause.
@@ -344,6 +375,28 @@ public class ASTDistinctTermScanOptimizer implements IASTOptimizer {
 
       }
 
+      if (countVar != null) {
+
+         /*
+          * Rewrite the projection as SELECT ?n. The distinct-term-count binds
+          * ?n directly, so there is no aggregation left to do.
+          */
+         final ProjectionNode newProjection = new ProjectionNode();
+         newProjection.addProjectionVar(countVar);
+         queryBase.setProjection(newProjection);
+
+         final VarNode distinctTermScanVar = new VarNode(projectedVar.getName());
+         sp.setDistinctTermScanVar(distinctTermScanVar);
+         sp.setDistinctTermCountVar(countVar);
+         sp.setQueryHint(IPredicate.Annotations.KEY_ORDER, keyOrder.toString());
+
+         // One solution per source solution (see ASTFastRangeCountOptimizer).
+         sp.setProperty(AST2BOpBase.Annotations.ESTIMATED_CARDINALITY, 1L);
+
+         return;
+
+      }
+
       /*
        * Disable DISTINCT/REDUCED. The distinct-term-scan will automatically
        * enforce this.
@@ -384,6 +437,56 @@ public class ASTDistinctTermScanOptimizer implements IASTOptimizer {
 
    }
 
+   /**
+    * Return the variable <code>?var</code> iff the assignment is
+    * <code>(COUNT(DISTINCT ?var) AS ?n)</code> and the query is neither
+    * grouped nor has a HAVING clause.
+    * 
+    * @return The variable -or- <code>null</code> if the projection does not
+    *         have that form.
+    */
+   private static IVariable<?> getCountDistinctVar(final QueryBase queryBase,
+         final AssignmentNode assignmentNode) {
+
+      if (queryBase.getGroupBy() != null || queryBase.getHaving() != null) {
+         return null;
+      }
+
+      if (!(assignmentNode.getValueExpressionNode() instanceof FunctionNode)) {
+         return null;
+      }
+
+      final FunctionNode functionNode = (FunctionNode) assignmentNode
+            .getValueExpressionNode();
+
+      if (!FunctionRegistry.COUNT.equals(functionNode.getFunctionURI())) {
+         return null;
+      }
+
+      final Map<String, Object> scalarValues = functionNode.getScalarValues();
+
+      if (scalarValues == null
+            || !Boolean.TRUE.equals(scalarValues
+                  .get(AggregateBase.Annotations.DISTINCT))) {
+         return null;
+      }
+
+      if (functionNode.arity() != 1
+            || !(functionNode.get(0) instanceof VarNode)) {
+         return null;
+      }
+
+      final VarNode arg = (VarNode) functionNode.get(0);
+
+      if (arg.isWildcard()) {
+         // COUNT(DISTINCT *) is handled by the ASTFastRangeCountOptimizer.
+         return null;
+      }
+
+      return arg.getValueExpression();
+
+   }
+
    /**
     * Computes an applicable key order for performing a distinct range term
     * scan, if exists. Such a key order must be formed out of a prefix
@@ -394,7 +497,7 @@ public class ASTDistinctTermScanOptimizer implements IASTOptimizer {
     * @param context
     * @return matching key order, if exists, null if not (indicating failure)
     */
-   private IKeyOrder<ISPO> getApplicableKeyOrderIfExists(
+   static IKeyOrder<ISPO> getApplicableKeyOrderIfExists(
          StatementPatternNode sp, IVariable<?> termScanVar,
          AST2BOpContext context) {
 
@@ -431,7 +534,7 @@ public class ASTDistinctTermScanOptimizer implements IASTOptimizer {
     * @param isQuads
     * @return
     */
-   private Set<SPOKeyOrder> getCandidateKeyOrders(StatementPatternNode sp,
+   private static Set<SPOKeyOrder> getCandidateKeyOrders(StatementPatternNode sp,
          IVariable<?> termScanVar, AST2BOpContext context, boolean isQuads) {
 
       /**
@@ -531,7 +634,7 @@ public class ASTDistinctTermScanOptimizer implements IASTOptimizer {
     * 
     * 2 - constant 1 - the distinct term scan var 0 - unconstrained
     */
-   private int getPositionConstraint(IVariableOrConstant val,
+   private static int getPositionConstraint(IVariableOrConstant val,
          IVariable<?> termScanVar) {
       if (val instanceof IConstant) {
          return 2;
@@ -543,12 +646,12 @@ public class ASTDistinctTermScanOptimizer implements IASTOptimizer {
    }
 
    
-   private void getPermutations(String str, Set<String> collector) {
+   private static void getPermutations(String str, Set<String> collector) {
       getPermutations("", str, collector);
    }
 
    
-   private void getPermutations(
+   private static void getPermutations(
       String prefix, String str, Set<String> collector) {
       
       final int n = str.length();
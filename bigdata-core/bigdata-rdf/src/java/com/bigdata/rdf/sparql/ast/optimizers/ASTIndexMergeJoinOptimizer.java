@@ -0,0 +1,220 @@
+/**
+
+Copyright (C) SYSTAP, LLC DBA Blazegraph 2006-2016.  All rights reserved.
+
+Contact:
+     SYSTAP, LLC DBA Blazegraph
+     2501 Calvert ST NW #106
+     Washington, DC 20008
+     licenses@blazegraph.com
+
+This program is free software; you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation; version 2 of the License.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program; if not, write to the Free Software
+Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+/*
+ * Created on Oct 17, 2026
+ */
+
+package com.bigdata.rdf.sparql.ast.optimizers;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.log4j.Logger;
+
+import com.bigdata.bop.IBindingSet;
+import com.bigdata.bop.IVariable;
+import com.bigdata.bop.rdf.join.IndexMergeJoinOp;
+import com.bigdata.rdf.sparql.ast.JoinGroupNode;
+import com.bigdata.rdf.sparql.ast.QueryHints;
+import com.bigdata.rdf.sparql.ast.QueryOptimizerEnum;
+import com.bigdata.rdf.sparql.ast.StatementPatternNode;
+import com.bigdata.rdf.sparql.ast.StaticAnalysis;
+import com.bigdata.rdf.sparql.ast.TermNode;
+import com.bigdata.rdf.sparql.ast.VarNode;
+import com.bigdata.rdf.sparql.ast.eval.AST2BOpBase;
+import com.bigdata.rdf.sparql.ast.eval.AST2BOpContext;
+import com.bigdata.rdf.spo.SPOKeyOrder;
+
+/**
+ * Identifies join groups whose leading statement patterns share a variable
+ * and are all large, such as a subject-star over several unselective
+ * predicates, and marks them for evaluation by the {@link IndexMergeJoinOp}.
+ * That operator reads each statement pattern in the order of the shared
+ * variable and zips them together, replacing one random index probe per
+ * solution with a sequential scan of each index.
+ * <p>
+ * The optimizer does not change the join order. It considers the leading run
+ * of statement patterns in the group (the same statement patterns which may
+ * be handled by the {@link ASTWorstCaseOptimalJoinOptimizer}). The shared
+ * variable is chosen from the variables of the first statement pattern. The
+ * merge join consumes the statement patterns which follow it so long as they
+ * use the shared variable, the constants in each statement pattern directly
+ * follow the shared variable in the key of the index which will be read, and
+ * the estimated cardinality of each is at least
+ * {@link QueryHints#INDEX_MERGE_JOIN_THRESHOLD}.
+ * <p>
+ * The index merge join scans the statement patterns once for each source
+ * solution, so it is only used for the WHERE clause of the top-level query
+ * when that is evaluated against at most one exogenous solution. Sub-selects
+ * and named subqueries are not considered since they may be evaluated once
+ * per solution flowing into them.
+ * 
+ * @see Annotations#JOIN_VAR
+ */
+public class ASTIndexMergeJoinOptimizer extends AbstractJoinGroupOptimizer
+        implements IASTOptimizer {
+
+    private static final transient Logger log = Logger
+            .getLogger(ASTIndexMergeJoinOptimizer.class);
+
+    public interface Annotations {
+
+        /**
+         * The {@link IVariable} shared by the leading statement patterns of
+         * the {@link JoinGroupNode} which will be evaluated by the
+         * {@link IndexMergeJoinOp}. This is set on the group by the optimizer.
+         */
+        String JOIN_VAR = ASTIndexMergeJoinOptimizer.class.getName()
+                + ".joinVar";
+
+    }
+
+    public ASTIndexMergeJoinOptimizer() {
+        super(false /* childFirst */, true /* optimizeServiceNodes */);
+    }
+
+    @Override
+    protected void optimizeJoinGroup(final AST2BOpContext ctx,
+            final StaticAnalysis sa, final IBindingSet[] bSets,
+            final JoinGroupNode group) {
+
+        if (group != sa.getQueryRoot().getWhereClause()) {
+            // Not the WHERE clause of the top-level query.
+            return;
+        }
+
+        if (bSets != null && bSets.length > 1) {
+            // The scans would be repeated for each exogenous solution.
+            return;
+        }
+
+        if (QueryOptimizerEnum.Runtime.equals(group.getQueryOptimizer()))
+            return;
+
+        if (group.getProperty(ASTWorstCaseOptimalJoinOptimizer.Annotations.VARIABLE_ORDER) != null) {
+            // Already handled by the worst-case optimal join.
+            return;
+        }
+
+        final List<StatementPatternNode> run = ASTWorstCaseOptimalJoinOptimizer
+                .getLeadingRun(group, 0, ctx);
+
+        if (run.size() < 2)
+            return;
+
+        final StatementPatternNode first = run.get(0);
+
+        for (TermNode t : new TermNode[] { first.s(), first.p(), first.o() }) {
+
+            if (!(t instanceof VarNode))
+                continue;
+
+            final IVariable<?> var = ((VarNode) t).getValueExpression();
+
+            if (getMergeRun(group, 0, var, ctx).size() >= 2) {
+
+                if (log.isInfoEnabled())
+                    log.info("Index merge join on " + var + ": " + run);
+
+                group.setProperty(Annotations.JOIN_VAR, var);
+
+                return;
+
+            }
+
+        }
+
+    }
+
+    /**
+     * Return the statement patterns, starting at the given index in the
+     * group, which will be evaluated by the {@link IndexMergeJoinOp} on the
+     * given join variable.
+     * 
+     * @param group
+     *            The group.
+     * @param start
+     *            The index of the first child to consider.
+     * @param var
+     *            The join variable.
+     * @param ctx
+     *            The evaluation context.
+     */
+    public static List<StatementPatternNode> getMergeRun(
+            final JoinGroupNode group, final int start,
+            final IVariable<?> var, final AST2BOpContext ctx) {
+
+        final List<StatementPatternNode> run = new ArrayList<StatementPatternNode>();
+
+        for (StatementPatternNode sp : ASTWorstCaseOptimalJoinOptimizer
+                .getLeadingRun(group, start, ctx)) {
+
+            if (!isOrdered(sp, var))
+                break;
+
+            final long estcard = sp.getProperty(
+                    AST2BOpBase.Annotations.ESTIMATED_CARDINALITY, -1L);
+
+            if (estcard < ctx.indexMergeJoinThreshold)
+                break;
+
+            run.add(sp);
+
+        }
+
+        return run;
+
+    }
+
+    /**
+     * Return <code>true</code> iff the statement pattern uses the variable
+     * and no constant follows a variable in the key of the index which would
+     * be read for that variable.
+     */
+    private static boolean isOrdered(final StatementPatternNode sp,
+            final IVariable<?> var) {
+
+        final TermNode[] terms = new TermNode[] { sp.s(), sp.p(), sp.o() };
+
+        for (int j = 0; j < 3; j++) {
+
+            if (!(terms[j] instanceof VarNode)
+                    || ((VarNode) terms[j]).getValueExpression() != var)
+                continue;
+
+            final SPOKeyOrder keyOrder = IndexMergeJoinOp.getKeyOrder(j);
+
+            final TermNode t1 = terms[keyOrder.getKeyOrder(1)];
+
+            final TermNode t2 = terms[keyOrder.getKeyOrder(2)];
+
+            return !(t1 instanceof VarNode && !(t2 instanceof VarNode));
+
+        }
+
+        return false;
+
+    }
+
+}
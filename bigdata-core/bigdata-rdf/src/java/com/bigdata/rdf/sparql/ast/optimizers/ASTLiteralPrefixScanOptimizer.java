@@ -0,0 +1,411 @@
+/**
+
+Copyright (C) SYSTAP, LLC DBA Blazegraph 2006-2016.  All rights reserved.
+
+Contact:
+     SYSTAP, LLC DBA Blazegraph
+     2501 Calvert ST NW #106
+     Washington, DC 20008
+     licenses@blazegraph.com
+
+This program is free software; you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation; version 2 of the License.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program; if not, write to the Free Software
+Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+/*
+ * Created on Oct 17, 2026
+ */
+
+package com.bigdata.rdf.sparql.ast.optimizers;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+import org.apache.log4j.Logger;
+import org.openrdf.model.Literal;
+import org.openrdf.model.vocabulary.XMLSchema;
+
+import com.bigdata.bop.Constant;
+import com.bigdata.bop.IBindingSet;
+import com.bigdata.bop.IVariable;
+import com.bigdata.bop.bindingSet.ListBindingSet;
+import com.bigdata.rdf.internal.IV;
+import com.bigdata.rdf.lexicon.LexiconRelation;
+import com.bigdata.rdf.model.BigdataValue;
+import com.bigdata.rdf.sparql.ast.BindingsClause;
+import com.bigdata.rdf.sparql.ast.ConstantNode;
+import com.bigdata.rdf.sparql.ast.FilterNode;
+import com.bigdata.rdf.sparql.ast.FunctionNode;
+import com.bigdata.rdf.sparql.ast.FunctionRegistry;
+import com.bigdata.rdf.sparql.ast.IQueryNode;
+import com.bigdata.rdf.sparql.ast.IValueExpressionNode;
+import com.bigdata.rdf.sparql.ast.JoinGroupNode;
+import com.bigdata.rdf.sparql.ast.QueryHints;
+import com.bigdata.rdf.sparql.ast.StatementPatternNode;
+import com.bigdata.rdf.sparql.ast.StaticAnalysis;
+import com.bigdata.rdf.sparql.ast.VarNode;
+import com.bigdata.rdf.sparql.ast.eval.AST2BOpContext;
+
+/**
+ * Rewrites a literal prefix FILTER into a scan of the TERM2ID index. Given
+ * 
+ * <pre>
+ * ?s ?p ?o .
+ * FILTER(STRSTARTS(?o, "abc"))
+ * </pre>
+ * 
+ * or an anchored <code>FILTER(REGEX(?o, "^abc"))</code>, the literals whose
+ * lexical form begins with <code>abc</code> are read from the TERM2ID index
+ * and added to the group as an inline <code>VALUES</code> clause for
+ * <code>?o</code>. The statement pattern is then evaluated as a series of
+ * lookups on the bound object rather than as a scan of every statement
+ * followed by the materialization and filtering of every object.
+ * <p>
+ * The FILTER is retained. The prefix scan visits a superset of the matching
+ * literals (e.g., the TERM2ID keys may ignore case) and the FILTER is used to
+ * verify each candidate.
+ * <p>
+ * The rewrite is only applied when:
+ * <ul>
+ * <li>{@link QueryHints#PREFIX_SCAN} is enabled.</li>
+ * <li>The KB holds no literals which the scan would miss. The scan does not
+ * visit language tagged literals, inline literals or literals in the BLOBS
+ * index, all of which could match the prefix. The rewrite is therefore not
+ * applied when string literals are inlined or when the lexicon holds any
+ * language tagged literal or any literal in the BLOBS index.</li>
+ * <li>The filtered variable is the object of a required statement pattern in
+ * the same group.</li>
+ * <li>The prefix is a plain or <code>xsd:string</code> literal and, for
+ * <code>REGEX</code>, the pattern is anchored, has no alternation and uses no
+ * flags other than <code>s</code> (and <code>i</code> when the prefix scan
+ * ignores case).</li>
+ * <li>The prefix matches no more than {@link QueryHints#PREFIX_SCAN_LIMIT}
+ * literals.</li>
+ * </ul>
+ * 
+ * @see LexiconRelation#stringPrefixScan(String)
+ */
+public class ASTLiteralPrefixScanOptimizer extends AbstractJoinGroupOptimizer
+        implements IASTOptimizer {
+
+    private static final transient Logger log = Logger
+            .getLogger(ASTLiteralPrefixScanOptimizer.class);
+
+    public ASTLiteralPrefixScanOptimizer() {
+        super(false /* childFirst */, true /* optimizeServiceNodes */);
+    }
+
+    @Override
+    protected void optimizeJoinGroup(final AST2BOpContext ctx,
+            final StaticAnalysis sa, final IBindingSet[] bSets,
+            final JoinGroupNode group) {
+
+        if (!ctx.prefixScan)
+            return;
+
+        if (ctx.getAbstractTripleStore() == null)
+            return;
+
+        final LexiconRelation lex = ctx.getAbstractTripleStore()
+                .getLexiconRelation();
+
+        if (lex.isInlineLiterals() && lex.getMaxInlineStringLength() > 0) {
+            // Some string literals are not in the TERM2ID index.
+            return;
+        }
+
+        // The prefix scan clauses to add to the group.
+        final List<BindingsClause> clauses = new ArrayList<BindingsClause>();
+
+        for (IQueryNode node : group) {
+
+            if (!(node instanceof FilterNode))
+                continue;
+
+            final IValueExpressionNode ve = ((FilterNode) node)
+                    .getValueExpressionNode();
+
+            if (!(ve instanceof FunctionNode))
+                continue;
+
+            final FunctionNode f = (FunctionNode) ve;
+
+            if (f.arity() < 2 || !(f.get(0) instanceof VarNode))
+                continue;
+
+            final VarNode var = (VarNode) f.get(0);
+
+            final String prefix = getPrefix(lex, f);
+
+            if (prefix == null)
+                continue;
+
+            if (!isBoundByRequiredObject(group, var))
+                continue;
+
+            if (hasBindingsClause(group, var) || hasBindingsClause(clauses, var))
+                continue;
+
+            if (lex.hasLiteralsNotVisitedByPrefixScan()) {
+                // The scan would miss some of the matching literals.
+                return;
+            }
+
+            final BindingsClause bc = prefixScan(lex, var, prefix,
+                    ctx.prefixScanLimit);
+
+            if (bc == null)
+                continue;
+
+            if (log.isInfoEnabled())
+                log.info("Prefix scan: var=" + var + ", prefix=" + prefix
+                        + ", ncandidates=" + bc.getBindingSetsCount());
+
+            clauses.add(bc);
+
+            // The candidates are only valid for this commit point.
+            ctx.setDataDependentPlan();
+
+        }
+
+        for (BindingsClause bc : clauses) {
+
+            group.addArg(0, bc);
+
+        }
+
+    }
+
+    /**
+     * Return the prefix for a <code>STRSTARTS</code> or <code>REGEX</code>
+     * function -or- <code>null</code> if the function can not be evaluated
+     * using a prefix scan.
+     */
+    private static String getPrefix(final LexiconRelation lex,
+            final FunctionNode f) {
+
+        final String s = getSimpleLiteral(f.get(1));
+
+        if (s == null)
+            return null;
+
+        if (FunctionRegistry.STARTS_WITH.equals(f.getFunctionURI())) {
+
+            if (f.arity() != 2)
+                return null;
+
+            return s.length() == 0 ? null : s;
+
+        }
+
+        if (FunctionRegistry.REGEX.equals(f.getFunctionURI())) {
+
+            if (f.arity() == 3) {
+
+                final String flags = getSimpleLiteral(f.get(2));
+
+                if (flags == null)
+                    return null;
+
+                for (char c : flags.toCharArray()) {
+                    if (c == 's')
+                        continue;
+                    if (c == 'i' && lex.isCaseInsensitivePrefixScan())
+                        continue;
+                    return null;
+                }
+
+            } else if (f.arity() != 2) {
+
+                return null;
+
+            }
+
+            return getLiteralPrefix(s);
+
+        }
+
+        return null;
+
+    }
+
+    /**
+     * Return the lexical form of a plain (no language tag) or
+     * <code>xsd:string</code> literal -or- <code>null</code> if the node is not
+     * such a constant.
+     */
+    private static String getSimpleLiteral(final Object node) {
+
+        if (!(node instanceof ConstantNode))
+            return null;
+
+        final BigdataValue val = ((ConstantNode) node).getValue();
+
+        if (!(val instanceof Literal))
+            return null;
+
+        final Literal lit = (Literal) val;
+
+        if (lit.getLanguage() != null)
+            return null;
+
+        if (lit.getDatatype() != null
+                && !XMLSchema.STRING.equals(lit.getDatatype()))
+            return null;
+
+        return lit.getLabel();
+
+    }
+
+    /**
+     * Return the literal prefix which must be matched by any string matching
+     * the regular expression -or- <code>null</code> if the expression is not
+     * anchored at the start of the input, uses alternation, or does not begin
+     * with at least one literal character.
+     * 
+     * @param regex
+     *            The regular expression.
+     */
+    public static String getLiteralPrefix(final String regex) {
+
+        if (regex == null || !regex.startsWith("^"))
+            return null;
+
+        if (regex.indexOf('|') != -1) {
+            // An alternation could end the anchored branch.
+            return null;
+        }
+
+        final StringBuilder sb = new StringBuilder();
+
+        for (int i = 1; i < regex.length(); i++) {
+
+            final char c = regex.charAt(i);
+
+            if (".[]{}()*+?^$|\\".indexOf(c) == -1) {
+
+                sb.append(c);
+
+                continue;
+
+            }
+
+            if ((c == '?' || c == '*' || c == '{') && sb.length() > 0) {
+
+                // The last character is optional or repeated.
+                sb.setLength(sb.length() - 1);
+
+            }
+
+            break;
+
+        }
+
+        return sb.length() == 0 ? null : sb.toString();
+
+    }
+
+    /**
+     * Return <code>true</code> iff the variable is the object position of a
+     * required statement pattern in the group.
+     */
+    private static boolean isBoundByRequiredObject(final JoinGroupNode group,
+            final VarNode var) {
+
+        for (IQueryNode node : group) {
+
+            if (!(node instanceof StatementPatternNode))
+                continue;
+
+            final StatementPatternNode sp = (StatementPatternNode) node;
+
+            if (sp.isOptional())
+                continue;
+
+            if (var.equals(sp.o()))
+                return true;
+
+        }
+
+        return false;
+
+    }
+
+    /**
+     * Return <code>true</code> iff the group already has a
+     * {@link BindingsClause} which declares the variable.
+     */
+    private static boolean hasBindingsClause(final Iterable<?> nodes,
+            final VarNode var) {
+
+        for (Object node : nodes) {
+
+            if (!(node instanceof BindingsClause))
+                continue;
+
+            if (((BindingsClause) node).getDeclaredVariables().contains(
+                    var.getValueExpression()))
+                return true;
+
+        }
+
+        return false;
+
+    }
+
+    /**
+     * Scan the TERM2ID index for the literals having the prefix.
+     * 
+     * @return The {@link BindingsClause} -or- <code>null</code> if the
+     *         prefix matches more than <i>limit</i> literals.
+     */
+    @SuppressWarnings("rawtypes")
+    private static BindingsClause prefixScan(final LexiconRelation lex,
+            final VarNode var, final String prefix, final long limit) {
+
+        final IVariable<?> v = var.getValueExpression();
+
+        final List<IBindingSet> bindingSets = new ArrayList<IBindingSet>();
+
+        final Iterator<IV> itr = lex.stringPrefixScan(prefix);
+
+        while (itr.hasNext()) {
+
+            if (bindingSets.size() >= limit) {
+
+                if (log.isInfoEnabled())
+                    log.info("Too many candidates: var=" + var + ", prefix="
+                            + prefix);
+
+                return null;
+
+            }
+
+            final IBindingSet bset = new ListBindingSet();
+
+            bset.set(v, new Constant<IV>(itr.next()));
+
+            bindingSets.add(bset);
+
+        }
+
+        final LinkedHashSet<IVariable<?>> declaredVars = new LinkedHashSet<IVariable<?>>();
+
+        declaredVars.add(v);
+
+        return new BindingsClause(declaredVars, bindingSets);
+
+    }
+
+}
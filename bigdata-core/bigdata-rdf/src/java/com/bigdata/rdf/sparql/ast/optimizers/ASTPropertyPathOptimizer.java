@@ -31,12 +31,16 @@ import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Properties;
+import java.util.Set;
 import java.util.UUID;
 
 import org.openrdf.query.algebra.StatementPattern.Scope;
 
 import com.bigdata.bop.BOp;
 import com.bigdata.bop.IBindingSet;
+import com.bigdata.rdf.internal.VTE;
+import com.bigdata.rdf.internal.impl.TermId;
+import com.bigdata.rdf.model.BigdataURI;
 import com.bigdata.rdf.sparql.ast.ArbitraryLengthPathNode;
 import com.bigdata.rdf.sparql.ast.ConstantNode;
 import com.bigdata.rdf.sparql.ast.FilterNode;
@@ -61,6 +65,9 @@ import com.bigdata.rdf.sparql.ast.UnionNode;
 import com.bigdata.rdf.sparql.ast.VarNode;
 import com.bigdata.rdf.sparql.ast.ZeroLengthPathNode;
 import com.bigdata.rdf.sparql.ast.eval.AST2BOpContext;
+import com.bigdata.rdf.sparql.ast.service.ServiceNode;
+import com.bigdata.rdf.sparql.ast.service.closure.ClosureServiceFactory;
+import com.bigdata.rdf.store.AbstractTripleStore;
 
 public class ASTPropertyPathOptimizer extends AbstractJoinGroupOptimizer
 		implements IASTOptimizer {
@@ -383,6 +390,10 @@ public class ASTPropertyPathOptimizer extends AbstractJoinGroupOptimizer
 		 */
 		if (mod != null) {
 			
+			// Note: Only the outermost path is answered from the closure index.
+			final boolean closure = alpNode == null
+					&& isClosurePath(ctx, ppInfo, pathElt);
+			
 //			final VarNode tVarLeft = new VarNode(Var.var("tVarLeft" + i));
 			final VarNode tVarLeft = new VarNode(anonVar("-tVarLeft-"));
 			
@@ -397,7 +408,24 @@ public class ASTPropertyPathOptimizer extends AbstractJoinGroupOptimizer
                  QueryHints.PIPELINED_HASH_JOIN, pipelinedHashJoinHint);
           }
 			
-			group.addArg(getPositionOfNodeInGroup(ppNode, group),alpNode);
+			if (closure) {
+				
+				/*
+				 * Answer the path by lookups against the materialized
+				 * transitive closure of the predicate.
+				 */
+				final JoinGroupNode serviceGroup = new JoinGroupNode();
+				
+				serviceGroup.addChild(alpNode);
+				
+				group.addArg(getPositionOfNodeInGroup(ppNode, group),
+						newClosureServiceNode(ctx, serviceGroup));
+				
+			} else {
+			
+				group.addArg(getPositionOfNodeInGroup(ppNode, group),alpNode);
+				
+			}
 			
 			ppInfo = new PropertyPathInfo(tVarLeft, tVarRight, ppInfo);
 			
@@ -433,6 +461,64 @@ public class ASTPropertyPathOptimizer extends AbstractJoinGroupOptimizer
     	
     }
     
+	/**
+	 * Return <code>true</code> iff the path element is <code>p*</code> or
+	 * <code>p+</code> over a single predicate whose transitive closure is
+	 * materialized in the closure index (triples mode only).
+	 * 
+	 * @see AbstractTripleStore.Options#CLOSURE_PREDICATES
+	 */
+	protected boolean isClosurePath(final AST2BOpContext ctx,
+			final PropertyPathInfo ppInfo, final PathElt pathElt) {
+
+		final PathMod mod = pathElt.getMod();
+
+		if (mod != PathMod.ZERO_OR_MORE && mod != PathMod.ONE_OR_MORE)
+			return false;
+
+		if (!pathElt.isIRI() || ppInfo.c != null)
+			return false;
+
+		final AbstractTripleStore db = ctx.getAbstractTripleStore();
+
+		if (db.isQuads())
+			return false;
+
+		final Set<String> closurePredicates = db.getSPORelation()
+				.getClosurePredicates();
+
+		if (closurePredicates.isEmpty())
+			return false;
+
+		final ConstantNode iri = (ConstantNode) pathElt.get(0);
+
+		if (iri.getValueExpression().get().isNullIV()) {
+			// Not in the lexicon, so there is nothing to look up.
+			return false;
+		}
+
+		return iri.getValue() != null
+				&& closurePredicates.contains(iri.getValue().stringValue());
+
+	}
+
+	/**
+	 * Wrap a group in a SERVICE node for the closure index.
+	 */
+	private ServiceNode newClosureServiceNode(final AST2BOpContext ctx,
+			final JoinGroupNode group) {
+
+		@SuppressWarnings("unchecked")
+		final TermId<BigdataURI> iv = (TermId<BigdataURI>) TermId
+				.mockIV(VTE.URI);
+
+		iv.setValue(ctx.getAbstractTripleStore().getValueFactory()
+				.asValue(ClosureServiceFactory.SERVICE_KEY));
+
+		return new ServiceNode(new ConstantNode(iv), group);
+
+	}
+
 	/**
 	 * Optimize a TermNode (add a statement pattern to the group).
 	 */
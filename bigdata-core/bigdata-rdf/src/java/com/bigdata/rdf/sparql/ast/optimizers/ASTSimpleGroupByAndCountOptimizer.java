@@ -37,6 +37,7 @@ import org.apache.log4j.Logger;
 import com.bigdata.bop.BOp;
 import com.bigdata.bop.BOpUtility;
 import com.bigdata.bop.IBindingSet;
+import com.bigdata.bop.IPredicate;
 import com.bigdata.bop.aggregate.AggregateBase;
 import com.bigdata.rdf.sparql.ast.AssignmentNode;
 import com.bigdata.rdf.sparql.ast.DatasetNode;
@@ -61,6 +62,8 @@ import com.bigdata.rdf.sparql.ast.StaticAnalysis;
 import com.bigdata.rdf.sparql.ast.SubqueryRoot;
 import com.bigdata.rdf.sparql.ast.VarNode;
 import com.bigdata.rdf.sparql.ast.eval.AST2BOpContext;
+import com.bigdata.rdf.spo.ISPO;
+import com.bigdata.striterator.IKeyOrder;
 
 /**
  * Optimizes <code>
@@ -84,6 +87,14 @@ import com.bigdata.rdf.sparql.ast.eval.AST2BOpContext;
  * {@link ASTDistinctTermScanOptimizer}, i.e. if possible the subquery producing
  * the ?z bindings will be replaced by a distinct term scan in a later
  * optimization step.
+ * <p>
+ * In triples mode, when the statement pattern has no correlated variables and
+ * an index exists whose key begins with the constants of the statement pattern
+ * followed by the grouping variable, the GROUP BY is instead answered by the
+ * index alone: the statement pattern is annotated for both a distinct term scan
+ * (on the grouping variable) and a fast range count, which is evaluated by a
+ * single operator that walks the distinct groups and range counts each one.
+ * This avoids the SELECT DISTINCT subquery and the join against it.
  * 
  * @see <a href="http://trac.blazegraph.com/ticket/1059"> GROUP BY optimization
  *      using distinct-term-scan and fast-range-count</a>
@@ -208,6 +219,7 @@ public class ASTSimpleGroupByAndCountOptimizer implements IASTOptimizer {
       GraphPatternGroup<IGroupMemberNode> graphPattern; // surrounding gp
       StatementPatternNode stmtPattern = null; // the inner statement pattern
       VarNode groupingVar = null; // the variable which is grouped
+      boolean correlatedVars = false; // a variable appears more than once
 
       {
          final GroupByNode groupByNode = queryBase.getGroupBy();
@@ -273,7 +285,9 @@ public class ASTSimpleGroupByAndCountOptimizer implements IASTOptimizer {
          for (int i = 0; i < stmtPattern.arity(); i++) {
             final BOp arg = stmtPattern.get(i);
             if (arg instanceof VarNode) {
-               varNodesInStmtPattern.add((VarNode) arg);
+               if (!varNodesInStmtPattern.add((VarNode) arg)) {
+                  correlatedVars = true;
+               }
                if (i == 3) {
                   graphVarNode = (VarNode) arg;
                }
@@ -375,7 +389,43 @@ public class ASTSimpleGroupByAndCountOptimizer implements IASTOptimizer {
        * a projection for the variable introduced in O2 
        * 
        * (O4) Eliminate the group by clause
+       * 
+       * Unless the index-only form applies, in which case (O1) and (O2) are
+       * replaced by annotating the statement pattern itself.
        */
+      if (!correlatedVars && !context.isQuads()) {
+
+         final IKeyOrder<ISPO> keyOrder = ASTDistinctTermScanOptimizer
+               .getApplicableKeyOrderIfExists(stmtPattern,
+                     groupingVar.getValueExpression(), context);
+
+         if (keyOrder != null) {
+
+            if (queryBase instanceof SubqueryRoot) {
+               /*
+                * Enforce bottom-up evaluation for a sub-select. The groups
+                * must be formed over the whole triple pattern rather than
+                * once per source solution (see ASTDistinctTermScanOptimizer).
+                */
+               ((SubqueryRoot) queryBase).setRunOnce(true/* runOnce */);
+            }
+
+            stmtPattern.setDistinctTermScanVar(new VarNode(groupingVar));
+            stmtPattern.setFastRangeCount(countNodeVar);
+            stmtPattern.setQueryHint(IPredicate.Annotations.KEY_ORDER,
+                  keyOrder.toString());
+
+            // apply optimization steps (O3) and (O4)
+            projectionNode.setArg(indexOfCountNode, new AssignmentNode(
+                  new VarNode(countNodeVar), new VarNode(countNodeVar)));
+            queryBase.setGroupBy(null);
+
+            return;
+
+         }
+
+      }
+
       {
          // apply optimization step (O1)
          final SubqueryRoot selectDistinct = new SubqueryRoot(QueryType.SELECT);
@@ -0,0 +1,398 @@
+/**
+
+Copyright (C) SYSTAP, LLC DBA Blazegraph 2006-2016.  All rights reserved.
+
+Contact:
+     SYSTAP, LLC DBA Blazegraph
+     2501 Calvert ST NW #106
+     Washington, DC 20008
+     licenses@blazegraph.com
+
+This program is free software; you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation; version 2 of the License.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program; if not, write to the Free Software
+Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+/*
+ * Created on Oct 17, 2026
+ */
+
+package com.bigdata.rdf.sparql.ast.optimizers;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.log4j.Logger;
+
+import com.bigdata.bop.IBindingSet;
+import com.bigdata.bop.IVariable;
+import com.bigdata.rdf.internal.IV;
+import com.bigdata.rdf.sparql.ast.ConstantNode;
+import com.bigdata.rdf.sparql.ast.JoinGroupNode;
+import com.bigdata.rdf.sparql.ast.QueryHints;
+import com.bigdata.rdf.sparql.ast.QueryOptimizerEnum;
+import com.bigdata.rdf.sparql.ast.StatementPatternNode;
+import com.bigdata.rdf.sparql.ast.StaticAnalysis;
+import com.bigdata.rdf.sparql.ast.TermNode;
+import com.bigdata.rdf.sparql.ast.VarNode;
+import com.bigdata.rdf.sparql.ast.eval.AST2BOpContext;
+
+/**
+ * Identifies join groups whose leading statement patterns form a cyclic
+ * pattern (a triangle, a clique, etc.) and marks them for evaluation by the
+ * {@link com.bigdata.bop.rdf.join.LeapfrogTriejoinOp}. For such patterns, any
+ * plan of pairwise joins can produce intermediate results which are much
+ * larger than the output, regardless of the join order. The worst-case
+ * optimal join bounds the intermediate results by the size of the output.
+ * <p>
+ * The optimizer does not change the join order. It looks at the leading run
+ * of statement patterns in the group which can be handled by the operator
+ * (required, unfiltered, in the triples mode, with no variable used twice in
+ * the same statement pattern). If the hypergraph of the variables of those
+ * statement patterns is cyclic, the group is annotated with the order in
+ * which the operator will eliminate the variables. The query plan generator
+ * then evaluates that run of statement patterns with a single operator.
+ * <p>
+ * The optimizer only runs when {@link QueryHints#WORST_CASE_OPTIMAL_JOIN} is
+ * enabled.
+ * 
+ * @see Annotations#VARIABLE_ORDER
+ */
+public class ASTWorstCaseOptimalJoinOptimizer extends
+        AbstractJoinGroupOptimizer implements IASTOptimizer {
+
+    private static final transient Logger log = Logger
+            .getLogger(ASTWorstCaseOptimalJoinOptimizer.class);
+
+    public interface Annotations {
+
+        /**
+         * The {@link IVariable}[] giving the order in which the variables of
+         * the leading run of statement patterns will be eliminated by the
+         * {@link com.bigdata.bop.rdf.join.LeapfrogTriejoinOp}. This is set on
+         * the {@link JoinGroupNode} by the optimizer and is not present for
+         * groups which will be evaluated by pairwise joins.
+         */
+        String VARIABLE_ORDER = ASTWorstCaseOptimalJoinOptimizer.class
+                .getName() + ".variableOrder";
+
+    }
+
+    public ASTWorstCaseOptimalJoinOptimizer() {
+        super(false /* childFirst */, true /* optimizeServiceNodes */);
+    }
+
+    @Override
+    protected void optimizeJoinGroup(final AST2BOpContext ctx,
+            final StaticAnalysis sa, final IBindingSet[] bSets,
+            final JoinGroupNode group) {
+
+        if (!ctx.worstCaseOptimalJoin)
+            return;
+
+        if (QueryOptimizerEnum.Runtime.equals(group.getQueryOptimizer()))
+            return;
+
+        final List<StatementPatternNode> run = getLeadingRun(group, 0, ctx);
+
+        if (!isCyclic(run))
+            return;
+
+        final IVariable<?>[] order = getVariableOrder(run);
+
+        if (log.isInfoEnabled())
+            log.info("Cyclic join group: order=" + Arrays.toString(order)
+                    + ", run=" + run);
+
+        group.setProperty(Annotations.VARIABLE_ORDER, order);
+
+    }
+
+    /**
+     * Return the longest run of statement patterns starting at the given
+     * index in the group which may be evaluated by the
+     * {@link com.bigdata.bop.rdf.join.LeapfrogTriejoinOp}.
+     * 
+     * @param group
+     *            The group.
+     * @param start
+     *            The index of the first child to consider.
+     * @param ctx
+     *            The evaluation context.
+     */
+    public static List<StatementPatternNode> getLeadingRun(
+            final JoinGroupNode group, final int start,
+            final AST2BOpContext ctx) {
+
+        final List<StatementPatternNode> run = new ArrayList<StatementPatternNode>();
+
+        if (ctx.isQuads()) {
+            // Only the triples (and SIDs) modes are supported.
+            return run;
+        }
+
+        for (int i = start; i < group.arity(); i++) {
+
+            if (!(group.get(i) instanceof StatementPatternNode))
+                break;
+
+            final StatementPatternNode sp = (StatementPatternNode) group.get(i);
+
+            if (!isEligible(sp))
+                break;
+
+            run.add(sp);
+
+        }
+
+        return run;
+
+    }
+
+    /**
+     * Return <code>true</code> iff the statement pattern may be evaluated by
+     * the {@link com.bigdata.bop.rdf.join.LeapfrogTriejoinOp}.
+     */
+    private static boolean isEligible(final StatementPatternNode sp) {
+
+        if (sp.isOptional())
+            return false;
+
+        if (sp.sid() != null || sp.getRange() != null)
+            return false;
+
+        final List<?> filters = sp.getAttachedJoinFilters();
+
+        if (filters != null && !filters.isEmpty())
+            return false;
+
+        final Set<IVariable<?>> vars = new LinkedHashSet<IVariable<?>>();
+
+        for (TermNode t : new TermNode[] { sp.s(), sp.p(), sp.o() }) {
+
+            if (t instanceof VarNode) {
+
+                if (!vars.add(((VarNode) t).getValueExpression())) {
+                    // Variable used more than once.
+                    return false;
+                }
+
+            } else if (t instanceof ConstantNode) {
+
+                @SuppressWarnings("rawtypes")
+                final IV iv = ((ConstantNode) t).getValueExpression().get();
+
+                if (iv == null || iv.isNullIV()) {
+                    // Not a known term.
+                    return false;
+                }
+
+            } else {
+
+                return false;
+
+            }
+
+        }
+
+        return true;
+
+    }
+
+    /**
+     * Return the distinct variables used by a statement pattern.
+     */
+    private static Set<IVariable<?>> getVars(final StatementPatternNode sp) {
+
+        final Set<IVariable<?>> vars = new LinkedHashSet<IVariable<?>>();
+
+        for (TermNode t : new TermNode[] { sp.s(), sp.p(), sp.o() }) {
+
+            if (t instanceof VarNode)
+                vars.add(((VarNode) t).getValueExpression());
+
+        }
+
+        return vars;
+
+    }
+
+    /**
+     * Return <code>true</code> iff the hypergraph whose edges are the sets of
+     * variables used by each statement pattern is cyclic. This uses the GYO
+     * reduction: a variable which appears in only one edge is removed and an
+     * edge which is contained in another edge is removed until neither rule
+     * applies. The hypergraph is (alpha-)acyclic iff nothing remains.
+     */
+    public static boolean isCyclic(final List<StatementPatternNode> sps) {
+
+        if (sps.size() < 3)
+            return false;
+
+        final List<Set<IVariable<?>>> edges = new ArrayList<Set<IVariable<?>>>();
+
+        for (StatementPatternNode sp : sps) {
+
+            final Set<IVariable<?>> vars = getVars(sp);
+
+            if (!vars.isEmpty())
+                edges.add(vars);
+
+        }
+
+        boolean modified = true;
+
+        while (modified) {
+
+            modified = false;
+
+            // Remove variables which appear in only one edge.
+            final Map<IVariable<?>, Integer> counts = new LinkedHashMap<IVariable<?>, Integer>();
+
+            for (Set<IVariable<?>> e : edges) {
+
+                for (IVariable<?> v : e) {
+
+                    final Integer n = counts.get(v);
+
+                    counts.put(v, n == null ? 1 : n + 1);
+
+                }
+
+            }
+
+            for (Set<IVariable<?>> e : edges) {
+
+                for (Map.Entry<IVariable<?>, Integer> c : counts.entrySet()) {
+
+                    if (c.getValue() == 1 && e.remove(c.getKey()))
+                        modified = true;
+
+                }
+
+            }
+
+            // Remove edges which are empty or contained in another edge.
+            for (int i = 0; i < edges.size(); i++) {
+
+                final Set<IVariable<?>> e = edges.get(i);
+
+                boolean remove = e.isEmpty();
+
+                for (int j = 0; j < edges.size() && !remove; j++) {
+
+                    if (i != j && edges.get(j).containsAll(e))
+                        remove = true;
+
+                }
+
+                if (remove) {
+
+                    edges.remove(i--);
+
+                    modified = true;
+
+                }
+
+            }
+
+        }
+
+        return !edges.isEmpty();
+
+    }
+
+    /**
+     * Return the order in which the variables will be eliminated. The first
+     * variable is the one used by the most statement patterns. Each following
+     * variable is, by preference, one which shares a statement pattern with a
+     * variable already in the order, again choosing the variable used by the
+     * most statement patterns. Ties are broken by the order in which the
+     * variables first appear.
+     */
+    public static IVariable<?>[] getVariableOrder(
+            final List<StatementPatternNode> sps) {
+
+        // #of statement patterns using each variable.
+        final Map<IVariable<?>, Integer> degree = new LinkedHashMap<IVariable<?>, Integer>();
+
+        for (StatementPatternNode sp : sps) {
+
+            for (IVariable<?> v : getVars(sp)) {
+
+                final Integer n = degree.get(v);
+
+                degree.put(v, n == null ? 1 : n + 1);
+
+            }
+
+        }
+
+        final List<IVariable<?>> order = new ArrayList<IVariable<?>>();
+
+        while (order.size() < degree.size()) {
+
+            IVariable<?> best = null;
+
+            boolean bestConnected = false;
+
+            for (Map.Entry<IVariable<?>, Integer> e : degree.entrySet()) {
+
+                final IVariable<?> v = e.getKey();
+
+                if (order.contains(v))
+                    continue;
+
+                boolean connected = false;
+
+                for (StatementPatternNode sp : sps) {
+
+                    final Set<IVariable<?>> vars = getVars(sp);
+
+                    if (!vars.contains(v))
+                        continue;
+
+                    for (IVariable<?> u : order) {
+
+                        if (vars.contains(u))
+                            connected = true;
+
+                    }
+
+                }
+
+                if (best == null
+                        || (connected && !bestConnected)
+                        || (connected == bestConnected && e.getValue() > degree
+                                .get(best))) {
+
+                    best = v;
+
+                    bestConnected = connected;
+
+                }
+
+            }
+
+            order.add(best);
+
+        }
+
+        return order.toArray(new IVariable<?>[order.size()]);
+
+    }
+
+}
@@ -451,6 +451,14 @@ public class DefaultOptimizerList extends ASTOptimizerList {
          */
         add(new ASTFlattenJoinGroupsOptimizer());
 
+        /**
+         * Rewrites a STRSTARTS or anchored REGEX FILTER into a scan of the
+         * TERM2ID index for the matching literals (disabled by default).
+         * 
+         * @see QueryHints#PREFIX_SCAN
+         */
+        add(new ASTLiteralPrefixScanOptimizer());
+
         /**
          * Rewrites the WHERE clause of each query by lifting out any
          * {@link ServiceNode}s into a named subquery. Rewrites the WHERE clause
@@ -612,6 +620,20 @@ public class DefaultOptimizerList extends ASTOptimizerList {
          * StatementPatternNodes.
          */
         add(new ASTAttachJoinFiltersOptimizer());
+
+        /**
+         * Marks join groups whose leading statement patterns are cyclic for
+         * evaluation by a worst-case optimal join. This does not change the
+         * join order (and must run after the join filters are attached).
+         */
+        add(new ASTWorstCaseOptimalJoinOptimizer());
+
+        /**
+         * Marks top-level join groups whose leading statement patterns share
+         * a variable and are all large for evaluation by a merge join over
+         * ordered index scans. This does not change the join order.
+         */
+        add(new ASTIndexMergeJoinOptimizer());
         
         /**
          * Rewrite each join group having two or more complex optionals as named
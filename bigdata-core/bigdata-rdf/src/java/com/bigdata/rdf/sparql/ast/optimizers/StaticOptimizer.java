@@ -4,6 +4,7 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.LinkedHashSet;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
 
@@ -12,6 +13,8 @@ import org.apache.log4j.Logger;
 import com.bigdata.bop.IVariable;
 import com.bigdata.bop.joinGraph.fast.DefaultEvaluationPlan2;
 import com.bigdata.journal.ITx;
+import com.bigdata.rdf.internal.IV;
+import com.bigdata.rdf.sparql.ast.ConstantNode;
 import com.bigdata.rdf.sparql.ast.IBindingProducerNode;
 import com.bigdata.rdf.sparql.ast.IReorderableNode;
 import com.bigdata.rdf.sparql.ast.QueryHints;
@@ -21,6 +24,8 @@ import com.bigdata.rdf.sparql.ast.StaticAnalysis;
 import com.bigdata.rdf.sparql.ast.VarNode;
 import com.bigdata.rdf.sparql.ast.eval.AST2BOpContext;
 import com.bigdata.rdf.sparql.ast.optimizers.ASTStaticJoinOptimizer.Annotations;
+import com.bigdata.rdf.spo.CharacteristicSetStatistics;
+import com.bigdata.rdf.store.AbstractTripleStore;
 
 /**
  * This is the old static optimizer code, taken directly from
@@ -103,20 +108,29 @@ public final class StaticOptimizer {
 	 */
 	private final double optimistic;
 
+	/**
+	 * The characteristic set statistics for the KB (optional).
+	 * 
+	 * @see AbstractTripleStore.Options#STATISTICS
+	 */
+	private final CharacteristicSetStatistics stats;
+
 	public StaticOptimizer(StaticOptimizer parent, List<IReorderableNode> nodes) {
-		this(parent.sa, parent.ancestry, nodes, parent.optimistic);
+		this(parent.sa, parent.ancestry, nodes, parent.optimistic,
+				parent.stats);
 	}
 
 	StaticOptimizer(final QueryRoot queryRoot, final AST2BOpContext context,
 			final IBindingProducerNode[] ancestry,
 			final List<IReorderableNode> nodes, final double optimistic) {
 		this(new StaticAnalysis(queryRoot, context), ancestry, nodes,
-				optimistic);
+				optimistic, getStatistics(context));
 	}
 
 	private StaticOptimizer(final StaticAnalysis sa,
 			final IBindingProducerNode[] ancestry,
-			final List<IReorderableNode> nodes, final double optimistic) {
+			final List<IReorderableNode> nodes, final double optimistic,
+			final CharacteristicSetStatistics stats) {
 
 		if (ancestry == null)
 			throw new IllegalArgumentException();
@@ -149,6 +163,8 @@ public final class StaticOptimizer {
 
 		this.optimistic = optimistic;
 
+		this.stats = stats;
+
 		this.cardinality = calc();
 
 		if (ASTStaticJoinOptimizer.log.isDebugEnabled()) {
@@ -663,14 +679,194 @@ public final class StaticOptimizer {
 				 * would cause us to suffer a very bad MAX, then choose based on
 				 * the MAX to avoid paying that penalty."
 				 */
-				joinCardinality = (long) ((long) (optimistic * Math.min(
-						d1.getCardinality(), d2.getCardinality())) + ((1.0d - optimistic) * Math
-						.max(d1.getCardinality(), d2.getCardinality())));
+				long est = estimateJoinCardinality(d1, d2);
+				if (est == -1L && d1 instanceof Tail)
+					est = estimateJoinCardinality(d2, d1);
+				if (est != -1L) {
+					joinCardinality = est;
+				} else {
+					joinCardinality = (long) ((long) (optimistic * Math.min(
+							d1.getCardinality(), d2.getCardinality())) + ((1.0d - optimistic) * Math
+							.max(d1.getCardinality(), d2.getCardinality())));
+				}
 			}
 		}
 		return joinCardinality;
 	}
 
+	/**
+	 * Return the characteristic set statistics for the KB against which the
+	 * query is being evaluated, or <code>null</code> if they are not
+	 * available.
+	 */
+	private static CharacteristicSetStatistics getStatistics(
+			final AST2BOpContext context) {
+		if (context == null)
+			return null;
+		final AbstractTripleStore db = context.getAbstractTripleStore();
+		if (db == null)
+			return null;
+		return db.getSPORelation().getStatistics();
+	}
+
+	/**
+	 * Estimate the cardinality of a join from the characteristic set
+	 * statistics. Three cases are recognized, each relating the statement
+	 * pattern for <i>d2</i> to some statement pattern already in <i>d1</i>:
+	 * <ul>
+	 * <li>Both share the same subject variable (a star). The cardinality of
+	 * <i>d1</i> is scaled by the ratio of the estimated star cardinality with
+	 * and without the predicate of <i>d2</i>.</li>
+	 * <li>The subject of <i>d2</i> is the object of <code>(x p1 v)</code> in
+	 * <i>d1</i>. The cardinality of <i>d1</i> is scaled by the average #of
+	 * <code>p2</code> statements reached from a <code>p1</code> statement.</li>
+	 * <li>The object of <i>d2</i> is the subject of <code>(v p1 y)</code> in
+	 * <i>d1</i>. The cardinality of <i>d1</i> is scaled by the average #of
+	 * <code>p2</code> statements leading into a <code>p1</code> statement.</li>
+	 * </ul>
+	 * Only statement patterns with a constant predicate are considered.
+	 * 
+	 * @param d1
+	 *            the first join dimension
+	 * @param d2
+	 *            the second join dimension, which must be a {@link Tail}.
+	 * 
+	 * @return The estimated join cardinality -or- <code>-1L</code> if the
+	 *         statistics do not apply.
+	 */
+	private long estimateJoinCardinality(final IJoinDimension d1,
+			final IJoinDimension d2) {
+		if (stats == null || !(d2 instanceof Tail))
+			return -1L;
+		final int t2 = ((Tail) d2).getTailIndex();
+		final StatementPatternNode sp2 = getStatementPattern(t2);
+		if (sp2 == null)
+			return -1L;
+		final IV p2 = getPredicate(sp2);
+		final double sel2 = selectivity(t2, p2);
+		final String s2 = getVarName(sp2.s());
+		final String o2 = getVarName(sp2.o());
+		final List<Tail> tails = new LinkedList<Tail>();
+		collectTails(d1, tails);
+		final double c1 = d1.getCardinality();
+		if (s2 != null) {
+			// Star on a common subject.
+			final List<Tail> star = new LinkedList<Tail>();
+			for (Tail t : tails) {
+				if (s2.equals(getVarName(getStatementPattern(
+						t.getTailIndex()).s())))
+					star.add(t);
+			}
+			if (!star.isEmpty()) {
+				final IV[] preds = new IV[star.size() + 1];
+				final double[] sel = new double[star.size() + 1];
+				int i = 0;
+				for (Tail t : star) {
+					preds[i] = getPredicate(getStatementPattern(t
+							.getTailIndex()));
+					sel[i] = selectivity(t.getTailIndex(), preds[i]);
+					i++;
+				}
+				preds[i] = p2;
+				sel[i] = sel2;
+				final double before = stats.estimateStar(
+						Arrays.copyOf(preds, i), Arrays.copyOf(sel, i));
+				if (before > 0d) {
+					final double after = stats.estimateStar(preds, sel);
+					return clamp(c1 * after / before);
+				}
+			}
+			// Object of (x p1 v) joins the subject of (v p2 y).
+			for (Tail t : tails) {
+				final StatementPatternNode sp1 = getStatementPattern(t
+						.getTailIndex());
+				if (s2.equals(getVarName(sp1.o()))) {
+					final IV p1 = getPredicate(sp1);
+					final long n = stats.getPredicateCount(p1);
+					if (n > 0L)
+						return clamp(c1 * stats.getPairCount(p1, p2) / n
+								* sel2);
+				}
+			}
+		}
+		if (o2 != null) {
+			// Object of (x p2 v) joins the subject of (v p1 y).
+			for (Tail t : tails) {
+				final StatementPatternNode sp1 = getStatementPattern(t
+						.getTailIndex());
+				if (o2.equals(getVarName(sp1.s()))) {
+					final IV p1 = getPredicate(sp1);
+					final long n = stats.getPredicateCount(p1);
+					if (n > 0L)
+						return clamp(c1 * stats.getPairCount(p2, p1) / n
+								* sel2);
+				}
+			}
+		}
+		return -1L;
+	}
+
+	/**
+	 * Collect the tails of a join dimension for which the statistics apply.
+	 */
+	private void collectTails(final IJoinDimension d, final List<Tail> tails) {
+		if (d instanceof Join) {
+			collectTails(((Join) d).getD1(), tails);
+			collectTails(((Join) d).getD2(), tails);
+		} else if (d instanceof Tail) {
+			if (getStatementPattern(((Tail) d).getTailIndex()) != null)
+				tails.add((Tail) d);
+		}
+	}
+
+	/**
+	 * Return the required {@link StatementPatternNode} having a constant
+	 * predicate for the tail -or- <code>null</code>.
+	 */
+	private StatementPatternNode getStatementPattern(final int tailIndex) {
+		final IReorderableNode node = nodes.get(tailIndex);
+		if (!(node instanceof StatementPatternNode))
+			return null;
+		final StatementPatternNode sp = (StatementPatternNode) node;
+		if (sp.isOptional() || getPredicate(sp) == null)
+			return null;
+		return sp;
+	}
+
+	private static IV getPredicate(final StatementPatternNode sp) {
+		if (!(sp.p() instanceof ConstantNode))
+			return null;
+		final IV p = ((ConstantNode) sp.p()).getValueExpression().get();
+		if (p == null || p.isNullIV())
+			return null;
+		return p;
+	}
+
+	private static String getVarName(final Object t) {
+		if (!(t instanceof VarNode))
+			return null;
+		return ((VarNode) t).getValueExpression().getName();
+	}
+
+	/**
+	 * The selectivity of a tail with respect to its predicate, e.g., less than
+	 * ONE if the subject or object is bound.
+	 */
+	private double selectivity(final int tailIndex, final IV p) {
+		final long n = stats.getPredicateCount(p);
+		if (n == 0L)
+			return 1d;
+		return Math.min(1d, rangeCount(tailIndex) / (double) n);
+	}
+
+	private static long clamp(final double est) {
+		if (est < 1d)
+			return 1L;
+		if (est >= NO_SHARED_VARS)
+			return NO_SHARED_VARS - 1;
+		return (long) est;
+	}
+
 	/**
 	 * Get the named variables for a given tail. Is there a better way to do
 	 * this?
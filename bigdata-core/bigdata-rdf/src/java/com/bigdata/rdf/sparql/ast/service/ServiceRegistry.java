@@ -41,12 +41,15 @@ import com.bigdata.rdf.graph.impl.bd.GASService;
 import com.bigdata.rdf.sail.RDRHistoryServiceFactory;
 import com.bigdata.rdf.sparql.ast.QueryHints;
 import com.bigdata.rdf.sparql.ast.cache.DescribeServiceFactory;
+import com.bigdata.rdf.sparql.ast.cache.ResultCache;
+import com.bigdata.rdf.sparql.ast.cache.ResultCacheServiceFactory;
 import com.bigdata.rdf.sparql.ast.eval.GeoSpatialServiceFactory;
 import com.bigdata.rdf.sparql.ast.eval.SampleServiceFactory;
 import com.bigdata.rdf.sparql.ast.eval.SearchInSearchServiceFactory;
 import com.bigdata.rdf.sparql.ast.eval.SearchServiceFactory;
 import com.bigdata.rdf.sparql.ast.eval.SliceServiceFactory;
 import com.bigdata.rdf.sparql.ast.eval.ValuesServiceFactory;
+import com.bigdata.rdf.sparql.ast.service.closure.ClosureServiceFactory;
 import com.bigdata.rdf.sparql.ast.service.history.HistoryServiceFactory;
 import com.bigdata.rdf.store.AbstractTripleStore;
 import com.bigdata.rdf.store.BD;
@@ -148,6 +151,14 @@ public class ServiceRegistry {
 
         }
 
+        if (ResultCache.isEnabled()) {
+
+            // Invalidation of the SPARQL result cache.
+            add(new URIImpl(BD.NAMESPACE + "resultCache"),
+                    new ResultCacheServiceFactory());
+
+        }
+
         if (true) {
 
             /**
@@ -169,6 +180,13 @@ public class ServiceRegistry {
 
         // The Gather-Apply-Scatter RDF Graph Mining service.
         add(GASService.Options.SERVICE_KEY, new GASService());
+
+        if (ClosureServiceFactory.isEnabled()) {
+
+            // The materialized transitive closure service.
+            add(ClosureServiceFactory.SERVICE_KEY, new ClosureServiceFactory());
+
+        }
         
     }
 
@@ -0,0 +1,326 @@
+/**
+
+Copyright (C) SYSTAP, LLC DBA Blazegraph 2006-2016.  All rights reserved.
+
+Contact:
+     SYSTAP, LLC DBA Blazegraph
+     2501 Calvert ST NW #106
+     Washington, DC 20008
+     licenses@blazegraph.com
+
+This program is free software; you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation; version 2 of the License.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program; if not, write to the Free Software
+Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+
+package com.bigdata.rdf.sparql.ast.service.closure;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.log4j.Logger;
+
+import com.bigdata.btree.IIndex;
+import com.bigdata.btree.ITuple;
+import com.bigdata.btree.keys.IKeyBuilder;
+import com.bigdata.btree.keys.KeyBuilder;
+import com.bigdata.btree.keys.SuccessorUtil;
+import com.bigdata.rdf.internal.IV;
+import com.bigdata.rdf.internal.IVUtility;
+import com.bigdata.rdf.spo.ISPO;
+import com.bigdata.rdf.spo.SPORelation;
+import com.bigdata.rdf.store.AbstractTripleStore;
+import com.bigdata.striterator.IChunkedOrderedIterator;
+
+import cutthecrap.utils.striterators.Resolver;
+import cutthecrap.utils.striterators.Striterator;
+
+/**
+ * Helper class for reading and maintaining the materialized transitive closure
+ * of a set of predicates (the {@link SPORelation#getClosureIndex() closure
+ * index}).
+ * <p>
+ * For each pair of nodes <code>(x,y)</code> such that <code>y</code> is
+ * reachable from <code>x</code> by one or more <code>p</code> edges, the index
+ * holds two keys: <code>[FORWARD, p, x, y]</code> and
+ * <code>[REVERSE, p, y, x]</code>. There are no values. Both directions are
+ * therefore answered by a prefix scan.
+ * <p>
+ * The index is maintained by recomputing the closure of each source whose
+ * closure might have changed. When an edge <code>(u,v)</code> is added or
+ * removed, those sources are <code>u</code> and every node which reached
+ * <code>u</code> before the change, which is read from the index itself before
+ * it is updated.
+ * <p>
+ * This class is not thread-safe.
+ * 
+ * @see ClosureServiceFactory
+ */
+public class ClosureIndex {
+
+    private static final transient Logger log = Logger
+            .getLogger(ClosureIndex.class);
+
+    /**
+     * The key prefix for the <code>[p, x, y]</code> keys.
+     */
+    private static final byte FORWARD = 0;
+
+    /**
+     * The key prefix for the <code>[p, y, x]</code> keys.
+     */
+    private static final byte REVERSE = 1;
+
+    private final IIndex ndx;
+
+    private final IKeyBuilder keyBuilder;
+
+    /**
+     * @param ndx
+     *            The closure index.
+     */
+    public ClosureIndex(final IIndex ndx) {
+
+        if (ndx == null)
+            throw new IllegalArgumentException();
+
+        this.ndx = ndx;
+
+        this.keyBuilder = KeyBuilder.newInstance();
+
+    }
+
+    @SuppressWarnings("rawtypes")
+    private byte[] key(final byte dir, final IV... ivs) {
+
+        keyBuilder.reset().append(dir);
+
+        for (IV iv : ivs) {
+
+            IVUtility.encode(keyBuilder, iv);
+
+        }
+
+        return keyBuilder.getKey();
+
+    }
+
+    /**
+     * Return <code>true</code> iff <i>to</i> is reachable from <i>from</i> by
+     * one or more <i>p</i> edges.
+     */
+    @SuppressWarnings("rawtypes")
+    public boolean isReachable(final IV p, final IV from, final IV to) {
+
+        return ndx.contains(key(FORWARD, p, from, to));
+
+    }
+
+    /**
+     * Visit the nodes reachable from <i>node</i> by one or more <i>p</i> edges
+     * (<i>forward</i>) -or- the nodes from which <i>node</i> is reachable by
+     * one or more <i>p</i> edges (<i>reverse</i>).
+     */
+    @SuppressWarnings({ "rawtypes", "unchecked" })
+    public Iterator<IV> getReachable(final IV p, final IV node,
+            final boolean forward) {
+
+        final byte[] fromKey = key(forward ? FORWARD : REVERSE, p, node);
+
+        final byte[] toKey = SuccessorUtil.successor(fromKey.clone());
+
+        return new Striterator(ndx.rangeIterator(fromKey, toKey))
+                .addFilter(new Resolver() {
+                    private static final long serialVersionUID = 1L;
+
+                    @Override
+                    protected Object resolve(final Object obj) {
+                        return IVUtility.decode(((ITuple) obj).getKey(),
+                                1/* offset */, 3/* numTerms */)[2];
+                    }
+                });
+
+    }
+
+    /**
+     * Visit each pair <code>[x,y]</code> such that <code>y</code> is
+     * reachable from <code>x</code> by one or more <i>p</i> edges.
+     */
+    @SuppressWarnings({ "rawtypes", "unchecked" })
+    public Iterator<IV[]> getPairs(final IV p) {
+
+        final byte[] fromKey = key(FORWARD, p);
+
+        final byte[] toKey = SuccessorUtil.successor(fromKey.clone());
+
+        return new Striterator(ndx.rangeIterator(fromKey, toKey))
+                .addFilter(new Resolver() {
+                    private static final long serialVersionUID = 1L;
+
+                    @Override
+                    protected Object resolve(final Object obj) {
+                        final IV[] a = IVUtility.decode(
+                                ((ITuple) obj).getKey(), 1/* offset */, 3/* numTerms */);
+                        return new IV[] { a[1], a[2] };
+                    }
+                });
+
+    }
+
+    /**
+     * Bring the closure of <i>p</i> up to date after the statements using
+     * <i>p</i> whose subjects are given have been added or removed.
+     * 
+     * @param db
+     *            The KB, which must already reflect the change.
+     * @param p
+     *            The predicate.
+     * @param subjects
+     *            The subjects of the added or removed statements.
+     * 
+     * @return The #of sources whose closure was recomputed.
+     */
+    @SuppressWarnings("rawtypes")
+    public int update(final AbstractTripleStore db, final IV p,
+            final Collection<IV> subjects) {
+
+        /*
+         * Note: The sources MUST be collected before the index is modified
+         * since they are read from the old closure.
+         */
+        final Set<IV> sources = new LinkedHashSet<IV>();
+
+        for (IV s : subjects) {
+
+            sources.add(s);
+
+            final Iterator<IV> itr = getReachable(p, s, false/* forward */);
+
+            while (itr.hasNext()) {
+
+                sources.add(itr.next());
+
+            }
+
+        }
+
+        for (IV s : sources) {
+
+            setReachable(p, s, closure(db, p, s));
+
+        }
+
+        if (log.isInfoEnabled())
+            log.info("p=" + p + ", #subjects=" + subjects.size()
+                    + ", #sources=" + sources.size());
+
+        return sources.size();
+
+    }
+
+    /**
+     * Replace the set of nodes reachable from <i>from</i>.
+     */
+    @SuppressWarnings("rawtypes")
+    private void setReachable(final IV p, final IV from, final Set<IV> targets) {
+
+        final List<IV> removed = new ArrayList<IV>();
+
+        final Set<IV> added = new LinkedHashSet<IV>(targets);
+
+        final Iterator<IV> itr = getReachable(p, from, true/* forward */);
+
+        while (itr.hasNext()) {
+
+            final IV to = itr.next();
+
+            if (!added.remove(to)) {
+
+                removed.add(to);
+
+            }
+
+        }
+
+        for (IV to : removed) {
+
+            ndx.remove(key(FORWARD, p, from, to));
+
+            ndx.remove(key(REVERSE, p, to, from));
+
+        }
+
+        for (IV to : added) {
+
+            ndx.insert(key(FORWARD, p, from, to), null/* val */);
+
+            ndx.insert(key(REVERSE, p, to, from), null/* val */);
+
+        }
+
+    }
+
+    /**
+     * Compute the nodes reachable from <i>from</i> by one or more <i>p</i>
+     * edges using a breadth first search over the statement indices.
+     */
+    @SuppressWarnings("rawtypes")
+    static Set<IV> closure(final AbstractTripleStore db, final IV p,
+            final IV from) {
+
+        final Set<IV> visited = new LinkedHashSet<IV>();
+
+        List<IV> frontier = new ArrayList<IV>();
+
+        frontier.add(from);
+
+        while (!frontier.isEmpty()) {
+
+            final List<IV> next = new ArrayList<IV>();
+
+            for (IV s : frontier) {
+
+                final IChunkedOrderedIterator<ISPO> itr = db.getAccessPath(s,
+                        p, null/* o */).iterator();
+
+                try {
+
+                    while (itr.hasNext()) {
+
+                        final IV o = itr.next().o();
+
+                        if (visited.add(o))
+                            next.add(o);
+
+                    }
+
+                } finally {
+
+                    itr.close();
+
+                }
+
+            }
+
+            frontier = next;
+
+        }
+
+        return visited;
+
+    }
+
+}
@@ -0,0 +1,644 @@
+/**
+
+Copyright (C) SYSTAP, LLC DBA Blazegraph 2006-2016.  All rights reserved.
+
+Contact:
+     SYSTAP, LLC DBA Blazegraph
+     2501 Calvert ST NW #106
+     Washington, DC 20008
+     licenses@blazegraph.com
+
+This program is free software; you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation; version 2 of the License.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program; if not, write to the Free Software
+Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+
+package com.bigdata.rdf.sparql.ast.service.closure;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.log4j.Logger;
+import org.openrdf.model.URI;
+import org.openrdf.model.impl.URIImpl;
+
+import com.bigdata.bop.Constant;
+import com.bigdata.bop.IBindingSet;
+import com.bigdata.bop.IConstant;
+import com.bigdata.bop.IVariable;
+import com.bigdata.bop.bindingSet.ListBindingSet;
+import com.bigdata.btree.IIndex;
+import com.bigdata.rdf.changesets.IChangeLog;
+import com.bigdata.rdf.changesets.IChangeRecord;
+import com.bigdata.rdf.internal.IV;
+import com.bigdata.rdf.model.BigdataValue;
+import com.bigdata.rdf.sail.BigdataSail.BigdataSailConnection;
+import com.bigdata.rdf.sparql.ast.ArbitraryLengthPathNode;
+import com.bigdata.rdf.sparql.ast.GraphPatternGroup;
+import com.bigdata.rdf.sparql.ast.IGroupMemberNode;
+import com.bigdata.rdf.sparql.ast.StatementPatternNode;
+import com.bigdata.rdf.sparql.ast.TermNode;
+import com.bigdata.rdf.sparql.ast.eval.CustomServiceFactoryBase;
+import com.bigdata.rdf.sparql.ast.service.BigdataNativeServiceOptions;
+import com.bigdata.rdf.sparql.ast.service.BigdataServiceCall;
+import com.bigdata.rdf.sparql.ast.service.CustomServiceFactory;
+import com.bigdata.rdf.sparql.ast.service.IServiceOptions;
+import com.bigdata.rdf.sparql.ast.service.ServiceCallCreateParams;
+import com.bigdata.rdf.sparql.ast.service.ServiceNode;
+import com.bigdata.rdf.sparql.ast.service.ServiceRegistry;
+import com.bigdata.rdf.spo.ISPO;
+import com.bigdata.rdf.spo.SPORelation;
+import com.bigdata.rdf.store.AbstractTripleStore;
+import com.bigdata.rdf.store.BD;
+import com.bigdata.relation.accesspath.ThickCloseableIterator;
+
+import cutthecrap.utils.striterators.ICloseableIterator;
+
+/**
+ * This service answers <code>p*</code> and <code>p+</code> property paths from
+ * the materialized transitive closure of <code>p</code> (see
+ * {@link ClosureIndex}) and tracks KB updates via an {@link IChangeLog} in order
+ * to maintain that closure.
+ * <p>
+ * The service is not intended to be invoked directly. The
+ * {@link com.bigdata.rdf.sparql.ast.optimizers.ASTPropertyPathOptimizer}
+ * wraps each {@link ArbitraryLengthPathNode} over a single
+ * {@link SPORelation#getClosurePredicates() closure predicate} in a SERVICE
+ * node for this service:
+ * 
+ * <pre>
+ * SERVICE bd:closure {
+ *   ALP(left, right, lowerBound, upperBound) {
+ *     tVarLeft p tVarRight .
+ *   }
+ * }
+ * </pre>
+ * 
+ * Note: The closure is only maintained for updates made through a
+ * {@link BigdataSailConnection}.
+ * 
+ * @see AbstractTripleStore.Options#CLOSURE_PREDICATES
+ */
+public class ClosureServiceFactory extends CustomServiceFactoryBase {
+
+    static private transient final Logger log = Logger
+            .getLogger(ClosureServiceFactory.class);
+
+    /**
+     * Options understood by this service.
+     */
+    public interface Options {
+
+        /**
+         * When <code>true</code> the service is registered with the
+         * {@link ServiceRegistry} (default {@value #DEFAULT_ENABLED}). This must
+         * be enabled in each JVM which opens a KB having
+         * {@link AbstractTripleStore.Options#CLOSURE_PREDICATES} since the
+         * closure index is only maintained by this service.
+         * <p>
+         * Note: This option is read once, when the
+         * {@link ClosureServiceFactory} class is loaded.
+         */
+        String ENABLED = ClosureServiceFactory.class.getName() + ".enabled";
+
+        String DEFAULT_ENABLED = "false";
+
+    }
+
+    /**
+     * The value of {@link Options#ENABLED}.
+     */
+    private static final boolean enabled = Boolean.valueOf(System.getProperty(
+            Options.ENABLED, Options.DEFAULT_ENABLED));
+
+    /**
+     * Return <code>true</code> iff the service is enabled (see
+     * {@link Options#ENABLED}).
+     */
+    static public boolean isEnabled() {
+
+        return enabled;
+
+    }
+
+    /**
+     * Return <code>true</code> iff a {@link ClosureServiceFactory} is
+     * registered with the {@link ServiceRegistry}, in which case it will
+     * maintain the closure index for each connection.
+     */
+    static public boolean isRegistered() {
+
+        final Iterator<CustomServiceFactory> itr = ServiceRegistry
+                .getInstance().customServices();
+
+        while (itr.hasNext()) {
+
+            if (itr.next() instanceof ClosureServiceFactory)
+                return true;
+
+        }
+
+        return false;
+
+    }
+
+    /**
+     * The URI service key.
+     */
+    public static final URI SERVICE_KEY = new URIImpl(BD.NAMESPACE + "closure");
+
+    private final BigdataNativeServiceOptions serviceOptions;
+
+    public ClosureServiceFactory() {
+
+        serviceOptions = new BigdataNativeServiceOptions();
+
+    }
+
+    @Override
+    public IServiceOptions getServiceOptions() {
+
+        return serviceOptions;
+
+    }
+
+    @Override
+    public BigdataServiceCall create(final ServiceCallCreateParams params) {
+
+        final AbstractTripleStore store = params.getTripleStore();
+
+        final ArbitraryLengthPathNode alpNode = verifyGraphPattern(params
+                .getServiceNode().getGraphPattern());
+
+        final StatementPatternNode sp = (StatementPatternNode) alpNode
+                .subgroup().get(0);
+
+        return new ClosureCall(store, serviceOptions, alpNode.left(),
+                alpNode.right(), (IV<?, ?>) sp.p().getValueExpression().get(),
+                alpNode.lowerBound());
+
+    }
+
+    /**
+     * The service would like the ends of the path to be bound so that it can
+     * answer them by a point lookup.
+     */
+    @Override
+    public Set<IVariable<?>> getDesiredBound(final ServiceNode serviceNode) {
+
+        final Set<IVariable<?>> vars = new HashSet<IVariable<?>>();
+
+        for (IGroupMemberNode child : serviceNode.getGraphPattern()) {
+
+            if (child instanceof ArbitraryLengthPathNode) {
+
+                final ArbitraryLengthPathNode alpNode = (ArbitraryLengthPathNode) child;
+
+                if (alpNode.left().isVariable())
+                    vars.add((IVariable<?>) alpNode.left().getValueExpression());
+
+                if (alpNode.right().isVariable())
+                    vars.add((IVariable<?>) alpNode.right().getValueExpression());
+
+            }
+
+        }
+
+        return vars;
+
+    }
+
+    /**
+     * Verify that the group consists of a single
+     * {@link ArbitraryLengthPathNode} without an upper bound whose subgroup is
+     * a single statement pattern with a constant predicate linking the
+     * transitivity variables.
+     */
+    static ArbitraryLengthPathNode verifyGraphPattern(
+            final GraphPatternGroup<IGroupMemberNode> group) {
+
+        if (group.size() != 1
+                || !(group.get(0) instanceof ArbitraryLengthPathNode)) {
+
+            throw new RuntimeException(
+                    "group must contain a single arbitrary length path");
+
+        }
+
+        final ArbitraryLengthPathNode alpNode = (ArbitraryLengthPathNode) group
+                .get(0);
+
+        if (alpNode.lowerBound() > 1 || alpNode.upperBound() != Long.MAX_VALUE
+                || alpNode.edgeVar() != null) {
+
+            throw new RuntimeException("unsupported path: " + alpNode);
+
+        }
+
+        if (alpNode.subgroup().size() != 1
+                || !(alpNode.subgroup().get(0) instanceof StatementPatternNode)) {
+
+            throw new RuntimeException(
+                    "path must consist of a single statement pattern");
+
+        }
+
+        final StatementPatternNode sp = (StatementPatternNode) alpNode
+                .subgroup().get(0);
+
+        if (!sp.p().isConstant() || sp.c() != null
+                || !sp.s().equals(alpNode.tVarLeft())
+                || !sp.o().equals(alpNode.tVarRight())) {
+
+            throw new RuntimeException("unsupported path: " + alpNode);
+
+        }
+
+        return alpNode;
+
+    }
+
+    /**
+     * Return the closure index.
+     * 
+     * @throws IllegalStateException
+     *             if the index was not configured / does not exist.
+     */
+    static private IIndex getClosureIndex(final AbstractTripleStore tripleStore) {
+
+        final IIndex ndx = tripleStore.getSPORelation().getClosureIndex();
+
+        if (ndx == null)
+            throw new IllegalStateException("Closure index not configured: "
+                    + tripleStore.getNamespace());
+
+        return ndx;
+
+    }
+
+    /**
+     * Answers the path from the closure index. The solutions only bind the
+     * variables at the ends of the path. They are joined with the source
+     * solutions by the caller.
+     * <p>
+     * Note: This has the {@link AbstractTripleStore} reference attached. This
+     * is not a {@link java.io.Serializable} object. It MUST run on the query
+     * controller.
+     */
+    private static class ClosureCall implements BigdataServiceCall {
+
+        private final AbstractTripleStore db;
+        private final IServiceOptions serviceOptions;
+        private final TermNode left, right;
+        @SuppressWarnings("rawtypes")
+        private final IV p;
+        private final long lowerBound;
+
+        @SuppressWarnings("rawtypes")
+        public ClosureCall(final AbstractTripleStore db,
+                final IServiceOptions serviceOptions, final TermNode left,
+                final TermNode right, final IV p, final long lowerBound) {
+
+            this.db = db;
+            this.serviceOptions = serviceOptions;
+            this.left = left;
+            this.right = right;
+            this.p = p;
+            this.lowerBound = lowerBound;
+
+        }
+
+        @Override
+        public IServiceOptions getServiceOptions() {
+
+            return serviceOptions;
+
+        }
+
+        @SuppressWarnings("rawtypes")
+        @Override
+        public ICloseableIterator<IBindingSet> call(final IBindingSet[] bindingSets) {
+
+            final ClosureIndex ndx = new ClosureIndex(getClosureIndex(db));
+
+            final Set<IBindingSet> out = new LinkedHashSet<IBindingSet>();
+
+            for (IBindingSet bs : bindingSets) {
+
+                final IV l = get(left, bs);
+
+                final IV r = get(right, bs);
+
+                if (l != null && r != null) {
+
+                    if ((lowerBound == 0 && l.equals(r))
+                            || ndx.isReachable(p, l, r)) {
+
+                        add(out, l, r);
+
+                    }
+
+                } else if (l != null) {
+
+                    if (lowerBound == 0)
+                        add(out, l, l);
+
+                    final Iterator<IV> itr = ndx.getReachable(p, l, true/* forward */);
+
+                    while (itr.hasNext())
+                        add(out, l, itr.next());
+
+                } else if (r != null) {
+
+                    if (lowerBound == 0)
+                        add(out, r, r);
+
+                    final Iterator<IV> itr = ndx.getReachable(p, r, false/* forward */);
+
+                    while (itr.hasNext())
+                        add(out, itr.next(), r);
+
+                } else {
+
+                    /*
+                     * Both ends are unbound. A zero length path connects each
+                     * node which appears in the closure with itself.
+                     */
+                    final Set<IV> nodes = lowerBound == 0 ? new LinkedHashSet<IV>()
+                            : null;
+
+                    final Iterator<IV[]> itr = ndx.getPairs(p);
+
+                    while (itr.hasNext()) {
+
+                        final IV[] pair = itr.next();
+
+                        add(out, pair[0], pair[1]);
+
+                        if (nodes != null) {
+                            nodes.add(pair[0]);
+                            nodes.add(pair[1]);
+                        }
+
+                    }
+
+                    if (nodes != null) {
+                        for (IV node : nodes)
+                            add(out, node, node);
+                    }
+
+                }
+
+            }
+
+            if (log.isDebugEnabled())
+                log.debug("p=" + p + ", #in=" + bindingSets.length + ", #out="
+                        + out.size());
+
+            return new ThickCloseableIterator<IBindingSet>(
+                    out.toArray(new IBindingSet[out.size()]), out.size());
+
+        }
+
+        /**
+         * Return the value of the term for that source solution (if any).
+         */
+        @SuppressWarnings("rawtypes")
+        private static IV get(final TermNode term, final IBindingSet bs) {
+
+            if (term.isConstant())
+                return (IV) term.getValueExpression().get();
+
+            final IConstant<?> c = bs.get((IVariable<?>) term
+                    .getValueExpression());
+
+            return c == null ? null : (IV) c.get();
+
+        }
+
+        /**
+         * Add a solution binding the ends of the path (unless they are the same
+         * variable and the nodes differ).
+         */
+        @SuppressWarnings({ "rawtypes", "unchecked" })
+        private void add(final Set<IBindingSet> out, final IV l, final IV r) {
+
+            final IBindingSet bs = new ListBindingSet();
+
+            if (left.isVariable()) {
+
+                bs.set((IVariable) left.getValueExpression(), new Constant<IV>(l));
+
+            }
+
+            if (right.isVariable()) {
+
+                final IVariable var = (IVariable) right.getValueExpression();
+
+                final IConstant<?> c = bs.get(var);
+
+                if (c != null) {
+
+                    if (!c.get().equals(r))
+                        return;
+
+                } else {
+
+                    bs.set(var, new Constant<IV>(r));
+
+                }
+
+            }
+
+            out.add(bs);
+
+        }
+
+    }
+
+    /**
+     * Register an {@link IChangeLog} listener that will manage the maintenance
+     * of the closure index.
+     */
+    @Override
+    public void startConnection(final BigdataSailConnection conn) {
+
+        final AbstractTripleStore tripleStore = conn.getTripleStore();
+
+        if (!tripleStore.getSPORelation().getClosurePredicates().isEmpty()) {
+
+            conn.addChangeLog(new ClosureChangeLogListener(tripleStore));
+
+        }
+
+    }
+
+    /**
+     * Handles maintenance of the closure index.
+     */
+    static private class ClosureChangeLogListener implements IChangeLog {
+
+        /** The KB instance. */
+        private final AbstractTripleStore tripleStore;
+        /** The IRIs of the closure predicates. */
+        private final Set<String> closurePredicates;
+        /**
+         * Memoizes whether or not a predicate is a closure predicate. This is
+         * one lexicon lookup per distinct predicate.
+         */
+        @SuppressWarnings("rawtypes")
+        private final Map<IV, Boolean> isClosurePredicate = new HashMap<IV, Boolean>();
+        /**
+         * The subjects of the statements which were added or removed, by
+         * predicate (lazily instantiated).
+         */
+        @SuppressWarnings("rawtypes")
+        private Map<IV, Set<IV>> changeSet;
+
+        ClosureChangeLogListener(final AbstractTripleStore tripleStore) {
+
+            this.tripleStore = tripleStore;
+
+            this.closurePredicates = tripleStore.getSPORelation()
+                    .getClosurePredicates();
+
+        }
+
+        @Override
+        public void transactionBegin() {
+
+            reset();
+
+        }
+
+        @Override
+        public void transactionPrepare() {
+
+            flush();
+
+        }
+
+        @SuppressWarnings("rawtypes")
+        @Override
+        public void changeEvent(final IChangeRecord record) {
+
+            final ISPO spo = record.getStatement();
+
+            final IV p = spo.p();
+
+            if (!isClosurePredicate(p))
+                return;
+
+            if (changeSet == null) {
+
+                // Lazy instantiation.
+                changeSet = new LinkedHashMap<IV, Set<IV>>();
+
+            }
+
+            Set<IV> subjects = changeSet.get(p);
+
+            if (subjects == null) {
+
+                subjects = new LinkedHashSet<IV>();
+
+                changeSet.put(p, subjects);
+
+            }
+
+            subjects.add(spo.s());
+
+        }
+
+        @SuppressWarnings("rawtypes")
+        private boolean isClosurePredicate(final IV p) {
+
+            Boolean ret = isClosurePredicate.get(p);
+
+            if (ret == null) {
+
+                final BigdataValue v = tripleStore.getLexiconRelation()
+                        .getTerm(p);
+
+                ret = v != null && closurePredicates.contains(v.stringValue());
+
+                isClosurePredicate.put(p, ret);
+
+            }
+
+            return ret;
+
+        }
+
+        @Override
+        public void transactionCommited(final long commitTime) {
+
+            flush();
+
+        }
+
+        @Override
+        public void transactionAborted() {
+
+            reset();
+
+        }
+
+        /**
+         * See {@link IChangeLog#close()}.
+         */
+        @Override
+        public void close() {
+
+            reset();
+
+        }
+
+        /** Reset the buffer. */
+        private void reset() {
+
+            changeSet = null;
+
+        }
+
+        /**
+         * Recompute the closure of the affected sources. The statement indices
+         * already reflect the changes at this point.
+         */
+        @SuppressWarnings("rawtypes")
+        private void flush() {
+
+            if (changeSet != null) {
+
+                final ClosureIndex ndx = new ClosureIndex(
+                        getClosureIndex(tripleStore));
+
+                for (Map.Entry<IV, Set<IV>> e : changeSet.entrySet()) {
+
+                    ndx.update(tripleStore, e.getKey(), e.getValue());
+
+                }
+
+                reset();
+
+            }
+
+        }
+
+    } // class ClosureChangeLogListener
+
+} // class ClosureServiceFactory
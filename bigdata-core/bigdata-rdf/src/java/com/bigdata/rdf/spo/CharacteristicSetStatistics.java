@@ -0,0 +1,748 @@
+/**
+
+Copyright (C) SYSTAP, LLC DBA Blazegraph 2006-2016.  All rights reserved.
+
+Contact:
+     SYSTAP, LLC DBA Blazegraph
+     2501 Calvert ST NW #106
+     Washington, DC 20008
+     licenses@blazegraph.com
+
+This program is free software; you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation; version 2 of the License.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program; if not, write to the Free Software
+Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+
+package com.bigdata.rdf.spo;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.log4j.Logger;
+
+import com.bigdata.btree.IIndex;
+import com.bigdata.btree.IRangeQuery;
+import com.bigdata.btree.ITuple;
+import com.bigdata.btree.ITupleIterator;
+import com.bigdata.btree.keys.IKeyBuilder;
+import com.bigdata.btree.keys.KeyBuilder;
+import com.bigdata.io.DataInputBuffer;
+import com.bigdata.io.DataOutputBuffer;
+import com.bigdata.rdf.internal.IV;
+import com.bigdata.rdf.internal.IVUtility;
+import com.bigdata.rdf.store.AbstractTripleStore;
+import com.bigdata.util.BytesUtil;
+
+/**
+ * Statistics used by the static join order optimizer to estimate the
+ * cardinality of joins between statement patterns whose predicates are
+ * correlated. Two kinds of statistics are collected:
+ * <dl>
+ * <dt>characteristic sets</dt>
+ * <dd>For each distinct set of predicates used by some subject, the #of
+ * subjects having exactly that set and the #of statements using each predicate
+ * of the set. These support estimates for star joins on a common subject.</dd>
+ * <dt>predicate pairs</dt>
+ * <dd>For each pair of predicates <code>(p1,p2)</code>, the #of paths
+ * <code>x p1 n . n p2 y</code>. These support estimates for joins of the
+ * object of one statement pattern with the subject of another.</dd>
+ * </dl>
+ * The statistics are a snapshot. They are computed on demand by
+ * {@link #refresh(AbstractTripleStore)}, which scans the primary statement
+ * index and the OSP (or OCSP) index once, and are stored in the
+ * {@link SPORelation#getStatisticsIndex() statistics index}. In quads mode
+ * they are collected over all named graphs.
+ * 
+ * @see AbstractTripleStore.Options#STATISTICS
+ */
+public class CharacteristicSetStatistics {
+
+    private static final transient Logger log = Logger
+            .getLogger(CharacteristicSetStatistics.class);
+
+    /**
+     * The default for the maximum #of characteristic sets which are retained.
+     * The sets describing the fewest subjects are dropped first.
+     */
+    public static final int DEFAULT_MAX_SETS = 10000;
+
+    /*
+     * Key prefixes for the records in the statistics index.
+     */
+    private static final byte REVISION = 0;
+    private static final byte SET = 1;
+    private static final byte PAIR = 2;
+    private static final byte PREDICATE = 3;
+
+    /**
+     * The time at which the statistics were computed.
+     */
+    private final long revision;
+
+    /**
+     * The characteristic sets. The key is the ordered list of predicates. The
+     * value is <code>[distinct, occ(p1), ..., occ(pn)]</code>, where
+     * <code>distinct</code> is the #of subjects having that set of predicates.
+     */
+    private final Map<List<IV>, long[]> sets;
+
+    /**
+     * The characteristic sets in which each predicate appears.
+     */
+    private final Map<IV, List<List<IV>>> setsByPredicate;
+
+    /**
+     * The #of statements using each predicate.
+     */
+    private final Map<IV, Long> predicateCounts;
+
+    /**
+     * The #of paths <code>x p1 n . n p2 y</code> for each pair of predicates.
+     */
+    private final Map<IV, Map<IV, Long>> pairs;
+
+    private CharacteristicSetStatistics(final long revision,
+            final Map<List<IV>, long[]> sets,
+            final Map<IV, Long> predicateCounts,
+            final Map<IV, Map<IV, Long>> pairs) {
+
+        this.revision = revision;
+
+        this.sets = sets;
+
+        this.predicateCounts = predicateCounts;
+
+        this.pairs = pairs;
+
+        this.setsByPredicate = new HashMap<IV, List<List<IV>>>();
+
+        for (List<IV> set : sets.keySet()) {
+
+            for (IV p : set) {
+
+                List<List<IV>> t = setsByPredicate.get(p);
+
+                if (t == null)
+                    setsByPredicate.put(p, t = new LinkedList<List<IV>>());
+
+                t.add(set);
+
+            }
+
+        }
+
+    }
+
+    /**
+     * The time at which the statistics were computed.
+     */
+    public long getRevision() {
+
+        return revision;
+
+    }
+
+    /**
+     * The #of characteristic sets.
+     */
+    public int getSetCount() {
+
+        return sets.size();
+
+    }
+
+    /**
+     * Return the #of statements using the predicate.
+     */
+    public long getPredicateCount(final IV p) {
+
+        final Long n = predicateCounts.get(p);
+
+        return n == null ? 0L : n.longValue();
+
+    }
+
+    /**
+     * Return the #of paths <code>x p1 n . n p2 y</code>.
+     */
+    public long getPairCount(final IV p1, final IV p2) {
+
+        final Map<IV, Long> t = pairs.get(p1);
+
+        if (t == null)
+            return 0L;
+
+        final Long n = t.get(p2);
+
+        return n == null ? 0L : n.longValue();
+
+    }
+
+    /**
+     * Estimate the cardinality of a star join on a common subject. For each
+     * characteristic set <code>C</code> containing all of the predicates, this
+     * sums <code>distinct(C)</code> times the product over the predicates of
+     * the average #of statements per subject using that predicate in
+     * <code>C</code>.
+     * 
+     * @param preds
+     *            The predicates of the statement patterns in the star.
+     * @param sel
+     *            The selectivity of each statement pattern with respect to its
+     *            predicate, e.g., less than ONE if the object is bound.
+     * 
+     * @return The estimated cardinality.
+     */
+    public double estimateStar(final IV[] preds, final double[] sel) {
+
+        if (preds.length == 0)
+            throw new IllegalArgumentException();
+
+        // Visit only the sets using the least used predicate.
+        List<List<IV>> candidates = null;
+
+        for (IV p : preds) {
+
+            final List<List<IV>> t = setsByPredicate.get(p);
+
+            if (t == null)
+                return 0d;
+
+            if (candidates == null || t.size() < candidates.size())
+                candidates = t;
+
+        }
+
+        double sum = 0d;
+
+        for (List<IV> set : candidates) {
+
+            final long[] counts = sets.get(set);
+
+            final double distinct = counts[0];
+
+            double card = distinct;
+
+            for (int i = 0; i < preds.length; i++) {
+
+                final int j = set.indexOf(preds[i]);
+
+                if (j == -1) {
+
+                    card = 0d;
+
+                    break;
+
+                }
+
+                card *= (counts[j + 1] / distinct) * sel[i];
+
+            }
+
+            sum += card;
+
+        }
+
+        return sum;
+
+    }
+
+    /**
+     * Compute the statistics for the KB and write them onto its statistics
+     * index. The caller is responsible for the commit.
+     * 
+     * @return The new statistics.
+     * 
+     * @throws IllegalStateException
+     *             if the statistics index is not in use for the KB.
+     */
+    public static CharacteristicSetStatistics refresh(
+            final AbstractTripleStore db) {
+
+        final IIndex ndx = db.getSPORelation().getStatisticsIndex();
+
+        if (ndx == null)
+            throw new IllegalStateException("Statistics are not enabled: "
+                    + db.getNamespace());
+
+        final CharacteristicSetStatistics stats = compute(db,
+                DEFAULT_MAX_SETS);
+
+        stats.write(ndx);
+
+        return stats;
+
+    }
+
+    /**
+     * Compute the statistics for the KB.
+     * 
+     * @param db
+     *            The KB.
+     * @param maxSets
+     *            The maximum #of characteristic sets to retain.
+     */
+    public static CharacteristicSetStatistics compute(
+            final AbstractTripleStore db, final int maxSets) {
+
+        if (maxSets <= 0)
+            throw new IllegalArgumentException();
+
+        final long begin = System.currentTimeMillis();
+
+        final SPORelation spoRelation = db.getSPORelation();
+
+        final SPOKeyOrder subjectOrder = spoRelation.getPrimaryKeyOrder();
+
+        final SPOKeyOrder objectOrder = spoRelation.getKeyArity() == 4 ? SPOKeyOrder.OCSP
+                : SPOKeyOrder.OSP;
+
+        final Map<List<IV>, long[]> sets = new HashMap<List<IV>, long[]>();
+
+        final Map<IV, Long> predicateCounts = new HashMap<IV, Long>();
+
+        final Map<IV, Map<IV, Long>> pairs = new HashMap<IV, Map<IV, Long>>();
+
+        /*
+         * Merge the statements grouped by subject with the statements grouped
+         * by object. Both indices are in the same order for their leading
+         * component, so each node is visited once in each role.
+         */
+        final NodeIterator out = new NodeIterator(
+                spoRelation.getIndex(subjectOrder), true/* subject */);
+
+        final NodeIterator in = new NodeIterator(
+                spoRelation.getIndex(objectOrder), false/* subject */);
+
+        out.next();
+        in.next();
+
+        while (out.node != null || in.node != null) {
+
+            final int cmp;
+            if (out.node == null) {
+                cmp = 1;
+            } else if (in.node == null) {
+                cmp = -1;
+            } else {
+                cmp = BytesUtil.compareBytes(out.key, in.key);
+            }
+
+            if (cmp <= 0) {
+
+                addSet(sets, predicateCounts, out.counts);
+
+                if (cmp == 0) {
+
+                    addPairs(pairs, in.counts, out.counts);
+
+                }
+
+            }
+
+            if (cmp <= 0)
+                out.next();
+
+            if (cmp >= 0)
+                in.next();
+
+            if (sets.size() > 4 * maxSets) {
+
+                prune(sets, maxSets);
+
+            }
+
+        }
+
+        prune(sets, maxSets);
+
+        final CharacteristicSetStatistics stats = new CharacteristicSetStatistics(
+                System.currentTimeMillis(), sets, predicateCounts, pairs);
+
+        if (log.isInfoEnabled())
+            log.info("Computed statistics: namespace=" + db.getNamespace()
+                    + ", nsets=" + sets.size() + ", npredicates="
+                    + predicateCounts.size() + ", elapsed="
+                    + (System.currentTimeMillis() - begin) + "ms");
+
+        return stats;
+
+    }
+
+    private static void addSet(final Map<List<IV>, long[]> sets,
+            final Map<IV, Long> predicateCounts,
+            final LinkedHashMap<IV, Long> counts) {
+
+        final List<IV> key = new ArrayList<IV>(counts.keySet());
+
+        long[] a = sets.get(key);
+
+        if (a == null)
+            sets.put(key, a = new long[key.size() + 1]);
+
+        a[0]++;
+
+        int i = 1;
+
+        for (Map.Entry<IV, Long> e : counts.entrySet()) {
+
+            final long n = e.getValue();
+
+            a[i++] += n;
+
+            final Long m = predicateCounts.get(e.getKey());
+
+            predicateCounts.put(e.getKey(), m == null ? n : m + n);
+
+        }
+
+    }
+
+    private static void addPairs(final Map<IV, Map<IV, Long>> pairs,
+            final Map<IV, Long> in, final Map<IV, Long> out) {
+
+        for (Map.Entry<IV, Long> e1 : in.entrySet()) {
+
+            Map<IV, Long> t = pairs.get(e1.getKey());
+
+            if (t == null)
+                pairs.put(e1.getKey(), t = new HashMap<IV, Long>());
+
+            for (Map.Entry<IV, Long> e2 : out.entrySet()) {
+
+                final long n = e1.getValue() * e2.getValue();
+
+                final Long m = t.get(e2.getKey());
+
+                t.put(e2.getKey(), m == null ? n : m + n);
+
+            }
+
+        }
+
+    }
+
+    /**
+     * Retain the <i>maxSets</i> characteristic sets describing the most
+     * subjects.
+     */
+    private static void prune(final Map<List<IV>, long[]> sets,
+            final int maxSets) {
+
+        if (sets.size() <= maxSets)
+            return;
+
+        final List<Map.Entry<List<IV>, long[]>> a = new ArrayList<Map.Entry<List<IV>, long[]>>(
+                sets.entrySet());
+
+        Collections.sort(a, new Comparator<Map.Entry<List<IV>, long[]>>() {
+            @Override
+            public int compare(final Map.Entry<List<IV>, long[]> o1,
+                    final Map.Entry<List<IV>, long[]> o2) {
+                return Long.compare(o2.getValue()[0], o1.getValue()[0]);
+            }
+        });
+
+        for (int i = maxSets; i < a.size(); i++) {
+
+            sets.remove(a.get(i).getKey());
+
+        }
+
+    }
+
+    /**
+     * Visits the nodes of a statement index in key order together with the
+     * #of statements using each predicate for that node.
+     */
+    private static class NodeIterator {
+
+        private final ITupleIterator<ISPO> itr;
+
+        private final boolean subject;
+
+        private final IKeyBuilder keyBuilder = KeyBuilder.newInstance();
+
+        /** The statement which begins the next node (if any). */
+        private ISPO pending;
+
+        /** The current node and its encoded key (null when exhausted). */
+        IV node;
+        byte[] key;
+
+        /** The #of statements for the current node by predicate. */
+        LinkedHashMap<IV, Long> counts;
+
+        @SuppressWarnings("unchecked")
+        NodeIterator(final IIndex ndx, final boolean subject) {
+
+            this.itr = ndx.rangeIterator();
+
+            this.subject = subject;
+
+            this.pending = itr.hasNext() ? itr.next().getObject() : null;
+
+        }
+
+        private IV node(final ISPO spo) {
+
+            return subject ? spo.s() : spo.o();
+
+        }
+
+        /**
+         * Advance to the next node.
+         */
+        void next() {
+
+            if (pending == null) {
+
+                node = null;
+                key = null;
+                counts = null;
+
+                return;
+
+            }
+
+            node = node(pending);
+
+            key = IVUtility.encode(keyBuilder.reset(), node).getKey();
+
+            counts = new LinkedHashMap<IV, Long>();
+
+            while (pending != null && node.equals(node(pending))) {
+
+                final Long n = counts.get(pending.p());
+
+                counts.put(pending.p(), n == null ? 1L : n + 1);
+
+                pending = itr.hasNext() ? itr.next().getObject() : null;
+
+            }
+
+        }
+
+    }
+
+    /**
+     * Replace the contents of the statistics index with these statistics.
+     */
+    public void write(final IIndex ndx) {
+
+        // Remove the old statistics.
+        final ITupleIterator<?> itr = ndx.rangeIterator(null/* fromKey */,
+                null/* toKey */, 0/* capacity */, IRangeQuery.REMOVEALL, null/* filterCtor */);
+
+        while (itr.hasNext()) {
+
+            itr.next();
+
+        }
+
+        final IKeyBuilder keyBuilder = KeyBuilder.newInstance();
+
+        final DataOutputBuffer buf = new DataOutputBuffer();
+
+        for (Map.Entry<List<IV>, long[]> e : sets.entrySet()) {
+
+            keyBuilder.reset().append(SET);
+
+            for (IV p : e.getKey()) {
+
+                IVUtility.encode(keyBuilder, p);
+
+            }
+
+            buf.reset();
+
+            for (long n : e.getValue()) {
+
+                buf.packLong(n);
+
+            }
+
+            ndx.insert(keyBuilder.getKey(), buf.toByteArray());
+
+        }
+
+        for (Map.Entry<IV, Long> e : predicateCounts.entrySet()) {
+
+            keyBuilder.reset().append(PREDICATE);
+
+            IVUtility.encode(keyBuilder, e.getKey());
+
+            buf.reset();
+
+            buf.packLong(e.getValue());
+
+            ndx.insert(keyBuilder.getKey(), buf.toByteArray());
+
+        }
+
+        for (Map.Entry<IV, Map<IV, Long>> e1 : pairs.entrySet()) {
+
+            for (Map.Entry<IV, Long> e2 : e1.getValue().entrySet()) {
+
+                keyBuilder.reset().append(PAIR);
+
+                IVUtility.encode(keyBuilder, e1.getKey());
+
+                IVUtility.encode(keyBuilder, e2.getKey());
+
+                buf.reset();
+
+                buf.packLong(e2.getValue());
+
+                ndx.insert(keyBuilder.getKey(), buf.toByteArray());
+
+            }
+
+        }
+
+        // Note: Written last and read first.
+        buf.reset();
+
+        buf.packLong(revision);
+
+        ndx.insert(new byte[] { REVISION }, buf.toByteArray());
+
+    }
+
+    /**
+     * Return the revision of the statistics stored in the index -or-
+     * <code>-1L</code> if they have never been computed.
+     */
+    public static long readRevision(final IIndex ndx) {
+
+        final byte[] val = ndx.lookup(new byte[] { REVISION });
+
+        if (val == null)
+            return -1L;
+
+        try {
+
+            return new DataInputBuffer(val).unpackLong();
+
+        } catch (IOException ex) {
+
+            throw new RuntimeException(ex);
+
+        }
+
+    }
+
+    /**
+     * Read the statistics from the index.
+     * 
+     * @return The statistics -or- <code>null</code> if they have never been
+     *         computed.
+     */
+    @SuppressWarnings("unchecked")
+    public static CharacteristicSetStatistics read(final IIndex ndx) {
+
+        final long revision = readRevision(ndx);
+
+        if (revision == -1L)
+            return null;
+
+        final Map<List<IV>, long[]> sets = new HashMap<List<IV>, long[]>();
+
+        final Map<IV, Long> predicateCounts = new HashMap<IV, Long>();
+
+        final Map<IV, Map<IV, Long>> pairs = new HashMap<IV, Map<IV, Long>>();
+
+        try {
+
+            final ITupleIterator<?> itr = ndx.rangeIterator(
+                    new byte[] { SET }, null/* toKey */);
+
+            while (itr.hasNext()) {
+
+                final ITuple<?> tuple = itr.next();
+
+                final byte[] key = tuple.getKey();
+
+                final DataInputBuffer in = new DataInputBuffer(
+                        tuple.getValue());
+
+                if (key[0] == SET) {
+
+                    final IV[] preds = IVUtility.decodeAll(key, 1/* off */,
+                            key.length - 1/* len */);
+
+                    final long[] a = new long[preds.length + 1];
+
+                    for (int i = 0; i < a.length; i++) {
+
+                        a[i] = in.unpackLong();
+
+                    }
+
+                    final List<IV> set = new ArrayList<IV>(preds.length);
+
+                    for (int i = 0; i < preds.length; i++) {
+
+                        set.add(preds[i]);
+
+                    }
+
+                    sets.put(set, a);
+
+                } else if (key[0] == PREDICATE) {
+
+                    predicateCounts.put(IVUtility.decodeFromOffset(key, 1),
+                            in.unpackLong());
+
+                } else if (key[0] == PAIR) {
+
+                    final IV[] a = IVUtility.decode(key, 1/* offset */, 2/* numTerms */);
+
+                    Map<IV, Long> t = pairs.get(a[0]);
+
+                    if (t == null)
+                        pairs.put(a[0], t = new HashMap<IV, Long>());
+
+                    t.put(a[1], in.unpackLong());
+
+                }
+
+            }
+
+        } catch (IOException ex) {
+
+            throw new RuntimeException(ex);
+
+        }
+
+        return new CharacteristicSetStatistics(revision, sets,
+                predicateCounts, pairs);
+
+    }
+
+    @Override
+    public String toString() {
+
+        return getClass().getSimpleName() + "{revision=" + revision
+                + ",nsets=" + sets.size() + ",npredicates="
+                + predicateCounts.size() + "}";
+
+    }
+
+}
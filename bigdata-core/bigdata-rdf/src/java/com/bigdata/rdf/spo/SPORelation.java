@@ -34,6 +34,7 @@ import java.util.Collections;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
@@ -63,6 +64,7 @@ import com.bigdata.btree.ITuple;
 import com.bigdata.btree.IndexMetadata;
 import com.bigdata.btree.filter.TupleFilter;
 import com.bigdata.btree.isolation.IConflictResolver;
+import com.bigdata.btree.keys.ASCIIKeyBuilderFactory;
 import com.bigdata.btree.keys.IKeyBuilder;
 import com.bigdata.btree.keys.KeyBuilder;
 import com.bigdata.btree.keys.SuccessorUtil;
@@ -87,6 +89,8 @@ import com.bigdata.rdf.lexicon.ITermIVFilter;
 import com.bigdata.rdf.lexicon.LexiconRelation;
 import com.bigdata.rdf.model.StatementEnum;
 import com.bigdata.rdf.sparql.ast.QuadsOperationInTriplesModeException;
+import com.bigdata.rdf.sparql.ast.service.closure.ClosureIndex;
+import com.bigdata.rdf.sparql.ast.service.closure.ClosureServiceFactory;
 import com.bigdata.rdf.sparql.ast.service.history.HistoryIndexTupleSerializer;
 import com.bigdata.rdf.spo.JustIndexWriteProc.WriteJustificationsProcConstructor;
 import com.bigdata.rdf.store.AbstractTripleStore;
@@ -201,6 +205,28 @@ public class SPORelation extends AbstractRelation<ISPO> {
      */
     final private boolean history;
 
+    /**
+     * The predicates whose transitive closure is materialized (empty if the
+     * closure index is not used).
+     * 
+     * @see AbstractTripleStore.Options#CLOSURE_PREDICATES
+     */
+    final private Set<String> closurePredicates;
+
+    /**
+     * When <code>true</code> the statistics index is maintained.
+     * 
+     * @see AbstractTripleStore.Options#STATISTICS
+     */
+    final private boolean statistics;
+
+    /**
+     * The most recently read statistics (lazily loaded).
+     * 
+     * @see #getStatistics()
+     */
+    private volatile CharacteristicSetStatistics cachedStatistics;
+
     /**
      * When <code>true</code> the database will support statement identifiers.
      * A statement identifier is a unique 64-bit integer taken from the same
@@ -293,6 +319,51 @@ public class SPORelation extends AbstractRelation<ISPO> {
                 null);
         this.history = historyClass != null && historyClass.length() > 0;
 
+        {
+
+            final Set<String> set = new LinkedHashSet<String>();
+
+            for (String s : getProperty(
+                    AbstractTripleStore.Options.CLOSURE_PREDICATES,
+                    AbstractTripleStore.Options.DEFAULT_CLOSURE_PREDICATES)
+                    .trim().split("\\s+")) {
+
+                if (s.length() > 0)
+                    set.add(s);
+
+            }
+
+            if (!set.isEmpty() && keyArity == 4) {
+
+                throw new UnsupportedOperationException(
+                        AbstractTripleStore.Options.QUADS
+                                + " does not support the closure index ("
+                                + AbstractTripleStore.Options.CLOSURE_PREDICATES
+                                + ")");
+
+            }
+
+            if (!set.isEmpty() && !ClosureServiceFactory.isRegistered()) {
+
+                /*
+                 * The closure index would not be maintained by writes made in
+                 * this JVM.
+                 */
+                throw new UnsupportedOperationException(
+                        AbstractTripleStore.Options.CLOSURE_PREDICATES
+                                + " requires "
+                                + ClosureServiceFactory.Options.ENABLED);
+
+            }
+
+            this.closurePredicates = Collections.unmodifiableSet(set);
+
+        }
+
+        this.statistics = Boolean.parseBoolean(getProperty(
+                AbstractTripleStore.Options.STATISTICS,
+                AbstractTripleStore.Options.DEFAULT_STATISTICS));
+
         // declare the various indices.
         {
          
@@ -365,6 +436,18 @@ public class SPORelation extends AbstractRelation<ISPO> {
 
             }
 
+            if (!closurePredicates.isEmpty()) {
+
+                set.add(getFQN(this, NAME_CLOSURE));
+
+            }
+
+            if (statistics) {
+
+                set.add(getFQN(this, NAME_STATISTICS));
+
+            }
+
             this.indexNames = Collections.unmodifiableSet(set);
 
         }
@@ -487,6 +570,18 @@ public class SPORelation extends AbstractRelation<ISPO> {
                 indexManager.registerIndex(getHistoryIndexMetadata(keyOrder));
 
             }
+
+            if (!closurePredicates.isEmpty()) {
+
+                indexManager.registerIndex(getClosureIndexMetadata());
+
+            }
+
+            if (statistics) {
+
+                indexManager.registerIndex(getStatisticsIndexMetadata());
+
+            }
             
 //            lookupIndices();
 
@@ -917,6 +1012,138 @@ public class SPORelation extends AbstractRelation<ISPO> {
     }
     public static transient final String NAME_HISTORY = "HIST";
 
+    /**
+     * The IRIs of the predicates whose transitive closure is materialized in
+     * the {@link #getClosureIndex() closure index} (empty if the closure index
+     * is not in use).
+     * 
+     * @see AbstractTripleStore.Options#CLOSURE_PREDICATES
+     */
+    public Set<String> getClosurePredicates() {
+
+        return closurePredicates;
+
+    }
+
+    /**
+     * The optional index on which the transitive closure of the
+     * {@link #getClosurePredicates() closure predicates} is materialized.
+     * 
+     * @return The index -or- <code>null</code> if the closure index is not in
+     *         use.
+     * 
+     * @see ClosureIndex
+     */
+    public IIndex getClosureIndex() {
+
+        if (closurePredicates.isEmpty())
+            return null;
+
+        return getIndex(getFQN(this, NAME_CLOSURE));
+
+    }
+
+    /**
+     * Overrides for the closure index.
+     */
+    protected IndexMetadata getClosureIndexMetadata() {
+
+        final IndexMetadata metadata = newIndexMetadata(getFQN(this,
+                NAME_CLOSURE));
+
+        // The keys are the data; there are no values.
+        metadata.setTupleSerializer(new DefaultTupleSerializer(
+                new ASCIIKeyBuilderFactory(64/* initialCapacity */),//
+                DefaultTupleSerializer.getDefaultLeafKeysCoder(),//
+                EmptyRabaValueCoder.INSTANCE//
+                ));
+
+        if (TimestampUtility.isReadWriteTx(getTimestamp())) {
+
+            // See getHistoryIndexMetadata()
+            metadata.setIsolatable(true);
+
+        }
+
+        return metadata;
+
+    }
+
+    public static transient final String NAME_CLOSURE = "CLOSURE";
+
+    /**
+     * The optional index on which the {@link CharacteristicSetStatistics} are
+     * stored.
+     * 
+     * @return The index -or- <code>null</code> if the statistics index is not
+     *         in use.
+     * 
+     * @see AbstractTripleStore.Options#STATISTICS
+     */
+    public IIndex getStatisticsIndex() {
+
+        if (!statistics)
+            return null;
+
+        return getIndex(getFQN(this, NAME_STATISTICS));
+
+    }
+
+    /**
+     * Return the statistics for this view of the KB. The statistics are read
+     * from the {@link #getStatisticsIndex() statistics index} and cached until
+     * they are refreshed.
+     * 
+     * @return The statistics -or- <code>null</code> if the statistics index is
+     *         not in use or the statistics have never been computed.
+     * 
+     * @see CharacteristicSetStatistics#refresh(AbstractTripleStore)
+     */
+    public CharacteristicSetStatistics getStatistics() {
+
+        final IIndex ndx = getStatisticsIndex();
+
+        if (ndx == null)
+            return null;
+
+        final long revision = CharacteristicSetStatistics.readRevision(ndx);
+
+        if (revision == -1L)
+            return null;
+
+        CharacteristicSetStatistics stats = cachedStatistics;
+
+        if (stats == null || stats.getRevision() != revision) {
+
+            cachedStatistics = stats = CharacteristicSetStatistics.read(ndx);
+
+        }
+
+        return stats;
+
+    }
+
+    /**
+     * Overrides for the statistics index.
+     */
+    protected IndexMetadata getStatisticsIndexMetadata() {
+
+        final IndexMetadata metadata = newIndexMetadata(getFQN(this,
+                NAME_STATISTICS));
+
+        if (TimestampUtility.isReadWriteTx(getTimestamp())) {
+
+            // See getHistoryIndexMetadata()
+            metadata.setIsolatable(true);
+
+        }
+
+        return metadata;
+
+    }
+
+    public static transient final String NAME_STATISTICS = "STATS";
+
     /**
      * Conflict resolver for add/add conflicts and retract/retract conflicts for
      * any of (triple store, triple store with SIDs or quad store) but without
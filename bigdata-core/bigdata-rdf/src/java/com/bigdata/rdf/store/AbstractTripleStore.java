@@ -75,6 +75,7 @@ import com.bigdata.btree.IndexMetadata;
 import com.bigdata.btree.IndexSegment;
 import com.bigdata.btree.keys.KeyBuilder;
 import com.bigdata.btree.keys.SuccessorUtil;
+import com.bigdata.io.DirectBufferPool;
 import com.bigdata.journal.IConcurrencyManager;
 import com.bigdata.journal.IIndexManager;
 import com.bigdata.journal.IResourceLock;
@@ -96,11 +97,14 @@ import com.bigdata.rdf.internal.IExtensionFactory;
 import com.bigdata.rdf.internal.IInlineURIFactory;
 import com.bigdata.rdf.internal.IV;
 import com.bigdata.rdf.internal.InlineURIFactory;
+import com.bigdata.rdf.internal.InlineURIHandler;
 import com.bigdata.rdf.internal.NotMaterializedException;
 import com.bigdata.rdf.internal.VTE;
 import com.bigdata.rdf.internal.constraints.RangeBOp;
 import com.bigdata.rdf.internal.impl.BlobIV;
+import com.bigdata.rdf.internal.impl.TermId;
 import com.bigdata.rdf.internal.impl.extensions.XSDStringExtension;
+import com.bigdata.rdf.internal.impl.uri.URIExtensionIV;
 import com.bigdata.rdf.lexicon.BigdataSubjectCentricFullTextIndex;
 import com.bigdata.rdf.lexicon.BigdataValueCentricFullTextIndex;
 import com.bigdata.rdf.lexicon.ITermIndexCodes;
@@ -108,6 +112,7 @@ import com.bigdata.rdf.lexicon.ITextIndexer;
 import com.bigdata.rdf.lexicon.IValueCentricTextIndexer;
 import com.bigdata.rdf.lexicon.LexiconKeyOrder;
 import com.bigdata.rdf.lexicon.LexiconRelation;
+import com.bigdata.rdf.lexicon.OffHeapTermCache;
 import com.bigdata.rdf.lexicon.TermIdEncoder;
 import com.bigdata.rdf.model.BigdataResource;
 import com.bigdata.rdf.model.BigdataStatement;
@@ -126,8 +131,10 @@ import com.bigdata.rdf.rules.RDFJoinNexusFactory;
 import com.bigdata.rdf.rules.RuleContextEnum;
 import com.bigdata.rdf.sail.RDRHistory;
 import com.bigdata.rdf.sparql.ast.optimizers.ASTBottomUpOptimizer;
+import com.bigdata.rdf.sparql.ast.service.closure.ClosureServiceFactory;
 import com.bigdata.rdf.spo.BulkCompleteConverter;
 import com.bigdata.rdf.spo.BulkFilterConverter;
+import com.bigdata.rdf.spo.CharacteristicSetStatistics;
 import com.bigdata.rdf.spo.ExplicitSPOFilter;
 import com.bigdata.rdf.spo.ISPO;
 import com.bigdata.rdf.spo.JustificationWriter;
@@ -640,6 +647,68 @@ abstract public class AbstractTripleStore extends
         
         String DEFAULT_TERM_CACHE_CAPACITY = "10000";//"50000";
 
+        /**
+         * Long option whose value is the maximum #of bytes of serialized RDF
+         * {@link Value}s held in a second level term cache on the native heap
+         * (default {@value #DEFAULT_TERM_CACHE_OFF_HEAP_CAPACITY}). When
+         * ZERO (0), the second level is disabled.
+         * <p>
+         * The second level is consulted when a term is not found in the
+         * (on-heap) term cache and is bounded by a byte budget rather than by
+         * an entry count. This allows a large term cache for materialization
+         * heavy queries without increasing the GC burden. The native memory is
+         * drawn from the {@link DirectBufferPool}.
+         * <p>
+         * The second level is shared by all read-only views of the lexicon, so
+         * this is the budget for the lexicon rather than for each view. The
+         * unisolated and read/write transaction views do not use the second
+         * level. The native memory is released when the lexicon is destroyed.
+         * 
+         * @see OffHeapTermCache
+         */
+        String TERM_CACHE_OFF_HEAP_CAPACITY = AbstractTripleStore.class
+                .getName() + ".termCache.offHeapCapacity";
+
+        String DEFAULT_TERM_CACHE_OFF_HEAP_CAPACITY = "0";
+
+        /**
+         * Boolean option (default {@value #DEFAULT_COALESCE_TERM_RESOLUTION})
+         * determines whether the resolution of {@link IV}s against the ID2TERM
+         * and BLOBS indices is coalesced across concurrent requests. When
+         * enabled, an {@link IV} which is already being resolved for one
+         * query is not read again for another, and the {@link IV}s requested
+         * while the indices are busy are read together as a single sorted
+         * batch. Views reading from the same commit point share the same
+         * in-flight requests.
+         * <p>
+         * This is useful for highly concurrent workloads in which many queries
+         * materialize the same frequently used terms.
+         */
+        String COALESCE_TERM_RESOLUTION = AbstractTripleStore.class.getName()
+                + ".coalesceTermResolution";
+
+        String DEFAULT_COALESCE_TERM_RESOLUTION = "false";
+
+        /**
+         * Boolean option (default {@value #DEFAULT_PARALLEL_LEXICON_WRITES})
+         * determines whether the writes on the lexicon indices for a batch of
+         * RDF {@link Value}s are co-threaded. When enabled, the TERM2ID and
+         * BLOBS indices are written concurrently, followed by concurrent
+         * writes on the ID2TERM index and on the full text index (a single
+         * write for all of the literals in the batch). When disabled, only the
+         * ID2TERM and full text index writes for the TERM2ID path are
+         * co-threaded.
+         * <p>
+         * Each index is still written by a single thread, so this is safe for
+         * the unisolated indices of a Journal. It is most useful for
+         * bulk loads of literal heavy data where both the TERM2ID and BLOBS
+         * indices are written for most batches.
+         */
+        String PARALLEL_LEXICON_WRITES = AbstractTripleStore.class.getName()
+                + ".parallelLexiconWrites";
+
+        String DEFAULT_PARALLEL_LEXICON_WRITES = "false";
+
         /**
          * The name of the class that will establish the pre-defined
          * {@link Vocabulary} for the database (default
@@ -1269,6 +1338,50 @@ abstract public class AbstractTripleStore extends
 
         public static String DEFAULT_HISTORY_SERVICE_MIN_RELEASE_AGE = Long
                 .toString(Long.MAX_VALUE);
+
+        /*
+         * Transitive closure index.
+         */
+
+        /**
+         * A whitespace delimited list of predicate IRIs (default
+         * {@value #DEFAULT_CLOSURE_PREDICATES}) whose transitive closure will be
+         * materialized in an index of the {@link SPORelation}. The index is
+         * maintained incrementally from the {@link IChangeLog} of each
+         * connection and <code>p*</code> and <code>p+</code> property paths
+         * over these predicates are answered by direct lookups against that
+         * index rather than by an iterative expansion of the path. This option
+         * is only supported in triples mode and must be specified when the KB
+         * is created. The {@link ClosureServiceFactory} must be enabled (see
+         * {@link ClosureServiceFactory.Options#ENABLED}) in each JVM which
+         * opens such a KB.
+         * 
+         * @see ClosureServiceFactory
+         */
+        public static String CLOSURE_PREDICATES = AbstractTripleStore.class
+                .getName() + ".closurePredicates";
+
+        public static String DEFAULT_CLOSURE_PREDICATES = "";
+
+        /*
+         * Join statistics.
+         */
+
+        /**
+         * When <code>true</code>, an index of the {@link SPORelation} stores
+         * characteristic sets and predicate pair statistics (default
+         * {@value #DEFAULT_STATISTICS}). Once they have been computed, the
+         * static join order optimizer uses these statistics to estimate the
+         * cardinality of joins between statement patterns with correlated
+         * predicates. The statistics are a snapshot which is refreshed on
+         * demand. This option must be specified when the KB is created.
+         * 
+         * @see CharacteristicSetStatistics#refresh(AbstractTripleStore)
+         */
+        public static String STATISTICS = AbstractTripleStore.class.getName()
+                + ".statistics";
+
+        public static String DEFAULT_STATISTICS = "false";
         
         /**
          * If this option is set to false, turn off the ASTBottomUpOptimizer.
@@ -1291,6 +1404,59 @@ abstract public class AbstractTripleStore extends
         String DEFAULT_INLINE_URI_FACTORY_CLASS = InlineURIFactory.class
                 .getName();
 
+        /**
+         * Boolean option (default {@value #DEFAULT_URI_NAMESPACE_DICTIONARY})
+         * enables the namespace split encoding for {@link URI}s which are not
+         * otherwise inlined by the {@link Vocabulary} or the
+         * {@link IInlineURIFactory}. When enabled, the namespace of such a
+         * {@link URI} is written once onto the TERM2ID and ID2TERM indices and
+         * the {@link URI} is represented by a {@link URIExtensionIV} combining
+         * the {@link TermId} of that namespace with an inline localName. A
+         * localName which is a non-negative integer in canonical form is
+         * inlined as an <code>xsd:long</code>. Any other localName is inlined
+         * as a string iff its length is not greater than
+         * {@link #URI_NAMESPACE_DICTIONARY_MAX_LOCAL_NAME_LENGTH}. All other
+         * {@link URI}s are written onto the lexicon as usual.
+         * <p>
+         * The namespaces are learned as the data are loaded, so this works
+         * best when a large number of {@link URI}s share a small number of
+         * namespaces. It shrinks the TERM2ID and ID2TERM indices and allows
+         * those {@link URI}s to be materialized from the (cached) namespace
+         * alone. Note that a namespace which is declared by the
+         * {@link Vocabulary} is not used by this encoding. Such namespaces
+         * should be handled by an {@link InlineURIHandler} instead.
+         * <p>
+         * Note: This option effects the encoding of the statement indices and
+         * can not be changed after the database has been created.
+         */
+        String URI_NAMESPACE_DICTIONARY = AbstractTripleStore.class.getName()
+                + ".uriNamespaceDictionary";
+
+        String DEFAULT_URI_NAMESPACE_DICTIONARY = "false";
+
+        /**
+         * The maximum length of a non-numeric localName which will be inlined
+         * when {@link #URI_NAMESPACE_DICTIONARY} is enabled (default
+         * {@value #DEFAULT_URI_NAMESPACE_DICTIONARY_MAX_LOCAL_NAME_LENGTH}).
+         * This option can not be changed after the database has been created.
+         */
+        String URI_NAMESPACE_DICTIONARY_MAX_LOCAL_NAME_LENGTH = AbstractTripleStore.class
+                .getName() + ".uriNamespaceDictionary.maxLocalNameLength";
+
+        String DEFAULT_URI_NAMESPACE_DICTIONARY_MAX_LOCAL_NAME_LENGTH = "32";
+
+        /**
+         * The maximum #of namespaces whose {@link IV}s are cached in memory by
+         * the lexicon when {@link #URI_NAMESPACE_DICTIONARY} is enabled
+         * (default {@value #DEFAULT_URI_NAMESPACE_DICTIONARY_CAPACITY}).
+         * Namespaces which are not cached are resolved against the TERM2ID
+         * index when they are needed.
+         */
+        String URI_NAMESPACE_DICTIONARY_CAPACITY = AbstractTripleStore.class
+                .getName() + ".uriNamespaceDictionary.capacity";
+
+        String DEFAULT_URI_NAMESPACE_DICTIONARY_CAPACITY = "10000";
+
         /**
          * The name of the {@link RDRHistory} class.  Null by default.
          */
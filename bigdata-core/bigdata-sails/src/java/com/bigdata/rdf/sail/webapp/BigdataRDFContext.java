@@ -35,10 +35,12 @@ import java.io.Writer;
 import java.nio.charset.Charset;
 import java.util.Collections;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Properties;
 import java.util.UUID;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
@@ -76,6 +78,7 @@ import org.openrdf.rio.RDFWriter;
 import org.openrdf.rio.RDFWriterRegistry;
 
 import com.bigdata.BigdataStatics;
+import com.bigdata.bop.BOpUtility;
 import com.bigdata.bop.engine.IRunningQuery;
 import com.bigdata.bop.engine.QueryEngine;
 import com.bigdata.bop.fed.QueryEngineFactory;
@@ -392,6 +395,151 @@ public class BigdataRDFContext extends BigdataBaseContext {
      */
     private final ConcurrentHashMap<UUID/* RestAPITask */, TaskAndFutureTask<?>> m_restTasks = new ConcurrentHashMap<UUID, TaskAndFutureTask<?>>();
 
+    /**
+     * The maximum number of prepared queries retained by the end point. Once
+     * this limit is reached, the least recently used prepared query is
+     * discarded and a client presenting its handle will receive a 404 (Not
+     * Found) and must prepare the query again.
+     */
+    static final int MAX_PREPARED_QUERIES = 1000;
+
+    /**
+     * The prepared queries, in access order (LRU).
+     * 
+     * @see #prepareQuery(String, String)
+     * @see #getPreparedQuery(UUID)
+     */
+    private final Map<UUID/* handle */, PreparedQuery> m_preparedQueries = Collections
+            .synchronizedMap(new LinkedHashMap<UUID, PreparedQuery>(16/* initialCapacity */,
+                    .75f/* loadFactor */, true/* accessOrder */) {
+                private static final long serialVersionUID = 1L;
+                @Override
+                protected boolean removeEldestEntry(
+                        final Map.Entry<UUID, PreparedQuery> eldest) {
+                    return size() > MAX_PREPARED_QUERIES;
+                }
+            });
+
+    /**
+     * A SPARQL query which has been parsed once on behalf of a client and may
+     * then be evaluated any number of times, with different bindings, by
+     * presenting its handle. Each evaluation runs against a private copy of
+     * the parsed {@link ASTContainer} since query evaluation annotates the
+     * container with the optimized AST and the query plan.
+     */
+    static class PreparedQuery {
+
+        /** The handle assigned to the prepared query. */
+        final UUID handle;
+
+        /** The query string. */
+        final String queryStr;
+
+        /** The baseURI against which the query was parsed. */
+        final String baseURI;
+
+        /** The parsed query (never handed out directly). */
+        private final ASTContainer astContainer;
+
+        PreparedQuery(final UUID handle, final String queryStr,
+                final String baseURI, final ASTContainer astContainer) {
+
+            if (handle == null)
+                throw new IllegalArgumentException();
+
+            if (astContainer == null)
+                throw new IllegalArgumentException();
+
+            this.handle = handle;
+            this.queryStr = queryStr;
+            this.baseURI = baseURI;
+            this.astContainer = astContainer;
+
+        }
+
+        /**
+         * Return a new copy of the parsed query which may be evaluated.
+         */
+        ASTContainer newASTContainer() {
+
+            final ASTContainer tmp = BOpUtility.deepCopy(astContainer);
+
+            final Properties queryHints = astContainer.getQueryHints();
+
+            if (queryHints != null) {
+
+                // Note: The query hints are not a bop and are not copied.
+                tmp.setQueryHints((Properties) queryHints.clone());
+
+            }
+
+            return tmp;
+
+        }
+
+    }
+
+    /**
+     * Parse a SPARQL query and retain the parsed query so it may be evaluated
+     * repeatedly without being parsed again.
+     * 
+     * @param queryStr
+     *            The query.
+     * @param baseURI
+     *            The baseURI used to parse the query.
+     * 
+     * @return The handle for the prepared query.
+     * 
+     * @throws MalformedQueryException
+     *             if the query could not be parsed.
+     */
+    public UUID prepareQuery(final String queryStr, final String baseURI)
+            throws MalformedQueryException {
+
+        if (queryStr == null)
+            throw new IllegalArgumentException();
+
+        final ASTContainer astContainer = new Bigdata2ASTSPARQLParser()
+                .parseQuery2(queryStr, baseURI);
+
+        final UUID handle = UUID.randomUUID();
+
+        m_preparedQueries.put(handle, new PreparedQuery(handle, queryStr,
+                baseURI, astContainer));
+
+        return handle;
+
+    }
+
+    /**
+     * Return the prepared query for that handle.
+     * 
+     * @param handle
+     *            The handle returned by {@link #prepareQuery(String, String)}.
+     * 
+     * @return The prepared query -or- <code>null</code> if there is no such
+     *         prepared query (including when it has been discarded).
+     */
+    public PreparedQuery getPreparedQuery(final UUID handle) {
+
+        return m_preparedQueries.get(handle);
+
+    }
+
+    /**
+     * Discard a prepared query.
+     * 
+     * @param handle
+     *            The handle returned by {@link #prepareQuery(String, String)}.
+     * 
+     * @return <code>true</code> iff the prepared query was found.
+     */
+    public boolean releasePreparedQuery(final UUID handle) {
+
+        return m_preparedQueries.remove(handle) != null;
+
+    }
+
     /**
      * Return the {@link RunningQuery} for a currently executing SPARQL QUERY or
      * UPDATE request.
@@ -2399,6 +2547,56 @@ public class BigdataRDFContext extends BigdataBaseContext {
         final ASTContainer astContainer = new Bigdata2ASTSPARQLParser()
                 .parseQuery2(queryStr, baseURI);
 
+        return getQueryTask(cxn, namespace, timestamp, baseURI, astContainer,
+                includeInferred, bindings, acceptOverride, req, resp, os);
+
+    }
+
+    /**
+     * Return the task which will execute a prepared SPARQL Query. The query is
+     * NOT parsed again. Instead, the task runs against a copy of the parsed
+     * query retained by {@link #prepareQuery(String, String)}.
+     * 
+     * @param preparedQuery
+     *            The prepared query.
+     * 
+     * @see #getQueryTask(BigdataSailRepositoryConnection, String, long,
+     *      String, boolean, Map, String, HttpServletRequest,
+     *      HttpServletResponse, OutputStream)
+     */
+    public AbstractQueryTask getQueryTask(//
+            final BigdataSailRepositoryConnection cxn,//
+            final String namespace,//
+            final long timestamp,//
+            final PreparedQuery preparedQuery,//
+            final boolean includeInferred, //
+            final Map<String, Value> bindings, //
+            final String acceptOverride,//
+            final HttpServletRequest req,//
+            final HttpServletResponse resp,//
+            final OutputStream os//
+            ) throws MalformedQueryException, IOException {
+
+        return getQueryTask(cxn, namespace, timestamp, preparedQuery.baseURI,
+                preparedQuery.newASTContainer(), includeInferred, bindings,
+                acceptOverride, req, resp, os);
+
+    }
+
+    private AbstractQueryTask getQueryTask(//
+            final BigdataSailRepositoryConnection cxn,//
+            final String namespace,//
+            final long timestamp,//
+            final String baseURI,//
+            final ASTContainer astContainer,//
+            final boolean includeInferred, //
+            final Map<String, Value> bindings, //
+            final String acceptOverride,//
+            final HttpServletRequest req,//
+            final HttpServletResponse resp,//
+            final OutputStream os//
+            ) throws MalformedQueryException, IOException {
+
         if (log.isDebugEnabled())
             log.debug(astContainer.toString());
 
@@ -51,6 +51,7 @@ import org.openrdf.model.Statement;
 import org.openrdf.model.URI;
 import org.openrdf.model.Value;
 import org.openrdf.model.impl.LinkedHashModel;
+import org.openrdf.query.MalformedQueryException;
 import org.openrdf.repository.RepositoryResult;
 import org.openrdf.rio.RDFFormat;
 import org.openrdf.rio.RDFWriter;
@@ -79,6 +80,7 @@ import com.bigdata.rdf.sail.BigdataSailRepositoryConnection;
 import com.bigdata.rdf.sail.sparql.Bigdata2ASTSPARQLParser;
 import com.bigdata.rdf.sail.sparql.ast.SimpleNode;
 import com.bigdata.rdf.sail.webapp.BigdataRDFContext.AbstractQueryTask;
+import com.bigdata.rdf.sail.webapp.BigdataRDFContext.PreparedQuery;
 import com.bigdata.rdf.sail.webapp.BigdataRDFContext.RunningQuery;
 import com.bigdata.rdf.sail.webapp.BigdataRDFContext.UpdateTask;
 import com.bigdata.rdf.sail.webapp.client.ConnectOptions;
@@ -170,6 +172,33 @@ public class QueryServlet extends BigdataRDFServlet {
      */
     static final transient String ATTR_UUID = "uuid";
 
+    /**
+     * The name of the URL query parameter that indicates a request to prepare
+     * the SPARQL query given by {@link #ATTR_QUERY}. The query is parsed once
+     * and the handle for the prepared query is sent back as a
+     * <code>text/plain</code> response entity.
+     * 
+     * @see #ATTR_PREPARED_QUERY
+     */
+    static final transient String ATTR_PREPARE = "prepare";
+
+    /**
+     * The name of the URL query parameter whose value is the handle of a
+     * prepared query. The prepared query is evaluated in place of
+     * {@link #ATTR_QUERY}, together with any bindings given by the request.
+     * A 404 (Not Found) is sent if the handle is not known, in which case the
+     * client should prepare the query again.
+     * 
+     * @see #ATTR_PREPARE
+     */
+    static final transient String ATTR_PREPARED_QUERY = "preparedQuery";
+
+    /**
+     * The name of the URL query parameter whose value is the handle of a
+     * prepared query to be discarded.
+     */
+    static final transient String ATTR_RELEASE_PREPARED_QUERY = "releasePreparedQuery";
+
    /**
     * The name of the URL query parameter which is any of:
     * <dl>
@@ -232,6 +261,16 @@ public class QueryServlet extends BigdataRDFServlet {
             // SPARQL 1.1 UPDATE, see trac 711 for bug report motivating this case
             doSparqlUpdate(req, resp);
             
+        } else if (req.getParameter(ATTR_PREPARE) != null) {
+
+            // Prepare a SPARQL query.
+            doPrepare(req, resp);
+
+        } else if (req.getParameter(ATTR_RELEASE_PREPARED_QUERY) != null) {
+
+            // Discard a prepared SPARQL query.
+            doReleasePreparedQuery(req, resp);
+
 	    } else if (req.getParameter(ATTR_UUID) != null) {
 
             // UUID with caching defeated.
@@ -273,7 +312,12 @@ public class QueryServlet extends BigdataRDFServlet {
     protected void doGet(final HttpServletRequest req,
             final HttpServletResponse resp) throws IOException {
 
-        if (req.getParameter(ATTR_QUERY) != null) {
+        if (req.getParameter(ATTR_PREPARE) != null) {
+
+            doPrepare(req, resp);
+
+        } else if (req.getParameter(ATTR_QUERY) != null
+                || req.getParameter(ATTR_PREPARED_QUERY) != null) {
             
             doSparqlQuery(req, resp);
             
@@ -325,6 +369,120 @@ public class QueryServlet extends BigdataRDFServlet {
 
     }
 
+    /**
+     * Parse a SPARQL query and send back the handle of the prepared query as a
+     * <code>text/plain</code> response entity. The handle may then be given
+     * as the value of {@link #ATTR_PREPARED_QUERY} to evaluate the query,
+     * with different bindings each time, without parsing it again.
+     * <p>
+     * Note: Prepared queries are local to this end point. In HA, a request
+     * directed to another service will report 404 (Not Found) for the handle.
+     */
+    private void doPrepare(final HttpServletRequest req,
+            final HttpServletResponse resp) throws IOException {
+
+        final String queryStr = getQueryString(req);
+
+        if (queryStr == null) {
+
+            buildAndCommitResponse(resp, HTTP_BADREQUEST, MIME_TEXT_PLAIN,
+                    "Not found: query");
+
+            return;
+
+        }
+
+        /*
+         * Setup the baseURI for this request. It will be set to request
+         * parameter "baseURI" or defaults to requestURI if parameter was not
+         * specified.
+         */
+        String baseURI = req.getParameter(BigdataRDFContext.BASE_URI);
+        if (baseURI == null) {
+            baseURI = req.getRequestURL().toString();
+        }
+
+        final UUID handle;
+        try {
+
+            handle = getBigdataRDFContext().prepareQuery(queryStr, baseURI);
+
+        } catch (MalformedQueryException ex) {
+
+            buildAndCommitResponse(resp, HTTP_BADREQUEST, MIME_TEXT_PLAIN,
+                    ex.getLocalizedMessage());
+
+            return;
+
+        } catch (Throwable t) {
+
+            launderThrowable(t, resp, "PREPARE: queryStr=" + queryStr);
+
+            return;
+
+        }
+
+        buildAndCommitResponse(resp, HTTP_OK, MIME_TEXT_PLAIN,
+                handle.toString());
+
+    }
+
+    /**
+     * Discard a prepared SPARQL query.
+     */
+    private void doReleasePreparedQuery(final HttpServletRequest req,
+            final HttpServletResponse resp) throws IOException {
+
+        final UUID handle = getPreparedQueryHandle(req, resp,
+                ATTR_RELEASE_PREPARED_QUERY);
+
+        if (handle == null) {
+            // An error response was already committed.
+            return;
+        }
+
+        if (!getBigdataRDFContext().releasePreparedQuery(handle)) {
+
+            buildAndCommitResponse(resp, HTTP_NOTFOUND, MIME_TEXT_PLAIN,
+                    "Prepared query not found: " + handle);
+
+            return;
+
+        }
+
+        buildAndCommitResponse(resp, HTTP_OK, MIME_TEXT_PLAIN,
+                "Released: " + handle);
+
+    }
+
+    /**
+     * Return the handle of a prepared query given by the named URL query
+     * parameter.
+     * 
+     * @return The handle -or- <code>null</code> if the parameter value is not
+     *         a valid handle, in which case an error response was committed.
+     */
+    private UUID getPreparedQueryHandle(final HttpServletRequest req,
+            final HttpServletResponse resp, final String name)
+            throws IOException {
+
+        final String s = req.getParameter(name);
+
+        try {
+
+            return UUID.fromString(s);
+
+        } catch (IllegalArgumentException ex) {
+
+            buildAndCommitResponse(resp, HTTP_BADREQUEST, MIME_TEXT_PLAIN,
+                    "Bad value: " + name + "=" + s);
+
+            return null;
+
+        }
+
+    }
+
     /**
      * Generate a SPARQL 1.1 Service Description for the addressed triple store
      * or quad store.
@@ -604,7 +762,43 @@ public class QueryServlet extends BigdataRDFServlet {
             return;
         }
 
-        final String queryStr = getQueryString(req);
+        final PreparedQuery preparedQuery;
+        final String queryStr;
+
+        if (req.getParameter(ATTR_PREPARED_QUERY) != null) {
+
+            final UUID handle = getPreparedQueryHandle(req, resp,
+                    ATTR_PREPARED_QUERY);
+
+            if (handle == null) {
+                // An error response was already committed.
+                return;
+            }
+
+            preparedQuery = getBigdataRDFContext().getPreparedQuery(handle);
+
+            if (preparedQuery == null) {
+
+                /*
+                 * Either never prepared or discarded. The client should
+                 * prepare the query again.
+                 */
+                buildAndCommitResponse(resp, HTTP_NOTFOUND, MIME_TEXT_PLAIN,
+                        "Prepared query not found: " + handle);
+
+                return;
+
+            }
+
+            queryStr = preparedQuery.queryStr;
+
+        } else {
+
+            preparedQuery = null;
+
+            queryStr = getQueryString(req);
+
+        }
 
         if (queryStr == null) {
 
@@ -634,7 +828,8 @@ public class QueryServlet extends BigdataRDFServlet {
          final long timestamp = getTimestamp(req);
 
          submitApiTask(
-               new SparqlQueryTask(req, resp, namespace, timestamp, queryStr, includeInferred, bindings,
+               new SparqlQueryTask(req, resp, namespace, timestamp, queryStr,
+                     preparedQuery, includeInferred, bindings,
                      getBigdataRDFContext())).get();
 
       } catch (Throwable t) {
@@ -653,6 +848,7 @@ public class QueryServlet extends BigdataRDFServlet {
     static class SparqlQueryTask extends AbstractRestApiTask<Void> {
 
 		private final String queryStr;
+		private final PreparedQuery preparedQuery;
 		private final BigdataRDFContext context;
 		private final boolean includeInferred;
 		private final Map<String, Value> bindings;
@@ -663,6 +859,24 @@ public class QueryServlet extends BigdataRDFServlet {
             final boolean includeInferred, Map<String, Value> bindings,
             final BigdataRDFContext context) {
 
+         this(req, resp, namespace, timestamp, queryStr, null/* preparedQuery */,
+               includeInferred, bindings, context);
+
+      }
+
+      /**
+       * @param preparedQuery
+       *           The prepared query (optional). When given, the query is
+       *           evaluated from the prepared query rather than parsed from
+       *           <i>queryStr</i>.
+       */
+      public SparqlQueryTask(final HttpServletRequest req,
+            final HttpServletResponse resp, final String namespace,
+            final long timestamp, final String queryStr,
+            final PreparedQuery preparedQuery,
+            final boolean includeInferred, Map<String, Value> bindings,
+            final BigdataRDFContext context) {
+
          super(req, resp, namespace, timestamp);
 
          if (queryStr == null)
@@ -671,6 +885,7 @@ public class QueryServlet extends BigdataRDFServlet {
             throw new IllegalArgumentException();
 
          this.queryStr = queryStr;
+         this.preparedQuery = preparedQuery;
          this.context = context;
          this.includeInferred = includeInferred;
          this.bindings = bindings;
@@ -710,9 +925,13 @@ public class QueryServlet extends BigdataRDFServlet {
 					 * the query.
 					 */
 
-					final AbstractQueryTask queryTask = context.getQueryTask(
-							conn, namespace, timestamp, queryStr, includeInferred, bindings,
-							null/* acceptOverride */, req, resp, os);
+					final AbstractQueryTask queryTask = preparedQuery == null ? context
+							.getQueryTask(conn, namespace, timestamp, queryStr,
+									includeInferred, bindings,
+									null/* acceptOverride */, req, resp, os)
+							: context.getQueryTask(conn, namespace, timestamp,
+									preparedQuery, includeInferred, bindings,
+									null/* acceptOverride */, req, resp, os);
 
 					// /*
 					// * Test the cache.
@@ -38,6 +38,7 @@ import com.bigdata.bop.join.HTreeHashJoinOp;
 import com.bigdata.bop.join.JVMHashJoinOp;
 import com.bigdata.bop.join.PipelineJoin;
 import com.bigdata.bop.joinGraph.IEvaluationPlan;
+import com.bigdata.btree.AbstractBTree;
 import com.bigdata.btree.IRangeQuery;
 import com.bigdata.btree.ITuple;
 import com.bigdata.btree.ITupleCursor;
@@ -356,6 +357,41 @@ public interface IPredicate<E> extends BOp, Cloneable, Serializable {
          */
         final long DEFAULT_CUTOFF_LIMIT = Long.MAX_VALUE;
 
+        /**
+         * The #of key-range splits which will be scanned concurrently when
+         * the {@link AccessPath} is read using an asynchronous iterator
+         * (default {@value #DEFAULT_PARALLEL_SCAN_THREADS}). When GT ONE, the
+         * key-range of the access path is divided into that many sub-ranges
+         * having roughly the same #of tuples and each sub-range is read by its
+         * own task. This only applies to read-only views of a local
+         * {@link AbstractBTree} (the Journal) and only when there is no filter
+         * on the predicate.
+         * <p>
+         * Note: The elements are NOT visited in the natural order of the index
+         * when the access path is scanned in parallel.
+         * 
+         * @see #PARALLEL_SCAN_THRESHOLD
+         */
+        String PARALLEL_SCAN_THREADS = IPredicate.class.getName()
+                + ".parallelScanThreads";
+
+        /**
+         * The default is a single threaded scan.
+         */
+        int DEFAULT_PARALLEL_SCAN_THREADS = 1;
+
+        /**
+         * The minimum estimated range count before an access path will be
+         * scanned in parallel (default
+         * {@value #DEFAULT_PARALLEL_SCAN_THRESHOLD}).
+         * 
+         * @see #PARALLEL_SCAN_THREADS
+         */
+        String PARALLEL_SCAN_THRESHOLD = IPredicate.class.getName()
+                + ".parallelScanThreshold";
+
+        long DEFAULT_PARALLEL_SCAN_THRESHOLD = 100000L;
+
     }
     
     /**
@@ -0,0 +1,33 @@
+package com.bigdata.bop.aggregate;
+
+import com.bigdata.bop.IBindingSet;
+
+/**
+ * An {@link IAggregate} whose internal state may be computed as a set of
+ * independent partial states (for example, one per thread) which are then
+ * combined. This is the contract required for parallel partial aggregation.
+ * <p>
+ * Note: The merge is only defined for the non-DISTINCT form of the aggregate.
+ */
+public interface IMergeableAggregate<E> extends IAggregate<E> {
+
+    /**
+     * Merge the internal state of another partial aggregate into the state of
+     * this aggregate. The other aggregate MUST be an instance of the same
+     * class and MUST have been evaluated against a disjoint subset of the
+     * solutions in the same group. The state of the other aggregate is not
+     * modified.
+     * <p>
+     * Note: If the other aggregate has a "sticky" error (see
+     * {@link IAggregate#get(IBindingSet)}) then that error becomes the error
+     * for this aggregate unless this aggregate already has an error.
+     * 
+     * @param o
+     *            The other partial aggregate.
+     * 
+     * @throws ClassCastException
+     *             if the other aggregate is not an instance of the same class.
+     */
+    void merge(IMergeableAggregate<E> o);
+
+}
@@ -0,0 +1,362 @@
+/**
+
+Copyright (C) SYSTAP, LLC DBA Blazegraph 2006-2016.  All rights reserved.
+
+Contact:
+     SYSTAP, LLC DBA Blazegraph
+     2501 Calvert ST NW #106
+     Washington, DC 20008
+     licenses@blazegraph.com
+
+This program is free software; you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation; version 2 of the License.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program; if not, write to the Free Software
+Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+
+package com.bigdata.bop.join;
+
+import java.math.BigInteger;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.FutureTask;
+
+import com.bigdata.bop.BOp;
+import com.bigdata.bop.BOpContext;
+import com.bigdata.bop.BOpUtility;
+import com.bigdata.bop.Constant;
+import com.bigdata.bop.IBindingSet;
+import com.bigdata.bop.IConstraint;
+import com.bigdata.bop.IPredicate;
+import com.bigdata.bop.IVariable;
+import com.bigdata.bop.NV;
+import com.bigdata.bop.PipelineOp;
+import com.bigdata.bop.bindingSet.ListBindingSet;
+import com.bigdata.bop.engine.BOpStats;
+import com.bigdata.rdf.internal.IV;
+import com.bigdata.rdf.internal.impl.literal.XSDIntegerIV;
+import com.bigdata.rdf.spo.DistinctMultiTermAdvancer;
+import com.bigdata.relation.IRelation;
+import com.bigdata.relation.accesspath.AccessPath;
+import com.bigdata.relation.accesspath.IAccessPath;
+import com.bigdata.relation.accesspath.IBlockingBuffer;
+import com.bigdata.relation.accesspath.UnsyncLocalOutputBuffer;
+import com.bigdata.striterator.IChunkedIterator;
+
+/**
+ * Index-only evaluation of
+ * <code>SELECT (COUNT(DISTINCT ?o) AS ?n) { ?s :p ?o }</code> and similar
+ * patterns. For each source solution, the operator walks the distinct values
+ * of the {@link Annotations#DISTINCT_VAR} for the as-bound predicate (using the
+ * {@link DistinctMultiTermAdvancer} when some positions are bound to constants)
+ * and binds the {@link Annotations#COUNT_VAR} to the number of distinct values
+ * visited. Unlike a {@link DistinctTermScanOp}, nothing is bound for the
+ * distinct variable, so the cost is O(N) key probes for N distinct values and
+ * no solutions need to flow into a DISTINCT filter and a COUNT aggregate.
+ * <p>
+ * As for the {@link FastRangeCountOp}, this is a 1:1 operator: every source
+ * solution produces exactly one count (which may be zero).
+ * 
+ * @see DistinctTermScanOp
+ * @see DistinctTermRangeCountOp
+ */
+public class DistinctTermCountOp<E> extends PipelineOp {
+
+    /**
+     * 
+     */
+    private static final long serialVersionUID = 1L;
+
+    public interface Annotations extends DistinctTermScanOp.Annotations,
+            FastRangeCountOp.Annotations {
+
+    }
+
+    /**
+     * Deep copy constructor.
+     * 
+     * @param op
+     */
+    public DistinctTermCountOp(final DistinctTermCountOp<E> op) {
+
+        super(op);
+
+    }
+
+    /**
+     * Shallow copy constructor.
+     * 
+     * @param args
+     * @param annotations
+     */
+    public DistinctTermCountOp(final BOp[] args,
+            final Map<String, Object> annotations) {
+
+        super(args, annotations);
+
+        // MUST be given.
+        getDistinctVar();
+        getCountVar();
+        getRequiredProperty(Annotations.PREDICATE);
+
+        if (getPredicate().isOptional()) {
+
+            // OPTIONAL is not implemented for this operator.
+            throw new UnsupportedOperationException();
+
+        }
+
+    }
+
+    public DistinctTermCountOp(final BOp[] args, final NV... annotations) {
+
+        this(args, NV.asMap(annotations));
+
+    }
+
+    /**
+     * @see Annotations#DISTINCT_VAR
+     */
+    protected IVariable<?> getDistinctVar() {
+
+        return (IVariable<?>) getRequiredProperty(Annotations.DISTINCT_VAR);
+
+    }
+
+    /**
+     * @see Annotations#COUNT_VAR
+     */
+    protected IVariable<?> getCountVar() {
+
+        return (IVariable<?>) getRequiredProperty(Annotations.COUNT_VAR);
+
+    }
+
+    /**
+     * @see Annotations#SELECT
+     */
+    protected IVariable<?>[] getSelect() {
+
+        return getProperty(Annotations.SELECT, null/* defaultValue */);
+
+    }
+
+    /**
+     * @see Annotations#CONSTRAINTS
+     */
+    protected IConstraint[] constraints() {
+
+        return getProperty(Annotations.CONSTRAINTS, null/* defaultValue */);
+
+    }
+
+    @SuppressWarnings("unchecked")
+    public IPredicate<E> getPredicate() {
+
+        return (IPredicate<E>) getRequiredProperty(Annotations.PREDICATE);
+
+    }
+
+    @Override
+    public FutureTask<Void> eval(final BOpContext<IBindingSet> context) {
+
+        return new FutureTask<Void>(new ChunkTask<E>(this, context));
+
+    }
+
+    static private class ChunkTask<E> implements Callable<Void> {
+
+        private final DistinctTermCountOp<E> op;
+
+        private final BOpContext<IBindingSet> context;
+
+        /**
+         * The variable whose distinct values are counted.
+         */
+        private final IVariable<?> distinctVar;
+
+        /**
+         * The variable that gets bound to the number of distinct values.
+         */
+        private final IVariable<?> countVar;
+
+        /**
+         * The source for the elements to be counted.
+         */
+        private final IPredicate<E> predicate;
+
+        /**
+         * The relation associated with the {@link #predicate} operand.
+         */
+        private final IRelation<E> relation;
+
+        ChunkTask(final DistinctTermCountOp<E> op,
+                final BOpContext<IBindingSet> context) {
+
+            this.op = op;
+
+            this.context = context;
+
+            this.distinctVar = op.getDistinctVar();
+
+            this.countVar = op.getCountVar();
+
+            this.predicate = op.getPredicate();
+
+            this.relation = context.getRelation(predicate);
+
+        }
+
+        @Override
+        public Void call() throws Exception {
+
+            final BOpStats stats = context.getStats();
+
+            // Convert source solutions to array (assumes low cardinality).
+            final IBindingSet[] leftSolutions = BOpUtility.toArray(
+                    context.getSource(), stats);
+
+            // default sink
+            final IBlockingBuffer<IBindingSet[]> sink = context.getSink();
+
+            /*
+             * This is at most 1:1 operator (see FastRangeCountOp).
+             */
+            final UnsyncLocalOutputBuffer<IBindingSet> unsyncBuffer = new UnsyncLocalOutputBuffer<IBindingSet>(
+                    leftSolutions.length/* capacity */, sink);
+
+            final IVariable<?>[] selectVars = op.getSelect();
+
+            final IConstraint[] constraints = op.constraints();
+
+            try {
+
+                // For each source solution.
+                for (IBindingSet bindingSet : leftSolutions) {
+
+                    // constrain the predicate to the given bindings.
+                    final IPredicate<E> asBound = predicate.asBound(bindingSet);
+
+                    if (asBound == null) {
+
+                        // Can not be unified (see DistinctTermScanOp).
+                        continue;
+
+                    }
+
+                    final long count = countDistinct(asBound,
+                            bindingSet.isBound(distinctVar));
+
+                    // New binding set.
+                    final IBindingSet right = new ListBindingSet();
+
+                    // Note: per the spec, SPARQL expects an xsd:integer here.
+                    right.set(countVar, new Constant<XSDIntegerIV>(
+                            new XSDIntegerIV(BigInteger.valueOf(count))));
+
+                    // See if the solutions join.
+                    final IBindingSet outSolution = BOpContext.bind(//
+                            bindingSet,// left
+                            right,//
+                            constraints,//
+                            selectVars//
+                            );
+
+                    if (outSolution != null) {
+
+                        // Output the solution.
+                        unsyncBuffer.add(outSolution);
+
+                    }
+
+                }
+
+                // flush the unsync buffer.
+                unsyncBuffer.flush();
+
+                // flush the sink.
+                sink.flush();
+
+                // Done.
+                return null;
+
+            } finally {
+
+                sink.close();
+
+                context.getSource().close();
+
+            }
+
+        }
+
+        /**
+         * Count the distinct values of the {@link #distinctVar} for the
+         * as-bound predicate.
+         * 
+         * @param asBound
+         *            The as-bound predicate.
+         * @param distinctVarIsBound
+         *            <code>true</code> iff the distinct variable was bound by
+         *            the source solution, in which case there is at most one
+         *            distinct value.
+         */
+        private long countDistinct(final IPredicate<E> asBound,
+                final boolean distinctVarIsBound) {
+
+            final IAccessPath<E> accessPath = context.getAccessPath(relation,
+                    asBound);
+
+            if (accessPath.getPredicate().getIndexLocalFilter() != null) {
+                // index has local filter. requires scan.
+                throw new AssertionError();
+            }
+
+            if (accessPath.getPredicate().getAccessPathFilter() != null) {
+                // access path filter exists. requires scan.
+                throw new AssertionError();
+            }
+
+            if (distinctVarIsBound) {
+
+                return accessPath.isEmpty() ? 0L : 1L;
+
+            }
+
+            // TODO Cast to AccessPath is not type safe.
+            final IChunkedIterator<IV> itr = DistinctTermScanOp
+                    .distinctTermScan((AccessPath<E>) accessPath, null/* termIdFilter */);
+
+            try {
+
+                long n = 0L;
+
+                while (itr.hasNext()) {
+
+                    itr.next();
+
+                    n++;
+
+                }
+
+                return n;
+
+            } finally {
+
+                itr.close();
+
+            }
+
+        }
+
+    } // class ChunkTask
+
+}
@@ -0,0 +1,404 @@
+/**
+
+Copyright (C) SYSTAP, LLC DBA Blazegraph 2006-2016.  All rights reserved.
+
+Contact:
+     SYSTAP, LLC DBA Blazegraph
+     2501 Calvert ST NW #106
+     Washington, DC 20008
+     licenses@blazegraph.com
+
+This program is free software; you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation; version 2 of the License.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program; if not, write to the Free Software
+Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+
+package com.bigdata.bop.join;
+
+import java.math.BigInteger;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.FutureTask;
+
+import com.bigdata.bop.BOp;
+import com.bigdata.bop.BOpContext;
+import com.bigdata.bop.BOpUtility;
+import com.bigdata.bop.Constant;
+import com.bigdata.bop.IBindingSet;
+import com.bigdata.bop.IConstraint;
+import com.bigdata.bop.IPredicate;
+import com.bigdata.bop.IVariable;
+import com.bigdata.bop.NV;
+import com.bigdata.bop.PipelineOp;
+import com.bigdata.bop.bindingSet.ListBindingSet;
+import com.bigdata.bop.engine.BOpStats;
+import com.bigdata.rdf.internal.IV;
+import com.bigdata.rdf.internal.impl.literal.XSDIntegerIV;
+import com.bigdata.relation.IRelation;
+import com.bigdata.relation.accesspath.AccessPath;
+import com.bigdata.relation.accesspath.IAccessPath;
+import com.bigdata.relation.accesspath.IBlockingBuffer;
+import com.bigdata.relation.accesspath.UnsyncLocalOutputBuffer;
+import com.bigdata.striterator.IChunkedIterator;
+
+/**
+ * Index-only evaluation of
+ * <code>SELECT ?z (COUNT(*) AS ?n) { triple-pattern } GROUP BY ?z</code>. The
+ * operator combines a {@link DistinctTermScanOp} with a
+ * {@link FastRangeCountOp}: it walks the distinct values of the
+ * {@link Annotations#DISTINCT_VAR} using the distinct term advancer and, for
+ * each such value, binds the {@link Annotations#COUNT_VAR} to the exact range
+ * count of the access path for the predicate with the distinct variable bound
+ * to that value. Since the key order of the predicate places the distinct
+ * variable right after the constants, each range count is two key probes.
+ * Thus the cost of this operator is O(3N) where N is the number of distinct
+ * groups, and neither the group table nor the source solutions for the GROUP
+ * BY are ever materialized.
+ * <p>
+ * The predicate must not be associated with an index local filter or an access
+ * path filter and the index must not use delete markers, since any of those
+ * would turn the range counts into key-range scans.
+ * 
+ * @see DistinctTermScanOp
+ * @see FastRangeCountOp
+ */
+public class DistinctTermRangeCountOp<E> extends PipelineOp {
+
+    /**
+     * 
+     */
+    private static final long serialVersionUID = 1L;
+
+    public interface Annotations extends DistinctTermScanOp.Annotations,
+            FastRangeCountOp.Annotations {
+
+    }
+
+    /**
+     * Deep copy constructor.
+     * 
+     * @param op
+     */
+    public DistinctTermRangeCountOp(final DistinctTermRangeCountOp<E> op) {
+
+        super(op);
+
+    }
+
+    /**
+     * Shallow copy constructor.
+     * 
+     * @param args
+     * @param annotations
+     */
+    public DistinctTermRangeCountOp(final BOp[] args,
+            final Map<String, Object> annotations) {
+
+        super(args, annotations);
+
+        // MUST be given.
+        getDistinctVar();
+        getCountVar();
+        getRequiredProperty(Annotations.PREDICATE);
+
+        if (getPredicate().isOptional()) {
+
+            // OPTIONAL is not implemented for this operator.
+            throw new UnsupportedOperationException();
+
+        }
+
+    }
+
+    public DistinctTermRangeCountOp(final BOp[] args, final NV... annotations) {
+
+        this(args, NV.asMap(annotations));
+
+    }
+
+    /**
+     * @see Annotations#DISTINCT_VAR
+     */
+    protected IVariable<?> getDistinctVar() {
+
+        return (IVariable<?>) getRequiredProperty(Annotations.DISTINCT_VAR);
+
+    }
+
+    /**
+     * @see Annotations#COUNT_VAR
+     */
+    protected IVariable<?> getCountVar() {
+
+        return (IVariable<?>) getRequiredProperty(Annotations.COUNT_VAR);
+
+    }
+
+    /**
+     * @see Annotations#SELECT
+     */
+    protected IVariable<?>[] getSelect() {
+
+        return getProperty(Annotations.SELECT, null/* defaultValue */);
+
+    }
+
+    /**
+     * @see Annotations#CONSTRAINTS
+     */
+    protected IConstraint[] constraints() {
+
+        return getProperty(Annotations.CONSTRAINTS, null/* defaultValue */);
+
+    }
+
+    @SuppressWarnings("unchecked")
+    public IPredicate<E> getPredicate() {
+
+        return (IPredicate<E>) getRequiredProperty(Annotations.PREDICATE);
+
+    }
+
+    @Override
+    public FutureTask<Void> eval(final BOpContext<IBindingSet> context) {
+
+        return new FutureTask<Void>(new ChunkTask<E>(this, context));
+
+    }
+
+    static private class ChunkTask<E> implements Callable<Void> {
+
+        private final DistinctTermRangeCountOp<E> op;
+
+        private final BOpContext<IBindingSet> context;
+
+        /**
+         * The variable that gets bound to the distinct values by the scan.
+         */
+        private final IVariable<?> distinctVar;
+
+        /**
+         * The variable that gets bound to the range count for each distinct
+         * value.
+         */
+        private final IVariable<?> countVar;
+
+        /**
+         * The source for the elements to be counted.
+         */
+        private final IPredicate<E> predicate;
+
+        /**
+         * The relation associated with the {@link #predicate} operand.
+         */
+        private final IRelation<E> relation;
+
+        ChunkTask(final DistinctTermRangeCountOp<E> op,
+                final BOpContext<IBindingSet> context) {
+
+            this.op = op;
+
+            this.context = context;
+
+            this.distinctVar = op.getDistinctVar();
+
+            this.countVar = op.getCountVar();
+
+            this.predicate = op.getPredicate();
+
+            this.relation = context.getRelation(predicate);
+
+        }
+
+        @Override
+        public Void call() throws Exception {
+
+            final BOpStats stats = context.getStats();
+
+            // Convert source solutions to array (assumes low cardinality).
+            final IBindingSet[] leftSolutions = BOpUtility.toArray(
+                    context.getSource(), stats);
+
+            // default sink
+            final IBlockingBuffer<IBindingSet[]> sink = context.getSink();
+
+            final UnsyncLocalOutputBuffer<IBindingSet> unsyncBuffer = new UnsyncLocalOutputBuffer<IBindingSet>(
+                    op.getChunkCapacity(), sink);
+
+            final IVariable<?>[] selectVars = op.getSelect();
+
+            final IConstraint[] constraints = op.constraints();
+
+            try {
+
+                // For each source solution.
+                for (IBindingSet bindingSet : leftSolutions) {
+
+                    // constrain the predicate to the given bindings.
+                    final IPredicate<E> asBound = predicate.asBound(bindingSet);
+
+                    if (asBound == null) {
+
+                        // Can not be unified (see DistinctTermScanOp).
+                        continue;
+
+                    }
+
+                    if (bindingSet.isBound(distinctVar)) {
+
+                        /*
+                         * The group is fixed by the source solution. A single
+                         * range count gives its size. An empty range is not a
+                         * group.
+                         */
+
+                        final long rangeCount = rangeCount(asBound);
+
+                        if (rangeCount > 0) {
+
+                            emit(unsyncBuffer, bindingSet, null/* term */,
+                                    rangeCount, constraints, selectVars);
+
+                        }
+
+                        continue;
+
+                    }
+
+                    final IAccessPath<E> accessPath = getAccessPath(asBound);
+
+                    // TODO Cast to AccessPath is not type safe.
+                    final IChunkedIterator<IV> itr = DistinctTermScanOp
+                            .distinctTermScan((AccessPath<E>) accessPath, null/* termIdFilter */);
+
+                    try {
+
+                        while (itr.hasNext()) {
+
+                            final IV<?, ?> term = itr.next();
+
+                            // Two key probes for the size of this group.
+                            final long rangeCount = rangeCount(asBound.asBound(
+                                    distinctVar, new Constant<IV<?, ?>>(term)));
+
+                            emit(unsyncBuffer, bindingSet, term, rangeCount,
+                                    constraints, selectVars);
+
+                        }
+
+                    } finally {
+
+                        itr.close();
+
+                    }
+
+                }
+
+                // flush the unsync buffer.
+                unsyncBuffer.flush();
+
+                // flush the sink.
+                sink.flush();
+
+                // Done.
+                return null;
+
+            } finally {
+
+                sink.close();
+
+                context.getSource().close();
+
+            }
+
+        }
+
+        /**
+         * Bind the distinct term (unless it was already bound on input) and the
+         * count and output the solution if it joins with the source solution.
+         */
+        @SuppressWarnings({ "rawtypes", "unchecked" })
+        private void emit(final UnsyncLocalOutputBuffer<IBindingSet> out,
+                final IBindingSet left, final IV<?, ?> term,
+                final long rangeCount, final IConstraint[] constraints,
+                final IVariable<?>[] selectVars) {
+
+            // New binding set.
+            final IBindingSet right = new ListBindingSet();
+
+            if (term != null) {
+
+                right.set(distinctVar, new Constant(term));
+
+            }
+
+            // Note: per the spec, SPARQL expects an xsd:integer here.
+            right.set(countVar, new Constant<XSDIntegerIV>(new XSDIntegerIV(
+                    BigInteger.valueOf(rangeCount))));
+
+            // See if the solutions join.
+            final IBindingSet outSolution = BOpContext.bind(//
+                    left,// left
+                    right,//
+                    constraints,//
+                    selectVars//
+                    );
+
+            if (outSolution != null) {
+
+                // Output the solution.
+                out.add(outSolution);
+
+            }
+
+        }
+
+        /**
+         * Return the access path for the as-bound predicate.
+         * 
+         * @throws AssertionError
+         *             if the access path has a filter (this would turn the
+         *             index-only evaluation into a key-range scan).
+         */
+        private IAccessPath<E> getAccessPath(final IPredicate<E> asBound) {
+
+            final IAccessPath<E> accessPath = context.getAccessPath(relation,
+                    asBound);
+
+            if (accessPath.getPredicate().getIndexLocalFilter() != null) {
+                // index has local filter. requires scan.
+                throw new AssertionError();
+            }
+
+            if (accessPath.getPredicate().getAccessPathFilter() != null) {
+                // access path filter exists. requires scan.
+                throw new AssertionError();
+            }
+
+            return accessPath;
+
+        }
+
+        /**
+         * Return the exact range count for the as-bound predicate. This is two
+         * key probes since we have verified that there are no filters imposed
+         * on the access path.
+         */
+        private long rangeCount(final IPredicate<E> asBound) {
+
+            return getAccessPath(asBound).rangeCount(true/* exact */);
+
+        }
+
+    } // class ChunkTask
+
+}
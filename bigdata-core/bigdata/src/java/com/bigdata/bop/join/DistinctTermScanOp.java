@@ -193,6 +193,27 @@ public class DistinctTermScanOp<E> extends PipelineOp {
 
 	}
 
+	/**
+	 * Return an iterator visiting the distinct terms in the first unbound
+	 * position of the key for the given access path. This exposes the scan
+	 * used by this operator to the other index-only operators in this package.
+	 * 
+	 * @param ap
+	 *            The access path (its key order must place the constants of
+	 *            the predicate before the distinct variable).
+	 * @param termIdFilter
+	 *            An optional filter on the visited {@link IV}s.
+	 * 
+	 * @see DistinctTermCountOp
+	 * @see DistinctTermRangeCountOp
+	 */
+	static <E> IChunkedIterator<IV> distinctTermScan(final AccessPath<E> ap,
+			final ITermIVFilter termIdFilter) {
+
+		return ChunkTask.distinctTermScan(ap, termIdFilter);
+
+	}
+
 	@Override
     public FutureTask<Void> eval(final BOpContext<IBindingSet> context) {
 
@@ -43,10 +43,12 @@ import com.bigdata.bop.IShardwisePipelineOp;
 import com.bigdata.bop.IVariable;
 import com.bigdata.bop.NV;
 import com.bigdata.bop.PipelineOp;
+import com.bigdata.bop.ap.Predicate;
 import com.bigdata.bop.controller.INamedSolutionSetRef;
 import com.bigdata.bop.controller.NamedSetAnnotations;
 import com.bigdata.relation.IRelation;
 import com.bigdata.relation.accesspath.AbstractUnsynchronizedArrayBuffer;
+import com.bigdata.relation.accesspath.ElementFilter;
 import com.bigdata.relation.accesspath.IAccessPath;
 import com.bigdata.relation.accesspath.IBindingSetAccessPath;
 import com.bigdata.relation.accesspath.IBlockingBuffer;
@@ -77,6 +79,41 @@ abstract public class HashJoinOp<E> extends PipelineOp implements
     public interface Annotations extends AccessPathJoinAnnotations,
             NamedSetAnnotations, HashJoinAnnotations {
 
+        /**
+         * When <code>true</code>, a {@link JoinKeyBloomFilter} is built from
+         * the solutions buffered on the hash index and pushed down onto the
+         * predicate as an index local filter before the access path is
+         * scanned (default {@value #DEFAULT_BLOOM_FILTER}). Elements whose
+         * join variables do not appear in any buffered solution are then
+         * dropped inside the index scan rather than being probed against the
+         * hash index.
+         * 
+         * @see JoinKeyBloomFilter
+         */
+        String BLOOM_FILTER = HashJoinOp.class.getName() + ".bloomFilter";
+
+        boolean DEFAULT_BLOOM_FILTER = false;
+
+        /**
+         * The target false positive rate for the {@link #BLOOM_FILTER}
+         * (default {@value #DEFAULT_BLOOM_FILTER_ERROR_RATE}).
+         */
+        String BLOOM_FILTER_ERROR_RATE = HashJoinOp.class.getName()
+                + ".bloomFilterErrorRate";
+
+        double DEFAULT_BLOOM_FILTER_ERROR_RATE = 0.02d;
+
+        /**
+         * The maximum #of solutions buffered on the hash index for which the
+         * {@link #BLOOM_FILTER} will be built (default
+         * {@value #DEFAULT_BLOOM_FILTER_MAX_SOLUTIONS}). Beyond this, the
+         * filter would be large and would reject few elements.
+         */
+        String BLOOM_FILTER_MAX_SOLUTIONS = HashJoinOp.class.getName()
+                + ".bloomFilterMaxSolutions";
+
+        int DEFAULT_BLOOM_FILTER_MAX_SOLUTIONS = 1000000;
+
     }
 
     /**
@@ -355,7 +392,59 @@ abstract public class HashJoinOp<E> extends PipelineOp implements
         private IBindingSetAccessPath<?> getAccessPath() {
 
             return (IBindingSetAccessPath<?>) context.getAccessPath(relation,
-                    pred);
+                    getFilteredPredicate());
+
+        }
+
+        /**
+         * Return the predicate for the access path. When the
+         * {@link Annotations#BLOOM_FILTER} is enabled, this is the predicate
+         * with a {@link JoinKeyBloomFilter} layered on as an index local
+         * filter.
+         */
+        private IPredicate<E> getFilteredPredicate() {
+
+            if (!op.getProperty(Annotations.BLOOM_FILTER,
+                    Annotations.DEFAULT_BLOOM_FILTER)) {
+
+                return pred;
+
+            }
+
+            if (!(pred instanceof Predicate)) {
+
+                return pred;
+
+            }
+
+            final long n = state.getRightSolutionCount();
+
+            if (n > op.getProperty(Annotations.BLOOM_FILTER_MAX_SOLUTIONS,
+                    Annotations.DEFAULT_BLOOM_FILTER_MAX_SOLUTIONS)) {
+
+                return pred;
+
+            }
+
+            final JoinKeyBloomFilter<E> test = JoinKeyBloomFilter.newInstance(
+                    pred,
+                    state.getJoinVars(),
+                    state.indexScan(),
+                    n,
+                    op.getProperty(Annotations.BLOOM_FILTER_ERROR_RATE,
+                            Annotations.DEFAULT_BLOOM_FILTER_ERROR_RATE));
+
+            if (log.isInfoEnabled())
+                log.info("bloomFilter=" + test);
+
+            if (test == null) {
+
+                return pred;
+
+            }
+
+            return ((Predicate<E>) pred).addIndexLocalFilter(ElementFilter
+                    .newInstance(test));
 
         }
         
@@ -21,13 +21,20 @@ Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
  */
 package com.bigdata.bop.join;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
 
 import org.apache.log4j.Logger;
 
@@ -46,6 +53,12 @@ import com.bigdata.counters.CAT;
  * because it enjoys better concurrency than the {@link JVMHashIndex}. Also see
  * {@link JVMDistinctFilter}, which is the backing implementation for the
  * {@link JVMDistinctBindingSetsOp}.
+ * <p>
+ * The index may be divided into partitions. Each solution is assigned to a
+ * partition by the hash code of its as-bound key. Since a key always maps
+ * onto the same partition, each partition is an independent hash index and
+ * {@link #addAll(IBindingSet[], Executor)} can build the partitions
+ * concurrently, one task per partition, without any locking.
  * 
  * @see JVMDistinctFilter
  * 
@@ -441,9 +454,9 @@ public class JVMHashIndex {
     private final boolean indexSolutionsHavingUnboundJoinVars;
 
     /**
-     * The backing map - this is NOT thread safe.
+     * The backing maps (one per partition) - these are NOT thread safe.
      */
-    private final Map<Key, Bucket> map;
+    private final List<Map<Key, Bucket>> partitions;
 
     /**
      * @param keyVars
@@ -473,6 +486,30 @@ public class JVMHashIndex {
             final boolean indexSolutionsHavingUnboundJoinVars,
             final Map<Key, Bucket> map) {
 
+        this(keyVars, indexSolutionsHavingUnboundJoinVars, Collections
+                .singletonList(map));
+
+    }
+
+    /**
+     * Create a partitioned hash index.
+     * 
+     * @param keyVars
+     *            The variables that are used to form the keys in the hash
+     *            index.
+     * @param indexSolutionsHavingUnboundJoinVars
+     *            When <code>true</code>, we allow solutions to be stored in the
+     *            hash index that have unbound variables for the
+     *            {@link #keyVars}.
+     * @param partitions
+     *            The backing maps (one per partition, at least one).
+     * 
+     * @see #JVMHashIndex(IVariable[], boolean, Map)
+     */
+    public JVMHashIndex(final IVariable<?>[] keyVars,
+            final boolean indexSolutionsHavingUnboundJoinVars,
+            final List<Map<Key, Bucket>> partitions) {
+
         if (keyVars == null) {
        
             /*
@@ -486,13 +523,20 @@ public class JVMHashIndex {
 
         }
         
-        if (map == null) {
+        if (partitions == null || partitions.isEmpty()) {
         
             throw new IllegalArgumentException();
             
         }
 
-        this.map = map;
+        for (Map<Key, Bucket> map : partitions) {
+
+            if (map == null)
+                throw new IllegalArgumentException();
+
+        }
+
+        this.partitions = partitions;
 
         this.indexSolutionsHavingUnboundJoinVars = indexSolutionsHavingUnboundJoinVars;
 
@@ -567,11 +611,23 @@ public class JVMHashIndex {
          * JVMHashIndexOp. We would also have to update AST2BOpUtility to
          * generate the appropriate annotations.]
          */
-        Bucket b = map.get(key);
+        add(getPartition(key), key, bset);
+
+        return key;
+
+    }
+
+    /**
+     * Add the solution to the map.
+     */
+    private static void add(final Map<Key, Bucket> map, final Key key,
+            final IBindingSet bset) {
+
+        final Bucket b = map.get(key);
 
         if (b == null) {
 
-            map.put(key, b = new Bucket(key.hash, bset));
+            map.put(key, new Bucket(key.hash, bset));
 
         } else {
 
@@ -579,7 +635,221 @@ public class JVMHashIndex {
 
         }
 
-        return key;
+    }
+
+    /**
+     * Add the solutions to the index. If the index has more than one partition
+     * and an {@link Executor} is given, then the solutions are first assigned
+     * to their partitions and the partitions are then built concurrently (one
+     * task per partition). The solutions within each partition are added in
+     * the given order, but the order of the solutions across the partitions is
+     * not preserved.
+     * 
+     * @param all
+     *            The solutions.
+     * @param executor
+     *            The executor used to build the partitions (optional). One of
+     *            the partitions is always built by the caller's thread.
+     * 
+     * @return The #of solutions added to the index. Solutions for which a
+     *         {@link Key} could not be formed are dropped.
+     */
+    public long addAll(final IBindingSet[] all, final Executor executor)
+            throws InterruptedException, ExecutionException {
+
+        final int npartitions = partitions.size();
+
+        if (npartitions == 1 || executor == null) {
+
+            long naccepted = 0;
+
+            for (IBindingSet bset : all) {
+
+                if (add(bset) != null)
+                    naccepted++;
+
+            }
+
+            return naccepted;
+
+        }
+
+        /*
+         * Form the keys and assign each solution to a partition.
+         */
+        final Key[] keys = new Key[all.length];
+
+        final int[] partitionOf = new int[all.length];
+
+        final int[] counts = new int[npartitions];
+
+        for (int i = 0; i < all.length; i++) {
+
+            final Key key = keys[i] = makeKey(all[i]);
+
+            if (key == null) {
+
+                // Drop solution.
+                partitionOf[i] = -1;
+
+                continue;
+
+            }
+
+            counts[partitionOf[i] = partitionOf(key.hash)]++;
+
+        }
+
+        /*
+         * The indices of the solutions in each partition (in their given
+         * order).
+         */
+        final int[][] rows = new int[npartitions][];
+
+        for (int p = 0; p < npartitions; p++) {
+
+            rows[p] = new int[counts[p]];
+
+            counts[p] = 0;
+
+        }
+
+        for (int i = 0; i < all.length; i++) {
+
+            final int p = partitionOf[i];
+
+            if (p != -1)
+                rows[p][counts[p]++] = i;
+
+        }
+
+        final List<FutureTask<Long>> tasks = new ArrayList<FutureTask<Long>>(
+                npartitions);
+
+        for (int p = 0; p < npartitions; p++) {
+
+            if (rows[p].length == 0)
+                continue;
+
+            tasks.add(new FutureTask<Long>(new BuildPartitionTask(partitions
+                    .get(p), all, keys, rows[p])));
+
+        }
+
+        long naccepted = 0;
+
+        try {
+
+            for (int t = 1; t < tasks.size(); t++) {
+
+                executor.execute(tasks.get(t));
+
+            }
+
+            if (!tasks.isEmpty()) {
+
+                // Build one partition in the caller's thread.
+                tasks.get(0).run();
+
+            }
+
+            for (FutureTask<Long> ft : tasks) {
+
+                naccepted += ft.get();
+
+            }
+
+        } finally {
+
+            for (FutureTask<Long> ft : tasks) {
+
+                ft.cancel(true/* mayInterruptIfRunning */);
+
+            }
+
+        }
+
+        return naccepted;
+
+    }
+
+    /**
+     * Adds the solutions assigned to one partition to the map for that
+     * partition. The map is only touched by this task.
+     */
+    private static class BuildPartitionTask implements Callable<Long> {
+
+        private final Map<Key, Bucket> map;
+
+        private final IBindingSet[] all;
+
+        private final Key[] keys;
+
+        private final int[] rows;
+
+        BuildPartitionTask(final Map<Key, Bucket> map,
+                final IBindingSet[] all, final Key[] keys, final int[] rows) {
+
+            this.map = map;
+
+            this.all = all;
+
+            this.keys = keys;
+
+            this.rows = rows;
+
+        }
+
+        @Override
+        public Long call() throws Exception {
+
+            for (int i : rows) {
+
+                add(map, keys[i], all[i]);
+
+            }
+
+            return Long.valueOf(rows.length);
+
+        }
+
+    }
+
+    /**
+     * The #of partitions.
+     */
+    public int getPartitionCount() {
+
+        return partitions.size();
+
+    }
+
+    /**
+     * Return the partition for the hash code of a {@link Key}.
+     * <p>
+     * Note: The partition is chosen from the high bits of a multiplicative
+     * hash so that the keys in a partition remain well distributed over the
+     * low bits used by the backing map.
+     */
+    private int partitionOf(final int hash) {
+
+        final int npartitions = partitions.size();
+
+        if (npartitions == 1)
+            return 0;
+
+        final long h = (hash * 0x9E3779B9) & 0xFFFFFFFFL;
+
+        return (int) ((h * npartitions) >>> 32);
+
+    }
+
+    /**
+     * Return the map for the partition into which the key is mapped.
+     */
+    private Map<Key, Bucket> getPartition(final Key key) {
+
+        return partitions.get(partitionOf(key.hash));
 
     }
 
@@ -598,6 +868,8 @@ public class JVMHashIndex {
 
         assert key != null;
 
+        final Map<Key, Bucket> map = getPartition(key);
+
         Bucket b = map.get(key);
 
         if (b == null) {
@@ -648,7 +920,7 @@ public class JVMHashIndex {
         }
 
         // Probe the hash map : May return [null]!
-        return map.get(key);
+        return getPartition(key).get(key);
 
     }
 
@@ -657,7 +929,60 @@ public class JVMHashIndex {
      */
     public Iterator<Bucket> buckets() {
 
-        return map.values().iterator();
+        if (partitions.size() == 1)
+            return partitions.get(0).values().iterator();
+
+        return new BucketIterator(partitions.iterator());
+
+    }
+
+    /**
+     * Visits the buckets in each partition in turn.
+     */
+    private static class BucketIterator implements Iterator<Bucket> {
+
+        private final Iterator<Map<Key, Bucket>> src;
+
+        private Iterator<Bucket> current = null;
+
+        BucketIterator(final Iterator<Map<Key, Bucket>> src) {
+
+            this.src = src;
+
+        }
+
+        @Override
+        public boolean hasNext() {
+
+            while ((current == null || !current.hasNext()) && src.hasNext()) {
+
+                current = src.next().values().iterator();
+
+            }
+
+            return current != null && current.hasNext();
+
+        }
+
+        @Override
+        public Bucket next() {
+
+            if (!hasNext())
+                throw new NoSuchElementException();
+
+            return current.next();
+
+        }
+
+        @Override
+        public void remove() {
+
+            if (current == null)
+                throw new IllegalStateException();
+
+            current.remove();
+
+        }
 
     }
 
@@ -670,7 +995,15 @@ public class JVMHashIndex {
      */
     public int bucketCount() {
 
-        return map.size();
+        int n = 0;
+
+        for (Map<Key, Bucket> map : partitions) {
+
+            n += map.size();
+
+        }
+
+        return n;
 
     }
 
@@ -680,10 +1013,9 @@ public class JVMHashIndex {
     public Bucket[] toArray() {
 
         // source.
-        final Iterator<Bucket> bucketIterator = map.values()
-                .iterator();
+        final Iterator<Bucket> bucketIterator = buckets();
 
-        final Bucket[] a = new Bucket[map.size()];
+        final Bucket[] a = new Bucket[bucketCount()];
 
         int i = 0;
 
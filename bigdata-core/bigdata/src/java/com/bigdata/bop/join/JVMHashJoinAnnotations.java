@@ -38,4 +38,40 @@ import com.bigdata.bop.HashMapAnnotations;
 public interface JVMHashJoinAnnotations extends HashMapAnnotations,
         HashJoinAnnotations, JoinAnnotations {
 
+    /**
+     * The #of partitions for the hash index (default
+     * {@value #DEFAULT_BUILD_PARTITIONS}). When greater than ONE, the hash
+     * index is divided into that many sub-indices by the hash code of the
+     * join variables and each chunk of solutions which is large enough (see
+     * {@link #PARALLEL_BUILD_THRESHOLD}) is added to the partitions
+     * concurrently. A solution is probed against the one partition into which
+     * its join variables are hashed.
+     * <p>
+     * Note: The order of the solutions produced from a partitioned hash index
+     * is not the same as for an unpartitioned one. The same solutions are
+     * produced, but scans of the index (e.g., for OPTIONAL or EXISTS) visit
+     * the partitions in turn. Operators which need a specific order must
+     * impose it themselves (e.g., with an ORDER BY).
+     * 
+     * @see JVMHashIndex#addAll(com.bigdata.bop.IBindingSet[],
+     *      java.util.concurrent.Executor)
+     */
+    String BUILD_PARTITIONS = JVMHashJoinAnnotations.class.getName()
+            + ".buildPartitions";
+
+    int DEFAULT_BUILD_PARTITIONS = 1;
+
+    /**
+     * The minimum #of solutions in a chunk before the partitions of the hash
+     * index are built concurrently (default
+     * {@value #DEFAULT_PARALLEL_BUILD_THRESHOLD}). Smaller chunks are added by
+     * the caller's thread since the overhead of the tasks would dominate.
+     * 
+     * @see #BUILD_PARTITIONS
+     */
+    String PARALLEL_BUILD_THRESHOLD = JVMHashJoinAnnotations.class.getName()
+            + ".parallelBuildThreshold";
+
+    int DEFAULT_PARALLEL_BUILD_THRESHOLD = 10000;
+
 }
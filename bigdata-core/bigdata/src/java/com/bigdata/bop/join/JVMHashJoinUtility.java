@@ -26,12 +26,15 @@ Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
 
 package com.bigdata.bop.join;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicReference;
 
@@ -91,7 +94,8 @@ public class JVMHashJoinUtility implements IHashJoinUtility {
                 final JoinTypeEnum joinType//
                 ) {
 
-            return new JVMHashJoinUtility(op, joinType);
+            return new JVMHashJoinUtility(op, joinType,
+                    context == null ? null : context.getExecutorService());
 
         }
     };
@@ -157,6 +161,19 @@ public class JVMHashJoinUtility implements IHashJoinUtility {
      * class provides a join hit counter.
      */
     protected final AtomicReference<JVMHashIndex> rightSolutionsRef = new AtomicReference<JVMHashIndex>();
+
+    /**
+     * The executor used to build the partitions of the hash index concurrently
+     * (optional).
+     * 
+     * @see JVMHashJoinAnnotations#BUILD_PARTITIONS
+     */
+    private final Executor executor;
+
+    /**
+     * @see JVMHashJoinAnnotations#PARALLEL_BUILD_THRESHOLD
+     */
+    private final int parallelBuildThreshold;
     
     /**
      * The #of solutions accepted into the hash index.
@@ -230,6 +247,27 @@ public class JVMHashJoinUtility implements IHashJoinUtility {
      */
     public JVMHashJoinUtility(final PipelineOp op, final JoinTypeEnum joinType) {
 
+        this(op, joinType, null/* executor */);
+
+    }
+
+    /**
+     * 
+     * @param op
+     *            The operator whose annotation will inform construction the
+     *            hash index.
+     * @param joinType
+     *            The type of join to be performed.
+     * @param executor
+     *            The executor used to build the partitions of the hash index
+     *            concurrently (optional). When <code>null</code> the
+     *            partitions are built by the caller's thread.
+     * 
+     * @see JVMHashJoinAnnotations#BUILD_PARTITIONS
+     */
+    public JVMHashJoinUtility(final PipelineOp op,
+            final JoinTypeEnum joinType, final Executor executor) {
+
         if (op == null)
             throw new IllegalArgumentException();
 
@@ -330,17 +368,46 @@ public class JVMHashJoinUtility implements IHashJoinUtility {
          */
         final IVariable<?>[] keyVars = filter ? (IVariable<?>[]) op
                 .getProperty(JoinAnnotations.SELECT) : joinVars;
-                
+
+        final int npartitions = op.getProperty(
+                JVMHashJoinAnnotations.BUILD_PARTITIONS,
+                JVMHashJoinAnnotations.DEFAULT_BUILD_PARTITIONS);
+
+        if (npartitions < 1)
+            throw new IllegalArgumentException(
+                    JVMHashJoinAnnotations.BUILD_PARTITIONS + "="
+                            + npartitions);
+
+        this.executor = executor;
+
+        this.parallelBuildThreshold = op.getProperty(
+                JVMHashJoinAnnotations.PARALLEL_BUILD_THRESHOLD,
+                JVMHashJoinAnnotations.DEFAULT_PARALLEL_BUILD_THRESHOLD);
+
+        final int initialCapacity = op.getProperty(
+                HashMapAnnotations.INITIAL_CAPACITY,
+                HashMapAnnotations.DEFAULT_INITIAL_CAPACITY);
+
+        final float loadFactor = op.getProperty(
+                HashMapAnnotations.LOAD_FACTOR,
+                HashMapAnnotations.DEFAULT_LOAD_FACTOR);
+
+        // One map per partition.
+        final List<Map<Key, Bucket>> partitions = new ArrayList<Map<Key, Bucket>>(
+                npartitions);
+
+        for (int i = 0; i < npartitions; i++) {
+
+            partitions.add(new LinkedHashMap<Key, Bucket>(Math.max(1,
+                    initialCapacity / npartitions), loadFactor));
+
+        }
+
         rightSolutionsRef.set(//
             new JVMHashIndex(//
                 keyVars,//
                 indexSolutionsHavingUnboundJoinVars,//
-                new LinkedHashMap<Key, Bucket>(op.getProperty(
-                    HashMapAnnotations.INITIAL_CAPACITY,
-                    HashMapAnnotations.DEFAULT_INITIAL_CAPACITY),//
-                    op.getProperty(HashMapAnnotations.LOAD_FACTOR,
-                    HashMapAnnotations.DEFAULT_LOAD_FACTOR)//
-                )//
+                partitions//
         ));
     }
     
@@ -431,17 +498,18 @@ public class JVMHashJoinUtility implements IHashJoinUtility {
             if (log.isDebugEnabled())
                 log.debug("Materialized: " + all.length + " source solutions.");
 
-            long naccepted = 0;
+            final long naccepted;
 
-            for (IBindingSet bset : all) {
-
-                if (index.add(bset) == null) {
+            if (executor != null && index.getPartitionCount() > 1
+                    && all.length >= parallelBuildThreshold) {
 
-                    continue;
+                // Build the partitions of the hash index concurrently.
+                naccepted = index.addAll(all, executor);
 
-                }
+            } else {
 
-                naccepted++;
+                // Build the hash index in the caller's thread.
+                naccepted = index.addAll(all, null/* executor */);
 
             }
 
@@ -0,0 +1,239 @@
+/**
+
+Copyright (C) SYSTAP, LLC DBA Blazegraph 2006-2016.  All rights reserved.
+
+Contact:
+     SYSTAP, LLC DBA Blazegraph
+     2501 Calvert ST NW #106
+     Washington, DC 20008
+     licenses@blazegraph.com
+
+This program is free software; you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation; version 2 of the License.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program; if not, write to the Free Software
+Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+/*
+ * Created on Oct 17, 2026
+ */
+
+package com.bigdata.bop.join;
+
+import java.util.Arrays;
+
+import com.bigdata.bop.IBindingSet;
+import com.bigdata.bop.IConstant;
+import com.bigdata.bop.IElement;
+import com.bigdata.bop.IPredicate;
+import com.bigdata.bop.IVariable;
+import com.bigdata.bop.IVariableOrConstant;
+import com.bigdata.btree.BloomFilter;
+import com.bigdata.relation.accesspath.IElementFilter;
+
+import cutthecrap.utils.striterators.ICloseableIterator;
+
+/**
+ * A semi-join filter for the elements read from the access path of a hash
+ * join. The filter is built from the solutions buffered on the hash index and
+ * rejects any element whose values for the join variables do not appear in
+ * any of those solutions. Such elements can not join, so dropping them inside
+ * the index scan avoids materializing them as solutions and probing the hash
+ * index.
+ * <p>
+ * The filter is a {@link BloomFilter} over the hash codes of the as-bound
+ * join variables, so it is compact and {@link java.io.Serializable} (it may be
+ * evaluated local to an index shard), but it admits false positives. Elements
+ * which are accepted by the filter are still probed against the hash index.
+ * 
+ * @see HashJoinOp.Annotations#BLOOM_FILTER
+ */
+public class JoinKeyBloomFilter<E> implements IElementFilter<E> {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The index in the predicate of each join variable.
+     */
+    private final int[] indices;
+
+    /**
+     * The filter on the keys formed from the join variables.
+     */
+    private final BloomFilter filter;
+
+    /**
+     * @param indices
+     *            The index in the predicate of each join variable.
+     * @param filter
+     *            The filter on the keys formed from the join variables.
+     */
+    public JoinKeyBloomFilter(final int[] indices, final BloomFilter filter) {
+
+        if (indices == null || indices.length == 0)
+            throw new IllegalArgumentException();
+
+        if (filter == null)
+            throw new IllegalArgumentException();
+
+        this.indices = indices;
+
+        this.filter = filter;
+
+    }
+
+    @Override
+    public boolean canAccept(final Object o) {
+
+        return o instanceof IElement;
+
+    }
+
+    @Override
+    public boolean isValid(final Object o) {
+
+        final IElement e = (IElement) o;
+
+        final byte[] key = new byte[indices.length << 2];
+
+        for (int i = 0; i < indices.length; i++) {
+
+            final Object val = e.get(indices[i]);
+
+            if (val == null) {
+
+                // Not bound : can not reject.
+                return true;
+
+            }
+
+            putInt(key, i << 2, val.hashCode());
+
+        }
+
+        return filter.contains(key);
+
+    }
+
+    private static void putInt(final byte[] a, final int off, final int v) {
+
+        a[off] = (byte) (v >>> 24);
+        a[off + 1] = (byte) (v >>> 16);
+        a[off + 2] = (byte) (v >>> 8);
+        a[off + 3] = (byte) v;
+
+    }
+
+    @Override
+    public String toString() {
+
+        return getClass().getSimpleName() + "{indices="
+                + Arrays.toString(indices) + ",filter=" + filter + "}";
+
+    }
+
+    /**
+     * Build a filter for the elements of an access path from the solutions
+     * buffered on a hash index.
+     * 
+     * @param pred
+     *            The predicate for the access path.
+     * @param joinVars
+     *            The join variables.
+     * @param solutions
+     *            The solutions buffered on the hash index. The iterator is
+     *            closed by this method.
+     * @param n
+     *            The #of solutions buffered on the hash index.
+     * @param errorRate
+     *            The target false positive rate for the filter.
+     * 
+     * @return The filter -or- <code>null</code> if no filter could be built.
+     *         This is the case if there are no join variables, if a join
+     *         variable does not appear in the predicate, or if a join variable
+     *         is not bound in some buffered solution.
+     */
+    public static <E> JoinKeyBloomFilter<E> newInstance(
+            final IPredicate<E> pred, final IVariable<?>[] joinVars,
+            final ICloseableIterator<IBindingSet> solutions, final long n,
+            final double errorRate) {
+
+        try {
+
+            if (joinVars.length == 0 || n < 1 || n > Integer.MAX_VALUE / 2)
+                return null;
+
+            final int[] indices = new int[joinVars.length];
+
+            for (int i = 0; i < joinVars.length; i++) {
+
+                indices[i] = -1;
+
+                for (int j = 0; j < pred.arity(); j++) {
+
+                    final IVariableOrConstant<?> t = pred.get(j);
+
+                    if (t == joinVars[i]) {
+
+                        indices[i] = j;
+
+                        break;
+
+                    }
+
+                }
+
+                if (indices[i] == -1) {
+
+                    // Join variable is not used by the predicate.
+                    return null;
+
+                }
+
+            }
+
+            final BloomFilter filter = new BloomFilter((int) n, errorRate);
+
+            final byte[] key = new byte[joinVars.length << 2];
+
+            while (solutions.hasNext()) {
+
+                final IBindingSet bset = solutions.next();
+
+                for (int i = 0; i < joinVars.length; i++) {
+
+                    final IConstant<?> c = bset.get(joinVars[i]);
+
+                    if (c == null) {
+
+                        // Join variable is not bound.
+                        return null;
+
+                    }
+
+                    putInt(key, i << 2, c.get().hashCode());
+
+                }
+
+                filter.add(key);
+
+            }
+
+            return new JoinKeyBloomFilter<E>(indices, filter);
+
+        } finally {
+
+            solutions.close();
+
+        }
+
+    }
+
+}
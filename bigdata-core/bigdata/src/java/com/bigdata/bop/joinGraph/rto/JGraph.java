@@ -453,15 +453,44 @@ public class JGraph {
             final Map<PathIds, EdgeSample> edgeSamples//
     ) throws Exception, NoSolutionsException {
 
-        if (queryEngine == null)
-            throw new IllegalArgumentException();
-        
         /*
          * The limit for sampling a vertex and the initial limit for cutoff join
          * evaluation.
          */
-        final int limit = joinGraph.getLimit();
+        return runtimeOptimizer(queryEngine, joinGraph.getLimit(), edgeSamples);
+
+    }
+
+    /**
+     * Find a good join path in the data given the join graph using the
+     * specified sampling limit rather than {@link JoinGraph#getLimit()}. This
+     * is used to re-plan the join graph with a larger sample once the
+     * estimates for the join path produced by the default limit have proven to
+     * be wrong.
+     * 
+     * @param queryEngine
+     *            The query engine.
+     * @param limit
+     *            The limit for sampling a vertex and the initial limit for
+     *            cutoff join evaluation.
+     * @param edgeSamples
+     *            A map that will be populated with the samples associated with
+     *            each non-pruned join path.
+     * 
+     * @return The join path identified by the runtime query optimizer as the
+     *         best path given the join graph and the data.
+     * 
+     * @see #runtimeOptimizer(QueryEngine, Map)
+     */
+    public Path runtimeOptimizer(//
+            final QueryEngine queryEngine,//
+            final int limit,//
+            final Map<PathIds, EdgeSample> edgeSamples//
+    ) throws Exception, NoSolutionsException {
 
+        if (queryEngine == null)
+            throw new IllegalArgumentException();
+        
         if (limit <= 0)
             throw new IllegalArgumentException();
 
@@ -2129,6 +2158,43 @@ public class JGraph {
 
     }
 
+    /**
+     * Return the estimated cardinality of each step in a join path. The
+     * estimate for the first step is taken from the sample of the initial
+     * vertex. The estimate for each subsequent step is taken from the cutoff
+     * join sample of the path prefix ending with that vertex.
+     * 
+     * @param x
+     *            The join path (required).
+     * @param edgeSamples
+     *            A map containing the samples utilized by the {@link Path}
+     *            (required).
+     * 
+     * @return The estimated cardinality of each step in path order. An element
+     *         is <code>-1</code> if there is no sample for that step.
+     */
+    static public long[] getEstimatedCardinalities(final Path x,
+            final Map<PathIds, EdgeSample> edgeSamples) {
+        if (x == null)
+            throw new IllegalArgumentException();
+        if (edgeSamples == null)
+            throw new IllegalArgumentException();
+        final long[] a = new long[x.vertices.length];
+        for (int i = 0; i < x.vertices.length; i++) {
+            final SampleBase sample;
+            if (i == 0) {
+                sample = x.vertices[i].sample;
+            } else if (i + 1 == x.vertices.length && x.edgeSample != null) {
+                sample = x.edgeSample;
+            } else {
+                sample = edgeSamples.get(new PathIds(BOpUtility
+                        .getPredIds(x.getPathSegment(i + 1))));
+            }
+            a[i] = sample == null ? -1L : sample.estCard;
+        }
+        return a;
+    }
+
     /**
      * Show the details of a join path, including the estimated cardinality and
      * join hit ratio for each step in the path.
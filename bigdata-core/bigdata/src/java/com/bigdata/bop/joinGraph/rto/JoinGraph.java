@@ -27,11 +27,18 @@ Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
 
 package com.bigdata.bop.joinGraph.rto;
 
+import java.util.Arrays;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.Callable;
 import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.log4j.Logger;
 
 import com.bigdata.bop.BOp;
 import com.bigdata.bop.BOpContext;
@@ -47,8 +54,11 @@ import com.bigdata.bop.ap.SampleIndex;
 import com.bigdata.bop.ap.SampleIndex.SampleType;
 import com.bigdata.bop.controller.AbstractSubqueryOp;
 import com.bigdata.bop.engine.AbstractRunningQuery;
+import com.bigdata.bop.engine.BOpStats;
 import com.bigdata.bop.engine.IRunningQuery;
 import com.bigdata.bop.engine.QueryEngine;
+import com.bigdata.bop.join.AccessPathJoinAnnotations;
+import com.bigdata.bop.joinGraph.NoSolutionsException;
 import com.bigdata.rdf.sparql.ast.JoinGroupNode;
 import com.bigdata.rdf.sparql.ast.eval.AST2BOpContext;
 import com.bigdata.rdf.sparql.ast.eval.AST2BOpRTO;
@@ -97,8 +107,8 @@ import cutthecrap.utils.striterators.ICloseableIterator;
  */
 public class JoinGraph extends PipelineOp {
 
-//	private static final transient Logger log = Logger
-//			.getLogger(JoinGraph.class);
+	private static final transient Logger log = Logger
+			.getLogger(JoinGraph.class);
 
 	private static final long serialVersionUID = 1L;
 
@@ -180,8 +190,60 @@ public class JoinGraph extends PipelineOp {
          */
         String NT = JoinGraph.class.getName() + ".nt";
         
+        /**
+         * When <code>true</code>, the selected join path is monitored while it
+         * executes (default {@value #DEFAULT_ADAPTIVE}). If the observed
+         * output of some join exceeds the cardinality estimated by the RTO for
+         * that step by more than {@link #DEVIATION} before any solutions have
+         * been produced by the join path, then the join graph is re-sampled
+         * using a larger limit and the join path is restarted using the new
+         * join ordering. Once the join path has run to completion, the final
+         * output of each join is compared against its estimate in the same
+         * manner. If the estimates were wrong, the join graph is re-planned so
+         * that later invocations of the operator use the new join ordering.
+         * <p>
+         * Note: Only underestimates can be detected while a join is running.
+         * The restart is safe because no solutions have been copied to the
+         * parent query when it is made.
+         */
+        String ADAPTIVE = JoinGraph.class.getName() + ".adaptive";
+
+        boolean DEFAULT_ADAPTIVE = false;
+
+        /**
+         * The ratio of the observed to the estimated cardinality of a join
+         * which triggers re-planning when {@link #ADAPTIVE} is enabled
+         * (default {@value #DEFAULT_DEVIATION}). Values less than ONE will
+         * re-plan even when the estimates were accurate. That is only useful
+         * for testing.
+         */
+        String DEVIATION = JoinGraph.class.getName() + ".deviation";
+
+        double DEFAULT_DEVIATION = 100d;
+
+        /**
+         * The maximum number of times that the join graph may be re-planned
+         * for a given query when {@link #ADAPTIVE} is enabled (default
+         * {@value #DEFAULT_MAX_REPLANS}).
+         */
+        String MAX_REPLANS = JoinGraph.class.getName() + ".maxReplans";
+
+        int DEFAULT_MAX_REPLANS = 1;
+
 	}
 
+    /**
+     * The maximum sampling limit that will be used when the join graph is
+     * re-planned.
+     */
+    private static final int MAX_REPLAN_LIMIT = 10000;
+
+    /**
+     * The interval in milliseconds between checks of the statistics for the
+     * join path when {@link Annotations#ADAPTIVE} is enabled.
+     */
+    private static final long MONITOR_MILLIS = 20;
+
     /**
      * {@link IQueryAttributes} names for the {@link JoinGraph}. The fully
      * qualified name of the attribute is formed by appending the attribute name
@@ -210,6 +272,17 @@ public class JoinGraph extends PipelineOp {
          */
         String QUERY_PLAN = JoinGraph.class.getName() + ".queryPlan";
 
+        /**
+         * The estimated cardinality of each step of the join path selected by
+         * the RTO, in path order (output).
+         */
+        String ESTIMATES = JoinGraph.class.getName() + ".estimates";
+
+        /**
+         * The #of times that the join graph has been re-planned (output).
+         */
+        String REPLANS = JoinGraph.class.getName() + ".replans";
+
 	}
 	
     /*
@@ -271,6 +344,35 @@ public class JoinGraph extends PipelineOp {
 	    
 	}
 
+    /**
+     * @see Annotations#ADAPTIVE
+     */
+    public boolean isAdaptive() {
+
+        return getProperty(Annotations.ADAPTIVE, Annotations.DEFAULT_ADAPTIVE);
+
+    }
+
+    /**
+     * @see Annotations#DEVIATION
+     */
+    public double getDeviation() {
+
+        return getProperty(Annotations.DEVIATION,
+                Annotations.DEFAULT_DEVIATION);
+
+    }
+
+    /**
+     * @see Annotations#MAX_REPLANS
+     */
+    public int getMaxReplans() {
+
+        return getProperty(Annotations.MAX_REPLANS,
+                Annotations.DEFAULT_MAX_REPLANS);
+
+    }
+
     /**
      * Return the set of variables that are known to have already been
      * materialized at the point in the overall query plan where the RTO is
@@ -346,6 +448,58 @@ public class JoinGraph extends PipelineOp {
         
     }
 
+    /**
+     * Return the estimated cardinality of each step of the computed join path.
+     * 
+     * @see Attributes#ESTIMATES
+     */
+    public long[] getEstimates(final IRunningQuery q) {
+
+        return (long[]) q.getAttributes().get(
+                getId() + "-" + Attributes.ESTIMATES);
+
+    }
+
+    private void setEstimates(final IRunningQuery q, final long[] estimates) {
+
+        q.getAttributes().put(getId() + "-" + Attributes.ESTIMATES, estimates);
+
+    }
+
+    /**
+     * Return the #of times that the join graph has been re-planned.
+     * 
+     * @see Attributes#REPLANS
+     */
+    public int getReplanCount(final IRunningQuery q) {
+
+        final AtomicInteger n = (AtomicInteger) q.getAttributes().get(
+                getId() + "-" + Attributes.REPLANS);
+
+        return n == null ? 0 : n.get();
+
+    }
+
+    private int incrementReplanCount(final IRunningQuery q) {
+
+        final String key = getId() + "-" + Attributes.REPLANS;
+
+        AtomicInteger n = (AtomicInteger) q.getAttributes().get(key);
+
+        if (n == null) {
+
+            final AtomicInteger t = (AtomicInteger) q.getAttributes()
+                    .putIfAbsent(key, n = new AtomicInteger());
+
+            if (t != null)
+                n = t;
+
+        }
+
+        return n.incrementAndGet();
+
+    }
+
     /**
      * Deep copy constructor.
      * 
@@ -455,90 +609,100 @@ public class JoinGraph extends PipelineOp {
                  * concurrent evaluation, just like MAX_PARALLEL.
                  */
                 
-                // final long begin = System.nanoTime();
+                plan(context.getRunningQuery(), getLimit());
 
-                // Create the join graph.
-                final JGraph g = new JGraph(JoinGraph.this);
+            }
+	        
+            // Run the query, blocking until it is done.
+	        runSubquery(context);
 
-                /*
-                 * This map is used to associate join path segments (expressed
-                 * as an ordered array of bopIds) with edge sample to avoid
-                 * redundant effort.
-                 */
-                final Map<PathIds, EdgeSample> edgeSamples = new LinkedHashMap<PathIds, EdgeSample>();
+	        return null;
 
-                // Find the best join path.
-                final Path path = g.runtimeOptimizer(context.getRunningQuery()
-                        .getQueryEngine(), edgeSamples);
+	    }
 
-                /*
-                 * Release samples.
-                 * 
-                 * TODO If we have fully sampled some vertices or edges, then we
-                 * could replace the JOIN with the sample. For this to work, we
-                 * would need to access path that could read the sample and we
-                 * would have to NOT release the samples until the RTO was done
-                 * executing sub-queries against the generated query plan. Since
-                 * we can flow multiple chunks into the sub-query, this amounts
-                 * to having a LAST_PASS annotation.
-                 */
-                
-                for (EdgeSample s : edgeSamples.values()) {
+	} // class JoinGraphTask
 
-                    s.releaseSample();
-                    
-                }
- 
-                for (Vertex v : g.getVertices()) {
-
-                    if (v.sample != null) {
-                        v.sample.releaseSample();
-                    
-                    }
-                    
-                }
-                
-                // Set attribute for the join path result.
-                setPath(context.getRunningQuery(), path);
+    /**
+     * Use the RTO to find a join path, compile it into a query plan and set the
+     * {@link Attributes} for the path, its samples, its estimates, and the
+     * query plan on the {@link IRunningQuery}.
+     * 
+     * @param q
+     *            The running query.
+     * @param limit
+     *            The limit for sampling a vertex and the initial limit for
+     *            cutoff join evaluation.
+     * 
+     * @return The selected join path.
+     */
+    private Path plan(final IRunningQuery q, final int limit) throws Exception {
 
-                // Set attribute for the join path samples.
-                setSamples(context.getRunningQuery(), edgeSamples);
+        // final long begin = System.nanoTime();
 
-                // final long mark = System.nanoTime();
-                //
-                // final long elapsed_queryOptimizer = mark - begin;
+        // Create the join graph.
+        final JGraph g = new JGraph(JoinGraph.this);
 
-                /*
-                 * Generate the query from the selected join path.
-                 */
-                final PipelineOp queryOp = AST2BOpRTO.compileJoinGraph(context
-                        .getRunningQuery().getQueryEngine(), JoinGraph.this,
-                        path);
+        /*
+         * This map is used to associate join path segments (expressed as an
+         * ordered array of bopIds) with edge sample to avoid redundant effort.
+         */
+        final Map<PathIds, EdgeSample> edgeSamples = new LinkedHashMap<PathIds, EdgeSample>();
+
+        // Find the best join path.
+        final Path path = g.runtimeOptimizer(q.getQueryEngine(), limit,
+                edgeSamples);
+
+        // Note: Must be done before the samples are released.
+        setEstimates(q, JGraph.getEstimatedCardinalities(path, edgeSamples));
+
+        /*
+         * Release samples.
+         * 
+         * TODO If we have fully sampled some vertices or edges, then we could
+         * replace the JOIN with the sample. For this to work, we would need to
+         * access path that could read the sample and we would have to NOT
+         * release the samples until the RTO was done executing sub-queries
+         * against the generated query plan. Since we can flow multiple chunks
+         * into the sub-query, this amounts to having a LAST_PASS annotation.
+         */
+
+        for (EdgeSample s : edgeSamples.values()) {
 
-                // Set attribute for the join path samples.
-                setQueryPlan(context.getRunningQuery(), queryOp);
+            s.releaseSample();
+
+        }
+
+        for (Vertex v : g.getVertices()) {
+
+            if (v.sample != null) {
+                v.sample.releaseSample();
 
             }
-	        
-            // The query plan.
-            final PipelineOp queryOp = getQueryPlan(context.getRunningQuery());
-            
-            // Run the query, blocking until it is done.
-	        JoinGraph.runSubquery(context, queryOp);
 
-//	        final long elapsed_queryExecution = System.nanoTime() - mark;
-//	        
-//            if (log.isInfoEnabled())
-//                log.info("RTO: queryOptimizer="
-//                        + TimeUnit.NANOSECONDS.toMillis(elapsed_queryOptimizer)
-//                        + ", queryExecution="
-//                        + TimeUnit.NANOSECONDS.toMillis(elapsed_queryExecution));
+        }
 
-	        return null;
+        // Set attribute for the join path result.
+        setPath(q, path);
 
-	    }
+        // Set attribute for the join path samples.
+        setSamples(q, edgeSamples);
 
-	} // class JoinGraphTask
+        // final long mark = System.nanoTime();
+        //
+        // final long elapsed_queryOptimizer = mark - begin;
+
+        /*
+         * Generate the query from the selected join path.
+         */
+        final PipelineOp queryOp = AST2BOpRTO.compileJoinGraph(
+                q.getQueryEngine(), JoinGraph.this, path);
+
+        // Set attribute for the join path samples.
+        setQueryPlan(q, queryOp);
+
+        return path;
+
+    }
 
     /**
      * Execute the selected join path.
@@ -547,53 +711,80 @@ public class JoinGraph extends PipelineOp {
      * subquery. Therefore we have to take appropriate care to ensure that the
      * results are copied out of the subquery and into the parent query. See
      * {@link AbstractSubqueryOp} for how this is done.
+     * <p>
+     * When {@link Annotations#ADAPTIVE} is enabled, the subquery is monitored
+     * until it produces its first solution. If it is re-planned in the
+     * meantime, then the subquery is cancelled and the new query plan is run
+     * against the same upstream solutions in its place. Once the subquery is
+     * done, its final statistics are reviewed for the later invocations.
      */
-    static private void runSubquery(
-            final BOpContext<IBindingSet> parentContext,
-            final PipelineOp queryOp) throws Exception {
+    private void runSubquery(final BOpContext<IBindingSet> parentContext)
+            throws Exception {
 
         if(parentContext==null)
             throw new IllegalArgumentException();
         
-        if(queryOp==null)
-            throw new IllegalArgumentException();
-        
-        final QueryEngine queryEngine = parentContext.getRunningQuery()
-                .getQueryEngine();
+        final IRunningQuery parentQuery = parentContext.getRunningQuery();
+
+        final QueryEngine queryEngine = parentQuery.getQueryEngine();
 
         /*
          * Run the sub-query.
          */
 
+        IRunningQuery runningSubquery = null;
+
         ICloseableIterator<IBindingSet[]> subquerySolutionItr = null;
 
+        PipelineOp queryOp = null;
+
         // Fully materialize the upstream solutions.
         final IBindingSet[] bindingSets = BOpUtility.toArray(
                 parentContext.getSource(), parentContext.getStats());
 
-        /*
-         * Run on all available upstream solutions.
-         * 
-         * Note: The subquery will run for each chunk of upstream solutions, so
-         * it could make sense to increase the vector size or to collect all
-         * upstream solutions into a SolutionSet and then flood them into the
-         * sub-query.
-         * 
-         * Note: We do not need to do a hash join with the output of the
-         * sub-query. This amounts to pipelined evaluation. Solutions flow into
-         * a subquery and then back out. The only reason for a hash join would
-         * be if we project in only a subset of the variables that were in scope
-         * in the parent context and then needed to pick up the correlated
-         * variables after running the query plan generated by the RTO.
-         */
-        final IRunningQuery runningSubquery = queryEngine.eval(queryOp,
-                bindingSets);
-
         try {
 
-            // Declare the child query to the parent.
-            ((AbstractRunningQuery) parentContext.getRunningQuery())
-                    .addChild(runningSubquery);
+            while (true) {
+
+                // The query plan.
+                queryOp = getQueryPlan(parentQuery);
+
+                /*
+                 * Run on all available upstream solutions.
+                 * 
+                 * Note: The subquery will run for each chunk of upstream
+                 * solutions, so it could make sense to increase the vector size
+                 * or to collect all upstream solutions into a SolutionSet and
+                 * then flood them into the sub-query.
+                 * 
+                 * Note: We do not need to do a hash join with the output of the
+                 * sub-query. This amounts to pipelined evaluation. Solutions
+                 * flow into a subquery and then back out. The only reason for a
+                 * hash join would be if we project in only a subset of the
+                 * variables that were in scope in the parent context and then
+                 * needed to pick up the correlated variables after running the
+                 * query plan generated by the RTO.
+                 */
+                runningSubquery = queryEngine.eval(queryOp, bindingSets);
+
+                // Declare the child query to the parent.
+                ((AbstractRunningQuery) parentQuery).addChild(runningSubquery);
+
+                if (!isAdaptive()
+                        || !monitor(parentQuery, runningSubquery, queryOp,
+                                bindingSets.length)) {
+
+                    break;
+
+                }
+
+                /*
+                 * The join graph was re-planned. No solutions have been copied
+                 * from the subquery, so it is simply discarded.
+                 */
+                runningSubquery.cancel(true/* mayInterruptIfRunning */);
+
+            }
 
             // Iterator visiting the subquery solutions.
             subquerySolutionItr = runningSubquery.iterator();
@@ -607,6 +798,14 @@ public class JoinGraph extends PipelineOp {
             // verify no problems.
             runningSubquery.get();
 
+            if (isAdaptive()) {
+
+                // Review the estimates for the later invocations.
+                review(parentQuery, runningSubquery, queryOp,
+                        bindingSets.length);
+
+            }
+
         } catch (Throwable t) {
 
             if (Haltable.isTerminationByInterrupt(t)) {
@@ -622,11 +821,12 @@ public class JoinGraph extends PipelineOp {
              * Propagate the error to the parent and rethrow the first cause
              * error out of the subquery.
              */
-            throw new RuntimeException(parentContext.getRunningQuery().halt(t));
+            throw new RuntimeException(parentQuery.halt(t));
 
         } finally {
 
-            runningSubquery.cancel(true/* mayInterruptIfRunning */);
+            if (runningSubquery != null)
+                runningSubquery.cancel(true/* mayInterruptIfRunning */);
 
             if (subquerySolutionItr != null)
                 subquerySolutionItr.close();
@@ -635,4 +835,264 @@ public class JoinGraph extends PipelineOp {
 
     }
 
+    /**
+     * Monitor the {@link BOpStats} of a running join path until it produces
+     * its first solution or terminates. If the output of some join exceeds the
+     * estimate for that step of the join path by more than
+     * {@link Annotations#DEVIATION}, then the join graph is re-planned.
+     * <p>
+     * The estimates were obtained for a single empty upstream solution, so
+     * they are scaled by the #of upstream solutions. This makes the test
+     * conservative when the upstream solutions are correlated with the join
+     * graph.
+     * 
+     * @param parentQuery
+     *            The query in which the {@link JoinGraph} is running.
+     * @param runningSubquery
+     *            The subquery running the join path.
+     * @param queryOp
+     *            The query plan for that join path.
+     * @param nsolutions
+     *            The #of upstream solutions fed into the subquery.
+     * 
+     * @return <code>true</code> iff a different join path was selected, in
+     *         which case the subquery must be discarded and the new query plan
+     *         run in its place.
+     */
+    private boolean monitor(final IRunningQuery parentQuery,
+            final IRunningQuery runningSubquery, final PipelineOp queryOp,
+            final int nsolutions) throws Exception {
+
+        if (getReplanCount(parentQuery) >= getMaxReplans())
+            return false;
+
+        final Path path = getPath(parentQuery);
+
+        final long[] estimates = getEstimates(parentQuery);
+
+        if (path == null || estimates == null)
+            return false;
+
+        // Map the bopId of each join in the query plan onto its path step.
+        final Map<Integer, Integer> steps = getSteps(queryOp, path);
+
+        final long scale = Math.max(1, nsolutions);
+
+        while (!runningSubquery.isDone()) {
+
+            final Map<Integer, BOpStats> stats = runningSubquery.getStats();
+
+            final BOpStats last = stats.get(queryOp.getId());
+
+            if (last != null && last.unitsOut.get() > 0) {
+
+                // Solutions are available. Too late to change the plan.
+                return false;
+
+            }
+
+            final double ratio = getDeviationRatio(stats, steps, estimates,
+                    scale);
+
+            if (ratio > 0d) {
+
+                return replan(parentQuery, path, ratio);
+
+            }
+
+            try {
+
+                runningSubquery.get(MONITOR_MILLIS, TimeUnit.MILLISECONDS);
+
+            } catch (TimeoutException ex) {
+
+                // Still running.
+
+            }
+
+        }
+
+        return false;
+
+    }
+
+    /**
+     * Review the final {@link BOpStats} of a join path which ran to completion.
+     * If the output of some join exceeded the estimate for that step of the
+     * join path by more than {@link Annotations#DEVIATION}, then the join graph
+     * is re-planned. The solutions of the completed join path are kept, but
+     * later invocations of the operator will run the new join path.
+     * 
+     * @param parentQuery
+     *            The query in which the {@link JoinGraph} is running.
+     * @param runningSubquery
+     *            The subquery which ran the join path.
+     * @param queryOp
+     *            The query plan for that join path.
+     * @param nsolutions
+     *            The #of upstream solutions fed into the subquery.
+     */
+    private void review(final IRunningQuery parentQuery,
+            final IRunningQuery runningSubquery, final PipelineOp queryOp,
+            final int nsolutions) throws Exception {
+
+        if (getReplanCount(parentQuery) >= getMaxReplans())
+            return;
+
+        final Path path = getPath(parentQuery);
+
+        final long[] estimates = getEstimates(parentQuery);
+
+        if (path == null || estimates == null)
+            return;
+
+        final double ratio = getDeviationRatio(runningSubquery.getStats(),
+                getSteps(queryOp, path), estimates, Math.max(1, nsolutions));
+
+        if (ratio > 0d) {
+
+            replan(parentQuery, path, ratio);
+
+        }
+
+    }
+
+    /**
+     * Return the ratio of the observed to the estimated cardinality for the
+     * first join in the join path whose output exceeds its estimate by more
+     * than {@link Annotations#DEVIATION}.
+     * 
+     * @param stats
+     *            The statistics for the subquery running the join path.
+     * @param steps
+     *            The map from the bopId of each join onto its path step.
+     * @param estimates
+     *            The estimated cardinality of each step of the join path.
+     * @param scale
+     *            The #of upstream solutions (at least ONE).
+     * 
+     * @return The ratio -or- ZERO if no join exceeds its estimate by more
+     *         than {@link Annotations#DEVIATION}.
+     */
+    private double getDeviationRatio(final Map<Integer, BOpStats> stats,
+            final Map<Integer, Integer> steps, final long[] estimates,
+            final long scale) {
+
+        final double deviation = getDeviation();
+
+        for (Map.Entry<Integer, Integer> e : steps.entrySet()) {
+
+            final long est = estimates[e.getValue()];
+
+            final BOpStats s = stats.get(e.getKey());
+
+            if (est < 0 || s == null)
+                continue;
+
+            final double expected = (double) Math.max(1L, est) * scale;
+
+            final long actual = s.unitsOut.get();
+
+            if (actual > deviation * expected) {
+
+                return actual / expected;
+
+            }
+
+        }
+
+        return 0d;
+
+    }
+
+    /**
+     * Re-plan the join graph using a sampling limit which is raised in
+     * proportion to the observed estimation error.
+     * 
+     * @param parentQuery
+     *            The query in which the {@link JoinGraph} is running.
+     * @param oldPath
+     *            The join path which is currently running.
+     * @param ratio
+     *            The ratio of the observed to the estimated cardinality.
+     * 
+     * @return <code>true</code> iff a different join path was selected.
+     */
+    private boolean replan(final IRunningQuery parentQuery,
+            final Path oldPath, final double ratio) throws Exception {
+
+        incrementReplanCount(parentQuery);
+
+        final int limit = (int) Math.max(getLimit(),
+                Math.min(MAX_REPLAN_LIMIT, getLimit() * Math.ceil(ratio)));
+
+        final Path newPath;
+        try {
+
+            newPath = plan(parentQuery, limit);
+
+        } catch (NoSolutionsException ex) {
+
+            // Keep the join path that is already running.
+            setPath(parentQuery, oldPath);
+
+            return false;
+
+        }
+
+        final boolean changed = !Arrays.equals(oldPath.getVertexIds(),
+                newPath.getVertexIds());
+
+        if (log.isInfoEnabled())
+            log.info("Re-planned: ratio=" + ratio + ", limit=" + limit
+                    + ", changed=" + changed + ", oldPath="
+                    + Arrays.toString(oldPath.getVertexIds()) + ", newPath="
+                    + Arrays.toString(newPath.getVertexIds()));
+
+        return changed;
+
+    }
+
+    /**
+     * Return a map from the bopId of each join in the query plan to the index
+     * of the vertex in the join path which is read by that join.
+     */
+    static private Map<Integer, Integer> getSteps(final PipelineOp queryOp,
+            final Path path) {
+
+        final int[] ids = path.getVertexIds();
+
+        final Map<Integer, Integer> steps = new LinkedHashMap<Integer, Integer>();
+
+        final Iterator<BOp> itr = BOpUtility.preOrderIterator(queryOp);
+
+        while (itr.hasNext()) {
+
+            final BOp op = itr.next();
+
+            final Object pred = op.getProperty(AccessPathJoinAnnotations.PREDICATE);
+
+            if (!(pred instanceof IPredicate))
+                continue;
+
+            final int predId = ((IPredicate<?>) pred).getId();
+
+            for (int i = 0; i < ids.length; i++) {
+
+                if (ids[i] == predId) {
+
+                    steps.put(op.getId(), i);
+
+                    break;
+
+                }
+
+            }
+
+        }
+
+        return steps;
+
+    }
+
 }
@@ -145,6 +145,36 @@ public class ArbitraryLengthPathOp extends PipelineOp {
          * that should be dropped from the solutions after each round.
          */
         String DROP_VARS = Annotations.class.getName() + ".dropVars";
+
+        /**
+         * When <code>true</code> the closure is computed over graph nodes
+         * rather than over solutions whenever this is safe (no edge variable,
+         * no variables projected in other than the left and right terms, and
+         * a bound seed for each source solution). The source solutions are
+         * grouped by their seed and the closure of each seed is computed only
+         * once. If the target of a solution is also bound, then a
+         * bidirectional breadth first search from the seed and the target is
+         * used instead. When <code>false</code>, the closure is always
+         * computed in rounds over solutions.
+         * 
+         * @see #DEFAULT_NODE_CLOSURE
+         */
+        String NODE_CLOSURE = Annotations.class.getName() + ".nodeClosure";
+
+        boolean DEFAULT_NODE_CLOSURE = true;
+
+        /**
+         * The #of graph nodes after which a visited set or a frontier of the
+         * node closure is moved from the JVM heap onto the native heap of the
+         * query.
+         * 
+         * @see #DEFAULT_NATIVE_THRESHOLD
+         * @see #NODE_CLOSURE
+         */
+        String NATIVE_THRESHOLD = Annotations.class.getName()
+                + ".nativeThreshold";
+
+        int DEFAULT_NATIVE_THRESHOLD = 100000;
         
     }
 
@@ -47,6 +47,7 @@ import com.bigdata.bop.IVariable;
 import com.bigdata.bop.IVariableOrConstant;
 import com.bigdata.bop.PipelineOp;
 import com.bigdata.bop.bindingSet.EmptyBindingSet;
+import com.bigdata.bop.bindingSet.ListBindingSet;
 import com.bigdata.bop.engine.AbstractRunningQuery;
 import com.bigdata.bop.engine.IRunningQuery;
 import com.bigdata.bop.engine.QueryEngine;
@@ -92,6 +93,17 @@ import cutthecrap.utils.striterators.ICloseableIterator;
  * solutions from the hash index; and (c) hash joining the solutions from the
  * sub-section of the query plan back against the hash index to reunite the
  * solutions from the subquery with those in the parent context.
+ * <p>
+ * When each source solution has a bound seed, there is no edge variable, and
+ * no variables other than the left and right terms are projected in, the
+ * closure is computed over graph nodes rather than over solutions (see
+ * {@link Annotations#NODE_CLOSURE}). The source solutions of a chunk are
+ * grouped by their seed and a breadth first search is run once per seed, with
+ * a single visited set shared by all solutions having that seed. A solution
+ * whose target is also bound is answered by a bidirectional breadth first
+ * search which always expands the smaller frontier. The visited sets and the
+ * frontiers are moved onto the native heap once they grow large (see
+ * {@link Annotations#NATIVE_THRESHOLD}).
  * 
  * @author <a href="mailto:mpersonick@users.sourceforge.net">Mike Personick</a>
  * @author <a href="mailto:ms@metaphacts.com">Michael Schmidt</a>
@@ -125,6 +137,14 @@ public class ArbitraryLengthPathTask implements Callable<Void> {
     private final IVariableOrConstant<?> middleTerm;
     private final IVariable<?> edgeVar;
     private final List<IVariable<?>> dropVars;
+    private final boolean nodeClosure;
+    private final int nativeThreshold;
+
+    /**
+     * The #of frontier nodes fed into the subquery at once by the node
+     * closure.
+     */
+    private static final int NODE_BATCH_SIZE = 10000;
 
     public ArbitraryLengthPathTask(
             final ArbitraryLengthPathOp controllerOp,
@@ -242,6 +262,30 @@ public class ArbitraryLengthPathTask implements Callable<Void> {
             log.debug("vars to drop: " + dropVars);
         }
 
+        /*
+         * The closure may be computed over nodes only if the solutions do not
+         * carry anything other than the left and right terms (the output is
+         * projected onto varsToRetain) and every path has at least the lower
+         * bound the node closure understands.
+         */
+        boolean nodeClosure = controllerOp.getProperty(
+                Annotations.NODE_CLOSURE, Annotations.DEFAULT_NODE_CLOSURE)
+                && edgeVar == null && lowerBound <= 1;
+        for (IVariable<?> var : varsToRetain) {
+            if (!var.equals(leftVar) && !var.equals(rightVar)) {
+                nodeClosure = false;
+            }
+        }
+        this.nodeClosure = nodeClosure;
+
+        this.nativeThreshold = controllerOp.getProperty(
+                Annotations.NATIVE_THRESHOLD,
+                Annotations.DEFAULT_NATIVE_THRESHOLD);
+
+        if (log.isDebugEnabled()) {
+            log.debug("node closure: " + nodeClosure);
+        }
+
     }
   
     @Override
@@ -316,6 +360,14 @@ public class ArbitraryLengthPathTask implements Callable<Void> {
             log.debug("gearing: " + gearing);
         }
 
+        if (nodeClosure && chunkIn.length > 0 && isSeeded(gearing, chunkIn)) {
+
+            closeByNode(queryEngine, chunkIn, gearing);
+
+            return;
+
+        }
+
         for (IBindingSet parentSolutionIn : chunkIn) {
 
             if (log.isDebugEnabled())
@@ -388,6 +440,548 @@ public class ArbitraryLengthPathTask implements Callable<Void> {
 
     } // processChunk method
 
+    /**
+     * Return <code>true</code> iff the input side of the path is bound for
+     * each of the given solutions.
+     */
+    private boolean isSeeded(final Gearing gearing, final IBindingSet[] chunkIn) {
+
+        if (gearing.inConst != null)
+            return true;
+
+        for (IBindingSet bs : chunkIn) {
+
+            if (!bs.isBound(gearing.inVar))
+                return false;
+
+        }
+
+        return true;
+
+    }
+
+    /**
+     * Return the bound value for the output side of the path for the given
+     * solution -or- <code>null</code> if the output side is not bound.
+     */
+    private IConstant<?> getTarget(final Gearing gearing, final IBindingSet bs) {
+
+        return gearing.outConst != null ? gearing.outConst : bs
+                .get(gearing.outVar);
+
+    }
+
+    /**
+     * Compute the closure over graph nodes for a chunk of solutions, each of
+     * which has a bound seed. The solutions are grouped by seed. A group
+     * consisting of a single solution with a bound target is answered by a
+     * bidirectional search. Otherwise the closure of the seed is computed once
+     * and joined with each solution in the group.
+     * 
+     * @param queryEngine
+     *            the query engine to execute the driver subquery
+     * @param chunkIn
+     *            the source solutions
+     * @param gearing
+     *            the given gearing
+     */
+    private void closeByNode(final QueryEngine queryEngine,
+            final IBindingSet[] chunkIn, final Gearing gearing) {
+
+        final Map<IConstant<?>, List<IBindingSet>> groups = 
+                new LinkedHashMap<IConstant<?>, List<IBindingSet>>();
+
+        for (IBindingSet bs : chunkIn) {
+
+            final IConstant<?> seed = gearing.inConst != null ? gearing.inConst
+                    : bs.get(gearing.inVar);
+
+            List<IBindingSet> group = groups.get(seed);
+
+            if (group == null) {
+                group = new ArrayList<IBindingSet>();
+                groups.put(seed, group);
+            }
+
+            group.add(bs);
+
+        }
+
+        for (Map.Entry<IConstant<?>, List<IBindingSet>> e : groups.entrySet()) {
+
+            final IConstant<?> seed = e.getKey();
+
+            final List<IBindingSet> group = e.getValue();
+
+            if (group.size() == 1 && getTarget(gearing, group.get(0)) != null) {
+
+                final IBindingSet bs = group.get(0);
+
+                final IConstant<?> target = getTarget(gearing, bs);
+
+                if (isReachable(queryEngine, gearing, seed, target)) {
+
+                    emitNode(bs, gearing, target);
+
+                }
+
+                continue;
+
+            }
+
+            /*
+             * The bound targets of the group. We may stop as soon as they have
+             * all been visited unless some solution has an unbound target.
+             */
+            final Set<IConstant<?>> targets = new LinkedHashSet<IConstant<?>>();
+
+            boolean unbound = false;
+
+            for (IBindingSet bs : group) {
+
+                final IConstant<?> target = getTarget(gearing, bs);
+
+                if (target == null)
+                    unbound = true;
+                else
+                    targets.add(target);
+
+            }
+
+            final PathNodeSet visited = closure(queryEngine, gearing, seed,
+                    unbound ? null : targets);
+
+            try {
+
+                for (IBindingSet bs : group) {
+
+                    final IConstant<?> target = getTarget(gearing, bs);
+
+                    if (target == null) {
+
+                        for (IConstant<?> node : visited) {
+
+                            emitNode(bs, gearing, node);
+
+                        }
+
+                    } else if (visited.contains(target)) {
+
+                        emitNode(bs, gearing, target);
+
+                    }
+
+                }
+
+            } finally {
+
+                visited.close();
+
+            }
+
+        }
+
+    }
+
+    /**
+     * Compute the set of nodes reachable from the seed by a path whose length
+     * is within the lower and upper bound.
+     * 
+     * @param queryEngine
+     *            the query engine to execute the driver subquery
+     * @param gearing
+     *            the given gearing
+     * @param seed
+     *            the start node
+     * @param targets
+     *            when non-<code>null</code>, the search stops as soon as all
+     *            of these nodes have been visited.
+     * 
+     * @return The visited nodes. The caller MUST close this set.
+     */
+    private PathNodeSet closure(final QueryEngine queryEngine,
+            final Gearing gearing, final IConstant<?> seed,
+            final Set<IConstant<?>> targets) {
+
+        final PathNodeSet visited = newNodeSet();
+
+        PathNodeSet frontier = newNodeSet();
+
+        boolean done = false;
+
+        try {
+
+            if (lowerBound == 0)
+                visited.add(seed);
+
+            frontier.add(seed);
+
+            for (long depth = 0; depth < upperBound && !frontier.isEmpty(); depth++) {
+
+                if (targets != null && containsAll(visited, targets))
+                    break;
+
+                final PathNodeSet next = newNodeSet();
+
+                try {
+
+                    expand(queryEngine, frontier, gearing.tVarIn,
+                            gearing.tVarOut, visited, next, null/* goal */,
+                            null/* goalOrigin */);
+
+                } finally {
+
+                    frontier.close();
+
+                    frontier = next;
+
+                }
+
+            }
+
+            done = true;
+
+            return visited;
+
+        } finally {
+
+            frontier.close();
+
+            if (!done)
+                visited.close();
+
+        }
+
+    }
+
+    /**
+     * Return <code>true</code> iff there is a path from the seed to the target
+     * whose length is within the lower and upper bound. This runs a breadth
+     * first search forward from the seed and backward from the target, always
+     * expanding the smaller frontier, until the two searches meet.
+     * 
+     * @param queryEngine
+     *            the query engine to execute the driver subquery
+     * @param gearing
+     *            the given gearing
+     * @param seed
+     *            the start node
+     * @param target
+     *            the end node
+     */
+    private boolean isReachable(final QueryEngine queryEngine,
+            final Gearing gearing, final IConstant<?> seed,
+            final IConstant<?> target) {
+
+        if (lowerBound == 0 && seed.equals(target))
+            return true;
+
+        /*
+         * Note: The seed is not entered into the forward visited set since a
+         * path of length zero does not satisfy a lower bound of one. It is
+         * instead passed as the goal origin of the backward search.
+         */
+        final PathNodeSet fwdVisited = newNodeSet();
+
+        final PathNodeSet bwdVisited = newNodeSet();
+
+        PathNodeSet fwdFrontier = newNodeSet();
+
+        PathNodeSet bwdFrontier = newNodeSet();
+
+        try {
+
+            fwdFrontier.add(seed);
+
+            bwdVisited.add(target);
+
+            bwdFrontier.add(target);
+
+            for (long depth = 0; depth < upperBound && !fwdFrontier.isEmpty()
+                    && !bwdFrontier.isEmpty(); depth++) {
+
+                final PathNodeSet next = newNodeSet();
+
+                final boolean met;
+
+                if (fwdFrontier.size() <= bwdFrontier.size()) {
+
+                    try {
+                        met = expand(queryEngine, fwdFrontier, gearing.tVarIn,
+                                gearing.tVarOut, fwdVisited, next, bwdVisited,
+                                null/* goalOrigin */);
+                    } finally {
+                        fwdFrontier.close();
+                        fwdFrontier = next;
+                    }
+
+                } else {
+
+                    try {
+                        met = expand(queryEngine, bwdFrontier, gearing.tVarOut,
+                                gearing.tVarIn, bwdVisited, next, fwdVisited,
+                                seed/* goalOrigin */);
+                    } finally {
+                        bwdFrontier.close();
+                        bwdFrontier = next;
+                    }
+
+                }
+
+                if (met)
+                    return true;
+
+            }
+
+            return false;
+
+        } finally {
+
+            fwdVisited.close();
+
+            bwdVisited.close();
+
+            fwdFrontier.close();
+
+            bwdFrontier.close();
+
+        }
+
+    }
+
+    /**
+     * Expand the frontier by one step, running the subquery in batches of
+     * {@link #NODE_BATCH_SIZE} nodes. Each node reached which was not yet
+     * visited is added to the visited set and to the next frontier.
+     * 
+     * @param queryEngine
+     *            the query engine to execute the driver subquery
+     * @param frontier
+     *            the nodes to expand
+     * @param fromVar
+     *            the transitivity variable bound to the frontier nodes
+     * @param toVar
+     *            the transitivity variable reporting the reached nodes
+     * @param visited
+     *            the visited set of this search
+     * @param next
+     *            the next frontier of this search
+     * @param goal
+     *            the visited set of the opposite search (optional)
+     * @param goalOrigin
+     *            the start node of the opposite search (optional)
+     * 
+     * @return <code>true</code> iff a newly visited node is a member of the
+     *         goal set or is the goal origin, in which case the expansion
+     *         stops immediately.
+     */
+    private boolean expand(final QueryEngine queryEngine,
+            final PathNodeSet frontier, final IVariable<?> fromVar,
+            final IVariable<?> toVar, final PathNodeSet visited,
+            final PathNodeSet next, final PathNodeSet goal,
+            final IConstant<?> goalOrigin) {
+
+        final List<IBindingSet> batch = new ArrayList<IBindingSet>();
+
+        final Iterator<IConstant<?>> itr = frontier.iterator();
+
+        while (itr.hasNext()) {
+
+            final IBindingSet bs = new ListBindingSet();
+
+            bs.set(fromVar, itr.next());
+
+            batch.add(bs);
+
+            if (batch.size() == NODE_BATCH_SIZE || !itr.hasNext()) {
+
+                if (expandBatch(queryEngine, batch, toVar, visited, next,
+                        goal, goalOrigin)) {
+
+                    return true;
+
+                }
+
+                batch.clear();
+
+            }
+
+        }
+
+        return false;
+
+    }
+
+    /**
+     * Run the subquery for one batch of frontier nodes.
+     * 
+     * @see #expand(QueryEngine, PathNodeSet, IVariable, IVariable,
+     *      PathNodeSet, PathNodeSet, PathNodeSet, IConstant)
+     */
+    private boolean expandBatch(final QueryEngine queryEngine,
+            final List<IBindingSet> batch, final IVariable<?> toVar,
+            final PathNodeSet visited, final PathNodeSet next,
+            final PathNodeSet goal, final IConstant<?> goalOrigin) {
+
+        // The subquery
+        IRunningQuery runningSubquery = null;
+
+        // The iterator draining the subquery
+        ICloseableIterator<IBindingSet[]> subquerySolutionItr = null;
+
+        try {
+
+            runningSubquery = queryEngine.eval(subquery,
+                    batch.toArray(new IBindingSet[batch.size()]));
+
+            long subquerySolutionsOut = 0L; // #of solutions read from subquery
+
+            try {
+
+                // Declare the child query to the parent.
+                ((AbstractRunningQuery) context.getRunningQuery())
+                        .addChild(runningSubquery);
+
+                // Iterator visiting the subquery solutions.
+                subquerySolutionItr = runningSubquery.iterator();
+
+                while (subquerySolutionItr.hasNext()) {
+
+                    final IBindingSet[] chunk = subquerySolutionItr.next();
+
+                    if (Thread.interrupted()) throw new InterruptedException();
+
+                    for (IBindingSet bs : chunk) {
+
+                        if (subquerySolutionsOut++ % 10 == 0
+                                && Thread.interrupted()) {
+                            throw new InterruptedException();
+                        }
+
+                        final IConstant<?> node = bs.get(toVar);
+
+                        if (node == null || !visited.add(node))
+                            continue;
+
+                        next.add(node);
+
+                        if (goal != null
+                                && (goal.contains(node) || node
+                                        .equals(goalOrigin))) {
+
+                            if (log.isDebugEnabled())
+                                log.debug("searches met at: " + node);
+
+                            // The subquery is cancelled below.
+                            return true;
+
+                        }
+
+                    }
+
+                }
+
+                // finished with the iterator
+                subquerySolutionItr.close();
+
+                // wait for the subquery to halt / test for errors.
+                runningSubquery.get();
+
+                return false;
+
+            } catch (InterruptedException ex) {
+
+                // this thread was interrupted, so cancel the subquery.
+                runningSubquery.cancel(true/* mayInterruptIfRunning */);
+
+                // rethrow the exception.
+                throw ex;
+
+            }
+
+        } catch (Throwable t) {
+
+            /*
+             * Propagate the error to the parent and rethrow the first cause
+             * error out of the subquery (see doIterate()).
+             */
+            final Throwable cause = (runningSubquery != null && runningSubquery
+                    .getCause() != null) ? runningSubquery.getCause() : t;
+
+            throw new RuntimeException(ArbitraryLengthPathTask.this.context
+                    .getRunningQuery().halt(cause));
+
+        } finally {
+
+            try {
+
+                // ensure subquery is halted.
+                if (runningSubquery != null)
+                    runningSubquery.cancel(true/* mayInterruptIfRunning */);
+
+            } finally {
+
+                // ensure the subquery solution iterator is closed.
+                if (subquerySolutionItr != null)
+                    subquerySolutionItr.close();
+
+            }
+
+        }
+
+    }
+
+    private static boolean containsAll(final PathNodeSet set,
+            final Set<IConstant<?>> nodes) {
+
+        for (IConstant<?> node : nodes) {
+
+            if (!set.contains(node))
+                return false;
+
+        }
+
+        return true;
+
+    }
+
+    private PathNodeSet newNodeSet() {
+
+        return new PathNodeSet(context.getMemoryManager(null/* queryId */),
+                nativeThreshold);
+
+    }
+
+    /**
+     * Flushes a solution of the node closure to the output buffer, in case it
+     * is not a duplicate.
+     * 
+     * @param bs
+     *            the source solution
+     * @param gearing
+     *            the associated gearing
+     * @param node
+     *            the node reached from the seed of the source solution
+     */
+    private void emitNode(final IBindingSet bs, final Gearing gearing,
+            final IConstant<?> node) {
+
+        IBindingSet bset = bs.clone();
+
+        if (gearing.outVar != null) {
+
+            bset.set(gearing.outVar, node);
+
+        }
+
+        if ((bset = distinctVarFilter.accept(bset)) != null) {
+
+            out.add(bset);
+
+        }
+
+    }
+
 
     /**
      * Performs up to upperBound iterations (or stops if a fixed point has
@@ -0,0 +1,296 @@
+/**
+
+Copyright (C) SYSTAP, LLC DBA Blazegraph 2006-2016.  All rights reserved.
+
+Contact:
+     SYSTAP, LLC DBA Blazegraph
+     2501 Calvert ST NW #106
+     Washington, DC 20008
+     licenses@blazegraph.com
+
+This program is free software; you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation; version 2 of the License.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program; if not, write to the Free Software
+Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+
+package com.bigdata.bop.paths;
+
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.UUID;
+
+import com.bigdata.bop.Constant;
+import com.bigdata.bop.IConstant;
+import com.bigdata.btree.BTree;
+import com.bigdata.btree.DefaultTupleSerializer;
+import com.bigdata.btree.ITuple;
+import com.bigdata.btree.ITupleIterator;
+import com.bigdata.btree.IndexMetadata;
+import com.bigdata.btree.keys.ASCIIKeyBuilderFactory;
+import com.bigdata.btree.keys.IKeyBuilder;
+import com.bigdata.btree.raba.codec.EmptyRabaValueCoder;
+import com.bigdata.btree.raba.codec.FrontCodedRabaCoder;
+import com.bigdata.rdf.internal.IV;
+import com.bigdata.rdf.internal.IVUtility;
+import com.bigdata.rwstore.sector.IMemoryManager;
+import com.bigdata.rwstore.sector.MemStore;
+
+/**
+ * A set of graph nodes (the visited set or the frontier of a breadth first
+ * search over a property path). The set lives on the JVM heap until it reaches
+ * a threshold, at which point its members are moved into a {@link BTree} on a
+ * {@link MemStore} backed by a child allocation context of the
+ * {@link IMemoryManager} of the query. This keeps the closure of deep or wide
+ * hierarchies off the JVM heap.
+ * <p>
+ * Only {@link IV}s can be moved onto the native heap (they are encoded as the
+ * keys of the index). If a node which is not an {@link IV} is ever added to the
+ * set, the set remains on the JVM heap.
+ * <p>
+ * This class is not thread-safe. The caller MUST {@link #close()} the set to
+ * release the native memory.
+ * 
+ * @see ArbitraryLengthPathTask
+ */
+class PathNodeSet implements Iterable<IConstant<?>> {
+
+    /**
+     * The memory manager used to allocate the native heap -or-
+     * <code>null</code> if the set may not be moved onto the native heap.
+     */
+    private final IMemoryManager mmgr;
+
+    /**
+     * The #of members after which the set is moved onto the native heap.
+     */
+    private final int threshold;
+
+    /**
+     * The members while the set is on the JVM heap and <code>null</code> once
+     * it has been moved onto the native heap.
+     */
+    private LinkedHashSet<IConstant<?>> jvm = new LinkedHashSet<IConstant<?>>();
+
+    /**
+     * <code>false</code> if some member is not an {@link IV}.
+     */
+    private boolean encodable = true;
+
+    /**
+     * The backing store and index once the set is on the native heap.
+     */
+    private MemStore store;
+
+    private BTree index;
+
+    private IKeyBuilder keyBuilder;
+
+    /**
+     * The #of members once the set is on the native heap.
+     */
+    private long nativeSize;
+
+    /**
+     * @param mmgr
+     *            The memory manager used to allocate the native heap -or-
+     *            <code>null</code> if the set must remain on the JVM heap.
+     * @param threshold
+     *            The #of members after which the set is moved onto the native
+     *            heap.
+     */
+    PathNodeSet(final IMemoryManager mmgr, final int threshold) {
+
+        if (threshold <= 0)
+            throw new IllegalArgumentException();
+
+        this.mmgr = mmgr;
+
+        this.threshold = threshold;
+
+    }
+
+    /**
+     * Add a node.
+     * 
+     * @return <code>true</code> iff the node was not already a member.
+     */
+    boolean add(final IConstant<?> node) {
+
+        if (jvm != null) {
+
+            if (!jvm.add(node))
+                return false;
+
+            if (!(node.get() instanceof IV))
+                encodable = false;
+
+            if (jvm.size() >= threshold && encodable && mmgr != null)
+                spill();
+
+            return true;
+
+        }
+
+        final byte[] key = key(node);
+
+        if (index.contains(key))
+            return false;
+
+        index.insert(key, null/* val */);
+
+        nativeSize++;
+
+        return true;
+
+    }
+
+    boolean contains(final IConstant<?> node) {
+
+        if (jvm != null)
+            return jvm.contains(node);
+
+        if (!(node.get() instanceof IV)) {
+            // Can not be a member of an index of IVs.
+            return false;
+        }
+
+        return index.contains(key(node));
+
+    }
+
+    long size() {
+
+        return jvm != null ? jvm.size() : nativeSize;
+
+    }
+
+    boolean isEmpty() {
+
+        return size() == 0L;
+
+    }
+
+    /**
+     * <code>true</code> iff the set has been moved onto the native heap.
+     */
+    boolean isNative() {
+
+        return jvm == null;
+
+    }
+
+    /**
+     * Visit the members. The members are visited in the order in which they
+     * were added while the set is on the JVM heap and in key order otherwise.
+     */
+    @Override
+    public Iterator<IConstant<?>> iterator() {
+
+        if (jvm != null)
+            return jvm.iterator();
+
+        @SuppressWarnings("unchecked")
+        final ITupleIterator<Object> itr = index.rangeIterator();
+
+        return new Iterator<IConstant<?>>() {
+
+            @Override
+            public boolean hasNext() {
+                return itr.hasNext();
+            }
+
+            @SuppressWarnings({ "rawtypes", "unchecked" })
+            @Override
+            public IConstant<?> next() {
+                final ITuple<Object> t = itr.next();
+                return new Constant<IV>(IVUtility.decode(t.getKey()));
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+
+        };
+
+    }
+
+    /**
+     * Release the native heap (if any). The set may not be used afterwards.
+     */
+    void close() {
+
+        jvm = null;
+
+        if (index != null) {
+            index.close();
+            index = null;
+        }
+
+        if (store != null) {
+            store.close();
+            store = null;
+        }
+
+    }
+
+    /**
+     * Move the members onto the native heap.
+     */
+    private void spill() {
+
+        final IndexMetadata metadata = new IndexMetadata(UUID.randomUUID());
+
+        // No values.
+        metadata.setMaxRecLen(0);
+
+        final int ratio = 32; // front-coding ratio (see NativeDistinctFilter).
+
+        @SuppressWarnings("rawtypes")
+        final DefaultTupleSerializer<?, ?> tupleSer = new DefaultTupleSerializer(
+                new ASCIIKeyBuilderFactory(64/* initialCapacity */),//
+                new FrontCodedRabaCoder(ratio),// keys
+                EmptyRabaValueCoder.INSTANCE // vals
+        );
+
+        metadata.setTupleSerializer(tupleSer);
+
+        keyBuilder = tupleSer.getKeyBuilder();
+
+        store = new MemStore(mmgr.createAllocationContext());
+
+        index = BTree.create(store, metadata);
+
+        for (IConstant<?> node : jvm) {
+
+            index.insert(key(node), null/* val */);
+
+        }
+
+        nativeSize = jvm.size();
+
+        jvm = null;
+
+    }
+
+    @SuppressWarnings("rawtypes")
+    private byte[] key(final IConstant<?> node) {
+
+        keyBuilder.reset();
+
+        IVUtility.encode(keyBuilder, (IV) node.get());
+
+        return keyBuilder.getKey();
+
+    }
+
+}
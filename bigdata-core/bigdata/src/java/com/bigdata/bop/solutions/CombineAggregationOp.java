@@ -0,0 +1,363 @@
+/**
+
+Copyright (C) SYSTAP, LLC DBA Blazegraph 2006-2016.  All rights reserved.
+
+Contact:
+     SYSTAP, LLC DBA Blazegraph
+     2501 Calvert ST NW #106
+     Washington, DC 20008
+     licenses@blazegraph.com
+
+This program is free software; you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation; version 2 of the License.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program; if not, write to the Free Software
+Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+package com.bigdata.bop.solutions;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.FutureTask;
+
+import com.bigdata.bop.BOp;
+import com.bigdata.bop.BOpContext;
+import com.bigdata.bop.ContextBindingSet;
+import com.bigdata.bop.IBindingSet;
+import com.bigdata.bop.ISingleThreadedOp;
+import com.bigdata.bop.IVariable;
+import com.bigdata.bop.NV;
+import com.bigdata.bop.PipelineOp;
+import com.bigdata.bop.aggregate.IAggregate;
+import com.bigdata.bop.aggregate.IMergeableAggregate;
+import com.bigdata.bop.bindingSet.ListBindingSet;
+import com.bigdata.bop.engine.BOpStats;
+import com.bigdata.bop.solutions.PartialAggregationOp.PartialState;
+import com.bigdata.bop.solutions.PartialAggregationOp.PartialStates;
+import com.bigdata.bop.solutions.PipelinedAggregationOp.SolutionGroup;
+import com.bigdata.bop.solutions.PipelinedAggregationOp.SolutionGroupState;
+import com.bigdata.rdf.sparql.ast.FilterNode;
+import com.bigdata.relation.accesspath.IBlockingBuffer;
+
+import cutthecrap.utils.striterators.ICloseableIterator;
+
+/**
+ * The second phase of a parallel aggregation. On its last invocation, this
+ * operator collects the partial aggregation states left by the upstream
+ * {@link PartialAggregationOp}, merges the partial states for each group using
+ * {@link IMergeableAggregate#merge(IMergeableAggregate)}, finalizes the
+ * aggregates, evaluates the (rewritten) SELECT and HAVING clauses and writes
+ * out one solution per group. The output is the same as the output of the
+ * {@link PipelinedAggregationOp} for the same aggregation.
+ * <p>
+ * Note: In order to observe the lastInvocation signal, the operator MUST be
+ * single threaded ({@link PipelineOp.Annotations#MAX_PARALLEL}:=1), MUST
+ * request a final evaluation pass and MUST run on the query controller.
+ * 
+ * @see PartialAggregationOp
+ */
+public class CombineAggregationOp extends GroupByOp implements
+        ISingleThreadedOp {
+
+    private static final long serialVersionUID = 1L;
+
+    public interface Annotations extends PipelineOp.Annotations,
+            GroupByOp.Annotations {
+
+        /**
+         * The bopId of the upstream {@link PartialAggregationOp} whose
+         * partial aggregation states will be combined (required).
+         */
+        String PARTIAL_AGGREGATION_ID = CombineAggregationOp.class.getName()
+                + ".partialAggregationId";
+
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Returns <code>true</code>.
+     */
+    @Override
+    public boolean isPipelinedAggregationOp() {
+
+        return true;
+
+    }
+
+    /**
+     * Constructor required for {@link com.bigdata.bop.BOpUtility#deepCopy(FilterNode)}.
+     */
+    public CombineAggregationOp(final CombineAggregationOp op) {
+        super(op);
+    }
+
+    /**
+     * Required shallow copy constructor.
+     */
+    public CombineAggregationOp(final BOp[] args,
+            final Map<String, Object> annotations) {
+
+        super(args, annotations);
+
+        switch (getEvaluationContext()) {
+        case CONTROLLER:
+            break;
+        default:
+            throw new UnsupportedOperationException(
+                    Annotations.EVALUATION_CONTEXT + "="
+                            + getEvaluationContext());
+        }
+
+        getRequiredProperty(Annotations.PARTIAL_AGGREGATION_ID);
+
+        getRequiredProperty(Annotations.GROUP_BY_STATE);
+
+        getRequiredProperty(Annotations.GROUP_BY_REWRITE);
+
+        if (!isLastPassRequested()) {
+            /*
+             * Note: A final evaluation pass is required to write out the
+             * aggregates.
+             */
+            throw new UnsupportedOperationException(Annotations.LAST_PASS
+                    + "=" + isLastPassRequested());
+        }
+
+        /*
+         * Note: The operator MUST be single threaded in order to receive the
+         * isLastInvocation notice.
+         */
+        assertMaxParallelOne();
+
+    }
+
+    public CombineAggregationOp(final BOp[] args, final NV... annotations) {
+
+        this(args, NV.asMap(annotations));
+
+    }
+
+    @Override
+    public FutureTask<Void> eval(final BOpContext<IBindingSet> context) {
+
+        return new FutureTask<Void>(new ChunkTask(this, context));
+
+    }
+
+    /**
+     * Merge the partial states of the aggregates of one group into the
+     * aggregates of the same group. Both maps were cloned from the same
+     * {@link IGroupByRewriteState#getAggExpr()} so they visit the aggregates
+     * in the same order.
+     */
+    @SuppressWarnings({ "rawtypes", "unchecked" })
+    static private void merge(
+            final LinkedHashMap<IAggregate<?>, IVariable<?>> target,
+            final LinkedHashMap<IAggregate<?>, IVariable<?>> source) {
+
+        final Iterator<IAggregate<?>> titr = target.keySet().iterator();
+
+        final Iterator<IAggregate<?>> sitr = source.keySet().iterator();
+
+        while (titr.hasNext()) {
+
+            ((IMergeableAggregate) titr.next()).merge((IMergeableAggregate) sitr
+                    .next());
+
+        }
+
+    }
+
+    /**
+     * Task executing on the node.
+     */
+    static private class ChunkTask implements Callable<Void> {
+
+        private final CombineAggregationOp op;
+
+        private final BOpContext<IBindingSet> context;
+
+        private final IGroupByState groupByState;
+
+        private final IGroupByRewriteState rewrite;
+
+        private final BOpStats stats;
+
+        ChunkTask(final CombineAggregationOp op,
+                final BOpContext<IBindingSet> context) {
+
+            this.op = op;
+
+            this.context = context;
+
+            this.stats = context.getStats();
+
+            this.groupByState = (IGroupByState) op
+                    .getRequiredProperty(Annotations.GROUP_BY_STATE);
+
+            this.rewrite = (IGroupByRewriteState) op
+                    .getRequiredProperty(Annotations.GROUP_BY_REWRITE);
+
+        }
+
+        @Override
+        public Void call() throws Exception {
+
+            final ICloseableIterator<IBindingSet[]> itr = context.getSource();
+
+            final IBlockingBuffer<IBindingSet[]> sink = context.getSink();
+
+            try {
+
+                while (itr.hasNext()) {
+
+                    /*
+                     * Note: The PartialAggregationOp does not write any
+                     * solutions, so there is normally nothing to consume here.
+                     */
+
+                    final IBindingSet[] a = itr.next();
+
+                    stats.chunksIn.increment();
+                    stats.unitsIn.add(a.length);
+
+                }
+
+                if (context.isLastInvocation()) {
+
+                    final List<IBindingSet> outList = combine();
+
+                    if (!outList.isEmpty()) {
+
+                        // Write the solutions onto the sink.
+                        sink.add(outList.toArray(new IBindingSet[0]));
+
+                        sink.flush();
+
+                    }
+
+                }
+
+                // done.
+                return null;
+
+            } finally {
+
+                sink.close();
+
+            }
+
+        }
+
+        /**
+         * Merge the partial states and return the output solutions.
+         */
+        private List<IBindingSet> combine() {
+
+            final Integer partialId = (Integer) op
+                    .getRequiredProperty(Annotations.PARTIAL_AGGREGATION_ID);
+
+            // Note: Discards the partial states from the query attributes.
+            final PartialStates states = (PartialStates) context
+                    .getRunningQuery().getAttributes().remove(partialId);
+
+            final List<IBindingSet> outList = new LinkedList<IBindingSet>();
+
+            if (groupByState.getGroupByClause() == null) {
+
+                /*
+                 * A single implicit group. A solution is reported for the
+                 * implicit group even if there were no source solutions.
+                 */
+
+                final LinkedHashMap<IAggregate<?>, IVariable<?>> aggExpr = PartialAggregationOp
+                        .newAggExpr(rewrite);
+
+                if (states != null) {
+
+                    for (PartialState state : states.all) {
+
+                        merge(aggExpr, state.aggExpr);
+
+                    }
+
+                }
+
+                final IBindingSet out = PipelinedAggregationOp.finalizeGroup(
+                        aggExpr,
+                        new ContextBindingSet(context, new ListBindingSet()),
+                        groupByState, rewrite, stats);
+
+                if (out != null)
+                    outList.add(out);
+
+                return outList;
+
+            }
+
+            if (states == null) {
+
+                // No solutions, so no groups.
+                return outList;
+
+            }
+
+            /*
+             * Explicit GROUP_BY. The state for the first occurrence of each
+             * group is adopted and the state from any other partial
+             * aggregation for that group is merged into it.
+             */
+
+            final LinkedHashMap<SolutionGroup, SolutionGroupState> map = new LinkedHashMap<SolutionGroup, SolutionGroupState>();
+
+            for (PartialState state : states.all) {
+
+                for (Map.Entry<SolutionGroup, SolutionGroupState> e : state.map
+                        .entrySet()) {
+
+                    final SolutionGroupState groupState = map.get(e.getKey());
+
+                    if (groupState == null) {
+
+                        map.put(e.getKey(), e.getValue());
+
+                    } else {
+
+                        merge(groupState.aggExpr, e.getValue().aggExpr);
+
+                    }
+
+                }
+
+            }
+
+            for (SolutionGroupState groupState : map.values()) {
+
+                final IBindingSet out = PipelinedAggregationOp.finalizeGroup(
+                        groupState.aggExpr, groupState.aggregates,
+                        groupByState, rewrite, stats);
+
+                if (out != null)
+                    outList.add(out);
+
+            }
+
+            return outList;
+
+        }
+
+    }
+
+}
@@ -0,0 +1,712 @@
+/**
+
+Copyright (C) SYSTAP, LLC DBA Blazegraph 2006-2016.  All rights reserved.
+
+Contact:
+     SYSTAP, LLC DBA Blazegraph
+     2501 Calvert ST NW #106
+     Washington, DC 20008
+     licenses@blazegraph.com
+
+This program is free software; you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation; version 2 of the License.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program; if not, write to the Free Software
+Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+package com.bigdata.bop.solutions;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.FutureTask;
+
+import org.apache.log4j.Logger;
+
+import com.bigdata.bop.BOp;
+import com.bigdata.bop.BOpContext;
+import com.bigdata.bop.IBindingSet;
+import com.bigdata.bop.IQueryAttributes;
+import com.bigdata.bop.ISingleThreadedOp;
+import com.bigdata.bop.IValueExpression;
+import com.bigdata.bop.NV;
+import com.bigdata.bop.engine.BOpStats;
+import com.bigdata.bop.solutions.MemoryGroupByOp.SolutionGroup;
+import com.bigdata.rawstore.IPSOutputStream;
+import com.bigdata.rdf.internal.encoder.IVSolutionSetEncoder;
+import com.bigdata.rdf.internal.encoder.SolutionSetStreamDecoder;
+import com.bigdata.rdf.internal.encoder.SolutionSetStreamEncoder;
+import com.bigdata.relation.accesspath.IBlockingBuffer;
+import com.bigdata.relation.accesspath.UnsyncLocalOutputBuffer;
+import com.bigdata.rwstore.sector.IMemoryManager;
+import com.bigdata.striterator.Chunkerator;
+
+import cutthecrap.utils.striterators.ICloseableIterator;
+
+/**
+ * A generalized aggregation operator which partitions the solutions by the
+ * hash code of their GROUP BY values onto the native heap using the
+ * {@link IMemoryManager} of the query. This operator has the same semantics as
+ * the {@link MemoryGroupByOp}, but only one partition of the solutions is
+ * held on the JVM heap at any given time.
+ * <p>
+ * Each time the operator runs, it computes the GROUP BY values for each
+ * incoming solution (dropping the solution if they can not be computed) and
+ * buffers the solution on the JVM heap in the partition selected by the hash
+ * code of those values. When {@link Annotations#SPILL_SIZE} solutions have
+ * been buffered, each partition buffer is written onto the native heap using
+ * the {@link IVSolutionSetEncoder} (via the {@link SolutionSetStreamEncoder})
+ * and the buffers are discarded. Once the last chunk of source solutions has
+ * been observed, the partitions are aggregated one at a time: the solutions
+ * for the partition are decoded, grouped and aggregated exactly as the
+ * {@link MemoryGroupByOp} would do it and the partition is discarded. All
+ * solutions in a group fall into the same partition, so each group is
+ * aggregated exactly once.
+ * <p>
+ * The heap demand is therefore proportional to the #of solutions divided by
+ * the #of {@link Annotations#PARTITIONS} rather than to the #of solutions.
+ * When there is no GROUP BY clause, there is a single group and all solutions
+ * are placed into the same partition.
+ * 
+ * @see MemoryGroupByOp
+ */
+public class ExternalMemoryGroupByOp extends GroupByOp implements
+        ISingleThreadedOp {
+
+    private static final transient Logger log = Logger
+            .getLogger(ExternalMemoryGroupByOp.class);
+
+    /**
+     * 
+     */
+    private static final long serialVersionUID = 1L;
+
+    public interface Annotations extends GroupByOp.Annotations {
+
+        /**
+         * The #of hash partitions. The solutions for each partition are
+         * aggregated separately, so the peak demand on the JVM heap is roughly
+         * the #of solutions divided by the #of partitions.
+         */
+        String PARTITIONS = ExternalMemoryGroupByOp.class.getName()
+                + ".partitions";
+
+        int DEFAULT_PARTITIONS = 64;
+
+        /**
+         * The maximum #of solutions which will be buffered on the JVM heap
+         * (across all partitions) before the partition buffers are written
+         * onto the native heap.
+         */
+        String SPILL_SIZE = ExternalMemoryGroupByOp.class.getName()
+                + ".spillSize";
+
+        int DEFAULT_SPILL_SIZE = 100000;
+
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Returns <code>false</code>. This is a generalized aggregation operator
+     * and may be used to evaluate any aggregation request.
+     */
+    @Override
+    final public boolean isPipelinedAggregationOp() {
+
+        return false;
+
+    }
+
+    /**
+     * Constructor required for {@link com.bigdata.bop.BOpUtility#deepCopy(FilterNode)}.
+     */
+    public ExternalMemoryGroupByOp(final ExternalMemoryGroupByOp op) {
+        super(op);
+    }
+
+    /**
+     * Required shallow copy constructor.
+     */
+    public ExternalMemoryGroupByOp(final BOp[] args,
+            final Map<String, Object> annotations) {
+
+        super(args, annotations);
+
+        switch (getEvaluationContext()) {
+        case CONTROLLER:
+            break;
+        default:
+            throw new UnsupportedOperationException(
+                    Annotations.EVALUATION_CONTEXT + "="
+                            + getEvaluationContext());
+        }
+
+        assertMaxParallelOne();
+
+        if (!isLastPassRequested()) {
+            throw new UnsupportedOperationException(Annotations.LAST_PASS
+                    + "=" + isLastPassRequested());
+        }
+
+        if (getPartitions() <= 0)
+            throw new IllegalArgumentException(Annotations.PARTITIONS + "="
+                    + getPartitions());
+
+        if (getSpillSize() <= 0)
+            throw new IllegalArgumentException(Annotations.SPILL_SIZE + "="
+                    + getSpillSize());
+
+        getRequiredProperty(Annotations.GROUP_BY_STATE);
+
+        getRequiredProperty(Annotations.GROUP_BY_REWRITE);
+
+    }
+
+    public ExternalMemoryGroupByOp(final BOp[] args, final NV... annotations) {
+
+        this(args, NV.asMap(annotations));
+
+    }
+
+    /**
+     * @see Annotations#PARTITIONS
+     */
+    public int getPartitions() {
+
+        return getProperty(Annotations.PARTITIONS,
+                Annotations.DEFAULT_PARTITIONS);
+
+    }
+
+    /**
+     * @see Annotations#SPILL_SIZE
+     */
+    public int getSpillSize() {
+
+        return getProperty(Annotations.SPILL_SIZE,
+                Annotations.DEFAULT_SPILL_SIZE);
+
+    }
+
+    @Override
+    public FutureTask<Void> eval(final BOpContext<IBindingSet> context) {
+
+        return new FutureTask<Void>(new GroupByTask(this, context));
+
+    }
+
+    /**
+     * The solutions for one hash partition.
+     */
+    private static class Partition {
+
+        /**
+         * The solutions which have not yet been written onto the native heap.
+         */
+        private final List<IBindingSet> buffer = new ArrayList<IBindingSet>();
+
+        /**
+         * The address of each chunk of solutions written onto the native
+         * heap for this partition.
+         */
+        private final List<Long> addrs = new ArrayList<Long>();
+
+        /**
+         * The #of solutions in each chunk written onto the native heap.
+         */
+        private final List<Long> counts = new ArrayList<Long>();
+
+    }
+
+    /**
+     * The state of the operator. A reference to this object is stored on the
+     * {@link IQueryAttributes} so the partitions are visible across
+     * invocations of the operator.
+     */
+    private static class SpillState {
+
+        /**
+         * A child allocation context of the {@link IMemoryManager} for the
+         * query. All partitions are written onto this allocation context and
+         * it is cleared when the operator is done.
+         */
+        private final IMemoryManager mmgr;
+
+        private final Partition[] partitions;
+
+        /**
+         * The #of solutions buffered on the JVM heap across all partitions.
+         */
+        private int nbuffered = 0;
+
+        SpillState(final IMemoryManager mmgr, final int npartitions) {
+
+            this.mmgr = mmgr.createAllocationContext();
+
+            this.partitions = new Partition[npartitions];
+
+            for (int i = 0; i < npartitions; i++) {
+
+                partitions[i] = new Partition();
+
+            }
+
+        }
+
+        void release() {
+
+            mmgr.clear();
+
+            for (int i = 0; i < partitions.length; i++) {
+
+                partitions[i] = null;
+
+            }
+
+        }
+
+    }
+
+    /**
+     * Task executing on the node.
+     */
+    static private class GroupByTask implements Callable<Void> {
+
+        private final ExternalMemoryGroupByOp op;
+
+        private final BOpContext<IBindingSet> context;
+
+        private final BOpStats stats;
+
+        private final IGroupByState groupByState;
+
+        private final IGroupByRewriteState rewrite;
+
+        private final IValueExpression<?>[] groupBy;
+
+        private final int spillSize;
+
+        /**
+         * The {@link IQueryAttributes} for the
+         * {@link com.bigdata.bop.engine.IRunningQuery} off which we will hang
+         * the {@link SpillState}.
+         */
+        private final IQueryAttributes attrs;
+
+        /**
+         * The name of the key under which the {@link #state} is stored in the
+         * {@link IQueryAttributes}.
+         */
+        private final String key;
+
+        private SpillState state;
+
+        GroupByTask(final ExternalMemoryGroupByOp op,
+                final BOpContext<IBindingSet> context) {
+
+            this.op = op;
+
+            this.context = context;
+
+            this.stats = context.getStats();
+
+            this.groupByState = (IGroupByState) op
+                    .getRequiredProperty(Annotations.GROUP_BY_STATE);
+
+            this.rewrite = (IGroupByRewriteState) op
+                    .getRequiredProperty(Annotations.GROUP_BY_REWRITE);
+
+            this.groupBy = groupByState.getGroupByClause();
+
+            this.spillSize = op.getSpillSize();
+
+            this.attrs = context.getQueryAttributes();
+
+            this.key = Integer.toString(op.getId());
+
+            SpillState state = (SpillState) attrs.get(key);
+
+            if (state == null) {
+
+                state = new SpillState(
+                        context.getMemoryManager(null/* queryId */),
+                        groupBy == null ? 1 : op.getPartitions());
+
+                if (attrs.putIfAbsent(key, state) != null)
+                    throw new AssertionError();
+
+            }
+
+            this.state = state;
+
+        }
+
+        void release() {
+
+            if (log.isInfoEnabled())
+                log.info("Releasing state");
+
+            attrs.remove(key);
+
+            state.release();
+
+            state = null;
+
+        }
+
+        @Override
+        public Void call() throws Exception {
+
+            final ICloseableIterator<IBindingSet[]> itr = context
+                    .getSource();
+
+            final IBlockingBuffer<IBindingSet[]> sink = context.getSink();
+
+            final boolean lastInvocation = context.isLastInvocation();
+
+            try {
+
+                acceptSolutions(itr);
+
+                if (lastInvocation) {
+
+                    doGroupBy(sink);
+
+                }
+
+            } catch (Throwable t) {
+
+                log.error(t, t);
+
+                throw new RuntimeException(t);
+
+            } finally {
+
+                if (lastInvocation) {
+
+                    // Discard the operator's internal state.
+                    release();
+
+                }
+
+                sink.close();
+
+            }
+
+            // Done.
+            return null;
+
+        }
+
+        /**
+         * Return the partition for a solution group.
+         */
+        private int partitionOf(final SolutionGroup g) {
+
+            final int n = state.partitions.length;
+
+            final int h = g.hashCode();
+
+            return ((h ^ (h >>> 16)) & 0x7fffffff) % n;
+
+        }
+
+        /**
+         * Buffer each source solution in the partition for its group. If we
+         * can not compute the GROUP_BY value expressions for a solution, then
+         * the solution is dropped.
+         * 
+         * @param itr
+         *            The source solutions.
+         */
+        private void acceptSolutions(
+                final ICloseableIterator<IBindingSet[]> itr) throws IOException {
+
+            try {
+
+                while (itr.hasNext()) {
+
+                    final IBindingSet[] a = itr.next();
+
+                    stats.chunksIn.increment();
+                    stats.unitsIn.add(a.length);
+
+                    for (IBindingSet bset : a) {
+
+                        int p = 0;
+
+                        if (groupBy != null) {
+
+                            final SolutionGroup g = SolutionGroup.newInstance(
+                                    groupBy, bset, stats);
+
+                            if (g == null) {
+
+                                // Drop the solution.
+                                if (log.isDebugEnabled())
+                                    log.debug("Dropping solution: " + bset);
+
+                                continue;
+
+                            }
+
+                            p = partitionOf(g);
+
+                        }
+
+                        state.partitions[p].buffer.add(bset);
+
+                        if (++state.nbuffered >= spillSize) {
+
+                            spill();
+
+                        }
+
+                    } // next source solution
+
+                }
+
+                if (log.isInfoEnabled())
+                    log.info("Buffered " + state.nbuffered + " solutions");
+
+            } finally {
+
+                itr.close();
+
+            }
+
+        } // acceptSolutions
+
+        /**
+         * Write the buffered solutions for each partition onto the native
+         * heap and discard the buffers.
+         */
+        private void spill() throws IOException {
+
+            final long begin = System.currentTimeMillis();
+
+            for (Partition p : state.partitions) {
+
+                if (p.buffer.isEmpty())
+                    continue;
+
+                final SolutionSetStreamEncoder encoder = new SolutionSetStreamEncoder(
+                        key);
+
+                final IPSOutputStream out = state.mmgr.getOutputStream();
+
+                final long addr;
+                try {
+
+                    final DataOutputStream os = new DataOutputStream(
+                            new BufferedOutputStream(out));
+
+                    encoder.encode(os, new Chunkerator<IBindingSet>(
+                            p.buffer.iterator(), op.getChunkCapacity()));
+
+                    os.flush();
+
+                    addr = out.getAddr();
+
+                } finally {
+
+                    out.close();
+
+                }
+
+                p.addrs.add(addr);
+
+                p.counts.add(encoder.getSolutionCount());
+
+                // Discard the JVM heap references.
+                p.buffer.clear();
+
+            }
+
+            if (log.isInfoEnabled())
+                log.info("Spilled " + state.nbuffered + " solutions in "
+                        + (System.currentTimeMillis() - begin) + "ms");
+
+            state.nbuffered = 0;
+
+        }
+
+        /**
+         * Group and aggregate each partition in turn and write the aggregated
+         * solutions onto the sink.
+         * 
+         * @param sink
+         *            Where to write the results.
+         */
+        private void doGroupBy(final IBlockingBuffer<IBindingSet[]> sink) {
+
+            final UnsyncLocalOutputBuffer<IBindingSet> out = new UnsyncLocalOutputBuffer<IBindingSet>(
+                    op.getChunkCapacity(), sink);
+
+            final long begin = System.currentTimeMillis();
+
+            long nout = 0;
+
+            for (int i = 0; i < state.partitions.length; i++) {
+
+                final Partition p = state.partitions[i];
+
+                if (groupBy == null) {
+
+                    /*
+                     * Combine all solutions into a single multiset. The
+                     * aggregate is computed even if there are no solutions.
+                     */
+
+                    final List<IBindingSet> all = new LinkedList<IBindingSet>();
+
+                    readPartition(p, all, null/* groups */);
+
+                    final IBindingSet bset = MemoryGroupByOp.aggregate(
+                            context, groupByState, rewrite, all, stats);
+
+                    if (bset != null) {
+
+                        out.add(bset);
+
+                        nout++;
+
+                    }
+
+                } else {
+
+                    final LinkedHashMap<SolutionGroup, List<IBindingSet>> groups = new LinkedHashMap<SolutionGroup, List<IBindingSet>>();
+
+                    readPartition(p, null/* all */, groups);
+
+                    for (List<IBindingSet> solutions : groups.values()) {
+
+                        // Compute the aggregate for that group.
+                        final IBindingSet bset = MemoryGroupByOp.aggregate(
+                                context, groupByState, rewrite, solutions,
+                                stats);
+
+                        if (bset != null) {
+
+                            out.add(bset);
+
+                            nout++;
+
+                        }
+
+                    }
+
+                }
+
+                // Release the partition.
+                state.partitions[i] = null;
+
+            }
+
+            // write output and flush.
+            out.flush();
+            sink.flush();
+
+            if (log.isInfoEnabled())
+                log.info("Aggregated " + nout + " groups from "
+                        + state.partitions.length + " partitions in "
+                        + (System.currentTimeMillis() - begin) + "ms.");
+
+        }
+
+        /**
+         * Visit the solutions for a partition (those written onto the native
+         * heap and then those still buffered on the JVM heap), either adding
+         * them to <i>all</i> or to the multiset for their group in
+         * <i>groups</i>.
+         */
+        private void readPartition(final Partition p,
+                final List<IBindingSet> all,
+                final Map<SolutionGroup, List<IBindingSet>> groups) {
+
+            for (int j = 0; j < p.addrs.size(); j++) {
+
+                final SolutionSetStreamDecoder decoder = new SolutionSetStreamDecoder(
+                        key, new DataInputStream(new BufferedInputStream(
+                                state.mmgr.getInputStream(p.addrs.get(j)))),
+                        p.counts.get(j));
+
+                try {
+
+                    while (decoder.hasNext()) {
+
+                        for (IBindingSet bset : decoder.next()) {
+
+                            add(bset, all, groups);
+
+                        }
+
+                    }
+
+                } finally {
+
+                    decoder.close();
+
+                }
+
+            }
+
+            for (IBindingSet bset : p.buffer) {
+
+                add(bset, all, groups);
+
+            }
+
+            p.buffer.clear();
+
+        }
+
+        private void add(final IBindingSet bset, final List<IBindingSet> all,
+                final Map<SolutionGroup, List<IBindingSet>> groups) {
+
+            if (all != null) {
+
+                all.add(bset);
+
+                return;
+
+            }
+
+            /*
+             * Note: The GROUP BY values were computed when the solution was
+             * accepted, so this can not fail.
+             */
+            final SolutionGroup g = SolutionGroup.newInstance(groupBy, bset,
+                    stats);
+
+            List<IBindingSet> m = groups.get(g);
+
+            if (m == null) {
+
+                groups.put(g, m = new LinkedList<IBindingSet>());
+
+            }
+
+            m.add(bset);
+
+        }
+
+    } // GroupByTask
+
+}
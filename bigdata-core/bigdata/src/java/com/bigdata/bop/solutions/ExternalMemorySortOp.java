@@ -0,0 +1,1031 @@
+/**
+
+Copyright (C) SYSTAP, LLC DBA Blazegraph 2006-2016.  All rights reserved.
+
+Contact:
+     SYSTAP, LLC DBA Blazegraph
+     2501 Calvert ST NW #106
+     Washington, DC 20008
+     licenses@blazegraph.com
+
+This program is free software; you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation; version 2 of the License.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program; if not, write to the Free Software
+Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+package com.bigdata.bop.solutions;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.FutureTask;
+
+import org.apache.log4j.Logger;
+
+import com.bigdata.bop.BOp;
+import com.bigdata.bop.BOpContext;
+import com.bigdata.bop.IBind;
+import com.bigdata.bop.IBindingSet;
+import com.bigdata.bop.IQueryAttributes;
+import com.bigdata.bop.ISingleThreadedOp;
+import com.bigdata.bop.IValueExpression;
+import com.bigdata.bop.IVariable;
+import com.bigdata.bop.IVariableOrConstant;
+import com.bigdata.bop.NV;
+import com.bigdata.bop.engine.BOpStats;
+import com.bigdata.bop.join.HTreeHashJoinAnnotations;
+import com.bigdata.rawstore.IPSOutputStream;
+import com.bigdata.rdf.error.SparqlTypeErrorException;
+import com.bigdata.rdf.internal.encoder.IVBindingSetEncoderWithIVCache;
+import com.bigdata.relation.accesspath.IBlockingBuffer;
+import com.bigdata.relation.accesspath.UnsyncLocalOutputBuffer;
+import com.bigdata.rwstore.sector.IMemoryManager;
+import com.bigdata.rwstore.sector.MemStore;
+
+import cutthecrap.utils.striterators.ICloseableIterator;
+
+/**
+ * An external memory merge sort for binding sets backed by the
+ * {@link IMemoryManager} of the query. This operator has the same semantics as
+ * the {@link MemorySortOp}, but only a bounded number of solutions is buffered
+ * on the JVM heap at any given time.
+ * <p>
+ * Each time the operator runs, it evaluates the value expressions on which the
+ * ordering will be imposed, binding the results on the incoming solutions. So
+ * long as no more than {@link Annotations#RUN_SIZE} solutions have been
+ * observed, the as-bound solutions are buffered on the JVM heap and the sort is
+ * done entirely in memory, exactly as for the {@link MemorySortOp}.
+ * <p>
+ * Once that threshold is crossed, each solution is written onto the native
+ * heap exactly once and only its <em>sort key</em> (the as-bound values of the
+ * ORDER BY value expressions) and the address of the solution are retained on
+ * the JVM heap. Each time {@link Annotations#RUN_SIZE} sort keys have been
+ * buffered, they are sorted and written onto the native heap as a <em>sorted
+ * run</em>. Once the last chunk of source solutions has been observed, the
+ * sort keys which are still buffered are sorted in place and combined with the
+ * sorted runs using a k-way merge, reading each solution back from the native
+ * heap as its sort key is merged. During the merge, only the sort key at the
+ * head of each run is held on the JVM heap.
+ * <p>
+ * The solutions and the sort keys are encoded using an
+ * {@link IVBindingSetEncoderWithIVCache}, so the materialized RDF Values are
+ * also stored on the native heap (this is why the
+ * {@link Annotations#RELATION_NAME} is required). The requirements on the
+ * value expressions and the materialization of the
+ * {@link com.bigdata.rdf.internal.IV}s are otherwise the same as for the
+ * {@link MemorySortOp}.
+ *
+ * @see MemorySortOp
+ */
+public class ExternalMemorySortOp extends SortOp implements ISingleThreadedOp {
+
+    private static final transient Logger log = Logger
+            .getLogger(ExternalMemorySortOp.class);
+
+    /**
+     *
+     */
+    private static final long serialVersionUID = 1L;
+
+    public interface Annotations extends SortOp.Annotations,
+            HTreeHashJoinAnnotations {
+
+        /**
+         * The maximum #of solutions which will be sorted on the JVM heap. Once
+         * more solutions are observed, the solutions are written onto the
+         * native heap and this becomes the maximum #of sort keys in each
+         * sorted run.
+         */
+        String RUN_SIZE = ExternalMemorySortOp.class.getName() + ".runSize";
+
+        int DEFAULT_RUN_SIZE = 100000;
+
+    }
+
+    /**
+     * Deep copy constructor.
+     */
+    public ExternalMemorySortOp(final ExternalMemorySortOp op) {
+        super(op);
+    }
+
+    /**
+     * Required shallow copy constructor.
+     */
+    public ExternalMemorySortOp(final BOp[] args,
+            final Map<String, Object> annotations) {
+
+        super(args, annotations);
+
+        switch (getEvaluationContext()) {
+        case CONTROLLER:
+            break;
+        default:
+            throw new UnsupportedOperationException(
+                    Annotations.EVALUATION_CONTEXT + "="
+                            + getEvaluationContext());
+        }
+
+        assertMaxParallelOne();
+
+        if (!isLastPassRequested()) {
+            throw new UnsupportedOperationException(Annotations.LAST_PASS
+                    + "=" + isLastPassRequested());
+        }
+
+        // ORDER_BY must preserve order.
+        if (isReorderSolutions())
+            throw new UnsupportedOperationException(
+                    Annotations.REORDER_SOLUTIONS + "=" + isReorderSolutions());
+
+        if (getRunSize() <= 0)
+            throw new IllegalArgumentException(Annotations.RUN_SIZE + "="
+                    + getRunSize());
+
+        // required parameter.
+        getValueComparator();
+
+        // required parameter.
+        getRequiredProperty(Annotations.RELATION_NAME);
+
+        // validate required parameter.
+        for (ISortOrder<?> s : getSortOrder()) {
+
+            final IValueExpression<?> expr = s.getExpr();
+
+            if (expr instanceof IVariableOrConstant<?>)
+                continue;
+
+            if (expr instanceof IBind<?>)
+                continue;
+
+            throw new IllegalArgumentException(
+                    "Value expression not wrapped by bind: " + expr);
+
+        }
+
+    }
+
+    public ExternalMemorySortOp(final BOp[] args, final NV... annotations) {
+
+        this(args, NV.asMap(annotations));
+
+    }
+
+    /**
+     * @see Annotations#RUN_SIZE
+     */
+    public int getRunSize() {
+
+        return getProperty(Annotations.RUN_SIZE, Annotations.DEFAULT_RUN_SIZE);
+
+    }
+
+    @Override
+    public FutureTask<Void> eval(final BOpContext<IBindingSet> context) {
+
+        return new FutureTask<Void>(new SortTask(this, context));
+
+    }
+
+    /**
+     * The sort key for a solution which was written onto the native heap.
+     */
+    private static class SortKey {
+
+        /**
+         * The as-bound values of the ORDER BY value expressions.
+         */
+        private final IBindingSet key;
+
+        /**
+         * The address of the encoded solution on the native heap.
+         */
+        private final long addr;
+
+        SortKey(final IBindingSet key, final long addr) {
+
+            this.key = key;
+
+            this.addr = addr;
+
+        }
+
+    }
+
+    /**
+     * The state of the operator. A reference to this object is stored on the
+     * {@link IQueryAttributes} so the buffered solutions and the sorted runs
+     * are visible across invocations of the operator.
+     */
+    private static class SortState {
+
+        /**
+         * The {@link IMemoryManager} for the query.
+         */
+        private final IMemoryManager mmgr;
+
+        /**
+         * The solutions which are buffered on the JVM heap until the first
+         * spill.
+         */
+        private final List<IBindingSet> buffer;
+
+        /**
+         * The sort keys for the solutions on the native heap which have not
+         * yet been written onto a sorted run.
+         */
+        private final List<SortKey> keys;
+
+        /**
+         * The solutions, the sorted runs and the materialized RDF Values are
+         * written onto this store. It is backed by a child allocation context
+         * of {@link #mmgr} and is created by the first spill.
+         */
+        private MemStore store;
+
+        /**
+         * Used to encode the solutions and the sort keys. This is created by
+         * the first spill.
+         */
+        private IVBindingSetEncoderWithIVCache encoder;
+
+        /**
+         * The address of each sorted run on the {@link #store}.
+         */
+        private final List<Long> runAddrs = new ArrayList<Long>();
+
+        /**
+         * The #of sort keys in each sorted run.
+         */
+        private final List<Long> runCounts = new ArrayList<Long>();
+
+        SortState(final IMemoryManager mmgr, final int runSize) {
+
+            this.mmgr = mmgr;
+
+            this.buffer = new ArrayList<IBindingSet>(Math.min(runSize, 10000));
+
+            this.keys = new ArrayList<SortKey>();
+
+        }
+
+        /**
+         * Return <code>true</code> iff the solutions have been written onto
+         * the native heap.
+         */
+        boolean isSpilled() {
+
+            return store != null;
+
+        }
+
+        void release() {
+
+            if (encoder != null) {
+
+                encoder.release();
+
+                encoder = null;
+
+            }
+
+            if (store != null) {
+
+                store.close();
+
+                store = null;
+
+            }
+
+            buffer.clear();
+
+            keys.clear();
+
+            runAddrs.clear();
+
+            runCounts.clear();
+
+        }
+
+    }
+
+    /**
+     * Task executing on the node.
+     */
+    static private class SortTask implements Callable<Void> {
+
+        private final ExternalMemorySortOp op;
+
+        private final BOpContext<IBindingSet> context;
+
+        private final BOpStats stats;
+
+        private final ISortOrder<?>[] sortOrder;
+
+        /**
+         * The variables which are bound to the as-bound values of the ORDER BY
+         * value expressions.
+         */
+        private final IVariable<?>[] sortVars;
+
+        private final Comparator<IBindingSet> comparator;
+
+        private final Comparator<SortKey> keyComparator;
+
+        private final int runSize;
+
+        /**
+         * The {@link IQueryAttributes} for the
+         * {@link com.bigdata.bop.engine.IRunningQuery} off which we will hang
+         * the {@link SortState}.
+         */
+        private final IQueryAttributes attrs;
+
+        /**
+         * The name of the key under which the {@link #state} is stored in the
+         * {@link IQueryAttributes}.
+         */
+        private final String key;
+
+        private SortState state;
+
+        @SuppressWarnings({ "rawtypes", "unchecked" })
+        SortTask(final ExternalMemorySortOp op,
+                final BOpContext<IBindingSet> context) {
+
+            this.op = op;
+
+            this.context = context;
+
+            this.stats = context.getStats();
+
+            this.sortOrder = op.getSortOrder();
+
+            this.sortVars = getSortVars(sortOrder);
+
+            this.comparator = new BindingSetComparator(sortOrder,
+                    op.getValueComparator());
+
+            this.keyComparator = new Comparator<SortKey>() {
+                @Override
+                public int compare(final SortKey o1, final SortKey o2) {
+                    return comparator.compare(o1.key, o2.key);
+                }
+            };
+
+            this.runSize = op.getRunSize();
+
+            this.attrs = context.getQueryAttributes();
+
+            this.key = Integer.toString(op.getId());
+
+            SortState state = (SortState) attrs.get(key);
+
+            if (state == null) {
+
+                state = new SortState(context.getMemoryManager(null/* queryId */),
+                        runSize);
+
+                if (attrs.putIfAbsent(key, state) != null)
+                    throw new AssertionError();
+
+            }
+
+            this.state = state;
+
+        }
+
+        /**
+         * Return the variables on which the ORDER BY is imposed. Constants are
+         * ignored since they do not change the order.
+         */
+        private static IVariable<?>[] getSortVars(
+                final ISortOrder<?>[] sortOrder) {
+
+            final List<IVariable<?>> vars = new ArrayList<IVariable<?>>(
+                    sortOrder.length);
+
+            for (ISortOrder<?> s : sortOrder) {
+
+                final IValueExpression<?> expr = s.getExpr();
+
+                if (expr instanceof IBind<?>) {
+
+                    vars.add(((IBind<?>) expr).getVar());
+
+                } else if (expr instanceof IVariable<?>) {
+
+                    vars.add((IVariable<?>) expr);
+
+                }
+
+            }
+
+            return vars.toArray(new IVariable<?>[vars.size()]);
+
+        }
+
+        void release() {
+
+            if (log.isInfoEnabled())
+                log.info("Releasing state");
+
+            attrs.remove(key);
+
+            state.release();
+
+            state = null;
+
+        }
+
+        @Override
+        public Void call() throws Exception {
+
+            final ICloseableIterator<IBindingSet[]> itr = context
+                    .getSource();
+
+            final IBlockingBuffer<IBindingSet[]> sink = context.getSink();
+
+            final boolean lastInvocation = context.isLastInvocation();
+
+            try {
+
+                acceptSolutions(itr);
+
+                if (lastInvocation) {
+
+                    doOrderBy(sink);
+
+                }
+
+            } catch (Throwable t) {
+
+                log.error(t, t);
+
+                throw new RuntimeException(t);
+
+            } finally {
+
+                if (lastInvocation) {
+
+                    // Discard the operator's internal state.
+                    release();
+
+                }
+
+                sink.close();
+
+            }
+
+            // Done.
+            return null;
+
+        }
+
+        /**
+         * Evaluate the value expressions for each input solution and buffer
+         * the as-bound solutions. Once more than the configured run size have
+         * been observed, the solutions are written onto the native heap and
+         * only their sort keys are buffered.
+         *
+         * @param itr
+         *            The source solutions.
+         */
+        private void acceptSolutions(
+                final ICloseableIterator<IBindingSet[]> itr) throws IOException {
+
+            try {
+
+                while (itr.hasNext()) {
+
+                    final IBindingSet[] a = itr.next();
+
+                    stats.chunksIn.increment();
+                    stats.unitsIn.add(a.length);
+
+                    for (IBindingSet bset : a) {
+
+                        // Note: Necessary scope for type error reporting.
+                        IValueExpression<?> expr = null;
+
+                        try {
+
+                            for (ISortOrder<?> s : sortOrder) {
+
+                                /*
+                                 * Evaluate. A BIND() will have side-effect on
+                                 * [bset].
+                                 */
+                                (expr = s.getExpr()).get(bset);
+
+                            }
+
+                        } catch (SparqlTypeErrorException ex) {
+
+                            // log type error, do not drop solution (see trac 765).
+                            TypeErrorLog.handleTypeError(ex, expr, stats);
+
+                        }
+
+                        if (!state.isSpilled()) {
+
+                            state.buffer.add(bset);
+
+                            if (state.buffer.size() >= runSize) {
+
+                                spill();
+
+                            }
+
+                        } else {
+
+                            write(bset);
+
+                            if (state.keys.size() >= runSize) {
+
+                                writeRun();
+
+                            }
+
+                        }
+
+                    } // next source solution
+
+                    if (state.isSpilled()) {
+
+                        // Move the materialized RDF Values onto the native heap.
+                        state.encoder.flush();
+
+                    }
+
+                }
+
+                if (log.isInfoEnabled())
+                    log.info("Buffered " + state.buffer.size()
+                            + " solutions and " + state.keys.size()
+                            + " sort keys, nruns=" + state.runAddrs.size());
+
+            } finally {
+
+                itr.close();
+
+            }
+
+        } // acceptSolutions
+
+        /**
+         * Write the solutions buffered on the JVM heap onto the native heap.
+         * From this point forward, only the sort keys are buffered on the JVM
+         * heap.
+         */
+        private void spill() throws IOException {
+
+            if (log.isInfoEnabled())
+                log.info("Spilling " + state.buffer.size() + " solutions.");
+
+            state.store = new MemStore(state.mmgr.createAllocationContext());
+
+            state.encoder = new IVBindingSetEncoderWithIVCache(state.store,
+                    false/* filter */, op);
+
+            for (IBindingSet bset : state.buffer) {
+
+                write(bset);
+
+            }
+
+            // Discard the JVM heap references.
+            state.buffer.clear();
+
+            if (state.keys.size() >= runSize) {
+
+                writeRun();
+
+            }
+
+        }
+
+        /**
+         * Write the solution onto the native heap and buffer its sort key.
+         */
+        private void write(final IBindingSet bset) {
+
+            final long addr = state.store.write(ByteBuffer.wrap(state.encoder
+                    .encodeSolution(bset)));
+
+            state.keys.add(new SortKey(bset.copy(sortVars), addr));
+
+        }
+
+        /**
+         * Sort the buffered sort keys and write them onto the native heap as a
+         * new sorted run.
+         */
+        private void writeRun() throws IOException {
+
+            final SortKey[] all = sortKeys();
+
+            final long begin = System.currentTimeMillis();
+
+            final IPSOutputStream out = state.store.getOutputStream();
+
+            final long addr;
+            try {
+
+                final DataOutputStream os = new DataOutputStream(
+                        new BufferedOutputStream(out));
+
+                for (SortKey k : all) {
+
+                    final byte[] b = state.encoder.encodeSolution(k.key);
+
+                    os.writeLong(k.addr);
+
+                    os.writeInt(b.length);
+
+                    os.write(b);
+
+                }
+
+                os.flush();
+
+                addr = out.getAddr();
+
+            } finally {
+
+                out.close();
+
+            }
+
+            state.runAddrs.add(addr);
+
+            state.runCounts.add((long) all.length);
+
+            if (log.isInfoEnabled())
+                log.info("Wrote sorted run: nkeys=" + all.length + ", nruns="
+                        + state.runAddrs.size() + ", elapsed="
+                        + (System.currentTimeMillis() - begin) + "ms");
+
+        }
+
+        /**
+         * Sort the buffered sort keys, clearing the buffer.
+         */
+        private SortKey[] sortKeys() {
+
+            final List<SortKey> keys = state.keys;
+
+            final SortKey[] all = keys.toArray(new SortKey[keys.size()]);
+
+            // Discard the JVM heap references.
+            keys.clear();
+
+            Arrays.sort(all, keyComparator);
+
+            return all;
+
+        }
+
+        /**
+         * Sort the solutions and write them onto the sink.
+         *
+         * @param sink
+         *            Where to write the results.
+         */
+        private void doOrderBy(final IBlockingBuffer<IBindingSet[]> sink)
+                throws IOException {
+
+            final UnsyncLocalOutputBuffer<IBindingSet> out = new UnsyncLocalOutputBuffer<IBindingSet>(
+                    op.getChunkCapacity(), sink);
+
+            if (state.isSpilled()) {
+
+                doMerge(out);
+
+            } else {
+
+                doSort(out);
+
+            }
+
+            // write output and flush.
+            out.flush();
+            sink.flush();
+
+        }
+
+        /**
+         * Sort the solutions buffered on the JVM heap.
+         */
+        private void doSort(final UnsyncLocalOutputBuffer<IBindingSet> out) {
+
+            final List<IBindingSet> buffer = state.buffer;
+
+            final IBindingSet[] all = buffer.toArray(new IBindingSet[buffer
+                    .size()]);
+
+            // Discard the JVM heap references.
+            buffer.clear();
+
+            final long begin = System.currentTimeMillis();
+
+            Arrays.sort(all, comparator);
+
+            for (IBindingSet bset : all) {
+
+                out.add(dropComputedVars(bset));
+
+            }
+
+            if (log.isInfoEnabled())
+                log.info("Sorted " + all.length + " solutions in "
+                        + (System.currentTimeMillis() - begin) + "ms.");
+
+        }
+
+        /**
+         * Merge the sorted runs with the sort keys which are still buffered on
+         * the JVM heap, reading back the solutions from the native heap in the
+         * merged order.
+         */
+        private void doMerge(final UnsyncLocalOutputBuffer<IBindingSet> out) {
+
+            final int nruns = state.runAddrs.size();
+
+            if (log.isInfoEnabled())
+                log.info("Merging: nruns=" + nruns + ", nkeys="
+                        + state.keys.size());
+
+            final PriorityQueue<KeyCursor> queue = new PriorityQueue<KeyCursor>(
+                    nruns + 1, new Comparator<KeyCursor>() {
+                        @Override
+                        public int compare(final KeyCursor o1,
+                                final KeyCursor o2) {
+                            final int ret = keyComparator.compare(
+                                    o1.current(), o2.current());
+                            if (ret != 0)
+                                return ret;
+                            /*
+                             * Break ties by the order in which the runs were
+                             * written. This keeps the merge stable.
+                             */
+                            return o1.index - o2.index;
+                        }
+                    });
+
+            final List<KeyCursor> cursors = new ArrayList<KeyCursor>(nruns + 1);
+
+            final long begin = System.currentTimeMillis();
+
+            long nout = 0;
+
+            try {
+
+                for (int i = 0; i < nruns; i++) {
+
+                    cursors.add(new RunCursor(i, state.store, state.encoder,
+                            state.runAddrs.get(i), state.runCounts.get(i)));
+
+                }
+
+                // The last run is not written onto the native heap.
+                cursors.add(new ArrayCursor(nruns, sortKeys()));
+
+                for (KeyCursor cursor : cursors) {
+
+                    if (cursor.advance())
+                        queue.add(cursor);
+
+                }
+
+                KeyCursor cursor;
+                while ((cursor = queue.poll()) != null) {
+
+                    out.add(dropComputedVars(read(cursor.current().addr)));
+
+                    nout++;
+
+                    if (cursor.advance())
+                        queue.add(cursor);
+
+                }
+
+            } finally {
+
+                for (KeyCursor c : cursors) {
+
+                    c.close();
+
+                }
+
+            }
+
+            if (log.isInfoEnabled())
+                log.info("Merged " + nout + " solutions from " + nruns
+                        + " runs in " + (System.currentTimeMillis() - begin)
+                        + "ms.");
+
+        }
+
+        /**
+         * Read a solution back from the native heap, resolving its
+         * materialized RDF Values.
+         */
+        private IBindingSet read(final long addr) {
+
+            final ByteBuffer b = state.store.read(addr);
+
+            final byte[] a = new byte[b.remaining()];
+
+            b.get(a);
+
+            return state.encoder.decodeSolution(a, 0/* off */, a.length,
+                    true/* resolveCachedValues */);
+
+        }
+
+        /**
+         * Drop the variables for the computed value expressions.
+         */
+        private IBindingSet dropComputedVars(final IBindingSet bset) {
+
+            for (ISortOrder<?> s : sortOrder) {
+                final IValueExpression<?> expr = s.getExpr();
+                if (expr instanceof IBind) {
+                    bset.clear(((IBind<?>) expr).getVar());
+                }
+            }
+
+            return bset;
+
+        }
+
+    } // SortTask
+
+    /**
+     * A cursor over the sort keys in a sorted run.
+     */
+    private static abstract class KeyCursor {
+
+        /**
+         * The index of the run in the order in which the runs were written.
+         */
+        protected final int index;
+
+        KeyCursor(final int index) {
+
+            this.index = index;
+
+        }
+
+        /**
+         * The current sort key.
+         */
+        abstract SortKey current();
+
+        /**
+         * Advance to the next sort key in the run.
+         *
+         * @return <code>false</code> iff the run is exhausted.
+         */
+        abstract boolean advance();
+
+        void close() {
+            // NOP
+        }
+
+    }
+
+    /**
+     * A cursor over the sort keys buffered on the JVM heap.
+     */
+    private static class ArrayCursor extends KeyCursor {
+
+        private final SortKey[] keys;
+
+        private int pos = -1;
+
+        ArrayCursor(final int index, final SortKey[] keys) {
+
+            super(index);
+
+            this.keys = keys;
+
+        }
+
+        @Override
+        SortKey current() {
+
+            return keys[pos];
+
+        }
+
+        @Override
+        boolean advance() {
+
+            return ++pos < keys.length;
+
+        }
+
+    }
+
+    /**
+     * A cursor over the sort keys in a sorted run on the native heap.
+     */
+    private static class RunCursor extends KeyCursor {
+
+        private final IVBindingSetEncoderWithIVCache encoder;
+
+        private final DataInputStream in;
+
+        /** The #of sort keys which have not been read. */
+        private long remaining;
+
+        private SortKey current = null;
+
+        RunCursor(final int index, final MemStore store,
+                final IVBindingSetEncoderWithIVCache encoder, final long addr,
+                final long count) {
+
+            super(index);
+
+            this.encoder = encoder;
+
+            this.in = new DataInputStream(new BufferedInputStream(
+                    store.getInputStream(addr)));
+
+            this.remaining = count;
+
+        }
+
+        @Override
+        SortKey current() {
+
+            return current;
+
+        }
+
+        @Override
+        boolean advance() {
+
+            if (remaining == 0) {
+                current = null;
+                return false;
+            }
+
+            try {
+
+                final long addr = in.readLong();
+
+                final byte[] b = new byte[in.readInt()];
+
+                in.readFully(b);
+
+                current = new SortKey(encoder.decodeSolution(b, 0/* off */,
+                        b.length, true/* resolveCachedValues */), addr);
+
+            } catch (IOException ex) {
+
+                throw new RuntimeException(ex);
+
+            }
+
+            remaining--;
+
+            return true;
+
+        }
+
+        @Override
+        void close() {
+
+            try {
+                in.close();
+            } catch (IOException ex) {
+                log.warn(ex, ex);
+            }
+
+        }
+
+    }
+
+}
@@ -158,7 +158,7 @@ public class MemoryGroupByOp extends GroupByOp {
     /**
      * Wrapper used for the solution groups in the {@link ConcurrentHashMap}.
      */
-    private static class SolutionGroup {
+    static class SolutionGroup {
 
 		/** The hash code for {@link #vals}. */
 		private final int hash;
@@ -518,177 +518,209 @@ public class MemoryGroupByOp extends GroupByOp {
          *         constraint).
          */
         private IBindingSet aggregate(final Iterable<IBindingSet> solutions) {
-            /**
-             * The intermediate solution with all bindings produced when
-             * evaluating this solution group. Evaluation begins by binding any
-             * bare variables or BINDs in the GROUP_BY clause, followed by
-             * evaluating all aggregates, and then finally evaluating the
-             * (rewritten) SELECT expressions. The rewritten HAVING clause (if
-             * any) may then be then be trivially evaluated. If the solution is
-             * not dropped, then only the SELECTed variables are projected out.
-             */
-            final IBindingSet aggregates = new ContextBindingSet(context,new ListBindingSet());
-
-            /**
-             * Propagate GROUP_BY expression onto [aggregates]. 
-             */
-            if (groupBy != null) {
-
-                // The first solution in the group (must exist since the
-                // group was observed).
-                final IBindingSet aSolution = solutions.iterator().next();
-
-                for (IValueExpression<?> expr : groupBy) {
-
-                    if (expr instanceof IVariable<?>) {
-
-                        /**
-                         * Propagate bare variable used in GROUP_BY clause to
-                         * [aggregates].
-                         * 
-                         * <pre>
-                         * GROUP BY ?x
-                         * </pre>
-                         */
-
-                        final IVariable<?> var = (IVariable<?>) expr;
-
-                        // Note: MUST be a binding for each groupBy var.
-                        @SuppressWarnings({ "rawtypes", "unchecked" })
-                        final Constant<?> val = new Constant(var.get(aSolution));
-
-                        // Bind on [aggregates].
-                        aggregates.set(var, val);
-
-                    } else if (expr instanceof IBind<?>) {
-
-                        /**
-                         * Propagate BIND declared by GROUP_BY clause to
-                         * [aggregates].
-                         * 
-                         * <pre>
-                         * GROUP BY (2*?y as ?x)
-                         * </pre>
-                         */
-
-                        final IBind<?> bindExpr = (IBind<?>) expr;
-
-                        // Compute value expression.
-                        // Note: MUST be valid since group exists.
-                        @SuppressWarnings({ "rawtypes", "unchecked" })
-                        final Constant<?> val = new Constant(
-                                bindExpr.get(aSolution));
-
-                        // Variable to be projected out by SELECT.
-                        final IVariable<?> ovar = ((IBind<?>) expr).getVar();
-
-                        // Bind on [aggregates].
-                        aggregates.set(ovar, val);
 
-                    }
+            return MemoryGroupByOp.aggregate(context, groupByState, rewrite,
+                    solutions, stats);
 
-                } // next GROUP_BY value expression
-
-            } // if(groupBy != null)
-
-            /**
-             * Compute the aggregates.
-             * 
-             * TODO This can be further optimized by computing the column
-             * projections of the different value expressions exactly once and
-             * then applying the aggregation functions to those column
-             * projections. As long as we adhere to the dependency ordering
-             * among those aggregates, we can compute them all in a single pass
-             * over the column projections.
-             * 
-             * TODO DISTINCT projections of columns projections can be modeled
-             * in a bunch of different ways, but if we need the original column
-             * projection as well as the DISTINCT of that column projection then
-             * it makes sense to either form the DISTINCT projection while
-             * building the column projection or as an after action.
-             */
-            {
-
-                final boolean nestedAggregates = groupByState.isNestedAggregates();
-                
-                final Iterator<Map.Entry<IAggregate<?>, IVariable<?>>> itr = rewrite
-                        .getAggExpr().entrySet().iterator();
+        }
 
-                while (itr.hasNext()) {
-                
-                    final Map.Entry<IAggregate<?>, IVariable<?>> e = itr.next();
-                    
-                    // Aggregate.
-                    doAggregate(e.getKey(), e.getValue(), nestedAggregates,
-                            aggregates, solutions, stats);
-                    
-                }
-                
-                if (log.isTraceEnabled())
-                    log.trace("aggregates: " + aggregates);
-                
-            }
+    } // GroupByTask
 
-            // Evaluate SELECT expressions.
-            for (IValueExpression<?> expr : rewrite.getSelect2()) {
+    /**
+     * Compute the aggregate solution for a solution multiset (aka a group).
+     * 
+     * @param context
+     *            The evaluation context.
+     * @param groupByState
+     *            The GROUP BY state.
+     * @param rewrite
+     *            The rewritten aggregate, SELECT and HAVING expressions.
+     * @param solutions
+     *            The solutions in the group. This is visited once for each
+     *            aggregate.
+     * @param stats
+     *            Used to report type errors.
+     * 
+     * @return The aggregate solution -or- <code>null</code> if the solution
+     *         for the group was dropped (type error or violated HAVING
+     *         constraint).
+     */
+    static IBindingSet aggregate(final BOpContext<IBindingSet> context,
+            final IGroupByState groupByState,
+            final IGroupByRewriteState rewrite,
+            final Iterable<IBindingSet> solutions, final BOpStats stats) {
 
-                try {
-                    expr.get(aggregates);
-                } catch (SparqlTypeErrorException ex) {
-                    TypeErrorLog.handleTypeError(ex, expr, stats);
-                    continue;
-                } catch (IllegalArgumentException ex) {
-                    /*
-                     * Note: This is a hack turning an IllegalArgumentException
-                     * which we presume is coming out of new Constant(null) into
-                     * an (implicit) SPARQL type error so we can drop the
-                     * binding for this SELECT expression. (Note that we are not
-                     * trying to drop the entire group!)
+        final IValueExpression<?>[] groupBy = groupByState.getGroupByClause();
+
+        /**
+         * The intermediate solution with all bindings produced when
+         * evaluating this solution group. Evaluation begins by binding any
+         * bare variables or BINDs in the GROUP_BY clause, followed by
+         * evaluating all aggregates, and then finally evaluating the
+         * (rewritten) SELECT expressions. The rewritten HAVING clause (if
+         * any) may then be then be trivially evaluated. If the solution is
+         * not dropped, then only the SELECTed variables are projected out.
+         */
+        final IBindingSet aggregates = new ContextBindingSet(context,new ListBindingSet());
+
+        /**
+         * Propagate GROUP_BY expression onto [aggregates]. 
+         */
+        if (groupBy != null) {
+
+            // The first solution in the group (must exist since the
+            // group was observed).
+            final IBindingSet aSolution = solutions.iterator().next();
+
+            for (IValueExpression<?> expr : groupBy) {
+
+                if (expr instanceof IVariable<?>) {
+
+                    /**
+                     * Propagate bare variable used in GROUP_BY clause to
+                     * [aggregates].
+                     * 
+                     * <pre>
+                     * GROUP BY ?x
+                     * </pre>
                      */
-                    TypeErrorLog.handleTypeError(ex, expr, stats);
-                    continue;
-                }
 
-            }
+                    final IVariable<?> var = (IVariable<?>) expr;
 
-            /*
-             * Verify optional constraint(s).
-             * 
-             * TODO This could be done before fully computing the aggregates as
-             * we only need to have on hand those computed aggregates on which
-             * the HAVING clause depends.
-             */
-            {
-                final boolean drop;
-                final IConstraint[] having2 = rewrite.getHaving2();
-                if (having2 != null
-                        && !BOpUtility.isConsistent(having2, aggregates)) {
-                    // drop this solution.
-                    drop = true;
-                } else {
-                    drop = false;
-                }
+                    // Note: MUST be a binding for each groupBy var.
+                    @SuppressWarnings({ "rawtypes", "unchecked" })
+                    final Constant<?> val = new Constant(var.get(aSolution));
 
-                if (log.isInfoEnabled())
-                    log.info((drop ? "drop" : "keep") + " : " + aggregates);
+                    // Bind on [aggregates].
+                    aggregates.set(var, val);
 
-                if (drop) {
+                } else if (expr instanceof IBind<?>) {
 
-                    // Drop this solution.
-                    return null;
+                    /**
+                     * Propagate BIND declared by GROUP_BY clause to
+                     * [aggregates].
+                     * 
+                     * <pre>
+                     * GROUP BY (2*?y as ?x)
+                     * </pre>
+                     */
+
+                    final IBind<?> bindExpr = (IBind<?>) expr;
+
+                    // Compute value expression.
+                    // Note: MUST be valid since group exists.
+                    @SuppressWarnings({ "rawtypes", "unchecked" })
+                    final Constant<?> val = new Constant(
+                            bindExpr.get(aSolution));
+
+                    // Variable to be projected out by SELECT.
+                    final IVariable<?> ovar = ((IBind<?>) expr).getVar();
+
+                    // Bind on [aggregates].
+                    aggregates.set(ovar, val);
 
                 }
+
+            } // next GROUP_BY value expression
+
+        } // if(groupBy != null)
+
+        /**
+         * Compute the aggregates.
+         * 
+         * TODO This can be further optimized by computing the column
+         * projections of the different value expressions exactly once and
+         * then applying the aggregation functions to those column
+         * projections. As long as we adhere to the dependency ordering
+         * among those aggregates, we can compute them all in a single pass
+         * over the column projections.
+         * 
+         * TODO DISTINCT projections of columns projections can be modeled
+         * in a bunch of different ways, but if we need the original column
+         * projection as well as the DISTINCT of that column projection then
+         * it makes sense to either form the DISTINCT projection while
+         * building the column projection or as an after action.
+         */
+        {
+
+            final boolean nestedAggregates = groupByState.isNestedAggregates();
+            
+            final Iterator<Map.Entry<IAggregate<?>, IVariable<?>>> itr = rewrite
+                    .getAggExpr().entrySet().iterator();
+
+            while (itr.hasNext()) {
+            
+                final Map.Entry<IAggregate<?>, IVariable<?>> e = itr.next();
+                
+                // Aggregate.
+                doAggregate(e.getKey(), e.getValue(), nestedAggregates,
+                        aggregates, solutions, stats);
+                
+            }
+            
+            if (log.isTraceEnabled())
+                log.trace("aggregates: " + aggregates);
+            
+        }
+
+        // Evaluate SELECT expressions.
+        for (IValueExpression<?> expr : rewrite.getSelect2()) {
+
+            try {
+                expr.get(aggregates);
+            } catch (SparqlTypeErrorException ex) {
+                TypeErrorLog.handleTypeError(ex, expr, stats);
+                continue;
+            } catch (IllegalArgumentException ex) {
+                /*
+                 * Note: This is a hack turning an IllegalArgumentException
+                 * which we presume is coming out of new Constant(null) into
+                 * an (implicit) SPARQL type error so we can drop the
+                 * binding for this SELECT expression. (Note that we are not
+                 * trying to drop the entire group!)
+                 */
+                TypeErrorLog.handleTypeError(ex, expr, stats);
+                continue;
+            }
+
+        }
+
+        /*
+         * Verify optional constraint(s).
+         * 
+         * TODO This could be done before fully computing the aggregates as
+         * we only need to have on hand those computed aggregates on which
+         * the HAVING clause depends.
+         */
+        {
+            final boolean drop;
+            final IConstraint[] having2 = rewrite.getHaving2();
+            if (having2 != null
+                    && !BOpUtility.isConsistent(having2, aggregates)) {
+                // drop this solution.
+                drop = true;
+            } else {
+                drop = false;
             }
 
-            // project out only selected variables.
-            final IBindingSet out = aggregates.copy(groupByState
-                    .getSelectVars().toArray(new IVariable[0]));
+            if (log.isInfoEnabled())
+                log.info((drop ? "drop" : "keep") + " : " + aggregates);
 
-            return out;
+            if (drop) {
+
+                // Drop this solution.
+                return null;
 
+            }
         }
 
-    } // GroupByTask
+        // project out only selected variables.
+        final IBindingSet out = aggregates.copy(groupByState
+                .getSelectVars().toArray(new IVariable[0]));
+
+        return out;
+
+    }
 
     /**
      * Apply the value expression to each solution in the group.
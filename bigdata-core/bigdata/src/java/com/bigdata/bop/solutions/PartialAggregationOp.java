@@ -0,0 +1,444 @@
+/**
+
+Copyright (C) SYSTAP, LLC DBA Blazegraph 2006-2016.  All rights reserved.
+
+Contact:
+     SYSTAP, LLC DBA Blazegraph
+     2501 Calvert ST NW #106
+     Washington, DC 20008
+     licenses@blazegraph.com
+
+This program is free software; you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation; version 2 of the License.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program; if not, write to the Free Software
+Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+package com.bigdata.bop.solutions;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.FutureTask;
+
+import com.bigdata.bop.BOp;
+import com.bigdata.bop.BOpContext;
+import com.bigdata.bop.HashMapAnnotations;
+import com.bigdata.bop.IBindingSet;
+import com.bigdata.bop.IQueryAttributes;
+import com.bigdata.bop.IValueExpression;
+import com.bigdata.bop.IVariable;
+import com.bigdata.bop.NV;
+import com.bigdata.bop.PipelineOp;
+import com.bigdata.bop.aggregate.IAggregate;
+import com.bigdata.bop.aggregate.IMergeableAggregate;
+import com.bigdata.bop.engine.BOpStats;
+import com.bigdata.bop.solutions.PipelinedAggregationOp.SolutionGroup;
+import com.bigdata.bop.solutions.PipelinedAggregationOp.SolutionGroupState;
+import com.bigdata.rdf.sparql.ast.FilterNode;
+import com.bigdata.relation.accesspath.IBlockingBuffer;
+
+import cutthecrap.utils.striterators.ICloseableIterator;
+
+/**
+ * The first phase of a parallel aggregation. Any number of instances of this
+ * operator may run concurrently ({@link PipelineOp.Annotations#MAX_PARALLEL}
+ * may be GT ONE). Each running instance checks out a private partial
+ * aggregation state (a hash table associating each group with its own clones
+ * of the {@link IMergeableAggregate}s), folds its source chunk into that
+ * state and then returns the state to a pool so it may be reused by a later
+ * invocation. There are never more partial states than the maximum number of
+ * concurrent invocations. This operator does not write any solutions. The
+ * partial states are merged and the aggregates are finalized by a downstream
+ * {@link CombineAggregationOp}.
+ * <p>
+ * Note: This operator may only be used when the aggregation could be handled
+ * by the {@link PipelinedAggregationOp} and all {@link IAggregate}s are
+ * {@link IMergeableAggregate}s. See
+ * {@link #isPartialAggregation(IGroupByState, IGroupByRewriteState)}.
+ * 
+ * @see CombineAggregationOp
+ * @see IMergeableAggregate
+ */
+public class PartialAggregationOp extends GroupByOp {
+
+    private static final long serialVersionUID = 1L;
+
+    public interface Annotations extends PipelineOp.Annotations,
+            HashMapAnnotations, GroupByOp.Annotations {
+
+    }
+
+    /**
+     * Return <code>true</code> iff the aggregation may be computed by a
+     * {@link PartialAggregationOp} followed by a {@link CombineAggregationOp}.
+     * This requires that the aggregation does not use DISTINCT, does not nest
+     * aggregates, does not have dependencies among the SELECT expressions and
+     * that all aggregates are {@link IMergeableAggregate}s.
+     * 
+     * @param groupByState
+     *            The {@link IGroupByState}.
+     * @param rewrite
+     *            The {@link IGroupByRewriteState}.
+     */
+    public static boolean isPartialAggregation(
+            final IGroupByState groupByState,
+            final IGroupByRewriteState rewrite) {
+
+        if (groupByState.isAnyDistinct() || groupByState.isNestedAggregates()
+                || groupByState.isSelectDependency())
+            return false;
+
+        for (IAggregate<?> a : rewrite.getAggExpr().keySet()) {
+
+            if (!(a instanceof IMergeableAggregate))
+                return false;
+
+        }
+
+        return true;
+
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Returns <code>true</code>.
+     */
+    @Override
+    public boolean isPipelinedAggregationOp() {
+
+        return true;
+
+    }
+
+    /**
+     * Constructor required for {@link com.bigdata.bop.BOpUtility#deepCopy(FilterNode)}.
+     */
+    public PartialAggregationOp(final PartialAggregationOp op) {
+        super(op);
+    }
+
+    /**
+     * Required shallow copy constructor.
+     */
+    public PartialAggregationOp(final BOp[] args,
+            final Map<String, Object> annotations) {
+
+        super(args, annotations);
+
+        switch (getEvaluationContext()) {
+        case CONTROLLER:
+            break;
+        default:
+            throw new UnsupportedOperationException(
+                    Annotations.EVALUATION_CONTEXT + "="
+                            + getEvaluationContext());
+        }
+
+        if (!isPartialAggregation(
+                (IGroupByState) getRequiredProperty(Annotations.GROUP_BY_STATE),
+                (IGroupByRewriteState) getRequiredProperty(Annotations.GROUP_BY_REWRITE))) {
+            throw new UnsupportedOperationException(
+                    "Aggregation can not be partially evaluated.");
+        }
+
+    }
+
+    public PartialAggregationOp(final BOp[] args, final NV... annotations) {
+
+        this(args, NV.asMap(annotations));
+
+    }
+
+    /**
+     * @see Annotations#INITIAL_CAPACITY
+     */
+    public int getInitialCapacity() {
+
+        return getProperty(Annotations.INITIAL_CAPACITY,
+                Annotations.DEFAULT_INITIAL_CAPACITY);
+
+    }
+
+    /**
+     * @see Annotations#LOAD_FACTOR
+     */
+    public float getLoadFactor() {
+
+        return getProperty(Annotations.LOAD_FACTOR,
+                Annotations.DEFAULT_LOAD_FACTOR);
+
+    }
+
+    @Override
+    public FutureTask<Void> eval(final BOpContext<IBindingSet> context) {
+
+        return new FutureTask<Void>(new ChunkTask(this, context));
+
+    }
+
+    /**
+     * Return a private copy of the aggregate expressions. The
+     * {@link IAggregate}s are cloned so each copy has its own internal state.
+     */
+    static LinkedHashMap<IAggregate<?>, IVariable<?>> newAggExpr(
+            final IGroupByRewriteState rewrite) {
+
+        final LinkedHashMap<IAggregate<?>, IVariable<?>> aggExpr = new LinkedHashMap<IAggregate<?>, IVariable<?>>();
+
+        for (Map.Entry<IAggregate<?>, IVariable<?>> e : rewrite.getAggExpr()
+                .entrySet()) {
+
+            // Note: IAggregates MUST be cloned to avoid side-effects.
+            aggExpr.put((IAggregate<?>) e.getKey().clone(), e.getValue());
+
+        }
+
+        return aggExpr;
+
+    }
+
+    /**
+     * A partial aggregation state. An instance is only used by one
+     * {@link ChunkTask} at a time.
+     */
+    static class PartialState {
+
+        /**
+         * The per-group state and <code>null</code> if all solutions belong to
+         * a single implicit group.
+         */
+        final LinkedHashMap<SolutionGroup, SolutionGroupState> map;
+
+        /**
+         * The aggregates for the single implicit group and <code>null</code>
+         * if there is an explicit GROUP_BY clause.
+         */
+        final LinkedHashMap<IAggregate<?>, IVariable<?>> aggExpr;
+
+        PartialState(final PartialAggregationOp op,
+                final IGroupByState groupByState,
+                final IGroupByRewriteState rewrite) {
+
+            if (groupByState.getGroupByClause() == null) {
+
+                map = null;
+
+                aggExpr = newAggExpr(rewrite);
+
+            } else {
+
+                map = new LinkedHashMap<SolutionGroup, SolutionGroupState>(
+                        op.getInitialCapacity(), op.getLoadFactor());
+
+                aggExpr = null;
+
+            }
+
+        }
+
+    }
+
+    /**
+     * The partial aggregation states for a query. This is stored as an
+     * attribute of the query under the bopId of the
+     * {@link PartialAggregationOp}.
+     */
+    static class PartialStates {
+
+        /**
+         * The partial states which are not in use by a running
+         * {@link ChunkTask}.
+         */
+        final ConcurrentLinkedQueue<PartialState> idle = new ConcurrentLinkedQueue<PartialState>();
+
+        /**
+         * All partial states.
+         */
+        final ConcurrentLinkedQueue<PartialState> all = new ConcurrentLinkedQueue<PartialState>();
+
+    }
+
+    /**
+     * Task executing on the node.
+     */
+    static private class ChunkTask implements Callable<Void> {
+
+        private final PartialAggregationOp op;
+
+        private final BOpContext<IBindingSet> context;
+
+        private final IGroupByState groupByState;
+
+        private final IGroupByRewriteState rewrite;
+
+        private final IValueExpression<?>[] groupBy;
+
+        private final BOpStats stats;
+
+        ChunkTask(final PartialAggregationOp op,
+                final BOpContext<IBindingSet> context) {
+
+            this.op = op;
+
+            this.context = context;
+
+            this.stats = context.getStats();
+
+            this.groupByState = (IGroupByState) op
+                    .getRequiredProperty(Annotations.GROUP_BY_STATE);
+
+            this.rewrite = (IGroupByRewriteState) op
+                    .getRequiredProperty(Annotations.GROUP_BY_REWRITE);
+
+            this.groupBy = groupByState.getGroupByClause();
+
+        }
+
+        /**
+         * Check out a partial state, creating a new one if none is idle.
+         */
+        private PartialState acquire() {
+
+            final IQueryAttributes attrs = context.getRunningQuery()
+                    .getAttributes();
+
+            PartialStates states = (PartialStates) attrs.get(op.getId());
+
+            if (states == null) {
+
+                final PartialStates tmp = new PartialStates();
+
+                states = (PartialStates) attrs.putIfAbsent(op.getId(), tmp);
+
+                if (states == null)
+                    states = tmp;
+
+            }
+
+            PartialState state = states.idle.poll();
+
+            if (state == null) {
+
+                state = new PartialState(op, groupByState, rewrite);
+
+                states.all.add(state);
+
+            }
+
+            return state;
+
+        }
+
+        /**
+         * Return a partial state to the pool.
+         */
+        private void release(final PartialState state) {
+
+            ((PartialStates) context.getRunningQuery().getAttributes()
+                    .get(op.getId())).idle.add(state);
+
+        }
+
+        @Override
+        public Void call() throws Exception {
+
+            final ICloseableIterator<IBindingSet[]> itr = context.getSource();
+
+            final IBlockingBuffer<IBindingSet[]> sink = context.getSink();
+
+            try {
+
+                if (!itr.hasNext()) {
+
+                    // Nothing to aggregate.
+                    return null;
+
+                }
+
+                final PartialState state = acquire();
+
+                try {
+
+                    while (itr.hasNext()) {
+
+                        final IBindingSet[] a = itr.next();
+
+                        stats.chunksIn.increment();
+                        stats.unitsIn.add(a.length);
+
+                        for (IBindingSet bset : a) {
+
+                            if (groupBy == null) {
+
+                                // A single implicit group.
+                                PipelinedAggregationOp.doAggregate(
+                                        state.aggExpr, bset, stats);
+
+                            } else {
+
+                                accept(state, bset);
+
+                            }
+
+                        }
+
+                    }
+
+                } finally {
+
+                    release(state);
+
+                }
+
+                // done.
+                return null;
+
+            } finally {
+
+                sink.close();
+
+            }
+
+        }
+
+        /**
+         * Update the partial aggregates for the group of the solution.
+         */
+        private void accept(final PartialState state, final IBindingSet bset) {
+
+            final SolutionGroup s = SolutionGroup.newInstance(groupBy, bset,
+                    stats);
+
+            if (s == null) {
+
+                // Drop the solution.
+                return;
+
+            }
+
+            SolutionGroupState m = state.map.get(s);
+
+            if (m == null) {
+
+                state.map.put(s, m = new SolutionGroupState(context, groupBy,
+                        rewrite.getAggExpr(), bset));
+
+            }
+
+            PipelinedAggregationOp.doAggregate(m.aggExpr, bset, stats);
+
+        }
+
+    }
+
+}
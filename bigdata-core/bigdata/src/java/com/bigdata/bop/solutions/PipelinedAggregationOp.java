@@ -183,7 +183,7 @@ public class PipelinedAggregationOp extends GroupByOp implements
     /**
      * Wrapper used for the solution groups.
      */
-    private static class SolutionGroup {
+    static class SolutionGroup {
 
         /** The hash code for {@link #vals}. */
         private final int hash;
@@ -286,13 +286,13 @@ public class PipelinedAggregationOp extends GroupByOp implements
      * State associated with each {@link SolutionGroup} (this is not used if all
      * solutions belong to a single implicit group).
      */
-    private static class SolutionGroupState {
+    static class SolutionGroupState {
         
         /**
          * The aggregate expressions to be evaluated. The {@link IAggregate}s
          * MUST have been cloned to avoid side-effect across groups.
          */
-        private final LinkedHashMap<IAggregate<?>, IVariable<?>> aggExpr;
+        final LinkedHashMap<IAggregate<?>, IVariable<?>> aggExpr;
 
         /**
          * The intermediate solution with all bindings produced when evaluating
@@ -300,7 +300,7 @@ public class PipelinedAggregationOp extends GroupByOp implements
          * by the GROUP_BY clause are projected onto {@link #aggregates} by 
          * the constructor.
          */
-        private final IBindingSet aggregates;
+        final IBindingSet aggregates;
 
         /**
          * 
@@ -693,59 +693,11 @@ public class PipelinedAggregationOp extends GroupByOp implements
                          */
                         final IBindingSet aggregates = new ContextBindingSet(context, new ListBindingSet());
 
-                        // Finalize and bind on [aggregates].
-                        finalizeAggregates(aggExpr, aggregates, stats);
-                        
-                        // Evaluate SELECT expressions.
-                        for (IValueExpression<?> expr : rewrite.getSelect2()) {
-
-                            try {
-                                expr.get(aggregates);
-                            } catch (SparqlTypeErrorException ex) {
-                                TypeErrorLog.handleTypeError(ex, expr, stats);
-                                continue;
-                            } catch (IllegalArgumentException ex) {
-                                /*
-                                 * Note: This a hack turns an
-                                 * IllegalArgumentException which we presume is
-                                 * coming out of new Constant(null) into an
-                                 * (implicit) SPARQL type error so we can drop
-                                 * the binding for this SELECT expression. (Note
-                                 * that we are not trying to drop the entire
-                                 * group!)
-                                 */
-                                TypeErrorLog.handleTypeError(ex, expr, stats);
-                                continue;
-                            }
-
-                        }
-
-                        // Verify optional HAVING constraint(s)
-                        final boolean drop;
-                        final IConstraint[] having2 = rewrite.getHaving2();
-                        if (having2 != null
-                                && !BOpUtility
-                                        .isConsistent(having2, aggregates)) {
-                            // drop this solution.
-                            drop = true;
-                        } else {
-                            drop = false;
-                        }
-
-                        if (log.isInfoEnabled())
-                            log.info((drop ? "drop" : "keep") + " : "
-                                    + aggregates);
-
-                        if (!drop) {
-
-                            // project out only selected variables.
-                            final IBindingSet out = aggregates
-                                    .copy(groupByState.getSelectVars().toArray(
-                                            new IVariable[0]));
+                        final IBindingSet out = finalizeGroup(aggExpr,
+                                aggregates, groupByState, rewrite, stats);
 
+                        if (out != null)
                             outList.add(out);
-                            
-                        }
 
                     } else {
 
@@ -757,64 +709,13 @@ public class PipelinedAggregationOp extends GroupByOp implements
                          */
                         for (SolutionGroupState groupState : map.values()) {
 
-                            final IBindingSet aggregates = groupState.aggregates;
-
-                            // Finalize and bind on [aggregates].
-                            finalizeAggregates(groupState.aggExpr, aggregates,
-                                    stats);
-
-                            // Evaluate SELECT expressions.
-                            for (IValueExpression<?> expr : rewrite
-                                    .getSelect2()) {
-
-                                try {
-                                    expr.get(aggregates);
-                                } catch (SparqlTypeErrorException ex) {
-                                    TypeErrorLog.handleTypeError(ex, expr, stats);
-                                    continue;
-                                } catch (IllegalArgumentException ex) {
-                                    /*
-                                     * Note: This hack turns an
-                                     * IllegalArgumentException which we presume
-                                     * is coming out of new Constant(null) into
-                                     * an (implicit) SPARQL type error so we can
-                                     * drop the binding for this SELECT
-                                     * expression. (Note that we are not trying
-                                     * to drop the entire group!)
-                                     */
-                                    TypeErrorLog.handleTypeError(ex, expr, stats);
-                                    continue;
-                                }
-
-                            }
-
-                            // Verify optional HAVING constraint(s)
-                            final boolean drop;
-                            final IConstraint[] having2 = rewrite.getHaving2();
-                            if (having2 != null
-                                    && !BOpUtility.isConsistent(having2,
-                                            aggregates)) {
-                                // drop this solution.
-                                drop = true;
-                            } else {
-                                drop = false;
-                            }
-
-                            if (log.isInfoEnabled())
-                                log.info((drop ? "drop" : "keep") + " : "
-                                        + aggregates);
-
-                            if (!drop) {
-
-                                // project out only selected variables.
-                                final IBindingSet out = aggregates
-                                        .copy(groupByState.getSelectVars()
-                                                .toArray(new IVariable[0]));
+                            final IBindingSet out = finalizeGroup(
+                                    groupState.aggExpr, groupState.aggregates,
+                                    groupByState, rewrite, stats);
 
+                            if (out != null)
                                 outList.add(out);
 
-                            }
-
                         }
 
                     }
@@ -846,6 +747,77 @@ public class PipelinedAggregationOp extends GroupByOp implements
 
     }
 
+    /**
+     * Finalize the {@link IAggregate}s for a solution group, evaluate the
+     * (rewritten) SELECT expressions and the optional (rewritten) HAVING
+     * constraint(s) against the group and project out the selected variables.
+     * 
+     * @param aggExpr
+     *            The aggregate expressions for the group.
+     * @param aggregates
+     *            The intermediate solution for the group (any GROUP_BY
+     *            bindings must already be present).
+     * @param groupByState
+     *            The {@link IGroupByState}.
+     * @param rewrite
+     *            The {@link IGroupByRewriteState}.
+     * @param stats
+     *            Used to report type errors.
+     * 
+     * @return The output solution for the group -or- <code>null</code> if the
+     *         group was dropped by the HAVING constraint(s).
+     */
+    static IBindingSet finalizeGroup(
+            final LinkedHashMap<IAggregate<?>, IVariable<?>> aggExpr,
+            final IBindingSet aggregates, final IGroupByState groupByState,
+            final IGroupByRewriteState rewrite, final BOpStats stats) {
+
+        // Finalize and bind on [aggregates].
+        finalizeAggregates(aggExpr, aggregates, stats);
+
+        // Evaluate SELECT expressions.
+        for (IValueExpression<?> expr : rewrite.getSelect2()) {
+
+            try {
+                expr.get(aggregates);
+            } catch (SparqlTypeErrorException ex) {
+                TypeErrorLog.handleTypeError(ex, expr, stats);
+                continue;
+            } catch (IllegalArgumentException ex) {
+                /*
+                 * Note: This hack turns an IllegalArgumentException which we
+                 * presume is coming out of new Constant(null) into an
+                 * (implicit) SPARQL type error so we can drop the binding for
+                 * this SELECT expression. (Note that we are not trying to drop
+                 * the entire group!)
+                 */
+                TypeErrorLog.handleTypeError(ex, expr, stats);
+                continue;
+            }
+
+        }
+
+        // Verify optional HAVING constraint(s)
+        final IConstraint[] having2 = rewrite.getHaving2();
+        final boolean drop = having2 != null
+                && !BOpUtility.isConsistent(having2, aggregates);
+
+        if (log.isInfoEnabled())
+            log.info((drop ? "drop" : "keep") + " : " + aggregates);
+
+        if (drop) {
+
+            // drop this solution.
+            return null;
+
+        }
+
+        // project out only selected variables.
+        return aggregates.copy(groupByState.getSelectVars().toArray(
+                new IVariable[0]));
+
+    }
+
     /**
      * Update the {@link IAggregate}s for the given binding set.
      * <p>
@@ -859,7 +831,7 @@ public class PipelinedAggregationOp extends GroupByOp implements
      * @param stats
      *            Used to report type errors.
      */
-    static private void doAggregate(
+    static void doAggregate(
             final LinkedHashMap<IAggregate<?>, IVariable<?>> aggExpr,
             final IBindingSet bset,
             final BOpStats stats) {
@@ -902,7 +874,7 @@ public class PipelinedAggregationOp extends GroupByOp implements
      * @param aggregates
      *            The binding set where the aggregates will become bound.
      */
-    static private void finalizeAggregates(
+    static void finalizeAggregates(
             final LinkedHashMap<IAggregate<?>, IVariable<?>> aggExpr,
             final IBindingSet aggregates,
             final BOpStats stats) {
@@ -0,0 +1,476 @@
+/**
+
+Copyright (C) SYSTAP, LLC DBA Blazegraph 2006-2016.  All rights reserved.
+
+Contact:
+     SYSTAP, LLC DBA Blazegraph
+     2501 Calvert ST NW #106
+     Washington, DC 20008
+     licenses@blazegraph.com
+
+This program is free software; you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation; version 2 of the License.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program; if not, write to the Free Software
+Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+package com.bigdata.bop.solutions;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.FutureTask;
+
+import org.apache.log4j.Logger;
+
+import com.bigdata.bop.BOp;
+import com.bigdata.bop.BOpContext;
+import com.bigdata.bop.IBind;
+import com.bigdata.bop.IBindingSet;
+import com.bigdata.bop.IQueryAttributes;
+import com.bigdata.bop.ISingleThreadedOp;
+import com.bigdata.bop.IValueExpression;
+import com.bigdata.bop.IVariableOrConstant;
+import com.bigdata.bop.NV;
+import com.bigdata.bop.engine.BOpStats;
+import com.bigdata.rdf.error.SparqlTypeErrorException;
+import com.bigdata.relation.accesspath.IBlockingBuffer;
+
+import cutthecrap.utils.striterators.ICloseableIterator;
+
+/**
+ * A top-K sort for binding sets. This operator is used in place of the
+ * {@link MemorySortOp} when an ORDER BY is followed by a SLICE whose
+ * <code>OFFSET+LIMIT</code> is small. Only the first {@link Annotations#LIMIT}
+ * solutions in the total ordering are retained, so the heap burden is
+ * proportional to the LIMIT rather than to the #of source solutions.
+ * <p>
+ * The operator is pipelined. Each time it runs, it evaluates the value
+ * expressions on which the ordering will be imposed (exactly as the
+ * {@link MemorySortOp} does) and offers the as-bound solutions to a bounded
+ * priority queue whose head is the greatest retained solution. A solution
+ * which does not sort before the head of a full queue is discarded at once.
+ * Once the last chunk of source solutions has been observed, the retained
+ * solutions are sorted and written out.
+ * <p>
+ * Solutions which are equal under the sort order are retained in the order in
+ * which they were observed, which is the same behavior as the stable sort used
+ * by the {@link MemorySortOp}.
+ * <p>
+ * Note: This operator does not apply the OFFSET. A {@link SliceOp} must still
+ * be used downstream to impose the OFFSET and LIMIT on the ordered solutions.
+ *
+ * @see MemorySortOp
+ */
+public class TopKSortOp extends SortOp implements ISingleThreadedOp {
+
+    private static final transient Logger log = Logger
+            .getLogger(TopKSortOp.class);
+
+    /**
+     *
+     */
+    private static final long serialVersionUID = 1L;
+
+    public interface Annotations extends SortOp.Annotations {
+
+        /**
+         * The maximum #of solutions which will be output by the operator. This
+         * is normally <code>OFFSET+LIMIT</code> for the SLICE which follows
+         * the ORDER BY.
+         */
+        String LIMIT = TopKSortOp.class.getName() + ".limit";
+
+    }
+
+    /**
+     * Constructor required for {@link com.bigdata.bop.BOpUtility#deepCopy(FilterNode)}.
+     */
+    public TopKSortOp(final TopKSortOp op) {
+        super(op);
+    }
+
+    /**
+     * Required shallow copy constructor.
+     */
+    public TopKSortOp(final BOp[] args, final Map<String, Object> annotations) {
+
+        super(args, annotations);
+
+        switch (getEvaluationContext()) {
+        case CONTROLLER:
+            break;
+        default:
+            throw new UnsupportedOperationException(
+                    Annotations.EVALUATION_CONTEXT + "="
+                            + getEvaluationContext());
+        }
+
+        assertMaxParallelOne();
+
+        if (!isLastPassRequested()) {
+            throw new UnsupportedOperationException(Annotations.LAST_PASS
+                    + "=" + isLastPassRequested());
+        }
+
+        // ORDER_BY must preserve order.
+        if (isReorderSolutions())
+            throw new UnsupportedOperationException(
+                    Annotations.REORDER_SOLUTIONS + "=" + isReorderSolutions());
+
+        // required parameter.
+        final int limit = getLimit();
+
+        if (limit <= 0)
+            throw new IllegalArgumentException(Annotations.LIMIT + "=" + limit);
+
+        // required parameter.
+        getValueComparator();
+
+        // validate required parameter.
+        for (ISortOrder<?> s : getSortOrder()) {
+
+            final IValueExpression<?> expr = s.getExpr();
+
+            if (expr instanceof IVariableOrConstant<?>)
+                continue;
+
+            if (expr instanceof IBind<?>)
+                continue;
+
+            throw new IllegalArgumentException(
+                    "Value expression not wrapped by bind: " + expr);
+
+        }
+
+    }
+
+    public TopKSortOp(final BOp[] args, final NV... annotations) {
+
+        this(args, NV.asMap(annotations));
+
+    }
+
+    /**
+     * @see Annotations#LIMIT
+     */
+    public int getLimit() {
+
+        return ((Number) getRequiredProperty(Annotations.LIMIT)).intValue();
+
+    }
+
+    @Override
+    public FutureTask<Void> eval(final BOpContext<IBindingSet> context) {
+
+        return new FutureTask<Void>(new SortTask(this, context));
+
+    }
+
+    /**
+     * A retained solution together with the order in which it was observed.
+     */
+    private static class Entry {
+
+        final IBindingSet bset;
+
+        final long seq;
+
+        Entry(final IBindingSet bset, final long seq) {
+            this.bset = bset;
+            this.seq = seq;
+        }
+
+    }
+
+    /**
+     * The state of the operator. A reference to this object is stored on the
+     * {@link IQueryAttributes}.
+     */
+    private static class TopKState {
+
+        /**
+         * The retained solutions. The head of the queue is the greatest
+         * retained solution.
+         */
+        final PriorityQueue<Entry> queue;
+
+        /**
+         * The #of solutions observed to date (used to break ties).
+         */
+        long nseen = 0;
+
+        TopKState(final int limit, final Comparator<Entry> comparator) {
+
+            this.queue = new PriorityQueue<Entry>(limit + 1,
+                    new Comparator<Entry>() {
+                        @Override
+                        public int compare(final Entry o1, final Entry o2) {
+                            // Reverse order : max heap.
+                            return comparator.compare(o2, o1);
+                        }
+                    });
+
+        }
+
+    }
+
+    /**
+     * Task executing on the node.
+     */
+    static private class SortTask implements Callable<Void> {
+
+        private final BOpContext<IBindingSet> context;
+
+        private final BOpStats stats;
+
+        private final ISortOrder<?>[] sortOrder;
+
+        private final int limit;
+
+        /**
+         * Imposes the total ordering on the retained solutions, breaking ties
+         * by the order in which the solutions were observed.
+         */
+        private final Comparator<Entry> comparator;
+
+        /**
+         * The {@link IQueryAttributes} for the
+         * {@link com.bigdata.bop.engine.IRunningQuery} off which we will hang
+         * the {@link TopKState}.
+         */
+        private final IQueryAttributes attrs;
+
+        /**
+         * The name of the key under which the {@link #state} is stored in the
+         * {@link IQueryAttributes}.
+         */
+        private final String key;
+
+        private TopKState state;
+
+        @SuppressWarnings({ "rawtypes", "unchecked" })
+        SortTask(final TopKSortOp op, final BOpContext<IBindingSet> context) {
+
+            this.context = context;
+
+            this.stats = context.getStats();
+
+            this.sortOrder = op.getSortOrder();
+
+            this.limit = op.getLimit();
+
+            final Comparator<IBindingSet> c = new BindingSetComparator(
+                    sortOrder, op.getValueComparator());
+
+            this.comparator = new Comparator<Entry>() {
+                @Override
+                public int compare(final Entry o1, final Entry o2) {
+                    final int ret = c.compare(o1.bset, o2.bset);
+                    if (ret != 0)
+                        return ret;
+                    return o1.seq < o2.seq ? -1 : o1.seq > o2.seq ? 1 : 0;
+                }
+            };
+
+            this.attrs = context.getQueryAttributes();
+
+            this.key = Integer.toString(op.getId());
+
+            TopKState state = (TopKState) attrs.get(key);
+
+            if (state == null) {
+
+                state = new TopKState(limit, comparator);
+
+                if (attrs.putIfAbsent(key, state) != null)
+                    throw new AssertionError();
+
+            }
+
+            this.state = state;
+
+        }
+
+        void release() {
+
+            if (log.isInfoEnabled())
+                log.info("Releasing state");
+
+            attrs.remove(key);
+
+            state = null;
+
+        }
+
+        @Override
+        public Void call() throws Exception {
+
+            final ICloseableIterator<IBindingSet[]> itr = context
+                    .getSource();
+
+            final IBlockingBuffer<IBindingSet[]> sink = context.getSink();
+
+            final boolean lastInvocation = context.isLastInvocation();
+
+            try {
+
+                acceptSolutions(itr);
+
+                if (lastInvocation) {
+
+                    doOrderBy(sink);
+
+                }
+
+            } catch (Throwable t) {
+
+                log.error(t, t);
+
+                throw new RuntimeException(t);
+
+            } finally {
+
+                if (lastInvocation) {
+
+                    // Discard the operator's internal state.
+                    release();
+
+                }
+
+                sink.close();
+
+            }
+
+            // Done.
+            return null;
+
+        }
+
+        /**
+         * Evaluate the value expressions for each input solution and offer the
+         * as-bound solutions to the bounded priority queue.
+         *
+         * @param itr
+         *            The source solutions.
+         */
+        private void acceptSolutions(
+                final ICloseableIterator<IBindingSet[]> itr) {
+
+            final PriorityQueue<Entry> queue = state.queue;
+
+            try {
+
+                while (itr.hasNext()) {
+
+                    final IBindingSet[] a = itr.next();
+
+                    stats.chunksIn.increment();
+                    stats.unitsIn.add(a.length);
+
+                    for (IBindingSet bset : a) {
+
+                        // Note: Necessary scope for type error reporting.
+                        IValueExpression<?> expr = null;
+
+                        try {
+
+                            for (ISortOrder<?> s : sortOrder) {
+
+                                /*
+                                 * Evaluate. A BIND() will have side-effect on
+                                 * [bset].
+                                 */
+                                (expr = s.getExpr()).get(bset);
+
+                            }
+
+                        } catch (SparqlTypeErrorException ex) {
+
+                            // log type error, do not drop solution (see trac 765).
+                            TypeErrorLog.handleTypeError(ex, expr, stats);
+
+                        }
+
+                        final Entry e = new Entry(bset, state.nseen++);
+
+                        if (queue.size() < limit) {
+
+                            queue.add(e);
+
+                        } else if (comparator.compare(e, queue.peek()) < 0) {
+
+                            // Evict the greatest retained solution.
+                            queue.poll();
+
+                            queue.add(e);
+
+                        }
+
+                    } // next source solution
+
+                }
+
+                if (log.isInfoEnabled())
+                    log.info("Retained " + queue.size() + " of " + state.nseen
+                            + " solutions so far");
+
+            } finally {
+
+                itr.close();
+
+            }
+
+        } // acceptSolutions
+
+        /**
+         * Sort the retained solutions based on the as-bound value expressions.
+         *
+         * @param sink
+         *            Where to write the results.
+         */
+        private void doOrderBy(final IBlockingBuffer<IBindingSet[]> sink) {
+
+            final Entry[] entries = state.queue.toArray(new Entry[state.queue
+                    .size()]);
+
+            Arrays.sort(entries, comparator);
+
+            final IBindingSet[] all = new IBindingSet[entries.length];
+
+            for (int i = 0; i < entries.length; i++) {
+
+                final IBindingSet bset = all[i] = entries[i].bset;
+
+                // Drop variables for computed value expressions.
+                for (ISortOrder<?> s : sortOrder) {
+                    final IValueExpression<?> expr = s.getExpr();
+                    if (expr instanceof IBind) {
+                        bset.clear(((IBind<?>) expr).getVar());
+                    }
+                }
+
+            }
+
+            if (log.isInfoEnabled())
+                log.info("Sorted " + all.length + " of " + state.nseen
+                        + " solutions.");
+
+            // write output and flush.
+            sink.add(all);
+            sink.flush();
+
+        }
+
+    } // SortTask
+
+}
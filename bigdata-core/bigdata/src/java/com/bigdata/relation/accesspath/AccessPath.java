@@ -28,7 +28,9 @@ Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
 
 package com.bigdata.relation.accesspath;
 
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.FutureTask;
@@ -150,6 +152,16 @@ public class AccessPath<R> implements IAccessPath<R>, IBindingSetAccessPath<R> {
     protected final int chunkCapacity;
     protected final int fullyBufferedReadThreshold;
 
+    /**
+     * @see IPredicate.Annotations#PARALLEL_SCAN_THREADS
+     */
+    protected final int parallelScanThreads;
+
+    /**
+     * @see IPredicate.Annotations#PARALLEL_SCAN_THRESHOLD
+     */
+    protected final long parallelScanThreshold;
+
     /**
      * <code>true</code> iff the {@link IPredicate}is fully bound.
      */
@@ -533,6 +545,14 @@ public class AccessPath<R> implements IAccessPath<R>, IBindingSetAccessPath<R> {
         this.chunkCapacity = chunkCapacity;
 
         this.fullyBufferedReadThreshold = fullyBufferedReadThreshold;
+
+        this.parallelScanThreads = predicate.getProperty(
+                IPredicate.Annotations.PARALLEL_SCAN_THREADS,
+                IPredicate.Annotations.DEFAULT_PARALLEL_SCAN_THREADS);
+
+        this.parallelScanThreshold = predicate.getProperty(
+                IPredicate.Annotations.PARALLEL_SCAN_THRESHOLD,
+                IPredicate.Annotations.DEFAULT_PARALLEL_SCAN_THRESHOLD);
         
         this.isFullyBoundForKey = predicate.isFullyBound(keyOrder);
 
@@ -878,6 +898,9 @@ public class AccessPath<R> implements IAccessPath<R>, IBindingSetAccessPath<R> {
         
         final boolean fullyBufferedRead;
 
+        // true iff the key-range will be scanned in parallel.
+        boolean parallelScan = false;
+
         // true iff a point test is a hit on the bloom filter.
         boolean bloomHit = false;
         
@@ -1025,10 +1048,29 @@ public class AccessPath<R> implements IAccessPath<R>, IBindingSetAccessPath<R> {
             } else {
                 
                 fullyBufferedRead = false;
+
+                parallelScan = isParallelScan(offset, rangeCountRemaining);
                 
             }
 
         }
+
+        if (parallelScan) {
+
+            final byte[][] splitKeys = getSplitKeys((AbstractBTree) ndx,
+                    parallelScanThreads);
+
+            if (splitKeys.length > 2) {
+
+                /*
+                 * Asynchronous read of each key-range split in parallel.
+                 */
+
+                return parallelIterator(splitKeys, capacity);
+
+            }
+
+        }
         
         /*
          * Note: The [capacity] gets passed through to the DataService layer.
@@ -1235,6 +1277,232 @@ public class AccessPath<R> implements IAccessPath<R>, IBindingSetAccessPath<R> {
             
     }
     
+    /**
+     * Return <code>true</code> iff the key-range of the access path should be
+     * divided into splits which are scanned in parallel.
+     * 
+     * @param offset
+     *            The offset for the iterator.
+     * @param rangeCountRemaining
+     *            The estimated #of elements to be visited.
+     * 
+     * @see IPredicate.Annotations#PARALLEL_SCAN_THREADS
+     */
+    private boolean isParallelScan(final long offset,
+            final long rangeCountRemaining) {
+
+        if (parallelScanThreads <= 1)
+            return false;
+
+        if (offset != 0L || rangeCountRemaining < parallelScanThreshold)
+            return false;
+
+        /*
+         * Only a read-only view of a local BTree may be read concurrently and
+         * only the AbstractBTree supports the ILinearList API which we use to
+         * find the split keys.
+         */
+        if (!historicalRead || !(ndx instanceof AbstractBTree))
+            return false;
+
+        if ((flags & (IRangeQuery.REVERSE | IRangeQuery.REMOVEALL)) != 0)
+            return false;
+
+        /*
+         * Note: Filters can be stateful (DISTINCT, advancers, etc.) and would
+         * not see the same tuples if they were applied to each split. The
+         * SameVariableConstraint is stateless and is always allowed.
+         */
+        if (accessPathFilter != null || predicate.getIndexLocalFilter() != null)
+            return false;
+
+        return true;
+
+    }
+
+    /**
+     * Divide the key-range of the access path into splits having roughly the
+     * same #of tuples.
+     * 
+     * @param btree
+     *            The index.
+     * @param nsplits
+     *            The desired #of splits.
+     * 
+     * @return The split keys. The first key is {@link #getFromKey()} and the
+     *         last key is {@link #getToKey()}. There is one fewer split than
+     *         there are keys.
+     */
+    private byte[][] getSplitKeys(final AbstractBTree btree, final int nsplits) {
+
+        final long fromIndex = fromKey == null ? 0L : insertionPoint(btree
+                .indexOf(fromKey));
+
+        final long toIndex = toKey == null ? btree.getEntryCount()
+                : insertionPoint(btree.indexOf(toKey));
+
+        final long n = toIndex - fromIndex;
+
+        final int m = (int) Math.max(1L, Math.min(nsplits, n));
+
+        final byte[][] keys = new byte[m + 1][];
+
+        keys[0] = fromKey;
+
+        for (int i = 1; i < m; i++) {
+
+            keys[i] = btree.keyAt(fromIndex + (n * i) / m);
+
+        }
+
+        keys[m] = toKey;
+
+        return keys;
+
+    }
+
+    /**
+     * Convert the return value of {@link AbstractBTree#indexOf(byte[])} into
+     * the index of the first tuple GTE the probe key.
+     */
+    private static long insertionPoint(final long pos) {
+
+        return pos >= 0 ? pos : -(pos + 1);
+
+    }
+
+    /**
+     * Asynchronous read of the key-range splits in parallel. Each split is
+     * consumed by its own {@link ChunkConsumerTask} writing onto a
+     * {@link MultiplexBlockingBuffer} which is drained by the caller.
+     * <p>
+     * Note: The chunks are NOT visited in the natural order of the index.
+     * 
+     * @param splitKeys
+     *            The split keys.
+     * @param capacity
+     *            The capacity for the tuple iterators.
+     * 
+     * @see #getSplitKeys(AbstractBTree, int)
+     */
+    final protected IChunkedOrderedIterator<R> parallelIterator(
+            final byte[][] splitKeys, final int capacity) {
+
+        final int nsplits = splitKeys.length - 1;
+
+        if (DEBUG)
+            log.debug("nsplits=" + nsplits);
+
+        final BlockingBuffer<R[]> buffer = new BlockingBuffer<R[]>(
+                chunkOfChunksCapacity);
+
+        final MultiplexBlockingBuffer<R[]> multiplex = new MultiplexBlockingBuffer<R[]>(
+                buffer);
+
+        /*
+         * Note: All skins are opened before any task runs so the shared buffer
+         * is not closed until all splits have been consumed.
+         */
+        final List<FutureTask<Void>> tasks = new ArrayList<FutureTask<Void>>(
+                nsplits);
+
+        for (int i = 0; i < nsplits; i++) {
+
+            final ITupleIterator<R> tupleItr = ndx.rangeIterator(
+                    splitKeys[i], splitKeys[i + 1], capacity, flags,
+                    indexLocalFilter);
+
+            final Iterator<R> src = new Striterator(tupleItr)
+                    .addFilter(new TupleObjectResolver());
+
+            tasks.add(new FutureTask<Void>(new ChunkConsumerTask<R>(this, src,
+                    multiplex.newInstance())));
+
+        }
+
+        final ExecutorService executorService = indexManager
+                .getExecutorService();
+
+        final FutureTask<Void> ft = new FutureTask<Void>(
+                new ParallelScanTask<R>(executorService, tasks, buffer));
+
+        // Set Future on BlockingBuffer *before* starting computation.
+        buffer.setFuture(ft);
+
+        // Start computation.
+        executorService.submit(ft);
+
+        // Note: The natural order is not preserved.
+        return new ChunkConsumerIterator<R>(buffer.iterator(), null/* keyOrder */);
+
+    }
+
+    /**
+     * Runs the {@link ChunkConsumerTask}s for the key-range splits of a
+     * parallel scan and waits for them to complete. If any task fails, then
+     * the shared buffer is aborted and the remaining tasks are cancelled.
+     * Likewise, the tasks are cancelled if this task is interrupted (e.g.,
+     * because the consumer closed the iterator).
+     */
+    static private class ParallelScanTask<R> implements Callable<Void> {
+
+        private final ExecutorService executorService;
+
+        private final List<FutureTask<Void>> tasks;
+
+        private final BlockingBuffer<R[]> buffer;
+
+        public ParallelScanTask(final ExecutorService executorService,
+                final List<FutureTask<Void>> tasks,
+                final BlockingBuffer<R[]> buffer) {
+
+            this.executorService = executorService;
+
+            this.tasks = tasks;
+
+            this.buffer = buffer;
+
+        }
+
+        @Override
+        public Void call() throws Exception {
+
+            try {
+
+                for (FutureTask<Void> f : tasks) {
+
+                    executorService.execute(f);
+
+                }
+
+                for (FutureTask<Void> f : tasks) {
+
+                    f.get();
+
+                }
+
+            } catch (Exception ex) {
+
+                buffer.abort(ex);
+
+                throw ex;
+
+            } finally {
+
+                for (FutureTask<Void> f : tasks) {
+
+                    f.cancel(true/* mayInterruptIfRunning */);
+
+                }
+
+            }
+
+            return null;
+
+        }
+
+    }
+
     /**
      * Consumes elements from the source iterator, converting them into chunks
      * on a {@link BlockingBuffer}. The consumer will drain the chunks from the
@@ -1250,7 +1518,7 @@ public class AccessPath<R> implements IAccessPath<R>, IBindingSetAccessPath<R> {
 
         private final Iterator<R> src;
         
-        private final BlockingBuffer<R[]> buffer;
+        private final IBlockingBuffer<R[]> buffer;
         
         /**
          * 
@@ -1262,7 +1530,7 @@ public class AccessPath<R> implements IAccessPath<R>, IBindingSetAccessPath<R> {
          *            written.
          */
         public ChunkConsumerTask(final AccessPath<R> accessPath,
-                final Iterator<R> src, final BlockingBuffer<R[]> buffer) {
+                final Iterator<R> src, final IBlockingBuffer<R[]> buffer) {
 
             if (accessPath == null)
                 throw new IllegalArgumentException();
@@ -36,6 +36,7 @@ import com.bigdata.bop.IVariable;
 import com.bigdata.bop.TestMockUtility;
 import com.bigdata.bop.Var;
 import com.bigdata.bop.bindingSet.ListBindingSet;
+import com.bigdata.bop.solutions.AbstractAggregationTestCase;
 import com.bigdata.journal.ITx;
 import com.bigdata.rdf.error.SparqlTypeErrorException;
 import com.bigdata.rdf.internal.IV;
@@ -132,6 +133,23 @@ public class TestAVERAGE extends TestCase2 {
 
     }
 
+    /**
+     * Unit test for merging the partial states of {@link AVERAGE}s which were
+     * evaluated against disjoint subsets of the solutions. An empty partial
+     * state is also merged and must not change the result.
+     */
+    public void test_average_merge() {
+
+        final IVariable<IV> lprice = Var.var("lprice");
+
+        AbstractAggregationTestCase.assertMerge(lprice,
+                new XSDDecimalIV(new BigDecimal((9 + 5 + 7 + 7) / 4.)),
+                new AVERAGE(false/* distinct */, lprice),
+                new AVERAGE(false/* distinct */, lprice),
+                new AVERAGE(false/* distinct */, lprice));
+
+    }
+
     public void test_average_with_complex_inner_value_expression() {
         
        AbstractTripleStore kb = TestMockUtility.mockTripleStore(getName());
@@ -36,6 +36,7 @@ import com.bigdata.bop.IVariable;
 import com.bigdata.bop.TestMockUtility;
 import com.bigdata.bop.Var;
 import com.bigdata.bop.bindingSet.ListBindingSet;
+import com.bigdata.bop.solutions.AbstractAggregationTestCase;
 import com.bigdata.journal.ITx;
 import com.bigdata.rdf.error.SparqlTypeErrorException;
 import com.bigdata.rdf.internal.IV;
@@ -133,6 +134,23 @@ public class TestCOUNT extends TestCase2 {
 
     }
 
+    /**
+     * Unit test for merging the partial states of {@link COUNT}s which were
+     * evaluated against disjoint subsets of the solutions. An empty partial
+     * state is also merged and must not change the result.
+     */
+    public void test_count_merge() {
+
+        final IVariable<IV> lprice = Var.var("lprice");
+
+        AbstractAggregationTestCase.assertMerge(lprice,
+                new XSDIntegerIV(BigInteger.valueOf(4)),
+                new COUNT(false/* distinct */, lprice),
+                new COUNT(false/* distinct */, lprice),
+                new COUNT(false/* distinct */, lprice));
+
+    }
+
     public void test_count_with_complex_inner_value_expression() {
 
        AbstractTripleStore kb = TestMockUtility.mockTripleStore(getName());
@@ -36,6 +36,7 @@ import com.bigdata.bop.IVariable;
 import com.bigdata.bop.TestMockUtility;
 import com.bigdata.bop.Var;
 import com.bigdata.bop.bindingSet.ListBindingSet;
+import com.bigdata.bop.solutions.AbstractAggregationTestCase;
 import com.bigdata.journal.ITx;
 import com.bigdata.rdf.internal.IV;
 import com.bigdata.rdf.internal.VTE;
@@ -119,6 +120,23 @@ public class TestMIN extends TestCase2 {
 
     }
 
+    /**
+     * Unit test for merging the partial states of {@link MIN}s which were
+     * evaluated against disjoint subsets of the solutions. An empty partial
+     * state is also merged and must not change the result.
+     */
+    public void test_min_merge() {
+
+        final IVariable<IV> lprice = Var.var("lprice");
+
+        AbstractAggregationTestCase.assertMerge(lprice,
+                new XSDNumericIV(5),
+                new MIN(false/* distinct */, lprice),
+                new MIN(false/* distinct */, lprice),
+                new MIN(false/* distinct */, lprice));
+
+    }
+
     public void test_min_with_complex_inner_value_expression() {
         
        AbstractTripleStore kb = TestMockUtility.mockTripleStore(getName());
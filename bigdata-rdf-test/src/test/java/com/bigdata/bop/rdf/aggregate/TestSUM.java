@@ -44,6 +44,7 @@ import com.bigdata.bop.engine.BOpStats;
 import com.bigdata.bop.engine.BlockingBufferWithStats;
 import com.bigdata.bop.engine.IRunningQuery;
 import com.bigdata.bop.engine.MockRunningQuery;
+import com.bigdata.bop.solutions.AbstractAggregationTestCase;
 import com.bigdata.bop.solutions.MockQuery;
 import com.bigdata.bop.solutions.MockQueryContext;
 import com.bigdata.journal.BufferMode;
@@ -136,6 +137,23 @@ public class TestSUM extends TestCase2 {
 
     }
 
+    /**
+     * Unit test for merging the partial states of {@link SUM}s which were
+     * evaluated against disjoint subsets of the solutions. An empty partial
+     * state is also merged and must not change the result.
+     */
+    public void test_sum_merge() {
+
+        final IVariable<IV> lprice = Var.var("lprice");
+
+        AbstractAggregationTestCase.assertMerge(lprice,
+                new XSDIntegerIV(BigInteger.valueOf(9 + 5 + 7 + 7)),
+                new SUM(false/* distinct */, lprice),
+                new SUM(false/* distinct */, lprice),
+                new SUM(false/* distinct */, lprice));
+
+    }
+
     public void test_sum_with_complex_inner_value_expression() {
         
        AbstractTripleStore kb = TestMockUtility.mockTripleStore(getName());
@@ -63,7 +63,8 @@ public class TestAll extends TestCase {
         suite.addTestSuite(TestStrBeforeBOp.class);
         suite.addTestSuite(TestStrAfterBOp.class);
         suite.addTestSuite(TestReplaceBOp.class);
-        suite.addTestSuite(TestRegexBOp.class);
+        suite.addTestSuite(TestRegexBOp.class);
+        suite.addTestSuite(TestValueExpressionCompiler.class);
         
         return suite;
         
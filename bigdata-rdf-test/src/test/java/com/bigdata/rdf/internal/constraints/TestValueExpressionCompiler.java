@@ -0,0 +1,212 @@
+/**
+
+Copyright (C) SYSTAP, LLC DBA Blazegraph 2006-2016.  All rights reserved.
+
+Contact:
+     SYSTAP, LLC DBA Blazegraph
+     2501 Calvert ST NW #106
+     Washington, DC 20008
+     licenses@blazegraph.com
+
+This program is free software; you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation; version 2 of the License.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program; if not, write to the Free Software
+Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+package com.bigdata.rdf.internal.constraints;
+
+import junit.framework.TestCase2;
+
+import org.openrdf.query.algebra.Compare.CompareOp;
+
+import com.bigdata.bop.Constant;
+import com.bigdata.bop.IBindingSet;
+import com.bigdata.bop.IValueExpression;
+import com.bigdata.bop.IVariable;
+import com.bigdata.bop.Var;
+import com.bigdata.bop.bindingSet.ListBindingSet;
+import com.bigdata.rdf.error.SparqlTypeErrorException;
+import com.bigdata.rdf.internal.IV;
+import com.bigdata.rdf.internal.impl.literal.XSDNumericIV;
+
+/**
+ * Test suite for {@link ValueExpressionCompiler}. Each compiled expression is
+ * checked against the interpreted expression from which it was compiled.
+ */
+@SuppressWarnings({ "rawtypes", "unchecked" })
+public class TestValueExpressionCompiler extends TestCase2 {
+
+    public TestValueExpressionCompiler() {
+    }
+
+    public TestValueExpressionCompiler(final String name) {
+        super(name);
+    }
+
+    private final IVariable<IV> x = Var.var("x");
+
+    private final IVariable<IV> y = Var.var("y");
+
+    private static IValueExpression<IV> c(final IV iv) {
+
+        return new Constant<IV>(iv);
+
+    }
+
+    /**
+     * Values for <code>?x</code> covering each inline numeric datatype, NaN
+     * and signed zeros. The last solution leaves <code>?x</code> unbound.
+     */
+    private IBindingSet[] solutions() {
+
+        final IV[] vals = new IV[] {//
+                new XSDNumericIV((byte) 3),//
+                new XSDNumericIV((short) 10),//
+                new XSDNumericIV(9),//
+                new XSDNumericIV(20L),//
+                new XSDNumericIV(Long.MAX_VALUE),//
+                new XSDNumericIV(10.5f),//
+                new XSDNumericIV(16777217L),// not exact as a float
+                new XSDNumericIV(19.999d),//
+                new XSDNumericIV(Double.NaN),//
+                new XSDNumericIV(-0.0d),//
+                new XSDNumericIV(0.0f),//
+        };
+
+        final IBindingSet[] a = new IBindingSet[vals.length + 1];
+
+        for (int i = 0; i < vals.length; i++) {
+
+            a[i] = new ListBindingSet();
+
+            a[i].set(x, new Constant<IV>(vals[i]));
+
+        }
+
+        a[vals.length] = new ListBindingSet();
+
+        return a;
+
+    }
+
+    /**
+     * Verify that the compiled expression has the same outcome as the
+     * interpreted expression for each solution.
+     */
+    private void assertSameOutcome(final XSDBooleanIVValueExpression expr) {
+
+        final CompiledValueExpression compiled = ValueExpressionCompiler
+                .compile(expr);
+
+        for (IBindingSet bs : solutions()) {
+
+            Boolean expected;
+            try {
+                expected = expr.get(bs).booleanValue();
+            } catch (SparqlTypeErrorException ex) {
+                expected = null;
+            }
+
+            Boolean actual;
+            try {
+                actual = compiled.accept(bs);
+            } catch (SparqlTypeErrorException ex) {
+                actual = null;
+            }
+
+            assertEquals(expr + " : " + bs, expected, actual);
+
+        }
+
+    }
+
+    /**
+     * Comparisons of a variable against inline numeric constants of each
+     * datatype, with the variable on either side.
+     */
+    public void test_compare() {
+
+        final IV[] consts = new IV[] {//
+                new XSDNumericIV(10),//
+                new XSDNumericIV(20L),//
+                new XSDNumericIV(10.5f),//
+                new XSDNumericIV(16777216f),//
+                new XSDNumericIV(0.0d),//
+                new XSDNumericIV(Double.NaN),//
+        };
+
+        for (IV iv : consts) {
+
+            for (CompareOp op : CompareOp.values()) {
+
+                assertSameOutcome(new CompareBOp(x, c(iv), op));
+
+                assertSameOutcome(new CompareBOp(c(iv), x, op));
+
+            }
+
+        }
+
+    }
+
+    /**
+     * A range filter is compiled into a single operation.
+     */
+    public void test_range() {
+
+        final XSDBooleanIVValueExpression expr = new AndBOp(//
+                new CompareBOp(x, c(new XSDNumericIV(10)), CompareOp.GE),//
+                new CompareBOp(c(new XSDNumericIV(20.0d)), x, CompareOp.GT)//
+        );
+
+        assertFalse(ValueExpressionCompiler.compile(expr).getClass()
+                .getSimpleName().equals("AndExpr"));
+
+        assertSameOutcome(expr);
+
+        // Different variables : not a range.
+        assertSameOutcome(new AndBOp(//
+                new CompareBOp(x, c(new XSDNumericIV(10)), CompareOp.GE),//
+                new CompareBOp(y, c(new XSDNumericIV(20)), CompareOp.LT)//
+        ));
+
+    }
+
+    /**
+     * Conjunction, disjunction and negation follow the SPARQL error handling
+     * rules.
+     */
+    public void test_logical() {
+
+        // ?y is never bound, so the right hand side is always an error.
+        final XSDBooleanIVValueExpression left = new CompareBOp(x,
+                c(new XSDNumericIV(10)), CompareOp.LT);
+
+        final XSDBooleanIVValueExpression right = new CompareBOp(y,
+                c(new XSDNumericIV(10)), CompareOp.LT);
+
+        assertSameOutcome(new AndBOp(left, right));
+
+        assertSameOutcome(new AndBOp(right, left));
+
+        assertSameOutcome(new OrBOp(left, right));
+
+        assertSameOutcome(new OrBOp(right, left));
+
+        assertSameOutcome(new NotBOp(left));
+
+        assertSameOutcome(new NotBOp(new OrBOp(left, right)));
+
+        assertSameOutcome(new EBVBOp(new AndBOp(left, left)));
+
+    }
+
+}
@@ -166,6 +166,68 @@ public class TestAddTerms extends AbstractTripleStoreTestCase {
 
     }
 
+    /**
+     * Variant of {@link #test_addTerms()} with
+     * {@link Options#PARALLEL_LEXICON_WRITES} and the full text index enabled
+     * so the TERM2ID/BLOBS writes and the ID2TERM/search writes are co-threaded.
+     */
+    public void test_addTerms_parallelLexiconWrites() {
+
+        final Properties properties = getProperties();
+        
+        // test w/o predefined vocab.
+        properties.setProperty(Options.VOCABULARY_CLASS, NoVocabulary.class
+                .getName());
+
+        // test w/o axioms - they imply a predefined vocab.
+        properties.setProperty(Options.AXIOMS_CLASS, NoAxioms.class.getName());
+        
+        // test with the full text index.
+        properties.setProperty(Options.TEXT_INDEX, "true");
+
+        // co-thread the lexicon index writes.
+        properties.setProperty(Options.PARALLEL_LEXICON_WRITES, "true");
+
+        AbstractTripleStore store = getStore(properties);
+        
+        try {
+
+            final Collection<BigdataValue> terms = new HashSet<BigdataValue>();
+
+            final BigdataValueFactory f = store.getValueFactory();
+
+            terms.add(f.createURI("http://www.bigdata.com"));
+            terms.add(f.createURI(RDF.TYPE.stringValue()));
+            terms.add(f.createLiteral("abc"));
+            terms.add(f.createLiteral("the quick brown fox"));
+            terms.add(f.createLiteral("chat", "fr"));
+            terms.add(f.createLiteral("12", f
+                    .createURI("http://www.w3.org/2001/XMLSchema#int")));
+            terms.add(f.createURI(getVeryLargeURI()));
+            terms.add(f.createLiteral(getVeryLargeLiteral()));
+
+            final Map<IV<?,?>, BigdataValue> ids = doAddTermsTest(store, terms);
+
+            // a readOnly lookup must resolve the same IVs.
+            final BigdataValue[] b = terms.toArray(new BigdataValue[terms
+                    .size()]);
+            for (BigdataValue v : b) {
+                v.clearInternalValue();
+            }
+            store.getLexiconRelation().addTerms(b, b.length, true/* readOnly */);
+            for (BigdataValue v : b) {
+                assertNotNull("Not resolved? : " + v, v.getIV());
+                assertEquals(v, ids.get(v.getIV()));
+            }
+
+        } finally {
+            
+            store.__tearDownUnitTest();
+            
+        }
+
+    }
+
     /**
      * The "told bnodes" mode uses the blank node ID as specified rather than
      * assigning one based on a UUID. For this case, we need to store the blank
@@ -105,6 +105,15 @@ public class TestAll extends TestCase {
         // test suite for the IV cache, including serialization of cached vals.
         suite.addTestSuite(TestIVCache.class);
 
+        // test suite for the off-heap second level term cache.
+        suite.addTestSuite(TestOffHeapTermCache.class);
+
+        // test suite for coalesced resolution of IVs against the indices.
+        suite.addTestSuite(TestCoalescingTermResolver.class);
+
+        // test suite for the namespace split encoding of URIs.
+        suite.addTestSuite(TestURINamespaceDictionary.class);
+
         // test suite for access paths reading on the TERMS index.
         suite.addTestSuite(TestAccessPaths.class);
         
@@ -0,0 +1,429 @@
+/**
+
+Copyright (C) SYSTAP, LLC DBA Blazegraph 2006-2016.  All rights reserved.
+
+Contact:
+     SYSTAP, LLC DBA Blazegraph
+     2501 Calvert ST NW #106
+     Washington, DC 20008
+     licenses@blazegraph.com
+
+This program is free software; you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation; version 2 of the License.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program; if not, write to the Free Software
+Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+/*
+ * Created on Oct 17, 2026
+ */
+
+package com.bigdata.rdf.lexicon;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.bigdata.rdf.axioms.NoAxioms;
+import com.bigdata.rdf.internal.IV;
+import com.bigdata.rdf.internal.impl.BlobIV;
+import com.bigdata.rdf.internal.impl.TermId;
+import com.bigdata.rdf.model.BigdataValue;
+import com.bigdata.rdf.model.BigdataValueFactory;
+import com.bigdata.rdf.store.AbstractTripleStore;
+import com.bigdata.rdf.store.AbstractTripleStore.Options;
+import com.bigdata.rdf.store.AbstractTripleStoreTestCase;
+import com.bigdata.rdf.vocab.NoVocabulary;
+
+/**
+ * Test suite for {@link CoalescingTermResolver}.
+ */
+public class TestCoalescingTermResolver extends AbstractTripleStoreTestCase {
+
+    public TestCoalescingTermResolver() {
+    }
+
+    public TestCoalescingTermResolver(final String name) {
+        super(name);
+    }
+
+    @Override
+    public Properties getProperties() {
+
+        final Properties properties = new Properties(super.getProperties());
+
+        properties.setProperty(Options.VOCABULARY_CLASS, NoVocabulary.class
+                .getName());
+
+        properties.setProperty(Options.AXIOMS_CLASS, NoAxioms.class.getName());
+
+        properties.setProperty(Options.TEXT_INDEX, "false");
+
+        properties.setProperty(Options.INLINE_XSD_DATATYPE_LITERALS, "false");
+
+        properties.setProperty(Options.COALESCE_TERM_RESOLUTION, "true");
+
+        return properties;
+
+    }
+
+    /**
+     * Add some terms (including a blob) and return them.
+     */
+    private BigdataValue[] addTerms(final LexiconRelation lex) {
+
+        final BigdataValueFactory f = lex.getValueFactory();
+
+        final List<BigdataValue> a = new ArrayList<BigdataValue>();
+
+        for (int i = 0; i < 20; i++) {
+            a.add(f.createURI("http://www.bigdata.com/" + i));
+            a.add(f.createLiteral("label " + i));
+        }
+
+        a.add(f.createLiteral(TestAddTerms.getVeryLargeLiteral()));
+
+        final BigdataValue[] terms = a.toArray(new BigdataValue[a.size()]);
+
+        lex.addTerms(terms, terms.length, false/* readOnly */);
+
+        return terms;
+
+    }
+
+    /**
+     * Unit test resolves {@link TermId}s and {@link BlobIV}s through the
+     * resolver, including an {@link IV} which is requested twice.
+     */
+    public void test_resolve() {
+
+        final AbstractTripleStore store = getStore(getProperties());
+
+        try {
+
+            final LexiconRelation lex = store.getLexiconRelation();
+
+            final BigdataValue[] terms = addTerms(lex);
+
+            final Collection<TermId<?>> termIVs = new LinkedList<TermId<?>>();
+
+            final Collection<BlobIV<?>> blobIVs = new LinkedList<BlobIV<?>>();
+
+            for (BigdataValue v : terms) {
+                final IV<?, ?> iv = v.getIV();
+                assertNotNull(iv);
+                if (iv instanceof BlobIV<?>) {
+                    blobIVs.add((BlobIV<?>) iv);
+                } else {
+                    termIVs.add((TermId<?>) iv);
+                }
+            }
+
+            assertFalse(blobIVs.isEmpty());
+
+            // Duplicate request within the same call.
+            termIVs.add((TermId<?>) terms[0].getIV());
+
+            final CoalescingTermResolver resolver = new CoalescingTermResolver();
+
+            final ConcurrentHashMap<IV<?, ?>, BigdataValue> ret = new ConcurrentHashMap<IV<?, ?>, BigdataValue>();
+
+            resolver.resolve(lex, termIVs, blobIVs, ret, 10/* termsChunkSize */,
+                    10/* blobsChunkSize */);
+
+            assertEquals(terms.length, ret.size());
+
+            for (BigdataValue v : terms)
+                assertEquals(v, ret.get(v.getIV()));
+
+            // One batch, each distinct IV read once.
+            assertEquals(1L, resolver.getBatchCount());
+            assertEquals(terms.length, resolver.getReadCount());
+            assertEquals(0L, resolver.getSharedCount());
+
+        } finally {
+
+            store.__tearDownUnitTest();
+
+        }
+
+    }
+
+    /**
+     * Stress test with concurrent callers requesting the same {@link IV}s.
+     * Every caller must see every value and each request must be either read
+     * against the indices or shared with another caller.
+     */
+    public void test_resolve_concurrent() throws Exception {
+
+        final AbstractTripleStore store = getStore(getProperties());
+
+        final ExecutorService exec = Executors.newFixedThreadPool(10);
+
+        try {
+
+            final LexiconRelation lex = store.getLexiconRelation();
+
+            final BigdataValue[] terms = addTerms(lex);
+
+            final CoalescingTermResolver resolver = new CoalescingTermResolver();
+
+            final int ntasks = 50;
+
+            final List<Callable<Map<IV<?, ?>, BigdataValue>>> tasks = new LinkedList<Callable<Map<IV<?, ?>, BigdataValue>>>();
+
+            for (int i = 0; i < ntasks; i++) {
+
+                tasks.add(new Callable<Map<IV<?, ?>, BigdataValue>>() {
+                    @Override
+                    public Map<IV<?, ?>, BigdataValue> call() throws Exception {
+                        final Collection<TermId<?>> termIVs = new LinkedList<TermId<?>>();
+                        final Collection<BlobIV<?>> blobIVs = new LinkedList<BlobIV<?>>();
+                        for (BigdataValue v : terms) {
+                            final IV<?, ?> iv = v.getIV();
+                            if (iv instanceof BlobIV<?>) {
+                                blobIVs.add((BlobIV<?>) iv);
+                            } else {
+                                termIVs.add((TermId<?>) iv);
+                            }
+                        }
+                        final ConcurrentHashMap<IV<?, ?>, BigdataValue> ret = new ConcurrentHashMap<IV<?, ?>, BigdataValue>();
+                        resolver.resolve(lex, termIVs, blobIVs, ret,
+                                10/* termsChunkSize */, 10/* blobsChunkSize */);
+                        return ret;
+                    }
+                });
+
+            }
+
+            for (Future<Map<IV<?, ?>, BigdataValue>> f : exec.invokeAll(tasks)) {
+
+                final Map<IV<?, ?>, BigdataValue> ret = f.get();
+
+                assertEquals(terms.length, ret.size());
+
+                for (BigdataValue v : terms)
+                    assertEquals(v, ret.get(v.getIV()));
+
+            }
+
+            assertEquals((long) ntasks * terms.length, resolver.getReadCount()
+                    + resolver.getSharedCount());
+
+            assertTrue(resolver.getBatchCount() <= resolver.getReadCount());
+
+        } finally {
+
+            exec.shutdownNow();
+
+            store.__tearDownUnitTest();
+
+        }
+
+    }
+
+    /**
+     * Unit test verifies that an interrupt of the thread running a batch (for
+     * example, because its query was cancelled) is not reported to another
+     * caller waiting on an {@link IV} in that batch.
+     * <p>
+     * A first batch is held open while two callers register overlapping
+     * requests: <code>A = {x}</code> and <code>B = {y, x}</code>. Whichever
+     * of them runs the next batch (which contains both <code>x</code> and
+     * <code>y</code>) is interrupted during the read. That caller must fail
+     * while the other caller must still see all of its values.
+     */
+    public void test_resolve_interruptedBatch() throws Exception {
+
+        final AbstractTripleStore store = getStore(getProperties());
+
+        final ExecutorService exec = Executors.newFixedThreadPool(3);
+
+        try {
+
+            final LexiconRelation lex = store.getLexiconRelation();
+
+            final BigdataValue[] terms = addTerms(lex);
+
+            final BigdataValue x = terms[0];
+            final BigdataValue y = terms[1];
+            final BigdataValue z = terms[2];
+
+            final CountDownLatch firstBatch = new CountDownLatch(1);
+            final CountDownLatch releaseFirstBatch = new CountDownLatch(1);
+            final CountDownLatch secondBatch = new CountDownLatch(1);
+            final AtomicInteger nbatches = new AtomicInteger();
+            final AtomicReference<Thread> holder = new AtomicReference<Thread>();
+
+            final CoalescingTermResolver resolver = new CoalescingTermResolver() {
+                @Override
+                void readTerms(final LexiconRelation lex,
+                        final Collection<TermId<?>> termIVs,
+                        final Collection<BlobIV<?>> blobIVs,
+                        final ConcurrentHashMap<IV<?, ?>, BigdataValue> results,
+                        final int termsChunkSize, final int blobsChunkSize) {
+                    try {
+                        switch (nbatches.incrementAndGet()) {
+                        case 1:
+                            // Hold the lock until A and B are queued.
+                            firstBatch.countDown();
+                            releaseFirstBatch.await();
+                            break;
+                        case 2:
+                            // Block until interrupted.
+                            holder.set(Thread.currentThread());
+                            secondBatch.countDown();
+                            new CountDownLatch(1).await();
+                            break;
+                        }
+                    } catch (InterruptedException ex) {
+                        throw new RuntimeException(ex);
+                    }
+                    super.readTerms(lex, termIVs, blobIVs, results,
+                            termsChunkSize, blobsChunkSize);
+                }
+            };
+
+            final Future<Map<IV<?, ?>, BigdataValue>> fz = exec
+                    .submit(newResolveTask(lex, resolver, z));
+
+            assertTrue(firstBatch.await(5, TimeUnit.SECONDS));
+
+            final Future<Map<IV<?, ?>, BigdataValue>> fa = exec
+                    .submit(newResolveTask(lex, resolver, x));
+
+            final Future<Map<IV<?, ?>, BigdataValue>> fb = exec
+                    .submit(newResolveTask(lex, resolver, y, x));
+
+            // Wait until the second of A and B has registered x.
+            final long begin = System.currentTimeMillis();
+            while (resolver.getSharedCount() == 0) {
+                if (System.currentTimeMillis() - begin > 5000)
+                    fail("Timeout");
+                Thread.sleep(10/* ms */);
+            }
+
+            releaseFirstBatch.countDown();
+
+            assertEquals(z, fz.get().get(z.getIV()));
+
+            assertTrue(secondBatch.await(5, TimeUnit.SECONDS));
+
+            holder.get().interrupt();
+
+            final List<Future<Map<IV<?, ?>, BigdataValue>>> futures = new LinkedList<Future<Map<IV<?, ?>, BigdataValue>>>();
+            futures.add(fa);
+            futures.add(fb);
+
+            int nfailed = 0;
+
+            for (Future<Map<IV<?, ?>, BigdataValue>> f : futures) {
+
+                final Map<IV<?, ?>, BigdataValue> ret;
+                try {
+                    ret = f.get(5, TimeUnit.SECONDS);
+                } catch (ExecutionException ex) {
+                    if (!isInnerCause(ex, InterruptedException.class))
+                        fail("Expecting interrupt: " + ex, ex);
+                    nfailed++;
+                    continue;
+                }
+
+                assertEquals(x, ret.get(x.getIV()));
+
+                if (f == fb)
+                    assertEquals(y, ret.get(y.getIV()));
+
+            }
+
+            // Only the interrupted caller fails.
+            assertEquals(1, nfailed);
+
+        } finally {
+
+            exec.shutdownNow();
+
+            store.__tearDownUnitTest();
+
+        }
+
+    }
+
+    /**
+     * Return a task which resolves the {@link IV}s of the given values, in
+     * the given order, through the resolver.
+     */
+    private static Callable<Map<IV<?, ?>, BigdataValue>> newResolveTask(
+            final LexiconRelation lex, final CoalescingTermResolver resolver,
+            final BigdataValue... values) {
+
+        return new Callable<Map<IV<?, ?>, BigdataValue>>() {
+            @Override
+            public Map<IV<?, ?>, BigdataValue> call() throws Exception {
+                final Collection<TermId<?>> termIVs = new LinkedList<TermId<?>>();
+                for (BigdataValue v : values)
+                    termIVs.add((TermId<?>) v.getIV());
+                final ConcurrentHashMap<IV<?, ?>, BigdataValue> ret = new ConcurrentHashMap<IV<?, ?>, BigdataValue>();
+                resolver.resolve(lex, termIVs, new LinkedList<BlobIV<?>>(),
+                        ret, 10/* termsChunkSize */, 10/* blobsChunkSize */);
+                return ret;
+            }
+        };
+
+    }
+
+    /**
+     * Unit test for {@link LexiconRelation#getTerms(Collection)} with
+     * {@link Options#COALESCE_TERM_RESOLUTION} enabled.
+     */
+    public void test_getTerms() {
+
+        final AbstractTripleStore store = getStore(getProperties());
+
+        try {
+
+            final LexiconRelation lex = store.getLexiconRelation();
+
+            final BigdataValue[] terms = addTerms(lex);
+
+            final Collection<IV<?, ?>> ivs = new LinkedList<IV<?, ?>>();
+
+            for (BigdataValue v : terms)
+                ivs.add(v.getIV());
+
+            final Map<IV<?, ?>, BigdataValue> ret = lex.getTerms(ivs);
+
+            assertEquals(terms.length, ret.size());
+
+            for (BigdataValue v : terms)
+                assertEquals(v, ret.get(v.getIV()));
+
+        } finally {
+
+            store.__tearDownUnitTest();
+
+        }
+
+    }
+
+}
@@ -0,0 +1,349 @@
+/**
+
+Copyright (C) SYSTAP, LLC DBA Blazegraph 2006-2016.  All rights reserved.
+
+Contact:
+     SYSTAP, LLC DBA Blazegraph
+     2501 Calvert ST NW #106
+     Washington, DC 20008
+     licenses@blazegraph.com
+
+This program is free software; you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation; version 2 of the License.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program; if not, write to the Free Software
+Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+/*
+ * Created on Oct 17, 2026
+ */
+
+package com.bigdata.rdf.lexicon;
+
+import java.util.UUID;
+
+import junit.framework.TestCase2;
+
+import com.bigdata.cache.ConcurrentWeakValueCacheWithBatchedUpdates;
+import com.bigdata.rdf.internal.IV;
+import com.bigdata.rdf.internal.VTE;
+import com.bigdata.rdf.internal.impl.TermId;
+import com.bigdata.rdf.model.BigdataURI;
+import com.bigdata.rdf.model.BigdataValue;
+import com.bigdata.rdf.model.BigdataValueFactory;
+import com.bigdata.rdf.model.BigdataValueFactoryImpl;
+
+/**
+ * Test suite for {@link OffHeapTermCache}.
+ */
+public class TestOffHeapTermCache extends TestCase2 {
+
+    public TestOffHeapTermCache() {
+    }
+
+    public TestOffHeapTermCache(final String name) {
+        super(name);
+    }
+
+    private BigdataValueFactory vf;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        vf = BigdataValueFactoryImpl.getInstance(getName() + UUID.randomUUID());
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        if (vf != null) {
+            vf.remove();
+            vf = null;
+        }
+        super.tearDown();
+    }
+
+    /**
+     * A first level cache which never retains anything, so every lookup is
+     * forced through to the second level.
+     */
+    private static class NoTermCache implements
+            ITermCache<IV<?, ?>, BigdataValue> {
+
+        @Override
+        public int size() {
+            return 0;
+        }
+
+        @Override
+        public BigdataValue get(final IV<?, ?> k) {
+            return null;
+        }
+
+        @Override
+        public BigdataValue putIfAbsent(final IV<?, ?> k, final BigdataValue v) {
+            return null;
+        }
+
+        @Override
+        public void clear() {
+        }
+
+    }
+
+    private BigdataURI newURI(final int i) {
+
+        final BigdataURI v = vf.createURI("http://www.bigdata.com/" + i);
+
+        v.setIV(new TermId<BigdataURI>(VTE.URI, i + 1));
+
+        return v;
+
+    }
+
+    private int sizeOf(final BigdataValue v) {
+
+        return vf.getValueSerializer().serialize(v).length;
+
+    }
+
+    /**
+     * Correct rejection tests for the constructor.
+     */
+    public void test_ctor_correctRejection() {
+
+        try {
+            new OffHeapTermCache(null, vf, 1000L);
+            fail("Expecting: " + IllegalArgumentException.class);
+        } catch (IllegalArgumentException ex) {
+            // ignore.
+        }
+
+        try {
+            new OffHeapTermCache(new NoTermCache(), null, 1000L);
+            fail("Expecting: " + IllegalArgumentException.class);
+        } catch (IllegalArgumentException ex) {
+            // ignore.
+        }
+
+        try {
+            new OffHeapTermCache(new NoTermCache(), vf, 0L);
+            fail("Expecting: " + IllegalArgumentException.class);
+        } catch (IllegalArgumentException ex) {
+            // ignore.
+        }
+
+    }
+
+    /**
+     * A value which is not in the first level is decoded from the second
+     * level and has its {@link IV} set.
+     */
+    public void test_get_secondLevel() {
+
+        final OffHeapTermCache cache = new OffHeapTermCache(new NoTermCache(),
+                vf, 10 * 1024L);
+
+        try {
+
+            final BigdataURI v = newURI(0);
+
+            final IV<?, ?> iv = v.getIV();
+
+            assertNull(cache.get(iv));
+            assertEquals(1L, cache.getMissCount());
+
+            assertNull(cache.putIfAbsent(iv, v));
+            assertEquals(1, cache.getOffHeapSize());
+            assertEquals(sizeOf(v), cache.getOffHeapBytes());
+
+            final BigdataValue actual = cache.get(iv);
+            assertNotNull(actual);
+            assertNotSame(v, actual);
+            assertEquals(v.stringValue(), actual.stringValue());
+            assertEquals(iv, actual.getIV());
+            assertTrue(actual.getValueFactory() == vf);
+            assertEquals(1L, cache.getHitCount());
+
+            // Not entered twice.
+            cache.putIfAbsent(iv, v);
+            assertEquals(1, cache.getOffHeapSize());
+
+        } finally {
+
+            cache.clear();
+
+        }
+
+    }
+
+    /**
+     * A second level hit is promoted into the first level.
+     */
+    public void test_get_promotes() {
+
+        final ITermCache<IV<?, ?>, BigdataValue> onHeap = new TermCache<IV<?, ?>, BigdataValue>(
+                new ConcurrentWeakValueCacheWithBatchedUpdates<IV<?, ?>, BigdataValue>(
+                        10/* queueCapacity */));
+
+        final OffHeapTermCache cache = new OffHeapTermCache(onHeap, vf,
+                10 * 1024L);
+
+        try {
+
+            final BigdataURI v = newURI(0);
+
+            final IV<?, ?> iv = v.getIV();
+
+            cache.putIfAbsent(iv, v);
+
+            // Drop the first level, leaving the second level intact.
+            onHeap.clear();
+            assertNull(onHeap.get(iv));
+
+            final BigdataValue actual = cache.get(iv);
+            assertNotNull(actual);
+            assertSame(actual, onHeap.get(iv));
+
+        } finally {
+
+            cache.clear();
+
+        }
+
+    }
+
+    /**
+     * The second level respects its byte budget and uses CLOCK eviction: an
+     * entry which has been accessed is given a second chance.
+     */
+    public void test_clockEviction() {
+
+        final int n = 4;
+
+        final BigdataURI[] a = new BigdataURI[n + 1];
+
+        for (int i = 0; i <= n; i++) {
+            a[i] = newURI(i);
+            assertEquals(sizeOf(a[0]), sizeOf(a[i]));
+        }
+
+        final long capacity = n * sizeOf(a[0]);
+
+        final OffHeapTermCache cache = new OffHeapTermCache(new NoTermCache(),
+                vf, capacity);
+
+        try {
+
+            for (int i = 0; i < n; i++)
+                cache.putIfAbsent(a[i].getIV(), a[i]);
+
+            assertEquals(n, cache.getOffHeapSize());
+            assertEquals(capacity, cache.getOffHeapBytes());
+            assertEquals(0L, cache.getEvictCount());
+
+            // Reference the first entry.
+            assertNotNull(cache.get(a[0].getIV()));
+
+            // Forces an eviction.
+            cache.putIfAbsent(a[n].getIV(), a[n]);
+
+            assertEquals(1L, cache.getEvictCount());
+            assertEquals(n, cache.getOffHeapSize());
+            assertTrue(cache.getOffHeapBytes() <= capacity);
+
+            // The referenced entry was given a second chance.
+            assertNotNull(cache.get(a[0].getIV()));
+
+            // The next entry was evicted.
+            assertNull(cache.get(a[1].getIV()));
+
+            assertNotNull(cache.get(a[n].getIV()));
+
+        } finally {
+
+            cache.clear();
+
+        }
+
+    }
+
+    /**
+     * {@link OffHeapTermCache#clear()} releases the second level.
+     */
+    public void test_clear() {
+
+        final OffHeapTermCache cache = new OffHeapTermCache(new NoTermCache(),
+                vf, 10 * 1024L);
+
+        for (int i = 0; i < 10; i++) {
+            final BigdataURI v = newURI(i);
+            cache.putIfAbsent(v.getIV(), v);
+        }
+
+        assertEquals(10, cache.getOffHeapSize());
+
+        cache.clear();
+
+        assertEquals(0, cache.getOffHeapSize());
+        assertEquals(0L, cache.getOffHeapBytes());
+        assertNull(cache.get(newURI(0).getIV()));
+
+        // Still usable after clear().
+        final BigdataURI v = newURI(0);
+        cache.putIfAbsent(v.getIV(), v);
+        assertNotNull(cache.get(v.getIV()));
+
+        cache.clear();
+
+    }
+
+    /**
+     * Two caches sharing a {@link OffHeapTermCache.SecondLevel} see the values
+     * entered by each other and are bounded by a single budget.
+     */
+    public void test_sharedSecondLevel() {
+
+        final OffHeapTermCache.SecondLevel level = new OffHeapTermCache.SecondLevel(
+                vf, 10 * 1024L);
+
+        final OffHeapTermCache cache1 = new OffHeapTermCache(
+                new NoTermCache(), level);
+
+        final OffHeapTermCache cache2 = new OffHeapTermCache(
+                new NoTermCache(), level);
+
+        try {
+
+            assertTrue(level == cache1.getSecondLevel());
+            assertTrue(level == cache2.getSecondLevel());
+
+            final BigdataURI v = newURI(0);
+
+            cache1.putIfAbsent(v.getIV(), v);
+
+            assertEquals(1, level.size());
+            assertEquals(1, cache2.getOffHeapSize());
+
+            final BigdataValue actual = cache2.get(v.getIV());
+            assertNotNull(actual);
+            assertEquals(v.stringValue(), actual.stringValue());
+
+        } finally {
+
+            level.clear();
+
+        }
+
+        assertEquals(0, cache1.getOffHeapSize());
+        assertEquals(0, cache2.getOffHeapSize());
+
+    }
+
+}
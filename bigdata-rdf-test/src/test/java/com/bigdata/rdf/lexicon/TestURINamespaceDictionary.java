@@ -0,0 +1,349 @@
+/**
+
+Copyright (C) SYSTAP, LLC DBA Blazegraph 2006-2016.  All rights reserved.
+
+Contact:
+     SYSTAP, LLC DBA Blazegraph
+     2501 Calvert ST NW #106
+     Washington, DC 20008
+     licenses@blazegraph.com
+
+This program is free software; you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation; version 2 of the License.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program; if not, write to the Free Software
+Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+/*
+ * Created on Oct 17, 2026
+ */
+
+package com.bigdata.rdf.lexicon;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Properties;
+
+import org.openrdf.model.URI;
+
+import com.bigdata.btree.keys.IKeyBuilder;
+import com.bigdata.rdf.axioms.NoAxioms;
+import com.bigdata.rdf.internal.IV;
+import com.bigdata.rdf.internal.IVUtility;
+import com.bigdata.rdf.internal.VTE;
+import com.bigdata.rdf.internal.impl.TermId;
+import com.bigdata.rdf.internal.impl.literal.FullyInlineTypedLiteralIV;
+import com.bigdata.rdf.internal.impl.literal.XSDNumericIV;
+import com.bigdata.rdf.internal.impl.uri.URIExtensionIV;
+import com.bigdata.rdf.model.BigdataURI;
+import com.bigdata.rdf.model.BigdataValue;
+import com.bigdata.rdf.model.BigdataValueFactory;
+import com.bigdata.rdf.store.AbstractTripleStore;
+import com.bigdata.rdf.store.AbstractTripleStore.Options;
+import com.bigdata.rdf.store.AbstractTripleStoreTestCase;
+import com.bigdata.rdf.vocab.NoVocabulary;
+
+/**
+ * Test suite for the namespace split encoding of {@link URI}s using the
+ * {@link URINamespaceDictionary}.
+ * 
+ * @see Options#URI_NAMESPACE_DICTIONARY
+ */
+public class TestURINamespaceDictionary extends AbstractTripleStoreTestCase {
+
+    private static final String NS = "http://www.bigdata.com/ns#";
+
+    public TestURINamespaceDictionary() {
+    }
+
+    public TestURINamespaceDictionary(final String name) {
+        super(name);
+    }
+
+    @Override
+    public Properties getProperties() {
+
+        final Properties properties = new Properties(super.getProperties());
+
+        properties.setProperty(Options.VOCABULARY_CLASS, NoVocabulary.class
+                .getName());
+
+        properties.setProperty(Options.AXIOMS_CLASS, NoAxioms.class.getName());
+
+        properties.setProperty(Options.TEXT_INDEX, "false");
+
+        properties.setProperty(Options.URI_NAMESPACE_DICTIONARY, "true");
+
+        properties.setProperty(
+                Options.URI_NAMESPACE_DICTIONARY_MAX_LOCAL_NAME_LENGTH, "8");
+
+        return properties;
+
+    }
+
+    public void test_isCanonicalInteger() {
+
+        assertTrue(URINamespaceDictionary.isCanonicalInteger("0"));
+        assertTrue(URINamespaceDictionary.isCanonicalInteger("7"));
+        assertTrue(URINamespaceDictionary.isCanonicalInteger("1234567890"));
+        assertTrue(URINamespaceDictionary
+                .isCanonicalInteger("999999999999999999"));
+
+        assertFalse(URINamespaceDictionary.isCanonicalInteger(""));
+        assertFalse(URINamespaceDictionary.isCanonicalInteger("01"));
+        assertFalse(URINamespaceDictionary.isCanonicalInteger("-1"));
+        assertFalse(URINamespaceDictionary.isCanonicalInteger("+1"));
+        assertFalse(URINamespaceDictionary.isCanonicalInteger("1a"));
+        assertFalse(URINamespaceDictionary
+                .isCanonicalInteger("1000000000000000000"));
+
+    }
+
+    /**
+     * Verify which {@link URI}s are split and how their localName is inlined,
+     * and that the {@link URI}s round trip through the lexicon.
+     */
+    public void test_addTerms() {
+
+        AbstractTripleStore store = getStore(getProperties());
+
+        try {
+
+            final BigdataValueFactory f = store.getValueFactory();
+
+            final BigdataURI a = f.createURI(NS + "a");
+            final BigdataURI num = f.createURI(NS + "12345");
+            final BigdataURI zero = f.createURI(NS + "0123");
+            final BigdataURI longName = f.createURI(NS + "aLongLocalName");
+            final BigdataURI other = f.createURI("http://www.bigdata.com/other/b");
+
+            final BigdataValue[] terms = new BigdataValue[] { a, num, zero,
+                    longName, other };
+
+            store.getLexiconRelation().addTerms(terms, terms.length,
+                    false/* readOnly */);
+
+            // The namespace was written onto the lexicon.
+            final BigdataURI ns = f.createURI(NS);
+            store.getLexiconRelation().addTerms(new BigdataValue[] { ns }, 1,
+                    true/* readOnly */);
+            assertTrue(ns.getIV() instanceof TermId);
+
+            // Short localName.
+            assertTrue(a.getIV() instanceof URIExtensionIV);
+            assertEquals(ns.getIV(), ((URIExtensionIV<?>) a.getIV())
+                    .getExtensionIV());
+            assertTrue(((URIExtensionIV<?>) a.getIV()).getLocalNameIV() instanceof FullyInlineTypedLiteralIV);
+
+            // Numeric localName.
+            assertTrue(num.getIV() instanceof URIExtensionIV);
+            assertTrue(((URIExtensionIV<?>) num.getIV()).getLocalNameIV() instanceof XSDNumericIV);
+
+            // Leading zero is not canonical, but the localName is short.
+            assertTrue(zero.getIV() instanceof URIExtensionIV);
+            assertTrue(((URIExtensionIV<?>) zero.getIV()).getLocalNameIV() instanceof FullyInlineTypedLiteralIV);
+
+            // The localName is too long, so the URI is stored.
+            assertTrue(longName.getIV() instanceof TermId);
+
+            // A different namespace.
+            assertTrue(other.getIV() instanceof URIExtensionIV);
+            assertFalse(ns.getIV().equals(
+                    ((URIExtensionIV<?>) other.getIV()).getExtensionIV()));
+
+            // Round trip through the lexicon.
+            final Map<IV<?, ?>, BigdataValue> map = store.getLexiconRelation()
+                    .getTerms(Arrays.asList(new IV<?, ?>[] { a.getIV(),
+                            num.getIV(), zero.getIV(), longName.getIV(),
+                            other.getIV() }));
+
+            for (BigdataValue v : terms) {
+                assertEquals(v, map.get(v.getIV()));
+            }
+
+            // Round trip through the key encoding (no cached namespace).
+            final IKeyBuilder keyBuilder = new BlobsIndexHelper()
+                    .newKeyBuilder();
+
+            for (BigdataValue v : terms) {
+
+                final byte[] key = IVUtility.encode(keyBuilder.reset(),
+                        v.getIV()).getKey();
+
+                final IV<?, ?> actual = IVUtility.decode(key);
+
+                assertEquals(v.getIV(), actual);
+
+                assertEquals(key.length, actual.byteLength());
+
+                assertEquals(v, store.getLexiconRelation().getTerm(actual));
+
+            }
+
+            if (store.isStable()) {
+
+                store.commit();
+
+                store = reopenStore(store);
+
+                // Resolve against the reopened store (cold dictionary).
+                final BigdataValueFactory f2 = store.getValueFactory();
+
+                final BigdataURI a2 = f2.createURI(NS + "a");
+                final BigdataURI num2 = f2.createURI(NS + "12345");
+
+                store.getLexiconRelation().addTerms(
+                        new BigdataValue[] { a2, num2 }, 2, true/* readOnly */);
+
+                assertEquals(a.getIV(), a2.getIV());
+                assertEquals(num.getIV(), num2.getIV());
+
+            }
+
+        } finally {
+
+            store.__tearDownUnitTest();
+
+        }
+
+    }
+
+    /**
+     * A {@link URI} whose namespace is not in the lexicon is not found by a
+     * read-only lookup and the namespace is not written.
+     */
+    public void test_readOnly_unknownNamespace() {
+
+        final AbstractTripleStore store = getStore(getProperties());
+
+        try {
+
+            final BigdataValueFactory f = store.getValueFactory();
+
+            final BigdataURI a = f.createURI(NS + "a");
+
+            store.getLexiconRelation().addTerms(new BigdataValue[] { a }, 1,
+                    true/* readOnly */);
+
+            assertNull(a.getIV());
+
+            final BigdataURI ns = f.createURI(NS);
+
+            store.getLexiconRelation().addTerms(new BigdataValue[] { ns }, 1,
+                    true/* readOnly */);
+
+            assertNull(ns.getIV());
+
+            // Now write the URI and verify that a new reference resolves.
+            store.getLexiconRelation().addTerms(new BigdataValue[] { a }, 1,
+                    false/* readOnly */);
+
+            assertNotNull(a.getIV());
+
+            final BigdataURI a2 = f.createURI(NS + "a");
+
+            store.getLexiconRelation().addTerms(new BigdataValue[] { a2 }, 1,
+                    true/* readOnly */);
+
+            assertEquals(a.getIV(), a2.getIV());
+
+        } finally {
+
+            store.__tearDownUnitTest();
+
+        }
+
+    }
+
+    /**
+     * The dictionary stops caching namespaces once it is full.
+     */
+    public void test_put_capacity() {
+
+        final URINamespaceDictionary d = new URINamespaceDictionary(8, 1/* capacity */);
+
+        final IV<?, ?> iv1 = new TermId<BigdataURI>(VTE.URI, 1L);
+
+        d.put(NS, iv1);
+
+        assertFalse(d.isFull());
+
+        d.put("http://www.bigdata.com/other/", iv1);
+
+        assertTrue(d.isFull());
+        assertEquals(1, d.size());
+        assertEquals(iv1, d.get(NS));
+        assertNull(d.get("http://www.bigdata.com/other/"));
+
+    }
+
+    /**
+     * {@link URI}s are still split once the dictionary is full, and are
+     * assigned the same {@link IV}s as when their namespace is cached.
+     */
+    public void test_addTerms_full() {
+
+        final Properties properties = getProperties();
+
+        properties.setProperty(Options.URI_NAMESPACE_DICTIONARY_CAPACITY, "1");
+
+        final AbstractTripleStore store = getStore(properties);
+
+        try {
+
+            final BigdataValueFactory f = store.getValueFactory();
+
+            final BigdataValue[] terms = new BigdataValue[] {
+                    f.createURI(NS + "a"),
+                    f.createURI("http://www.bigdata.com/other/b"),
+                    f.createURI("http://www.bigdata.com/third/c"),
+                    f.createURI("http://www.bigdata.com/third/d") };
+
+            store.getLexiconRelation().addTerms(terms, terms.length,
+                    false/* readOnly */);
+
+            for (BigdataValue v : terms) {
+                assertTrue(v.getIV() instanceof URIExtensionIV);
+            }
+
+            // Same namespace in the same batch.
+            assertEquals(((URIExtensionIV<?>) terms[2].getIV()).getExtensionIV(),
+                    ((URIExtensionIV<?>) terms[3].getIV()).getExtensionIV());
+
+            // Resolve again once the dictionary is full.
+            final BigdataValue[] terms2 = new BigdataValue[terms.length];
+            for (int i = 0; i < terms.length; i++) {
+                terms2[i] = f.createURI(terms[i].stringValue());
+            }
+
+            store.getLexiconRelation().addTerms(terms2, terms2.length,
+                    true/* readOnly */);
+
+            for (int i = 0; i < terms.length; i++) {
+                assertEquals(terms[i].getIV(), terms2[i].getIV());
+            }
+
+            // A namespace which is not in the lexicon is still not found.
+            final BigdataURI unknown = f.createURI("http://www.bigdata.com/none/e");
+
+            store.getLexiconRelation().addTerms(
+                    new BigdataValue[] { unknown }, 1, true/* readOnly */);
+
+            assertNull(unknown.getIV());
+
+        } finally {
+
+            store.__tearDownUnitTest();
+
+        }
+
+    }
+
+}
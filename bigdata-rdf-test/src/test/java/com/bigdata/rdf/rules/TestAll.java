@@ -27,6 +27,7 @@ import junit.framework.Test;
 import junit.framework.TestCase;
 import junit.framework.TestSuite;
 
+import com.bigdata.rdf.spo.TestCharacteristicSetStatistics;
 import com.bigdata.rdf.spo.TestSPORelation;
 import com.bigdata.relation.rule.TestProgram;
 import com.bigdata.relation.rule.TestRule;
@@ -73,6 +74,11 @@ public class TestAll extends TestCase {
          */
         suite.addTestSuite(TestSPORelation.class);
 
+        /*
+         * test suite for the characteristic set statistics.
+         */
+        suite.addTestSuite(TestCharacteristicSetStatistics.class);
+
         /*
          * test suite for modelsEqual().
          */
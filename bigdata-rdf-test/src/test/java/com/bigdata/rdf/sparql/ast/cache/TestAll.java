@@ -64,6 +64,10 @@ public class TestAll extends TestCase {
             suite.addTestSuite(TestCacheConnectionFactory.class);
 
         }
+
+        suite.addTestSuite(TestPlanCache.class);
+
+        suite.addTestSuite(TestResultCache.class);
                 
         /*
          * Note: Data-driven unit tests are used for the SPARQL named solution
@@ -0,0 +1,553 @@
+/**
+
+Copyright (C) SYSTAP, LLC DBA Blazegraph 2006-2016.  All rights reserved.
+
+Contact:
+     SYSTAP, LLC DBA Blazegraph
+     2501 Calvert ST NW #106
+     Washington, DC 20008
+     licenses@blazegraph.com
+
+This program is free software; you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation; version 2 of the License.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program; if not, write to the Free Software
+Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+/*
+ * Created on Oct 17, 2026
+ */
+
+package com.bigdata.rdf.sparql.ast.cache;
+
+import java.util.LinkedList;
+import java.util.List;
+
+import org.openrdf.query.QueryEvaluationException;
+import org.openrdf.query.algebra.evaluation.QueryBindingSet;
+
+import com.bigdata.bop.Constant;
+import com.bigdata.bop.IBindingSet;
+import com.bigdata.bop.IVariable;
+import com.bigdata.bop.Var;
+import com.bigdata.bop.bindingSet.ListBindingSet;
+import com.bigdata.rdf.internal.IV;
+import com.bigdata.rdf.model.BigdataLiteral;
+import com.bigdata.rdf.model.BigdataURI;
+import com.bigdata.rdf.model.BigdataValue;
+import com.bigdata.rdf.sparql.ast.ASTContainer;
+import com.bigdata.rdf.sparql.ast.AbstractASTEvaluationTestCase;
+import com.bigdata.rdf.sparql.ast.ConstantNode;
+import com.bigdata.rdf.sparql.ast.FilterNode;
+import com.bigdata.rdf.sparql.ast.FunctionNode;
+import com.bigdata.rdf.sparql.ast.JoinGroupNode;
+import com.bigdata.rdf.sparql.ast.ProjectionNode;
+import com.bigdata.rdf.sparql.ast.QueryNodeWithBindingSet;
+import com.bigdata.rdf.sparql.ast.QueryRoot;
+import com.bigdata.rdf.sparql.ast.QueryType;
+import com.bigdata.rdf.sparql.ast.StatementPatternNode;
+import com.bigdata.rdf.sparql.ast.TermNode;
+import com.bigdata.rdf.sparql.ast.VarNode;
+import com.bigdata.rdf.sparql.ast.eval.AST2BOpContext;
+import com.bigdata.rdf.sparql.ast.eval.ASTEvalHelper;
+
+import cutthecrap.utils.striterators.ICloseableIterator;
+
+/**
+ * Test suite for the {@link PlanCache}.
+ */
+public class TestPlanCache extends AbstractASTEvaluationTestCase {
+
+    public TestPlanCache() {
+    }
+
+    public TestPlanCache(final String name) {
+        super(name);
+    }
+
+    private static final String QUERY = "SELECT * { ?s <http://example/p> ?o }";
+
+    /**
+     * Unit test for the normalization of the query string.
+     */
+    public void test_normalize() {
+
+        assertEquals("SELECT * { ?s ?p ?o }",
+                PlanCache.normalize("  SELECT *\n{\t?s  ?p ?o\r\n}\n"));
+
+        // Comments are whitespace.
+        assertEquals("SELECT * { ?s ?p ?o }",
+                PlanCache.normalize("SELECT * # all\n{ ?s ?p ?o }"));
+
+        // IRIs are copied verbatim.
+        assertEquals("SELECT * { ?s <http://example/a#b> ?o }",
+                PlanCache.normalize("SELECT * { ?s <http://example/a#b> ?o }"));
+
+        // Literals are copied verbatim.
+        assertEquals("FILTER(?o = \"a  # b\")",
+                PlanCache.normalize("FILTER(?o   = \"a  # b\")"));
+        assertEquals("FILTER(?o = 'a \\'  b')",
+                PlanCache.normalize("FILTER(?o = 'a \\'  b')"));
+        assertEquals("FILTER(?o = \"\"\"a \"\"  b\"\"\")",
+                PlanCache.normalize("FILTER(?o = \"\"\"a \"\"  b\"\"\")"));
+
+        // A less-than is not an IRI.
+        assertEquals("FILTER(?o < 3 && ?x = \"a  b\")",
+                PlanCache.normalize("FILTER(?o <  3 && ?x = \"a  b\")"));
+
+        // Literals which differ only in whitespace remain distinct.
+        assertFalse(PlanCache.normalize("FILTER(?o = \"a b\")").equals(
+                PlanCache.normalize("FILTER(?o = \"a  b\")")));
+
+    }
+
+    /**
+     * Verify that a cached AST is found for the same query and that it is
+     * discarded once the #of statements has drifted too far.
+     */
+    public void test_getPut() {
+
+        final BigdataURI p = addData(10);
+
+        final PlanCache cache = new PlanCache(10/* capacity */, .1/* maxDrift */);
+
+        final AST2BOpContext ctx = newContext(p);
+
+        final String key = cache.getKey(ctx, newBindingSets());
+
+        assertNotNull(key);
+
+        assertNull(cache.get(key, ctx, newBindingSets()));
+
+        assertEquals(1L, cache.getMissCount());
+
+        final QueryRoot optimized = ctx.astContainer.getOriginalAST();
+
+        cache.put(key, ctx, newBindingSets(), optimized, newBindingSets(),
+                100/* lastId */);
+
+        assertEquals(1, cache.size());
+
+        // Same query in a new context.
+        final AST2BOpContext ctx2 = newContext(p);
+
+        assertEquals(key, cache.getKey(ctx2, newBindingSets()));
+
+        final QueryNodeWithBindingSet actual = cache.get(key, ctx2,
+                newBindingSets());
+
+        assertNotNull(actual);
+
+        assertEquals(1L, cache.getHitCount());
+
+        // A copy is returned.
+        assertNotSame(optimized, actual.getQueryNode());
+
+        assertSameAST(optimized, actual.getQueryNode());
+
+        // The bop identifiers assigned for the cached AST are skipped.
+        assertTrue(ctx2.nextId() > 100);
+
+        // Drift by more than 10%.
+        addData(2);
+
+        assertNull(cache.get(key, newContext(p), newBindingSets()));
+
+        assertEquals(0, cache.size());
+
+    }
+
+    /**
+     * Verify that the variables of a single exogenous solution are part of the
+     * key, but not their values, and that several exogenous solutions are
+     * part of the key.
+     */
+    public void test_bindingsInKey() {
+
+        final BigdataURI p = addData(1);
+
+        final BigdataURI x = valueFactory.createURI("http://example/x");
+
+        final BigdataURI y = valueFactory.createURI("http://example/y");
+
+        store.addTerms(new BigdataValue[] { x, y });
+
+        final PlanCache cache = new PlanCache(10/* capacity */, .1/* maxDrift */);
+
+        assertFalse(cache.getKey(newContext(p), newBindingSets()).equals(
+                cache.getKey(newContext(p), newBindingSets(x))));
+
+        assertEquals(cache.getKey(newContext(p), newBindingSets(x)),
+                cache.getKey(newContext(p), newBindingSets(y)));
+
+        final IBindingSet[] a = new IBindingSet[] { newBindingSets(x)[0],
+                newBindingSets(y)[0] };
+
+        final IBindingSet[] b = new IBindingSet[] { newBindingSets(x)[0],
+                newBindingSets(x)[0] };
+
+        assertFalse(cache.getKey(newContext(p), a).equals(
+                cache.getKey(newContext(p), b)));
+
+    }
+
+    /**
+     * Verify that the values of a single exogenous solution are substituted
+     * into the statement patterns and the exogenous solutions of a cached AST
+     * and that the evaluation options set by the query hints are restored.
+     */
+    @SuppressWarnings("rawtypes")
+    public void test_rebind() {
+
+        final BigdataURI p = addData(1);
+
+        final BigdataURI x = valueFactory.createURI("http://example/x");
+
+        final BigdataURI y = valueFactory.createURI("http://example/y");
+
+        store.addTerms(new BigdataValue[] { x, y });
+
+        final PlanCache cache = new PlanCache(10/* capacity */, .1/* maxDrift */);
+
+        final AST2BOpContext ctx = newContext(p);
+
+        final String key = cache.getKey(ctx, newBindingSets(x));
+
+        // As inlined by the ASTStaticBindingsOptimizer.
+        final QueryRoot optimized = newQuery(new ConstantNode(
+                new Constant<IV>(Var.var("s"), x.getIV())), p.getIV());
+
+        // As if set by a query hint.
+        ctx.nativeHashJoins = !ctx.nativeHashJoins;
+
+        cache.put(key, ctx, newBindingSets(x), optimized, newBindingSets(x),
+                ctx.nextId());
+
+        assertEquals(1, cache.size());
+
+        final AST2BOpContext ctx2 = newContext(p);
+
+        assertEquals(key, cache.getKey(ctx2, newBindingSets(y)));
+
+        final QueryNodeWithBindingSet actual = cache.get(key, ctx2,
+                newBindingSets(y));
+
+        assertNotNull(actual);
+
+        assertEquals(1L, cache.getHitCount());
+
+        assertSameAST(newQuery(new ConstantNode(new Constant<IV>(Var
+                .var("s"), y.getIV())), p.getIV()), actual.getQueryNode());
+
+        assertEquals(y.getIV(),
+                actual.getBindingSets()[0].get(Var.var("s")).get());
+
+        assertEquals(ctx.nativeHashJoins, ctx2.nativeHashJoins);
+
+        // The cached AST was not modified.
+        final QueryRoot again = (QueryRoot) cache.get(key, newContext(p),
+                newBindingSets(x)).getQueryNode();
+
+        assertEquals(x.getIV(), ((StatementPatternNode) again.getWhereClause()
+                .get(0)).s().getValueExpression().get());
+
+    }
+
+    /**
+     * Verify that an AST is not cached when the value of a single exogenous
+     * solution is used other than as the term of a statement pattern.
+     */
+    @SuppressWarnings("rawtypes")
+    public void test_notRebindable() {
+
+        final BigdataURI p = addData(1);
+
+        final BigdataURI x = valueFactory.createURI("http://example/x");
+
+        store.addTerms(new BigdataValue[] { x });
+
+        final PlanCache cache = new PlanCache(10/* capacity */, .1/* maxDrift */);
+
+        // Used in a FILTER.
+        {
+
+            final AST2BOpContext ctx = newContext(p);
+
+            final String key = cache.getKey(ctx, newBindingSets(x));
+
+            final QueryRoot optimized = newQuery(p.getIV());
+
+            optimized.getWhereClause().addChild(
+                    new FilterNode(FunctionNode.EQ(new VarNode("o"),
+                            new ConstantNode(new Constant<IV>(Var.var("s"), x
+                                    .getIV())))));
+
+            cache.put(key, ctx, newBindingSets(x), optimized,
+                    newBindingSets(x), ctx.nextId());
+
+            assertEquals(0, cache.size());
+
+        }
+
+        // Exogenous solution dropped by the optimizers.
+        {
+
+            final AST2BOpContext ctx = newContext(p);
+
+            final String key = cache.getKey(ctx, newBindingSets(x));
+
+            cache.put(key, ctx, newBindingSets(x), newQuery(p.getIV()),
+                    new IBindingSet[0], ctx.nextId());
+
+            assertEquals(0, cache.size());
+
+        }
+
+    }
+
+    /**
+     * Verify that a query evaluated with different values for an exogenous
+     * variable hits the cache and produces the solutions for those values.
+     */
+    @SuppressWarnings("rawtypes")
+    public void test_hitsAcrossBindings() throws QueryEvaluationException {
+
+        final BigdataURI p = addData(2);
+
+        final BigdataURI s0 = valueFactory.createURI("http://example/s0_0");
+        final BigdataURI s1 = valueFactory.createURI("http://example/s0_1");
+
+        final BigdataLiteral o0 = valueFactory.createLiteral(0);
+        final BigdataLiteral o1 = valueFactory.createLiteral(1);
+
+        store.addTerms(new BigdataValue[] { s0, s1, o0, o1 });
+
+        final String oldCapacity = System.setProperty(
+                PlanCache.Options.CAPACITY, "10");
+
+        try {
+
+            final PlanCache cache = PlanCache
+                    .getPlanCache(newContext(p).queryEngine);
+
+            final long hits = cache.getHitCount();
+
+            assertEquals(o0.getIV(), evaluate(p, s0));
+
+            assertEquals(hits, cache.getHitCount());
+
+            assertEquals(o1.getIV(), evaluate(p, s1));
+
+            assertEquals(hits + 1, cache.getHitCount());
+
+            assertEquals(o0.getIV(), evaluate(p, s0));
+
+            assertEquals(hits + 2, cache.getHitCount());
+
+        } finally {
+
+            if (oldCapacity == null)
+                System.clearProperty(PlanCache.Options.CAPACITY);
+            else
+                System.setProperty(PlanCache.Options.CAPACITY, oldCapacity);
+
+        }
+
+    }
+
+    /**
+     * Evaluate {@link #QUERY} with <code>?s</code> bound to the given subject
+     * and return the binding for <code>?o</code> of its single solution.
+     */
+    @SuppressWarnings("rawtypes")
+    private IV evaluate(final BigdataURI p, final BigdataURI s)
+            throws QueryEvaluationException {
+
+        final QueryBindingSet bset = new QueryBindingSet();
+
+        bset.addBinding("s", s);
+
+        final List<IBindingSet> solutions = new LinkedList<IBindingSet>();
+
+        final ICloseableIterator<IBindingSet[]> itr = ASTEvalHelper
+                .evaluateTupleQuery2(store, newContext(p).astContainer, bset,
+                        false/* materialize */);
+
+        try {
+
+            while (itr.hasNext()) {
+
+                for (IBindingSet solution : itr.next()) {
+
+                    solutions.add(solution);
+
+                }
+
+            }
+
+        } finally {
+
+            itr.close();
+
+        }
+
+        assertEquals(1, solutions.size());
+
+        assertEquals(s.getIV(), solutions.get(0).get(Var.var("s")).get());
+
+        return (IV) solutions.get(0).get(Var.var("o")).get();
+
+    }
+
+    /**
+     * Verify that a query without a query string, a query mentioning a Value
+     * which is not in the lexicon, and a plan which depends on the data are
+     * not cached.
+     */
+    public void test_notCached() {
+
+        final BigdataURI p = addData(1);
+
+        final PlanCache cache = new PlanCache(10/* capacity */, .1/* maxDrift */);
+
+        // No query string.
+        {
+
+            final AST2BOpContext ctx = newContext(p);
+
+            ctx.astContainer.setQueryString(null);
+
+            assertNull(cache.getKey(ctx, newBindingSets()));
+
+        }
+
+        // Value not in the lexicon.
+        {
+
+            final AST2BOpContext ctx = new AST2BOpContext(new ASTContainer(
+                    newQuery(makeIV(valueFactory
+                            .createURI("http://example/unknown")))), store);
+
+            ctx.astContainer.setQueryString(QUERY);
+
+            assertNull(cache.getKey(ctx, newBindingSets()));
+
+        }
+
+        // Data dependent plan.
+        {
+
+            final AST2BOpContext ctx = newContext(p);
+
+            final String key = cache.getKey(ctx, newBindingSets());
+
+            ctx.setDataDependentPlan();
+
+            cache.put(key, ctx, newBindingSets(),
+                    ctx.astContainer.getOriginalAST(), newBindingSets(),
+                    ctx.nextId());
+
+            assertEquals(0, cache.size());
+
+        }
+
+    }
+
+    /**
+     * Add <i>n</i> statements using <code>http://example/p</code>.
+     */
+    private BigdataURI addData(final int n) {
+
+        final BigdataURI p = valueFactory.createURI("http://example/p");
+
+        final BigdataURI g = valueFactory.createURI("http://example/g");
+
+        final long before = store.getStatementCount();
+
+        for (int i = 0; i < n; i++) {
+
+            store.addStatement(
+                    valueFactory.createURI("http://example/s" + before + "_" + i),
+                    p, valueFactory.createLiteral(i), g);
+
+        }
+
+        store.commit();
+
+        store.addTerms(new BigdataValue[] { p });
+
+        return p;
+
+    }
+
+    private AST2BOpContext newContext(final BigdataURI p) {
+
+        final ASTContainer astContainer = new ASTContainer(newQuery(p.getIV()));
+
+        astContainer.setQueryString(QUERY);
+
+        return new AST2BOpContext(astContainer, store);
+
+    }
+
+    private static IBindingSet[] newBindingSets() {
+
+        return new IBindingSet[] { new ListBindingSet() };
+
+    }
+
+    /**
+     * A single solution binding <code>?s</code>.
+     */
+    @SuppressWarnings({ "rawtypes", "unchecked" })
+    private static IBindingSet[] newBindingSets(final BigdataValue s) {
+
+        final IBindingSet bset = new ListBindingSet();
+
+        bset.set((IVariable) Var.var("s"), new Constant<IV>(s.getIV()));
+
+        return new IBindingSet[] { bset };
+
+    }
+
+    /**
+     * <code>SELECT * { ?s p ?o }</code>
+     */
+    @SuppressWarnings("rawtypes")
+    private static QueryRoot newQuery(final IV p) {
+
+        return newQuery(new VarNode("s"), p);
+
+    }
+
+    /**
+     * <code>SELECT * { s p ?o }</code>
+     */
+    @SuppressWarnings("rawtypes")
+    private static QueryRoot newQuery(final TermNode s, final IV p) {
+
+        final QueryRoot query = new QueryRoot(QueryType.SELECT);
+
+        final ProjectionNode projection = new ProjectionNode();
+        projection.addProjectionVar(new VarNode("*"));
+
+        final JoinGroupNode where = new JoinGroupNode();
+
+        where.addChild(new StatementPatternNode(s, new ConstantNode(p),
+                new VarNode("o")));
+
+        query.setProjection(projection);
+        query.setWhereClause(where);
+
+        return query;
+
+    }
+
+}
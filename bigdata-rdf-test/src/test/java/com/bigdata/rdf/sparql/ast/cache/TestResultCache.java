@@ -0,0 +1,381 @@
+/**
+
+Copyright (C) SYSTAP, LLC DBA Blazegraph 2006-2016.  All rights reserved.
+
+Contact:
+     SYSTAP, LLC DBA Blazegraph
+     2501 Calvert ST NW #106
+     Washington, DC 20008
+     licenses@blazegraph.com
+
+This program is free software; you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation; version 2 of the License.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program; if not, write to the Free Software
+Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+/*
+ * Created on Oct 17, 2026
+ */
+
+package com.bigdata.rdf.sparql.ast.cache;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.openrdf.query.BindingSet;
+import org.openrdf.query.QueryEvaluationException;
+import org.openrdf.query.algebra.evaluation.QueryBindingSet;
+
+import com.bigdata.bop.IBindingSet;
+import com.bigdata.rdf.changesets.ChangeAction;
+import com.bigdata.rdf.changesets.ChangeRecord;
+import com.bigdata.rdf.changesets.IChangeLog;
+import com.bigdata.rdf.internal.IV;
+import com.bigdata.rdf.model.BigdataURI;
+import com.bigdata.rdf.model.BigdataValue;
+import com.bigdata.rdf.model.StatementEnum;
+import com.bigdata.rdf.sparql.ast.ASTContainer;
+import com.bigdata.rdf.sparql.ast.AbstractASTEvaluationTestCase;
+import com.bigdata.rdf.sparql.ast.AssignmentNode;
+import com.bigdata.rdf.sparql.ast.ConstantNode;
+import com.bigdata.rdf.sparql.ast.FunctionNode;
+import com.bigdata.rdf.sparql.ast.FunctionRegistry;
+import com.bigdata.rdf.sparql.ast.JoinGroupNode;
+import com.bigdata.rdf.sparql.ast.NamedSubqueryInclude;
+import com.bigdata.rdf.sparql.ast.ProjectionNode;
+import com.bigdata.rdf.sparql.ast.QueryRoot;
+import com.bigdata.rdf.sparql.ast.QueryType;
+import com.bigdata.rdf.sparql.ast.StatementPatternNode;
+import com.bigdata.rdf.sparql.ast.TermNode;
+import com.bigdata.rdf.sparql.ast.ValueExpressionNode;
+import com.bigdata.rdf.sparql.ast.VarNode;
+import com.bigdata.rdf.spo.SPO;
+import com.bigdata.rdf.store.AbstractTripleStore;
+
+import info.aduna.iteration.CloseableIteration;
+import info.aduna.iteration.CloseableIteratorIteration;
+
+/**
+ * Test suite for the {@link ResultCache}.
+ */
+public class TestResultCache extends AbstractASTEvaluationTestCase {
+
+    public TestResultCache() {
+    }
+
+    public TestResultCache(final String name) {
+        super(name);
+    }
+
+    private static final String QUERY = "SELECT * { ?s <http://example/p> ?o }";
+
+    private static final List<String> PROJECTION = Arrays.asList("s");
+
+    /**
+     * Verify that queries which depend on more than the commit point are not
+     * cached.
+     */
+    public void test_isCacheable() {
+
+        final BigdataURI p = addData(1, "p");
+
+        assertTrue(ResultCache.isCacheable(newQuery(new ConstantNode(p
+                .getIV()))));
+
+        // Non-deterministic function.
+        {
+
+            final QueryRoot query = newQuery(new ConstantNode(p.getIV()));
+
+            query.getWhereClause().addChild(
+                    new AssignmentNode(new VarNode("now"), new FunctionNode(
+                            FunctionRegistry.NOW, null/* scalarValues */,
+                            new ValueExpressionNode[] {})));
+
+            assertFalse(ResultCache.isCacheable(query));
+
+        }
+
+        // Named solution set.
+        {
+
+            final QueryRoot query = newQuery(new ConstantNode(p.getIV()));
+
+            query.getWhereClause().addChild(new NamedSubqueryInclude("x"));
+
+            assertFalse(ResultCache.isCacheable(query));
+
+        }
+
+    }
+
+    /**
+     * Verify the predicates read by a query.
+     */
+    public void test_getPredicates() {
+
+        final BigdataURI p = addData(1, "p");
+
+        assertEquals(Collections.singleton(p.getIV()),
+                ResultCache.getPredicates(newQuery(new ConstantNode(p
+                        .getIV()))));
+
+        // Any predicate.
+        assertNull(ResultCache.getPredicates(newQuery(new VarNode("p"))));
+
+        // Not in the lexicon.
+        assertNull(ResultCache.getPredicates(newQuery(new ConstantNode(
+                makeIV(valueFactory.createURI("http://example/unknown"))))));
+
+    }
+
+    /**
+     * Verify that the solutions are only cached once drained, are only
+     * visible to a view of the same commit point, and are discarded once a
+     * newer commit point is observed.
+     */
+    public void test_commitTime() throws QueryEvaluationException {
+
+        final BigdataURI p = addData(1, "p");
+
+        final AbstractTripleStore view1 = getView();
+
+        addData(1, "p");
+
+        final AbstractTripleStore view2 = getView();
+
+        final ResultCache cache = new ResultCache(
+                1024 * 1024/* capacity */, 1024 * 1024/* maxEntrySize */,
+                false/* trackPredicates */);
+
+        // Not a view of a commit point.
+        assertNull(cache.getKey(store, newContainer(p), null/* bindings */,
+                null/* dataset */));
+
+        final String key1 = cache.getKey(view1, newContainer(p),
+                null/* bindings */, null/* dataset */);
+
+        final String key2 = cache.getKey(view2, newContainer(p),
+                null/* bindings */, null/* dataset */);
+
+        assertNotNull(key1);
+
+        assertFalse(key1.equals(key2));
+
+        assertNull(cache.get(key1, view1));
+
+        // Not cached unless drained.
+        cache.record(key1, view1, newQuery(new ConstantNode(p.getIV())),
+                PROJECTION, newSolutions(p)).close();
+
+        assertEquals(0, cache.size());
+
+        drain(cache.record(key1, view1, newQuery(new ConstantNode(p.getIV())),
+                PROJECTION, newSolutions(p)));
+
+        assertEquals(1, cache.size());
+
+        final ResultCache.Result result = cache.get(key1, view1);
+
+        assertNotNull(result);
+
+        assertEquals(PROJECTION, result.projection);
+
+        assertTrue(result.solutions.hasNext());
+
+        final IBindingSet bset = result.solutions.next();
+
+        final IV<?, ?> iv = (IV<?, ?>) bset.get(new VarNode("s")
+                .getValueExpression()).get();
+
+        assertEquals(p.getIV(), iv);
+
+        // The cached value is decoded with the IV.
+        assertEquals(p, iv.getValue());
+
+        assertFalse(result.solutions.hasNext());
+
+        // A newer commit point discards the older solutions.
+        drain(cache.record(key2, view2, newQuery(new ConstantNode(p.getIV())),
+                PROJECTION, newSolutions(p)));
+
+        assertEquals(1, cache.size());
+
+        assertNull(cache.get(key1, view1));
+
+        assertNotNull(cache.get(key2, view2));
+
+    }
+
+    /**
+     * Verify that an entry survives commits which do not change the predicates
+     * read by the query when tracking predicates.
+     */
+    public void test_trackPredicates() throws QueryEvaluationException {
+
+        final BigdataURI p = addData(1, "p");
+
+        final BigdataURI q = addData(1, "q");
+
+        final AbstractTripleStore view = getView();
+
+        final ResultCache cache = new ResultCache(
+                1024 * 1024/* capacity */, 1024 * 1024/* maxEntrySize */,
+                true/* trackPredicates */);
+
+        final String key = cache.getKey(view, newContainer(p),
+                null/* bindings */, null/* dataset */);
+
+        drain(cache.record(key, view, newQuery(new ConstantNode(p.getIV())),
+                PROJECTION, newSolutions(p)));
+
+        assertEquals(1, cache.size());
+
+        final IChangeLog changeLog = cache.newChangeLog(store.getNamespace());
+
+        // Change some other predicate.
+        commit(changeLog, q);
+
+        assertNotNull(cache.get(key, view));
+
+        // Change the predicate read by the query.
+        commit(changeLog, p);
+
+        assertNull(cache.get(key, view));
+
+        assertEquals(0, cache.size());
+
+    }
+
+    /**
+     * Notify the change log of a commit which adds a statement using the given
+     * predicate.
+     */
+    private void commit(final IChangeLog changeLog, final BigdataURI p) {
+
+        final long commitTime = store.getIndexManager().getLastCommitTime() + 1;
+
+        changeLog.transactionBegin();
+
+        changeLog.changeEvent(new ChangeRecord(new SPO(p.getIV(), p.getIV(), p
+                .getIV(), StatementEnum.Explicit), ChangeAction.INSERTED));
+
+        changeLog.transactionPrepare();
+
+        changeLog.transactionCommited(commitTime);
+
+    }
+
+    private static void drain(
+            final CloseableIteration<BindingSet, QueryEvaluationException> itr)
+            throws QueryEvaluationException {
+
+        try {
+            while (itr.hasNext()) {
+                itr.next();
+            }
+        } finally {
+            itr.close();
+        }
+
+    }
+
+    /**
+     * A single solution binding <code>?s</code>.
+     */
+    private static CloseableIteration<BindingSet, QueryEvaluationException> newSolutions(
+            final BigdataValue s) {
+
+        final QueryBindingSet bset = new QueryBindingSet();
+
+        bset.addBinding("s", s);
+
+        return new CloseableIteratorIteration<BindingSet, QueryEvaluationException>(
+                Collections.<BindingSet> singletonList(bset).iterator());
+
+    }
+
+    /**
+     * Return a read-only view of the most recent commit point.
+     */
+    private AbstractTripleStore getView() {
+
+        return (AbstractTripleStore) store
+                .getIndexManager()
+                .getResourceLocator()
+                .locate(store.getNamespace(),
+                        store.getIndexManager().getLastCommitTime());
+
+    }
+
+    /**
+     * Add <i>n</i> statements using <code>http://example/</code><i>name</i>
+     * and commit.
+     */
+    private BigdataURI addData(final int n, final String name) {
+
+        final BigdataURI p = valueFactory.createURI("http://example/" + name);
+
+        final BigdataURI g = valueFactory.createURI("http://example/g");
+
+        final long before = store.getStatementCount();
+
+        for (int i = 0; i < n; i++) {
+
+            store.addStatement(
+                    valueFactory.createURI("http://example/s" + before + "_" + i),
+                    p, valueFactory.createLiteral(i), g);
+
+        }
+
+        store.commit();
+
+        store.addTerms(new BigdataValue[] { p });
+
+        return p;
+
+    }
+
+    private static ASTContainer newContainer(final BigdataURI p) {
+
+        final ASTContainer astContainer = new ASTContainer(
+                newQuery(new ConstantNode(p.getIV())));
+
+        astContainer.setQueryString(QUERY);
+
+        return astContainer;
+
+    }
+
+    /**
+     * <code>SELECT * { ?s p ?o }</code>
+     */
+    private static QueryRoot newQuery(final TermNode p) {
+
+        final QueryRoot query = new QueryRoot(QueryType.SELECT);
+
+        final ProjectionNode projection = new ProjectionNode();
+        projection.addProjectionVar(new VarNode("*"));
+
+        final JoinGroupNode where = new JoinGroupNode();
+
+        where.addChild(new StatementPatternNode(new VarNode("s"), p,
+                new VarNode("o")));
+
+        query.setProjection(projection);
+        query.setWhereClause(where);
+
+        return query;
+
+    }
+
+}
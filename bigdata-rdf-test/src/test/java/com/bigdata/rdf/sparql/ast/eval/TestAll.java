@@ -117,6 +117,12 @@ public class TestAll extends TestCase {
 
         // Test suite for a merge join pattern
         suite.addTestSuite(TestMergeJoin.class);
+
+        // Test suite for the worst-case optimal (leapfrog trie) join.
+        suite.addTestSuite(TestWorstCaseOptimalJoin.class);
+
+        // Test suite for the index merge join.
+        suite.addTestSuite(TestIndexMergeJoin.class);
         
         // Test suite for explain hint annotationss
         suite.addTestSuite(TestExplainHints.class);
@@ -124,6 +130,9 @@ public class TestAll extends TestCase {
         // Test suite for aggregation queries.
         suite.addTestSuite(TestAggregationQuery.class);
 
+        // Test suite for late materialization of projected assignments.
+        suite.addTestSuite(TestLateMaterialization.class);
+
         // Test suite for FILTER evaluation.
         suite.addTestSuite(TestFilters.class);
 
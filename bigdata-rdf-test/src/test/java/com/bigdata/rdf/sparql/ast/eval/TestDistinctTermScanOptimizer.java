@@ -29,6 +29,7 @@ import junit.framework.Test;
 import junit.framework.TestSuite;
 
 import com.bigdata.bop.BOpUtility;
+import com.bigdata.bop.join.DistinctTermCountOp;
 import com.bigdata.bop.join.DistinctTermScanOp;
 import com.bigdata.rdf.sparql.ast.NamedSubqueryInclude;
 import com.bigdata.rdf.sparql.ast.optimizers.ASTDistinctTermScanOptimizer;
@@ -37,7 +38,7 @@ import com.bigdata.rdf.store.AbstractTripleStore;
 
 /**
  * SPARQL level test suite for the {@link ASTDistinctTermScanOptimizer} and its
- * physical operator {@link DistinctTermScanOp}.
+ * physical operators {@link DistinctTermScanOp} and {@link DistinctTermCountOp}.
  * 
  * @see <a href="http://trac.blazegraph.com/ticket/1035" > DISTINCT PREDICATEs
  *      query is slow </a>
@@ -219,6 +220,150 @@ public class TestDistinctTermScanOptimizer extends
 
 		}
 
+		/**
+		 * <pre>
+		 * SELECT (COUNT(DISTINCT ?s) AS ?n) { ?s ?p ?o . }
+		 * </pre>
+		 */
+		public void test_distinctTermCount_triples_01() throws Exception {
+
+			final TestHelper h = new TestHelper("distinctTermCount_triples_01", // testURI,
+					"distinctTermCount_triples_01.rq",// queryFileURL
+					"distinctTermScan_triples_01.ttl",// dataFileURL
+					"distinctTermCount_triples_01.srx"// resultFileURL
+			);
+			
+			h.runTest();
+
+			// Verify that the DistinctTermCountOp was used in the query plan.
+			assertEquals(
+					1,
+					BOpUtility.toList(h.getASTContainer().getQueryPlan(),
+							DistinctTermCountOp.class).size());
+
+		}
+
+		/**
+		 * <pre>
+		 * SELECT (COUNT(DISTINCT ?p) AS ?n) { ?s ?p ?o . }
+		 * </pre>
+		 */
+		public void test_distinctTermCount_triples_02() throws Exception {
+
+			final TestHelper h = new TestHelper("distinctTermCount_triples_02", // testURI,
+					"distinctTermCount_triples_02.rq",// queryFileURL
+					"distinctTermScan_triples_01.ttl",// dataFileURL
+					"distinctTermCount_triples_02.srx"// resultFileURL
+			);
+			
+			h.runTest();
+
+			// Verify that the DistinctTermCountOp was used in the query plan.
+			assertEquals(
+					1,
+					BOpUtility.toList(h.getASTContainer().getQueryPlan(),
+							DistinctTermCountOp.class).size());
+
+		}
+
+		/**
+		 * <pre>
+		 * SELECT (COUNT(DISTINCT ?o) AS ?n) { ?s ?p ?o . }
+		 * </pre>
+		 */
+		public void test_distinctTermCount_triples_03() throws Exception {
+
+			final TestHelper h = new TestHelper("distinctTermCount_triples_03", // testURI,
+					"distinctTermCount_triples_03.rq",// queryFileURL
+					"distinctTermScan_triples_01.ttl",// dataFileURL
+					"distinctTermCount_triples_03.srx"// resultFileURL
+			);
+			
+			h.runTest();
+
+			// Verify that the DistinctTermCountOp was used in the query plan.
+			assertEquals(
+					1,
+					BOpUtility.toList(h.getASTContainer().getQueryPlan(),
+							DistinctTermCountOp.class).size());
+
+		}
+
+		/**
+		 * COUNT(DISTINCT) with a bound predicate. The index is POS.
+		 * 
+		 * <pre>
+		 * SELECT (COUNT(DISTINCT ?o) AS ?n) { ?s &lt;http://bigdata.com#p1&gt; ?o . }
+		 * </pre>
+		 */
+		public void test_distinctTermCount_triples_04() throws Exception {
+
+			final TestHelper h = new TestHelper("distinctTermCount_triples_04", // testURI,
+					"distinctTermCount_triples_04.rq",// queryFileURL
+					"distinctTermScan_triples_01.ttl",// dataFileURL
+					"distinctTermCount_triples_04.srx"// resultFileURL
+			);
+			
+			h.runTest();
+
+			// Verify that the DistinctTermCountOp was used in the query plan.
+			assertEquals(
+					1,
+					BOpUtility.toList(h.getASTContainer().getQueryPlan(),
+							DistinctTermCountOp.class).size());
+
+		}
+
+		/**
+		 * COUNT(DISTINCT) with a bound subject. The index is SPO.
+		 * 
+		 * <pre>
+		 * SELECT (COUNT(DISTINCT ?p) AS ?n) { &lt;http://bigdata.com#s1&gt; ?p ?o . }
+		 * </pre>
+		 */
+		public void test_distinctTermCount_triples_05() throws Exception {
+
+			final TestHelper h = new TestHelper("distinctTermCount_triples_05", // testURI,
+					"distinctTermCount_triples_05.rq",// queryFileURL
+					"distinctTermScan_triples_01.ttl",// dataFileURL
+					"distinctTermCount_triples_05.srx"// resultFileURL
+			);
+			
+			h.runTest();
+
+			// Verify that the DistinctTermCountOp was used in the query plan.
+			assertEquals(
+					1,
+					BOpUtility.toList(h.getASTContainer().getQueryPlan(),
+							DistinctTermCountOp.class).size());
+
+		}
+
+		/**
+		 * COUNT(DISTINCT) when nothing matches. The count is zero.
+		 * 
+		 * <pre>
+		 * SELECT (COUNT(DISTINCT ?o) AS ?n) { ?s &lt;http://bigdata.com#s2&gt; ?o . }
+		 * </pre>
+		 */
+		public void test_distinctTermCount_triples_06() throws Exception {
+
+			final TestHelper h = new TestHelper("distinctTermCount_triples_06", // testURI,
+					"distinctTermCount_triples_06.rq",// queryFileURL
+					"distinctTermScan_triples_01.ttl",// dataFileURL
+					"distinctTermCount_triples_06.srx"// resultFileURL
+			);
+			
+			h.runTest();
+
+			// Verify that the DistinctTermCountOp was used in the query plan.
+			assertEquals(
+					1,
+					BOpUtility.toList(h.getASTContainer().getQueryPlan(),
+							DistinctTermCountOp.class).size());
+
+		}
+
 	}
 
 	/**
@@ -402,5 +547,158 @@ public class TestDistinctTermScanOptimizer extends
 					BOpUtility.toList(h.getASTContainer().getQueryPlan(),
 							DistinctTermScanOp.class).size());
 		}
+
+		/**
+		 * Default graph query on all named graphs. The index is Pxxx.
+		 * 
+		 * <pre>
+		 * SELECT (COUNT(DISTINCT ?p) AS ?n) { ?s ?p ?o . }
+		 * </pre>
+		 */
+		public void test_distinctTermCount_quads_01() throws Exception {
+
+			final TestHelper h = new TestHelper("distinctTermCount_quads_01", // testURI,
+					"distinctTermCount_quads_01.rq",// queryFileURL
+					"distinctTermScan_quads_01.trig",// dataFileURL
+					"distinctTermCount_quads_01.srx"// resultFileURL
+			);
+			
+			h.runTest();
+
+			// Verify that the DistinctTermCountOp was used in the query plan.
+			assertEquals(
+					1,
+					BOpUtility.toList(h.getASTContainer().getQueryPlan(),
+							DistinctTermCountOp.class).size());
+
+		}
+
+		/**
+		 * Named graph query on all named graphs. The index is Sxxx.
+		 * 
+		 * <pre>
+		 * SELECT (COUNT(DISTINCT ?s) AS ?n) { GRAPH ?g { ?s ?p ?o . } }
+		 * </pre>
+		 */
+		public void test_distinctTermCount_quads_02() throws Exception {
+
+			final TestHelper h = new TestHelper("distinctTermCount_quads_02", // testURI,
+					"distinctTermCount_quads_02.rq",// queryFileURL
+					"distinctTermScan_quads_01.trig",// dataFileURL
+					"distinctTermCount_quads_02.srx"// resultFileURL
+			);
+			
+			h.runTest();
+
+			// Verify that the DistinctTermCountOp was used in the query plan.
+			assertEquals(
+					1,
+					BOpUtility.toList(h.getASTContainer().getQueryPlan(),
+							DistinctTermCountOp.class).size());
+
+		}
+
+		/**
+		 * Named graph query counting the named graphs. The index is CSPO.
+		 * 
+		 * <pre>
+		 * SELECT (COUNT(DISTINCT ?g) AS ?n) { GRAPH ?g { ?s ?p ?o . } }
+		 * </pre>
+		 */
+		public void test_distinctTermCount_quads_03() throws Exception {
+
+			final TestHelper h = new TestHelper("distinctTermCount_quads_03", // testURI,
+					"distinctTermCount_quads_03.rq",// queryFileURL
+					"distinctTermScan_quads_01.trig",// dataFileURL
+					"distinctTermCount_quads_03.srx"// resultFileURL
+			);
+			
+			h.runTest();
+
+			// Verify that the DistinctTermCountOp was used in the query plan.
+			assertEquals(
+					1,
+					BOpUtility.toList(h.getASTContainer().getQueryPlan(),
+							DistinctTermCountOp.class).size());
+
+		}
+
+		/**
+		 * Named graph query on a bound named graph. The index is CSPO.
+		 * 
+		 * <pre>
+		 * SELECT (COUNT(DISTINCT ?s) AS ?n) { GRAPH &lt;http://bigdata.com#g2&gt; { ?s ?p ?o . } }
+		 * </pre>
+		 */
+		public void test_distinctTermCount_quads_04() throws Exception {
+
+			final TestHelper h = new TestHelper("distinctTermCount_quads_04", // testURI,
+					"distinctTermCount_quads_04.rq",// queryFileURL
+					"distinctTermScan_quads_01.trig",// dataFileURL
+					"distinctTermCount_quads_04.srx"// resultFileURL
+			);
+			
+			h.runTest();
+
+			// Verify that the DistinctTermCountOp was used in the query plan.
+			assertEquals(
+					1,
+					BOpUtility.toList(h.getASTContainer().getQueryPlan(),
+							DistinctTermCountOp.class).size());
+
+		}
+
+		/**
+		 * Named graph query on a bound named graph and subject when nothing
+		 * matches. The count is zero.
+		 * 
+		 * <pre>
+		 * SELECT (COUNT(DISTINCT ?p) AS ?n) { GRAPH &lt;http://bigdata.com#g1&gt; { &lt;http://bigdata.com#s2&gt; ?p ?o . } }
+		 * </pre>
+		 */
+		public void test_distinctTermCount_quads_05() throws Exception {
+
+			final TestHelper h = new TestHelper("distinctTermCount_quads_05", // testURI,
+					"distinctTermCount_quads_05.rq",// queryFileURL
+					"distinctTermScan_quads_01.trig",// dataFileURL
+					"distinctTermCount_quads_05.srx"// resultFileURL
+			);
+			
+			h.runTest();
+
+			// Verify that the DistinctTermCountOp was used in the query plan.
+			assertEquals(
+					1,
+					BOpUtility.toList(h.getASTContainer().getQueryPlan(),
+							DistinctTermCountOp.class).size());
+
+		}
+
+		/**
+		 * Correct rejection test. The named graph is bound and there is no CPxx
+		 * index (see {@link #test_distinctTermScan_quads_correctRejection_01()}),
+		 * so the COUNT(DISTINCT) is computed by the aggregation operators.
+		 * 
+		 * <pre>
+		 * SELECT (COUNT(DISTINCT ?p) AS ?n) { GRAPH &lt;http://bigdata.com#g2&gt; { ?s ?p ?o . } }
+		 * </pre>
+		 */
+		public void test_distinctTermCount_quads_correctRejection_01() throws Exception {
+
+			final TestHelper h = new TestHelper("distinctTermCount_quads_correctRejection_01", // testURI,
+					"distinctTermCount_quads_correctRejection_01.rq",// queryFileURL
+					"distinctTermScan_quads_01.trig",// dataFileURL
+					"distinctTermCount_quads_correctRejection_01.srx"// resultFileURL
+			);
+			
+			h.runTest();
+
+			// Verify that the DistinctTermCountOp was NOT used in the query plan.
+			assertEquals(
+					0,
+					BOpUtility.toList(h.getASTContainer().getQueryPlan(),
+							DistinctTermCountOp.class).size());
+
+		}
 	}
 }
@@ -0,0 +1,127 @@
+/**
+
+Copyright (C) SYSTAP, LLC DBA Blazegraph 2006-2016.  All rights reserved.
+
+Contact:
+     SYSTAP, LLC DBA Blazegraph
+     2501 Calvert ST NW #106
+     Washington, DC 20008
+     licenses@blazegraph.com
+
+This program is free software; you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation; version 2 of the License.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program; if not, write to the Free Software
+Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+/*
+ * Created on Oct 17, 2026
+ */
+
+package com.bigdata.rdf.sparql.ast.eval;
+
+import java.util.Properties;
+
+import com.bigdata.bop.BOpUtility;
+import com.bigdata.bop.rdf.join.IndexMergeJoinOp;
+import com.bigdata.rdf.sparql.ast.QueryHints;
+import com.bigdata.rdf.store.AbstractTripleStore;
+
+/**
+ * Data driven test suite for the {@link IndexMergeJoinOp}. Each query is run
+ * with the merge join and again with nested index joins, and both must give
+ * the same solutions. The queries project and FILTER on the variables bound
+ * by the merge join, so those variables must be materialized.
+ * 
+ * @see QueryHints#INDEX_MERGE_JOIN_THRESHOLD
+ */
+public class TestIndexMergeJoin extends AbstractDataDrivenSPARQLTestCase {
+
+    public TestIndexMergeJoin() {
+    }
+
+    public TestIndexMergeJoin(final String name) {
+        super(name);
+    }
+
+    /**
+     * The merge join only supports the triples (and SIDs) modes.
+     */
+    @Override
+    public Properties getProperties() {
+
+        final Properties properties = new Properties(super.getProperties());
+
+        // turn off quads.
+        properties.setProperty(AbstractTripleStore.Options.QUADS, "false");
+
+        // turn on triples
+        properties.setProperty(AbstractTripleStore.Options.TRIPLES_MODE,
+                "true");
+
+        return properties;
+
+    }
+
+    /**
+     * A subject star evaluated by the merge join, followed by a nested join
+     * and FILTERs which compare the values bound by the merge join.
+     * 
+     * <pre>
+     * SELECT ?s ?name ?age ?fname
+     * WHERE {
+     *   hint:Query hint:optimizer "None" .
+     *   hint:Query hint:indexMergeJoinThreshold "1" .
+     *   ?s ex:name ?name .
+     *   ?s ex:age ?age .
+     *   ?s ex:knows ?f .
+     *   ?f ex:name ?fname .
+     *   FILTER(?name < ?fname)
+     *   FILTER(?age > 25 || ?fname = "Alice")
+     * }
+     * </pre>
+     */
+    public void test_indexMergeJoin_01() throws Exception {
+
+        final TestHelper h = new TestHelper("index-merge-join-01",// testURI
+                "index-merge-join-01.rq",// queryFileURL
+                "index-merge-join.ttl",// dataFileURL
+                "index-merge-join-01.srx"// resultFileURL
+        );
+
+        h.runTest();
+
+        // Verify that the merge join was used.
+        assertEquals(1, BOpUtility.toList(h.getASTContainer().getQueryPlan(),
+                IndexMergeJoinOp.class).size());
+
+    }
+
+    /**
+     * Variant of {@link #test_indexMergeJoin_01()} which uses nested index
+     * joins. The solutions must be the same.
+     */
+    public void test_indexMergeJoin_01b() throws Exception {
+
+        final TestHelper h = new TestHelper("index-merge-join-01b",// testURI
+                "index-merge-join-01b.rq",// queryFileURL
+                "index-merge-join.ttl",// dataFileURL
+                "index-merge-join-01.srx"// resultFileURL
+        );
+
+        h.runTest();
+
+        // Verify that the merge join was not used.
+        assertEquals(0, BOpUtility.toList(h.getASTContainer().getQueryPlan(),
+                IndexMergeJoinOp.class).size());
+
+    }
+
+}
@@ -0,0 +1,293 @@
+/**
+
+Copyright (C) SYSTAP, LLC DBA Blazegraph 2006-2016.  All rights reserved.
+
+Contact:
+     SYSTAP, LLC DBA Blazegraph
+     2501 Calvert ST NW #106
+     Washington, DC 20008
+     licenses@blazegraph.com
+
+This program is free software; you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation; version 2 of the License.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program; if not, write to the Free Software
+Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+/*
+ * Created on Oct 17, 2026
+ */
+
+package com.bigdata.rdf.sparql.ast.eval;
+
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+
+import com.bigdata.bop.BOp;
+import com.bigdata.bop.IVariable;
+import com.bigdata.bop.Var;
+import com.bigdata.bop.rdf.join.ChunkedMaterializationOp;
+import com.bigdata.bop.solutions.SliceOp;
+import com.bigdata.bop.solutions.SortOp;
+import com.bigdata.bop.solutions.TopKSortOp;
+import com.bigdata.rdf.sparql.ast.ASTContainer;
+import com.bigdata.rdf.sparql.ast.QueryHints;
+
+/**
+ * Test suite for the late materialization of projected assignments when a
+ * query has an ORDER BY and a SLICE. Such assignments are evaluated after the
+ * ORDER BY but before the SLICE, while the projected variables are
+ * materialized after the SLICE (outside of the query plan).
+ * 
+ * @see QueryHints#LATE_MATERIALIZATION
+ */
+public class TestLateMaterialization extends AbstractDataDrivenSPARQLTestCase {
+
+    public TestLateMaterialization() {
+    }
+
+    public TestLateMaterialization(final String name) {
+        super(name);
+    }
+
+    /**
+     * Return the operators in the query plan in pipeline order.
+     */
+    private static List<BOp> getPipeline(final BOp queryPlan) {
+
+        final LinkedList<BOp> ops = new LinkedList<BOp>();
+
+        BOp op = queryPlan;
+
+        while (op != null) {
+
+            ops.addFirst(op);
+
+            op = op.arity() > 0 ? op.get(0) : null;
+
+        }
+
+        return ops;
+
+    }
+
+    /**
+     * Return the position in the pipeline of the {@link SortOp}.
+     */
+    private static int indexOfSort(final List<BOp> ops) {
+
+        for (int i = 0; i < ops.size(); i++) {
+
+            if (ops.get(i) instanceof SortOp)
+                return i;
+
+        }
+
+        fail("No sort: " + ops);
+
+        return -1;
+
+    }
+
+    /**
+     * Return the position in the pipeline of the {@link SliceOp}.
+     */
+    private static int indexOfSlice(final List<BOp> ops) {
+
+        for (int i = 0; i < ops.size(); i++) {
+
+            if (ops.get(i) instanceof SliceOp)
+                return i;
+
+        }
+
+        fail("No slice: " + ops);
+
+        return -1;
+
+    }
+
+    /**
+     * Return the position in the pipeline of the
+     * {@link ChunkedMaterializationOp} for the given variable.
+     */
+    private static int indexOfMaterialization(final List<BOp> ops,
+            final IVariable<?> var) {
+
+        final int i = findMaterialization(ops, var);
+
+        if (i == -1)
+            fail("No materialization for " + var + ": " + ops);
+
+        return i;
+
+    }
+
+    /**
+     * Return the position in the pipeline of the
+     * {@link ChunkedMaterializationOp} for the given variable -or- <code>-1</code>
+     * if the variable is not materialized within the query plan.
+     */
+    private static int findMaterialization(final List<BOp> ops,
+            final IVariable<?> var) {
+
+        for (int i = 0; i < ops.size(); i++) {
+
+            final BOp op = ops.get(i);
+
+            if (!(op instanceof ChunkedMaterializationOp))
+                continue;
+
+            final IVariable<?>[] vars = (IVariable<?>[]) op
+                    .getRequiredProperty(ChunkedMaterializationOp.Annotations.VARS);
+
+            if (Arrays.asList(vars).contains(var))
+                return i;
+
+        }
+
+        return -1;
+
+    }
+
+    /**
+     * The projected assignment is not used by the ORDER BY, so the
+     * materialization of <code>?label</code> is done after the sort.
+     * 
+     * <pre>
+     * SELECT ?s (STR(?label) AS ?str)
+     * WHERE {
+     *   ?s rdfs:label ?label .
+     * }
+     * ORDER BY DESC(?s)
+     * LIMIT 2
+     * </pre>
+     */
+    public void test_lateMaterialization_01() throws Exception {
+
+        final ASTContainer astContainer = new TestHelper(
+                "late-materialization-01",// testURI
+                "late-materialization-01.rq",// queryFileURL
+                "late-materialization.trig",// dataFileURL
+                "late-materialization-01.srx",// resultFileURL
+                true// checkOrder
+                ).runTest();
+
+        final List<BOp> ops = getPipeline(astContainer.getQueryPlan());
+
+        assertTrue(ops.toString(), indexOfMaterialization(ops,
+                Var.var("label")) > indexOfSort(ops));
+
+        /*
+         * The sort only emits OFFSET+LIMIT solutions, so that is all that is
+         * materialized for the assignment. The materialization is still
+         * before the SLICE, which halts the query once the LIMIT is reached.
+         */
+        assertEquals(2, ops.get(indexOfSort(ops)).getRequiredProperty(
+                TopKSortOp.Annotations.LIMIT));
+
+        assertTrue(ops.toString(), indexOfMaterialization(ops,
+                Var.var("label")) < indexOfSlice(ops));
+
+    }
+
+    /**
+     * Variant of {@link #test_lateMaterialization_01()} with the query hint
+     * used to disable late materialization.
+     */
+    public void test_lateMaterialization_01b() throws Exception {
+
+        final ASTContainer astContainer = new TestHelper(
+                "late-materialization-01b",// testURI
+                "late-materialization-01b.rq",// queryFileURL
+                "late-materialization.trig",// dataFileURL
+                "late-materialization-01.srx",// resultFileURL
+                true// checkOrder
+                ).runTest();
+
+        final List<BOp> ops = getPipeline(astContainer.getQueryPlan());
+
+        assertTrue(ops.toString(), indexOfMaterialization(ops,
+                Var.var("label")) < indexOfSort(ops));
+
+    }
+
+    /**
+     * The ORDER BY uses the projected assignment, so the assignment (and the
+     * materialization of <code>?label</code>) must remain before the sort.
+     * 
+     * <pre>
+     * SELECT ?s (STR(?label) AS ?str)
+     * WHERE {
+     *   ?s rdfs:label ?label .
+     * }
+     * ORDER BY ?str
+     * LIMIT 2
+     * </pre>
+     */
+    public void test_lateMaterialization_02() throws Exception {
+
+        final ASTContainer astContainer = new TestHelper(
+                "late-materialization-02",// testURI
+                "late-materialization-02.rq",// queryFileURL
+                "late-materialization.trig",// dataFileURL
+                "late-materialization-02.srx",// resultFileURL
+                true// checkOrder
+                ).runTest();
+
+        final List<BOp> ops = getPipeline(astContainer.getQueryPlan());
+
+        assertTrue(ops.toString(), indexOfMaterialization(ops,
+                Var.var("label")) < indexOfSort(ops));
+
+    }
+
+    /**
+     * Without projected assignments, the projected variables which are not
+     * needed by the ORDER BY are not materialized within the query plan. They
+     * are materialized after the OFFSET and LIMIT have been applied, so only
+     * the rows returned are materialized.
+     * 
+     * <pre>
+     * SELECT ?s ?label
+     * WHERE {
+     *   ?s rdfs:label ?label .
+     * }
+     * ORDER BY DESC(?s)
+     * OFFSET 1
+     * LIMIT 2
+     * </pre>
+     */
+    public void test_lateMaterialization_03() throws Exception {
+
+        final ASTContainer astContainer = new TestHelper(
+                "late-materialization-03",// testURI
+                "late-materialization-03.rq",// queryFileURL
+                "late-materialization.trig",// dataFileURL
+                "late-materialization-03.srx",// resultFileURL
+                true// checkOrder
+                ).runTest();
+
+        final List<BOp> ops = getPipeline(astContainer.getQueryPlan());
+
+        // The sort key is materialized before the sort.
+        assertTrue(ops.toString(), indexOfMaterialization(ops,
+                Var.var("s")) < indexOfSort(ops));
+
+        assertTrue(ops.toString(), indexOfSort(ops) < indexOfSlice(ops));
+
+        // But not ?label.
+        assertEquals(ops.toString(), -1, findMaterialization(ops,
+                Var.var("label")));
+
+    }
+
+}
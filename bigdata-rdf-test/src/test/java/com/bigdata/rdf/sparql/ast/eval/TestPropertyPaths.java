@@ -170,6 +170,37 @@ public class TestPropertyPaths extends AbstractDataDrivenSPARQLTestCase {
              ).runTest();
 
     }
+
+    /**
+     * Both ends of the path are bound by the source solutions, so each
+     * solution is answered by a bidirectional search (including a cycle back
+     * onto the seed and unreachable targets).
+     */
+    public void test_boundEnds() throws Exception {
+
+       new TestHelper(
+             "property-paths10",            // testURI,
+             "property-paths-10.rq",       // queryFileURL
+             "property-paths-10.ttl",       // dataFileURL
+             "property-paths-10.srx"      // resultFileURL,
+             ).runTest();
+
+    }
+
+    /**
+     * Source solutions sharing a seed share a single closure, whether their
+     * target is bound or not.
+     */
+    public void test_sharedSeed() throws Exception {
+
+       new TestHelper(
+             "property-paths11",            // testURI,
+             "property-paths-11.rq",       // queryFileURL
+             "property-paths-10.ttl",       // dataFileURL
+             "property-paths-11.srx"      // resultFileURL,
+             ).runTest();
+
+    }
     
     
 }
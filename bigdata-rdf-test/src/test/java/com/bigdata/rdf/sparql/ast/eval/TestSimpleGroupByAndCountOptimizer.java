@@ -29,6 +29,7 @@ import junit.framework.Test;
 import junit.framework.TestSuite;
 
 import com.bigdata.bop.BOpUtility;
+import com.bigdata.bop.join.DistinctTermRangeCountOp;
 import com.bigdata.bop.join.DistinctTermScanOp;
 import com.bigdata.bop.join.FastRangeCountOp;
 import com.bigdata.rdf.sparql.ast.optimizers.ASTSimpleGroupByAndCountOptimizer;
@@ -104,16 +105,9 @@ public class TestSimpleGroupByAndCountOptimizer extends
 
          h.runTest();
 
-         // Verify that the DistinctTermScanOp and FastRangeCountOp
-         // are both used in the query plan.
-         assertEquals(
-               1,
-               BOpUtility.toList(h.getASTContainer().getQueryPlan(),
-                     DistinctTermScanOp.class).size());
-         assertEquals(
-               1,
-               BOpUtility.toList(h.getASTContainer().getQueryPlan(),
-                     FastRangeCountOp.class).size());
+         // Verify that the GROUP BY is answered by a single
+         // DistinctTermRangeCountOp (there is a POS index).
+         assertIndexOnlyGroupBy(h);
       }
 
       /**
@@ -135,16 +129,9 @@ public class TestSimpleGroupByAndCountOptimizer extends
 
          h.runTest();
 
-         // Verify that the DistinctTermScanOp and FastRangeCountOp
-         // are both used in the query plan.
-         assertEquals(
-               1,
-               BOpUtility.toList(h.getASTContainer().getQueryPlan(),
-                     DistinctTermScanOp.class).size());
-         assertEquals(
-               1,
-               BOpUtility.toList(h.getASTContainer().getQueryPlan(),
-                     FastRangeCountOp.class).size());
+         // Verify that the GROUP BY is answered by a single
+         // DistinctTermRangeCountOp (there is a POS index).
+         assertIndexOnlyGroupBy(h);
       }
 
       /**
@@ -166,9 +153,28 @@ public class TestSimpleGroupByAndCountOptimizer extends
 
          h.runTest();
 
-         // Verify that the FastRangeCountOp is used in the query plan
+         // Verify that the GROUP BY is answered by a single
+         // DistinctTermRangeCountOp (there is a POS index).
+         assertIndexOnlyGroupBy(h);
+      }
+
+      /**
+       * Verify that the query plan uses a {@link DistinctTermRangeCountOp}
+       * rather than a {@link DistinctTermScanOp} in a SELECT DISTINCT subquery
+       * joined with a {@link FastRangeCountOp}.
+       */
+      private void assertIndexOnlyGroupBy(final TestHelper h) {
+
          assertEquals(
                1,
+               BOpUtility.toList(h.getASTContainer().getQueryPlan(),
+                     DistinctTermRangeCountOp.class).size());
+         assertEquals(
+               0,
+               BOpUtility.toList(h.getASTContainer().getQueryPlan(),
+                     DistinctTermScanOp.class).size());
+         assertEquals(
+               0,
                BOpUtility.toList(h.getASTContainer().getQueryPlan(),
                      FastRangeCountOp.class).size());
       }
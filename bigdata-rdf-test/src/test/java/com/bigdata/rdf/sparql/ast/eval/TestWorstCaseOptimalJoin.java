@@ -0,0 +1,178 @@
+/**
+
+Copyright (C) SYSTAP, LLC DBA Blazegraph 2006-2016.  All rights reserved.
+
+Contact:
+     SYSTAP, LLC DBA Blazegraph
+     2501 Calvert ST NW #106
+     Washington, DC 20008
+     licenses@blazegraph.com
+
+This program is free software; you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation; version 2 of the License.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program; if not, write to the Free Software
+Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+/*
+ * Created on Oct 17, 2026
+ */
+
+package com.bigdata.rdf.sparql.ast.eval;
+
+import java.util.Properties;
+
+import com.bigdata.bop.BOpUtility;
+import com.bigdata.bop.rdf.join.LeapfrogTriejoinOp;
+import com.bigdata.rdf.sparql.ast.QueryHints;
+import com.bigdata.rdf.store.AbstractTripleStore;
+
+/**
+ * Data driven test suite for the {@link LeapfrogTriejoinOp}. Each query is run
+ * with the worst-case optimal join and again with pairwise joins, and both
+ * must give the same solutions. The queries project (and FILTER on) the
+ * variables bound by the triejoin, so those variables must be materialized.
+ * 
+ * @see QueryHints#WORST_CASE_OPTIMAL_JOIN
+ */
+public class TestWorstCaseOptimalJoin extends AbstractDataDrivenSPARQLTestCase {
+
+    public TestWorstCaseOptimalJoin() {
+    }
+
+    public TestWorstCaseOptimalJoin(final String name) {
+        super(name);
+    }
+
+    /**
+     * The triejoin only supports the triples (and SIDs) modes.
+     */
+    @Override
+    public Properties getProperties() {
+
+        final Properties properties = new Properties(super.getProperties());
+
+        // turn off quads.
+        properties.setProperty(AbstractTripleStore.Options.QUADS, "false");
+
+        // turn on triples
+        properties.setProperty(AbstractTripleStore.Options.TRIPLES_MODE,
+                "true");
+
+        return properties;
+
+    }
+
+    /**
+     * A triangle evaluated by the triejoin, followed by a FILTER on a value
+     * which is bound by a later statement pattern.
+     * 
+     * <pre>
+     * SELECT ?a ?b ?c ?name
+     * WHERE {
+     *   hint:Query hint:optimizer "None" .
+     *   hint:Query hint:worstCaseOptimalJoin "true" .
+     *   ?a ex:knows ?b .
+     *   ?b ex:knows ?c .
+     *   ?c ex:knows ?a .
+     *   ?a ex:name ?name .
+     *   FILTER(?name < "C")
+     * }
+     * </pre>
+     */
+    public void test_worstCaseOptimalJoin_01() throws Exception {
+
+        final TestHelper h = new TestHelper("worst-case-optimal-join-01",// testURI
+                "worst-case-optimal-join-01.rq",// queryFileURL
+                "worst-case-optimal-join.ttl",// dataFileURL
+                "worst-case-optimal-join-01.srx"// resultFileURL
+        );
+
+        h.runTest();
+
+        // Verify that the triejoin was used.
+        assertEquals(1, BOpUtility.toList(h.getASTContainer().getQueryPlan(),
+                LeapfrogTriejoinOp.class).size());
+
+    }
+
+    /**
+     * Variant of {@link #test_worstCaseOptimalJoin_01()} which uses pairwise
+     * joins. The solutions must be the same.
+     */
+    public void test_worstCaseOptimalJoin_01b() throws Exception {
+
+        final TestHelper h = new TestHelper("worst-case-optimal-join-01b",// testURI
+                "worst-case-optimal-join-01b.rq",// queryFileURL
+                "worst-case-optimal-join.ttl",// dataFileURL
+                "worst-case-optimal-join-01.srx"// resultFileURL
+        );
+
+        h.runTest();
+
+        // Verify that the triejoin was not used.
+        assertEquals(0, BOpUtility.toList(h.getASTContainer().getQueryPlan(),
+                LeapfrogTriejoinOp.class).size());
+
+    }
+
+    /**
+     * A triangle evaluated by the triejoin for source solutions in which one
+     * of its variables is already bound.
+     * 
+     * <pre>
+     * SELECT ?a ?b ?c
+     * WHERE {
+     *   hint:Query hint:optimizer "None" .
+     *   hint:Query hint:worstCaseOptimalJoin "true" .
+     *   ?a ex:knows ?b .
+     *   ?b ex:knows ?c .
+     *   ?c ex:knows ?a .
+     * }
+     * VALUES ?a { ex:alice ex:carol }
+     * </pre>
+     */
+    public void test_worstCaseOptimalJoin_02() throws Exception {
+
+        final TestHelper h = new TestHelper("worst-case-optimal-join-02",// testURI
+                "worst-case-optimal-join-02.rq",// queryFileURL
+                "worst-case-optimal-join.ttl",// dataFileURL
+                "worst-case-optimal-join-02.srx"// resultFileURL
+        );
+
+        h.runTest();
+
+        // Verify that the triejoin was used.
+        assertEquals(1, BOpUtility.toList(h.getASTContainer().getQueryPlan(),
+                LeapfrogTriejoinOp.class).size());
+
+    }
+
+    /**
+     * Variant of {@link #test_worstCaseOptimalJoin_02()} which uses pairwise
+     * joins. The solutions must be the same.
+     */
+    public void test_worstCaseOptimalJoin_02b() throws Exception {
+
+        final TestHelper h = new TestHelper("worst-case-optimal-join-02b",// testURI
+                "worst-case-optimal-join-02b.rq",// queryFileURL
+                "worst-case-optimal-join.ttl",// dataFileURL
+                "worst-case-optimal-join-02.srx"// resultFileURL
+        );
+
+        h.runTest();
+
+        // Verify that the triejoin was not used.
+        assertEquals(0, BOpUtility.toList(h.getASTContainer().getQueryPlan(),
+                LeapfrogTriejoinOp.class).size());
+
+    }
+
+}
@@ -187,6 +187,60 @@ public class AbstractRTOTestCase extends AbstractDataDrivenSPARQLTestCase {
         
     }
 
+    /**
+     * Helper to run the test and return the {@link IRunningQuery} to which
+     * the join path selected by the RTO was attached.
+     * 
+     * @param helper
+     * 
+     * @return The {@link IRunningQuery} for the RTO.
+     */
+    protected IRunningQuery runTestAndGetRTOQuery(final TestHelper helper)
+            throws Exception {
+
+        /*
+         * Assign a UUID to this query so we can get at its outcome.
+         */
+        final UUID queryId = UUID.randomUUID();
+
+        helper.getASTContainer().setQueryHint(QueryHints.QUERYID,
+                queryId.toString());
+
+        final QueryEngine queryEngine = QueryEngineFactory.getInstance()
+                .getExistingQueryController((IBTreeManager) helper
+                        .getTripleStore().getIndexManager());
+
+        // Hook up our listener and run the test.
+        final ASTContainer astContainer;
+        final MyQueryListener l = new MyQueryListener(queryId);
+        try {
+            // Register the listener.
+            queryEngine.addListener(l);
+            // Run the test.
+            astContainer = helper.runTest();
+        } finally {
+            // Unregister the listener.
+            queryEngine.removeListener(l);
+        }
+
+        final JoinGraph joinGraph = BOpUtility.getOnly(
+                astContainer.getQueryPlan(), JoinGraph.class);
+
+        assertNotNull(joinGraph);
+
+        // The RTO might be running inside of a named subquery.
+        for (IRunningQuery q : l.getRunningQueries()) {
+            if (joinGraph.getPath(q) != null)
+                return q;
+        }
+
+        fail("Join path not found.");
+
+        // Not reached.
+        return null;
+
+    }
+
     /**
      * Helper to run the test and examine the RTO determined solution.
      * 
@@ -29,8 +29,13 @@ package com.bigdata.rdf.sparql.ast.eval.rto;
 
 import java.util.Properties;
 
+import com.bigdata.bop.BOpUtility;
+import com.bigdata.bop.engine.IRunningQuery;
+import com.bigdata.bop.joinGraph.rto.JoinGraph;
+import com.bigdata.bop.joinGraph.rto.Path;
 import com.bigdata.rdf.axioms.NoAxioms;
 import com.bigdata.rdf.sail.BigdataSail;
+import com.bigdata.rdf.sparql.ast.QueryHints;
 
 /**
  * Data driven test suite for the Runtime Query Optimizer (RTO) using LUBM data
@@ -160,4 +165,43 @@ public class TestRTO_LUBM extends AbstractRTOTestCase {
         
     }
 
+    /**
+     * LUBM Q8 on the U1 data set with {@link QueryHints#RTO_ADAPTIVE}. The
+     * deviation is set far below ONE, so the output of the joins exceeds the
+     * estimates and the join graph must be re-planned (either while the join
+     * path runs or once it is done). The query must still produce the
+     * same solutions and the estimates for the join path must be attached to
+     * the query.
+     */
+    public void test_LUBM_Q8_adaptive() throws Exception {
+
+        final TestHelper helper = new TestHelper(//
+                "rto/LUBM-Q8-adaptive", // testURI,
+                "rto/LUBM-Q8-adaptive.rq",// queryFileURL
+                "src/test/resources/data/lehigh/LUBM-U1.rdf.gz",// dataFileURL
+                "rto/LUBM-Q8.srx"// resultFileURL
+        );
+
+        // Run the test, verifying the solutions.
+        final IRunningQuery q = runTestAndGetRTOQuery(helper);
+
+        final JoinGraph joinGraph = BOpUtility.getOnly(helper
+                .getASTContainer().getQueryPlan(), JoinGraph.class);
+
+        assertTrue(joinGraph.isAdaptive());
+
+        assertEquals(.01d, joinGraph.getDeviation(), 0d);
+
+        final Path path = joinGraph.getPath(q);
+
+        final long[] estimates = joinGraph.getEstimates(q);
+
+        assertNotNull(estimates);
+
+        assertEquals(path.getVertexCount(), estimates.length);
+
+        assertTrue(joinGraph.getReplanCount(q) >= 1);
+
+    }
+
 }
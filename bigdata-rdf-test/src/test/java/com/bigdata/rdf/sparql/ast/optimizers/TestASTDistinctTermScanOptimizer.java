@@ -27,15 +27,21 @@ Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
 
 package com.bigdata.rdf.sparql.ast.optimizers;
 
+import java.util.Collections;
+
 import org.junit.Ignore;
 
 import junit.framework.Test;
 import junit.framework.TestSuite;
 
 import com.bigdata.bop.IPredicate;
+import com.bigdata.bop.aggregate.AggregateBase;
+import com.bigdata.rdf.sparql.ast.FunctionNode;
+import com.bigdata.rdf.sparql.ast.FunctionRegistry;
 import com.bigdata.rdf.sparql.ast.ProjectionNode;
 import com.bigdata.rdf.sparql.ast.QueryRoot;
 import com.bigdata.rdf.sparql.ast.StatementPatternNode;
+import com.bigdata.rdf.sparql.ast.ValueExpressionNode;
 import com.bigdata.rdf.sparql.ast.VarNode;
 import com.bigdata.rdf.spo.DistinctTermAdvancer;
 
@@ -303,6 +309,92 @@ public class TestASTDistinctTermScanOptimizer extends AbstractOptimizerTestCase
 				}
 			};
 		}
+
+		/**
+		 * COUNT(DISTINCT ?o) is counted directly against the index.
+		 * 
+		 * <pre>
+		 * SELECT (COUNT(DISTINCT ?o) AS ?w) {?s :p ?o}
+		 * </pre>
+		 * 
+		 * becomes
+		 * 
+		 * <pre>
+		 * SELECT ?w {?s :p ?o}
+		 * </pre>
+		 * 
+		 * where the triple pattern is marked with DISTINCT-TERM-SCAN:=?o and
+		 * DISTINCT-TERM-COUNT:=?w.
+		 */
+		public void test_distinctTermScanOptimizer_count_distinct() {
+
+			new Helper() {
+				{
+
+					given = select(
+							projection(bind(countDistinct(varNode(o), true),
+									varNode(w))),
+							where(statementPatternNode(varNode(s),
+									constantNode(a), varNode(o),
+									property(Annotations.ESTIMATED_CARDINALITY,
+											1000L))));
+
+					final StatementPatternNode sp = statementPatternNode(
+							varNode(s), constantNode(a), varNode(o),
+							property(Annotations.ESTIMATED_CARDINALITY, 1L),
+							property(Annotations.DISTINCT_TERM_SCAN_VAR,
+									varNode(o)),
+							property(Annotations.DISTINCT_TERM_COUNT_VAR,
+									varNode(w)));
+					sp.setQueryHint(IPredicate.Annotations.KEY_ORDER,
+							store.isQuads() ? "POCS" : "POS");
+
+					expected = select(projection(varNode(w)), where(sp));
+
+				}
+			}.test();
+
+		}
+
+		/**
+		 * COUNT(?o) without DISTINCT is not rewritten.
+		 * 
+		 * <pre>
+		 * SELECT (COUNT(?o) AS ?w) {?s :p ?o}
+		 * </pre>
+		 */
+		public void test_distinctTermScanOptimizer_reject_count_not_distinct() {
+
+			new Helper() {
+				{
+
+					given = select(
+							projection(bind(countDistinct(varNode(o), false),
+									varNode(w))),
+							where(statementPatternNode(varNode(s),
+									constantNode(a), varNode(o),
+									property(Annotations.ESTIMATED_CARDINALITY,
+											1000L))));
+
+					expected = new QueryRoot(given);
+
+				}
+			}.test();
+
+		}
+
+		/**
+		 * Return <code>COUNT([DISTINCT] ?var)</code>.
+		 */
+		private static FunctionNode countDistinct(final VarNode var,
+				final boolean distinct) {
+
+			return new FunctionNode(FunctionRegistry.COUNT,
+					Collections.singletonMap(AggregateBase.Annotations.DISTINCT,
+							(Object) Boolean.valueOf(distinct)),
+					new ValueExpressionNode[] { var });
+
+		}
     }
 
 	/**
@@ -0,0 +1,274 @@
+/**
+
+Copyright (C) SYSTAP, LLC DBA Blazegraph 2006-2016.  All rights reserved.
+
+Contact:
+     SYSTAP, LLC DBA Blazegraph
+     2501 Calvert ST NW #106
+     Washington, DC 20008
+     licenses@blazegraph.com
+
+This program is free software; you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation; version 2 of the License.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program; if not, write to the Free Software
+Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+/*
+ * Created on Oct 17, 2026
+ */
+
+package com.bigdata.rdf.sparql.ast.optimizers;
+
+import java.util.Properties;
+
+import com.bigdata.bop.IBindingSet;
+import com.bigdata.bop.Var;
+import com.bigdata.rdf.model.BigdataURI;
+import com.bigdata.rdf.model.BigdataValue;
+import com.bigdata.rdf.sparql.ast.ASTContainer;
+import com.bigdata.rdf.sparql.ast.AbstractASTEvaluationTestCase;
+import com.bigdata.rdf.sparql.ast.ConstantNode;
+import com.bigdata.rdf.sparql.ast.JoinGroupNode;
+import com.bigdata.rdf.sparql.ast.ProjectionNode;
+import com.bigdata.rdf.sparql.ast.QueryNodeWithBindingSet;
+import com.bigdata.rdf.sparql.ast.QueryRoot;
+import com.bigdata.rdf.sparql.ast.QueryType;
+import com.bigdata.rdf.sparql.ast.StatementPatternNode;
+import com.bigdata.rdf.sparql.ast.SubqueryRoot;
+import com.bigdata.rdf.sparql.ast.VarNode;
+import com.bigdata.rdf.sparql.ast.eval.AST2BOpBase;
+import com.bigdata.rdf.sparql.ast.eval.AST2BOpContext;
+import com.bigdata.rdf.store.AbstractTripleStore;
+
+/**
+ * Test suite for {@link ASTIndexMergeJoinOptimizer}.
+ */
+public class TestASTIndexMergeJoinOptimizer extends
+        AbstractASTEvaluationTestCase {
+
+    public TestASTIndexMergeJoinOptimizer() {
+    }
+
+    public TestASTIndexMergeJoinOptimizer(String name) {
+        super(name);
+    }
+
+    @Override
+    public Properties getProperties() {
+
+        final Properties properties = new Properties(super.getProperties());
+
+        // turn off quads.
+        properties.setProperty(AbstractTripleStore.Options.QUADS, "false");
+
+        // turn on triples
+        properties.setProperty(AbstractTripleStore.Options.TRIPLES_MODE,
+                "true");
+
+        return properties;
+
+    }
+
+    /**
+     * Given
+     * 
+     * <pre>
+     * ?s :p1 ?a . ?s :p2 ?b .
+     * </pre>
+     * 
+     * where both statement patterns are large, verify that the group is
+     * annotated with <code>?s</code> as the join variable.
+     */
+    public void test_subjectStar() {
+
+        final BigdataURI p1 = valueFactory.createURI("http://example/p1");
+        final BigdataURI p2 = valueFactory.createURI("http://example/p2");
+
+        store.addTerms(new BigdataValue[] { p1, p2 });
+
+        final QueryRoot given = newQuery(sp("s", p1, "a", 100L),
+                sp("s", p2, "b", 200L));
+
+        final JoinGroupNode where = optimize(given, 100L/* threshold */);
+
+        assertEquals(Var.var("s"), where
+                .getProperty(ASTIndexMergeJoinOptimizer.Annotations.JOIN_VAR));
+
+    }
+
+    /**
+     * Verify that the group is not annotated when one of the statement
+     * patterns is below the threshold.
+     */
+    public void test_subjectStar_selective() {
+
+        final BigdataURI p1 = valueFactory.createURI("http://example/p1");
+        final BigdataURI p2 = valueFactory.createURI("http://example/p2");
+
+        store.addTerms(new BigdataValue[] { p1, p2 });
+
+        final QueryRoot given = newQuery(sp("s", p1, "a", 10L),
+                sp("s", p2, "b", 200L));
+
+        final JoinGroupNode where = optimize(given, 100L/* threshold */);
+
+        assertNull(where
+                .getProperty(ASTIndexMergeJoinOptimizer.Annotations.JOIN_VAR));
+
+    }
+
+    /**
+     * Verify that the group is not annotated when the statement patterns do
+     * not share a variable.
+     */
+    public void test_noSharedVariable() {
+
+        final BigdataURI p1 = valueFactory.createURI("http://example/p1");
+        final BigdataURI p2 = valueFactory.createURI("http://example/p2");
+
+        store.addTerms(new BigdataValue[] { p1, p2 });
+
+        final QueryRoot given = newQuery(sp("s", p1, "a", 200L),
+                sp("t", p2, "b", 200L));
+
+        final JoinGroupNode where = optimize(given, 100L/* threshold */);
+
+        assertNull(where
+                .getProperty(ASTIndexMergeJoinOptimizer.Annotations.JOIN_VAR));
+
+    }
+
+    /**
+     * Verify the check on the key order. For <code>?a :p1 ?o</code> the OSP
+     * index would be read, in which the subject (a variable) precedes the
+     * predicate (a constant), so an object-star is not merge joined.
+     */
+    public void test_objectStar() {
+
+        final BigdataURI p1 = valueFactory.createURI("http://example/p1");
+        final BigdataURI p2 = valueFactory.createURI("http://example/p2");
+
+        store.addTerms(new BigdataValue[] { p1, p2 });
+
+        final QueryRoot given = newQuery(sp("a", p1, "o", 200L),
+                sp("b", p2, "o", 200L));
+
+        final JoinGroupNode where = optimize(given, 100L/* threshold */);
+
+        assertNull(where
+                .getProperty(ASTIndexMergeJoinOptimizer.Annotations.JOIN_VAR));
+
+    }
+
+    /**
+     * Given
+     * 
+     * <pre>
+     * SELECT * { { SELECT * { ?s :p1 ?a . ?s :p2 ?b } } }
+     * </pre>
+     * 
+     * verify that the WHERE clause of the sub-select is not annotated. The
+     * sub-select may be evaluated once per solution flowing into it, which
+     * would repeat the scans.
+     */
+    public void test_subSelect() {
+
+        final BigdataURI p1 = valueFactory.createURI("http://example/p1");
+        final BigdataURI p2 = valueFactory.createURI("http://example/p2");
+
+        store.addTerms(new BigdataValue[] { p1, p2 });
+
+        final SubqueryRoot subquery = new SubqueryRoot(QueryType.SELECT);
+        {
+
+            final ProjectionNode projection = new ProjectionNode();
+            projection.addProjectionVar(new VarNode("*"));
+
+            final JoinGroupNode where = new JoinGroupNode();
+            where.addChild(sp("s", p1, "a", 200L));
+            where.addChild(sp("s", p2, "b", 200L));
+
+            subquery.setProjection(projection);
+            subquery.setWhereClause(where);
+
+        }
+
+        final QueryRoot given = newQuery();
+
+        given.getWhereClause().addChild(subquery);
+
+        final JoinGroupNode where = optimize(given, 100L/* threshold */);
+
+        assertNull(where
+                .getProperty(ASTIndexMergeJoinOptimizer.Annotations.JOIN_VAR));
+
+        assertNull(subquery.getWhereClause().getProperty(
+                ASTIndexMergeJoinOptimizer.Annotations.JOIN_VAR));
+
+    }
+
+    private JoinGroupNode optimize(final QueryRoot given, final long threshold) {
+
+        final AST2BOpContext ctx = new AST2BOpContext(new ASTContainer(given),
+                store);
+
+        ctx.indexMergeJoinThreshold = threshold;
+
+        final QueryRoot actual = (QueryRoot) new ASTIndexMergeJoinOptimizer()
+                .optimize(ctx,
+                        new QueryNodeWithBindingSet(given, new IBindingSet[] {}))
+                .getQueryNode();
+
+        return (JoinGroupNode) actual.getWhereClause();
+
+    }
+
+    /**
+     * <code>?s p ?o</code> with the given estimated cardinality.
+     */
+    private StatementPatternNode sp(final String s, final BigdataURI p,
+            final String o, final long estcard) {
+
+        final StatementPatternNode sp = new StatementPatternNode(new VarNode(
+                s), new ConstantNode(p.getIV()), new VarNode(o));
+
+        sp.setProperty(AST2BOpBase.Annotations.ESTIMATED_CARDINALITY, estcard);
+
+        return sp;
+
+    }
+
+    /**
+     * <code>SELECT * { sps }</code>
+     */
+    private QueryRoot newQuery(final StatementPatternNode... sps) {
+
+        final QueryRoot query = new QueryRoot(QueryType.SELECT);
+
+        final ProjectionNode projection = new ProjectionNode();
+        projection.addProjectionVar(new VarNode("*"));
+
+        final JoinGroupNode where = new JoinGroupNode();
+
+        for (StatementPatternNode sp : sps) {
+
+            where.addChild(sp);
+
+        }
+
+        query.setProjection(projection);
+        query.setWhereClause(where);
+
+        return query;
+
+    }
+
+}
@@ -0,0 +1,317 @@
+/**
+
+Copyright (C) SYSTAP, LLC DBA Blazegraph 2006-2016.  All rights reserved.
+
+Contact:
+     SYSTAP, LLC DBA Blazegraph
+     2501 Calvert ST NW #106
+     Washington, DC 20008
+     licenses@blazegraph.com
+
+This program is free software; you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation; version 2 of the License.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program; if not, write to the Free Software
+Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+/*
+ * Created on Oct 17, 2026
+ */
+
+package com.bigdata.rdf.sparql.ast.optimizers;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.openrdf.model.URI;
+
+import com.bigdata.bop.IBindingSet;
+import com.bigdata.rdf.internal.IV;
+import com.bigdata.rdf.model.BigdataLiteral;
+import com.bigdata.rdf.model.BigdataURI;
+import com.bigdata.rdf.model.BigdataValue;
+import com.bigdata.rdf.sparql.ast.ASTContainer;
+import com.bigdata.rdf.sparql.ast.AbstractASTEvaluationTestCase;
+import com.bigdata.rdf.sparql.ast.BindingsClause;
+import com.bigdata.rdf.sparql.ast.ConstantNode;
+import com.bigdata.rdf.sparql.ast.FilterNode;
+import com.bigdata.rdf.sparql.ast.FunctionNode;
+import com.bigdata.rdf.sparql.ast.FunctionRegistry;
+import com.bigdata.rdf.sparql.ast.JoinGroupNode;
+import com.bigdata.rdf.sparql.ast.ProjectionNode;
+import com.bigdata.rdf.sparql.ast.QueryNodeWithBindingSet;
+import com.bigdata.rdf.sparql.ast.QueryRoot;
+import com.bigdata.rdf.sparql.ast.QueryType;
+import com.bigdata.rdf.sparql.ast.StatementPatternNode;
+import com.bigdata.rdf.sparql.ast.ValueExpressionNode;
+import com.bigdata.rdf.sparql.ast.VarNode;
+import com.bigdata.rdf.sparql.ast.eval.AST2BOpContext;
+
+/**
+ * Test suite for {@link ASTLiteralPrefixScanOptimizer}.
+ */
+public class TestASTLiteralPrefixScanOptimizer extends
+        AbstractASTEvaluationTestCase {
+
+    public TestASTLiteralPrefixScanOptimizer() {
+    }
+
+    public TestASTLiteralPrefixScanOptimizer(String name) {
+        super(name);
+    }
+
+    /**
+     * Unit test for extracting the literal prefix of a regular expression.
+     */
+    public void test_getLiteralPrefix() {
+
+        assertEquals("abc", ASTLiteralPrefixScanOptimizer.getLiteralPrefix("^abc"));
+        assertEquals("abc", ASTLiteralPrefixScanOptimizer.getLiteralPrefix("^abc.*"));
+        assertEquals("abc", ASTLiteralPrefixScanOptimizer.getLiteralPrefix("^abc+"));
+        assertEquals("ab", ASTLiteralPrefixScanOptimizer.getLiteralPrefix("^abc?"));
+        assertEquals("ab", ASTLiteralPrefixScanOptimizer.getLiteralPrefix("^abc*"));
+        assertEquals("ab", ASTLiteralPrefixScanOptimizer.getLiteralPrefix("^abc{0,2}"));
+        assertEquals("ab", ASTLiteralPrefixScanOptimizer.getLiteralPrefix("^ab[cd]"));
+        assertEquals("ab", ASTLiteralPrefixScanOptimizer.getLiteralPrefix("^ab\\.c"));
+
+        // Not anchored.
+        assertNull(ASTLiteralPrefixScanOptimizer.getLiteralPrefix("abc"));
+        // Alternation.
+        assertNull(ASTLiteralPrefixScanOptimizer.getLiteralPrefix("^abc|xyz"));
+        // No literal prefix.
+        assertNull(ASTLiteralPrefixScanOptimizer.getLiteralPrefix("^"));
+        assertNull(ASTLiteralPrefixScanOptimizer.getLiteralPrefix("^.abc"));
+        assertNull(ASTLiteralPrefixScanOptimizer.getLiteralPrefix("^a?bc"));
+        assertNull(ASTLiteralPrefixScanOptimizer.getLiteralPrefix(null));
+
+    }
+
+    /**
+     * Given
+     * 
+     * <pre>
+     * ?s :p ?o . FILTER(STRSTARTS(?o, "ab"))
+     * </pre>
+     * 
+     * verify that the literals starting with <code>ab</code> are added to the
+     * group as a VALUES clause for <code>?o</code> and that the FILTER is
+     * retained.
+     */
+    @SuppressWarnings("rawtypes")
+    public void test_strstarts() {
+
+        final BigdataURI p = valueFactory.createURI("http://example/p");
+        final BigdataLiteral abc = valueFactory.createLiteral("abc");
+        final BigdataLiteral abd = valueFactory.createLiteral("abd");
+        final BigdataLiteral xyz = valueFactory.createLiteral("xyz");
+
+        store.addTerms(new BigdataValue[] { p, abc, abd, xyz });
+
+        final QueryRoot given = newQuery(p, FunctionRegistry.STARTS_WITH, "ab");
+
+        final AST2BOpContext ctx = new AST2BOpContext(new ASTContainer(given),
+                store);
+
+        ctx.prefixScan = true;
+
+        final QueryRoot actual = (QueryRoot) new ASTLiteralPrefixScanOptimizer()
+                .optimize(ctx,
+                        new QueryNodeWithBindingSet(given, new IBindingSet[] {}))
+                .getQueryNode();
+
+        final JoinGroupNode where = (JoinGroupNode) actual.getWhereClause();
+
+        assertEquals(3, where.arity());
+
+        assertTrue(where.get(0) instanceof BindingsClause);
+
+        assertTrue(where.get(1) instanceof StatementPatternNode);
+
+        assertTrue(where.get(2) instanceof FilterNode);
+
+        final BindingsClause bc = (BindingsClause) where.get(0);
+
+        assertEquals(1, bc.getDeclaredVariableCount());
+
+        final Set<IV> actualIVs = new HashSet<IV>();
+
+        for (IBindingSet bset : bc.getBindingSets()) {
+
+            actualIVs.add((IV) bset.get(new VarNode("o").getValueExpression())
+                    .get());
+
+        }
+
+        final Set<IV> expectedIVs = new HashSet<IV>();
+        expectedIVs.add(abc.getIV());
+        expectedIVs.add(abd.getIV());
+
+        assertEquals(expectedIVs, actualIVs);
+
+        // The optimized AST must not be cached.
+        assertTrue(ctx.isDataDependentPlan());
+
+    }
+
+    /**
+     * Verify that the group is not modified unless the query hint is given.
+     */
+    public void test_strstarts_disabled() {
+
+        final BigdataURI p = valueFactory.createURI("http://example/p");
+        final BigdataLiteral abc = valueFactory.createLiteral("abc");
+
+        store.addTerms(new BigdataValue[] { p, abc });
+
+        final QueryRoot given = newQuery(p, FunctionRegistry.STARTS_WITH, "ab");
+
+        final QueryRoot expected = newQuery(p, FunctionRegistry.STARTS_WITH,
+                "ab");
+
+        final AST2BOpContext ctx = new AST2BOpContext(new ASTContainer(given),
+                store);
+
+        ctx.prefixScan = false;
+
+        final QueryRoot actual = (QueryRoot) new ASTLiteralPrefixScanOptimizer()
+                .optimize(ctx,
+                        new QueryNodeWithBindingSet(given, new IBindingSet[] {}))
+                .getQueryNode();
+
+        assertSameAST(expected, actual);
+
+        assertFalse(ctx.isDataDependentPlan());
+
+    }
+
+    /**
+     * Verify that the rewrite is not applied when the KB holds a language
+     * tagged literal, since <code>STRSTARTS("abc"@en, "ab")</code> is true but
+     * the prefix scan does not visit language tagged literals.
+     */
+    public void test_strstarts_languageTagged() {
+
+        final BigdataURI p = valueFactory.createURI("http://example/p");
+        final BigdataLiteral abc = valueFactory.createLiteral("abc");
+        final BigdataLiteral abcEn = valueFactory.createLiteral("abc", "en");
+
+        store.addTerms(new BigdataValue[] { p, abc, abcEn });
+
+        doNotRewriteTest(p);
+
+    }
+
+    /**
+     * Verify that the rewrite is not applied when the KB holds a literal in
+     * the BLOBS index, which is not visited by the prefix scan.
+     */
+    public void test_strstarts_blobs() {
+
+        final StringBuilder sb = new StringBuilder("ab");
+
+        while (sb.length() <= store.getLexiconRelation()
+                .getLexiconConfiguration().getBlobsThreshold()) {
+            sb.append('x');
+        }
+
+        final BigdataURI p = valueFactory.createURI("http://example/p");
+        final BigdataLiteral abc = valueFactory.createLiteral("abc");
+        final BigdataLiteral blob = valueFactory.createLiteral(sb.toString());
+
+        store.addTerms(new BigdataValue[] { p, abc, blob });
+
+        doNotRewriteTest(p);
+
+    }
+
+    private void doNotRewriteTest(final BigdataURI p) {
+
+        final QueryRoot given = newQuery(p, FunctionRegistry.STARTS_WITH, "ab");
+
+        final QueryRoot expected = newQuery(p, FunctionRegistry.STARTS_WITH,
+                "ab");
+
+        final AST2BOpContext ctx = new AST2BOpContext(new ASTContainer(given),
+                store);
+
+        ctx.prefixScan = true;
+
+        final QueryRoot actual = (QueryRoot) new ASTLiteralPrefixScanOptimizer()
+                .optimize(ctx,
+                        new QueryNodeWithBindingSet(given, new IBindingSet[] {}))
+                .getQueryNode();
+
+        assertSameAST(expected, actual);
+
+        assertFalse(ctx.isDataDependentPlan());
+
+    }
+
+    /**
+     * Verify that the rewrite is not applied when the prefix matches more
+     * than the configured limit.
+     */
+    public void test_regex_overLimit() {
+
+        final BigdataURI p = valueFactory.createURI("http://example/p");
+        final BigdataLiteral abc = valueFactory.createLiteral("abc");
+        final BigdataLiteral abd = valueFactory.createLiteral("abd");
+
+        store.addTerms(new BigdataValue[] { p, abc, abd });
+
+        final QueryRoot given = newQuery(p, FunctionRegistry.REGEX, "^ab");
+
+        final QueryRoot expected = newQuery(p, FunctionRegistry.REGEX, "^ab");
+
+        final AST2BOpContext ctx = new AST2BOpContext(new ASTContainer(given),
+                store);
+
+        ctx.prefixScan = true;
+
+        ctx.prefixScanLimit = 1;
+
+        final QueryRoot actual = (QueryRoot) new ASTLiteralPrefixScanOptimizer()
+                .optimize(ctx,
+                        new QueryNodeWithBindingSet(given, new IBindingSet[] {}))
+                .getQueryNode();
+
+        assertSameAST(expected, actual);
+
+    }
+
+    /**
+     * <code>SELECT * { ?s p ?o . FILTER(f(?o, arg)) }</code>
+     */
+    private QueryRoot newQuery(final BigdataURI p,
+            final URI function, final String arg) {
+
+        final QueryRoot query = new QueryRoot(QueryType.SELECT);
+
+        final ProjectionNode projection = new ProjectionNode();
+        projection.addProjectionVar(new VarNode("*"));
+
+        final JoinGroupNode where = new JoinGroupNode();
+
+        where.addChild(new StatementPatternNode(new VarNode("s"),
+                new ConstantNode(p.getIV()), new VarNode("o")));
+
+        where.addChild(new FilterNode(new FunctionNode(function, null,
+                new ValueExpressionNode[] { new VarNode("o"),
+                        new ConstantNode(makeIV(valueFactory
+                                .createLiteral(arg))) })));
+
+        query.setProjection(projection);
+        query.setWhereClause(where);
+
+        return query;
+
+    }
+
+}
@@ -0,0 +1,262 @@
+/**
+
+Copyright (C) SYSTAP, LLC DBA Blazegraph 2006-2016.  All rights reserved.
+
+Contact:
+     SYSTAP, LLC DBA Blazegraph
+     2501 Calvert ST NW #106
+     Washington, DC 20008
+     licenses@blazegraph.com
+
+This program is free software; you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation; version 2 of the License.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program; if not, write to the Free Software
+Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+/*
+ * Created on Oct 17, 2026
+ */
+
+package com.bigdata.rdf.sparql.ast.optimizers;
+
+import java.util.Arrays;
+import java.util.Properties;
+
+import com.bigdata.bop.IBindingSet;
+import com.bigdata.bop.IVariable;
+import com.bigdata.bop.Var;
+import com.bigdata.rdf.model.BigdataURI;
+import com.bigdata.rdf.model.BigdataValue;
+import com.bigdata.rdf.sparql.ast.ASTContainer;
+import com.bigdata.rdf.sparql.ast.AbstractASTEvaluationTestCase;
+import com.bigdata.rdf.sparql.ast.ConstantNode;
+import com.bigdata.rdf.sparql.ast.JoinGroupNode;
+import com.bigdata.rdf.sparql.ast.ProjectionNode;
+import com.bigdata.rdf.sparql.ast.QueryNodeWithBindingSet;
+import com.bigdata.rdf.sparql.ast.QueryRoot;
+import com.bigdata.rdf.sparql.ast.QueryType;
+import com.bigdata.rdf.sparql.ast.StatementPatternNode;
+import com.bigdata.rdf.sparql.ast.VarNode;
+import com.bigdata.rdf.sparql.ast.eval.AST2BOpContext;
+import com.bigdata.rdf.store.AbstractTripleStore;
+
+/**
+ * Test suite for {@link ASTWorstCaseOptimalJoinOptimizer}.
+ */
+public class TestASTWorstCaseOptimalJoinOptimizer extends
+        AbstractASTEvaluationTestCase {
+
+    public TestASTWorstCaseOptimalJoinOptimizer() {
+    }
+
+    public TestASTWorstCaseOptimalJoinOptimizer(String name) {
+        super(name);
+    }
+
+    @Override
+    public Properties getProperties() {
+
+        final Properties properties = new Properties(super.getProperties());
+
+        // turn off quads.
+        properties.setProperty(AbstractTripleStore.Options.QUADS, "false");
+
+        // turn on triples
+        properties.setProperty(AbstractTripleStore.Options.TRIPLES_MODE,
+                "true");
+
+        return properties;
+
+    }
+
+    /**
+     * Unit test for the detection of cyclic patterns.
+     */
+    public void test_isCyclic() {
+
+        final BigdataURI p = valueFactory.createURI("http://example/p");
+
+        store.addTerms(new BigdataValue[] { p });
+
+        // Triangle.
+        assertTrue(ASTWorstCaseOptimalJoinOptimizer.isCyclic(Arrays.asList(
+                sp("a", p, "b"), sp("b", p, "c"), sp("c", p, "a"))));
+
+        // Square.
+        assertTrue(ASTWorstCaseOptimalJoinOptimizer.isCyclic(Arrays.asList(
+                sp("a", p, "b"), sp("b", p, "c"), sp("c", p, "d"),
+                sp("d", p, "a"))));
+
+        // Chain.
+        assertFalse(ASTWorstCaseOptimalJoinOptimizer.isCyclic(Arrays.asList(
+                sp("a", p, "b"), sp("b", p, "c"), sp("c", p, "d"))));
+
+        // Star.
+        assertFalse(ASTWorstCaseOptimalJoinOptimizer.isCyclic(Arrays.asList(
+                sp("a", p, "b"), sp("a", p, "c"), sp("a", p, "d"))));
+
+        // Too few statement patterns.
+        assertFalse(ASTWorstCaseOptimalJoinOptimizer.isCyclic(Arrays.asList(
+                sp("a", p, "b"), sp("b", p, "a"))));
+
+    }
+
+    /**
+     * Given
+     * 
+     * <pre>
+     * ?a :p ?b . ?b :p ?c . ?c :p ?a .
+     * </pre>
+     * 
+     * verify that the group is annotated with a variable order which includes
+     * all three variables and starts with <code>?a</code> (all variables are
+     * used twice so the first variable to appear is chosen).
+     */
+    public void test_triangle() {
+
+        final BigdataURI p = valueFactory.createURI("http://example/p");
+
+        store.addTerms(new BigdataValue[] { p });
+
+        final QueryRoot given = newQuery(sp("a", p, "b"), sp("b", p, "c"),
+                sp("c", p, "a"));
+
+        final JoinGroupNode where = optimize(given, true/* enabled */);
+
+        final IVariable<?>[] order = (IVariable<?>[]) where
+                .getProperty(ASTWorstCaseOptimalJoinOptimizer.Annotations.VARIABLE_ORDER);
+
+        assertNotNull(order);
+
+        assertEquals(3, order.length);
+
+        assertEquals(Var.var("a"), order[0]);
+
+        assertTrue(Arrays.asList(order).containsAll(
+                Arrays.asList(Var.var("a"), Var.var("b"), Var.var("c"))));
+
+    }
+
+    /**
+     * Verify that an acyclic group is not annotated.
+     */
+    public void test_chain() {
+
+        final BigdataURI p = valueFactory.createURI("http://example/p");
+
+        store.addTerms(new BigdataValue[] { p });
+
+        final QueryRoot given = newQuery(sp("a", p, "b"), sp("b", p, "c"),
+                sp("c", p, "d"));
+
+        final JoinGroupNode where = optimize(given, true/* enabled */);
+
+        assertNull(where
+                .getProperty(ASTWorstCaseOptimalJoinOptimizer.Annotations.VARIABLE_ORDER));
+
+    }
+
+    /**
+     * Verify that an optional statement pattern ends the run of statement
+     * patterns which may be handled by the worst-case optimal join.
+     */
+    public void test_triangle_optional() {
+
+        final BigdataURI p = valueFactory.createURI("http://example/p");
+
+        store.addTerms(new BigdataValue[] { p });
+
+        final StatementPatternNode optional = sp("c", p, "a");
+
+        optional.setOptional(true);
+
+        final QueryRoot given = newQuery(sp("a", p, "b"), sp("b", p, "c"),
+                optional);
+
+        final JoinGroupNode where = optimize(given, true/* enabled */);
+
+        assertNull(where
+                .getProperty(ASTWorstCaseOptimalJoinOptimizer.Annotations.VARIABLE_ORDER));
+
+    }
+
+    /**
+     * Verify that the group is not annotated unless the query hint is given.
+     */
+    public void test_triangle_disabled() {
+
+        final BigdataURI p = valueFactory.createURI("http://example/p");
+
+        store.addTerms(new BigdataValue[] { p });
+
+        final QueryRoot given = newQuery(sp("a", p, "b"), sp("b", p, "c"),
+                sp("c", p, "a"));
+
+        final JoinGroupNode where = optimize(given, false/* enabled */);
+
+        assertNull(where
+                .getProperty(ASTWorstCaseOptimalJoinOptimizer.Annotations.VARIABLE_ORDER));
+
+    }
+
+    private JoinGroupNode optimize(final QueryRoot given, final boolean enabled) {
+
+        final AST2BOpContext ctx = new AST2BOpContext(new ASTContainer(given),
+                store);
+
+        ctx.worstCaseOptimalJoin = enabled;
+
+        final QueryRoot actual = (QueryRoot) new ASTWorstCaseOptimalJoinOptimizer()
+                .optimize(ctx,
+                        new QueryNodeWithBindingSet(given, new IBindingSet[] {}))
+                .getQueryNode();
+
+        return (JoinGroupNode) actual.getWhereClause();
+
+    }
+
+    /**
+     * <code>?s p ?o</code>
+     */
+    private StatementPatternNode sp(final String s, final BigdataURI p,
+            final String o) {
+
+        return new StatementPatternNode(new VarNode(s), new ConstantNode(
+                p.getIV()), new VarNode(o));
+
+    }
+
+    /**
+     * <code>SELECT * { sps }</code>
+     */
+    private QueryRoot newQuery(final StatementPatternNode... sps) {
+
+        final QueryRoot query = new QueryRoot(QueryType.SELECT);
+
+        final ProjectionNode projection = new ProjectionNode();
+        projection.addProjectionVar(new VarNode("*"));
+
+        final JoinGroupNode where = new JoinGroupNode();
+
+        for (StatementPatternNode sp : sps) {
+
+            where.addChild(sp);
+
+        }
+
+        query.setProjection(projection);
+        query.setWhereClause(where);
+
+        return query;
+
+    }
+
+}
@@ -151,6 +151,15 @@ public class TestAll extends TestCase {
         // Unit tests for optimizer which attaches join filters to SPs.
         suite.addTestSuite(TestASTRangeOptimizer.class);
 
+        // Unit tests for the literal prefix scan rewrite.
+        suite.addTestSuite(TestASTLiteralPrefixScanOptimizer.class);
+
+        // Unit tests for the detection of cyclic join groups.
+        suite.addTestSuite(TestASTWorstCaseOptimalJoinOptimizer.class);
+
+        // Unit tests for the selection of index merge joins.
+        suite.addTestSuite(TestASTIndexMergeJoinOptimizer.class);
+
         // Test suite for resolving mock IVs.
         suite.addTestSuite(TestASTBatchResolveTermsOptimizer.class);
         
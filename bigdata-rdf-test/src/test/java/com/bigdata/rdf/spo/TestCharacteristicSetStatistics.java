@@ -0,0 +1,194 @@
+/**
+
+Copyright (C) SYSTAP, LLC DBA Blazegraph 2006-2016.  All rights reserved.
+
+Contact:
+     SYSTAP, LLC DBA Blazegraph
+     2501 Calvert ST NW #106
+     Washington, DC 20008
+     licenses@blazegraph.com
+
+This program is free software; you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation; version 2 of the License.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program; if not, write to the Free Software
+Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+/*
+ * Created on Oct 17, 2026
+ */
+
+package com.bigdata.rdf.spo;
+
+import java.util.Properties;
+
+import org.openrdf.model.URI;
+import org.openrdf.model.impl.LiteralImpl;
+import org.openrdf.model.impl.URIImpl;
+
+import com.bigdata.rdf.axioms.NoAxioms;
+import com.bigdata.rdf.internal.IV;
+import com.bigdata.rdf.store.AbstractTripleStore;
+import com.bigdata.rdf.store.AbstractTripleStoreTestCase;
+import com.bigdata.rdf.vocab.NoVocabulary;
+
+/**
+ * Test suite for {@link CharacteristicSetStatistics}.
+ */
+public class TestCharacteristicSetStatistics extends
+        AbstractTripleStoreTestCase {
+
+    /**
+     * 
+     */
+    public TestCharacteristicSetStatistics() {
+    }
+
+    /**
+     * @param name
+     */
+    public TestCharacteristicSetStatistics(final String name) {
+
+        super(name);
+
+    }
+
+    @Override
+    public Properties getProperties() {
+
+        final Properties properties = super.getProperties();
+
+        properties.setProperty(AbstractTripleStore.Options.VOCABULARY_CLASS,
+                NoVocabulary.class.getName());
+
+        properties.setProperty(AbstractTripleStore.Options.AXIOMS_CLASS,
+                NoAxioms.class.getName());
+
+        properties.setProperty(AbstractTripleStore.Options.STATISTICS, "true");
+
+        return properties;
+
+    }
+
+    /**
+     * The statistics index is not created unless it was requested.
+     */
+    public void test_disabled() {
+
+        final Properties properties = getProperties();
+
+        properties.setProperty(AbstractTripleStore.Options.STATISTICS, "false");
+
+        final AbstractTripleStore store = getStore(properties);
+
+        try {
+
+            assertNull(store.getSPORelation().getStatisticsIndex());
+
+            assertNull(store.getSPORelation().getStatistics());
+
+            try {
+                CharacteristicSetStatistics.refresh(store);
+                fail("Expecting: " + IllegalStateException.class);
+            } catch (IllegalStateException ex) {
+                // ignore
+            }
+
+        } finally {
+
+            store.__tearDownUnitTest();
+
+        }
+
+    }
+
+    /**
+     * Verify the characteristic sets, the predicate counts and the predicate
+     * pairs for a small graph and that the statistics are read back from the
+     * statistics index.
+     */
+    public void test_refresh() {
+
+        final AbstractTripleStore store = getStore(getProperties());
+
+        try {
+
+            final URI a = new URIImpl("http://www.bigdata.com/a");
+            final URI b = new URIImpl("http://www.bigdata.com/b");
+            final URI c = new URIImpl("http://www.bigdata.com/c");
+            final URI d = new URIImpl("http://www.bigdata.com/d");
+            final URI name = new URIImpl("http://www.bigdata.com/name");
+            final URI knows = new URIImpl("http://www.bigdata.com/knows");
+            final URI age = new URIImpl("http://www.bigdata.com/age");
+
+            store.addStatement(a, name, new LiteralImpl("a"));
+            store.addStatement(a, knows, b);
+            store.addStatement(b, name, new LiteralImpl("b"));
+            store.addStatement(b, knows, c);
+            store.addStatement(c, name, new LiteralImpl("c"));
+            store.addStatement(d, name, new LiteralImpl("d"));
+            store.addStatement(d, age, new LiteralImpl("42"));
+
+            store.commit();
+
+            // Nothing computed yet.
+            assertNull(store.getSPORelation().getStatistics());
+
+            final CharacteristicSetStatistics stats = CharacteristicSetStatistics
+                    .refresh(store);
+
+            store.commit();
+
+            final IV nameIV = store.getIV(name);
+            final IV knowsIV = store.getIV(knows);
+            final IV ageIV = store.getIV(age);
+
+            // {name,knows}, {name}, {name,age}
+            assertEquals(3, stats.getSetCount());
+
+            assertEquals(4L, stats.getPredicateCount(nameIV));
+            assertEquals(2L, stats.getPredicateCount(knowsIV));
+            assertEquals(1L, stats.getPredicateCount(ageIV));
+
+            // (a knows b . b name "b") and (b knows c . c name "c").
+            assertEquals(2L, stats.getPairCount(knowsIV, nameIV));
+            // (a knows b . b knows c)
+            assertEquals(1L, stats.getPairCount(knowsIV, knowsIV));
+            // Literals are never subjects.
+            assertEquals(0L, stats.getPairCount(nameIV, knowsIV));
+
+            assertEquals(4d, stats.estimateStar(new IV[] { nameIV },
+                    new double[] { 1d }), 0d);
+            assertEquals(2d, stats.estimateStar(new IV[] { nameIV, knowsIV },
+                    new double[] { 1d, 1d }), 0d);
+            assertEquals(0d, stats.estimateStar(new IV[] { knowsIV, ageIV },
+                    new double[] { 1d, 1d }), 0d);
+
+            // Read back from the index.
+            final CharacteristicSetStatistics actual = store.getSPORelation()
+                    .getStatistics();
+
+            assertNotNull(actual);
+            assertEquals(stats.getRevision(), actual.getRevision());
+            assertEquals(stats.getSetCount(), actual.getSetCount());
+            assertEquals(4L, actual.getPredicateCount(nameIV));
+            assertEquals(2L, actual.getPairCount(knowsIV, nameIV));
+            assertEquals(2d, actual.estimateStar(new IV[] { nameIV, knowsIV },
+                    new double[] { 1d, 1d }), 0d);
+
+        } finally {
+
+            store.__tearDownUnitTest();
+
+        }
+
+    }
+
+}
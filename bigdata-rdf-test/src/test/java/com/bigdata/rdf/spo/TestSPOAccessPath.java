@@ -34,6 +34,7 @@ import com.bigdata.bop.Constant;
 import com.bigdata.bop.IPredicate;
 import com.bigdata.bop.NV;
 import com.bigdata.bop.Var;
+import com.bigdata.btree.AbstractBTree;
 import com.bigdata.rdf.internal.IV;
 import com.bigdata.rdf.internal.VTE;
 import com.bigdata.rdf.model.BigdataURI;
@@ -45,6 +46,8 @@ import com.bigdata.rdf.store.AbstractTripleStoreTestCase;
 import com.bigdata.rdf.store.TestTripleStore;
 import com.bigdata.relation.accesspath.AccessPath;
 import com.bigdata.relation.accesspath.IAccessPath;
+import com.bigdata.journal.TimestampUtility;
+import com.bigdata.striterator.IChunkedOrderedIterator;
 import com.bigdata.test.MockTermIdFactory;
 
 /**
@@ -393,6 +396,109 @@ public class TestSPOAccessPath extends AbstractTripleStoreTestCase {
         
     }
     
+    /**
+     * Unit test for an access path whose key-range is divided into splits
+     * which are scanned in parallel. The access path must visit the same
+     * elements as a single threaded scan, but it does not visit them in the
+     * natural order of the index.
+     * 
+     * @see IPredicate.Annotations#PARALLEL_SCAN_THREADS
+     */
+    public void test_parallelScan() {
+
+        final AbstractTripleStore store = getStore();
+
+        try {
+
+            final BigdataValueFactory f = store.getValueFactory();
+
+            final BigdataURI p = f.createURI("http://www.bigdata.com/rdf#p");
+
+            final BigdataURI g = store.isQuads() ? f
+                    .createURI("http://www.bigdata.com/rdf#g") : null;
+
+            final int n = 500;
+
+            final BigdataURI[] s = new BigdataURI[n];
+
+            {
+
+                final StatementBuffer<Statement> buffer = new StatementBuffer<Statement>(
+                        store, 100);
+
+                for (int i = 0; i < n; i++) {
+
+                    s[i] = f.createURI("http://www.bigdata.com/rdf#s" + i);
+
+                    buffer.add(s[i], p, s[(i * 7) % (i + 1)], g);
+
+                }
+
+                buffer.flush();
+
+            }
+
+            store.commit();
+
+            final ISPO[] expected = new ISPO[n];
+
+            for (int i = 0; i < n; i++) {
+
+                final BigdataURI o = s[(i * 7) % (i + 1)];
+
+                expected[i] = g == null ? new SPO(s[i].getIV(), p.getIV(),
+                        o.getIV(), StatementEnum.Explicit) : new SPO(
+                        s[i].getIV(), p.getIV(), o.getIV(), g.getIV(),
+                        StatementEnum.Explicit);
+
+            }
+
+            // Note: Only a read-only view may be scanned in parallel.
+            final AbstractTripleStore readStore = (AbstractTripleStore) store
+                    .getIndexManager()
+                    .getResourceLocator()
+                    .locate(store.getNamespace(),
+                            TimestampUtility.asHistoricalRead(store
+                                    .getIndexManager().getLastCommitTime()));
+
+            // (?s, p, ?o [, ?c])
+            final BOp[] args = store.isQuads() ? new BOp[] { Var.var("s"),
+                    new Constant<IV>(p.getIV()), Var.var("o"), Var.var("c") }
+                    : new BOp[] { Var.var("s"), new Constant<IV>(p.getIV()),
+                            Var.var("o") };
+
+            final SPOPredicate predicate = new SPOPredicate(args,
+                    new NV(IPredicate.Annotations.RELATION_NAME,
+                            new String[] { readStore.getSPORelation()
+                                    .getNamespace() }),
+                    // force the asynchronous iterator.
+                    new NV(IPredicate.Annotations.FULLY_BUFFERED_READ_THRESHOLD,
+                            1),
+                    new NV(IPredicate.Annotations.PARALLEL_SCAN_THREADS, 4),
+                    new NV(IPredicate.Annotations.PARALLEL_SCAN_THRESHOLD, 1L));
+
+            final IAccessPath<ISPO> accessPath = readStore.getSPORelation()
+                    .getAccessPath(predicate);
+
+            final IChunkedOrderedIterator<ISPO> itr = accessPath.iterator();
+
+            if (accessPath.getIndex() instanceof AbstractBTree) {
+
+                // The natural order is not reported for a parallel scan.
+                assertNull(itr.getKeyOrder());
+
+            }
+
+            assertSameSPOsAnyOrder(readStore, expected, itr);
+
+        } finally {
+
+            store.__tearDownUnitTest();
+
+        }
+
+    }
+
     /**
      * @todo write tests of slice where offset=0, offset>0. test with limit at
      *       fence posts (0,1) and with limit GT the maximum that can be fully
@@ -91,6 +91,9 @@ public class TestBigdataSailWithoutSids extends AbstractBigdataSailTestCase {
         // test suite for the history index.
         suite.addTestSuite(TestHistoryIndex.class);
 
+        // test suite for the closure index (triples mode only).
+        suite.addTestSuite(TestClosureIndex.class);
+
 		suite.addTestSuite(com.bigdata.rdf.sail.TestRollbacks.class);
 		suite.addTestSuite(com.bigdata.rdf.sail.TestRollbacksTx.class);
         suite.addTestSuite(com.bigdata.rdf.sail.TestRollbacksTM.class);
@@ -0,0 +1,392 @@
+/**
+
+Copyright (C) SYSTAP, LLC DBA Blazegraph 2006-2016.  All rights reserved.
+
+Contact:
+     SYSTAP, LLC DBA Blazegraph
+     2501 Calvert ST NW #106
+     Washington, DC 20008
+     licenses@blazegraph.com
+
+This program is free software; you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation; version 2 of the License.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program; if not, write to the Free Software
+Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+
+package com.bigdata.rdf.sail;
+
+import java.util.Collection;
+import java.util.LinkedList;
+import java.util.Properties;
+
+import org.openrdf.model.URI;
+import org.openrdf.model.impl.URIImpl;
+import org.openrdf.query.Binding;
+import org.openrdf.query.BindingSet;
+import org.openrdf.query.QueryLanguage;
+import org.openrdf.query.TupleQueryResult;
+import org.openrdf.query.impl.BindingImpl;
+import org.openrdf.sail.SailException;
+
+import com.bigdata.btree.IIndex;
+import com.bigdata.rdf.axioms.NoAxioms;
+import com.bigdata.rdf.internal.IV;
+import com.bigdata.rdf.model.BigdataURI;
+import com.bigdata.rdf.model.BigdataValueFactory;
+import com.bigdata.rdf.sail.BigdataSail.BigdataSailConnection;
+import com.bigdata.rdf.sparql.ast.service.ServiceRegistry;
+import com.bigdata.rdf.sparql.ast.service.closure.ClosureIndex;
+import com.bigdata.rdf.sparql.ast.service.closure.ClosureServiceFactory;
+import com.bigdata.rdf.store.AbstractTripleStore;
+import com.bigdata.rdf.store.BD;
+import com.bigdata.util.InnerCause;
+
+/**
+ * Test the index supporting the {@link ClosureServiceFactory}.
+ */
+public class TestClosureIndex extends ProxyBigdataSailTestCase {
+
+    /**
+     * 
+     */
+    public TestClosureIndex() {
+    }
+
+    /**
+     * @param name
+     */
+    public TestClosureIndex(String name) {
+        super(name);
+    }
+
+    private static final String p = BD.NAMESPACE + "partOf";
+
+    /**
+     * <code>true</code> iff the service was registered by {@link #setUp()}.
+     */
+    private boolean registered = false;
+
+    /**
+     * Register the {@link ClosureServiceFactory} unless it was enabled for
+     * this JVM.
+     */
+    @Override
+    protected void setUp() throws Exception {
+
+        super.setUp();
+
+        if (!ClosureServiceFactory.isRegistered()) {
+
+            ServiceRegistry.getInstance().add(
+                    ClosureServiceFactory.SERVICE_KEY,
+                    new ClosureServiceFactory());
+
+            registered = true;
+
+        }
+
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+
+        if (registered) {
+
+            ServiceRegistry.getInstance().remove(
+                    ClosureServiceFactory.SERVICE_KEY);
+
+            registered = false;
+
+        }
+
+        super.tearDown();
+
+    }
+
+    /**
+     * Return properties for a KB which maintains the closure of
+     * {@link #p} and does not use inference.
+     */
+    private Properties getClosureProperties() {
+
+        final Properties properties = getProperties();
+
+        properties.setProperty(
+                AbstractTripleStore.Options.CLOSURE_PREDICATES, p);
+
+        properties.setProperty(AbstractTripleStore.Options.AXIOMS_CLASS,
+                NoAxioms.class.getName());
+
+        return properties;
+
+    }
+
+    /**
+     * Unit test verifies that a KB with closure predicates can not be used
+     * unless the {@link ClosureServiceFactory} is registered, since the
+     * closure index would not be maintained.
+     */
+    public void test_closureServiceNotRegistered() throws SailException {
+
+        if (!registered) {
+
+            // The service was enabled for this JVM.
+            return;
+
+        }
+
+        ServiceRegistry.getInstance().remove(ClosureServiceFactory.SERVICE_KEY);
+
+        registered = false;
+
+        assertFalse(ClosureServiceFactory.isRegistered());
+
+        try {
+
+            final BigdataSail sail = getSail(getClosureProperties());
+
+            try {
+
+                sail.initialize();
+
+                fail("Expecting: " + UnsupportedOperationException.class);
+
+            } finally {
+
+                sail.__tearDownUnitTest();
+
+            }
+
+        } catch (Throwable t) {
+
+            if (!InnerCause.isInnerCause(t,
+                    UnsupportedOperationException.class)) {
+
+                throw new RuntimeException(t);
+
+            }
+
+        }
+
+    }
+
+    /**
+     * Unit test verifies that the closure index is not created if no closure
+     * predicates are configured.
+     */
+    public void test_closureIndexDisabled() throws SailException {
+
+        final BigdataSail sail = getSail(getProperties());
+
+        try {
+
+            sail.initialize();
+
+            final BigdataSailConnection conn = sail.getConnection();
+
+            try {
+
+                final IIndex ndx = conn.getTripleStore().getSPORelation()
+                        .getClosureIndex();
+
+                // The index should not exist.
+                assertNull(ndx);
+
+                conn.rollback();
+
+            } finally {
+
+                conn.close();
+
+            }
+
+        } finally {
+
+            sail.__tearDownUnitTest();
+
+        }
+
+    }
+
+    /**
+     * Unit test works through two commit points. In the first, a chain
+     * <code>A -&gt; B -&gt; C</code> is added and its three reachable pairs
+     * must appear in the closure index. In the second, the edge
+     * <code>B -&gt; C</code> is removed and the pairs which depended on it
+     * must be removed from the index.
+     */
+    @SuppressWarnings("rawtypes")
+    public void test_closureIndex01() throws SailException {
+
+        final BigdataSail sail = getSail(getClosureProperties());
+
+        try {
+
+            sail.initialize();
+
+            final BigdataValueFactory f = (BigdataValueFactory) sail
+                    .getValueFactory();
+
+            final BigdataURI A = f.createURI("http://www.bigdata.com/A");
+            final BigdataURI B = f.createURI("http://www.bigdata.com/B");
+            final BigdataURI C = f.createURI("http://www.bigdata.com/C");
+            final BigdataURI partOf = f.createURI(p);
+
+            {
+
+                final BigdataSailConnection conn = sail.getConnection();
+
+                try {
+
+                    final IIndex ndx = conn.getTripleStore().getSPORelation()
+                            .getClosureIndex();
+
+                    // The index should exist and be empty.
+                    assertNotNull(ndx);
+                    assertEquals(0L, ndx.rangeCount());
+
+                    conn.addStatement(A, partOf, B);
+                    conn.addStatement(B, partOf, C);
+
+                    conn.commit();
+
+                    // 3 pairs, each indexed in both directions.
+                    assertEquals(6L, ndx.rangeCount());
+
+                    final ClosureIndex closure = new ClosureIndex(ndx);
+
+                    final IV pIV = partOf.getIV();
+
+                    assertTrue(closure.isReachable(pIV, A.getIV(), B.getIV()));
+                    assertTrue(closure.isReachable(pIV, A.getIV(), C.getIV()));
+                    assertTrue(closure.isReachable(pIV, B.getIV(), C.getIV()));
+                    assertFalse(closure.isReachable(pIV, C.getIV(), A.getIV()));
+
+                    assertSameIteratorAnyOrder(
+                            new IV[] { B.getIV(), C.getIV() },
+                            closure.getReachable(pIV, A.getIV(), true/* forward */));
+
+                    assertSameIteratorAnyOrder(
+                            new IV[] { A.getIV(), B.getIV() },
+                            closure.getReachable(pIV, C.getIV(), false/* forward */));
+
+                } finally {
+
+                    conn.close();
+
+                }
+
+            }
+
+            {
+
+                final BigdataSailConnection conn = sail.getConnection();
+
+                try {
+
+                    final IIndex ndx = conn.getTripleStore().getSPORelation()
+                            .getClosureIndex();
+
+                    conn.removeStatements(B, partOf, C);
+
+                    conn.commit();
+
+                    // Only A -> B remains.
+                    assertEquals(2L, ndx.rangeCount());
+
+                    final ClosureIndex closure = new ClosureIndex(ndx);
+
+                    final IV pIV = partOf.getIV();
+
+                    assertTrue(closure.isReachable(pIV, A.getIV(), B.getIV()));
+                    assertFalse(closure.isReachable(pIV, A.getIV(), C.getIV()));
+                    assertFalse(closure.isReachable(pIV, B.getIV(), C.getIV()));
+
+                } finally {
+
+                    conn.close();
+
+                }
+
+            }
+
+        } finally {
+
+            sail.__tearDownUnitTest();
+
+        }
+
+    }
+
+    /**
+     * Unit test verifies that a <code>p+</code> property path over a closure
+     * predicate is answered correctly once it has been rewritten onto the
+     * closure index.
+     */
+    public void test_closurePath() throws Exception {
+
+        final BigdataSail sail = getSail(getClosureProperties());
+
+        try {
+
+            sail.initialize();
+
+            final BigdataSailRepository repo = new BigdataSailRepository(sail);
+
+            final BigdataSailRepositoryConnection cxn = (BigdataSailRepositoryConnection) repo
+                    .getConnection();
+
+            try {
+
+                cxn.setAutoCommit(false);
+
+                final URI A = new URIImpl("http://www.bigdata.com/A");
+                final URI B = new URIImpl("http://www.bigdata.com/B");
+                final URI C = new URIImpl("http://www.bigdata.com/C");
+                final URI D = new URIImpl("http://www.bigdata.com/D");
+                final URI partOf = new URIImpl(p);
+
+                cxn.add(A, partOf, B);
+                cxn.add(B, partOf, C);
+                cxn.add(D, partOf, A);
+
+                cxn.commit();
+
+                final String query = "SELECT ?x WHERE { <" + A + "> <" + p
+                        + ">+ ?x }";
+
+                final TupleQueryResult result = cxn.prepareTupleQuery(
+                        QueryLanguage.SPARQL, query).evaluate();
+
+                final Collection<BindingSet> solution = new LinkedList<BindingSet>();
+                solution.add(createBindingSet(new Binding[] { new BindingImpl(
+                        "x", B) }));
+                solution.add(createBindingSet(new Binding[] { new BindingImpl(
+                        "x", C) }));
+
+                compare(result, solution);
+
+            } finally {
+
+                cxn.close();
+
+            }
+
+        } finally {
+
+            sail.__tearDownUnitTest();
+
+        }
+
+    }
+
+}
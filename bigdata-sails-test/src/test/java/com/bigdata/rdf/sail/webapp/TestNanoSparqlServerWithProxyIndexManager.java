@@ -262,6 +262,7 @@ public class TestNanoSparqlServerWithProxyIndexManager<S extends IIndexManager>
          if(BigdataStatics.runKnownBadTests) {// FIXME Restore for BLZG-1195
              suite.addTestSuite(Test_REST_ESTCARD.ReadWriteTx.class);
          }
+         suite.addTestSuite(Test_REST_PreparedQuery.class);
          suite.addTestSuite(Test_REST_HASSTMT.class);
          if(BigdataStatics.runKnownBadTests) {// FIXME Restore for BLZG-1195
              suite.addTestSuite(Test_REST_HASSTMT.ReadWriteTx.class);
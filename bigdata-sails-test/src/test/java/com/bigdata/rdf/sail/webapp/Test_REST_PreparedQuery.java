@@ -0,0 +1,122 @@
+/**
+Copyright (C) SYSTAP, LLC DBA Blazegraph 2006-2016.  All rights reserved.
+
+Contact:
+     SYSTAP, LLC DBA Blazegraph
+     2501 Calvert ST NW #106
+     Washington, DC 20008
+     licenses@blazegraph.com
+
+This program is free software; you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation; version 2 of the License.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program; if not, write to the Free Software
+Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+*/
+/*
+ * Created on Oct 17, 2026
+ */
+
+package com.bigdata.rdf.sail.webapp;
+
+import java.util.UUID;
+
+import junit.framework.Test;
+
+import org.openrdf.model.URI;
+import org.openrdf.model.impl.URIImpl;
+
+import com.bigdata.journal.IIndexManager;
+import com.bigdata.rdf.sail.webapp.client.IPreparedBooleanQuery;
+import com.bigdata.rdf.sail.webapp.client.IPreparedTupleQuery;
+
+/**
+ * Proxied test suite for prepared SPARQL queries: the query is parsed once by
+ * the end point and then evaluated by handle with different bindings.
+ * 
+ * @param <S>
+ */
+public class Test_REST_PreparedQuery<S extends IIndexManager> extends
+		AbstractTestNanoSparqlClient<S> {
+
+	public Test_REST_PreparedQuery() {
+
+	}
+
+	public Test_REST_PreparedQuery(final String name) {
+
+		super(name);
+
+	}
+
+	public static Test suite() {
+
+		return ProxySuiteHelper.suiteWhenStandalone(
+				Test_REST_PreparedQuery.class, "test.*", TestMode.quads);
+
+	}
+
+	private static final URI MIKE = new URIImpl("http://www.bigdata.com/Mike");
+
+	private static final URI BRYAN = new URIImpl("http://www.bigdata.com/Bryan");
+
+	private static final URI MARTYN = new URIImpl(
+			"http://www.bigdata.com/Martyn");
+
+	/**
+	 * Prepare a SELECT query and evaluate it repeatedly with different
+	 * bindings.
+	 */
+	public void test_prepare_SELECT() throws Exception {
+
+		doInsertbyURL("POST", packagePath + "test_estcard.ttl");
+
+		final IPreparedTupleQuery query = m_repo
+				.prepareTupleQuery("SELECT ?o WHERE { ?s <http://xmlns.com/foaf/0.1/knows> ?o }");
+
+		final UUID handle = query.prepare();
+
+		assertNotNull(handle);
+
+		// Unbound.
+		assertEquals(2, countResults(query.evaluate()));
+
+		query.setBinding("s", MIKE);
+		assertEquals(1, countResults(query.evaluate()));
+
+		query.setBinding("s", MARTYN);
+		assertEquals(0, countResults(query.evaluate()));
+
+		query.clearBindings();
+		assertEquals(2, countResults(query.evaluate()));
+
+	}
+
+	/**
+	 * Prepare an ASK query and evaluate it with different bindings.
+	 */
+	public void test_prepare_ASK() throws Exception {
+
+		doInsertbyURL("POST", packagePath + "test_estcard.ttl");
+
+		final IPreparedBooleanQuery query = m_repo
+				.prepareBooleanQuery("ASK { ?s <http://xmlns.com/foaf/0.1/knows> ?o }");
+
+		query.prepare();
+
+		query.setBinding("o", BRYAN);
+		assertTrue(query.evaluate());
+
+		query.setBinding("o", MIKE);
+		assertFalse(query.evaluate());
+
+	}
+
+}